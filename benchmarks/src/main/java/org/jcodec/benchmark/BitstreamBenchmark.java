@@ -0,0 +1,193 @@
+package org.jcodec.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jcodec.codecs.common.biari.MDecoder;
+import org.jcodec.codecs.common.biari.MEncoder;
+import org.jcodec.codecs.h264.H264Const;
+import org.jcodec.codecs.h264.io.CABAC;
+import org.jcodec.codecs.h264.io.model.SliceType;
+import org.jcodec.common.io.BitReader;
+import org.jcodec.common.io.BitWriter;
+import org.jcodec.common.io.VLC;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * Bit level readers: the BitReader primitives, VLC table lookups and the
+ * CABAC arithmetic decoder. Each invocation reads a whole prepared stream of
+ * SYMBOLS symbols.
+ *
+ * @author The JCodec project
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class BitstreamBenchmark {
+    private static final int SYMBOLS = 1 << 16;
+    private static final int CABAC_CONTEXTS = 400;
+
+    private int[] widths;
+    private ByteBuffer nBitData;
+    private ByteBuffer ueData;
+    private VLC vlc;
+    private ByteBuffer vlcData;
+    private ByteBuffer cabacData;
+    private ByteBuffer bypassData;
+    private int[] contexts;
+    private CABAC cabac;
+    private byte[] states;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(42);
+
+        widths = new int[SYMBOLS];
+        ByteBuffer buf = ByteBuffer.allocate(SYMBOLS * 4 + 16);
+        BitWriter out = new BitWriter(buf);
+        for (int i = 0; i < SYMBOLS; i++) {
+            widths[i] = 1 + rnd.nextInt(16);
+            out.writeNBit(rnd.nextInt(1 << widths[i]), widths[i]);
+        }
+        nBitData = finish(out, buf);
+
+        buf = ByteBuffer.allocate(SYMBOLS * 8 + 16);
+        out = new BitWriter(buf);
+        for (int i = 0; i < SYMBOLS; i++) {
+            // Mostly small values as with the syntax elements of a slice
+            int val = rnd.nextInt(4) == 0 ? rnd.nextInt(1 << 12) : rnd.nextInt(8);
+            writeUE(out, val);
+        }
+        ueData = finish(out, buf);
+
+        vlc = H264Const.CoeffToken[0];
+        int[] codes = vlc.getCodes();
+        int[] sizes = vlc.getCodeSizes();
+        int nCodes = codes.length;
+        buf = ByteBuffer.allocate(SYMBOLS * 4 + 16);
+        out = new BitWriter(buf);
+        for (int i = 0; i < SYMBOLS; i++) {
+            // Short codes are the frequent ones
+            int code;
+            do {
+                code = rnd.nextInt(nCodes);
+            } while (sizes[code] > 1 + rnd.nextInt(16));
+            // The codes are left aligned
+            out.writeNBit(codes[code] >>> (32 - sizes[code]), sizes[code]);
+        }
+        vlcData = finish(out, buf);
+
+        cabac = new CABAC(1);
+        states = new byte[1024];
+        int[][] cm = new int[2][1024];
+        cabac.initModels(cm, SliceType.I, 0, 26);
+        contexts = new int[SYMBOLS];
+        cabacData = ByteBuffer.allocate(SYMBOLS + 1024);
+        MEncoder encoder = new MEncoder(cabacData, cm);
+        for (int i = 0; i < SYMBOLS; i++) {
+            contexts[i] = rnd.nextInt(CABAC_CONTEXTS);
+            // Skewed towards zero so the models adapt like on real syntax
+            encoder.encodeBin(contexts[i], rnd.nextInt(8) == 0 ? 1 : 0);
+        }
+        encoder.finishEncoding();
+        cabacData.flip();
+
+        // Bypass bins are equiprobable, any random data is a valid stream
+        byte[] random = new byte[(SYMBOLS >> 3) + 64];
+        rnd.nextBytes(random);
+        bypassData = ByteBuffer.wrap(random);
+    }
+
+    private static ByteBuffer finish(BitWriter out, ByteBuffer buf) {
+        out.flush();
+        buf.flip();
+        return buf;
+    }
+
+    private static void writeUE(BitWriter out, int value) {
+        int bits = 0;
+        int cumul = 0;
+        for (int i = 0; i < 15; i++) {
+            if (value < cumul + (1 << i)) {
+                bits = i;
+                break;
+            }
+            cumul += (1 << i);
+        }
+        out.writeNBit(0, bits);
+        out.write1Bit(1);
+        out.writeNBit(value - cumul, bits);
+    }
+
+    @Benchmark
+    public int readNBit() {
+        BitReader reader = BitReader.createBitReader(nBitData.duplicate());
+        int sum = 0;
+        for (int i = 0; i < SYMBOLS; i++)
+            sum += reader.readNBit(widths[i]);
+        return sum;
+    }
+
+    @Benchmark
+    public int read1Bit() {
+        BitReader reader = BitReader.createBitReader(nBitData.duplicate());
+        int sum = 0;
+        for (int i = 0; i < SYMBOLS; i++)
+            sum += reader.read1Bit();
+        return sum;
+    }
+
+    @Benchmark
+    public int readUE() {
+        BitReader reader = BitReader.createBitReader(ueData.duplicate());
+        int sum = 0;
+        for (int i = 0; i < SYMBOLS; i++)
+            sum += reader.readUE();
+        return sum;
+    }
+
+    @Benchmark
+    public int readVLC() {
+        BitReader reader = BitReader.createBitReader(vlcData.duplicate());
+        int sum = 0;
+        for (int i = 0; i < SYMBOLS; i++)
+            sum += vlc.readVLC(reader);
+        return sum;
+    }
+
+    @Benchmark
+    public int cabacDecodeBin() {
+        cabac.initModels(states, SliceType.I, 0, 26);
+        MDecoder decoder = MDecoder.createMDecoder(cabacData.duplicate(), states);
+        int sum = 0;
+        for (int i = 0; i < SYMBOLS; i++)
+            sum += decoder.decodeBin(contexts[i]);
+        return sum;
+    }
+
+    @Benchmark
+    public int cabacDecodeBypass() {
+        MDecoder decoder = MDecoder.createMDecoder(bypassData.duplicate(), states);
+        int sum = 0;
+        for (int i = 0; i < SYMBOLS; i++)
+            sum += decoder.decodeBinBypass();
+        return sum;
+    }
+}
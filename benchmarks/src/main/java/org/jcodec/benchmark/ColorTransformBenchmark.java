@@ -0,0 +1,115 @@
+package org.jcodec.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Picture;
+import org.jcodec.common.model.PictureHiBD;
+import org.jcodec.scale.ColorUtil;
+import org.jcodec.scale.Transform;
+import org.jcodec.scale.highbd.ColorUtilHiBD;
+import org.jcodec.scale.highbd.TransformHiBD;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * The color space transforms of org.jcodec.scale on a 1080p frame. The
+ * parameters are from:to pairs of color space names, every transform class is
+ * covered by at least one pair.
+ *
+ * @author The JCodec project
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ColorTransformBenchmark {
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+
+    @State(Scope.Thread)
+    public static class Transforms {
+        @Param({ "RGB:BGR", "RGB:YUV420J", "RGB:YUV420", "RGB:YUV422", "YUV420:YUV422", "YUV420:RGB", "YUV420J:RGB",
+                "YUV422:YUV420", "YUV422:RGB", "YUV444J:YUV420J" })
+        public String conversion;
+
+        private Transform transform;
+        private Picture src;
+        private Picture dst;
+
+        @Setup
+        public void setup() {
+            ColorSpace from = colorSpace(conversion.split(":")[0]);
+            ColorSpace to = colorSpace(conversion.split(":")[1]);
+            transform = ColorUtil.getTransform(from, to);
+            src = SyntheticContent.createPicture(WIDTH, HEIGHT, from, 0);
+            dst = Picture.create(WIDTH, HEIGHT, to);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class TransformsHiBD {
+        @Param({ "RGB:BGR", "RGB:YUV420", "RGB:YUV420J", "RGB:YUV422_10", "YUV420:RGB", "YUV420:YUV422",
+                "YUV420J:RGB", "YUV420J:YUV420", "YUV422:YUV420", "YUV422:YUV420J", "YUV422_10:RGB", "YUV422J:RGB",
+                "YUV422J:YUV420", "YUV444:YUV420", "YUV444_10:RGB", "YUV444J:RGB", "YUV444J:YUV420" })
+        public String conversion;
+
+        private TransformHiBD transform;
+        private PictureHiBD src;
+        private PictureHiBD dst;
+
+        @Setup
+        public void setup() {
+            ColorSpace from = colorSpace(conversion.split(":")[0]);
+            ColorSpace to = colorSpace(conversion.split(":")[1]);
+            transform = ColorUtilHiBD.getTransform(from, to);
+            int depth = bitDepth(from);
+            src = PictureHiBD.createWithDepth(WIDTH, HEIGHT, from, depth);
+            Random rnd = new Random(42);
+            for (int[] plane : src.getData()) {
+                for (int i = 0; i < plane.length; i++)
+                    plane[i] = rnd.nextInt(1 << depth);
+            }
+            dst = PictureHiBD.createWithDepth(WIDTH, HEIGHT, to, bitDepth(to));
+        }
+    }
+
+    private static ColorSpace colorSpace(String name) {
+        try {
+            return (ColorSpace) ColorSpace.class.getField(name).get(null);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Unknown color space " + name);
+        }
+    }
+
+    private static int bitDepth(ColorSpace color) {
+        return color == ColorSpace.YUV422_10 || color == ColorSpace.YUV444_10 ? 10 : 8;
+    }
+
+    @Benchmark
+    public Picture transform(Transforms state) {
+        state.transform.transform(state.src, state.dst);
+        return state.dst;
+    }
+
+    @Benchmark
+    public PictureHiBD transformHiBD(TransformsHiBD state) {
+        state.transform.transform(state.src, state.dst);
+        return state.dst;
+    }
+}
@@ -0,0 +1,174 @@
+package org.jcodec.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jcodec.codecs.vpx.VP8Encoder;
+import org.jcodec.common.Codec;
+import org.jcodec.common.DemuxerTrack;
+import org.jcodec.common.io.ByteBufferSeekableByteChannel;
+import org.jcodec.common.model.Packet;
+import org.jcodec.containers.mkv.demuxer.MKVDemuxer;
+import org.jcodec.containers.mkv.muxer.MKVMuxer;
+import org.jcodec.containers.mp4.demuxer.MP4Demuxer;
+import org.jcodec.containers.mp4.muxer.MP4Muxer;
+import org.jcodec.containers.mps.MPSDemuxer;
+import org.jcodec.containers.mps.MTSDemuxer;
+import org.jcodec.containers.mps.MTSMuxer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * Muxing and demuxing FRAMES frames of synthetic video, all in memory so that
+ * only the container code is measured. MP4 and MPEG-TS carry H.264, MKV
+ * carries VP8 as the MKV muxer doesn't write the codec private data the
+ * demuxer needs for H.264.
+ *
+ * The TS benchmark reads the PES packets through the TS and the PS demuxers.
+ *
+ * @author The JCodec project
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ContainerBenchmark {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 368;
+    private static final int FRAMES = 250;
+
+    private List<ByteBuffer> frames;
+    private List<ByteBuffer> scratch;
+    private List<ByteBuffer> vp8Frames;
+    private ByteBuffer muxBuffer;
+    private ByteBuffer mp4;
+    private ByteBuffer mkv;
+    private ByteBuffer ts;
+
+    @Setup
+    public void setup() throws IOException {
+        // A short sequence repeated, only the sizes of the frames matter here
+        List<ByteBuffer> gop = SyntheticContent.encodeH264(WIDTH, HEIGHT, 25);
+        List<ByteBuffer> vp8 = SyntheticContent.encode(VP8Encoder.createVP8Encoder(10), WIDTH, HEIGHT, 5);
+        frames = new ArrayList<ByteBuffer>();
+        scratch = new ArrayList<ByteBuffer>();
+        vp8Frames = new ArrayList<ByteBuffer>();
+        for (int i = 0; i < FRAMES; i++) {
+            frames.add(gop.get(i % gop.size()));
+            scratch.add(ByteBuffer.allocate(frames.get(i).remaining()));
+            vp8Frames.add(vp8.get(i % vp8.size()));
+        }
+        int size = Math.max(SyntheticContent.totalSize(frames), SyntheticContent.totalSize(vp8Frames));
+        muxBuffer = ByteBuffer.allocate(size + (1 << 20));
+
+        mp4 = copy(mp4Mux());
+        mkv = copy(mkvMux());
+        ts = copy(tsMux());
+    }
+
+    private static ByteBuffer copy(ByteBuffer buf) {
+        ByteBuffer result = ByteBuffer.allocate(buf.remaining());
+        result.put(buf.duplicate());
+        result.flip();
+        return result;
+    }
+
+    /**
+     * The MP4 muxer rewrites the H.264 frames in place, the frames are copied
+     * to scratch buffers first.
+     */
+    private List<ByteBuffer> freshFrames() {
+        for (int i = 0; i < FRAMES; i++) {
+            ByteBuffer dst = scratch.get(i);
+            dst.clear();
+            dst.put(frames.get(i).duplicate());
+            dst.flip();
+        }
+        return scratch;
+    }
+
+    @Benchmark
+    public ByteBuffer mp4Mux() throws IOException {
+        muxBuffer.clear();
+        ByteBufferSeekableByteChannel ch = ByteBufferSeekableByteChannel.writeToByteBuffer(muxBuffer);
+        MP4Muxer muxer = MP4Muxer.createMP4MuxerToChannel(ch);
+        SyntheticContent.addFrames(muxer.addVideoTrack(Codec.H264, SyntheticContent.videoMeta(WIDTH, HEIGHT)),
+                Codec.H264, freshFrames());
+        muxer.finish();
+        return result(ch);
+    }
+
+    @Benchmark
+    public ByteBuffer mkvMux() throws IOException {
+        muxBuffer.clear();
+        ByteBufferSeekableByteChannel ch = ByteBufferSeekableByteChannel.writeToByteBuffer(muxBuffer);
+        MKVMuxer muxer = new MKVMuxer(ch);
+        SyntheticContent.addFrames(muxer.addVideoTrack(Codec.VP8, SyntheticContent.videoMeta(WIDTH, HEIGHT)),
+                Codec.VP8, vp8Frames);
+        muxer.finish();
+        return result(ch);
+    }
+
+    @Benchmark
+    public ByteBuffer tsMux() throws IOException {
+        muxBuffer.clear();
+        ByteBufferSeekableByteChannel ch = ByteBufferSeekableByteChannel.writeToByteBuffer(muxBuffer);
+        MTSMuxer muxer = new MTSMuxer(ch);
+        SyntheticContent.addFrames(muxer.addVideoTrack(Codec.H264, SyntheticContent.videoMeta(WIDTH, HEIGHT)),
+                Codec.H264, frames);
+        muxer.finish();
+        return result(ch);
+    }
+
+    private ByteBuffer result(ByteBufferSeekableByteChannel ch) throws IOException {
+        ByteBuffer result = muxBuffer.duplicate();
+        result.position(0);
+        result.limit((int) ch.size());
+        return result;
+    }
+
+    @Benchmark
+    public long mp4Demux() throws IOException {
+        MP4Demuxer demuxer = MP4Demuxer.createMP4Demuxer(ByteBufferSeekableByteChannel.readFromByteBuffer(mp4
+                .duplicate()));
+        return readAll(demuxer.getVideoTracks().get(0));
+    }
+
+    @Benchmark
+    public long mkvDemux() throws IOException {
+        MKVDemuxer demuxer = new MKVDemuxer(ByteBufferSeekableByteChannel.readFromByteBuffer(mkv.duplicate()));
+        return readAll(demuxer.getVideoTracks().get(0));
+    }
+
+    private static long readAll(DemuxerTrack track) throws IOException {
+        long size = 0;
+        Packet packet;
+        while ((packet = track.nextFrame()) != null)
+            size += packet.getData().remaining();
+        return size;
+    }
+
+    @Benchmark
+    public long tsDemux() throws IOException {
+        MTSDemuxer demuxer = new MTSDemuxer(ByteBufferSeekableByteChannel.readFromByteBuffer(ts.duplicate()));
+        MPSDemuxer pes = new MPSDemuxer(demuxer.getProgram(MTSMuxer.FIRST_ES_PID));
+        return readAll(pes.getVideoTracks().get(0));
+    }
+}
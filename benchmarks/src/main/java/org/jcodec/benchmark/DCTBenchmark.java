@@ -0,0 +1,169 @@
+package org.jcodec.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jcodec.common.dct.DCTRef;
+import org.jcodec.common.dct.FfmpegIntDct;
+import org.jcodec.common.dct.IDCT2x2;
+import org.jcodec.common.dct.IDCT4x4;
+import org.jcodec.common.dct.IntDCT;
+import org.jcodec.common.dct.SimpleIDCT10Bit;
+import org.jcodec.common.dct.SlowDCT;
+import org.jcodec.common.dct.SparseIDCT;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * The inverse transforms of org.jcodec.common.dct, each invocation transforms
+ * BLOCKS blocks of typical intra coefficients: a DC and a handful of low
+ * frequency ACs.
+ *
+ * @author The JCodec project
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DCTBenchmark {
+    private static final int BLOCKS = 1024;
+
+    private int[][] coeffs8x8;
+    private int[][] coeffs4x4;
+    private int[] block;
+    private short[][] coeffsShort;
+    private short[] blockShort;
+    private FfmpegIntDct ffmpeg;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(42);
+        coeffs8x8 = new int[BLOCKS][];
+        coeffs4x4 = new int[BLOCKS][];
+        coeffsShort = new short[BLOCKS][64];
+        for (int i = 0; i < BLOCKS; i++) {
+            coeffs8x8[i] = randomBlock(rnd, 64, 8);
+            coeffs4x4[i] = randomBlock(rnd, 16, 4);
+            for (int j = 0; j < 64; j++)
+                coeffsShort[i][j] = (short) coeffs8x8[i][j];
+        }
+        block = new int[64];
+        blockShort = new short[64];
+        ffmpeg = new FfmpegIntDct();
+    }
+
+    private static int[] randomBlock(Random rnd, int size, int stride) {
+        int[] blk = new int[size];
+        blk[0] = rnd.nextInt(1024) - 512;
+        for (int i = 0; i < 6; i++) {
+            // Low frequencies only, the top left 3x3
+            int pos = rnd.nextInt(3) * stride + rnd.nextInt(3);
+            blk[pos] = rnd.nextInt(128) - 64;
+        }
+        return blk;
+    }
+
+    @Benchmark
+    public int intDCT() {
+        int sum = 0;
+        for (int i = 0; i < BLOCKS; i++) {
+            System.arraycopy(coeffs8x8[i], 0, block, 0, 64);
+            sum += IntDCT.INSTANCE.decode(block)[0];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int slowDCT() {
+        int sum = 0;
+        for (int i = 0; i < BLOCKS; i++) {
+            System.arraycopy(coeffs8x8[i], 0, block, 0, 64);
+            sum += SlowDCT.INSTANCE.decode(block)[0];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int ffmpegIntDct() {
+        int sum = 0;
+        for (int i = 0; i < BLOCKS; i++) {
+            System.arraycopy(coeffsShort[i], 0, blockShort, 0, 64);
+            sum += ffmpeg.decode(blockShort)[0];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int simpleIDCT10Bit() {
+        int sum = 0;
+        for (int i = 0; i < BLOCKS; i++) {
+            System.arraycopy(coeffs8x8[i], 0, block, 0, 64);
+            SimpleIDCT10Bit.idct10(block, 0);
+            sum += block[0];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int dctRef() {
+        int sum = 0;
+        for (int i = 0; i < BLOCKS; i++) {
+            System.arraycopy(coeffs8x8[i], 0, block, 0, 64);
+            DCTRef.idct(block, 0);
+            sum += block[0];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int sparseIDCT() {
+        int sum = 0;
+        for (int i = 0; i < BLOCKS; i++) {
+            int[] coeffs = coeffs8x8[i];
+            SparseIDCT.start(block, coeffs[0]);
+            for (int j = 1; j < 64; j++) {
+                if (coeffs[j] != 0)
+                    SparseIDCT.coeff(block, j, coeffs[j]);
+            }
+            SparseIDCT.finish(block);
+            sum += block[0];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int idct4x4() {
+        int sum = 0;
+        for (int i = 0; i < BLOCKS; i++) {
+            System.arraycopy(coeffs4x4[i], 0, block, 0, 16);
+            IDCT4x4.idct(block, 0);
+            sum += block[0];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int idct2x2() {
+        int sum = 0;
+        for (int i = 0; i < BLOCKS; i++) {
+            System.arraycopy(coeffs4x4[i], 0, block, 0, 4);
+            IDCT2x2.idct(block, 0);
+            sum += block[0];
+        }
+        return sum;
+    }
+}
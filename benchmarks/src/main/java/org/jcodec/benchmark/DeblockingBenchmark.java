@@ -0,0 +1,102 @@
+package org.jcodec.benchmark;
+
+import static org.jcodec.codecs.h264.H264Utils.Mv.packMv;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jcodec.codecs.h264.decode.DeblockerInput;
+import org.jcodec.codecs.h264.decode.deblock.DeblockingFilter;
+import org.jcodec.codecs.h264.io.model.Frame;
+import org.jcodec.codecs.h264.io.model.MBType;
+import org.jcodec.codecs.h264.io.model.SeqParameterSet;
+import org.jcodec.codecs.h264.io.model.SliceHeader;
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Picture;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * The H.264 deblocking filter on a 720p frame. With intra macroblocks every
+ * edge is filtered and the macroblock edges get the strongest filter, with
+ * inter macroblocks the strength comes from random motion vectors and
+ * residual.
+ *
+ * @author The JCodec project
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DeblockingBenchmark {
+    private static final int MB_W = 80;
+    private static final int MB_H = 45;
+
+    @Param({ "intra", "inter" })
+    public String mbKind;
+
+    private Picture original;
+    private Picture deblocked;
+    private DeblockingFilter filter;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(42);
+        int width = MB_W << 4, height = MB_H << 4;
+        original = SyntheticContent.createPicture(width, height, ColorSpace.YUV420J, 1);
+        deblocked = original.createCompatible();
+
+        SeqParameterSet sps = new SeqParameterSet();
+        sps.picWidthInMbsMinus1 = MB_W - 1;
+        sps.picHeightInMapUnitsMinus1 = MB_H - 1;
+        sps.frameMbsOnlyFlag = true;
+        sps.chromaFormatIdc = ColorSpace.YUV420J;
+        SliceHeader sh = new SliceHeader();
+        sh.sps = sps;
+
+        DeblockerInput di = new DeblockerInput(sps);
+        Picture refPic = SyntheticContent.createPicture(width, height, ColorSpace.YUV420J, 0);
+        Frame ref = new Frame(width, height, refPic.getData(), ColorSpace.YUV420J, null, 0, null, null, null, 0);
+        boolean intra = "intra".equals(mbKind);
+        for (int i = 0; i < di.shs.length; i++) {
+            di.shs[i] = sh;
+            di.mbTypes[i] = intra ? MBType.I_NxN : MBType.P_16x16;
+            di.refsUsed[i] = new Frame[][] { { ref }, {} };
+            for (int c = 0; c < 3; c++)
+                di.mbQps[c][i] = 22 + rnd.nextInt(16);
+        }
+        for (int blkY = 0; blkY < MB_H << 2; blkY++) {
+            for (int blkX = 0; blkX < MB_W << 2; blkX++) {
+                di.nCoeff[blkY][blkX] = rnd.nextInt(3) == 0 ? 1 + rnd.nextInt(4) : 0;
+                di.mvs.setMv(blkX, blkY, 0, packMv(rnd.nextInt(16) - 8, rnd.nextInt(16) - 8, 0));
+                di.mvs.setMv(blkX, blkY, 1, packMv(0, 0, -1));
+            }
+        }
+        filter = new DeblockingFilter(8, 8, di);
+    }
+
+    /**
+     * Includes copying the unfiltered frame in, the filter works in place.
+     */
+    @Benchmark
+    public Picture deblockFrame() {
+        deblocked.copyFrom(original);
+        filter.deblockFrame(deblocked);
+        return deblocked;
+    }
+}
@@ -0,0 +1,175 @@
+package org.jcodec.benchmark;
+
+import static org.jcodec.codecs.h264.H264Const.identityMapping16;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jcodec.codecs.common.biari.MDecoder;
+import org.jcodec.codecs.common.biari.MEncoder;
+import org.jcodec.codecs.h264.H264Const;
+import org.jcodec.codecs.h264.decode.CoeffTransformer;
+import org.jcodec.codecs.h264.io.CABAC;
+import org.jcodec.codecs.h264.io.CABAC.BlockType;
+import org.jcodec.codecs.h264.io.CAVLC;
+import org.jcodec.codecs.h264.io.model.MBType;
+import org.jcodec.codecs.h264.io.model.SeqParameterSet;
+import org.jcodec.codecs.h264.io.model.SliceType;
+import org.jcodec.common.io.BitReader;
+import org.jcodec.common.io.BitWriter;
+import org.jcodec.common.model.ColorSpace;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * Residual decoding throughput of the H.264 entropy layer, CABAC and CAVLC,
+ * on one frame worth of 4x4 luma blocks.
+ *
+ * The blocks are random with a density and level range of high bitrate
+ * intra content, where residual decoding is most of the decode time. One
+ * benchmark invocation decodes the whole frame.
+ *
+ * @author The JCodec project
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class EntropyBenchmark {
+    private static final int MB_W = 120;
+    private static final int MB_H = 68;
+    private static final int SLICE_QP = 22;
+
+    /**
+     * Largest coefficient level, the CABAC level suffix and the CAVLC escape
+     * codes only come into play with the larger ones.
+     */
+    @Param({ "4", "64" })
+    public int maxLevel;
+
+    /**
+     * Percentage of non-zero coefficients in a block.
+     */
+    @Param({ "60" })
+    public int density;
+
+    private int[][] blocks;
+    private ByteBuffer cabacData;
+    private ByteBuffer cavlcData;
+    private CABAC cabac;
+    private CAVLC cavlc;
+    private byte[] states;
+    private int[] coeffs;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(42);
+        blocks = new int[MB_W * MB_H * 16][];
+        for (int i = 0; i < blocks.length; i++)
+            blocks[i] = randomBlock(rnd);
+        coeffs = new int[16];
+
+        cabac = new CABAC(MB_W);
+        states = new byte[1024];
+        cabacData = encodeCABAC();
+
+        SeqParameterSet sps = new SeqParameterSet();
+        sps.chromaFormatIdc = ColorSpace.YUV420J;
+        sps.picWidthInMbsMinus1 = MB_W - 1;
+        cavlc = new CAVLC(sps, null, 2, 2);
+        cavlcData = encodeCAVLC();
+    }
+
+    @Benchmark
+    public int cabacResidual() {
+        cabac.initModels(states, SliceType.I, 0, SLICE_QP);
+        MDecoder decoder = MDecoder.createMDecoder(cabacData.duplicate(), states);
+        int sum = 0;
+        for (int i = 0; i < blocks.length; i++) {
+            sum += cabac.readCoeffs(decoder, BlockType.LUMA_16, coeffs, 0, 16, CoeffTransformer.zigzag4x4,
+                    identityMapping16, identityMapping16);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int cavlcResidual() {
+        cavlc.reset();
+        BitReader reader = BitReader.createBitReader(cavlcData.duplicate());
+        int sum = 0;
+        for (int i = 0; i < blocks.length; i++) {
+            int blkX = blkX(i), blkY = blkY(i);
+            Arrays.fill(coeffs, 0);
+            sum += cavlc.readACBlock(reader, coeffs, blkX, blkY, blkX != 0, MBType.I_NxN, blkY != 0, MBType.I_NxN, 0,
+                    16, CoeffTransformer.zigzag4x4);
+        }
+        return sum;
+    }
+
+    private ByteBuffer encodeCABAC() {
+        int[][] cm = new int[2][1024];
+        cabac.initModels(cm, SliceType.I, 0, SLICE_QP);
+        ByteBuffer buf = ByteBuffer.allocate(blocks.length * 64);
+        MEncoder encoder = new MEncoder(buf, cm);
+        for (int i = 0; i < blocks.length; i++)
+            cabac.writeCoeffs(encoder, BlockType.LUMA_16, blocks[i], 0, 16, CoeffTransformer.zigzag4x4);
+        encoder.finishEncoding();
+        buf.flip();
+        return buf;
+    }
+
+    private ByteBuffer encodeCAVLC() {
+        ByteBuffer buf = ByteBuffer.allocate(blocks.length * 64);
+        BitWriter out = new BitWriter(buf);
+        for (int i = 0; i < blocks.length; i++) {
+            cavlc.writeACBlock(out, blkX(i), blkY(i), MBType.I_NxN, MBType.I_NxN, blocks[i], H264Const.totalZeros16,
+                    0, 16, CoeffTransformer.zigzag4x4);
+        }
+        out.flush();
+        buf.flip();
+        return buf;
+    }
+
+    // Blocks are coded macroblock after macroblock, 4x4 raster inside
+    private static int blkX(int i) {
+        return (((i >> 4) % MB_W) << 2) + (i & 3);
+    }
+
+    private static int blkY(int i) {
+        return (((i >> 4) / MB_W) << 2) + ((i >> 2) & 3);
+    }
+
+    private int[] randomBlock(Random rnd) {
+        int[] block = new int[16];
+        for (int i = 0; i < 16; i++) {
+            if (rnd.nextInt(100) < density) {
+                // Levels fall off towards the high frequencies
+                int max = Math.max(1, maxLevel >> (i >> 2));
+                int level = 1 + rnd.nextInt(max);
+                block[CoeffTransformer.zigzag4x4[i]] = rnd.nextBoolean() ? level : -level;
+            }
+        }
+        // A block without coefficients is signalled outside of the residual
+        // syntax
+        if (block[0] == 0)
+            block[0] = 1;
+        return block;
+    }
+}
@@ -0,0 +1,95 @@
+package org.jcodec.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jcodec.codecs.h264.decode.BlockInterpolator;
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Picture;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * H.264 motion compensated interpolation on a 720p reference, one block per
+ * macroblock at a random quarter pel position. A quarter of the motion vectors
+ * are long and reach outside of the picture where the slower edge extending
+ * interpolators are used.
+ *
+ * @author The JCodec project
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class InterpolationBenchmark {
+    private static final int MB_W = 80;
+    private static final int MB_H = 45;
+
+    /**
+     * Width and height of the luma blocks, chroma blocks are half of it.
+     */
+    @Param({ "16", "8", "4" })
+    public int blockSize;
+
+    private Picture ref;
+    private Picture mb;
+    private int[] mvX;
+    private int[] mvY;
+    private BlockInterpolator interpolator;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(42);
+        ref = SyntheticContent.createPicture(MB_W << 4, MB_H << 4, ColorSpace.YUV420J, 0);
+        mb = Picture.create(16, 16, ColorSpace.YUV420J);
+        interpolator = new BlockInterpolator();
+        // Quarter pel luma positions, the same numbers are eighth pel chroma
+        // positions
+        mvX = new int[MB_W * MB_H];
+        mvY = new int[MB_W * MB_H];
+        for (int i = 0; i < mvX.length; i++) {
+            int range = rnd.nextInt(4) == 0 ? 256 : 32;
+            mvX[i] = ((i % MB_W) << 6) + rnd.nextInt(range << 1) - range;
+            mvY[i] = ((i / MB_W) << 6) + rnd.nextInt(range << 1) - range;
+        }
+    }
+
+    @Benchmark
+    public int luma() {
+        int sum = 0;
+        for (int i = 0; i < mvX.length; i++) {
+            interpolator.getBlockLuma(ref, mb, 0, mvX[i], mvY[i], blockSize, blockSize);
+            sum += mb.getPlaneData(0)[0];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int chroma() {
+        int sum = 0;
+        int cw = ref.getPlaneWidth(1), ch = ref.getPlaneHeight(1), size = blockSize >> 1;
+        for (int i = 0; i < mvX.length; i++) {
+            BlockInterpolator.getBlockChroma(ref.getPlaneData(1), cw, ch, mb.getPlaneData(1), 0, 8, mvX[i], mvY[i],
+                    size, size);
+            BlockInterpolator.getBlockChroma(ref.getPlaneData(2), cw, ch, mb.getPlaneData(2), 0, 8, mvX[i], mvY[i],
+                    size, size);
+            sum += mb.getPlaneData(1)[0];
+        }
+        return sum;
+    }
+}
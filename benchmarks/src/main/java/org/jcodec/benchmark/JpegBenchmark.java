@@ -0,0 +1,73 @@
+package org.jcodec.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.jcodec.codecs.mjpeg.JpegDecoder;
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Picture;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * Decoding a 1080p baseline JPEG. JCodec has no JPEG encoder, the image is
+ * the synthetic picture compressed with ImageIO at setup.
+ *
+ * @author The JCodec project
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class JpegBenchmark {
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+
+    private ByteBuffer jpeg;
+    private JpegDecoder decoder;
+    private byte[][] buffer;
+
+    @Setup
+    public void setup() throws IOException {
+        Picture rgb = SyntheticContent.createPicture(WIDTH, HEIGHT, ColorSpace.RGB, 0);
+        byte[] src = rgb.getPlaneData(0);
+        BufferedImage img = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0, off = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++, off += 3) {
+                int r = src[off] + 128, g = src[off + 1] + 128, b = src[off + 2] + 128;
+                img.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(img, "jpg", out);
+        jpeg = ByteBuffer.wrap(out.toByteArray());
+
+        decoder = new JpegDecoder();
+        // The decoder writes whole MCUs
+        buffer = Picture.create((WIDTH + 15) & ~15, (HEIGHT + 15) & ~15, ColorSpace.YUV444).getData();
+    }
+
+    @Benchmark
+    public Picture decode() {
+        return decoder.decodeFrame(jpeg.duplicate(), buffer);
+    }
+}
@@ -0,0 +1,101 @@
+package org.jcodec.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Picture;
+import org.jcodec.common.model.Size;
+import org.jcodec.scale.BaseResampler;
+import org.jcodec.scale.BicubicResampler;
+import org.jcodec.scale.BilinearResampler;
+import org.jcodec.scale.ColorUtil;
+import org.jcodec.scale.FusedTransform;
+import org.jcodec.scale.LanczosResampler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * Downscaling a 1080p YUV420J frame to 720p with each of the resamplers, and
+ * the same downscale fused with a conversion to RGB. The threads parameter is
+ * passed to setThreads, 1 measures the single threaded kernels.
+ *
+ * @author The JCodec project
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ResampleBenchmark {
+    private static final Size FROM = new Size(1920, 1080);
+    private static final Size TO = new Size(1280, 720);
+
+    @State(Scope.Thread)
+    public static class Resamplers {
+        @Param({ "lanczos", "bicubic", "bilinear" })
+        public String resampler;
+
+        @Param({ "1", "4" })
+        public int threads;
+
+        private BaseResampler scaler;
+        private Picture src;
+        private Picture dst;
+
+        @Setup
+        public void setup() {
+            if ("lanczos".equals(resampler))
+                scaler = new LanczosResampler(FROM, TO);
+            else if ("bicubic".equals(resampler))
+                scaler = new BicubicResampler(FROM, TO);
+            else
+                scaler = new BilinearResampler(FROM, TO);
+            scaler.setThreads(threads);
+            src = SyntheticContent.createPicture(FROM.getWidth(), FROM.getHeight(), ColorSpace.YUV420J, 0);
+            dst = Picture.create(TO.getWidth(), TO.getHeight(), ColorSpace.YUV420J);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Fused {
+        @Param({ "1", "4" })
+        public int threads;
+
+        private FusedTransform transform;
+        private Picture src;
+        private Picture dst;
+
+        @Setup
+        public void setup() {
+            transform = ColorUtil.getTransform(ColorSpace.YUV420J, ColorSpace.RGB, null, TO);
+            transform.setThreads(threads);
+            src = SyntheticContent.createPicture(FROM.getWidth(), FROM.getHeight(), ColorSpace.YUV420J, 0);
+            dst = Picture.create(TO.getWidth(), TO.getHeight(), ColorSpace.RGB);
+        }
+    }
+
+    @Benchmark
+    public Picture resample(Resamplers state) {
+        state.scaler.resample(state.src, state.dst);
+        return state.dst;
+    }
+
+    @Benchmark
+    public Picture fusedColorAndResize(Fused state) {
+        state.transform.transform(state.src, state.dst);
+        return state.dst;
+    }
+}
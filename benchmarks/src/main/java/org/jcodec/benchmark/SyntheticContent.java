@@ -0,0 +1,177 @@
+package org.jcodec.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jcodec.codecs.h264.H264Encoder;
+import org.jcodec.codecs.h264.H264Utils;
+import org.jcodec.common.Codec;
+import org.jcodec.common.MuxerTrack;
+import org.jcodec.common.VideoCodecMeta;
+import org.jcodec.common.VideoEncoder;
+import org.jcodec.common.io.ByteBufferSeekableByteChannel;
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Packet;
+import org.jcodec.common.model.Picture;
+import org.jcodec.common.model.Size;
+import org.jcodec.containers.mp4.muxer.MP4Muxer;
+import org.jcodec.scale.ColorUtil;
+import org.jcodec.scale.Transform;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * Generates the media the benchmarks work on, so that no sample files are
+ * needed.
+ *
+ * The pictures are a diagonal gradient with a square moving over it and some
+ * deterministic noise on top. This gives the encoders both flat and textured
+ * areas and some motion to find, the content of a frame only depends on its
+ * size, color space and number.
+ *
+ * @author The JCodec project
+ *
+ */
+public class SyntheticContent {
+    public static final int FPS = 25;
+
+    /**
+     * Creates frame number frameNo of the synthetic sequence.
+     */
+    public static Picture createPicture(int width, int height, ColorSpace color, int frameNo) {
+        Picture yuv = createYUV444(width, height, frameNo);
+        if (color == ColorSpace.YUV444 || color == ColorSpace.YUV444J)
+            return Picture.createPicture(width, height, yuv.getData(), color);
+
+        Picture rgb = Picture.create(width, height, ColorSpace.RGB);
+        yuv444ToRgb(yuv, rgb);
+        if (color == ColorSpace.RGB)
+            return rgb;
+        Picture result = Picture.create(width, height, color);
+        Transform transform = ColorUtil.getTransform(ColorSpace.RGB, color);
+        if (transform == null)
+            throw new IllegalArgumentException("No synthetic content for " + color);
+        transform.transform(rgb, result);
+        return result;
+    }
+
+    private static Picture createYUV444(int width, int height, int frameNo) {
+        Picture pic = Picture.create(width, height, ColorSpace.YUV444J);
+        byte[] y = pic.getPlaneData(0);
+        byte[] u = pic.getPlaneData(1);
+        byte[] v = pic.getPlaneData(2);
+        int sqSize = Math.max(16, Math.min(width, height) / 4);
+        int sqX = (frameNo * 7) % Math.max(1, width - sqSize);
+        int sqY = (frameNo * 3) % Math.max(1, height - sqSize);
+        int seed = 12345;
+        for (int i = 0, off = 0; i < height; i++) {
+            for (int j = 0; j < width; j++, off++) {
+                seed = seed * 1103515245 + 12345;
+                int noise = (seed >>> 28) - 8;
+                boolean inSquare = j >= sqX && j < sqX + sqSize && i >= sqY && i < sqY + sqSize;
+                int luma = inSquare ? 200 - ((i - sqY) & 0x1f) : ((i + j + frameNo * 2) * 255 / (width + height)) & 0xff;
+                y[off] = (byte) (clip(luma + noise) - 128);
+                u[off] = (byte) (inSquare ? 60 : (j * 64 / width) - 32);
+                v[off] = (byte) (inSquare ? -40 : (i * 64 / height) - 32);
+            }
+        }
+        return pic;
+    }
+
+    private static void yuv444ToRgb(Picture yuv, Picture rgb) {
+        byte[] y = yuv.getPlaneData(0);
+        byte[] u = yuv.getPlaneData(1);
+        byte[] v = yuv.getPlaneData(2);
+        byte[] out = rgb.getPlaneData(0);
+        for (int i = 0; i < y.length; i++) {
+            int yy = y[i] + 128;
+            int cb = u[i];
+            int cr = v[i];
+            out[3 * i] = (byte) (clip(yy + ((91881 * cr) >> 16)) - 128);
+            out[3 * i + 1] = (byte) (clip(yy - ((22554 * cb + 46802 * cr) >> 16)) - 128);
+            out[3 * i + 2] = (byte) (clip(yy + ((116130 * cb) >> 16)) - 128);
+        }
+    }
+
+    private static int clip(int val) {
+        return val < 0 ? 0 : (val > 255 ? 255 : val);
+    }
+
+    /**
+     * Encodes nFrames of the synthetic sequence, each encoded frame is in its
+     * own buffer.
+     */
+    public static List<ByteBuffer> encode(VideoEncoder encoder, int width, int height, int nFrames) {
+        ColorSpace color = encoder.getSupportedColorSpaces()[0];
+        List<ByteBuffer> frames = new ArrayList<ByteBuffer>();
+        ByteBuffer buf = null;
+        for (int i = 0; i < nFrames; i++) {
+            Picture pic = createPicture(width, height, color, i);
+            if (buf == null)
+                buf = ByteBuffer.allocate(Math.max(encoder.estimateBufferSize(pic), width * height * 6));
+            ByteBuffer frame = encoder.encodeFrame(pic, buf).getData();
+            ByteBuffer copy = ByteBuffer.allocate(frame.remaining());
+            copy.put(frame);
+            copy.flip();
+            frames.add(copy);
+        }
+        return frames;
+    }
+
+    /**
+     * H.264 sequence in Annex B, the IDR frames carry SPS and PPS.
+     */
+    public static List<ByteBuffer> encodeH264(int width, int height, int nFrames) {
+        return encode(H264Encoder.createH264Encoder(), width, height, nFrames);
+    }
+
+    /**
+     * Packs the frames into an in memory MP4 file with one video track.
+     */
+    public static ByteBuffer muxMP4(List<ByteBuffer> frames, Codec codec, int width, int height) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(totalSize(frames) + (1 << 20));
+        ByteBufferSeekableByteChannel ch = ByteBufferSeekableByteChannel.writeToByteBuffer(out);
+        MP4Muxer muxer = MP4Muxer.createMP4MuxerToChannel(ch);
+        addFrames(muxer.addVideoTrack(codec, videoMeta(width, height)), codec, frames);
+        muxer.finish();
+        out.limit((int) ch.size());
+        out.position(0);
+        return out;
+    }
+
+    public static VideoCodecMeta videoMeta(int width, int height) {
+        return VideoCodecMeta.createSimpleVideoCodecMeta(new Size(width, height), ColorSpace.YUV420);
+    }
+
+    /**
+     * Adds the frames to the track as they are, note that the MP4 muxer
+     * rewrites H.264 frames in place. Only the H.264 sequences have inter
+     * frames.
+     */
+    public static void addFrames(MuxerTrack track, Codec codec, List<ByteBuffer> frames) throws IOException {
+        for (int i = 0; i < frames.size(); i++) {
+            ByteBuffer frame = frames.get(i).duplicate();
+            boolean key = codec != Codec.H264 || isH264Key(frame);
+            track.addFrame(Packet.createPacket(frame, i, FPS, 1, i, key ? Packet.FrameType.KEY
+                    : Packet.FrameType.INTER, null));
+        }
+    }
+
+    private static boolean isH264Key(ByteBuffer frame) {
+        for (ByteBuffer nal : H264Utils.splitFrame(frame.duplicate())) {
+            if ((nal.get(nal.position()) & 0x1f) == 5)
+                return true;
+        }
+        return false;
+    }
+
+    public static int totalSize(List<ByteBuffer> frames) {
+        int size = 0;
+        for (ByteBuffer frame : frames)
+            size += frame.remaining();
+        return size;
+    }
+}
@@ -0,0 +1,90 @@
+package org.jcodec.benchmark;
+
+import static org.jcodec.common.Tuple.triple;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.jcodec.api.transcode.SinkImpl;
+import org.jcodec.api.transcode.SourceImpl;
+import org.jcodec.api.transcode.Transcoder;
+import org.jcodec.api.transcode.Transcoder.TranscoderBuilder;
+import org.jcodec.common.Codec;
+import org.jcodec.common.Format;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * Full Transcoder runs from a synthetic H.264 MP4 file, FRAMES frames of 720p,
+ * to the target given as format:codec. This is the whole pipeline: file IO,
+ * demuxing, decoding, color conversion, encoding and muxing.
+ *
+ * @author The JCodec project
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TranscoderBenchmark {
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    private static final int FRAMES = 50;
+
+    @Param({ "MOV:H264", "MOV:PRORES", "MKV:VP8" })
+    public String target;
+
+    private File input;
+    private File output;
+
+    @Setup
+    public void setup() throws IOException {
+        input = File.createTempFile("jcodec-bench", ".mp4");
+        output = File.createTempFile("jcodec-bench-out", "." + target.split(":")[0].toLowerCase());
+        ByteBuffer mp4 = SyntheticContent.muxMP4(SyntheticContent.encodeH264(WIDTH, HEIGHT, FRAMES), Codec.H264,
+                WIDTH, HEIGHT);
+        FileOutputStream out = new FileOutputStream(input);
+        try {
+            out.getChannel().write(mp4);
+        } finally {
+            out.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        input.delete();
+        output.delete();
+    }
+
+    @Benchmark
+    public long transcode() throws IOException {
+        Format format = Format.valueOf(target.split(":")[0]);
+        Codec codec = Codec.valueOf(target.split(":")[1]);
+
+        TranscoderBuilder builder = Transcoder.newTranscoder();
+        builder.addSource(new SourceImpl(input.getAbsolutePath(), Format.MOV, triple(0, 0, Codec.H264), null));
+        builder.addSink(new SinkImpl(output.getAbsolutePath(), format, codec, null));
+        builder.setVideoMapping(0, 0, false);
+        builder.create().transcode();
+        return output.length();
+    }
+}
@@ -0,0 +1,113 @@
+package org.jcodec.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jcodec.codecs.h264.H264Decoder;
+import org.jcodec.codecs.h264.H264Encoder;
+import org.jcodec.codecs.prores.ProresDecoder;
+import org.jcodec.codecs.prores.ProresEncoder;
+import org.jcodec.codecs.vpx.VP8Decoder;
+import org.jcodec.codecs.vpx.VP8Encoder;
+import org.jcodec.common.VideoDecoder;
+import org.jcodec.common.VideoEncoder;
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Picture;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * Encoding and decoding FRAMES frames of synthetic 720p video with the codecs
+ * that have both an encoder and a decoder.
+ *
+ * The encoder keeps its state between the invocations, so the H.264 encoder
+ * runs over a continuing stream with its usual mix of IDR and P frames. Every
+ * decode invocation starts over from the first, IDR, frame of a sequence
+ * encoded at setup.
+ *
+ * @author The JCodec project
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VideoCodecBenchmark {
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    private static final int FRAMES = 8;
+
+    @Param({ "h264", "prores", "vp8" })
+    public String codec;
+
+    private VideoEncoder encoder;
+    private VideoDecoder decoder;
+    private Picture[] pictures;
+    private ByteBuffer encodeBuffer;
+    private List<ByteBuffer> encoded;
+    private byte[][] decodeBuffer;
+
+    @Setup
+    public void setup() {
+        encoder = createEncoder();
+        ColorSpace color = encoder.getSupportedColorSpaces()[0];
+        pictures = new Picture[FRAMES];
+        for (int i = 0; i < FRAMES; i++)
+            pictures[i] = SyntheticContent.createPicture(WIDTH, HEIGHT, color, i);
+        encodeBuffer = ByteBuffer.allocate(Math.max(encoder.estimateBufferSize(pictures[0]), WIDTH * HEIGHT * 6));
+
+        encoded = SyntheticContent.encode(createEncoder(), WIDTH, HEIGHT, FRAMES);
+        decoder = createDecoder();
+        // Large enough for any of the decoders' native color spaces
+        decodeBuffer = Picture.create(WIDTH, HEIGHT, ColorSpace.YUV444).getData();
+    }
+
+    private VideoEncoder createEncoder() {
+        if ("h264".equals(codec))
+            return H264Encoder.createH264Encoder();
+        else if ("prores".equals(codec))
+            return ProresEncoder.createProresEncoder(null, false);
+        else
+            return VP8Encoder.createVP8Encoder(10);
+    }
+
+    private VideoDecoder createDecoder() {
+        if ("h264".equals(codec))
+            return new H264Decoder();
+        else if ("prores".equals(codec))
+            return new ProresDecoder();
+        else
+            return new VP8Decoder();
+    }
+
+    @Benchmark
+    public int encode() {
+        int size = 0;
+        for (int i = 0; i < FRAMES; i++)
+            size += encoder.encodeFrame(pictures[i], encodeBuffer).getData().remaining();
+        return size;
+    }
+
+    @Benchmark
+    public int decode() {
+        int sum = 0;
+        for (int i = 0; i < FRAMES; i++)
+            sum += decoder.decodeFrame(encoded.get(i).duplicate(), decodeBuffer).getPlaneData(0)[0];
+        return sum;
+    }
+}
@@ -1,8 +1,5 @@
 package org.jcodec.codecs.pngawt;
 
-import static org.jcodec.common.model.ColorSpace.BGR;
-import static org.jcodec.common.model.ColorSpace.RGB;
-
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -14,7 +11,6 @@ import org.jcodec.common.VideoEncoder;
 import org.jcodec.common.model.ColorSpace;
 import org.jcodec.common.model.Picture;
 import org.jcodec.scale.AWTUtil;
-import org.jcodec.scale.RgbToBgr;
 
 /**
  * Video encoder interface wrapper to Java SE png functionality.
@@ -23,22 +19,16 @@ import org.jcodec.scale.RgbToBgr;
  */
 public class PNGEncoder extends VideoEncoder {
     private BufferedImage bi;
-    private RgbToBgr rgbToBgr;
 
     @Override
-    public EncodedFrame encodeFrame(Picture _pic, ByteBuffer _out) {
-        Picture pic = _pic.cropped();
-        if (bi == null) {
-            bi = new BufferedImage(pic.getWidth(), pic.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
-        }
-        if (rgbToBgr == null) {
-            rgbToBgr = new RgbToBgr();
-        }
-        if (pic.getColor() == RGB)
-            rgbToBgr.transform(pic, pic);
-        else if (pic.getColor() != BGR)
+    public EncodedFrame encodeFrame(Picture pic, ByteBuffer _out) {
+        if (pic.getColor() != ColorSpace.RGB && pic.getColor() != ColorSpace.BGR)
             throw new IllegalArgumentException("Unsupported input color space: " + pic.getColor());
+        if (bi == null || bi.getWidth() != pic.getCroppedWidth() || bi.getHeight() != pic.getCroppedHeight()) {
+            bi = new BufferedImage(pic.getCroppedWidth(), pic.getCroppedHeight(), BufferedImage.TYPE_3BYTE_BGR);
+        }
 
+        // Crops and swaps the channels on the way, the input is left intact
         AWTUtil.toBufferedImage(pic, bi);
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         try {
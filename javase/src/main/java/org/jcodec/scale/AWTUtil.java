@@ -1,82 +1,100 @@
 package org.jcodec.scale;
 
-import org.jcodec.codecs.png.PNGEncoder;
 import org.jcodec.common.DemuxerTrackMeta;
-import org.jcodec.common.VideoEncoder;
-import org.jcodec.common.io.NIOUtils;
+import org.jcodec.common.DemuxerTrackMeta.Orientation;
+import org.jcodec.common.SharedThreadPool;
 import org.jcodec.common.model.ColorSpace;
 import org.jcodec.common.model.Picture;
+import org.jcodec.common.model.PictureHiBD;
+import org.jcodec.scale.highbd.ColorUtilHiBD;
+import org.jcodec.scale.highbd.TransformHiBD;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
 
 import static org.jcodec.common.model.ColorSpace.RGB;
 
 /**
  * This class is part of JCodec ( www.jcodec.org ) This software is distributed
  * under FreeBSD License
- * 
+ *
+ * Conversions between pictures and AWT images.
+ *
+ * Pictures are converted in a single pass straight into the data buffer of
+ * the image, color conversion, crop, orientation and the unshifting of JCodec
+ * samples from [-128, 127] happen per pixel. Large images are split into
+ * bands of rows that are converted concurrently.
+ *
  * @author The JCodec project
- * 
+ *
  */
 public class AWTUtil {
-    public static BufferedImage toBufferedImage(Picture src) {
-		if (src.getColor() != ColorSpace.BGR) {
-			Picture bgr = Picture.createCropped(src.getWidth(), src.getHeight(), ColorSpace.BGR, src.getCrop());
-			if (src.getColor() == ColorSpace.RGB) {
-				new RgbToBgr().transform(src, bgr);
-			} else {
-				Transform transform = ColorUtil.getTransform(src.getColor(), ColorSpace.RGB);
-				transform.transform(src, bgr);
-				new RgbToBgr().transform(bgr, bgr);				
-			}
-			src = bgr;
-		}
-
-        BufferedImage dst = new BufferedImage(src.getCroppedWidth(), src.getCroppedHeight(),
-                BufferedImage.TYPE_3BYTE_BGR);
+    private static final int MIN_BAND_PIXELS = 1 << 17;
 
-        if (src.getCrop() == null)
-            toBufferedImage(src, dst);
-        else
-            toBufferedImageCropped(src, dst);
+    private static final int SCALEBITS = 10;
+    private static final int ONE_HALF = (1 << (SCALEBITS - 1));
+    private static final int FIX_0_71414 = FIX(0.71414);
+    private static final int FIX_1_772 = FIX(1.77200);
+    private static final int _FIX_0_34414 = -FIX(0.34414);
+    private static final int FIX_1_402 = FIX(1.40200);
 
-        return dst;
+    private final static int FIX(double x) {
+        return ((int) ((x) * (1 << SCALEBITS) + 0.5));
+    }
+
+    public static BufferedImage toBufferedImage(Picture src) {
+        return toBufferedImage(src, Orientation.D_0);
     }
 
     public static BufferedImage toBufferedImage(Picture src, DemuxerTrackMeta.Orientation orientation) {
-    	if (src.getColor() != ColorSpace.BGR) {
-			Picture bgr = Picture.createCropped(src.getWidth(), src.getHeight(), ColorSpace.BGR, src.getCrop());
-			if (src.getColor() == ColorSpace.RGB) {
-				new RgbToBgr().transform(src, bgr);
-			} else {
-				Transform transform = ColorUtil.getTransform(src.getColor(), ColorSpace.RGB);
-				transform.transform(src, bgr);
-				new RgbToBgr().transform(bgr, bgr);				
-			}
-			src = bgr;
-		}
-
-        BufferedImage dst = new BufferedImage(src.getCroppedWidth(), src.getCroppedHeight(),
+        boolean transpose = orientation == Orientation.D_90 || orientation == Orientation.D_270;
+        int width = src.getCroppedWidth();
+        int height = src.getCroppedHeight();
+        BufferedImage dst = new BufferedImage(transpose ? height : width, transpose ? width : height,
                 BufferedImage.TYPE_3BYTE_BGR);
+        toBufferedImage(src, dst, orientation);
+        return dst;
+    }
 
-        if (src.getCrop() == null)
-            toBufferedImage(src, dst);
-        else
-            toBufferedImageCropped(src, dst);
+    public static void toBufferedImage(Picture src, BufferedImage dst) {
+        toBufferedImage(src, dst, Orientation.D_0);
+    }
 
-        if (orientation.equals(DemuxerTrackMeta.Orientation.D_90))
-            return rotate90ToRight(dst);
-        else if (orientation.equals(DemuxerTrackMeta.Orientation.D_180))
-            return rotate180(dst);
-        else if (orientation.equals(DemuxerTrackMeta.Orientation.D_270))
-            return rotate90ToLeft(dst);
+    /**
+     * Converts the cropped area of a picture into an image of the same size,
+     * or of the transposed size if the orientation is 90 or 270 degrees.
+     *
+     * RGB, BGR and planar YUV 4:2:0, 4:2:2 and 4:4:4 pictures are supported,
+     * high bit depth pictures are rounded from their full precision. The
+     * pixels are written straight into the data buffer of TYPE_3BYTE_BGR,
+     * TYPE_INT_RGB, TYPE_INT_ARGB and TYPE_INT_BGR images, any other image
+     * goes through setRGB.
+     */
+    public static void toBufferedImage(Picture src, BufferedImage dst, DemuxerTrackMeta.Orientation orientation) {
+        int width = src.getCroppedWidth();
+        int height = src.getCroppedHeight();
+        boolean transpose = orientation == Orientation.D_90 || orientation == Orientation.D_270;
+        if (dst.getWidth() != (transpose ? height : width) || dst.getHeight() != (transpose ? width : height))
+            throw new IllegalArgumentException("Image is " + dst.getWidth() + "x" + dst.getHeight() + ", picture is "
+                    + width + "x" + height + " oriented " + orientation);
+        ColorSpace color = src.getColor();
+        if (!isSupported(color))
+            throw new IllegalArgumentException("Unsupported color space: " + color);
 
-        return dst;
+        int nBands = nBands(width, height);
+        Runnable[] bands = new Runnable[nBands];
+        for (int i = 0; i < nBands; i++)
+            bands[i] = new ToImageBand(src, dst, orientation, height * i / nBands, height * (i + 1) / nBands);
+        run(bands);
     }
 
     public static BufferedImage rotate90ToRight( BufferedImage inputImage ) {
@@ -118,32 +136,6 @@ public class AWTUtil {
         return returnImage;
     }
 
-    private static void toBufferedImageCropped(Picture src, BufferedImage dst) {
-        byte[] data = ((DataBufferByte) dst.getRaster().getDataBuffer()).getData();
-        byte[] srcData = src.getPlaneData(0);
-        int dstStride = dst.getWidth() * 3;
-        int srcStride = src.getWidth() * 3;
-        for (int line = 0, srcOff = 0, dstOff = 0; line < dst.getHeight(); line++) {
-            for (int id = dstOff, is = srcOff; id < dstOff + dstStride; id += 3, is += 3) {
-                // Unshifting, since JCodec stores [0..255] -> [-128, 127]
-                data[id] = (byte) (srcData[is] + 128);
-                data[id + 1] = (byte) (srcData[is + 1] + 128);
-                data[id + 2] = (byte) (srcData[is + 2] + 128);
-            }
-            srcOff += srcStride;
-            dstOff += dstStride;
-        }
-    }
-
-    public static void toBufferedImage(Picture src, BufferedImage dst) {
-        byte[] data = ((DataBufferByte) dst.getRaster().getDataBuffer()).getData();
-        byte[] srcData = src.getPlaneData(0);
-        for (int i = 0; i < data.length; i++) {
-            // Unshifting, since JCodec stores [0..255] -> [-128, 127]
-            data[i] = (byte) (srcData[i] + 128);
-        }
-    }
-
     public static Picture fromBufferedImage(BufferedImage src, ColorSpace tgtColor) {
         Picture rgb = fromBufferedImageRGB(src);
         Transform tr = ColorUtil.getTransform(rgb.getColor(), tgtColor);
@@ -158,21 +150,305 @@ public class AWTUtil {
         return dst;
     }
 
+    /**
+     * Copies an image into the top left corner of a picture at least as large,
+     * the alpha channel is dropped. RGB and BGR pictures are filled in a single
+     * pass, TYPE_3BYTE_BGR, TYPE_4BYTE_ABGR and the TYPE_INT_* images are read
+     * straight from their data buffer. Pictures in other color spaces,
+     * including the high bit depth ones, are converted from an intermediate
+     * RGB picture.
+     */
     public static void fromBufferedImage(BufferedImage src, Picture dst) {
-        byte[] dstData = dst.getPlaneData(0);
-
-        int off = 0;
-        for (int i = 0; i < src.getHeight(); i++) {
-            for (int j = 0; j < src.getWidth(); j++) {
-                int rgb1 = src.getRGB(j, i);
-                dstData[off++] = (byte) (((rgb1 >> 16) & 0xff) - 128);
-                dstData[off++] = (byte) (((rgb1 >> 8) & 0xff) - 128);
-                dstData[off++] = (byte) ((rgb1 & 0xff) - 128);
-            }
+        int width = src.getWidth();
+        int height = src.getHeight();
+        if (dst.getWidth() < width || dst.getHeight() < height)
+            throw new IllegalArgumentException("Picture is " + dst.getWidth() + "x" + dst.getHeight() + ", image is "
+                    + width + "x" + height);
+        if (dst.getColor() != ColorSpace.RGB && dst.getColor() != ColorSpace.BGR) {
+            fromBufferedImageConvert(src, dst);
+            return;
+        }
+
+        int nBands = nBands(width, height);
+        Runnable[] bands = new Runnable[nBands];
+        for (int i = 0; i < nBands; i++)
+            bands[i] = new FromImageBand(src, dst, height * i / nBands, height * (i + 1) / nBands);
+        run(bands);
+    }
+
+    private static void fromBufferedImageConvert(BufferedImage src, Picture dst) {
+        Picture rgb = Picture.create(src.getWidth(), src.getHeight(), RGB);
+        fromBufferedImage(src, rgb);
+        if (dst.isHiBD()) {
+            TransformHiBD tr = ColorUtilHiBD.getTransform(RGB, dst.getColor());
+            if (tr == null)
+                throw new IllegalArgumentException("Unsupported color space: " + dst.getColor());
+            PictureHiBD out = PictureHiBD.create(dst.getWidth(), dst.getHeight(), dst.getColor());
+            // doCreate leaves the depth at 8
+            out.setBitDepth(dst.getLowBitsNum() + 8);
+            tr.transform(rgb.toPictureHiBD(), out);
+            new ColorUtil.Idential().transform(Picture.fromPictureHiBD(out), dst);
+        } else {
+            Transform tr = ColorUtil.getTransform(RGB, dst.getColor());
+            if (tr == null)
+                throw new IllegalArgumentException("Unsupported color space: " + dst.getColor());
+            tr.transform(rgb, dst);
         }
     }
 
     public static void savePicture(Picture pic, String format, File file) throws IOException {
         ImageIO.write(toBufferedImage(pic), format, file);
     }
+
+    private static boolean isSupported(ColorSpace color) {
+        return color == ColorSpace.RGB || color == ColorSpace.BGR || color == ColorSpace.YUV420
+                || color == ColorSpace.YUV420J || color == ColorSpace.YUV422 || color == ColorSpace.YUV422J
+                || color == ColorSpace.YUV444 || color == ColorSpace.YUV444J || color == ColorSpace.YUV422_10
+                || color == ColorSpace.YUV444_10;
+    }
+
+    private static boolean isFullRange(ColorSpace color) {
+        return color == ColorSpace.YUV420J || color == ColorSpace.YUV422J || color == ColorSpace.YUV444J;
+    }
+
+    private static int nBands(int width, int height) {
+        int nThreads = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(Math.min(nThreads, height), (width * height) / MIN_BAND_PIXELS));
+    }
+
+    private static void run(Runnable[] bands) {
+        if (bands.length == 1) {
+            bands[0].run();
+            return;
+        }
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < bands.length; i++)
+            futures.add(SharedThreadPool.get().submit(bands[i]));
+        RuntimeException error = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (Exception e) {
+                if (error == null)
+                    error = new RuntimeException(e);
+            }
+        }
+        if (error != null)
+            throw error;
+    }
+
+    /**
+     * The data buffer can be indexed with pixel coordinates, i.e. the raster is
+     * not a view into a larger image.
+     */
+    private static boolean isDirect(BufferedImage img, int elemsPerPixel) {
+        WritableRaster raster = img.getRaster();
+        DataBuffer buffer = raster.getDataBuffer();
+        return raster.getParent() == null && raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0 && buffer.getNumBanks() == 1 && buffer.getOffset() == 0
+                && buffer.getSize() == img.getWidth() * img.getHeight() * elemsPerPixel;
+    }
+
+    private static int clip(int val) {
+        return val < 0 ? 0 : (val > 255 ? 255 : val);
+    }
+
+    /**
+     * BT.601 studio swing to RGB. 'c', 'd' and 'e' are Y - 16, U - 128 and V -
+     * 128 with 'n' bits of extra precision.
+     */
+    private static int limitedToRgb(int c, int d, int e, int n) {
+        int round = 128 << n;
+        int shift = 8 + n;
+        int r = (298 * c + 409 * e + round) >> shift;
+        int g = (298 * c - 100 * d - 208 * e + round) >> shift;
+        int b = (298 * c + 516 * d + round) >> shift;
+        return (clip(r) << 16) | (clip(g) << 8) | clip(b);
+    }
+
+    /**
+     * JPEG full swing to RGB. 'y', 'cb' and 'cr' are Y, Cb - 128 and Cr - 128
+     * with 'n' bits of extra precision.
+     */
+    private static int fullToRgb(int y, int cb, int cr, int n) {
+        int y_ = y << SCALEBITS;
+        int round = ONE_HALF << n;
+        int shift = SCALEBITS + n;
+        int r = (y_ + FIX_1_402 * cr + round) >> shift;
+        int g = (y_ + _FIX_0_34414 * cb - FIX_0_71414 * cr + round) >> shift;
+        int b = (y_ + FIX_1_772 * cb + round) >> shift;
+        return (clip(r) << 16) | (clip(g) << 8) | clip(b);
+    }
+
+    private static final class ToImageBand implements Runnable {
+        private Picture src;
+        private BufferedImage dst;
+        private int from;
+        private int to;
+        // offset of cropped pixel (x, y) in the image is base + x * stepX +
+        // y * stepY
+        private int base;
+        private int stepX;
+        private int stepY;
+
+        private ToImageBand(Picture src, BufferedImage dst, Orientation orientation, int from, int to) {
+            this.src = src;
+            this.dst = dst;
+            this.from = from;
+            this.to = to;
+            int w = src.getCroppedWidth();
+            int h = src.getCroppedHeight();
+            if (orientation == Orientation.D_90) {
+                base = h - 1;
+                stepX = h;
+                stepY = -1;
+            } else if (orientation == Orientation.D_180) {
+                base = w * h - 1;
+                stepX = -1;
+                stepY = -w;
+            } else if (orientation == Orientation.D_270) {
+                base = (w - 1) * h;
+                stepX = -h;
+                stepY = 1;
+            } else {
+                base = 0;
+                stepX = 1;
+                stepY = w;
+            }
+        }
+
+        public void run() {
+            int type = dst.getType();
+            byte[] bytes = null;
+            int[] ints = null;
+            if (type == BufferedImage.TYPE_3BYTE_BGR && isDirect(dst, 3))
+                bytes = ((DataBufferByte) dst.getRaster().getDataBuffer()).getData();
+            else if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB
+                    || type == BufferedImage.TYPE_INT_BGR) && isDirect(dst, 1))
+                ints = ((DataBufferInt) dst.getRaster().getDataBuffer()).getData();
+            int alpha = type == BufferedImage.TYPE_INT_ARGB ? 0xff000000 : 0;
+            boolean bgr = type == BufferedImage.TYPE_INT_BGR;
+            int dstW = dst.getWidth();
+
+            ColorSpace color = src.getColor();
+            boolean planar = color.planar;
+            boolean fullRange = isFullRange(color);
+            int shiftX = planar ? color.compWidth[1] : 0;
+            int shiftY = planar ? color.compHeight[1] : 0;
+            byte[] y = src.getPlaneData(0);
+            byte[] u = planar ? src.getPlaneData(1) : null;
+            byte[] v = planar ? src.getPlaneData(2) : null;
+            byte[][] low = src.isHiBD() ? src.getLowBits() : null;
+            byte[] yl = low != null ? low[0] : null;
+            byte[] ul = low != null ? low[1] : null;
+            byte[] vl = low != null ? low[2] : null;
+            int n = low != null ? src.getLowBitsNum() : 0;
+            int lumaStride = src.getPlaneWidth(0);
+            int chromaStride = planar ? src.getPlaneWidth(1) : 0;
+            int startX = src.getStartX();
+            int width = src.getCroppedWidth();
+            int rIdx = color == ColorSpace.BGR ? 2 : 0;
+            int bIdx = 2 - rIdx;
+
+            for (int sy = from; sy < to; sy++) {
+                int py = sy + src.getStartY();
+                int lumaOff = py * lumaStride;
+                int chromaOff = (py >> shiftY) * chromaStride;
+                int o = base + sy * stepY;
+                for (int sx = 0; sx < width; sx++, o += stepX) {
+                    int px = sx + startX;
+                    int rgb;
+                    if (!planar) {
+                        int off = (lumaOff + px) * 3;
+                        rgb = ((y[off + rIdx] + 128) << 16) | ((y[off + 1] + 128) << 8) | (y[off + bIdx] + 128);
+                    } else {
+                        int l = lumaOff + px;
+                        int c = chromaOff + (px >> shiftX);
+                        int yy = ((y[l] + 128) << n) + (yl != null ? yl[l] : 0);
+                        int uu = (u[c] << n) + (ul != null ? ul[c] : 0);
+                        int vv = (v[c] << n) + (vl != null ? vl[c] : 0);
+                        rgb = fullRange ? fullToRgb(yy, uu, vv, n) : limitedToRgb(yy - (16 << n), uu, vv, n);
+                    }
+
+                    if (bytes != null) {
+                        int off = o * 3;
+                        bytes[off] = (byte) rgb;
+                        bytes[off + 1] = (byte) (rgb >> 8);
+                        bytes[off + 2] = (byte) (rgb >> 16);
+                    } else if (ints != null) {
+                        ints[o] = bgr ? ((rgb & 0xff) << 16) | (rgb & 0xff00) | ((rgb >> 16) & 0xff) : alpha | rgb;
+                    } else {
+                        dst.setRGB(o % dstW, o / dstW, 0xff000000 | rgb);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class FromImageBand implements Runnable {
+        private BufferedImage src;
+        private Picture dst;
+        private int from;
+        private int to;
+
+        private FromImageBand(BufferedImage src, Picture dst, int from, int to) {
+            this.src = src;
+            this.dst = dst;
+            this.from = from;
+            this.to = to;
+        }
+
+        public void run() {
+            int type = src.getType();
+            int width = src.getWidth();
+            int stride = dst.getPlaneWidth(0) * 3;
+            byte[] out = dst.getPlaneData(0);
+            int rIdx = dst.getColor() == ColorSpace.BGR ? 2 : 0;
+            int bIdx = 2 - rIdx;
+
+            if (type == BufferedImage.TYPE_3BYTE_BGR && isDirect(src, 3)
+                    || type == BufferedImage.TYPE_4BYTE_ABGR && isDirect(src, 4)) {
+                byte[] in = ((DataBufferByte) src.getRaster().getDataBuffer()).getData();
+                int pixelSize = type == BufferedImage.TYPE_3BYTE_BGR ? 3 : 4;
+                int alphaSkip = pixelSize - 3;
+                for (int y = from; y < to; y++) {
+                    int inOff = y * width * pixelSize + alphaSkip;
+                    int outOff = y * stride;
+                    for (int x = 0; x < width; x++, inOff += pixelSize, outOff += 3) {
+                        out[outOff + bIdx] = (byte) ((in[inOff] & 0xff) - 128);
+                        out[outOff + 1] = (byte) ((in[inOff + 1] & 0xff) - 128);
+                        out[outOff + rIdx] = (byte) ((in[inOff + 2] & 0xff) - 128);
+                    }
+                }
+                return;
+            }
+
+            int[] row = null;
+            int[] in = null;
+            if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB
+                    || type == BufferedImage.TYPE_INT_BGR) && isDirect(src, 1))
+                in = ((DataBufferInt) src.getRaster().getDataBuffer()).getData();
+            else
+                row = new int[width];
+            boolean bgr = in != null && type == BufferedImage.TYPE_INT_BGR;
+
+            for (int y = from; y < to; y++) {
+                int inOff = y * width;
+                if (in == null) {
+                    src.getRGB(0, y, width, 1, row, 0, width);
+                    inOff = 0;
+                }
+                int[] pixels = in != null ? in : row;
+                int outOff = y * stride;
+                for (int x = 0; x < width; x++, outOff += 3) {
+                    int rgb = pixels[inOff + x];
+                    int r = bgr ? rgb & 0xff : (rgb >> 16) & 0xff;
+                    int b = bgr ? (rgb >> 16) & 0xff : rgb & 0xff;
+                    out[outOff + rIdx] = (byte) (r - 128);
+                    out[outOff + 1] = (byte) (((rgb >> 8) & 0xff) - 128);
+                    out[outOff + bIdx] = (byte) (b - 128);
+                }
+            }
+        }
+    }
 }
@@ -1,12 +1,17 @@
 package org.jcodec.scale;
 
+import org.jcodec.common.DemuxerTrackMeta.Orientation;
 import org.jcodec.common.model.ColorSpace;
 import org.jcodec.common.model.Picture;
+import org.jcodec.common.model.PictureHiBD;
+import org.jcodec.common.model.Rect;
+import org.jcodec.scale.highbd.ColorUtilHiBD;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.awt.image.BufferedImage;
 import java.util.Arrays;
+import java.util.Random;
 
 public class AWTUtilTest {
 
@@ -40,4 +45,170 @@ public class AWTUtilTest {
             Assert.assertEquals(103, dst.getPlaneData(2)[i >> 2] + 128);
         }
     }
+
+    @Test
+    public void testMatchesColorTransform() {
+        ColorSpace[] colors = { ColorSpace.YUV420, ColorSpace.YUV420J, ColorSpace.YUV422 };
+        int[] types = { BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_BGR };
+        Random rnd = new Random(42);
+        for (ColorSpace color : colors) {
+            Picture src = randomPicture(rnd, 38, 22, color);
+            Picture rgb = Picture.create(38, 22, ColorSpace.RGB);
+            ColorUtil.getTransform(color, ColorSpace.RGB).transform(src, rgb);
+
+            for (int type : types) {
+                BufferedImage image = new BufferedImage(38, 22, type);
+                AWTUtil.toBufferedImage(src, image);
+                assertImage(rgb, 0, 0, image, Orientation.D_0);
+            }
+        }
+    }
+
+    @Test
+    public void testCropAndOrientation() {
+        Random rnd = new Random(42);
+        Picture src = randomPicture(rnd, 32, 24, ColorSpace.YUV420J);
+        Picture rgb = Picture.create(32, 24, ColorSpace.RGB);
+        ColorUtil.getTransform(ColorSpace.YUV420J, ColorSpace.RGB).transform(src, rgb);
+        Picture cropped = Picture.createCropped(32, 24, ColorSpace.YUV420J, new Rect(6, 4, 20, 14));
+        for (int p = 0; p < 3; p++)
+            System.arraycopy(src.getPlaneData(p), 0, cropped.getPlaneData(p), 0, src.getPlaneData(p).length);
+
+        for (Orientation orientation : Orientation.values()) {
+            BufferedImage image = AWTUtil.toBufferedImage(cropped, orientation);
+            assertImage(rgb, 6, 4, image, orientation);
+        }
+    }
+
+    @Test
+    public void testRoundTripRGB() {
+        Random rnd = new Random(42);
+        Picture src = randomPicture(rnd, 17, 9, ColorSpace.RGB);
+        int[] types = { BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB,
+                BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_USHORT_565_RGB };
+        for (int type : types) {
+            BufferedImage image = new BufferedImage(17, 9, type);
+            AWTUtil.toBufferedImage(src, image);
+            Picture dst = Picture.create(17, 9, ColorSpace.BGR);
+            AWTUtil.fromBufferedImage(image, dst);
+            if (type == BufferedImage.TYPE_USHORT_565_RGB)
+                continue;
+            byte[] in = src.getPlaneData(0);
+            byte[] out = dst.getPlaneData(0);
+            for (int i = 0; i < in.length; i += 3) {
+                Assert.assertEquals(in[i], out[i + 2]);
+                Assert.assertEquals(in[i + 1], out[i + 1]);
+                Assert.assertEquals(in[i + 2], out[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testToBufferedImageHiBD() {
+        Random rnd = new Random(42);
+        Picture src = Picture.createCroppedHiBD(24, 16, 2, ColorSpace.YUV422_10, null);
+        Picture src8 = Picture.create(24, 16, ColorSpace.YUV422);
+        for (int p = 0; p < 3; p++) {
+            rnd.nextBytes(src.getPlaneData(p));
+            System.arraycopy(src.getPlaneData(p), 0, src8.getPlaneData(p), 0, src.getPlaneData(p).length);
+        }
+        // Without the low bits it's the 8 bit conversion
+        BufferedImage image = AWTUtil.toBufferedImage(src);
+        Picture rgb = Picture.create(24, 16, ColorSpace.RGB);
+        ColorUtil.getTransform(ColorSpace.YUV422, ColorSpace.RGB).transform(src8, rgb);
+        assertImage(rgb, 0, 0, image, Orientation.D_0);
+
+        // With the low bits it's within a rounding of the 10 bit conversion
+        for (int p = 0; p < 3; p++) {
+            byte[] low = src.getLowBits()[p];
+            for (int i = 0; i < low.length; i++)
+                low[i] = (byte) rnd.nextInt(4);
+        }
+        image = AWTUtil.toBufferedImage(src);
+        PictureHiBD hiBD = src.toPictureHiBD();
+        for (int i = 0; i < 24 * 16; i++) {
+            int x = i % 24, y = i / 24, c = y * 12 + (x >> 1);
+            // BT.601 studio range, in floating point
+            double luma = 1.164 * (hiBD.getPlaneData(0)[i] / 4. - 16);
+            double cb = hiBD.getPlaneData(1)[c] / 4. - 128;
+            double cr = hiBD.getPlaneData(2)[c] / 4. - 128;
+            int rgbVal = image.getRGB(x, y);
+            Assert.assertEquals(clip(luma + 1.596 * cr), (rgbVal >> 16) & 0xff, 1);
+            Assert.assertEquals(clip(luma - 0.391 * cb - 0.813 * cr), (rgbVal >> 8) & 0xff, 1);
+            Assert.assertEquals(clip(luma + 2.018 * cb), rgbVal & 0xff, 1);
+        }
+    }
+
+    @Test
+    public void testFromBufferedImageConverts() {
+        Random rnd = new Random(42);
+        Picture src = randomPicture(rnd, 32, 16, ColorSpace.RGB);
+        BufferedImage image = new BufferedImage(32, 16, BufferedImage.TYPE_3BYTE_BGR);
+        AWTUtil.toBufferedImage(src, image);
+
+        Picture yuv = Picture.create(32, 16, ColorSpace.YUV420);
+        AWTUtil.fromBufferedImage(image, yuv);
+        Picture expected = Picture.create(32, 16, ColorSpace.YUV420);
+        ColorUtil.getTransform(ColorSpace.RGB, ColorSpace.YUV420).transform(src, expected);
+        for (int p = 0; p < 3; p++)
+            Assert.assertArrayEquals(expected.getPlaneData(p), yuv.getPlaneData(p));
+
+        Picture hiBD = Picture.createCroppedHiBD(32, 16, 2, ColorSpace.YUV422_10, null);
+        AWTUtil.fromBufferedImage(image, hiBD);
+        PictureHiBD expectedHiBD = PictureHiBD.createWithDepth(32, 16, ColorSpace.YUV422_10, 10);
+        ColorUtilHiBD.getTransform(ColorSpace.RGB, ColorSpace.YUV422_10).transform(src.toPictureHiBD(), expectedHiBD);
+        PictureHiBD actual = hiBD.toPictureHiBD();
+        for (int p = 0; p < 3; p++)
+            Assert.assertArrayEquals(expectedHiBD.getPlaneData(p), actual.getPlaneData(p));
+    }
+
+    @Test
+    public void testFromBufferedImageLargerPicture() {
+        Random rnd = new Random(42);
+        Picture src = randomPicture(rnd, 17, 9, ColorSpace.RGB);
+        BufferedImage image = new BufferedImage(17, 9, BufferedImage.TYPE_INT_RGB);
+        AWTUtil.toBufferedImage(src, image);
+        // Macroblock aligned picture
+        Picture dst = Picture.create(32, 16, ColorSpace.RGB);
+        AWTUtil.fromBufferedImage(image, dst);
+        for (int y = 0; y < 9; y++)
+            for (int i = 0; i < 17 * 3; i++)
+                Assert.assertEquals(src.getPlaneData(0)[y * 17 * 3 + i], dst.getPlaneData(0)[y * 32 * 3 + i]);
+    }
+
+    private static Picture randomPicture(Random rnd, int width, int height, ColorSpace color) {
+        Picture pic = Picture.create(width, height, color);
+        for (int p = 0; p < pic.getData().length; p++)
+            rnd.nextBytes(pic.getPlaneData(p));
+        return pic;
+    }
+
+    private static void assertImage(Picture rgb, int x0, int y0, BufferedImage image, Orientation orientation) {
+        boolean transpose = orientation == Orientation.D_90 || orientation == Orientation.D_270;
+        int w = transpose ? image.getHeight() : image.getWidth();
+        int h = transpose ? image.getWidth() : image.getHeight();
+        byte[] data = rgb.getPlaneData(0);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int off = ((y + y0) * rgb.getWidth() + x + x0) * 3;
+                int expected = ((data[off] + 128) << 16) | ((data[off + 1] + 128) << 8) | (data[off + 2] + 128);
+                int dx = x, dy = y;
+                if (orientation == Orientation.D_90) {
+                    dx = h - 1 - y;
+                    dy = x;
+                } else if (orientation == Orientation.D_180) {
+                    dx = w - 1 - x;
+                    dy = h - 1 - y;
+                } else if (orientation == Orientation.D_270) {
+                    dx = y;
+                    dy = w - 1 - x;
+                }
+                Assert.assertEquals(expected, image.getRGB(dx, dy) & 0xffffff);
+            }
+        }
+    }
+
+    private static double clip(double val) {
+        return Math.max(0, Math.min(255, val));
+    }
 }
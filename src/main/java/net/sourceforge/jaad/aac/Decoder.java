@@ -1,4 +1,6 @@
 package net.sourceforge.jaad.aac;
+import java.nio.ByteBuffer;
+
 import org.jcodec.common.logging.Logger;
 
 import net.sourceforge.jaad.aac.filterbank.FilterBank;
@@ -24,6 +26,7 @@ public class Decoder implements SyntaxConstants {
     private final FilterBank filterBank;
     private IBitStream _in;
     private ADIFHeader adifHeader;
+    private boolean outputReady;
 
     /**
      * The methods returns true, if a profile is supported by the decoder.
@@ -84,7 +87,6 @@ public class Decoder implements SyntaxConstants {
     public void decodeFrame(byte[] frame, SampleBuffer buffer) throws AACException {
         if (frame != null)
             _in.setData(frame);
-        Logger.debug("bits left " + _in.getBitsLeft());
         try {
             decode(buffer);
         } catch (AACException e) {
@@ -95,7 +97,92 @@ public class Decoder implements SyntaxConstants {
         }
     }
 
-    private void decode(SampleBuffer buffer) throws AACException {
+    /**
+     * Decodes one frame of AAC data in frame mode keeping the samples inside
+     * of the decoder. No memory is allocated once the decoder has seen the
+     * first frame of a stream. The result is available through
+     * <code>getOutputData()</code> and <code>writeOutput(ByteBuffer)</code>
+     * until the next frame is decoded.
+     * 
+     * @param frame
+     *            the AAC frame, the remaining bytes are read without
+     *            changing the position of the buffer
+     * @throws AACException
+     *             if decoding fails
+     */
+    public void decodeFrame(ByteBuffer frame) throws AACException {
+        outputReady = false;
+        _in.setData(frame);
+        try {
+            decode();
+            outputReady = true;
+        } catch (AACException e) {
+            if (!e.isEndOfStream())
+                throw e;
+            else
+                Logger.warn("unexpected end of frame");
+        }
+    }
+
+    /**
+     * Decodes one frame of AAC data straight into the output buffer as
+     * interleaved signed 16 bit little endian PCM.
+     * 
+     * @param frame
+     *            the AAC frame
+     * @param out
+     *            the buffer to write the samples to starting at its position,
+     *            the position is advanced past the samples written
+     * @throws AACException
+     *             if decoding fails
+     */
+    public void decodeFrame(ByteBuffer frame, ByteBuffer out) throws AACException {
+        decodeFrame(frame);
+        writeOutput(out);
+    }
+
+    /**
+     * Writes the last decoded frame as interleaved signed 16 bit little endian
+     * PCM at the position of the buffer.
+     */
+    public void writeOutput(ByteBuffer out) {
+        if (outputReady)
+            syntacticElements.sendToOutput(out);
+    }
+
+    /**
+     * Decoded samples of the last frame, one array per channel with
+     * <code>getOutputLength()</code> valid samples in each. The arrays are
+     * owned by the decoder and are overwritten by the next frame.
+     */
+    public float[][] getOutputData() {
+        return outputReady ? syntacticElements.getOutputData() : null;
+    }
+
+    /**
+     * Number of samples per channel of the last decoded frame.
+     */
+    public int getOutputLength() {
+        return outputReady ? syntacticElements.getOutputLength() : 0;
+    }
+
+    /**
+     * Number of bytes <code>writeOutput(ByteBuffer)</code> will produce for the
+     * last decoded frame.
+     */
+    public int getOutputSize() {
+        return outputReady ? syntacticElements.getOutputSize() : 0;
+    }
+
+    public int getOutputChannels() {
+        return outputReady ? syntacticElements.getOutputChannels() : 0;
+    }
+
+    public int getOutputSampleRate() {
+        return outputReady ? syntacticElements.getOutputSampleRate() : 0;
+    }
+
+    private void decode() throws AACException {
         if (ADIFHeader.isPresent(_in)) {
             adifHeader = ADIFHeader.readHeader(_in);
             final PCE pce = adifHeader.getFirstPCE();
@@ -114,11 +201,19 @@ public class Decoder implements SyntaxConstants {
             syntacticElements.decode(_in);
             //2: spectral processing
             syntacticElements.process(filterBank);
-            //3: send to output buffer
-            syntacticElements.sendToOutput(buffer);
         } catch (Exception e) {
-            buffer.setData(new byte[0], 0, 0, 0, 0);
             throw AACException.wrap(e);
         }
     }
+
+    private void decode(SampleBuffer buffer) throws AACException {
+        try {
+            decode();
+        } catch (AACException e) {
+            buffer.setData(new byte[0], 0, 0, 0, 0);
+            throw e;
+        }
+        //3: send to output buffer
+        syntacticElements.sendToOutput(buffer);
+    }
 }
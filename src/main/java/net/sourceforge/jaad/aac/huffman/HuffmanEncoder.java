@@ -0,0 +1,186 @@
+package net.sourceforge.jaad.aac.huffman;
+
+import org.jcodec.common.io.BitWriter;
+
+/**
+ * This class is part of JAAD ( jaadec.sourceforge.net ) that is distributed
+ * under the Public Domain license. Code changes provided by the JCodec project
+ * are distributed under FreeBSD license.
+ *
+ * Encoding side of the spectral and scalefactor codebooks, the codeword
+ * tables are built from the same data the decoder uses.
+ *
+ * @author The JCodec project
+ */
+public final class HuffmanEncoder implements Codebooks, HCB {
+
+	private static final boolean[] UNSIGNED = {false, false, true, true, false, false, true, true, true, true, true};
+	private static final int[] LAV = {1, 1, 2, 2, 4, 4, 7, 7, 12, 12, 16};
+	private static final int MAX_ESCAPE = 8191;
+	private static final int[][] LENGTHS = new int[11][];
+	private static final int[][] CODES = new int[11][];
+	private static final int[] SF_LENGTHS = new int[121];
+	private static final int[] SF_CODES = new int[121];
+
+	static {
+		for(int cb = 1; cb<=11; cb++) {
+			final int[][] table = CODEBOOKS[cb-1];
+			final int dim = cb<FIRST_PAIR_HCB ? 4 : 2;
+			int size = 1;
+			for(int i = 0; i<dim; i++) {
+				size *= modulo(cb);
+			}
+			LENGTHS[cb-1] = new int[size];
+			CODES[cb-1] = new int[size];
+			for(int i = 0; i<table.length; i++) {
+				int idx = dim==4 ? index(cb, table[i][2], table[i][3], table[i][4], table[i][5]) : index(cb, table[i][2], table[i][3]);
+				LENGTHS[cb-1][idx] = table[i][0];
+				CODES[cb-1][idx] = table[i][1];
+			}
+		}
+		for(int i = 0; i<HCB_SF.length; i++) {
+			SF_LENGTHS[HCB_SF[i][2]] = HCB_SF[i][0];
+			SF_CODES[HCB_SF[i][2]] = HCB_SF[i][1];
+		}
+	}
+
+	private HuffmanEncoder() {
+	}
+
+	private static int modulo(int cb) {
+		return UNSIGNED[cb-1] ? LAV[cb-1]+1 : 2*LAV[cb-1]+1;
+	}
+
+	private static int index(int cb, int a, int b) {
+		final int mod = modulo(cb);
+		final int off = UNSIGNED[cb-1] ? 0 : LAV[cb-1];
+		return (a+off)*mod+(b+off);
+	}
+
+	private static int index(int cb, int a, int b, int c, int d) {
+		final int mod = modulo(cb);
+		final int off = UNSIGNED[cb-1] ? 0 : LAV[cb-1];
+		return (((a+off)*mod+(b+off))*mod+(c+off))*mod+(d+off);
+	}
+
+	/**
+	 * Largest absolute quantized value the codebook can represent.
+	 */
+	public static int maxValue(int cb) {
+		return cb==ESCAPE_HCB ? MAX_ESCAPE : LAV[cb-1];
+	}
+
+	/**
+	 * The first codebook able to represent the quantized values up to the
+	 * given magnitude, ZERO_HCB for an all zero band. Codebooks come in pairs
+	 * with the same range, the returned one is the first of the pair.
+	 */
+	public static int firstCodebook(int maxAbs) {
+		if(maxAbs==0) return ZERO_HCB;
+		for(int cb = 1; cb<ESCAPE_HCB; cb += 2) {
+			if(maxAbs<=LAV[cb-1]) return cb;
+		}
+		return ESCAPE_HCB;
+	}
+
+	private static int clip(int cb, int v) {
+		return cb==ESCAPE_HCB&&v>=16 ? 16 : v;
+	}
+
+	private static int escapeBits(int v) {
+		if(v<16) return 0;
+		final int n = 31-Integer.numberOfLeadingZeros(v);
+		return 2*n-3;
+	}
+
+	/**
+	 * Number of bits the quantized values take with the given codebook,
+	 * including sign and escape bits.
+	 */
+	public static int countBits(int cb, int[] q, int off, int len) {
+		if(cb==ZERO_HCB) return 0;
+		final int[] lengths = LENGTHS[cb-1];
+		final boolean unsigned = UNSIGNED[cb-1];
+		int bits = 0;
+		if(cb<FIRST_PAIR_HCB) {
+			for(int i = off; i<off+len; i += 4) {
+				if(unsigned) {
+					bits += lengths[index(cb, abs(q[i]), abs(q[i+1]), abs(q[i+2]), abs(q[i+3]))];
+					bits += nz(q[i])+nz(q[i+1])+nz(q[i+2])+nz(q[i+3]);
+				}
+				else bits += lengths[index(cb, q[i], q[i+1], q[i+2], q[i+3])];
+			}
+		}
+		else {
+			for(int i = off; i<off+len; i += 2) {
+				if(unsigned) {
+					final int a = abs(q[i]), b = abs(q[i+1]);
+					bits += lengths[index(cb, clip(cb, a), clip(cb, b))];
+					bits += nz(a)+nz(b);
+					if(cb==ESCAPE_HCB) bits += escapeBits(a)+escapeBits(b);
+				}
+				else bits += lengths[index(cb, q[i], q[i+1])];
+			}
+		}
+		return bits;
+	}
+
+	public static void encode(BitWriter out, int cb, int[] q, int off, int len) {
+		if(cb==ZERO_HCB) return;
+		final int[] lengths = LENGTHS[cb-1];
+		final int[] codes = CODES[cb-1];
+		final boolean unsigned = UNSIGNED[cb-1];
+		final int dim = cb<FIRST_PAIR_HCB ? 4 : 2;
+		for(int i = off; i<off+len; i += dim) {
+			int idx;
+			if(dim==4) {
+				idx = unsigned ? index(cb, abs(q[i]), abs(q[i+1]), abs(q[i+2]), abs(q[i+3]))
+						: index(cb, q[i], q[i+1], q[i+2], q[i+3]);
+			}
+			else {
+				idx = unsigned ? index(cb, clip(cb, abs(q[i])), clip(cb, abs(q[i+1]))) : index(cb, q[i], q[i+1]);
+			}
+			out.writeNBit(codes[idx], lengths[idx]);
+			if(unsigned) {
+				for(int j = i; j<i+dim; j++) {
+					if(q[j]!=0) out.write1Bit(q[j]<0 ? 1 : 0);
+				}
+				if(cb==ESCAPE_HCB) {
+					writeEscape(out, abs(q[i]));
+					writeEscape(out, abs(q[i+1]));
+				}
+			}
+		}
+	}
+
+	private static void writeEscape(BitWriter out, int v) {
+		if(v<16) return;
+		final int n = 31-Integer.numberOfLeadingZeros(v);
+		//n-4 ones terminated by a zero, then the n low bits
+		for(int i = 4; i<n; i++) {
+			out.write1Bit(1);
+		}
+		out.write1Bit(0);
+		out.writeNBit(v&((1<<n)-1), n);
+	}
+
+	/**
+	 * @param delta
+	 *            difference to the previous scalefactor, -60..60
+	 */
+	public static int scaleFactorBits(int delta) {
+		return SF_LENGTHS[delta+60];
+	}
+
+	public static void encodeScaleFactor(BitWriter out, int delta) {
+		out.writeNBit(SF_CODES[delta+60], SF_LENGTHS[delta+60]);
+	}
+
+	private static int abs(int v) {
+		return v<0 ? -v : v;
+	}
+
+	private static int nz(int v) {
+		return v!=0 ? 1 : 0;
+	}
+}
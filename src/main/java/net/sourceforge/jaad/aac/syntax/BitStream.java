@@ -1,6 +1,9 @@
 package net.sourceforge.jaad.aac.syntax;
 import static java.lang.System.arraycopy;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 import net.sourceforge.jaad.aac.AACException;
 
 /**
@@ -23,6 +26,7 @@ public class BitStream implements IBitStream {
     }
 
     private byte[] buffer;
+	private int limit; //number of valid bytes in the buffer, rounded up to a word
 	private int pos; //offset in the buffer array
 	private int cache; //current 4 bytes, that are read from the buffer
 	protected int bitsCached; //remaining bits in current cache
@@ -38,6 +42,7 @@ public class BitStream implements IBitStream {
     public void destroy() {
 		reset();
 		buffer = null;
+		limit = 0;
 	}
 
 	/* (non-Javadoc)
@@ -45,11 +50,37 @@ public class BitStream implements IBitStream {
      */
 	@Override
     public final void setData(byte[] data) {
+		final int length = data.length;
+		ensureCapacity(length);
+		arraycopy(data, 0, buffer, 0, length);
+		pad(length);
+	}
+
+	/* (non-Javadoc)
+     * @see net.sourceforge.jaad.aac.syntax.IBitStream#setData(java.nio.ByteBuffer)
+     */
+	@Override
+    public final void setData(ByteBuffer data) {
+		final int length = data.remaining();
+		ensureCapacity(length);
+		final int position = data.position();
+		if(data.hasArray()) arraycopy(data.array(), data.arrayOffset()+position, buffer, 0, length);
+		else {
+			data.get(buffer, 0, length);
+			data.position(position);
+		}
+		pad(length);
+	}
+
+	private void ensureCapacity(int length) {
 		//make the buffer size an integer number of words
-		final int size = WORD_BYTES*((data.length+WORD_BYTES-1)/WORD_BYTES);
-		//only reallocate if needed
-		if(buffer==null||buffer.length!=size) buffer = new byte[size];
-		arraycopy(data, 0, buffer, 0, data.length);
+		limit = WORD_BYTES*((length+WORD_BYTES-1)/WORD_BYTES);
+		//only reallocate if needed, the buffer is reused for all the following frames
+		if(buffer==null||buffer.length<limit) buffer = new byte[limit];
+	}
+
+	private void pad(int length) {
+		Arrays.fill(buffer, length, limit, (byte) 0);
 		reset();
 	}
 
@@ -86,7 +117,7 @@ public class BitStream implements IBitStream {
      */
 	@Override
     public int getBitsLeft() {
-		return buffer != null ? 8*(buffer.length-pos)+bitsCached : 0;
+		return buffer != null ? 8*(limit-pos)+bitsCached : 0;
 	}
 
 	/**
@@ -95,7 +126,7 @@ public class BitStream implements IBitStream {
 	 */
 	protected int readCache(boolean peek) throws AACException {
 		int i;
-		if(pos>buffer.length-WORD_BYTES) throw AACException.endOfStream();
+		if(pos>limit-WORD_BYTES) throw AACException.endOfStream();
 		else i = ((buffer[pos]&BYTE_MASK)<<24)
 					|((buffer[pos+1]&BYTE_MASK)<<16)
 					|((buffer[pos+2]&BYTE_MASK)<<8)
@@ -91,8 +91,11 @@ public class CPE extends Element implements SyntaxConstants {
 		return commonWindow;
 	}
 
+    //values() clones the array on every call
+    private static final MSMask[] MS_MASK_VALUES = MSMask.values();
+
     public static MSMask msMaskFromInt(int i) throws AACException {
-        MSMask[] values = MSMask.values();
+        MSMask[] values = MS_MASK_VALUES;
         if (i >= values.length) {
             throw new AACException("unknown MS mask type");
         }
@@ -24,7 +24,8 @@ class DSE extends Element {
 
 		if(byteAlign) _in.byteAlign();
 
-		dataStreamBytes = new byte[count];
+		//only reallocate if needed
+		if(dataStreamBytes==null||dataStreamBytes.length<count) dataStreamBytes = new byte[count];
 		for(int i = 0; i<count; i++) {
 			dataStreamBytes[i] = (byte) _in.readBits(8);
 		}
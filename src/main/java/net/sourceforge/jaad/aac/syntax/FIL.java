@@ -15,6 +15,8 @@ class FIL extends Element implements SyntaxConstants {
 	public static class DynamicRangeInfo {
 
 		private static final int MAX_NBR_BANDS = 7;
+		//band_increment is 4 bits wide
+		private static final int MAX_DRC_BANDS = 16;
 		private final boolean[] excludeMask;
 		private final boolean[] additionalExcludedChannels;
 		private boolean pceTagPresent;
@@ -23,15 +25,18 @@ class FIL extends Element implements SyntaxConstants {
 		private boolean excludedChannelsPresent;
 		private boolean bandsPresent;
 		private int bandsIncrement, interpolationScheme;
-		private int[] bandTop;
+		private final int[] bandTop;
 		private boolean progRefLevelPresent;
 		private int progRefLevel, progRefLevelReservedBits;
-		private boolean[] dynRngSgn;
-		private int[] dynRngCtl;
+		private final boolean[] dynRngSgn;
+		private final int[] dynRngCtl;
 
 		public DynamicRangeInfo() {
 			excludeMask = new boolean[MAX_NBR_BANDS];
 			additionalExcludedChannels = new boolean[MAX_NBR_BANDS];
+			bandTop = new int[MAX_DRC_BANDS];
+			dynRngSgn = new boolean[MAX_DRC_BANDS];
+			dynRngCtl = new int[MAX_DRC_BANDS];
 		}
 	}
 	private static final int TYPE_FILL = 0;
@@ -121,7 +126,6 @@ class FIL extends Element implements SyntaxConstants {
 			dri.interpolationScheme = _in.readBits(4);
 			ret -= 8;
 			bandCount += dri.bandsIncrement;
-			dri.bandTop = new int[bandCount];
 			for(int i = 0; i<bandCount; i++) {
 				dri.bandTop[i] = _in.readBits(8);
 				ret -= 8;
@@ -135,8 +139,6 @@ class FIL extends Element implements SyntaxConstants {
 			ret -= 8;
 		}
 
-		dri.dynRngSgn = new boolean[bandCount];
-		dri.dynRngCtl = new int[bandCount];
 		for(int i = 0; i<bandCount; i++) {
 			dri.dynRngSgn[i] = _in.readBool();
 			dri.dynRngCtl[i] = _in.readBits(7);
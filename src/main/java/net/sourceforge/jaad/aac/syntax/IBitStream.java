@@ -1,5 +1,7 @@
 package net.sourceforge.jaad.aac.syntax;
 
+import java.nio.ByteBuffer;
+
 import net.sourceforge.jaad.aac.AACException;
 
 /**
@@ -15,6 +17,11 @@ public interface IBitStream {
 
     void setData(byte[] data);
 
+    /**
+     * Reads the remaining bytes of the buffer, leaving its position untouched.
+     */
+    void setData(ByteBuffer data);
+
     void byteAlign() throws AACException;
 
     void reset();
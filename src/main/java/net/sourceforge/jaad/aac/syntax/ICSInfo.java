@@ -2,7 +2,6 @@ package net.sourceforge.jaad.aac.syntax;
 
 import static net.sourceforge.jaad.aac.Profile.*;
 
-import org.jcodec.platform.Platform;
 
 import net.sourceforge.jaad.aac.AACException;
 import net.sourceforge.jaad.aac.AACDecoderConfig;
@@ -35,14 +34,21 @@ public class ICSInfo implements SyntaxConstants, ScaleFactorBands {
         };
         private final int frameLength;
         private final int[] states;
+        private final float[] _in, out;
         private int coef, lag, lastBand;
         private boolean lagUpdate;
-        private boolean[] shortUsed, shortLagPresent, longUsed;
-        private int[] shortLag;
+        private final boolean[] shortUsed, shortLagPresent, longUsed;
+        private final int[] shortLag;
 
         public LTPrediction(int frameLength) {
             this.frameLength = frameLength;
             states = new int[4*frameLength];
+            shortUsed = new boolean[8];
+            shortLagPresent = new boolean[8];
+            shortLag = new int[8];
+            longUsed = new boolean[MAX_LTP_SFB];
+            _in = new float[2048];
+            out = new float[2048];
         }
 
         public void decode(IBitStream _in, ICSInfo info, Profile profile) throws AACException {
@@ -58,9 +64,6 @@ public class ICSInfo implements SyntaxConstants, ScaleFactorBands {
             final int windowCount = info.getWindowCount();
 
             if(info.isEightShortFrame()) {
-                shortUsed = new boolean[windowCount];
-                shortLagPresent = new boolean[windowCount];
-                shortLag = new int[windowCount];
                 for(int w = 0; w<windowCount; w++) {
                     if((shortUsed[w] = _in.readBool())) {
                         shortLagPresent[w] = _in.readBool();
@@ -70,7 +73,6 @@ public class ICSInfo implements SyntaxConstants, ScaleFactorBands {
             }
             else {
                 lastBand = Math.min(info.getMaxSFB(), MAX_LTP_SFB);
-                longUsed = new boolean[lastBand];
                 for(int i = 0; i<lastBand; i++) {
                     longUsed[i] = _in.readBool();
                 }
@@ -78,7 +80,7 @@ public class ICSInfo implements SyntaxConstants, ScaleFactorBands {
         }
 
         public void setPredictionUnused(int sfb) {
-            if(longUsed!=null) longUsed[sfb] = false;
+            if(sfb<lastBand) longUsed[sfb] = false;
         }
 
         public void process(ICStream ics, float[] data, FilterBank filterBank, SampleFrequency sf) {
@@ -86,8 +88,6 @@ public class ICSInfo implements SyntaxConstants, ScaleFactorBands {
 
             if(!info.isEightShortFrame()) {
                 final int samples = frameLength<<1;
-                final float[] _in = new float[2048];
-                final float[] out = new float[2048];
 
                 for(int i = 0; i<samples; i++) {
                     _in[i] = states[samples+i-lag]*CODEBOOK[coef];
@@ -143,10 +143,10 @@ public class ICSInfo implements SyntaxConstants, ScaleFactorBands {
             lag = ltp.lag;
             lastBand = ltp.lastBand;
             lagUpdate = ltp.lagUpdate;
-            shortUsed = Platform.copyOfBool(ltp.shortUsed, ltp.shortUsed.length);
-            shortLagPresent = Platform.copyOfBool(ltp.shortLagPresent, ltp.shortLagPresent.length);
-            shortLag = Platform.copyOfInt(ltp.shortLag, ltp.shortLag.length);
-            longUsed = Platform.copyOfBool(ltp.longUsed, ltp.longUsed.length);
+            arraycopy(ltp.shortUsed, 0, shortUsed, 0, shortUsed.length);
+            arraycopy(ltp.shortLagPresent, 0, shortLagPresent, 0, shortLagPresent.length);
+            arraycopy(ltp.shortLag, 0, shortLag, 0, shortLag.length);
+            arraycopy(ltp.longUsed, 0, longUsed, 0, longUsed.length);
         }
     }
 
@@ -162,8 +162,11 @@ public class ICSInfo implements SyntaxConstants, ScaleFactorBands {
 		LONG_STOP_SEQUENCE;
 	}
 
+	//values() clones the array on every call
+	private static final WindowSequence[] WINDOW_SEQUENCE_VALUES = WindowSequence.values();
+
 	public static WindowSequence windowSequenceFromInt(int i) throws AACException {
-        WindowSequence[] values = WindowSequence.values();
+        WindowSequence[] values = WINDOW_SEQUENCE_VALUES;
         if (i >= values.length) {
             throw new AACException("unknown window sequence type");
         }
@@ -272,6 +275,19 @@ public class ICSInfo implements SyntaxConstants, ScaleFactorBands {
 		return swbOffsets;
 	}
 
+	/**
+	 * Scalefactor band offsets of a long window, entry
+	 * <code>getLongWindowSWBCount(sf)</code> holds the frame length. Used by
+	 * the encoder, the array is shared and must not be modified.
+	 */
+	public static int[] getLongWindowSWBOffsets(SampleFrequency sf) {
+		return SWB_OFFSET_LONG_WINDOW[sf.getIndex()];
+	}
+
+	public static int getLongWindowSWBCount(SampleFrequency sf) {
+		return SWB_LONG_WINDOW_COUNT[sf.getIndex()];
+	}
+
 	public int getSWBOffsetMax() {
 		return swbOffsets[swbCount];
 	}
@@ -331,7 +347,7 @@ public class ICSInfo implements SyntaxConstants, ScaleFactorBands {
 	}
 
 	public void setData(ICSInfo info) {
-		windowSequence = WindowSequence.valueOf(info.windowSequence.name());
+		windowSequence = info.windowSequence;
 		windowShape[PREVIOUS] = windowShape[CURRENT];
 		windowShape[CURRENT] = info.windowShape[CURRENT];
 		maxSFB = info.maxSFB;
@@ -344,8 +360,9 @@ public class ICSInfo implements SyntaxConstants, ScaleFactorBands {
 		}
 		windowCount = info.windowCount;
 		windowGroupCount = info.windowGroupCount;
-		windowGroupLength = Platform.copyOfInt(info.windowGroupLength, info.windowGroupLength.length);
+		arraycopy(info.windowGroupLength, 0, windowGroupLength, 0, windowGroupLength.length);
 		swbCount = info.swbCount;
-		swbOffsets = Platform.copyOfInt(info.swbOffsets, info.swbOffsets.length);
+		//the offsets are shared read-only tables
+		swbOffsets = info.swbOffsets;
 	}
 }
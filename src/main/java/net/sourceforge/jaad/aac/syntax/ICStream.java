@@ -32,6 +32,7 @@ public class ICStream implements SyntaxConstants, HCB, ScaleFactorTable, IQTable
 	private final int[] sectEnd;
 	private final float[] data;
 	private final float[] scaleFactors;
+	private final int[] spectralBuf; //huffman decoded quadruple, reused across frames
 	private int globalGain;
 	private boolean pulseDataPresent, tnsDataPresent, gainControlPresent;
 	//only allocated if needed
@@ -52,6 +53,7 @@ public class ICStream implements SyntaxConstants, HCB, ScaleFactorTable, IQTable
 		sectEnd = new int[MAX_SECTIONS];
 		data = new float[frameLength];
 		scaleFactors = new float[MAX_SECTIONS];
+		spectralBuf = new int[4];
 	}
 
 	/* ========= decoding ========== */
@@ -155,8 +157,7 @@ public class ICStream implements SyntaxConstants, HCB, ScaleFactorTable, IQTable
 	public void decodeScaleFactors(IBitStream _in) throws AACException {
 		final int windowGroups = info.getWindowGroupCount();
 		final int maxSFB = info.getMaxSFB();
-		//0: spectrum, 1: noise, 2: intensity
-		final int[] offset = {globalGain, globalGain-90, 0};
+		int offSpectrum = globalGain, offNoise = globalGain-90, offIntensity = 0;
 
 		int tmp;
 		boolean noiseFlag = true;
@@ -174,27 +175,27 @@ public class ICStream implements SyntaxConstants, HCB, ScaleFactorTable, IQTable
 					case INTENSITY_HCB:
 					case INTENSITY_HCB2:
 						for(; sfb<end; sfb++, idx++) {
-							offset[2] += Huffman.decodeScaleFactor(_in)-SF_DELTA;
-							tmp = Math.min(Math.max(offset[2], -155), 100);
+							offIntensity += Huffman.decodeScaleFactor(_in)-SF_DELTA;
+							tmp = Math.min(Math.max(offIntensity, -155), 100);
 							scaleFactors[idx] = SCALEFACTOR_TABLE[-tmp+SF_OFFSET];
 						}
 						break;
 					case NOISE_HCB:
 						for(; sfb<end; sfb++, idx++) {
 							if(noiseFlag) {
-								offset[1] += _in.readBits(9)-256;
+								offNoise += _in.readBits(9)-256;
 								noiseFlag = false;
 							}
-							else offset[1] += Huffman.decodeScaleFactor(_in)-SF_DELTA;
-							tmp = Math.min(Math.max(offset[1], -100), 155);
+							else offNoise += Huffman.decodeScaleFactor(_in)-SF_DELTA;
+							tmp = Math.min(Math.max(offNoise, -100), 155);
 							scaleFactors[idx] = -SCALEFACTOR_TABLE[tmp+SF_OFFSET];
 						}
 						break;
 					default:
 						for(; sfb<end; sfb++, idx++) {
-							offset[0] += Huffman.decodeScaleFactor(_in)-SF_DELTA;
-							if(offset[0]>255) throw new AACException("scalefactor out of range: "+offset[0]);
-							scaleFactors[idx] = SCALEFACTOR_TABLE[offset[0]-100+SF_OFFSET];
+							offSpectrum += Huffman.decodeScaleFactor(_in)-SF_DELTA;
+							if(offSpectrum>255) throw new AACException("scalefactor out of range: "+offSpectrum);
+							scaleFactors[idx] = SCALEFACTOR_TABLE[offSpectrum-100+SF_OFFSET];
 						}
 						break;
 				}
@@ -207,7 +208,7 @@ public class ICStream implements SyntaxConstants, HCB, ScaleFactorTable, IQTable
 		final int maxSFB = info.getMaxSFB();
 		final int windowGroups = info.getWindowGroupCount();
 		final int[] offsets = info.getSWBOffsets();
-		final int[] buf = new int[4];
+		final int[] buf = spectralBuf;
 
 		int sfb, j, k, w, hcb, off, width, num;
 		int groupOff = 0, idx = 0;
@@ -30,6 +30,11 @@ public class NIOBitStream implements IBitStream {
         br = BitReader.createBitReader(ByteBuffer.wrap(data));
     }
 
+    @Override
+    public void setData(ByteBuffer data) {
+        br = BitReader.createBitReader(data.duplicate());
+    }
+
     @Override
     public void byteAlign() throws AACException {
         br.align();
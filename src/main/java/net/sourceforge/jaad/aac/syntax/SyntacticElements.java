@@ -7,6 +7,9 @@ import static net.sourceforge.jaad.aac.ChannelConfiguration.CHANNEL_CONFIG_STERE
 import static net.sourceforge.jaad.aac.ChannelConfiguration.CHANNEL_CONFIG_STEREO_PLUS_CENTER;
 import static net.sourceforge.jaad.aac.ChannelConfiguration.CHANNEL_CONFIG_STEREO_PLUS_CENTER_PLUS_REAR_MONO;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
 import net.sourceforge.jaad.aac.AACDecoderConfig;
 import org.jcodec.common.logging.Logger;
 
@@ -423,4 +426,87 @@ public class SyntacticElements implements SyntaxConstants {
 
 		buffer.setData(b, freq, chs, 16, bitsRead);
 	}
+
+	/**
+	 * Writes the decoded frame as interleaved signed 16 bit little endian PCM
+	 * starting at the current position of the buffer, the position is
+	 * advanced past the written samples.
+	 * 
+	 * @param out
+	 *            a buffer with at least <code>getOutputSize()</code> bytes
+	 *            remaining
+	 */
+	public void sendToOutput(ByteBuffer out) {
+		final int chs = data.length;
+		final int length = getOutputLength();
+		final int start = out.position();
+		if(out.remaining()<chs*length*2) throw new BufferOverflowException();
+
+		float[] cur;
+		int i, j, off;
+		int s;
+		if(out.hasArray()) {
+			final byte[] b = out.array();
+			final int base = out.arrayOffset()+start;
+			for(i = 0; i<chs; i++) {
+				cur = data[i];
+				for(j = 0, off = base+i*2; j<length; j++, off += chs*2) {
+					s = clip(cur[j]);
+					b[off] = (byte) (s&BYTE_MASK);
+					b[off+1] = (byte) ((s>>8)&BYTE_MASK);
+				}
+			}
+		}
+		else {
+			for(i = 0; i<chs; i++) {
+				cur = data[i];
+				for(j = 0, off = start+i*2; j<length; j++, off += chs*2) {
+					s = clip(cur[j]);
+					out.put(off, (byte) (s&BYTE_MASK));
+					out.put(off+1, (byte) ((s>>8)&BYTE_MASK));
+				}
+			}
+		}
+		out.position(start+chs*length*2);
+	}
+
+	private static int clip(float sample) {
+		return Math.max(Math.min(Math.round(sample), Short.MAX_VALUE), Short.MIN_VALUE);
+	}
+
+	/**
+	 * The decoded samples of the last frame, one array per channel. The arrays
+	 * are reused by the following frames.
+	 */
+	public float[][] getOutputData() {
+		return data;
+	}
+
+	/**
+	 * Number of samples per channel in the last decoded frame.
+	 */
+	public int getOutputLength() {
+		final int mult = (sbrPresent&&config.isSBREnabled()) ? 2 : 1;
+		return mult*config.getFrameLength();
+	}
+
+	/**
+	 * Size in bytes of the last decoded frame as 16 bit PCM.
+	 */
+	public int getOutputSize() {
+		return data.length*getOutputLength()*2;
+	}
+
+	public int getOutputChannels() {
+		return data.length;
+	}
+
+	public int getOutputSampleRate() {
+		final int mult = (sbrPresent&&config.isSBREnabled()) ? 2 : 1;
+		return mult*config.getSampleFrequency().getFrequency();
+	}
+
+	public int getBitsRead() {
+		return bitsRead;
+	}
 }
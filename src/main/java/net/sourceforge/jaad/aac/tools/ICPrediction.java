@@ -1,5 +1,4 @@
 package net.sourceforge.jaad.aac.tools;
-import org.jcodec.common.logging.Logger;
 
 import net.sourceforge.jaad.aac.AACException;
 import net.sourceforge.jaad.aac.SampleFrequency;
@@ -49,11 +48,11 @@ public class ICPrediction {
 
 		final int maxPredSFB = sf.getMaximalPredictionSFB();
 		final int length = Math.min(maxSFB, maxPredSFB);
-		predictionUsed = new boolean[length];
+		//only reallocate if needed
+		if(predictionUsed==null||predictionUsed.length<maxPredSFB) predictionUsed = new boolean[maxPredSFB];
 		for(int sfb = 0; sfb<length; sfb++) {
 			predictionUsed[sfb] = _in.readBool();
 		}
-		Logger.warn("ICPrediction: maxSFB={0}, maxPredSFB={1}", new int[]{maxSFB, maxPredSFB});
 		/*//if maxSFB<maxPredSFB set remaining to false
 		for(int sfb = length; sfb<maxPredSFB; sfb++) {
 		predictionUsed[sfb] = false;
@@ -42,23 +42,23 @@ public class SequenceEncoder {
 	private PixelStore pixelStore;
 
 	public static SequenceEncoder createSequenceEncoder(File out, int fps) throws IOException {
-		return new SequenceEncoder(NIOUtils.writableChannel(out), Rational.R(fps, 1), MOV, H264, null);
+		return new SequenceEncoder(NIOUtils.writeBehindChannel(out), Rational.R(fps, 1), MOV, H264, null);
 	}
 
 	public static SequenceEncoder create25Fps(File out) throws IOException {
-		return new SequenceEncoder(NIOUtils.writableChannel(out), Rational.R(25, 1), MOV, H264, null);
+		return new SequenceEncoder(NIOUtils.writeBehindChannel(out), Rational.R(25, 1), MOV, H264, null);
 	}
 
 	public static SequenceEncoder create30Fps(File out) throws IOException {
-		return new SequenceEncoder(NIOUtils.writableChannel(out), Rational.R(30, 1), MOV, H264, null);
+		return new SequenceEncoder(NIOUtils.writeBehindChannel(out), Rational.R(30, 1), MOV, H264, null);
 	}
 
 	public static SequenceEncoder create2997Fps(File out) throws IOException {
-		return new SequenceEncoder(NIOUtils.writableChannel(out), Rational.R(30000, 1001), MOV, H264, null);
+		return new SequenceEncoder(NIOUtils.writeBehindChannel(out), Rational.R(30000, 1001), MOV, H264, null);
 	}
 
 	public static SequenceEncoder create24Fps(File out) throws IOException {
-		return new SequenceEncoder(NIOUtils.writableChannel(out), Rational.R(24, 1), MOV, H264, null);
+		return new SequenceEncoder(NIOUtils.writeBehindChannel(out), Rational.R(24, 1), MOV, H264, null);
 	}
 
 	public static SequenceEncoder createWithFps(SeekableByteChannel out, Rational fps) throws IOException {
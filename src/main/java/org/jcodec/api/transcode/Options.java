@@ -1,6 +1,6 @@
 package org.jcodec.api.transcode;
 
 public enum Options {
-    PROFILE, INTERLACED, DOWNSCALE
+    PROFILE, INTERLACED, DOWNSCALE, SEGMENT_DURATION, SEGMENT_WINDOW, AUDIO_BITRATE
 
 }
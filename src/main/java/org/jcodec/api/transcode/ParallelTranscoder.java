@@ -0,0 +1,403 @@
+package org.jcodec.api.transcode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.jcodec.api.transcode.Transcoder.TranscoderBuilder;
+import org.jcodec.codecs.h264.H264Utils;
+import org.jcodec.common.AudioCodecMeta;
+import org.jcodec.common.Codec;
+import org.jcodec.common.DemuxerTrackMeta;
+import org.jcodec.common.Muxer;
+import org.jcodec.common.MuxerTrack;
+import org.jcodec.common.VideoCodecMeta;
+import org.jcodec.common.io.NIOUtils;
+import org.jcodec.common.logging.Logger;
+import org.jcodec.common.model.Packet;
+import org.jcodec.common.model.Packet.FrameType;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * Transcodes one file on several cores.
+ *
+ * The video is split into segments on the seek (key) frames of the input
+ * track, every segment is decoded and encoded by a worker with its own source,
+ * decoder and encoder. The audio is transcoded (or copied) by a worker of its
+ * own. The encoded packets are then passed to the sink in order, interleaved
+ * with audio by the presentation time and renumbered. The timestamps are
+ * rebased so that the output starts at 0 and every segment starts where the
+ * previous one ends. Every segment starts with a key frame carrying the
+ * parameter sets, the encoders of the workers are configured the same way so
+ * the parameter sets should be the same in all the segments, the transcoding
+ * fails when they are not as the segments can't be joined.
+ * 
+ * The filters are given as factories, every worker needs filters of its own.
+ *
+ * The segments must be closed GOPs, i.e. no frame of a segment may reference
+ * the frames before its first frame. This is the case with H.264 IDR frames,
+ * intra-only codecs and the MP4 sync samples that are marked correctly.
+ *
+ * When the input can't be split (not seekable, no seek frame information) the
+ * file is transcoded sequentially with Transcoder.
+ *
+ * @author The JCodec project
+ *
+ */
+public class ParallelTranscoder {
+    private static final int AUDIO_QUEUE_SIZE = 1024;
+    private static final Packet END_OF_STREAM = Packet.createPacket(null, 0, 1, 0, 0, FrameType.UNKNOWN, null);
+
+    private SourceImpl source;
+    private SinkImpl sink;
+    private int threads;
+    private int segmentFrames;
+    private boolean audioCopy;
+    private List<FilterFactory> filters;
+
+    private ParallelTranscoder(SourceImpl source, SinkImpl sink, int threads, int segmentFrames, boolean audioCopy,
+            List<FilterFactory> filters) {
+        this.source = source;
+        this.sink = sink;
+        this.threads = threads;
+        this.segmentFrames = segmentFrames;
+        this.audioCopy = audioCopy;
+        this.filters = filters;
+    }
+
+    /**
+     * Creates the filters of a worker, the filters keep state between the
+     * frames so they can't be shared by the workers.
+     */
+    public static interface FilterFactory {
+        Filter newFilter();
+    }
+
+    /**
+     * Collects the packets of a single track, a muxer that is its own track.
+     */
+    private static class PacketCollector implements Muxer, MuxerTrack {
+        private BlockingQueue<Packet> packets;
+        private volatile VideoCodecMeta videoMeta;
+        private volatile AudioCodecMeta audioMeta;
+
+        public PacketCollector(BlockingQueue<Packet> packets) {
+            this.packets = packets;
+        }
+
+        @Override
+        public void addFrame(Packet packet) throws IOException {
+            try {
+                packets.put(packet);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public MuxerTrack addVideoTrack(Codec codec, VideoCodecMeta meta) {
+            this.videoMeta = meta;
+            return this;
+        }
+
+        @Override
+        public MuxerTrack addAudioTrack(Codec codec, AudioCodecMeta meta) {
+            this.audioMeta = meta;
+            return this;
+        }
+
+        @Override
+        public void finish() throws IOException {
+        }
+    }
+
+    public void transcode() throws IOException {
+        List<int[]> segments = threads > 1 ? split() : null;
+        if (segments == null || segments.size() < 2) {
+            Logger.info("Transcoding sequentially.");
+            TranscoderBuilder builder = Transcoder.newTranscoder().addSource(source).addSink(sink)
+                    .setVideoMapping(0, 0, false).setAudioMapping(0, 0, audioCopy);
+            addFilters(builder);
+            builder.create().transcode();
+            return;
+        }
+
+        boolean audio = source.getInputAudioCode() != null && sink.getOutputFormat().isAudio()
+                && (audioCopy || sink.getOutputAudioCodec() != null);
+        ExecutorService executor = Executors.newFixedThreadPool(audio ? threads + 1 : threads);
+        sink.init();
+        try {
+            PacketCollector audioCollector = null;
+            Future<Void> audioFuture = null;
+            if (audio) {
+                audioCollector = new PacketCollector(new ArrayBlockingQueue<Packet>(AUDIO_QUEUE_SIZE));
+                audioFuture = executor.submit(audioTask(audioCollector));
+            }
+
+            // At most two segments per thread are done ahead of the output
+            LinkedList<Future<PacketCollector>> pending = new LinkedList<Future<PacketCollector>>();
+            int nextSegment = 0;
+            for (; nextSegment < segments.size() && pending.size() < 2 * threads; nextSegment++)
+                pending.add(executor.submit(videoTask(segments.get(nextSegment))));
+
+            Packet audioPacket = audio ? takeAudio(audioCollector) : null;
+            long frameNo = 0;
+            // Where the next segment starts in the output and how far the
+            // current one is moved from the source, in seconds
+            double outputEnd = 0;
+            double shift = 0;
+            List<ByteBuffer> parameterSets = null;
+            for (int segmentNo = 0; !pending.isEmpty(); segmentNo++) {
+                PacketCollector segment = get(pending.removeFirst());
+                if (nextSegment < segments.size())
+                    pending.add(executor.submit(videoTask(segments.get(nextSegment++))));
+
+                List<Packet> packets = new ArrayList<Packet>(segment.packets);
+                if (packets.isEmpty())
+                    continue;
+                List<ByteBuffer> segmentParameterSets = parameterSets(packets.get(0));
+                if (parameterSets == null)
+                    parameterSets = segmentParameterSets;
+                else if (!parameterSets.equals(segmentParameterSets))
+                    throw new RuntimeException("The parameter sets of the segment " + segmentNo
+                            + " differ from the ones of the first segment, the segments can't be joined.");
+
+                double segmentStart = Double.MAX_VALUE;
+                for (Packet packet : packets)
+                    segmentStart = Math.min(segmentStart, packet.getPtsD());
+                shift = segmentStart - outputEnd;
+
+                for (Packet packet : packets) {
+                    while (audioPacket != null && audioPacket.getPtsD() < packet.getPtsD()) {
+                        sink.outputAudioPacket(rebase(audioPacket, shift), audioCollector.audioMeta);
+                        audioPacket = takeAudio(audioCollector);
+                    }
+                    Packet out = Packet.createPacket(packet.getData(), packet.getPts(), packet.getTimescale(),
+                            packet.getDuration(), frameNo++, packet.getFrameType(), packet.getTapeTimecode());
+                    sink.outputVideoPacket(rebase(out, shift), segment.videoMeta);
+                    outputEnd = Math.max(outputEnd, out.getPtsD() + out.getDurationD());
+                }
+            }
+            while (audioPacket != null) {
+                sink.outputAudioPacket(rebase(audioPacket, shift), audioCollector.audioMeta);
+                audioPacket = takeAudio(audioCollector);
+            }
+            if (audioFuture != null)
+                get(audioFuture);
+        } finally {
+            executor.shutdownNow();
+            sink.finish();
+        }
+    }
+
+    /**
+     * Moves the packet 'shift' seconds back.
+     */
+    private static Packet rebase(Packet packet, double shift) {
+        packet.setPts(packet.getPts() - Math.round(shift * packet.getTimescale()));
+        return packet;
+    }
+
+    /**
+     * The H.264 SPS and PPS that come with the first frame of a segment, an
+     * empty list for the other codecs.
+     */
+    private List<ByteBuffer> parameterSets(Packet first) {
+        List<ByteBuffer> result = new ArrayList<ByteBuffer>();
+        if (sink.getOutputVideoCodec() == Codec.H264) {
+            result.addAll(H264Utils.getRawSPS(first.getData()));
+            result.addAll(H264Utils.getRawPPS(first.getData()));
+        }
+        return result;
+    }
+
+    private void addFilters(TranscoderBuilder builder) {
+        for (FilterFactory factory : filters)
+            builder.addFilter(0, factory.newFilter());
+    }
+
+    /**
+     * @return Segments as pairs of the first frame and the number of frames or
+     *         null if the video can't be split
+     */
+    private List<int[]> split() throws IOException {
+        if (source.getIntputVideoCodec() == null)
+            return null;
+        SourceImpl probe = new SourceImpl(source.getSourceName(), source.getInputFormat(),
+                source.getIntputVideoCodec(), null);
+        DemuxerTrackMeta meta;
+        try {
+            probe.init(new PixelStoreImpl());
+            meta = probe.getTrackVideoMeta();
+        } finally {
+            probe.finish();
+        }
+        if (meta == null || meta.getTotalFrames() <= 0)
+            return null;
+        int totalFrames = meta.getTotalFrames();
+        int minFrames = segmentFrames > 0 ? segmentFrames : Math.max(1, totalFrames / (4 * threads));
+
+        List<int[]> result = new ArrayList<int[]>();
+        int[] seekFrames = meta.getSeekFrames();
+        int start = 0;
+        if (seekFrames == null) {
+            // Every frame is a seek frame
+            for (; totalFrames - start > minFrames; start += minFrames)
+                result.add(new int[] { start, minFrames });
+        } else {
+            for (int i = 0; i < seekFrames.length; i++) {
+                if (seekFrames[i] - start >= minFrames && seekFrames[i] < totalFrames) {
+                    result.add(new int[] { start, seekFrames[i] - start });
+                    start = seekFrames[i];
+                }
+            }
+        }
+        result.add(new int[] { start, totalFrames - start });
+        return result;
+    }
+
+    private Callable<PacketCollector> videoTask(final int[] segment) {
+        return new Callable<PacketCollector>() {
+            public PacketCollector call() throws Exception {
+                PacketCollector collector = new PacketCollector(new LinkedBlockingQueue<Packet>());
+                SourceImpl segmentSource = new SourceImpl(source.getSourceName(), source.getInputFormat(),
+                        source.getIntputVideoCodec(), null);
+                SinkImpl segmentSink = SinkImpl.createWithMuxer(collector, sink.getOutputFormat(),
+                        sink.getOutputVideoCodec(), null);
+                segmentSink.copyOptions(sink);
+                TranscoderBuilder builder = Transcoder.newTranscoder().addSource(segmentSource)
+                        .addSink(segmentSink).setSeekFrames(0, segment[0]).setMaxFrames(0, segment[1]);
+                addFilters(builder);
+                builder.create().transcode();
+                return collector;
+            }
+        };
+    }
+
+    private Callable<Void> audioTask(final PacketCollector collector) {
+        return new Callable<Void>() {
+            public Void call() throws Exception {
+                SourceImpl audioSource = new SourceImpl(source.getSourceName(), source.getInputFormat(), null,
+                        source.getInputAudioCode());
+                try {
+                    audioSource.init(new PixelStoreImpl());
+                    if (audioCopy) {
+                        Packet packet;
+                        while ((packet = audioSource.inputAudioPacket()) != null) {
+                            if (collector.audioMeta == null)
+                                collector.addAudioTrack(null, audioSource.getAudioCodecMeta());
+                            packet.setData(NIOUtils.clone(packet.getData()));
+                            collector.addFrame(packet);
+                        }
+                    } else {
+                        SinkImpl audioSink = SinkImpl.createWithMuxer(collector, sink.getOutputFormat(), null,
+                                sink.getOutputAudioCodec());
+                        audioSink.copyOptions(sink);
+                        audioSink.init();
+                        AudioFrameWithPacket frame;
+                        while ((frame = audioSource.getNextAudioFrame()) != null)
+                            audioSink.outputAudioFrame(frame);
+                        audioSink.finish();
+                    }
+                } finally {
+                    audioSource.finish();
+                    collector.packets.put(END_OF_STREAM);
+                }
+                return null;
+            }
+        };
+    }
+
+    private static Packet takeAudio(PacketCollector collector) throws IOException {
+        try {
+            Packet packet = collector.packets.take();
+            return packet == END_OF_STREAM ? null : packet;
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    public static class ParallelTranscoderBuilder {
+        private SourceImpl source;
+        private SinkImpl sink;
+        private int threads;
+        private int segmentFrames;
+        private boolean audioCopy;
+        private List<FilterFactory> filters;
+
+        public ParallelTranscoderBuilder(SourceImpl source, SinkImpl sink) {
+            this.source = source;
+            this.sink = sink;
+            this.threads = Runtime.getRuntime().availableProcessors();
+            this.filters = new ArrayList<FilterFactory>();
+        }
+
+        /**
+         * Adds a video filter, every worker gets a filter of its own from the
+         * factory.
+         */
+        public ParallelTranscoderBuilder addFilter(FilterFactory filter) {
+            this.filters.add(filter);
+            return this;
+        }
+
+        public ParallelTranscoderBuilder setThreads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Sets the minimum number of frames in a segment, by default the video
+         * is split into about 4 segments per thread.
+         */
+        public ParallelTranscoderBuilder setSegmentFrames(int segmentFrames) {
+            this.segmentFrames = segmentFrames;
+            return this;
+        }
+
+        public ParallelTranscoderBuilder setAudioCopy(boolean audioCopy) {
+            this.audioCopy = audioCopy;
+            return this;
+        }
+
+        public ParallelTranscoder create() {
+            return new ParallelTranscoder(source, sink, threads, segmentFrames, audioCopy, filters);
+        }
+    }
+
+    /**
+     * The source and the sink are only used for their parameters, the workers
+     * open the source file on their own. The sink receives the encoded
+     * packets.
+     */
+    public static ParallelTranscoderBuilder newParallelTranscoder(SourceImpl source, SinkImpl sink) {
+        return new ParallelTranscoderBuilder(source, sink);
+    }
+}
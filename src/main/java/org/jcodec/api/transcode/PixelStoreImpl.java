@@ -5,12 +5,23 @@ import java.util.List;
 
 import org.jcodec.common.model.ColorSpace;
 import org.jcodec.common.model.Picture;
+import org.jcodec.common.model.PlaneAllocator;
 
 public class PixelStoreImpl implements PixelStore {
     private List<Picture> buffers;
+    private PlaneAllocator allocator;
 
     public PixelStoreImpl() {
-        buffers = new ArrayList<Picture>();
+        this(null);
+    }
+
+    /**
+     * The pictures that aren't in the store already are created with the
+     * allocator, or on the heap if it's null.
+     */
+    public PixelStoreImpl(PlaneAllocator allocator) {
+        this.buffers = new ArrayList<Picture>();
+        this.allocator = allocator;
     }
 
     @Override
@@ -22,7 +33,7 @@ public class PixelStoreImpl implements PixelStore {
                 return new LoanerPicture(picture, 1);
             }
         }
-        return new LoanerPicture(Picture.create(width, height, color), 1);
+        return new LoanerPicture(Picture.createWithAllocator(width, height, color, allocator), 1);
     }
 
     @Override
@@ -39,4 +50,13 @@ public class PixelStoreImpl implements PixelStore {
     public void retake(LoanerPicture frame) {
         frame.incRefCnt();
     }
+
+    /**
+     * Releases the pictures kept in the store back to the allocator.
+     */
+    public void clear() {
+        for (Picture picture : buffers)
+            picture.release();
+        buffers.clear();
+    }
 }
\ No newline at end of file
@@ -4,9 +4,12 @@ import static org.jcodec.common.Codec.*;
 import static org.jcodec.common.Format.*;
 import static org.jcodec.common.io.NIOUtils.writableFileChannel;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
+import org.jcodec.codecs.aac.AACEncoder;
+import org.jcodec.codecs.aac.ADTSParser;
 import org.jcodec.codecs.h264.H264Encoder;
 import org.jcodec.codecs.png.PNGEncoder;
 import org.jcodec.codecs.prores.ProresEncoder;
@@ -28,6 +31,7 @@ import org.jcodec.common.VideoEncoder.EncodedFrame;
 import org.jcodec.common.io.IOUtils;
 import org.jcodec.common.io.NIOUtils;
 import org.jcodec.common.io.SeekableByteChannel;
+import org.jcodec.common.io.WriteBehindChannel;
 import org.jcodec.common.logging.Logger;
 import org.jcodec.common.model.AudioBuffer;
 import org.jcodec.common.model.ColorSpace;
@@ -38,7 +42,9 @@ import org.jcodec.common.model.Size;
 import org.jcodec.containers.imgseq.ImageSequenceMuxer;
 import org.jcodec.containers.mkv.muxer.MKVMuxer;
 import org.jcodec.containers.mp4.muxer.MP4Muxer;
+import org.jcodec.containers.mps.MTSMuxer;
 import org.jcodec.containers.raw.RawMuxer;
+import org.jcodec.containers.segment.SegmentMuxer;
 
 /**
  * The sink that consumes the uncompressed frames and stores them into a
@@ -47,6 +53,9 @@ import org.jcodec.containers.raw.RawMuxer;
  * @author Stanislav Vitvitskiy
  */
 public class SinkImpl implements Sink, PacketSink {
+    private static final int AAC_BITRATE_PER_CHANNEL = 64000;
+    private static final int DEFAULT_SEGMENT_DURATION = 6;
+
     private String destName;
     private SeekableByteChannel destStream;
     private Muxer muxer;
@@ -61,9 +70,14 @@ public class SinkImpl implements Sink, PacketSink {
     private final ThreadLocal<ByteBuffer> bufferStore;
 
     private AudioEncoder audioEncoder;
+    private AudioFormat audioFormat;
+    private long audioFrameNo;
     private VideoEncoder videoEncoder;
     private String profile;
     private boolean interlaced;
+    private int segmentDuration;
+    private int segmentWindow;
+    private int audioBitrate;
 
     @Override
     public void outputVideoPacket(Packet packet, VideoCodecMeta codecMeta) throws IOException {
@@ -88,8 +102,14 @@ public class SinkImpl implements Sink, PacketSink {
     }
     
     public void initMuxer() throws IOException {
-        if (destStream == null && outputFormat != IMG)
-            destStream = writableFileChannel(destName);
+        if (muxer != null)
+            return;
+        if (destName == null && outputFormat == IMG)
+            throw new IllegalArgumentException("A destination file should be specified for the image muxer.");
+        if (destName == null && isSegmented())
+            throw new IllegalArgumentException("A playlist file should be specified for the segmenting muxer.");
+        if (destStream == null && outputFormat != IMG && !isSegmented())
+            destStream = new WriteBehindChannel(writableFileChannel(destName));
         if (MKV == outputFormat) {
             muxer = new MKVMuxer(destStream);
         } else if (MOV == outputFormat) {
@@ -104,30 +124,49 @@ public class SinkImpl implements Sink, PacketSink {
             muxer = new Y4MMuxer(destStream);
         } else if (Format.RAW == outputFormat) {
             muxer = new RawMuxer(destStream);
+        } else if (MPEG_TS == outputFormat) {
+            muxer = new MTSMuxer(destStream);
+        } else if (HLS == outputFormat) {
+            muxer = SegmentMuxer.createHLSMuxer(new File(destName), segmentDuration, segmentWindow);
+        } else if (DASH == outputFormat) {
+            muxer = SegmentMuxer.createDASHMuxer(new File(destName), segmentDuration, segmentWindow);
         } else {
 			throw new RuntimeException("The output format " + outputFormat + " is not supported.");
         }
     }
 
+    /**
+     * HLS and DASH are written as a playlist and a number of segment files
+     * next to it.
+     */
+    private boolean isSegmented() {
+        return outputFormat == HLS || outputFormat == DASH;
+    }
+
     public void finish() throws IOException {
-        if (framesOutput) {
-            muxer.finish();
-        } else {
-            Logger.warn("No frames output.");
-        }
-        if (destStream != null) {
+        try {
+            if (audioEncoder instanceof AACEncoder)
+                outputAACFrames(((AACEncoder) audioEncoder).flush(null));
+            if (framesOutput) {
+                muxer.finish();
+            } else {
+                Logger.warn("No frames output.");
+            }
+            // The write errors of the I/O thread surface here
+            if (destStream instanceof WriteBehindChannel)
+                ((WriteBehindChannel) destStream).flush();
+        } finally {
             IOUtils.closeQuietly(destStream);
         }
     }
 
     public SinkImpl(String destName, Format outputFormat, Codec outputVideoCodec, Codec outputAudioCodec) {
-    	if (destName == null && outputFormat == IMG)
-    		throw new IllegalArgumentException("A destination file should be specified for the image muxer.");
         this.destName = destName;
         this.outputFormat = outputFormat;
         this.outputVideoCodec = outputVideoCodec;
         this.outputAudioCodec = outputAudioCodec;
         this.outputFormat = outputFormat;
+        this.segmentDuration = DEFAULT_SEGMENT_DURATION;
         bufferStore = new ThreadLocal<ByteBuffer>();
     }
     
@@ -137,6 +176,41 @@ public class SinkImpl implements Sink, PacketSink {
     	return result;
     }
 
+    /**
+     * Creates a sink that outputs into the given muxer, the output format is
+     * only used to tell if the sink is for video and/or audio.
+     */
+    public static SinkImpl createWithMuxer(Muxer muxer, Format outputFormat, Codec outputVideoCodec,
+            Codec outputAudioCodec) {
+        SinkImpl result = new SinkImpl(null, outputFormat, outputVideoCodec, outputAudioCodec);
+        result.muxer = muxer;
+        return result;
+    }
+
+    /**
+     * Takes the encoder and segmenting options of the other sink, for the
+     * sinks that encode a part of the other sink's output.
+     */
+    void copyOptions(SinkImpl other) {
+        this.profile = other.profile;
+        this.interlaced = other.interlaced;
+        this.segmentDuration = other.segmentDuration;
+        this.segmentWindow = other.segmentWindow;
+        this.audioBitrate = other.audioBitrate;
+    }
+
+    public Format getOutputFormat() {
+        return outputFormat;
+    }
+
+    public Codec getOutputVideoCodec() {
+        return outputVideoCodec;
+    }
+
+    public Codec getOutputAudioCodec() {
+        return outputAudioCodec;
+    }
+
     @Override
     public void init() throws IOException {
         initMuxer();
@@ -165,8 +239,11 @@ public class SinkImpl implements Sink, PacketSink {
     }
 
     private AudioEncoder createAudioEncoder(Codec codec, AudioFormat format) {
-        if (codec != Codec.PCM) {
-            throw new RuntimeException("Only PCM audio encoding (RAW audio) is supported.");
+        if (codec == Codec.AAC) {
+            int bitRate = audioBitrate > 0 ? audioBitrate : AAC_BITRATE_PER_CHANNEL * format.getChannels();
+            return AACEncoder.createAACEncoder(format, bitRate);
+        } else if (codec != Codec.PCM) {
+            throw new RuntimeException("Only PCM (RAW audio) and AAC audio encoding is supported.");
         }
         return new RawAudioEncoder();
     }
@@ -180,8 +257,8 @@ public class SinkImpl implements Sink, PacketSink {
 
     protected ByteBuffer encodeAudio(AudioBuffer audioBuffer) {
         if (audioEncoder == null) {
-            AudioFormat format = audioBuffer.getFormat();
-            audioEncoder = createAudioEncoder(outputAudioCodec, format);
+            audioFormat = audioBuffer.getFormat();
+            audioEncoder = createAudioEncoder(outputAudioCodec, audioFormat);
         }
 
         return audioEncoder.encode(audioBuffer.getData(), null);
@@ -219,10 +296,34 @@ public class SinkImpl implements Sink, PacketSink {
     public void outputAudioFrame(AudioFrameWithPacket audioFrame) throws IOException {
         if (!outputFormat.isAudio() || outputAudioCodec == null)
             return;
+        if (outputAudioCodec == Codec.AAC) {
+            outputAACFrames(encodeAudio(audioFrame.getAudio()));
+            return;
+        }
         outputAudioPacket(Packet.createPacketWithData(audioFrame.getPacket(), encodeAudio(audioFrame.getAudio())),
                 org.jcodec.common.AudioCodecMeta.fromAudioFormat(audioFrame.getAudio().getFormat()));
     }
 
+    /**
+     * The AAC encoder doesn't keep the input packet boundaries, every ADTS
+     * frame it outputs becomes a packet of its own timed by the frame count.
+     */
+    private void outputAACFrames(ByteBuffer data) throws IOException {
+        if (!outputFormat.isAudio())
+            return;
+        AudioCodecMeta meta = AudioCodecMeta.fromAudioFormat(audioFormat);
+        while (data.hasRemaining()) {
+            ByteBuffer frame = data.duplicate();
+            ADTSParser.Header header = ADTSParser.read(frame);
+            frame.position(data.position());
+            frame.limit(data.position() + header.getSize());
+            data.position(frame.limit());
+            outputAudioPacket(Packet.createPacket(frame, audioFrameNo * 1024, audioFormat.getSampleRate(), 1024,
+                    audioFrameNo, FrameType.KEY, null), meta);
+            audioFrameNo++;
+        }
+    }
+
     @Override
     public ColorSpace getInputColor() {
         if (videoEncoder == null)
@@ -237,6 +338,12 @@ public class SinkImpl implements Sink, PacketSink {
             profile = (String) value;
         else if (option == Options.INTERLACED)
             interlaced = (Boolean) value;
+        else if (option == Options.SEGMENT_DURATION)
+            segmentDuration = (Integer) value;
+        else if (option == Options.SEGMENT_WINDOW)
+            segmentWindow = (Integer) value;
+        else if (option == Options.AUDIO_BITRATE)
+            audioBitrate = (Integer) value;
     }
 
     @Override
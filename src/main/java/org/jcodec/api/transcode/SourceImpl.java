@@ -493,6 +493,14 @@ public class SourceImpl implements Source, PacketSource {
         return new AudioFrameWithPacket(audioBuffer, audioPkt);
     }
 
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    public Format getInputFormat() {
+        return inputFormat;
+    }
+
     public _3<Integer, Integer, Codec> getIntputVideoCodec() {
         return inputVideoCodec;
     }
@@ -66,12 +66,21 @@ public class TranscodeMain {
 
     private static final Flag FLAG_DOWNSCALE = Flag.flag("downscale", null, "Decode frames in downscale (supported by MPEG, Prores and Jpeg decoders).");
 
+    private static final Flag FLAG_SEGMENT_DURATION = Flag.flag("segment-duration", null,
+            "Target duration of HLS and DASH segments in seconds [default=6].");
+    private static final Flag FLAG_SEGMENT_WINDOW = Flag.flag("segment-window", null,
+            "Number of segments kept in the HLS playlist or DASH manifest, 0 keeps all [default=0].");
+
+    private static final Flag FLAG_AUDIO_BITRATE = Flag.flag("audio-bitrate", null,
+            "Bitrate of the encoded audio in bits per second (supported by AAC encoder) [default=64000 per channel].");
+
     private static final Flag FLAG_VIDEO_FILTER = Flag.flag("videoFilter", "vf",
             "Contains a comma separated list of video filters with arguments.");
 
     private static final Flag[] ALL_FLAGS = new Flag[] { FLAG_INPUT, FLAG_FORMAT, FLAG_VIDEO_CODEC, FLAG_AUDIO_CODEC,
             FLAG_SEEK_FRAMES, FLAG_MAX_FRAMES, FLAG_PROFILE, FLAG_INTERLACED, FLAG_DUMPMV, FLAG_DUMPMVJS,
-            FLAG_DOWNSCALE, FLAG_MAP_VIDEO, FLAG_MAP_AUDIO, FLAG_VIDEO_FILTER };
+            FLAG_DOWNSCALE, FLAG_MAP_VIDEO, FLAG_MAP_AUDIO, FLAG_VIDEO_FILTER, FLAG_SEGMENT_DURATION,
+            FLAG_SEGMENT_WINDOW, FLAG_AUDIO_BITRATE };
 
     private static Map<String, Format> extensionToF = new HashMap<String, Format>();
     private static Map<String, Codec> extensionToC = new HashMap<String, Codec>();
@@ -121,6 +130,8 @@ public class TranscodeMain {
         extensionToF.put("ivf", Format.IVF);
         extensionToF.put("y4m", Format.Y4M);
         extensionToF.put("wav", Format.WAV);
+        extensionToF.put("m3u8", Format.HLS);
+        extensionToF.put("mpd", Format.DASH);
 
         extensionToC.put("mpg", Codec.MPEG2);
         extensionToC.put("mpeg", Codec.MPEG2);
@@ -158,6 +169,10 @@ public class TranscodeMain {
         videoCodecsForF.put(Format.MJPEG, Codec.JPEG);
         videoCodecsForF.put(Format.IVF, Codec.VP8);
         videoCodecsForF.put(Format.Y4M, Codec.RAW);
+        videoCodecsForF.put(Format.HLS, Codec.H264);
+        audioCodecsForF.put(Format.HLS, Codec.AAC);
+        videoCodecsForF.put(Format.DASH, Codec.H264);
+        audioCodecsForF.put(Format.DASH, Codec.AAC);
 
         supportedDecoders.add(Codec.AAC);
         supportedDecoders.add(Codec.H264);
@@ -340,6 +355,9 @@ public class TranscodeMain {
             }
 
             Sink sink = new SinkImpl(output, outputFormat, outputCodecVideo, outputCodecAudio);
+            sink.setOption(Options.SEGMENT_DURATION, cmd.getIntegerFlagID(index, FLAG_SEGMENT_DURATION, 6));
+            sink.setOption(Options.SEGMENT_WINDOW, cmd.getIntegerFlagID(index, FLAG_SEGMENT_WINDOW, 0));
+            sink.setOption(Options.AUDIO_BITRATE, cmd.getIntegerFlagID(index, FLAG_AUDIO_BITRATE, 0));
             sinks.add(sink);
             builder.addSink(sink);
             builder.setAudioMapping(audioMap, sinks.size() - 1, audioCopy);
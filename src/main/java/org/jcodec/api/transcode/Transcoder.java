@@ -7,11 +7,15 @@ import java.util.List;
 
 import org.jcodec.api.transcode.PixelStore.LoanerPicture;
 import org.jcodec.api.transcode.filters.ColorTransformFilter;
+import org.jcodec.api.transcode.filters.ScaleFilter;
 import org.jcodec.common.AudioCodecMeta;
 import org.jcodec.common.IntArrayList;
 import org.jcodec.common.VideoCodecMeta;
 import org.jcodec.common.model.ColorSpace;
 import org.jcodec.common.model.Packet;
+import org.jcodec.common.model.PlaneAllocator;
+import org.jcodec.common.model.Size;
+import org.jcodec.scale.ColorUtil;
 
 /**
  * This class is part of JCodec ( www.jcodec.org ) This software is distributed
@@ -36,6 +40,7 @@ public class Transcoder {
     private int[] maxFrames;
     private Mapping[] videoMappings;
     private Mapping[] audioMappings;
+    private PlaneAllocator planeAllocator;
 
     /**
      * Use TranscoderBuilder (method newTranscoder below) to create a transcoder
@@ -47,7 +52,7 @@ public class Transcoder {
      * @param extraFilters
      */
     private Transcoder(Source[] source, Sink[] sink, Mapping[] videoMappings, Mapping[] audioMappings,
-            List<Filter>[] extraFilters, int[] seekFrames, int[] maxFrames) {
+            List<Filter>[] extraFilters, int[] seekFrames, int[] maxFrames, PlaneAllocator planeAllocator) {
         this.extraFilters = extraFilters;
         this.videoMappings = videoMappings;
         this.audioMappings = audioMappings;
@@ -57,6 +62,7 @@ public class Transcoder {
 
         this.sources = source;
         this.sinks = sink;
+        this.planeAllocator = planeAllocator;
     }
 
     private static class Mapping {
@@ -81,6 +87,7 @@ public class Transcoder {
         private PixelStore pixelStore;
         private VideoCodecMeta videoCodecMeta;
         private AudioCodecMeta audioCodecMeta;
+        private boolean audioFinished;
         private static final int REORDER_LENGTH = 5;
 
         public Stream(Sink sink, boolean videoCopy, boolean audioCopy, List<Filter> extraFilters,
@@ -106,8 +113,18 @@ public class Transcoder {
                     sourceColor = filter.getOutputColor();
             }
             ColorSpace inputColor = sink.getInputColor();
-            if (inputColor != null && inputColor != sourceColor)
-                filters.add(new ColorTransformFilter(inputColor));
+            if (inputColor != null && inputColor != sourceColor) {
+                Filter last = filters.isEmpty() ? null : filters.get(filters.size() - 1);
+                // Converting while scaling saves a pass over the frame, the
+                // scale filter of the user is replaced with an own one
+                if (last instanceof ScaleFilter && last.getOutputColor() == ColorSpace.SAME
+                        && ColorUtil.getTransform(sourceColor, inputColor) != null) {
+                    Size target = ((ScaleFilter) last).getTarget();
+                    filters.set(filters.size() - 1, new ScaleFilter(target.getWidth(), target.getHeight(), inputColor));
+                } else {
+                    filters.add(new ColorTransformFilter(inputColor));
+                }
+            }
             return filters;
         }
 
@@ -117,7 +134,7 @@ public class Transcoder {
                 return;
             if (videoCopy && videoQueue.size() < REORDER_LENGTH)
                 return;
-            if (!hasLeadingAudio())
+            if (!audioFinished && !hasLeadingAudio())
                 return;
             VideoFrameWithPacket firstVideoFrame;
             firstVideoFrame = videoQueue.get(0);
@@ -221,6 +238,13 @@ public class Transcoder {
                 this.filters = initColorTransform(videoCodecMeta.getColor(), extraFilters, sink);
         }
 
+        /**
+         * No more audio will come, the video doesn't need to wait for it.
+         */
+        public void finishAudio() {
+            audioFinished = true;
+        }
+
         public void addAudioPacket(AudioFrameWithPacket videoFrame, AudioCodecMeta meta) {
             this.audioQueue.add(videoFrame);
             this.audioCodecMeta = meta;
@@ -246,7 +270,7 @@ public class Transcoder {
     }
 
     public void transcode() throws IOException {
-        PixelStore pixelStore = new PixelStoreImpl();
+        PixelStoreImpl pixelStore = new PixelStoreImpl(planeAllocator);
 
         List<Stream>[] videoStreams = new List[sources.length];
         List<Stream>[] audioStreams = new List[sources.length];
@@ -288,6 +312,7 @@ public class Transcoder {
                     decodeAudio[audioMappings[s].source] = true;
             } else {
                 finishedAudio[audioMappings[s].source] = true;
+                stream.finishAudio();
             }
         }
 
@@ -382,6 +407,10 @@ public class Transcoder {
                     } else {
                         finishedAudio[s] = true;
                     }
+                    if (finishedAudio[s]) {
+                        for (Stream stream : audioStreams[s])
+                            stream.finishAudio();
+                    }
                 }
 
                 // See if we can produce any output with the new frames just
@@ -408,6 +437,7 @@ public class Transcoder {
                 sources[0].finish();
             for (int i = 0; i < sinks.length; i++)
                 sinks[i].finish();
+            pixelStore.clear();
         }
     }
 
@@ -425,6 +455,7 @@ public class Transcoder {
         private IntArrayList maxFrames;
         private List<Mapping> videoMappings;
         private List<Mapping> audioMappings;
+        private PlaneAllocator planeAllocator;
 
         public TranscoderBuilder() {
             source = new ArrayList<Source>();
@@ -476,10 +507,20 @@ public class Transcoder {
             return this;
         }
 
+        /**
+         * The decoded and filtered pictures are created with this allocator,
+         * they go back to it when the transcoding is done. Null (the default)
+         * allocates on the heap.
+         */
+        public TranscoderBuilder setPlaneAllocator(PlaneAllocator planeAllocator) {
+            this.planeAllocator = planeAllocator;
+            return this;
+        }
+
         public Transcoder create() {
             return new Transcoder(source.toArray(new Source[] {}), sink.toArray(new Sink[] {}),
                     videoMappings.toArray(new Mapping[] {}), audioMappings.toArray(new Mapping[] {}),
-                    filters.toArray(new List[0]), seekFrames.toArray(), maxFrames.toArray());
+                    filters.toArray(new List[0]), seekFrames.toArray(), maxFrames.toArray(), planeAllocator);
         }
     }
 
@@ -28,7 +28,7 @@ public class ColorTransformFilter implements Filter {
     @Override
     public LoanerPicture filter(Picture picture, PixelStore store) {
         if (transform == null) {
-            transform = ColorUtil.getTransform(picture.getColor(), outputColor);
+            transform = ColorUtil.getTransform(picture.getColor(), outputColor, null, null);
             Logger.debug("Creating transform: " + transform);
         }
         LoanerPicture outFrame = store.getPicture(picture.getWidth(), picture.getHeight(), outputColor);
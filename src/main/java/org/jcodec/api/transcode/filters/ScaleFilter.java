@@ -7,19 +7,24 @@ import org.jcodec.common.model.ColorSpace;
 import org.jcodec.common.model.Picture;
 import org.jcodec.common.model.Size;
 import org.jcodec.scale.BaseResampler;
+import org.jcodec.scale.ColorUtil;
 import org.jcodec.scale.LanczosResampler;
+import org.jcodec.scale.Transform;
 
 /**
  * This class is part of JCodec ( www.jcodec.org ) This software is distributed
  * under FreeBSD License
  * 
- * Scales image to a different size.
+ * Scales image to a different size, optionally converting it to a different
+ * color space in the same pass.
  * 
  * @author The JCodec project
  * 
  */
 public class ScaleFilter implements Filter {
     private BaseResampler resampler;
+    private Transform transform;
+    private ColorSpace outputColor;
     private ColorSpace currentColor;
     private Size currentSize;
     private Size targetSize;
@@ -27,8 +32,18 @@ public class ScaleFilter implements Filter {
     private int height;
 
     public ScaleFilter(int width, int height) {
+        this(width, height, null);
+    }
+
+    /**
+     * @param outputColor
+     *            color space of the output pictures, the color transform is
+     *            fused with the resize, null to keep the color of the input
+     */
+    public ScaleFilter(int width, int height, ColorSpace outputColor) {
         this.width = width;
         this.height = height;
+        this.outputColor = outputColor;
     }
 
     public Size getTarget() {
@@ -38,16 +53,29 @@ public class ScaleFilter implements Filter {
     @Override
     public LoanerPicture filter(Picture picture, PixelStore store) {
         Size pictureSize = picture.getSize();
-        if (resampler == null || currentColor != picture.getColor() || !pictureSize.equals(currentSize)) {
+        if ((resampler == null && transform == null) || currentColor != picture.getColor()
+                || !pictureSize.equals(currentSize)) {
             currentColor = picture.getColor();
             currentSize = picture.getSize();
-            targetSize = new Size(width & currentColor.getWidthMask(), height & currentColor.getHeightMask());
-            resampler = new LanczosResampler(currentSize, targetSize);
+            if (outputColor == null) {
+                targetSize = new Size(width & currentColor.getWidthMask(), height & currentColor.getHeightMask());
+                resampler = new LanczosResampler(currentSize, targetSize);
+            } else {
+                targetSize = new Size(width & currentColor.getWidthMask() & outputColor.getWidthMask(),
+                        height & currentColor.getHeightMask() & outputColor.getHeightMask());
+                transform = ColorUtil.getTransform(currentColor, outputColor, null, targetSize);
+                if (transform == null)
+                    throw new IllegalArgumentException("No transform from " + currentColor + " to " + outputColor);
+            }
         }
 
-        LoanerPicture dest = store.getPicture(targetSize.getWidth(), targetSize.getHeight(), currentColor);
+        LoanerPicture dest = store.getPicture(targetSize.getWidth(), targetSize.getHeight(),
+                outputColor == null ? currentColor : outputColor);
 
-        resampler.resample(picture, dest.getPicture());
+        if (outputColor == null)
+            resampler.resample(picture, dest.getPicture());
+        else
+            transform.transform(picture, dest.getPicture());
 
         return dest;
     }
@@ -59,6 +87,6 @@ public class ScaleFilter implements Filter {
 
     @Override
     public ColorSpace getOutputColor() {
-        return ColorSpace.SAME;
+        return outputColor == null ? ColorSpace.SAME : outputColor;
     }
 }
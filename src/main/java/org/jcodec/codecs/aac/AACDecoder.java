@@ -14,7 +14,6 @@ import org.jcodec.common.model.AudioBuffer;
 
 import net.sourceforge.jaad.aac.AACException;
 import net.sourceforge.jaad.aac.Decoder;
-import net.sourceforge.jaad.aac.SampleBuffer;
 
 /**
  * This class is part of JCodec ( www.jcodec.org ) This software is distributed
@@ -27,6 +26,7 @@ import net.sourceforge.jaad.aac.SampleBuffer;
 public class AACDecoder implements AudioDecoder {
 
     private Decoder decoder;
+    private AudioFormat format;
 
     public AACDecoder(ByteBuffer decoderSpecific) throws AACException {
         if (decoderSpecific.remaining() >= 7) {
@@ -39,32 +39,57 @@ public class AACDecoder implements AudioDecoder {
         decoder = new Decoder(NIOUtils.toArray(decoderSpecific));
     }
 
+    /**
+     * Decodes one AAC frame into <code>dst</code> as interleaved signed 16 bit
+     * little endian PCM, the buffer is flipped and returned wrapped into the
+     * audio buffer. Apart from the returned wrapper no memory is allocated per
+     * frame when the caller supplies a buffer large enough to hold the frame,
+     * otherwise a new buffer is allocated for the samples.
+     */
     @Override
     public AudioBuffer decodeFrame(ByteBuffer frame, ByteBuffer dst) throws IOException {
         // Internally all AAC streams are ADTS wrapped
-        ADTSParser.read(frame);
-        SampleBuffer sampleBuffer = new SampleBuffer();
-        decoder.decodeFrame(NIOUtils.toArray(frame), sampleBuffer);
-        if (sampleBuffer.isBigEndian()) {
-            // Not a simple setter! This will also swap the order of bytes inside the buffer.
-            sampleBuffer.setBigEndian(false);
-        }
+        ADTSParser.skipHeader(frame);
+        decoder.decodeFrame(frame);
+
+        int size = decoder.getOutputSize();
+        if (dst == null || dst.remaining() < size)
+            dst = ByteBuffer.allocate(size);
+        decoder.writeOutput(dst);
+        dst.flip();
+
+        return new AudioBuffer(dst, getAudioFormat(), decoder.getOutputLength());
+    }
 
-        return new AudioBuffer(ByteBuffer.wrap(sampleBuffer.getData()), toAudioFormat(sampleBuffer), 0);
+    /**
+     * Decodes one AAC frame keeping the samples as floats, one array per
+     * channel. The arrays are owned by the decoder and are overwritten by the
+     * next frame, <code>getOutputLength()</code> samples are valid in each.
+     * 
+     * @return the planar samples or null if the frame could not be decoded
+     */
+    public float[][] decodeFramePlanar(ByteBuffer frame) throws IOException {
+        ADTSParser.skipHeader(frame);
+        decoder.decodeFrame(frame);
+        return decoder.getOutputData();
     }
-    
-    private AudioFormat toAudioFormat(SampleBuffer sampleBuffer) {
-        return new AudioFormat(sampleBuffer.getSampleRate(), sampleBuffer.getBitsPerSample(),
-                sampleBuffer.getChannels(), true, sampleBuffer.isBigEndian());
+
+    public int getOutputLength() {
+        return decoder.getOutputLength();
+    }
+
+    private AudioFormat getAudioFormat() {
+        int sampleRate = decoder.getOutputSampleRate();
+        int channels = decoder.getOutputChannels();
+        if (format == null || format.getSampleRate() != sampleRate || format.getChannels() != channels)
+            format = new AudioFormat(sampleRate, 16, channels, true, false);
+        return format;
     }
 
     @Override
     public AudioCodecMeta getCodecMeta(ByteBuffer data) throws IOException {
-        SampleBuffer sampleBuffer = new SampleBuffer();
-        decoder.decodeFrame(NIOUtils.toArray(data), sampleBuffer);
-        sampleBuffer.setBigEndian(false);
-
-        return org.jcodec.common.AudioCodecMeta.fromAudioFormat(toAudioFormat(sampleBuffer));
+        decoder.decodeFrame(data);
+        return org.jcodec.common.AudioCodecMeta.fromAudioFormat(getAudioFormat());
     }
 
     @UsedViaReflection
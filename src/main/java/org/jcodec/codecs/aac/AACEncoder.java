@@ -0,0 +1,643 @@
+package org.jcodec.codecs.aac;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.jcodec.common.AudioEncoder;
+import org.jcodec.common.AudioFormat;
+import org.jcodec.common.AudioUtil;
+import org.jcodec.common.io.BitWriter;
+
+import net.sourceforge.jaad.aac.AACException;
+import net.sourceforge.jaad.aac.SampleFrequency;
+import net.sourceforge.jaad.aac.filterbank.FilterBank;
+import net.sourceforge.jaad.aac.huffman.HuffmanEncoder;
+import net.sourceforge.jaad.aac.syntax.ICSInfo;
+import net.sourceforge.jaad.aac.syntax.ICSInfo.WindowSequence;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * AAC-LC encoder producing ADTS framed output, one ADTS frame per 1024 input
+ * samples per channel. Mono and stereo input is supported, stereo is coded as
+ * a channel pair with per band M/S decision.
+ *
+ * Only long blocks with the sine window are used. Quantization noise is shaped
+ * by AACPsychoModel, the rate control scales the allowed noise of the whole
+ * frame to hit the frame's bit budget. In ABR mode a bit reservoir lets
+ * demanding frames borrow from the easy ones, in CBR mode every frame has the
+ * same size (give or take a byte of rounding) padded with fill elements.
+ *
+ * The output starts with the 1024 sample encoder delay, the last samples are
+ * pushed out by <code>flush</code>.
+ *
+ * @author The JCodec project
+ *
+ */
+public class AACEncoder implements AudioEncoder {
+
+    public static enum RateControl {
+        ABR, CBR
+    }
+
+    private static final int FRAME_LEN = 1024;
+    private static final int ADTS_HEADER_SIZE = 7;
+    private static final int MAX_CHANNEL_BITS = 6144;
+    private static final int MAX_Q = 8191;
+    private static final int MAX_SF = 255;
+    private static final int MAX_SF_DELTA = 60;
+    // filterbank output to the decoder's spectrum scale
+    private static final float SPEC_SCALE = (float) Math.pow(2, -63);
+    private static final float ROUNDING = 0.4054f;
+    private static final float[] POW43 = new float[MAX_Q + 1];
+    private static final float[] STEP = new float[MAX_SF + 1];
+    private static final float[] INV_STEP34 = new float[MAX_SF + 1];
+
+    static {
+        for (int i = 0; i <= MAX_Q; i++)
+            POW43[i] = (float) Math.pow(i, 4. / 3);
+        for (int s = 0; s <= MAX_SF; s++) {
+            STEP[s] = (float) Math.pow(2, (s - 100) / 4.);
+            INV_STEP34[s] = (float) Math.pow(2, -3 * (s - 100) / 16.);
+        }
+    }
+
+    private AudioFormat format;
+    private RateControl rateControl;
+    private int channels;
+    private int sfIndex;
+    private int[] swbOffsets;
+    private int maxSfb;
+    private int bandwidthBin;
+
+    private FilterBank filterBank;
+    private AACPsychoModel psy;
+    private Channel[] chan;
+    private float[] mdctOut;
+    private int[] pcm;
+    private int filled;
+
+    private boolean[] msUsed;
+    private int msMask;
+    private int frameMaxSfb;
+
+    private double meanBits;
+    private double reservoir;
+    private double maxReservoir;
+    private long frameNo;
+
+    private static class Channel {
+        float[] samples = new float[2 * FRAME_LEN];
+        float[] spec = new float[FRAME_LEN];
+        float[] xp = new float[FRAME_LEN];
+        int[] q = new int[FRAME_LEN];
+        float[] energy;
+        float[] thr;
+        float[] allowed;
+        int[] sf;
+        int[] sMin;
+        int[] bandMax;
+        int[] bandBits;
+        int[] sectCb = new int[64];
+        int[] sectLen = new int[64];
+        int nSect;
+        int globalGain;
+
+        Channel(int nBands) {
+            energy = new float[nBands];
+            thr = new float[nBands];
+            allowed = new float[nBands];
+            sf = new int[nBands];
+            sMin = new int[nBands];
+            bandMax = new int[nBands];
+            bandBits = new int[nBands];
+        }
+    }
+
+    public static AACEncoder createAACEncoder(AudioFormat format, int bitRate) {
+        return new AACEncoder(format, bitRate, RateControl.ABR);
+    }
+
+    public static AACEncoder createAACEncoderWithRateControl(AudioFormat format, int bitRate, RateControl rateControl) {
+        return new AACEncoder(format, bitRate, rateControl);
+    }
+
+    public AACEncoder(AudioFormat format, int bitRate, RateControl rateControl) {
+        this.format = format;
+        this.rateControl = rateControl;
+        this.channels = format.getChannels();
+        if (channels < 1 || channels > 2)
+            throw new IllegalArgumentException("Only mono and stereo AAC encoding is supported, got " + channels
+                    + " channels.");
+        if (format.getSampleSizeInBits() != 16 && format.getSampleSizeInBits() != 24)
+            throw new IllegalArgumentException(format.getSampleSizeInBits() + " bit PCM is not supported.");
+        int sampleRate = format.getSampleRate();
+        sfIndex = -1;
+        for (int i = 0; i < AACConts.AAC_SAMPLE_RATES.length - 1; i++) {
+            if (AACConts.AAC_SAMPLE_RATES[i] == sampleRate)
+                sfIndex = i;
+        }
+        if (sfIndex == -1)
+            throw new IllegalArgumentException("Sample rate " + sampleRate + " is not supported by AAC encoder.");
+
+        SampleFrequency sf = SampleFrequency.forInt(sfIndex);
+        swbOffsets = ICSInfo.getLongWindowSWBOffsets(sf);
+        int nBands = ICSInfo.getLongWindowSWBCount(sf);
+
+        // the usual low pass for the bit rate, there is no point spending bits
+        // above it
+        double bandwidth = Math.min(Math.min(sampleRate / 2, 20000), 3000 + bitRate / channels / 4);
+        bandwidthBin = (int) (bandwidth * 2 * FRAME_LEN / sampleRate);
+        maxSfb = nBands;
+        for (int b = 0; b < nBands; b++) {
+            if (swbOffsets[b] >= bandwidthBin) {
+                maxSfb = b;
+                break;
+            }
+        }
+        bandwidthBin = swbOffsets[maxSfb];
+
+        try {
+            filterBank = new FilterBank(false, channels);
+        } catch (AACException e) {
+            throw new RuntimeException(e);
+        }
+        psy = new AACPsychoModel(sampleRate, swbOffsets, maxSfb);
+        chan = new Channel[channels];
+        for (int c = 0; c < channels; c++)
+            chan[c] = new Channel(maxSfb);
+        mdctOut = new float[2 * FRAME_LEN];
+        pcm = new int[FRAME_LEN * channels];
+        msUsed = new boolean[maxSfb];
+
+        // raw block bits per frame, the bitrate covers the ADTS headers too
+        meanBits = Math.max(0, (double) bitRate * FRAME_LEN / sampleRate - ADTS_HEADER_SIZE * 8);
+        maxReservoir = Math.max(0, MAX_CHANNEL_BITS * channels - meanBits);
+    }
+
+    /**
+     * AudioSpecificConfig of the stream, the esds payload for MP4.
+     */
+    public ByteBuffer getDecoderSpecificInfo() {
+        return ADTSParser.adtsToStreamInfo(new ADTSParser.Header(ObjectType.AOT_AAC_LC.ordinal(), channels, 1, 1, sfIndex,
+                0));
+    }
+
+    /**
+     * Maximum size of the output produced for the given number of input
+     * samples per channel, including a possible flush.
+     */
+    public int estimateBufferSize(int samples) {
+        return (samples / FRAME_LEN + 2) * (ADTS_HEADER_SIZE + MAX_CHANNEL_BITS / 8 * channels);
+    }
+
+    /**
+     * Encodes the PCM samples into zero or more ADTS frames. Samples that
+     * don't make up a full frame are kept until the next call.
+     */
+    @Override
+    public ByteBuffer encode(ByteBuffer audioPkt, ByteBuffer buf) {
+        ByteBuffer in = audioPkt.duplicate();
+        int frameSize = format.getFrameSize();
+        int samples = filled + in.remaining() / frameSize;
+        if (buf == null)
+            buf = ByteBuffer.allocate(estimateBufferSize(samples));
+        ByteBuffer out = buf.duplicate();
+
+        int scale = format.getSampleSizeInBits() == 24 ? 256 : 1;
+        while (in.remaining() >= frameSize) {
+            int n = Math.min((FRAME_LEN - filled) * channels, (in.remaining() / frameSize) * channels);
+            int limit = in.limit();
+            in.limit(in.position() + n * format.getSampleSizeInBits() / 8);
+            AudioUtil.toInt(format, in, pcm);
+            in.limit(limit);
+            for (int c = 0; c < channels; c++) {
+                float[] dst = chan[c].samples;
+                for (int i = c, j = FRAME_LEN + filled; i < n; i += channels, j++)
+                    dst[j] = (float) pcm[i] / scale;
+            }
+            filled += n / channels;
+            if (filled == FRAME_LEN)
+                encodeFrame(out);
+        }
+        out.flip();
+        return out;
+    }
+
+    /**
+     * Encodes the samples still buffered padded with silence, followed by one
+     * more frame that carries the delayed part of the signal.
+     */
+    public ByteBuffer flush(ByteBuffer buf) {
+        if (buf == null)
+            buf = ByteBuffer.allocate(estimateBufferSize(0));
+        ByteBuffer out = buf.duplicate();
+        int frames = filled > 0 ? 2 : 1;
+        for (int i = 0; i < frames; i++) {
+            for (int c = 0; c < channels; c++)
+                Arrays.fill(chan[c].samples, FRAME_LEN + filled, 2 * FRAME_LEN, 0);
+            filled = FRAME_LEN;
+            encodeFrame(out);
+        }
+        out.flip();
+        return out;
+    }
+
+    private void encodeFrame(ByteBuffer out) {
+        analyze();
+
+        // bits the frame takes with the noise right at the masking threshold
+        int bits = quantizeAll(0);
+        int frameBytes = 0;
+        int target;
+        if (rateControl == RateControl.CBR) {
+            frameBytes = (int) (Math.floor((frameNo + 1) * meanBits / 8) - Math.floor(frameNo * meanBits / 8));
+            target = Math.min(frameBytes * 8, MAX_CHANNEL_BITS * channels);
+        } else {
+            double lo = meanBits + reservoir - maxReservoir;
+            double hi = Math.min(meanBits + reservoir / 2, MAX_CHANNEL_BITS * channels);
+            target = (int) Math.max(lo, Math.min(hi, bits));
+        }
+        bits = rateControl(bits, target);
+        if (rateControl == RateControl.ABR)
+            reservoir = Math.max(0, Math.min(maxReservoir, reservoir + meanBits - bits));
+
+        ByteBuffer frame = out.duplicate();
+        out.position(out.position() + ADTS_HEADER_SIZE);
+        BitWriter w = new BitWriter(out);
+        writeRawBlock(w, frameBytes * 8);
+        w.flush();
+        ADTSParser.write(new ADTSParser.Header(ObjectType.AOT_AAC_LC.ordinal(), channels, 1, 1, sfIndex,
+                out.position() - frame.position()), frame);
+
+        frameNo++;
+        filled = 0;
+        for (int c = 0; c < channels; c++)
+            System.arraycopy(chan[c].samples, FRAME_LEN, chan[c].samples, 0, FRAME_LEN);
+    }
+
+    /**
+     * Finds the smallest noise level that fits the target. Returns the raw
+     * block size in bits with the frame quantized at that level.
+     */
+    private int rateControl(int bits, int target) {
+        double lo, hi;
+        if (bits > target) {
+            lo = 0;
+            hi = 16;
+        } else if (bits < target) {
+            // spare bits, spend them on lowering the noise below the mask
+            lo = -16;
+            hi = 0;
+        } else {
+            return bits;
+        }
+        for (int i = 0; i < 8; i++) {
+            double mid = (lo + hi) / 2;
+            if (quantizeAll(mid) > target)
+                lo = mid;
+            else
+                hi = mid;
+        }
+        bits = quantizeAll(hi);
+        if (bits > target) {
+            // the floor of what the frame can take
+            bits = quantizeAll(64);
+        }
+        return bits;
+    }
+
+    private void analyze() {
+        for (int c = 0; c < channels; c++) {
+            Channel ch = chan[c];
+            filterBank.processLTP(WindowSequence.ONLY_LONG_SEQUENCE, 0, 0, ch.samples, mdctOut);
+            for (int k = 0; k < bandwidthBin; k++)
+                ch.spec[k] = mdctOut[k] * SPEC_SCALE;
+            psy.calculate(ch.spec, ch.energy, ch.thr);
+        }
+        msMask = 0;
+        if (channels == 2)
+            stereoDecision(chan[0], chan[1]);
+
+        for (int c = 0; c < channels; c++) {
+            Channel ch = chan[c];
+            for (int k = 0; k < bandwidthBin; k++) {
+                float x = Math.abs(ch.spec[k]);
+                ch.xp[k] = (float) Math.sqrt(x * Math.sqrt(x));
+            }
+            for (int b = 0; b < maxSfb; b++) {
+                float max = 0;
+                for (int k = swbOffsets[b]; k < swbOffsets[b + 1]; k++)
+                    max = Math.max(max, ch.xp[k]);
+                // the finest scalefactor that doesn't overflow the escape
+                // codebook
+                int s = max == 0 ? 0 : (int) Math.ceil(100 + 16 / 3. * Math.log(max / (MAX_Q - ROUNDING)) / Math.log(2));
+                ch.sMin[b] = Math.max(0, Math.min(MAX_SF, s));
+            }
+        }
+    }
+
+    /**
+     * Codes the bands as M/S where the masking thresholds make it cheaper,
+     * that is when the product of the signal to mask ratios of M and S is
+     * lower than that of L and R.
+     */
+    private void stereoDecision(Channel l, Channel r) {
+        int used = 0;
+        for (int b = 0; b < maxSfb; b++) {
+            float tL = l.thr[b], tR = r.thr[b];
+            float tMin = Math.min(tL, tR);
+            double eM = 0, eS = 0;
+            for (int k = swbOffsets[b]; k < swbOffsets[b + 1]; k++) {
+                float m = (l.spec[k] + r.spec[k]) * .5f, s = (l.spec[k] - r.spec[k]) * .5f;
+                eM += m * m;
+                eS += s * s;
+            }
+            double lr = Math.max(l.energy[b], tL) / tL * Math.max(r.energy[b], tR) / tR;
+            double ms = Math.max(eM, tMin) / tMin * Math.max(eS, tMin) / tMin;
+            msUsed[b] = ms < lr;
+            if (!msUsed[b])
+                continue;
+            used++;
+            for (int k = swbOffsets[b]; k < swbOffsets[b + 1]; k++) {
+                float m = (l.spec[k] + r.spec[k]) * .5f, s = (l.spec[k] - r.spec[k]) * .5f;
+                l.spec[k] = m;
+                r.spec[k] = s;
+            }
+            l.energy[b] = (float) eM;
+            r.energy[b] = (float) eS;
+            l.thr[b] = r.thr[b] = tMin;
+        }
+        msMask = used == 0 ? 0 : used == maxSfb ? 2 : 1;
+    }
+
+    /**
+     * Quantizes all channels allowing 2^logM times the noise the psy model
+     * gives, returns the raw data block size in bits.
+     */
+    private int quantizeAll(double logM) {
+        float mult = (float) Math.pow(2, logM);
+        frameMaxSfb = 0;
+        for (int c = 0; c < channels; c++) {
+            Channel ch = chan[c];
+            for (int b = 0; b < maxSfb; b++)
+                ch.allowed[b] = ch.thr[b] * mult;
+            quantize(ch);
+            for (int b = maxSfb - 1; b >= frameMaxSfb; b--) {
+                if (ch.bandMax[b] != 0) {
+                    frameMaxSfb = b + 1;
+                    break;
+                }
+            }
+        }
+        int bits = channels == 2 ? 3 + 4 + 1 + 11 + 2 : 3 + 4;
+        if (channels == 2 && msMask == 1)
+            bits += frameMaxSfb;
+        for (int c = 0; c < channels; c++)
+            bits += buildSections(chan[c]) + 8 + (channels == 2 ? 0 : 11) + 3;
+        bits += 3;
+        return (bits + 7) & ~7;
+    }
+
+    private void quantize(Channel ch) {
+        int prev = -1;
+        for (int b = 0; b < maxSfb; b++) {
+            int from = swbOffsets[b], to = swbOffsets[b + 1];
+            if (ch.energy[b] <= ch.allowed[b]) {
+                zeroBand(ch, from, to);
+                ch.bandMax[b] = 0;
+                continue;
+            }
+            int s = chooseScalefactor(ch, from, to, ch.sMin[b], ch.allowed[b]);
+            if (prev != -1)
+                s = Math.max(prev - MAX_SF_DELTA, Math.min(prev + MAX_SF_DELTA, s));
+            ch.bandMax[b] = quantizeBand(ch, from, to, s);
+            ch.sf[b] = s;
+            if (ch.bandMax[b] != 0)
+                prev = s;
+        }
+    }
+
+    private static void zeroBand(Channel ch, int from, int to) {
+        for (int k = from; k < to; k++)
+            ch.q[k] = 0;
+    }
+
+    /**
+     * The coarsest scalefactor keeping the band's noise within the allowed
+     * level.
+     */
+    private int chooseScalefactor(Channel ch, int from, int to, int sMin, float allowed) {
+        if (bandNoise(ch, from, to, sMin) > allowed)
+            return sMin;
+        int lo = sMin, hi = MAX_SF + 1;
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >> 1;
+            if (bandNoise(ch, from, to, mid) <= allowed)
+                lo = mid;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    private float bandNoise(Channel ch, int from, int to, int s) {
+        float inv = INV_STEP34[s], step = STEP[s];
+        float noise = 0;
+        for (int k = from; k < to; k++) {
+            int q = Math.min(MAX_Q, (int) (ch.xp[k] * inv + ROUNDING));
+            float d = Math.abs(ch.spec[k]) - POW43[q] * step;
+            noise += d * d;
+        }
+        return noise;
+    }
+
+    private int quantizeBand(Channel ch, int from, int to, int s) {
+        float inv = INV_STEP34[s];
+        int max = 0;
+        for (int k = from; k < to; k++) {
+            int q = Math.min(MAX_Q, (int) (ch.xp[k] * inv + ROUNDING));
+            ch.q[k] = ch.spec[k] < 0 ? -q : q;
+            max = Math.max(max, q);
+        }
+        return max;
+    }
+
+    /**
+     * Groups the bands into sections sharing a codebook and assigns the
+     * scalefactors of the zero bands that ended up in coded sections. Returns
+     * the bits taken by the section data, scalefactors and spectral data.
+     */
+    private int buildSections(Channel ch) {
+        int bits = 0;
+        ch.nSect = 0;
+        for (int b = 0; b < frameMaxSfb; b++) {
+            int from = swbOffsets[b], width = swbOffsets[b + 1] - from;
+            int max = ch.bandMax[b];
+            int best = HuffmanEncoder.firstCodebook(max);
+            int bestBits = HuffmanEncoder.countBits(best, ch.q, from, width);
+            if (best != 0 && best < HuffmanEncoder.ESCAPE_HCB) {
+                int alt = HuffmanEncoder.countBits(best + 1, ch.q, from, width);
+                if (alt < bestBits) {
+                    best++;
+                    bestBits = alt;
+                }
+            }
+            if (ch.nSect > 0) {
+                int cb = ch.sectCb[ch.nSect - 1];
+                if (cb == 0 && max == 0) {
+                    ch.sectLen[ch.nSect - 1]++;
+                    ch.bandBits[b] = 0;
+                    continue;
+                }
+                if (cb != 0 && max <= HuffmanEncoder.maxValue(cb)) {
+                    int ext = cb == best ? bestBits : HuffmanEncoder.countBits(cb, ch.q, from, width);
+                    // a zero band in a coded section repeats the previous
+                    // scalefactor
+                    if (max == 0)
+                        ext += HuffmanEncoder.scaleFactorBits(0);
+                    if (ext <= bestBits + 9) {
+                        ch.sectLen[ch.nSect - 1]++;
+                        ch.bandBits[b] = ext;
+                        continue;
+                    }
+                }
+            }
+            ch.sectCb[ch.nSect] = best;
+            ch.sectLen[ch.nSect] = 1;
+            ch.nSect++;
+            ch.bandBits[b] = bestBits;
+        }
+
+        // zero bands inside coded sections take the scalefactor of a
+        // neighbour so they cost a zero delta
+        int b = 0, prev = -1;
+        for (int i = 0; i < ch.nSect; i++) {
+            bits += 4 + 5 * (ch.sectLen[i] / 31 + 1);
+            int end = b + ch.sectLen[i];
+            for (; b < end; b++) {
+                bits += ch.bandBits[b];
+                if (ch.sectCb[i] == 0)
+                    continue;
+                if (ch.bandMax[b] == 0) {
+                    ch.sf[b] = prev != -1 ? prev : nextCodedScalefactor(ch, b);
+                } else if (prev != -1) {
+                    bits += HuffmanEncoder.scaleFactorBits(ch.sf[b] - prev);
+                } else {
+                    bits += HuffmanEncoder.scaleFactorBits(0);
+                }
+                if (prev == -1)
+                    ch.globalGain = ch.sf[b];
+                prev = ch.sf[b];
+            }
+        }
+        if (prev == -1)
+            ch.globalGain = 100;
+        return bits;
+    }
+
+    private int nextCodedScalefactor(Channel ch, int b) {
+        for (; b < frameMaxSfb; b++) {
+            if (ch.bandMax[b] != 0)
+                return ch.sf[b];
+        }
+        return 100;
+    }
+
+    private void writeRawBlock(BitWriter w, int frameBits) {
+        int start = w.position();
+        if (channels == 2) {
+            w.writeNBit(1, 3); // ID_CPE
+            w.writeNBit(0, 4);
+            w.write1Bit(1); // common_window
+            writeICSInfo(w);
+            w.writeNBit(msMask, 2);
+            if (msMask == 1) {
+                for (int b = 0; b < frameMaxSfb; b++)
+                    w.write1Bit(msUsed[b] ? 1 : 0);
+            }
+            writeICS(w, chan[0], true);
+            writeICS(w, chan[1], true);
+        } else {
+            w.writeNBit(0, 3); // ID_SCE
+            w.writeNBit(0, 4);
+            writeICS(w, chan[0], false);
+        }
+        if (frameBits > 0)
+            writeFill(w, frameBits - (w.position() - start) - 3);
+        w.writeNBit(7, 3); // ID_END
+    }
+
+    /**
+     * Pads the raw block with fill elements up to the given number of bits,
+     * the remaining bits below a byte are covered by the byte alignment.
+     */
+    private static void writeFill(BitWriter w, int free) {
+        while (free >= 7) {
+            int count = (free - 7) >> 3;
+            w.writeNBit(6, 3); // ID_FIL
+            if (count < 15) {
+                w.writeNBit(count, 4);
+                free -= 7 + (count << 3);
+            } else {
+                count = Math.min(15 + 255 - 1, (free - 15) >> 3);
+                w.writeNBit(15, 4);
+                w.writeNBit(count - 14, 8);
+                free -= 15 + (count << 3);
+            }
+            if (count > 0) {
+                w.writeNBit(0, 4); // EXT_FILL
+                w.writeNBit(0, 4); // fill_nibble
+                for (int i = 1; i < count; i++)
+                    w.writeNBit(0xa5, 8);
+            }
+        }
+    }
+
+    private void writeICSInfo(BitWriter w) {
+        w.write1Bit(0); // reserved
+        w.writeNBit(0, 2); // ONLY_LONG_SEQUENCE
+        w.write1Bit(0); // sine window
+        w.writeNBit(frameMaxSfb, 6);
+        w.write1Bit(0); // predictor_data_present
+    }
+
+    private void writeICS(BitWriter w, Channel ch, boolean commonWindow) {
+        w.writeNBit(ch.globalGain, 8);
+        if (!commonWindow)
+            writeICSInfo(w);
+
+        for (int i = 0; i < ch.nSect; i++) {
+            w.writeNBit(ch.sectCb[i], 4);
+            int len = ch.sectLen[i];
+            for (; len >= 31; len -= 31)
+                w.writeNBit(31, 5);
+            w.writeNBit(len, 5);
+        }
+
+        int b = 0, prev = ch.globalGain;
+        for (int i = 0; i < ch.nSect; i++) {
+            int end = b + ch.sectLen[i];
+            for (; b < end; b++) {
+                if (ch.sectCb[i] == 0)
+                    continue;
+                HuffmanEncoder.encodeScaleFactor(w, ch.sf[b] - prev);
+                prev = ch.sf[b];
+            }
+        }
+
+        w.write1Bit(0); // pulse_data_present
+        w.write1Bit(0); // tns_data_present
+        w.write1Bit(0); // gain_control_data_present
+
+        b = 0;
+        for (int i = 0; i < ch.nSect; i++) {
+            int end = b + ch.sectLen[i];
+            for (; b < end; b++) {
+                int from = swbOffsets[b];
+                HuffmanEncoder.encode(w, ch.sectCb[i], ch.q, from, swbOffsets[b + 1] - from);
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.jcodec.codecs.aac;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * A simple psychoacoustic model working on the long window MDCT spectrum.
+ * Estimates how much quantization noise every scalefactor band can hide:
+ * the band energies are spread over the neighbouring bands in the Bark domain,
+ * lowered by a signal to mask ratio that depends on the tonality of the band
+ * and limited from below by the absolute threshold of hearing.
+ *
+ * @author The JCodec project
+ *
+ */
+class AACPsychoModel {
+    // Spectral energy of a full scale sine in the encoder's MDCT scaling,
+    // taken as 96dB SPL for the absolute threshold of hearing
+    private static final double FULL_SCALE_ENERGY = 1e15;
+    private static final float SPREAD_LOWER = 2.5f; // 25dB per Bark towards lower bands
+    private static final float SPREAD_UPPER = 1f; // 10dB per Bark towards higher bands
+    private static final float SMR_TONE = 1.8f; // 18dB below a tonal masker
+    private static final float SMR_NOISE = 0.6f; // 6dB below a noise like masker
+
+    private final int[] swbOffsets;
+    private final int nBands;
+    private final float[][] spreading;
+    private final float[] ath;
+    private final float[] spread;
+
+    public AACPsychoModel(int sampleRate, int[] swbOffsets, int nBands) {
+        this.swbOffsets = swbOffsets;
+        this.nBands = nBands;
+        this.spreading = new float[nBands][nBands];
+        this.ath = new float[nBands];
+        this.spread = new float[nBands];
+
+        double binWidth = sampleRate / 2048.0;
+        double[] bark = new double[nBands];
+        for (int b = 0; b < nBands; b++)
+            bark[b] = bark((swbOffsets[b] + swbOffsets[b + 1]) * binWidth / 2);
+
+        for (int b = 0; b < nBands; b++) {
+            for (int j = 0; j < nBands; j++) {
+                double dz = bark[b] - bark[j];
+                // masker j below the band masks upwards with the shallow slope
+                double att = dz > 0 ? SPREAD_UPPER * dz : -SPREAD_LOWER * dz;
+                spreading[b][j] = att > 6 ? 0 : (float) Math.pow(10, -att);
+            }
+            double minDb = Double.MAX_VALUE;
+            for (int k = swbOffsets[b]; k < swbOffsets[b + 1]; k++)
+                minDb = Math.min(minDb, athDb((k + 0.5) * binWidth));
+            ath[b] = (float) (FULL_SCALE_ENERGY * Math.pow(10, (minDb - 96) / 10));
+        }
+    }
+
+    private static double bark(double f) {
+        return 13 * Math.atan(0.00076 * f) + 3.5 * Math.atan((f / 7500) * (f / 7500));
+    }
+
+    /**
+     * Absolute threshold of hearing in dB SPL (Terhardt).
+     */
+    private static double athDb(double f) {
+        double k = Math.max(f, 20) / 1000;
+        return 3.64 * Math.pow(k, -0.8) - 6.5 * Math.exp(-0.6 * (k - 3.3) * (k - 3.3)) + 1e-3 * k * k * k * k;
+    }
+
+    /**
+     * Calculates band energies and the allowed noise energy for every band.
+     *
+     * @param spec
+     *            MDCT spectrum of one channel
+     * @param energy
+     *            output, energy of every scalefactor band
+     * @param thr
+     *            output, noise energy the band can hide
+     */
+    public void calculate(float[] spec, float[] energy, float[] thr) {
+        for (int b = 0; b < nBands; b++) {
+            int from = swbOffsets[b], to = swbOffsets[b + 1];
+            double e = 0, logSum = 0;
+            for (int k = from; k < to; k++) {
+                double p = spec[k] * spec[k] + 1e-3;
+                e += p;
+                logSum += Math.log(p);
+            }
+            int width = to - from;
+            energy[b] = (float) e;
+
+            // spectral flatness in dB, -60dB and below is treated as a pure tone
+            double flatness = 10 / Math.log(10) * (logSum / width - Math.log(e / width));
+            float tonality = (float) Math.min(1, flatness / -60);
+            float smr = tonality * SMR_TONE + (1 - tonality) * SMR_NOISE;
+            spread[b] = (float) (e * Math.pow(10, -smr));
+        }
+
+        for (int b = 0; b < nBands; b++) {
+            float[] row = spreading[b];
+            float masked = 0;
+            for (int j = 0; j < nBands; j++)
+                masked = Math.max(masked, spread[j] * row[j]);
+            thr[b] = Math.max(masked, ath[b]);
+        }
+    }
+}
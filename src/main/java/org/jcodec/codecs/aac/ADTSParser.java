@@ -112,6 +112,23 @@ public class ADTSParser {
         return new Header(aot + 1, ch, crc_abs, rdb + 1, sr, size);
     }
 
+    /**
+     * Skips the ADTS header if the buffer starts with one, this doesn't
+     * allocate anything unlike <code>read</code>.
+     * 
+     * @return true if the header was found
+     */
+    public static boolean skipHeader(ByteBuffer data) {
+        int pos = data.position();
+        if (data.remaining() < 7 || (data.get(pos) & 0xff) != 0xff || (data.get(pos + 1) & 0xf0) != 0xf0)
+            return false;
+        int size = ((data.get(pos + 3) & 0x3) << 11) | ((data.get(pos + 4) & 0xff) << 3) | ((data.get(pos + 5) & 0xff) >> 5);
+        if (size < 7)
+            return false;
+        data.position(pos + 7);
+        return true;
+    }
+
     public static ByteBuffer write(Header header, ByteBuffer buf) {
         ByteBuffer data = buf.duplicate();
         BitWriter br = new BitWriter(data);
@@ -33,4 +33,25 @@ public class MConst {
     public static final int[] transitLPS = new int[] { 0, 0, 1, 2, 2, 4, 4, 5, 6, 7, 8, 9, 9, 11, 11, 12, 13, 13, 15,
             15, 16, 16, 18, 18, 19, 19, 21, 21, 22, 22, 23, 24, 24, 25, 26, 26, 27, 27, 28, 29, 29, 30, 30, 30, 31, 32,
             32, 33, 33, 33, 34, 34, 35, 35, 35, 36, 36, 36, 37, 37, 37, 38, 38, 63 };
+
+    /**
+     * Tables indexed by a context model packed as (pStateIdx << 1) | valMPS.
+     * rangeLPSPacked is indexed by (pStateIdx << 2) | qCodIRangeIdx.
+     */
+    public static final int[] rangeLPSPacked = new int[256];
+    public static final byte[] transitMPSPacked = new byte[128];
+    public static final byte[] transitLPSPacked = new byte[128];
+
+    static {
+        for (int pState = 0; pState < 64; pState++) {
+            for (int q = 0; q < 4; q++)
+                rangeLPSPacked[(pState << 2) | q] = rangeLPS[q][pState];
+            for (int mps = 0; mps < 2; mps++) {
+                int nextMPS = pState < 62 ? pState + 1 : pState;
+                transitMPSPacked[(pState << 1) | mps] = (byte) ((nextMPS << 1) | mps);
+                transitLPSPacked[(pState << 1) | mps] = (byte) ((transitLPS[pState] << 1)
+                        | (pState == 0 ? 1 - mps : mps));
+            }
+        }
+    }
 }
@@ -17,16 +17,47 @@ public class MDecoder {
     private int range;
     private int code;
     private int nBitsPending;
-    private int[][] cm;
+    // context models packed as (pStateIdx << 1) | valMPS
+    private byte[] states;
 
+    /**
+     * @param cm
+     *            context models as initialized by CABAC.initModels, the decoder
+     *            works on a packed copy of them so 'cm' is NOT updated while
+     *            decoding
+     * @deprecated Use createMDecoder with the models packed by
+     *             CABAC.initModels(byte[], ...), the decoder then updates them
+     *             in place
+     */
+    @Deprecated
     public MDecoder(ByteBuffer _in, int[][] cm) {
+        this(cm == null ? null : packModels(cm), _in);
+    }
+
+    /**
+     * @param states
+     *            context models as initialized by CABAC.initModels, updated in
+     *            place while decoding
+     */
+    public static MDecoder createMDecoder(ByteBuffer _in, byte[] states) {
+        return new MDecoder(states, _in);
+    }
+
+    private MDecoder(byte[] states, ByteBuffer _in) {
         this._in = _in;
         this.range = 510;
-        this.cm = cm;
+        this.states = states;
 
         initCodeRegister();
     }
 
+    private static byte[] packModels(int[][] cm) {
+        byte[] states = new byte[cm[0].length];
+        for (int i = 0; i < states.length; i++)
+            states[i] = (byte) ((cm[0][i] << 1) | cm[1][i]);
+        return states;
+    }
+
     /**
      * Initializes code register. Loads 9 bits from the stream into working area
      * of code register ( bits 8 - 16) leaving 7 bits in the pending area of
@@ -60,38 +91,33 @@ public class MDecoder {
      * @throws IOException
      */
     public int decodeBin(int m) {
-        int bin;
-
-        int qIdx = (range >> 6) & 0x3;
-        int rLPS = MConst.rangeLPS[qIdx][cm[0][m]];
+        int state = states[m];
+        int rLPS = MConst.rangeLPSPacked[((state & 0x7e) << 1) | ((range >> 6) & 0x3)];
         range -= rLPS;
         int rs8 = range << 8;
 
         if (code < rs8) {
-            // MPS
-            if (cm[0][m] < 62)
-                cm[0][m]++;
-
-            renormalize();
-
-            bin = cm[1][m];
+            // MPS, the range is at least 128 so it takes one shift at most
+            states[m] = MConst.transitMPSPacked[state];
+            if (range < 256) {
+                range <<= 1;
+                code <<= 1;
+                if (--nBitsPending <= 0)
+                    refill();
+            }
+            return state & 1;
         } else {
-            // LPS
-            range = rLPS;
+            // LPS, all the shifts at once
             code -= rs8;
-
-            renormalize();
-
-            bin = 1 - cm[1][m];
-
-            if (cm[0][m] == 0)
-                cm[1][m] = 1 - cm[1][m];
-
-            cm[0][m] = MConst.transitLPS[cm[0][m]];
+            int shift = Integer.numberOfLeadingZeros(rLPS) - 23;
+            range = rLPS << shift;
+            code <<= shift;
+            nBitsPending -= shift;
+            if (nBitsPending <= 0)
+                refill();
+            states[m] = MConst.transitLPSPacked[state];
+            return (state & 1) ^ 1;
         }
-
-//        System.out.println("CABAC BIT [" + m + "]: " + bin);
-        return bin;
     }
 
     /**
@@ -107,10 +133,8 @@ public class MDecoder {
 
         if (code < (range << 8)) {
             renormalize();
-//            System.out.println("CABAC BIT [-2]: 0");
             return 0;
         } else {
-//            System.out.println("CABAC BIT [-2]: 1");
             return 1;
         }
     }
@@ -130,15 +154,65 @@ public class MDecoder {
 
         int tmp = code - (range << 8);
         if (tmp < 0) {
-//            System.out.println("CABAC BIT [-1]: 0");
             return 0;
         } else {
-//            System.out.println("CABAC BIT [-1]: 1");
             code = tmp;
             return 1;
         }
     }
 
+    /**
+     * Decodes 'n' bypass bins into the bits of an integer, the first bin being
+     * the most significant one
+     */
+    public int decodeBinsBypass(int n) {
+        int val = 0;
+        int rs8 = range << 8;
+        for (int i = 0; i < n; i++) {
+            code <<= 1;
+            if (--nBitsPending <= 0)
+                refill();
+            val <<= 1;
+            if (code >= rs8) {
+                code -= rs8;
+                val |= 1;
+            }
+        }
+        return val;
+    }
+
+    /**
+     * Decodes bypass bins up to and including the first 0 bin, or until 'max'
+     * 1 bins were read
+     * 
+     * @return the number of 1 bins
+     */
+    public int decodeUnaryBypass(int max) {
+        int rs8 = range << 8;
+        int n = 0;
+        while (n < max) {
+            code <<= 1;
+            if (--nBitsPending <= 0)
+                refill();
+            if (code < rs8)
+                break;
+            code -= rs8;
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Loads the next byte into the pending area after the code register was
+     * shifted past it, 'nBitsPending' is at most 0 here.
+     */
+    private void refill() {
+        if (_in.hasRemaining()) {
+            code |= (_in.get() & 0xff) << -nBitsPending;
+            nBitsPending += 8;
+        }
+    }
+
     /**
      * Shifts the current interval to either 1/2 or 0 (code = (code << 1) &
      * 0x1ffff) and scales it by 2 (range << 1).
@@ -159,4 +233,4 @@ public class MDecoder {
                 readOneByte();
         }
     }
-}
\ No newline at end of file
+}
@@ -7,10 +7,7 @@ import static org.jcodec.common.tools.MathUtil.wrap;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ThreadFactory;
 
 import org.jcodec.codecs.h264.H264Utils.MvList2D;
 import org.jcodec.codecs.h264.decode.DeblockerInput;
@@ -29,6 +26,7 @@ import org.jcodec.codecs.h264.io.model.SeqParameterSet;
 import org.jcodec.codecs.h264.io.model.SliceHeader;
 import org.jcodec.codecs.h264.io.model.SliceType;
 import org.jcodec.common.IntObjectMap;
+import org.jcodec.common.SharedThreadPool;
 import org.jcodec.common.UsedViaReflection;
 import org.jcodec.common.VideoCodecMeta;
 import org.jcodec.common.VideoDecoder;
@@ -56,22 +54,13 @@ public class H264Decoder extends VideoDecoder {
     private List<Frame> pictureBuffer;
     private POCManager poc;
     private FrameReader reader;
-    private ExecutorService tp;
     private boolean threaded;
+    private FrameDecoder frameDecoder;
 
     public H264Decoder() {
         pictureBuffer = new ArrayList<Frame>();
         poc = new POCManager();
         this.threaded = Runtime.getRuntime().availableProcessors() > 1;
-        if (threaded) {
-            tp = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
-                public Thread newThread(Runnable r) {
-                    Thread t = Executors.defaultThreadFactory().newThread(r);
-                    t.setDaemon(true);
-                    return t;
-                }
-            });
-        }
         reader = new FrameReader();
     }
 
@@ -101,26 +90,31 @@ public class H264Decoder extends VideoDecoder {
     }
 
     public Frame decodeFrameFromNals(List<ByteBuffer> nalUnits, byte[][] buffer) {
-        return new FrameDecoder(this).decodeFrame(nalUnits, buffer);
+        if (frameDecoder == null)
+            frameDecoder = new FrameDecoder(this);
+        return frameDecoder.decodeFrame(nalUnits, buffer);
     }
 
     private static final class SliceDecoderRunnable implements Runnable {
         private final SliceReader sliceReader;
-        private final Frame result;
-        private FrameDecoder fdec;
+        private final SliceDecoder sliceDecoder;
 
-        private SliceDecoderRunnable(FrameDecoder fdec, SliceReader sliceReader, Frame result) {
-            this.fdec = fdec;
+        private SliceDecoderRunnable(SliceDecoder sliceDecoder, SliceReader sliceReader) {
+            this.sliceDecoder = sliceDecoder;
             this.sliceReader = sliceReader;
-            this.result = result;
         }
 
         public void run() {
-            new SliceDecoder(fdec.activeSps, fdec.dec.sRefs, fdec.dec.lRefs, fdec.di, result)
-                    .decodeFromReader(sliceReader);
+            sliceDecoder.decodeFromReader(sliceReader);
         }
     }
 
+    /**
+     * Decodes pictures one by one. All the per picture state (deblocker input,
+     * deblocking filter, slice decoders and the output frame wrapper) is kept
+     * between the pictures and only reallocated when the picture dimensions
+     * change.
+     */
     static class FrameDecoder {
         private SeqParameterSet activeSps;
         private DeblockingFilter filter;
@@ -128,9 +122,13 @@ public class H264Decoder extends VideoDecoder {
         private NALUnit firstNu;
         private H264Decoder dec;
         private DeblockerInput di;
+        private List<SliceDecoder> sliceDecoders;
+        private Frame result;
+        private SeqParameterSet resultSps;
 
         public FrameDecoder(H264Decoder decoder) {
             this.dec = decoder;
+            this.sliceDecoders = new ArrayList<SliceDecoder>();
         }
 
         public Frame decodeFrame(List<ByteBuffer> nalUnits, byte[][] buffer) {
@@ -140,8 +138,8 @@ public class H264Decoder extends VideoDecoder {
             final Frame result = init(sliceReaders.get(0), buffer);
             if (dec.threaded && sliceReaders.size() > 1) {
                 List<Future<?>> futures = new ArrayList<Future<?>>();
-                for (SliceReader sliceReader : sliceReaders) {
-                    futures.add(dec.tp.submit(new SliceDecoderRunnable(this, sliceReader, result)));
+                for (int i = 0; i < sliceReaders.size(); i++) {
+                    futures.add(SharedThreadPool.get().submit(new SliceDecoderRunnable(sliceDecoder(i, result), sliceReaders.get(i))));
                 }
 
                 for (Future<?> future : futures) {
@@ -149,8 +147,8 @@ public class H264Decoder extends VideoDecoder {
                 }
 
             } else {
-                for (SliceReader sliceReader : sliceReaders) {
-                    new SliceDecoder(activeSps, dec.sRefs, dec.lRefs, di, result).decodeFromReader(sliceReader);
+                for (int i = 0; i < sliceReaders.size(); i++) {
+                    sliceDecoder(i, result).decodeFromReader(sliceReaders.get(i));
                 }
             }
 
@@ -161,6 +159,15 @@ public class H264Decoder extends VideoDecoder {
             return result;
         }
 
+        private SliceDecoder sliceDecoder(int index, Frame result) {
+            if (index == sliceDecoders.size()) {
+                sliceDecoders.add(new SliceDecoder(activeSps, dec.sRefs, dec.lRefs, di, result));
+            } else {
+                sliceDecoders.get(index).init(activeSps, dec.sRefs, dec.lRefs, di, result);
+            }
+            return sliceDecoders.get(index);
+        }
+
         private void waitForSure(Future<?> future) {
             while (true) {
                 try {
@@ -190,23 +197,47 @@ public class H264Decoder extends VideoDecoder {
 
             validateSupportedFeatures(firstSliceHeader.sps, firstSliceHeader.pps);
 
-            int picWidthInMbs = activeSps.picWidthInMbsMinus1 + 1;
-
+            int maxFrames = 1 << (firstSliceHeader.sps.log2MaxFrameNumMinus4 + 4);
             if (dec.sRefs == null) {
-                dec.sRefs = new Frame[1 << (firstSliceHeader.sps.log2MaxFrameNumMinus4 + 4)];
+                dec.sRefs = new Frame[maxFrames];
                 dec.lRefs = new IntObjectMap<Frame>();
+            } else if (dec.sRefs.length != maxFrames) {
+                // a new sequence, the references of the old one can't be used
+                clearAll();
+                dec.sRefs = new Frame[maxFrames];
             }
 
-            di = new DeblockerInput(activeSps);
-
-            Frame result = createFrame(activeSps, buffer, firstSliceHeader.frameNum, firstSliceHeader.sliceType,
-                    di.mvs, di.refsUsed, dec.poc.calcPOC(firstSliceHeader, firstNu));
+            boolean resized = di == null || !di.fits(activeSps);
+            if (resized) {
+                di = new DeblockerInput(activeSps);
+                filter = new DeblockingFilter(activeSps.bitDepthLumaMinus8 + 8, activeSps.bitDepthChromaMinus8 + 8, di);
+            } else {
+                di.reset();
+            }
 
-            filter = new DeblockingFilter(picWidthInMbs, activeSps.bitDepthChromaMinus8 + 8, di);
+            int poc = dec.poc.calcPOC(firstSliceHeader, firstNu);
+            if (resized || result == null || result.getData() != buffer || !sameCrop(resultSps, activeSps)) {
+                result = createFrame(activeSps, buffer, firstSliceHeader.frameNum, firstSliceHeader.sliceType, di.mvs,
+                        di.refsUsed, poc);
+                resultSps = activeSps;
+            } else {
+                result.reuse(firstSliceHeader.frameNum, firstSliceHeader.sliceType, poc);
+            }
 
             return result;
         }
 
+        private static boolean sameCrop(SeqParameterSet a, SeqParameterSet b) {
+            if (a == b)
+                return true;
+            if (a.frameCroppingFlag != b.frameCroppingFlag)
+                return false;
+            return !a.frameCroppingFlag || a.frameCropLeftOffset == b.frameCropLeftOffset
+                    && a.frameCropTopOffset == b.frameCropTopOffset
+                    && a.frameCropRightOffset == b.frameCropRightOffset
+                    && a.frameCropBottomOffset == b.frameCropBottomOffset;
+        }
+
         private void validateSupportedFeatures(SeqParameterSet sps, PictureParameterSet pps) {
             if (sps.mbAdaptiveFrameFieldFlag)
                 throw new RuntimeException("Unsupported h264 feature: MBAFF.");
@@ -228,6 +259,8 @@ public class H264Decoder extends VideoDecoder {
 
         public void performIDRMarking(RefPicMarkingIDR refPicMarkingIDR, Frame picture) {
             clearAll();
+            for (Frame frame : dec.pictureBuffer)
+                frame.release();
             dec.pictureBuffer.clear();
 
             Frame saved = saveRef(picture);
@@ -239,7 +272,18 @@ public class H264Decoder extends VideoDecoder {
         }
 
         private Frame saveRef(Frame decoded) {
-            Frame frame = dec.pictureBuffer.size() > 0 ? dec.pictureBuffer.remove(0) : Frame.createFrame(decoded);
+            Frame frame = null;
+            while (frame == null && dec.pictureBuffer.size() > 0) {
+                frame = dec.pictureBuffer.remove(0);
+                // pictures of the previous dimensions are of no use after a
+                // SPS change
+                if (!frame.compatible(decoded)) {
+                    frame.release();
+                    frame = null;
+                }
+            }
+            if (frame == null)
+                frame = Frame.createFrameWithAllocator(decoded, dec.getPlaneAllocator());
             frame.copyFromFrame(decoded);
             return frame;
         }
@@ -25,6 +25,7 @@ import org.jcodec.common.io.BitWriter;
 import org.jcodec.common.io.FileChannelWrapper;
 import org.jcodec.common.io.NIOUtils;
 import org.jcodec.common.io.SeekableByteChannel;
+import org.jcodec.common.io.StartCodeScanner;
 import org.jcodec.common.model.Size;
 import org.jcodec.containers.mp4.boxes.Box;
 import org.jcodec.containers.mp4.boxes.Box.LeafBox;
@@ -44,25 +45,15 @@ public class H264Utils {
     public static ByteBuffer nextNALUnit(ByteBuffer buf) {
         skipToNALUnit(buf);
 
-        if (buf.hasArray())
-            return gotoNALUnitWithArray(buf);
-        else
-            return gotoNALUnit(buf);
+        return gotoNALUnit(buf);
     }
 
     public static final void skipToNALUnit(ByteBuffer buf) {
         if (!buf.hasRemaining())
             return;
 
-        int val = 0xffffffff;
-        while (buf.hasRemaining()) {
-            val <<= 8;
-            val |= (buf.get() & 0xff);
-            if ((val & 0xffffff) == 1) {
-                buf.position(buf.position());
-                break;
-            }
-        }
+        int sc = StartCodeScanner.findStartCode(buf, buf.position());
+        buf.position(sc == -1 ? buf.limit() : sc + 3);
     }
 
     /**
@@ -85,16 +76,10 @@ public class H264Utils {
         ByteBuffer result = buf.slice();
         result.order(ByteOrder.BIG_ENDIAN);
 
-        int val = 0xffffffff;
-        while (buf.hasRemaining()) {
-            val <<= 8;
-            val |= (buf.get() & 0xff);
-            if ((val & 0xffffff) == 1) {
-                buf.position(buf.position() - (val == 1 ? 4 : 3));
-                result.limit(buf.position() - from);
-                break;
-            }
-        }
+        int end = nalUnitEnd(buf, from);
+        buf.position(end);
+        result.limit(end - from);
+
         return result;
     }
 
@@ -108,63 +93,45 @@ public class H264Utils {
      * @return data
      */
     public static final ByteBuffer gotoNALUnitWithArray(ByteBuffer buf) {
+        return gotoNALUnit(buf);
+    }
 
-        if (!buf.hasRemaining())
-            return null;
-
-        int from = buf.position();
-        ByteBuffer result = buf.slice();
-        result.order(ByteOrder.BIG_ENDIAN);
-
-        byte[] arr = buf.array();
-        int pos = from + buf.arrayOffset();
-        int posFrom = pos;
-        int lim = buf.limit() + buf.arrayOffset();
-
-        while (pos < lim) {
-            byte b = arr[pos];
-
-            if ((b & 254) == 0) {
-                while (b == 0 && ++pos < lim)
-                    b = arr[pos];
-
-                if (b == 1) {
-                    if (pos - posFrom >= 2 && arr[pos - 1] == 0 && arr[pos - 2] == 0) {
-                        int lenSize = (pos - posFrom >= 3 && arr[pos - 3] == 0) ? 4 : 3;
-
-                        buf.position(pos + 1 - buf.arrayOffset() - lenSize);
-                        result.limit(buf.position() - from);
-
-                        return result;
-                    }
-                }
-            }
-
-            pos += 3;
-        }
-
-        buf.position(buf.limit());
+    /**
+     * End of the NAL unit that starts at from, that is the start code that
+     * follows it including the leading zero of a 4 byte start code, or the
+     * limit of the buffer.
+     */
+    private static int nalUnitEnd(ByteBuffer buf, int from) {
+        int sc = StartCodeScanner.findStartCode(buf, from);
+        if (sc == -1)
+            return buf.limit();
+        return sc > from && buf.get(sc - 1) == 0 ? sc - 1 : sc;
+    }
 
-        return result;
+    /**
+     * Indexes the NAL units of an Annex B buffer without touching it, for each
+     * NAL unit the absolute position of its first byte and its length are
+     * added to the index. The NAL units are the ones splitFrame would return.
+     * 
+     * @return the number of NAL units found
+     */
+    public static int indexNALUnits(ByteBuffer buf, IntArrayList index) {
+        int count = 0;
+        int limit = buf.limit();
+        int sc = StartCodeScanner.findStartCode(buf, buf.position());
+        while (sc != -1 && sc + 3 < limit) {
+            int from = sc + 3;
+            int end = nalUnitEnd(buf, from);
+            index.add(from);
+            index.add(end - from);
+            ++count;
+            sc = end == limit ? -1 : StartCodeScanner.findStartCode(buf, end);
+        }
+        return count;
     }
 
     public static final void unescapeNAL(ByteBuffer _buf) {
-        if (_buf.remaining() < 2)
-            return;
-        ByteBuffer _in = _buf.duplicate();
-        ByteBuffer out = _buf.duplicate();
-        byte p1 = _in.get();
-        out.put(p1);
-        byte p2 = _in.get();
-        out.put(p2);
-        while (_in.hasRemaining()) {
-            byte b = _in.get();
-            if (p1 != 0 || p2 != 0 || b != 3)
-                out.put(b);
-            p1 = p2;
-            p2 = b;
-        }
-        _buf.limit(out.position());
+        StartCodeScanner.unescape(_buf);
     }
 
     public static final void escapeNALinplace(ByteBuffer src) {
@@ -591,12 +558,18 @@ public class H264Utils {
     }
 
     public static List<ByteBuffer> splitFrame(ByteBuffer frame) {
-        ArrayList<ByteBuffer> result = new ArrayList<ByteBuffer>();
+        IntArrayList index = IntArrayList.createIntArrayList();
+        int count = indexNALUnits(frame, index);
 
-        ByteBuffer segment;
-        while ((segment = H264Utils.nextNALUnit(frame)) != null) {
-            result.add(segment);
+        ArrayList<ByteBuffer> result = new ArrayList<ByteBuffer>(count);
+        for (int i = 0; i < count; i++) {
+            int from = index.get(2 * i);
+            ByteBuffer segment = frame.duplicate();
+            segment.position(from);
+            segment.limit(from + index.get(2 * i + 1));
+            result.add(segment.slice());
         }
+        frame.position(frame.limit());
 
         return result;
     }
@@ -1107,5 +1080,9 @@ public class H264Utils {
         public int getWidth() {
             return width;
         }
+
+        public void copyFrom(MvList2D other) {
+            System.arraycopy(other.list, 0, list, 0, list.length);
+        }
     }
 }
\ No newline at end of file
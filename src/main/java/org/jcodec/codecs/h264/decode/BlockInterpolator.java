@@ -14,6 +14,7 @@ import org.jcodec.common.model.Picture;
  * 
  */
 public class BlockInterpolator {
+    private static final H264Kernels KERNELS = H264Kernels.get();
 
     private int[] tmp1;
     private int[] tmp2;
@@ -155,6 +156,11 @@ public class BlockInterpolator {
     }
 
     static void getLuma20(byte[] pic, int picW, byte[] blk, int blkOff, int blkStride, int x, int y, int blkW, int blkH) {
+        KERNELS.lumaHalfH(pic, picW, blk, blkOff, blkStride, x, y, blkW, blkH);
+    }
+
+    static void getLuma20Scalar(byte[] pic, int picW, byte[] blk, int blkOff, int blkStride, int x, int y, int blkW,
+            int blkH) {
         int off = y * picW + x;
         for (int j = 0; j < blkH; j++) {
             int off1 = -2;
@@ -256,6 +262,11 @@ public class BlockInterpolator {
     }
 
     static void getLuma02(byte[] pic, int picW, byte[] blk, int blkOff, int blkStride, int x, int y, int blkW, int blkH) {
+        KERNELS.lumaHalfV(pic, picW, blk, blkOff, blkStride, x, y, blkW, blkH);
+    }
+
+    static void getLuma02Scalar(byte[] pic, int picW, byte[] blk, int blkOff, int blkStride, int x, int y, int blkW,
+            int blkH) {
 
         int off = (y - 2) * picW + x, picWx2 = picW + picW, picWx3 = picWx2 + picW, picWx4 = picWx3 + picW, picWx5 = picWx4
                 + picW;
@@ -866,6 +877,11 @@ public class BlockInterpolator {
      */
     private static void getChromaXX(byte[] pels, int picW, int picH, byte[] blk, int blkOff, int blkStride, int fullX,
             int fullY, int fracX, int fracY, int blkW, int blkH) {
+        KERNELS.chromaXX(pels, picW, picH, blk, blkOff, blkStride, fullX, fullY, fracX, fracY, blkW, blkH);
+    }
+
+    static void getChromaXXScalar(byte[] pels, int picW, int picH, byte[] blk, int blkOff, int blkStride, int fullX,
+            int fullY, int fracX, int fracY, int blkW, int blkH) {
         int w00 = fullY * picW + fullX;
         int w01 = w00 + (fullY < picH - 1 ? picW : 0);
         int w10 = w00 + (fullX < picW - 1 ? 1 : 0);
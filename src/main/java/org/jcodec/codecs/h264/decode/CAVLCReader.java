@@ -22,30 +22,21 @@ public class CAVLCReader {
     public static int readNBit(BitReader bits, int n, String message)  {
         int val = bits.readNBit(n);
 
-        trace(message, val);
+        if (Debug.debug)
+            trace(message, val);
 
         return val;
     }
 
     public static int readUE(BitReader bits)  {
-        int cnt = 0;
-        while (bits.read1Bit() == 0 && cnt < 32)
-            cnt++;
-
-        int res = 0;
-        if (cnt > 0) {
-            long val = bits.readNBit(cnt);
-
-            res = (int) ((1 << cnt) - 1 + val);
-        }
-
-        return res;
+        return bits.readUE();
     }
 
     public static int readUEtrace(BitReader bits, String message)  {
         int res = readUE(bits);
 
-        trace(message, res);
+        if (Debug.debug)
+            trace(message, res);
 
         return res;
     }
@@ -55,7 +46,8 @@ public class CAVLCReader {
 
         val = H264Utils2.golomb2Signed(val);
 
-        trace(message, val);
+        if (Debug.debug)
+            trace(message, val);
 
         return val;
     }
@@ -64,7 +56,8 @@ public class CAVLCReader {
 
         boolean res = bits.read1Bit() == 0 ? false : true;
 
-        trace(message, res ? 1 : 0);
+        if (Debug.debug)
+            trace(message, res ? 1 : 0);
 
         return res;
     }
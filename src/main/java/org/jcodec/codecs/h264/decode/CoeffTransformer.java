@@ -86,7 +86,7 @@ public class CoeffTransformer {
      * @return
      */
     public final static void idct4x4(int[] block) {
-        _idct4x4(block, block);
+        H264Kernels.get().idct4x4(block);
     }
 
     public static final void _idct4x4(int[] block, int[] out) {
@@ -436,39 +436,11 @@ public class CoeffTransformer {
     }
 
     public static void idct8x8(int[] ac) {
-        int off = 0;
-
-        // Horizontal
-        for (int row = 0; row < 8; row++) {
-            int e0 = ac[off] + ac[off + 4];
-            int e1 = -ac[off + 3] + ac[off + 5] - ac[off + 7] - (ac[off + 7] >> 1);
-            int e2 = ac[off] - ac[off + 4];
-            int e3 = ac[off + 1] + ac[off + 7] - ac[off + 3] - (ac[off + 3] >> 1);
-            int e4 = (ac[off + 2] >> 1) - ac[off + 6];
-            int e5 = -ac[off + 1] + ac[off + 7] + ac[off + 5] + (ac[off + 5] >> 1);
-            int e6 = ac[off + 2] + (ac[off + 6] >> 1);
-            int e7 = ac[off + 3] + ac[off + 5] + ac[off + 1] + (ac[off + 1] >> 1);
-
-            int f0 = e0 + e6;
-            int f1 = e1 + (e7 >> 2);
-            int f2 = e2 + e4;
-            int f3 = e3 + (e5 >> 2);
-            int f4 = e2 - e4;
-            int f5 = (e3 >> 2) - e5;
-            int f6 = e0 - e6;
-            int f7 = e7 - (e1 >> 2);
-
-            ac[off] = f0 + f7;
-            ac[off + 1] = f2 + f5;
-            ac[off + 2] = f4 + f3;
-            ac[off + 3] = f6 + f1;
-            ac[off + 4] = f6 - f1;
-            ac[off + 5] = f4 - f3;
-            ac[off + 6] = f2 - f5;
-            ac[off + 7] = f0 - f7;
+        H264Kernels.get().idct8x8(ac);
+    }
 
-            off += 8;
-        }
+    static void idct8x8Scalar(int[] ac) {
+        idct8x8Rows(ac);
 
         // Vertical
         for (int col = 0; col < 8; col++) {
@@ -505,4 +477,41 @@ public class CoeffTransformer {
             ac[i] = (ac[i] + 32) >> 6;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Horizontal pass of the inverse 8x8 transform.
+     */
+    static void idct8x8Rows(int[] ac) {
+        int off = 0;
+        for (int row = 0; row < 8; row++) {
+            int e0 = ac[off] + ac[off + 4];
+            int e1 = -ac[off + 3] + ac[off + 5] - ac[off + 7] - (ac[off + 7] >> 1);
+            int e2 = ac[off] - ac[off + 4];
+            int e3 = ac[off + 1] + ac[off + 7] - ac[off + 3] - (ac[off + 3] >> 1);
+            int e4 = (ac[off + 2] >> 1) - ac[off + 6];
+            int e5 = -ac[off + 1] + ac[off + 7] + ac[off + 5] + (ac[off + 5] >> 1);
+            int e6 = ac[off + 2] + (ac[off + 6] >> 1);
+            int e7 = ac[off + 3] + ac[off + 5] + ac[off + 1] + (ac[off + 1] >> 1);
+
+            int f0 = e0 + e6;
+            int f1 = e1 + (e7 >> 2);
+            int f2 = e2 + e4;
+            int f3 = e3 + (e5 >> 2);
+            int f4 = e2 - e4;
+            int f5 = (e3 >> 2) - e5;
+            int f6 = e0 - e6;
+            int f7 = e7 - (e1 >> 2);
+
+            ac[off] = f0 + f7;
+            ac[off + 1] = f2 + f5;
+            ac[off + 2] = f4 + f3;
+            ac[off + 3] = f6 + f1;
+            ac[off + 4] = f6 - f1;
+            ac[off + 5] = f4 - f3;
+            ac[off + 6] = f2 - f5;
+            ac[off + 7] = f0 - f7;
+
+            off += 8;
+        }
+    }
+}
@@ -2,6 +2,8 @@ package org.jcodec.codecs.h264.decode;
 
 import static org.jcodec.codecs.h264.io.model.SeqParameterSet.getPicHeightInMbs;
 
+import java.util.Arrays;
+
 import org.jcodec.codecs.h264.H264Utils;
 import org.jcodec.codecs.h264.io.model.Frame;
 import org.jcodec.codecs.h264.io.model.MBType;
@@ -14,6 +16,10 @@ import org.jcodec.codecs.h264.io.model.SliceHeader;
  *
  * Contains an input for deblocking filter
  * 
+ * Sized to the picture, the decoder keeps one instance for as long as the
+ * picture dimensions and bit depths don't change and resets it before every
+ * picture.
+ * 
  * @author The JCodec project
  * 
  */
@@ -25,6 +31,8 @@ public class DeblockerInput {
     public boolean[] tr8x8Used;
     public Frame[][][] refsUsed;
     public SliceHeader[] shs;
+    private int bitDepthLuma;
+    private int bitDepthChroma;
 
     public DeblockerInput(SeqParameterSet activeSps) {
         int picWidthInMbs = activeSps.picWidthInMbsMinus1 + 1;
@@ -37,5 +45,31 @@ public class DeblockerInput {
         mbQps = new int[3][picHeightInMbs * picWidthInMbs];
         shs = new SliceHeader[picHeightInMbs * picWidthInMbs];
         refsUsed = new Frame[picHeightInMbs * picWidthInMbs][][];
+        bitDepthLuma = activeSps.bitDepthLumaMinus8 + 8;
+        bitDepthChroma = activeSps.bitDepthChromaMinus8 + 8;
+    }
+
+    /**
+     * Checks if this input can hold the pictures described by the SPS, the
+     * filter built for it is only valid for the same bit depths.
+     */
+    public boolean fits(SeqParameterSet sps) {
+        return mvs.getWidth() == (sps.picWidthInMbsMinus1 + 1) << 2 && mvs.getHeight() == getPicHeightInMbs(sps) << 2
+                && bitDepthLuma == sps.bitDepthLumaMinus8 + 8 && bitDepthChroma == sps.bitDepthChromaMinus8 + 8;
+    }
+
+    /**
+     * Brings the input to the state of a newly created one.
+     */
+    public void reset() {
+        for (int i = 0; i < nCoeff.length; i++)
+            Arrays.fill(nCoeff[i], 0);
+        for (int i = 0; i < mbQps.length; i++)
+            Arrays.fill(mbQps[i], 0);
+        mvs.clear();
+        Arrays.fill(mbTypes, null);
+        Arrays.fill(shs, null);
+        Arrays.fill(refsUsed, null);
+        Arrays.fill(tr8x8Used, false);
     }
 }
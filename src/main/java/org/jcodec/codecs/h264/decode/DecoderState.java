@@ -1,5 +1,7 @@
 package org.jcodec.codecs.h264.decode;
 
+import java.util.Arrays;
+
 import org.jcodec.codecs.h264.H264Utils;
 import org.jcodec.codecs.h264.io.model.SliceHeader;
 import org.jcodec.common.model.ColorSpace;
@@ -27,19 +29,40 @@ public class DecoderState {
     H264Utils.MvList mvTopLeft;
 
     public DecoderState(SliceHeader sh) {
+        chromaQpOffset = new int[2];
+        init(sh);
+    }
+
+    /**
+     * Prepares the state for the next slice, the storage is only reallocated
+     * when the picture width has changed.
+     */
+    public void init(SliceHeader sh) {
         int mbWidth = sh.sps.picWidthInMbsMinus1 + 1;
-        chromaQpOffset = new int[] { sh.pps.chromaQpIndexOffset,
-                sh.pps.extended != null ? sh.pps.extended.secondChromaQpIndexOffset : sh.pps.chromaQpIndexOffset };
+        chromaQpOffset[0] = sh.pps.chromaQpIndexOffset;
+        chromaQpOffset[1] = sh.pps.extended != null ? sh.pps.extended.secondChromaQpIndexOffset
+                : sh.pps.chromaQpIndexOffset;
 
         chromaFormat = sh.sps.chromaFormatIdc;
 
-        mvTop = new H264Utils.MvList((mbWidth << 2) + 1);
-        mvLeft = new H264Utils.MvList(4);
-        mvTopLeft = new H264Utils.MvList(1);
+        if (topLine == null || topLine[0].length != mbWidth << 4) {
+            mvTop = new H264Utils.MvList((mbWidth << 2) + 1);
+            mvLeft = new H264Utils.MvList(4);
+            mvTopLeft = new H264Utils.MvList(1);
 
-        leftRow = new byte[3][16];
-        topLeft = new byte[3][4];
-        topLine = new byte[3][mbWidth << 4];
+            leftRow = new byte[3][16];
+            topLeft = new byte[3][4];
+            topLine = new byte[3][mbWidth << 4];
+        } else {
+            mvTop.clear();
+            mvLeft.clear();
+            mvTopLeft.clear();
+            for (int i = 0; i < 3; i++) {
+                Arrays.fill(leftRow[i], (byte) 0);
+                Arrays.fill(topLeft[i], (byte) 0);
+                Arrays.fill(topLine[i], (byte) 0);
+            }
+        }
 
         qp = sh.pps.picInitQpMinus26 + 26 + sh.sliceQpDelta;
     }
@@ -38,13 +38,28 @@ public class FrameReader {
     private IntObjectMap<SeqParameterSet> sps;
     private IntObjectMap<PictureParameterSet> pps;
 
+    // Slice readers and CABAC context models reused from picture to picture,
+    // one per slice index
+    private List<SliceReader> readers;
+    private List<byte[]> models;
+    private List<SliceReader> result;
+    private MapManager mapManager;
+
     public FrameReader() {
         this.sps = new IntObjectMap<SeqParameterSet>();
         this.pps = new IntObjectMap<PictureParameterSet>();
+        this.readers = new ArrayList<SliceReader>();
+        this.models = new ArrayList<byte[]>();
+        this.result = new ArrayList<SliceReader>();
     }
 
+    /**
+     * Reads the slices of one picture. The returned list and the slice readers
+     * in it are owned by this frame reader and are only valid until the next
+     * call.
+     */
     public List<SliceReader> readFrame(List<ByteBuffer> nalUnits) {
-        List<SliceReader> result = new ArrayList<SliceReader>();
+        result.clear();
 
         for (ByteBuffer nalData : nalUnits) {
             NALUnit nalUnit = NALUnit.read(nalData);
@@ -61,38 +76,53 @@ public class FrameReader {
                     Logger.warn("Skipping frame as no SPS/PPS have been seen so far...");
                     return null;
                 }
-                result.add(createSliceReader(nalData, nalUnit));
+                result.add(createSliceReader(nalData, nalUnit, result.size()));
             }
         }
 
         return result;
     }
 
-    private SliceReader createSliceReader(ByteBuffer segment, NALUnit nalUnit) {
+    private SliceReader createSliceReader(ByteBuffer segment, NALUnit nalUnit, int index) {
         BitReader _in = BitReader.createBitReader(segment);
         SliceHeader sh = SliceHeaderReader.readPart1(_in);
         sh.pps = pps.get(sh.picParameterSetId);
         sh.sps = sps.get(sh.pps.seqParameterSetId);
         SliceHeaderReader.readPart2(sh, nalUnit, sh.sps, sh.pps, _in);
 
-        Mapper mapper = new MapManager(sh.sps, sh.pps).getMapper(sh);
-
-        CAVLC[] cavlc = new CAVLC[] { new CAVLC(sh.sps, sh.pps, 2, 2), new CAVLC(sh.sps, sh.pps, 1, 1),
-                new CAVLC(sh.sps, sh.pps, 1, 1) };
+        if (mapManager == null || mapManager.getSps() != sh.sps || mapManager.getPps() != sh.pps)
+            mapManager = new MapManager(sh.sps, sh.pps);
+        Mapper mapper = mapManager.getMapper(sh);
 
-        int mbWidth = sh.sps.picWidthInMbsMinus1 + 1;
-        CABAC cabac = new CABAC(mbWidth);
+        if (models.size() == index)
+            models.add(new byte[1024]);
+        SliceReader pooled = index < readers.size() ? readers.get(index) : null;
+        if (pooled != null && !pooled.fits(sh.sps))
+            pooled = null;
+        CABAC cabac = pooled != null ? pooled.getCABAC() : new CABAC(sh.sps.picWidthInMbsMinus1 + 1);
 
         MDecoder mDecoder = null;
         if (sh.pps.entropyCodingModeFlag) {
             _in.terminate();
-            int[][] cm = new int[2][1024];
+            byte[] states = models.get(index);
             int qp = sh.pps.picInitQpMinus26 + 26 + sh.sliceQpDelta;
-            cabac.initModels(cm, sh.sliceType, sh.cabacInitIdc, qp);
-            mDecoder = new MDecoder(segment, cm);
+            cabac.initModels(states, sh.sliceType, sh.cabacInitIdc, qp);
+            mDecoder = MDecoder.createMDecoder(segment, states);
         }
 
-        return new SliceReader(sh.pps, cabac, cavlc, mDecoder, _in, mapper, sh, nalUnit);
+        if (pooled != null) {
+            pooled.reset(sh.pps, mDecoder, _in, mapper, sh, nalUnit);
+            return pooled;
+        }
+
+        CAVLC[] cavlc = new CAVLC[] { new CAVLC(sh.sps, sh.pps, 2, 2), new CAVLC(sh.sps, sh.pps, 1, 1),
+                new CAVLC(sh.sps, sh.pps, 1, 1) };
+        SliceReader reader = new SliceReader(sh.pps, cabac, cavlc, mDecoder, _in, mapper, sh, nalUnit);
+        if (index < readers.size())
+            readers.set(index, reader);
+        else
+            readers.add(reader);
+        return reader;
     }
     
     public void addSpsList(List<ByteBuffer> spsList) {
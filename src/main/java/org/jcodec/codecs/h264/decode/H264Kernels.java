@@ -0,0 +1,124 @@
+package org.jcodec.codecs.h264.decode;
+
+import org.jcodec.common.logging.Logger;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * The innermost pixel loops of the decoder: half-pel luma filters, bilinear
+ * chroma, inverse transforms and bi-prediction averaging.
+ *
+ * This class is the portable scalar implementation. The multi-release jar also
+ * carries a vectorized one built on jdk.incubator.vector for Java 17 and up, it
+ * is picked at runtime when the JVM was started with
+ * '--add-modules jdk.incubator.vector' and the CPU has at least 256 bit vectors.
+ * Set the 'jcodec.simd' system property to false to stay on the scalar code.
+ * Both implementations produce bit exact output.
+ *
+ * The deblocking filter and the 4x4 inverse transform have no vectorized
+ * version, the 4 pixel edge segments and the 4x4 blocks are too narrow for
+ * the 256 bit vectors to pay off.
+ *
+ * @author The JCodec project
+ *
+ */
+public class H264Kernels {
+    private static final String JCODEC_SIMD = "jcodec.simd";
+    private static final String VECTOR_KERNELS = "org.jcodec.codecs.h264.decode.VectorKernels";
+
+    private static final H264Kernels SCALAR = new H264Kernels();
+    private static final H264Kernels VECTOR = loadVector();
+    private static final H264Kernels INSTANCE = VECTOR != null
+            && !"false".equalsIgnoreCase(System.getProperty(JCODEC_SIMD)) ? VECTOR : SCALAR;
+
+    protected H264Kernels() {
+    }
+
+    /**
+     * @return the kernels the decoder uses
+     */
+    public static H264Kernels get() {
+        return INSTANCE;
+    }
+
+    public static H264Kernels scalar() {
+        return SCALAR;
+    }
+
+    /**
+     * @return the vectorized kernels or null if this JVM can't run them
+     */
+    public static H264Kernels vector() {
+        return VECTOR;
+    }
+
+    private static H264Kernels loadVector() {
+        try {
+            Class<?> cls = Class.forName(VECTOR_KERNELS);
+            H264Kernels kernels = (H264Kernels) cls.getDeclaredConstructor().newInstance();
+            return kernels.isSupported() ? kernels : null;
+        } catch (ClassNotFoundException e) {
+            // not a Java 17 layer of the jar
+            return null;
+        } catch (Throwable t) {
+            // jdk.incubator.vector is not in the module graph
+            Logger.debug("Vectorized H.264 kernels are not available: " + t);
+            return null;
+        }
+    }
+
+    protected boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * Halfpel (2, 0) horizontal 6-tap luma filter, the block and the filter
+     * taps are inside of the picture.
+     */
+    public void lumaHalfH(byte[] pic, int picW, byte[] blk, int blkOff, int blkStride, int x, int y, int blkW,
+            int blkH) {
+        BlockInterpolator.getLuma20Scalar(pic, picW, blk, blkOff, blkStride, x, y, blkW, blkH);
+    }
+
+    /**
+     * Halfpel (0, 2) vertical 6-tap luma filter, the block and the filter taps
+     * are inside of the picture.
+     */
+    public void lumaHalfV(byte[] pic, int picW, byte[] blk, int blkOff, int blkStride, int x, int y, int blkW,
+            int blkH) {
+        BlockInterpolator.getLuma02Scalar(pic, picW, blk, blkOff, blkStride, x, y, blkW, blkH);
+    }
+
+    /**
+     * Chroma (X, X) bilinear interpolation, the block is inside of the picture.
+     */
+    public void chromaXX(byte[] pels, int picW, int picH, byte[] blk, int blkOff, int blkStride, int fullX,
+            int fullY, int fracX, int fracY, int blkW, int blkH) {
+        BlockInterpolator.getChromaXXScalar(pels, picW, picH, blk, blkOff, blkStride, fullX, fullY, fracX, fracY,
+                blkW, blkH);
+    }
+
+    public void idct4x4(int[] block) {
+        CoeffTransformer._idct4x4(block, block);
+    }
+
+    public void idct8x8(int[] block) {
+        CoeffTransformer.idct8x8Scalar(block);
+    }
+
+    /**
+     * Rounded average of two predictions.
+     */
+    public void average(byte[] blk0, byte[] blk1, int stride, int off, int blkW, int blkH, byte[] out) {
+        PredictionMerger.averageScalar(blk0, blk1, stride, off, blkW, blkH, out);
+    }
+
+    /**
+     * Weighted bi-prediction.
+     */
+    public void weightBi(byte[] blk0, byte[] blk1, int stride, int off, int blkW, int blkH, int logWD, int w0,
+            int w1, int o0, int o1, byte[] out) {
+        PredictionMerger.weightBiScalar(blk0, blk1, stride, off, blkW, blkH, logWD, w0, w1, o0, o1, out);
+    }
+}
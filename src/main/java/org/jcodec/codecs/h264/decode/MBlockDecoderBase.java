@@ -14,6 +14,7 @@ import java.util.Arrays;
 import org.jcodec.codecs.h264.H264Const;
 import org.jcodec.codecs.h264.H264Const.PartPred;
 import org.jcodec.codecs.h264.H264Utils.MvList;
+import org.jcodec.codecs.h264.decode.aso.Mapper;
 import org.jcodec.codecs.h264.io.model.Frame;
 import org.jcodec.codecs.h264.io.model.MBType;
 import org.jcodec.codecs.h264.io.model.SliceHeader;
@@ -37,6 +38,7 @@ public class MBlockDecoderBase {
     protected BlockInterpolator interpolator;
     protected Picture[] mbb;
     protected int[][] scalingMatrix;
+    protected Mapper mapper;
 
     public MBlockDecoderBase(SliceHeader sh, DeblockerInput di, int poc, DecoderState decoderState) {
         this.interpolator = new BlockInterpolator();
@@ -48,6 +50,18 @@ public class MBlockDecoderBase {
         scalingMatrix = initScalingMatrix(sh);
     }
 
+    /**
+     * Points this decoder to the next slice so it can be reused instead of
+     * creating a new one with all its buffers.
+     */
+    public void initSlice(Mapper mapper, SliceHeader sh, DeblockerInput di, int poc) {
+        this.mapper = mapper;
+        this.sh = sh;
+        this.di = di;
+        this.poc = poc;
+        scalingMatrix = initScalingMatrix(sh);
+    }
+
     void residualLuma(MBlock mBlock, boolean leftAvailable, boolean topAvailable, int mbX, int mbY) {
         if (!mBlock.transform8x8Used) {
             residualLuma4x4(mBlock);
@@ -20,6 +20,10 @@ public class MBlockDecoderIPCM {
         this.s = decoderState;
     }
 
+    public void initSlice(Mapper mapper) {
+        this.mapper = mapper;
+    }
+
     public void decode(MBlock mBlock, Picture mb) {
         int mbX = mapper.getMbX(mBlock.mbIdx);
         collectPredictors(s, mb, mbX);
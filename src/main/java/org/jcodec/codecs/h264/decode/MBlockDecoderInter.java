@@ -10,6 +10,7 @@ import static org.jcodec.codecs.h264.H264Utils.Mv.packMv;
 import static org.jcodec.codecs.h264.decode.MBlockDecoderUtils.NULL_VECTOR;
 import static org.jcodec.codecs.h264.decode.MBlockDecoderUtils.calcMVPredictionMedian;
 import static org.jcodec.codecs.h264.decode.MBlockDecoderUtils.collectPredictors;
+import static org.jcodec.codecs.h264.decode.MBlockDecoderUtils.debug;
 import static org.jcodec.codecs.h264.decode.MBlockDecoderUtils.debugPrint;
 import static org.jcodec.codecs.h264.decode.MBlockDecoderUtils.mergeResidual;
 import static org.jcodec.codecs.h264.decode.MBlockDecoderUtils.saveMvs;
@@ -31,7 +32,6 @@ import org.jcodec.common.model.Picture;
  * @author The JCodec project
  */
 public class MBlockDecoderInter extends MBlockDecoderBase {
-    private Mapper mapper;
 
     public MBlockDecoderInter(Mapper mapper, SliceHeader sh, DeblockerInput di, int poc, DecoderState decoderState) {
         super(sh, di, poc, decoderState);
@@ -91,8 +91,9 @@ public class MBlockDecoderInter extends MBlockDecoderBase {
             mvX1 = mBlock.pb168x168.mvdX1[list] + mvpX1;
             mvY1 = mBlock.pb168x168.mvdY1[list] + mvpY1;
 
-            debugPrint("MVP: (%d, %d), MVD: (%d, %d), MV: (%d,%d,%d)", mvpX1, mvpY1, mBlock.pb168x168.mvdX1[list],
-                    mBlock.pb168x168.mvdY1[list], mvX1, mvY1, mBlock.pb168x168.refIdx1[list]);
+            if (debug)
+                debugPrint("MVP: (%d, %d), MVD: (%d, %d), MV: (%d,%d,%d)", mvpX1, mvpY1, mBlock.pb168x168.mvdX1[list],
+                        mBlock.pb168x168.mvdY1[list], mvX1, mvY1, mBlock.pb168x168.refIdx1[list]);
 
             interpolator.getBlockLuma(references[list][mBlock.pb168x168.refIdx1[list]], mb, 0, (mbX << 6) + mvX1,
                     (mbY << 6) + mvY1, 8, 16);
@@ -113,9 +114,10 @@ public class MBlockDecoderInter extends MBlockDecoderBase {
             mvX2 = mBlock.pb168x168.mvdX2[list] + mvpX2;
             mvY2 = mBlock.pb168x168.mvdY2[list] + mvpY2;
 
-            debugPrint("MVP: (" + mvpX2 + ", " + mvpY2 + "), MVD: (" + mBlock.pb168x168.mvdX2[list] + ", "
-                    + mBlock.pb168x168.mvdY2[list] + "), MV: (" + mvX2 + "," + mvY2 + ","
-                    + mBlock.pb168x168.refIdx2[list] + ")");
+            if (debug)
+                debugPrint("MVP: (" + mvpX2 + ", " + mvpY2 + "), MVD: (" + mBlock.pb168x168.mvdX2[list] + ", "
+                        + mBlock.pb168x168.mvdY2[list] + "), MV: (" + mvX2 + "," + mvY2 + ","
+                        + mBlock.pb168x168.refIdx2[list] + ")");
 
             interpolator.getBlockLuma(references[list][mBlock.pb168x168.refIdx2[list]], mb, 8, (mbX << 6) + 32
                     + mvX2, (mbY << 6) + mvY2, 8, 16);
@@ -153,8 +155,9 @@ public class MBlockDecoderInter extends MBlockDecoderBase {
             mvX1 = mBlock.pb168x168.mvdX1[list] + mvpX1;
             mvY1 = mBlock.pb168x168.mvdY1[list] + mvpY1;
 
-            debugPrint("MVP: (%d, %d), MVD: (%d, %d), MV: (%d,%d,%d)", mvpX1, mvpY1, mBlock.pb168x168.mvdX1[list],
-                    mBlock.pb168x168.mvdY1[list], mvX1, mvY1, mBlock.pb168x168.refIdx1[list]);
+            if (debug)
+                debugPrint("MVP: (%d, %d), MVD: (%d, %d), MV: (%d,%d,%d)", mvpX1, mvpY1, mBlock.pb168x168.mvdX1[list],
+                        mBlock.pb168x168.mvdY1[list], mvX1, mvY1, mBlock.pb168x168.refIdx1[list]);
 
             interpolator.getBlockLuma(references[list][mBlock.pb168x168.refIdx1[list]], mb, 0, (mbX << 6) + mvX1,
                     (mbY << 6) + mvY1, 16, 8);
@@ -171,8 +174,9 @@ public class MBlockDecoderInter extends MBlockDecoderBase {
             mvX2 = mBlock.pb168x168.mvdX2[list] + mvpX2;
             mvY2 = mBlock.pb168x168.mvdY2[list] + mvpY2;
 
-            debugPrint("MVP: (%d, %d), MVD: (%d, %d), MV: (%d,%d,%d)", mvpX2, mvpY2, mBlock.pb168x168.mvdX2[list],
-                    mBlock.pb168x168.mvdY2[list], mvX2, mvY2, mBlock.pb168x168.refIdx2[list]);
+            if (debug)
+                debugPrint("MVP: (%d, %d), MVD: (%d, %d), MV: (%d,%d,%d)", mvpX2, mvpY2, mBlock.pb168x168.mvdX2[list],
+                        mBlock.pb168x168.mvdY2[list], mvX2, mvY2, mBlock.pb168x168.refIdx2[list]);
 
             interpolator.getBlockLuma(references[list][mBlock.pb168x168.refIdx2[list]], mb, 128,
                     (mbX << 6) + mvX2, (mbY << 6) + 32 + mvY2, 16, 8);
@@ -284,8 +288,9 @@ public class MBlockDecoderInter extends MBlockDecoderBase {
             mvX = mBlock.pb16x16.mvdX[list] + mvpX;
             mvY = mBlock.pb16x16.mvdY[list] + mvpY;
 
-            debugPrint("MVP: (%d, %d), MVD: (%d, %d), MV: (%d,%d,%d)", mvpX, mvpY, mBlock.pb16x16.mvdX[list],
-                    mBlock.pb16x16.mvdY[list], mvX, mvY, mBlock.pb16x16.refIdx[list]);
+            if (debug)
+                debugPrint("MVP: (%d, %d), MVD: (%d, %d), MV: (%d,%d,%d)", mvpX, mvpY, mBlock.pb16x16.mvdX[list],
+                        mBlock.pb16x16.mvdY[list], mvX, mvY, mBlock.pb16x16.refIdx[list]);
             r = mBlock.pb16x16.refIdx[list];
 
             interpolator.getBlockLuma(references[list][r], mb, 0, (mbX << 6) + mvX, (mbY << 6) + mvY, 16, 16);
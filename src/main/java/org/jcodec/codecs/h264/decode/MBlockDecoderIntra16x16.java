@@ -16,7 +16,6 @@ import org.jcodec.common.model.Picture;
  */
 public class MBlockDecoderIntra16x16 extends MBlockDecoderBase {
 
-    private Mapper mapper;
 
     public MBlockDecoderIntra16x16(Mapper mapper, SliceHeader sh, DeblockerInput di, int poc,
             DecoderState decoderState) {
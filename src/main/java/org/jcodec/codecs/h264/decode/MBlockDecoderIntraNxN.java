@@ -11,7 +11,6 @@ import org.jcodec.common.model.Picture;
  * @author The JCodec project
  */
 public class MBlockDecoderIntraNxN extends MBlockDecoderBase {
-    private Mapper mapper;
     private Intra8x8PredictionBuilder prediction8x8Builder;
 
     public MBlockDecoderIntraNxN(Mapper mapper, SliceHeader sh, DeblockerInput di, int poc,
@@ -26,7 +26,6 @@ import org.jcodec.common.model.Picture;
  * @author The JCodec project
  */
 public class MBlockSkipDecoder extends MBlockDecoderBase {
-    private Mapper mapper;
     private MBlockDecoderBDirect bDirectDecoder;
 
     public MBlockSkipDecoder(Mapper mapper, MBlockDecoderBDirect bDirectDecoder,
@@ -23,6 +23,7 @@ import org.jcodec.common.tools.MathUtil;
  * 
  */
 public class PredictionMerger {
+    private static final H264Kernels KERNELS = H264Kernels.get();
 
     public static void mergePrediction(SliceHeader sh, int refIdxL0, int refIdxL1, PartPred predType, int comp,
             byte[] pred0, byte[] pred1, int off, int stride, int blkW, int blkH, byte[] out, Frame[][] refs, int thisPoc) {
@@ -82,7 +83,7 @@ public class PredictionMerger {
     private static void mergeAvg(byte[] blk0, byte[] blk1, int stride, PartPred p0, int off, int blkW, int blkH,
             byte[] out) {
         if (p0 == Bi)
-            _mergePrediction(blk0, blk1, stride, p0, off, blkW, blkH, out);
+            KERNELS.average(blk0, blk1, stride, off, blkW, blkH, out);
         else if (p0 == L0)
             copyPrediction(blk0, stride, off, blkW, blkH, out);
         else if (p0 == L1)
@@ -97,7 +98,7 @@ public class PredictionMerger {
         } else if (partPred == L1) {
             weight(blk1, stride, off, blkW, blkH, logWD, w1, o1, out);
         } else if (partPred == Bi) {
-            _weightPrediction(blk0, blk1, stride, off, blkW, blkH, logWD, w0, w1, o0, o1, out);
+            KERNELS.weightBi(blk0, blk1, stride, off, blkW, blkH, logWD, w0, w1, o0, o1, out);
         }
     }
 
@@ -108,16 +109,15 @@ public class PredictionMerger {
                 out[off] = _in[off];
     }
 
-    private static void _mergePrediction(byte[] blk0, byte[] blk1, int stride, PartPred p0, int off, int blkW, int blkH,
-            byte[] out) {
+    static void averageScalar(byte[] blk0, byte[] blk1, int stride, int off, int blkW, int blkH, byte[] out) {
 
         for (int i = 0; i < blkH; i++, off += stride - blkW)
             for (int j = 0; j < blkW; j++, off++)
                 out[off] = (byte) ((blk0[off] + blk1[off] + 1) >> 1);
     }
 
-    private static void _weightPrediction(byte[] blk0, byte[] blk1, int stride, int off, int blkW, int blkH, int logWD,
-            int w0, int w1, int o0, int o1, byte[] out) {
+    static void weightBiScalar(byte[] blk0, byte[] blk1, int stride, int off, int blkW, int blkH, int logWD, int w0,
+            int w1, int o0, int o1, byte[] out) {
         // Necessary to correctly scale in [-128, 127] range
         int round = (1 << logWD) + ((w0 + w1) << 7);
         int sum = ((o0 + o1 + 1) >> 1) - 128;
@@ -11,7 +11,6 @@ import static org.jcodec.codecs.h264.io.model.MBType.P_8x8ref0;
 import static org.jcodec.codecs.h264.io.model.SliceType.P;
 
 import org.jcodec.codecs.h264.H264Const;
-import org.jcodec.codecs.h264.decode.aso.MapManager;
 import org.jcodec.codecs.h264.decode.aso.Mapper;
 import org.jcodec.codecs.h264.io.model.Frame;
 import org.jcodec.codecs.h264.io.model.MBType;
@@ -50,9 +49,20 @@ public class SliceDecoder {
     private DeblockerInput di;
     private IntObjectMap<Frame> lRefs;
     private Frame[] sRefs;
+    private Picture mb;
+    private MBlock mBlock;
 
     public SliceDecoder(SeqParameterSet activeSps, Frame[] sRefs,
             IntObjectMap<Frame> lRefs, DeblockerInput di, Frame result) {
+        init(activeSps, sRefs, lRefs, di, result);
+    }
+
+    /**
+     * Points this slice decoder to the next picture. The macroblock decoders
+     * and their buffers are kept as long as the chroma format stays the same.
+     */
+    public void init(SeqParameterSet activeSps, Frame[] sRefs, IntObjectMap<Frame> lRefs, DeblockerInput di,
+            Frame result) {
         this.di = di;
         this.activeSps = activeSps;
         this.frameOut = result;
@@ -77,25 +87,43 @@ public class SliceDecoder {
         
         SliceHeader sh = parser.getSliceHeader();
         
-        decoderState = new DecoderState(sh);
-        mapper = new MapManager(sh.sps, sh.pps).getMapper(sh);
-
-        decoderIntra16x16 = new MBlockDecoderIntra16x16(mapper, sh, di, frameOut.getPOC(), decoderState);
-        decoderIntraNxN = new MBlockDecoderIntraNxN(mapper, sh, di, frameOut.getPOC(), decoderState);
-        decoderInter = new MBlockDecoderInter(mapper, sh, di, frameOut.getPOC(), decoderState);
-        decoderBDirect = new MBlockDecoderBDirect(mapper, sh, di, frameOut.getPOC(), decoderState);
-        decoderInter8x8 = new MBlockDecoderInter8x8(mapper, decoderBDirect, sh, di, frameOut.getPOC(), decoderState);
-        skipDecoder = new MBlockSkipDecoder(mapper, decoderBDirect, sh, di, frameOut.getPOC(), decoderState);
-        decoderIPCM = new MBlockDecoderIPCM(mapper, decoderState);
+        mapper = parser.getMapper();
+        int poc = frameOut.getPOC();
+
+        if (decoderState != null && decoderState.chromaFormat == sh.sps.chromaFormatIdc) {
+            decoderState.init(sh);
+            decoderIntra16x16.initSlice(mapper, sh, di, poc);
+            decoderIntraNxN.initSlice(mapper, sh, di, poc);
+            decoderInter.initSlice(mapper, sh, di, poc);
+            decoderBDirect.initSlice(mapper, sh, di, poc);
+            decoderInter8x8.initSlice(mapper, sh, di, poc);
+            skipDecoder.initSlice(mapper, sh, di, poc);
+            decoderIPCM.initSlice(mapper);
+            mb.fill(0);
+            mBlock.clear();
+        } else {
+            decoderState = new DecoderState(sh);
+            mb = Picture.create(16, 16, sh.sps.chromaFormatIdc);
+            mBlock = new MBlock(sh.sps.chromaFormatIdc);
+            createDecoders(sh, poc);
+        }
 
         refListManager = new RefListManager(sh, sRefs, lRefs, frameOut);
     }
 
+    private void createDecoders(SliceHeader sh, int poc) {
+        decoderIntra16x16 = new MBlockDecoderIntra16x16(mapper, sh, di, poc, decoderState);
+        decoderIntraNxN = new MBlockDecoderIntraNxN(mapper, sh, di, poc, decoderState);
+        decoderInter = new MBlockDecoderInter(mapper, sh, di, poc, decoderState);
+        decoderBDirect = new MBlockDecoderBDirect(mapper, sh, di, poc, decoderState);
+        decoderInter8x8 = new MBlockDecoderInter8x8(mapper, decoderBDirect, sh, di, poc, decoderState);
+        skipDecoder = new MBlockSkipDecoder(mapper, decoderBDirect, sh, di, poc, decoderState);
+        decoderIPCM = new MBlockDecoderIPCM(mapper, decoderState);
+    }
+
     private void decodeMacroblocks(Frame[][] refList) {
-        Picture mb = Picture.create(16, 16, activeSps.chromaFormatIdc);
         int mbWidth = activeSps.picWidthInMbsMinus1 + 1;
 
-        MBlock mBlock = new MBlock(activeSps.chromaFormatIdc);
         while (parser.readMacroblock(mBlock)) {
             decode(mBlock, parser.getSliceHeader().sliceType, mb, refList);
             int mbAddr = mapper.getAddress(mBlock.mbIdx);
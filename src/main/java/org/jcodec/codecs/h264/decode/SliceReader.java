@@ -13,12 +13,15 @@ import static org.jcodec.codecs.h264.decode.CAVLCReader.readNBit;
 import static org.jcodec.codecs.h264.decode.CAVLCReader.readSE;
 import static org.jcodec.codecs.h264.decode.CAVLCReader.readTE;
 import static org.jcodec.codecs.h264.decode.CAVLCReader.readUEtrace;
+import static org.jcodec.codecs.h264.decode.MBlockDecoderUtils.debug;
 import static org.jcodec.codecs.h264.decode.MBlockDecoderUtils.debugPrint;
 import static org.jcodec.codecs.h264.io.model.MBType.B_8x8;
 import static org.jcodec.codecs.h264.io.model.MBType.I_16x16;
 import static org.jcodec.codecs.h264.io.model.MBType.P_8x8;
 import static org.jcodec.common.model.ColorSpace.MONO;
 
+import java.util.Arrays;
+
 import org.jcodec.codecs.common.biari.MDecoder;
 import org.jcodec.codecs.h264.H264Const;
 import org.jcodec.codecs.h264.H264Const.PartPred;
@@ -29,6 +32,7 @@ import org.jcodec.codecs.h264.io.CAVLC;
 import org.jcodec.codecs.h264.io.model.MBType;
 import org.jcodec.codecs.h264.io.model.NALUnit;
 import org.jcodec.codecs.h264.io.model.PictureParameterSet;
+import org.jcodec.codecs.h264.io.model.SeqParameterSet;
 import org.jcodec.codecs.h264.io.model.SliceHeader;
 import org.jcodec.codecs.h264.io.model.SliceType;
 import org.jcodec.common.io.BitReader;
@@ -76,25 +80,14 @@ public class SliceReader {
 
     public SliceReader(PictureParameterSet activePps, CABAC cabac, CAVLC[] cavlc, MDecoder mDecoder, BitReader reader,
             Mapper mapper, SliceHeader sh, NALUnit nalUnit) {
-        this.activePps = activePps;
         this.cabac = cabac;
-        this.mDecoder = mDecoder;
         this.cavlc = cavlc;
-        this.reader = reader;
-        this.mapper = mapper;
-        this.sh = sh;
-        this.nalUnit = nalUnit;
 
         int mbWidth = sh.sps.picWidthInMbsMinus1 + 1;
         topMBType = new MBType[mbWidth];
         topCBPLuma = new int[mbWidth];
         topCBPChroma = new int[mbWidth];
-        chromaFormat = sh.sps.chromaFormatIdc;
-        transform8x8 = sh.pps.extended == null ? false : sh.pps.extended.transform8x8ModeFlag;
-        if (sh.numRefIdxActiveOverrideFlag)
-            numRef = new int[] { sh.numRefIdxActiveMinus1[0] + 1, sh.numRefIdxActiveMinus1[1] + 1 };
-        else
-            numRef = new int[] { sh.pps.numRefIdxActiveMinus1[0] + 1, sh.pps.numRefIdxActiveMinus1[1] + 1 };
+        numRef = new int[2];
 
         tf8x8Top = new boolean[mbWidth];
         predModeLeft = new PartPred[2];
@@ -102,6 +95,68 @@ public class SliceReader {
 
         i4x4PredLeft = new int[4];
         i4x4PredTop = new int[mbWidth << 2];
+
+        init(activePps, mDecoder, reader, mapper, sh, nalUnit);
+    }
+
+    /**
+     * Tells if this reader together with its CABAC/CAVLC contexts can be reused
+     * for a slice of the given sequence.
+     */
+    public boolean fits(SeqParameterSet sps) {
+        return topMBType.length == sps.picWidthInMbsMinus1 + 1 && chromaFormat == sps.chromaFormatIdc;
+    }
+
+    /**
+     * Prepares this reader for the next slice, resetting all the neighbour
+     * state along with the entropy decoder contexts.
+     */
+    public void reset(PictureParameterSet activePps, MDecoder mDecoder, BitReader reader, Mapper mapper,
+            SliceHeader sh, NALUnit nalUnit) {
+        cabac.reset();
+        for (int i = 0; i < cavlc.length; i++)
+            cavlc[i].reset();
+
+        prevMbSkipped = false;
+        mbIdx = 0;
+        prevMBType = null;
+        mbSkipRun = 0;
+        endOfData = false;
+
+        leftMBType = null;
+        leftCBPLuma = 0;
+        leftCBPChroma = 0;
+        tf8x8Left = false;
+        Arrays.fill(topMBType, null);
+        Arrays.fill(topCBPLuma, 0);
+        Arrays.fill(topCBPChroma, 0);
+        Arrays.fill(tf8x8Top, false);
+        Arrays.fill(predModeLeft, null);
+        Arrays.fill(predModeTop, null);
+        Arrays.fill(i4x4PredLeft, 0);
+        Arrays.fill(i4x4PredTop, 0);
+
+        init(activePps, mDecoder, reader, mapper, sh, nalUnit);
+    }
+
+    private void init(PictureParameterSet activePps, MDecoder mDecoder, BitReader reader, Mapper mapper,
+            SliceHeader sh, NALUnit nalUnit) {
+        this.activePps = activePps;
+        this.mDecoder = mDecoder;
+        this.reader = reader;
+        this.mapper = mapper;
+        this.sh = sh;
+        this.nalUnit = nalUnit;
+
+        chromaFormat = sh.sps.chromaFormatIdc;
+        transform8x8 = sh.pps.extended == null ? false : sh.pps.extended.transform8x8ModeFlag;
+        if (sh.numRefIdxActiveOverrideFlag) {
+            numRef[0] = sh.numRefIdxActiveMinus1[0] + 1;
+            numRef[1] = sh.numRefIdxActiveMinus1[1] + 1;
+        } else {
+            numRef[0] = sh.pps.numRefIdxActiveMinus1[0] + 1;
+            numRef[1] = sh.pps.numRefIdxActiveMinus1[1] + 1;
+        }
     }
 
     public boolean readMacroblock(MBlock mBlock) {
@@ -128,8 +183,9 @@ public class SliceReader {
                 int mbAddr = mapper.getAddress(mbIdx);
                 prevMbSkipped = true;
                 prevMBType = null;
-                debugPrint("---------------------- MB (%d,%d) ---------------------", (mbAddr % mbWidth),
-                        (mbAddr / mbWidth));
+                if (debug)
+                    debugPrint("---------------------- MB (%d,%d) ---------------------", (mbAddr % mbWidth),
+                            (mbAddr / mbWidth));
                 mBlock.skipped = true;
                 int mbX = mapper.getMbX(mBlock.mbIdx);
                 topMBType[mbX] = leftMBType = null;
@@ -145,7 +201,8 @@ public class SliceReader {
         int mbAddr = mapper.getAddress(mbIdx);
         int mbX = mbAddr % mbWidth;
         int mbY = mbAddr / mbWidth;
-        debugPrint("---------------------- MB (%d,%d) ---------------------", mbX, mbY);
+        if (debug)
+            debugPrint("---------------------- MB (%d,%d) ---------------------", mbX, mbY);
 
         if (sh.sliceType.isIntra()
                 || (!activePps.entropyCodingModeFlag || !readMBSkipFlag(sh.sliceType, mapper.leftAvailable(mbIdx),
@@ -714,7 +771,8 @@ public class SliceReader {
                         list);
         }
 
-        debugPrint("Pred: " + p[0] + ", " + p[1] + ", " + p[2] + ", " + p[3]);
+        if (debug)
+            debugPrint("Pred: " + p[0] + ", " + p[1] + ", " + p[2] + ", " + p[3]);
 
         int blk8x8X = mbX << 1;
         for (int list = 0; list < 2; list++) {
@@ -771,7 +829,8 @@ public class SliceReader {
                 mbX, blk8x8X, blk8x8Y, 2, 2, list);
         mBlock.pb8x8.mvdY1[list][partNo] = readMVD(1, lAvb, tAvb, leftMBType, topMBType, leftPred, topPred, partPred,
                 mbX, blk8x8X, blk8x8Y, 2, 2, list);
-        debugPrint("mvd: (%d, %d)", mBlock.pb8x8.mvdX1[list][partNo], mBlock.pb8x8.mvdY1[list][partNo]);
+        if (debug)
+            debugPrint("mvd: (%d, %d)", mBlock.pb8x8.mvdX1[list][partNo], mBlock.pb8x8.mvdY1[list][partNo]);
     }
 
     private void readSub8x4(MBlock mBlock, int partNo, boolean tAvb, boolean lAvb, int blk8x8X, int blk8x8Y, int mbX,
@@ -1088,4 +1147,12 @@ public class SliceReader {
     public NALUnit getNALUnit() {
         return nalUnit;
     }
+
+    public Mapper getMapper() {
+        return mapper;
+    }
+
+    CABAC getCABAC() {
+        return cabac;
+    }
 }
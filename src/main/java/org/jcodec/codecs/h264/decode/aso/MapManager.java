@@ -24,6 +24,14 @@ public class MapManager {
         this.mbToSliceGroupMap = buildMap(sps, pps);
     }
 
+    public SeqParameterSet getSps() {
+        return sps;
+    }
+
+    public PictureParameterSet getPps() {
+        return pps;
+    }
+
     private MBToSliceGroupMap buildMap(SeqParameterSet sps, PictureParameterSet pps) {
         int numGroups = pps.numSliceGroupsMinus1 + 1;
 
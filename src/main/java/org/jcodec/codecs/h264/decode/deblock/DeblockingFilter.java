@@ -54,9 +54,13 @@ public class DeblockingFilter {
                     3, 3, 4, 4, 4, 5, 6, 6, 7, 8, 9, 10, 11, 13, 14, 16, 18, 20, 23, 25 } };
 
     private DeblockerInput di;
+    private int[][] bsV;
+    private int[][] bsH;
 
     public DeblockingFilter(int bitDepthLuma, int bitDepthChroma, DeblockerInput di) {
         this.di = di;
+        this.bsV = new int[4][4];
+        this.bsH = new int[4][4];
     }
 
     public void deblockFrame(Picture result) {
@@ -66,7 +70,6 @@ public class DeblockingFilter {
         // "!--!--!--!--!--!--!--!--!--!--!--!");
         // printMB(result.getPlaneData(0), result.getPlaneWidth(0), 0, shs[0],
         // "!--!--!--!--!--!--!--!--!--!--!--!");
-        int[][] bsV = new int[4][4], bsH = new int[4][4];
         for (int i = 0; i < di.shs.length; i++) {
             calcBsH(result, i, bsH);
             calcBsV(result, i, bsV);
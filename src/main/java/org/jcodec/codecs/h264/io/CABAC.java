@@ -12,6 +12,8 @@ import static org.jcodec.codecs.h264.io.model.MBType.I_PCM;
 import static org.jcodec.common.tools.MathUtil.clip;
 import static org.jcodec.common.tools.MathUtil.sign;
 
+import java.util.Arrays;
+
 import org.jcodec.codecs.common.biari.MDecoder;
 import org.jcodec.codecs.common.biari.MEncoder;
 import org.jcodec.codecs.h264.H264Const;
@@ -30,6 +32,8 @@ import org.jcodec.common.tools.MathUtil;
  * 
  */
 public class CABAC {
+    // longest Exp-Golomb prefix of a valid level or mvd suffix
+    private static final int MAX_EG_PREFIX = 24;
 
     public final static class BlockType {
         public final static BlockType LUMA_16_DC = new BlockType(85, 105, 166, 277, 338, 227, 0);
@@ -87,10 +91,13 @@ public class CABAC {
     private int[][][] mvdTop;
     private int[][][] mvdLeft;
 
+    private boolean[] sigCoeff;
+
     public int[] tmp;
 
     public CABAC(int mbWidth) {
         this.tmp = new int[16];
+        this.sigCoeff = new boolean[64];
         this.chromaPredModeLeft = 0;
         this.chromaPredModeTop = new int[mbWidth];
         this.codedBlkLeft = new int[][] { new int[4], new int[2], new int[2] };
@@ -108,9 +115,36 @@ public class CABAC {
         this.mvdLeft = new int[2][2][4];
     }
 
+    /**
+     * Brings the neighbour context back to the state of a freshly created
+     * instance so it can be used for the next slice of the same width.
+     */
+    public void reset() {
+        chromaPredModeLeft = 0;
+        Arrays.fill(chromaPredModeTop, 0);
+        prevMbQpDelta = 0;
+        prevCBP = 0;
+        for (int i = 0; i < 3; i++) {
+            Arrays.fill(codedBlkLeft[i], 0);
+            Arrays.fill(codedBlkTop[i], 0);
+            Arrays.fill(codedBlkDCTop[i], 0);
+        }
+        Arrays.fill(codedBlkDCLeft, 0);
+        for (int i = 0; i < 2; i++) {
+            Arrays.fill(refIdxLeft[i], 0);
+            Arrays.fill(refIdxTop[i], 0);
+            for (int j = 0; j < 2; j++) {
+                Arrays.fill(mvdTop[i][j], 0);
+                Arrays.fill(mvdLeft[i][j], 0);
+            }
+        }
+        skipFlagLeft = false;
+        Arrays.fill(skipFlagsTop, false);
+    }
+
     public int readCoeffs(MDecoder decoder, BlockType blockType, int[] out, int first, int num, int[] reorder,
             int[] scMapping, int[] lscMapping) {
-        boolean sigCoeff[] = new boolean[num];
+        boolean[] sigCoeff = this.sigCoeff;
         int numCoeff;
         for (numCoeff = 0; numCoeff < num - 1; numCoeff++) {
             sigCoeff[numCoeff] = decoder.decodeBin(blockType.sigCoeffFlagCtxOff + scMapping[numCoeff]) == 1;
@@ -149,18 +183,9 @@ public class CABAC {
         val += b;
 
         if (val == 14) {
-            int log = -2, add = 0, sum = 0;
-            do {
-                log++;
-                b = decoder.decodeBinBypass();
-            } while (b != 0);
-
-            for (; log >= 0; log--) {
-                add |= decoder.decodeBinBypass() << log;
-                sum += 1 << log;
-            }
-
-            val += add + sum;
+            // UEG0 suffix: k ones, a zero and a k bit value
+            int k = decoder.decodeUnaryBypass(MAX_EG_PREFIX);
+            val += decoder.decodeBinsBypass(k) + (1 << k) - 1;
         }
 
         return val;
@@ -248,6 +273,25 @@ public class CABAC {
         }
     }
 
+    /**
+     * Initializes the context models packed as (pStateIdx << 1) | valMPS, the
+     * form MDecoder works with.
+     */
+    public void initModels(byte[] states, SliceType sliceType, int cabacIdc, int sliceQp) {
+        int[] tabA = sliceType.isIntra() ? CABACContst.cabac_context_init_I_A
+                : CABACContst.cabac_context_init_PB_A[cabacIdc];
+        int[] tabB = sliceType.isIntra() ? CABACContst.cabac_context_init_I_B
+                : CABACContst.cabac_context_init_PB_B[cabacIdc];
+
+        for (int i = 0; i < 1024; i++) {
+            int preCtxState = clip(((tabA[i] * clip(sliceQp, 0, 51)) >> 4) + tabB[i], 1, 126);
+            if (preCtxState <= 63)
+                states[i] = (byte) ((63 - preCtxState) << 1);
+            else
+                states[i] = (byte) (((preCtxState - 64) << 1) | 1);
+        }
+    }
+
     public int readMBTypeI(MDecoder decoder, MBType left, MBType top, boolean leftAvailable, boolean topAvailable) {
         int ctx = 3;
         ctx += !leftAvailable || left == I_NxN ? 0 : 1;
@@ -632,20 +676,9 @@ public class CABAC {
 
         if (val != 0) {
             if (val == 9) {
-                int log = 2, add = 0, sum = 0, leftover = 0;
-                do {
-                    sum += leftover;
-                    log++;
-                    b = decoder.decodeBinBypass();
-                    leftover = 1 << log;
-                } while (b != 0);
-
-                --log;
-
-                for (; log >= 0; log--) {
-                    add |= decoder.decodeBinBypass() << log;
-                }
-                val += add + sum;
+                // UEG3 suffix: k ones, a zero and a k + 3 bit value
+                int k = decoder.decodeUnaryBypass(MAX_EG_PREFIX);
+                val += decoder.decodeBinsBypass(k + 3) + (1 << (k + 3)) - 8;
             }
 
             val = MathUtil.toSigned(val, -decoder.decodeBinBypass());
@@ -1,9 +1,10 @@
 package org.jcodec.codecs.h264.io;
-import static org.jcodec.codecs.h264.decode.CAVLCReader.readU;
 import static org.jcodec.codecs.h264.decode.CAVLCReader.readZeroBitCount;
 import static org.jcodec.common.model.ColorSpace.YUV422;
 import static org.jcodec.common.model.ColorSpace.YUV444;
 
+import java.util.Arrays;
+
 import org.jcodec.codecs.h264.H264Const;
 import org.jcodec.codecs.h264.io.model.MBType;
 import org.jcodec.codecs.h264.io.model.PictureParameterSet;
@@ -38,6 +39,10 @@ public class CAVLC implements SaveRestore {
     private int mbWidth;
     private int mbMask;
 
+    // scratch space for readCoeffs, a block has at most 16 coefficients
+    private int[] level;
+    private int[] runs;
+
     public CAVLC(SeqParameterSet sps, PictureParameterSet pps, int mbW, int mbH) {
         this.color = sps.chromaFormatIdc;
         this.chromaDCVLC = codeTableChromaDC();
@@ -49,6 +54,19 @@ public class CAVLC implements SaveRestore {
         tokensTop       = new int[mbWidth << mbW];
         tokensLeftSaved = new int[4];
         tokensTopSaved  = new int[mbWidth << mbW];
+        level           = new int[16];
+        runs            = new int[16];
+    }
+
+    /**
+     * Forgets the neighbour token counts so the instance can be used for the
+     * next slice of the same size.
+     */
+    public void reset() {
+        Arrays.fill(tokensLeft, 0);
+        Arrays.fill(tokensTop, 0);
+        Arrays.fill(tokensLeftSaved, 0);
+        Arrays.fill(tokensTopSaved, 0);
     }
     
     @Override
@@ -232,13 +250,13 @@ public class CAVLC implements SaveRestore {
         if (totalCoeff > 0) {
             int suffixLength = totalCoeff > 10 && trailingOnes < 3 ? 1 : 0;
 
-            int[] level = new int[totalCoeff];
+            int[] level = this.level;
             int i;
             for (i = 0; i < trailingOnes; i++)
                 level[i] = 1 - 2 * _in.read1Bit();
 
             for (; i < totalCoeff; i++) {
-                int level_prefix = readZeroBitCount(_in, "");
+                int level_prefix = readLevelPrefix(_in);
                 int levelSuffixSize = suffixLength;
                 if (level_prefix == 14 && suffixLength == 0)
                     levelSuffixSize = 4;
@@ -247,8 +265,7 @@ public class CAVLC implements SaveRestore {
 
                 int levelCode = (Min(15, level_prefix) << suffixLength);
                 if (levelSuffixSize > 0) {
-                    int level_suffix = readU(_in, levelSuffixSize, "RB: level_suffix");
-                    levelCode += level_suffix;
+                    levelCode += _in.readNBit(levelSuffixSize);
                 }
                 if (level_prefix >= 15 && suffixLength == 0)
                     levelCode += 15;
@@ -280,7 +297,7 @@ public class CAVLC implements SaveRestore {
             } else
                 zerosLeft = 0;
 
-            int[] runs = new int[totalCoeff];
+            int[] runs = this.runs;
             int r;
             for (r = 0; r < totalCoeff - 1 && zerosLeft > 0; r++) {
                 int run = H264Const.run[Math.min(6, zerosLeft - 1)].readVLC(_in);
@@ -288,6 +305,8 @@ public class CAVLC implements SaveRestore {
                 runs[r] = run;
             }
             runs[r] = zerosLeft;
+            for (int k = r + 1; k < totalCoeff; k++)
+                runs[k] = 0;
 
             for (int j = totalCoeff - 1, cn = 0; j >= 0 && cn < nCoeff; j--, cn++) {
                 cn += runs[j];
@@ -303,6 +322,19 @@ public class CAVLC implements SaveRestore {
         return coeffToken;
     }
 
+    /**
+     * Counts the leading zero bits and skips them along with the terminating
+     * 1, prefixes under 16 bits take a single peek.
+     */
+    private static int readLevelPrefix(BitReader _in) {
+        int bits = _in.check16Bits();
+        if (bits == 0)
+            return readZeroBitCount(_in, "");
+        int prefix = Integer.numberOfLeadingZeros(bits) - 16;
+        _in.skipFast(prefix + 1);
+        return prefix;
+    }
+
     private static int Min(int i, int level_prefix) {
         return i < level_prefix ? i : level_prefix;
     }
@@ -5,6 +5,7 @@ import java.util.Comparator;
 import org.jcodec.codecs.h264.H264Utils.MvList2D;
 import org.jcodec.common.model.ColorSpace;
 import org.jcodec.common.model.Picture;
+import org.jcodec.common.model.PlaneAllocator;
 import org.jcodec.common.model.Rect;
 
 /**
@@ -28,6 +29,7 @@ public class Frame extends Picture {
             MvList2D mvs, Frame[][][] refsUsed, int poc) {
         super(width, height, data, null, color, 0, crop);
         this.frameNo = frameNo;
+        this.frameType = frameType;
         this.mvs = mvs;
         this.refsUsed = refsUsed;
         this.poc = poc;
@@ -35,25 +37,67 @@ public class Frame extends Picture {
     }
 
     public static Frame createFrame(Frame pic) {
-        Picture comp = pic.createCompatible();
-        return new Frame(comp.getWidth(), comp.getHeight(), comp.getData(), comp.getColor(), pic.getCrop(),
+        return createFrameWithAllocator(pic, pic.getAllocator());
+    }
+
+    /**
+     * Creates a frame compatible with pic, the planes are taken from the
+     * allocator and given back to it when the frame is released.
+     */
+    public static Frame createFrameWithAllocator(Frame pic, PlaneAllocator allocator) {
+        Picture comp = Picture.createWithAllocator(pic.getWidth(), pic.getHeight(), pic.getColor(), allocator);
+        Frame frame = new Frame(comp.getWidth(), comp.getHeight(), comp.getData(), comp.getColor(), pic.getCrop(),
                 pic.frameNo, pic.frameType, pic.mvs, pic.refsUsed, pic.poc);
+        frame.setAllocator(allocator);
+        return frame;
     }
 
     public Frame cropped() {
         Picture cropped = super.cropped();
-        return new Frame(cropped.getWidth(), cropped.getHeight(), cropped.getData(), cropped.getColor(), null, frameNo,
-                frameType, mvs, refsUsed, poc);
+        Frame frame = new Frame(cropped.getWidth(), cropped.getHeight(), cropped.getData(), cropped.getColor(), null,
+                frameNo, frameType, mvs, refsUsed, poc);
+        frame.setAllocator(cropped.getAllocator());
+        return frame;
     }
 
+    /**
+     * Copies the picture together with its motion vectors and references. The
+     * copy keeps its own motion vector and reference storage since the decoder
+     * reuses the source's for the next picture.
+     */
     public void copyFromFrame(Frame src) {
         super.copyFrom(src);
         this.frameNo = src.frameNo;
-        this.mvs = src.mvs;
+        this.frameType = src.frameType;
+        if (src.mvs == null) {
+            this.mvs = null;
+        } else {
+            if (mvs == null || mvs == src.mvs || mvs.getWidth() != src.mvs.getWidth()
+                    || mvs.getHeight() != src.mvs.getHeight())
+                mvs = new MvList2D(src.mvs.getWidth(), src.mvs.getHeight());
+            mvs.copyFrom(src.mvs);
+        }
+        if (src.refsUsed == null) {
+            this.refsUsed = null;
+        } else {
+            if (refsUsed == null || refsUsed == src.refsUsed || refsUsed.length != src.refsUsed.length)
+                refsUsed = new Frame[src.refsUsed.length][][];
+            System.arraycopy(src.refsUsed, 0, refsUsed, 0, refsUsed.length);
+        }
         this.shortTerm = src.shortTerm;
-        this.refsUsed = src.refsUsed;
         this.poc = src.poc;
     }
+
+    /**
+     * Prepares this frame to receive the next picture decoded into the same
+     * buffer.
+     */
+    public void reuse(int frameNo, SliceType frameType, int poc) {
+        this.frameNo = frameNo;
+        this.frameType = frameType;
+        this.poc = poc;
+        this.shortTerm = true;
+    }
     
     /**
      * Creates a cropped clone of this picture.
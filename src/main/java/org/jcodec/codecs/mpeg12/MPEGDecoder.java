@@ -124,7 +124,9 @@ public class MPEGDecoder extends VideoDecoder {
 
     private Picture copyAndCreateIfNeeded(Picture src, Picture dst) {
         if (dst == null || !dst.compatible(src)) {
-            dst = src.createCompatible();
+            if (dst != null)
+                dst.release();
+            dst = Picture.createWithAllocator(src.getWidth(), src.getHeight(), src.getColor(), getPlaneAllocator());
         }
         dst.copyFrom(src);
         return dst;
@@ -2,6 +2,8 @@ package org.jcodec.codecs.mpeg12;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
+import org.jcodec.common.io.StartCodeScanner;
+
 /**
  * This class is part of JCodec ( www.jcodec.org ) This software is distributed
  * under FreeBSD License
@@ -31,6 +33,10 @@ public class MPEGUtil {
      * Segment byte order is always little endian
      * 
      * @param buf
+     * @param mmin
+     *            lowest marker to stop at, 0x100 and above
+     * @param mmax
+     *            highest marker to stop at, 0x1ff and below
      * @return
      */
     public static final ByteBuffer gotoMarker(ByteBuffer buf, int n, int mmin, int mmax) {
@@ -41,18 +47,21 @@ public class MPEGUtil {
         ByteBuffer result = buf.slice();
         result.order(ByteOrder.BIG_ENDIAN);
 
-        int val = 0xffffffff;
-        while (buf.hasRemaining()) {
-            val = (val << 8) | (buf.get() & 0xff);
+        int limit = buf.limit();
+        int sc = StartCodeScanner.findStartCode(buf, from);
+        while (sc != -1 && sc + 3 < limit) {
+            int val = 0x100 | (buf.get(sc + 3) & 0xff);
             if (val >= mmin && val <= mmax) {
                 if (n == 0) {
-                    buf.position(buf.position() - 4);
-                    result.limit(buf.position() - from);
-                    break;
+                    buf.position(sc);
+                    result.limit(sc - from);
+                    return result;
                 }
                 --n;
             }
+            sc = StartCodeScanner.findStartCode(buf, sc + 1);
         }
+        buf.position(limit);
         return result;
     }
 
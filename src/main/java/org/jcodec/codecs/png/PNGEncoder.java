@@ -1,100 +1,174 @@
 package org.jcodec.codecs.png;
 
+import static org.jcodec.codecs.png.IHDR.PNG_COLOR_MASK_ALPHA;
+import static org.jcodec.codecs.png.IHDR.PNG_COLOR_MASK_COLOR;
+import static org.jcodec.codecs.png.PNGConsts.TAG_IDAT;
+import static org.jcodec.codecs.png.PNGConsts.TAG_IEND;
+import static org.jcodec.codecs.png.PNGConsts.TAG_IHDR;
+import static org.jcodec.common.tools.MathUtil.abs;
+
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
 import java.util.zip.CRC32;
 import java.util.zip.Deflater;
 
+import org.jcodec.common.SharedThreadPool;
 import org.jcodec.common.VideoEncoder;
-import org.jcodec.common.io.NIOUtils;
 import org.jcodec.common.model.ColorSpace;
 import org.jcodec.common.model.Picture;
 
-import static org.jcodec.codecs.png.IHDR.PNG_COLOR_MASK_COLOR;
-import static org.jcodec.codecs.png.PNGConsts.TAG_IDAT;
-import static org.jcodec.codecs.png.PNGConsts.TAG_IEND;
-import static org.jcodec.codecs.png.PNGConsts.TAG_IHDR;
-
 /**
  * This class is part of JCodec ( www.jcodec.org ) This software is distributed
  * under FreeBSD License
  * 
- * Simplistic PNG encoder, doesn't support anything.
+ * PNG encoder.
+ * 
+ * Supports: RGB, RGBA, 8 and 16 bit per sample (16 bit is used for high bit
+ * depth pictures), per-row adaptive filtering.
+ * 
+ * The image is split into bands of rows, each band is deflated independently
+ * (potentially in parallel) and terminated with a sync flush, the resulting
+ * deflate streams are concatenated into one zlib stream with the Adler-32
+ * checksum combined from the checksums of the individual bands.
  * 
  * @author Stanislav Vitvitskyy
  * 
  */
 public class PNGEncoder extends VideoEncoder {
-    private static int crc32(ByteBuffer from, ByteBuffer to) {
-        from.limit(to.position());
-        
-        CRC32 crc32 = new CRC32();
-        crc32.update(NIOUtils.toArray(from));
+    private static final int FILTER_VALUE_NONE = 0;
+    private static final int FILTER_VALUE_SUB = 1;
+    private static final int FILTER_VALUE_UP = 2;
+    private static final int FILTER_VALUE_AVG = 3;
+    private static final int FILTER_VALUE_PAETH = 4;
+
+    private static final int MIN_BAND_BYTES = 1 << 16;
+    private static final int ADLER_BASE = 65521;
+
+    private int level;
+    private int nThreads;
+    private BandEncoder[] bands;
+    private CRC32 crc32;
+
+    public PNGEncoder() {
+        this.level = Deflater.DEFAULT_COMPRESSION;
+        this.nThreads = Runtime.getRuntime().availableProcessors();
+        this.crc32 = new CRC32();
+        this.bands = new BandEncoder[0];
+    }
+
+    /**
+     * Creates a PNG encoder.
+     * 
+     * @param level
+     *            Deflate compression level 0-9 or
+     *            Deflater.DEFAULT_COMPRESSION.
+     * @param nThreads
+     *            The maximum number of bands that will be compressed
+     *            concurrently, 1 disables threading.
+     */
+    public static PNGEncoder createPNGEncoder(int level, int nThreads) {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < 0 || level > 9))
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        PNGEncoder encoder = new PNGEncoder();
+        encoder.level = level;
+        encoder.nThreads = Math.max(1, nThreads);
+        return encoder;
+    }
+
+    private int crc32(ByteBuffer buf, int from, int to) {
+        crc32.reset();
+        if (buf.hasArray()) {
+            crc32.update(buf.array(), buf.arrayOffset() + from, to - from);
+        } else {
+            for (int i = from; i < to; i++)
+                crc32.update(buf.get(i));
+        }
+        return (int) crc32.getValue();
+    }
+
+    private int crc32(int tag, byte[] data, int off, int len) {
+        crc32.reset();
+        crc32.update((tag >>> 24) & 0xff);
+        crc32.update((tag >>> 16) & 0xff);
+        crc32.update((tag >>> 8) & 0xff);
+        crc32.update(tag & 0xff);
+        crc32.update(data, off, len);
         return (int) crc32.getValue();
     }
 
     @Override
     public EncodedFrame encodeFrame(Picture pic, ByteBuffer out) {
+        ColorSpace color = pic.getColor();
+        if (color != ColorSpace.RGB && color != ColorSpace.RGBA)
+            throw new IllegalArgumentException("Unsupported color space: " + color);
+
         ByteBuffer _out = out.duplicate();
         _out.putInt(PNGConsts.PNGSIGhi);
         _out.putInt(PNGConsts.PNGSIGlo);
         IHDR ihdr = new IHDR();
         ihdr.width = pic.getCroppedWidth();
         ihdr.height = pic.getCroppedHeight();
-        ihdr.bitDepth = 8;
-        ihdr.colorType = PNG_COLOR_MASK_COLOR;
+        ihdr.bitDepth = (byte) (pic.isHiBD() ? 16 : 8);
+        ihdr.colorType = (byte) (color == ColorSpace.RGBA ? PNG_COLOR_MASK_COLOR | PNG_COLOR_MASK_ALPHA
+                : PNG_COLOR_MASK_COLOR);
         _out.putInt(13);
-        
-        ByteBuffer crcFrom = _out.duplicate();
+
+        int crcFrom = _out.position();
         _out.putInt(TAG_IHDR);
         ihdr.write(_out);
-        _out.putInt(crc32(crcFrom, _out));
-        
-        Deflater deflater = new Deflater();
-        byte[] rowData = new byte[pic.getCroppedWidth() * 3 + 1];
-        byte[] pix = pic.getPlaneData(0);
-        byte[] buffer = new byte[1 << 15];
-        int ptr = 0, len = buffer.length;
-
-        // We do one extra iteration here to flush the deflator
-        int lineStep = (pic.getWidth() - pic.getCroppedWidth()) * 3;
-        for (int row = 0, bptr = 0; row < pic.getCroppedHeight() + 1; row++) {
-            int count;
-            while ((count = deflater.deflate(buffer, ptr, len)) > 0) {
-                ptr += count;
-                len -= count;
-
-                if (len == 0) {
-                    _out.putInt(ptr);
-                    crcFrom = _out.duplicate();
-                    _out.putInt(TAG_IDAT);
-                    _out.put(buffer, 0, ptr);
-                    _out.putInt(crc32(crcFrom, _out));
-                    ptr = 0;
-                    len = buffer.length;
-                }
-            }
+        _out.putInt(crc32(_out, crcFrom, _out.position()));
 
-            if (row >= pic.getCroppedHeight())
-                break;
+        int bpp = (ihdr.getBitsPerPixel() + 7) >> 3;
+        int rowSize = ihdr.rowSize() + 1;
+        int height = ihdr.height;
+        int nBands = Math.max(1, Math.min(Math.min(nThreads, (rowSize * height) / MIN_BAND_BYTES), height));
+        int rowsPerBand = (height + nBands - 1) / nBands;
+        // Rounding up the band may leave nothing for the last bands
+        nBands = (height + rowsPerBand - 1) / rowsPerBand;
+        ensureBands(nBands, rowSize);
 
-            rowData[0] = 0; // no filter
-            for (int i = 1; i <= pic.getCroppedWidth() * 3; i += 3, bptr += 3) {
-                rowData[i] = (byte) (pix[bptr] + 128);
-                rowData[i + 1] = (byte) (pix[bptr + 1] + 128);
-                rowData[i + 2] = (byte) (pix[bptr + 2] + 128);
+        for (int i = 0, startRow = 0; i < nBands; i++, startRow += rowsPerBand) {
+            bands[i].init(pic, bpp, rowSize, startRow, Math.min(startRow + rowsPerBand, height), i == nBands - 1);
+        }
+        if (nBands > 1) {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < nBands; i++) {
+                futures.add(SharedThreadPool.get().submit(bands[i]));
             }
-            bptr += lineStep;
-            deflater.setInput(rowData);
-            if (row >= pic.getCroppedHeight() - 1)
-                deflater.finish();
+            for (Future<?> future : futures) {
+                waitForSure(future);
+            }
+        } else {
+            bands[0].run();
         }
-        if (ptr > 0) {
-            _out.putInt(ptr);
-            crcFrom = _out.duplicate();
+
+        long adler = 1;
+        for (int i = 0; i < nBands; i++) {
+            BandEncoder band = bands[i];
+            adler = adler32Combine(adler, band.adler.getValue(), band.rawLength);
+
+            byte[] data = band.compressed;
+            int len = band.compressedLength;
+            if (i == 0) {
+                data[0] = 0x78;
+                data[1] = (byte) zlibFlags(level);
+            }
+            if (i == nBands - 1) {
+                data[len++] = (byte) (adler >>> 24);
+                data[len++] = (byte) (adler >>> 16);
+                data[len++] = (byte) (adler >>> 8);
+                data[len++] = (byte) adler;
+            }
+            int off = i == 0 ? 0 : 2;
+            _out.putInt(len - off);
             _out.putInt(TAG_IDAT);
-            _out.put(buffer, 0, ptr);
-            _out.putInt(crc32(crcFrom, _out));
+            _out.put(data, off, len - off);
+            _out.putInt(crc32(TAG_IDAT, data, off, len - off));
         }
+
         _out.putInt(0);
         _out.putInt(TAG_IEND);
         _out.putInt(0xae426082);
@@ -103,13 +177,287 @@ public class PNGEncoder extends VideoEncoder {
         return new EncodedFrame(_out, true);
     }
 
+    private void ensureBands(int nBands, int rowSize) {
+        if (bands.length < nBands) {
+            BandEncoder[] tmp = new BandEncoder[nBands];
+            System.arraycopy(bands, 0, tmp, 0, bands.length);
+            for (int i = bands.length; i < nBands; i++)
+                tmp[i] = new BandEncoder(level);
+            bands = tmp;
+        }
+        for (int i = 0; i < nBands; i++)
+            bands[i].ensureRowSize(rowSize);
+    }
+
+    private void waitForSure(Future<?> future) {
+        try {
+            future.get();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static int zlibFlags(int level) {
+        int flevel;
+        if (level == Deflater.DEFAULT_COMPRESSION || level == 6)
+            flevel = 2;
+        else if (level < 2)
+            flevel = 0;
+        else if (level < 6)
+            flevel = 1;
+        else
+            flevel = 3;
+        int flg = flevel << 6;
+        return flg + (31 - ((0x78 << 8) + flg) % 31) % 31;
+    }
+
+    /**
+     * Calculates an Adler-32 checksum of a concatenation of two byte
+     * sequences given the checksums of the individual sequences.
+     * 
+     * @param adler1
+     *            Checksum of the first sequence.
+     * @param adler2
+     *            Checksum of the second sequence.
+     * @param len2
+     *            Length of the second sequence.
+     * @return Combined checksum.
+     */
+    static long adler32Combine(long adler1, long adler2, long len2) {
+        long rem = len2 % ADLER_BASE;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (rem * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xffff) + ADLER_BASE - 1;
+        sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + ADLER_BASE - rem;
+        if (sum1 >= ADLER_BASE)
+            sum1 -= ADLER_BASE;
+        if (sum1 >= ADLER_BASE)
+            sum1 -= ADLER_BASE;
+        if (sum2 >= (ADLER_BASE << 1))
+            sum2 -= (ADLER_BASE << 1);
+        if (sum2 >= ADLER_BASE)
+            sum2 -= ADLER_BASE;
+        return sum1 | (sum2 << 16);
+    }
+
+    /**
+     * Filters and compresses a band of rows into a raw deflate stream.
+     */
+    private static class BandEncoder implements Runnable {
+        private Deflater deflater;
+        private Adler32 adler;
+
+        private byte[] prevRow;
+        private byte[] curRow;
+        private byte[][] filtered;
+
+        private byte[] compressed;
+        private int compressedLength;
+        private long rawLength;
+
+        private Picture pic;
+        private int bpp;
+        private int rowSize;
+        private int startRow;
+        private int endRow;
+        private boolean last;
+
+        public BandEncoder(int level) {
+            this.deflater = new Deflater(level, true);
+            this.adler = new Adler32();
+            this.compressed = new byte[1 << 15];
+            this.filtered = new byte[5][];
+            this.prevRow = new byte[0];
+        }
+
+        void ensureRowSize(int rowSize) {
+            if (prevRow.length < rowSize) {
+                prevRow = new byte[rowSize];
+                curRow = new byte[rowSize];
+                for (int i = 0; i < filtered.length; i++)
+                    filtered[i] = new byte[rowSize];
+            }
+        }
+
+        void init(Picture pic, int bpp, int rowSize, int startRow, int endRow, boolean last) {
+            this.pic = pic;
+            this.bpp = bpp;
+            this.rowSize = rowSize;
+            this.startRow = startRow;
+            this.endRow = endRow;
+            this.last = last;
+        }
+
+        public void run() {
+            deflater.reset();
+            adler.reset();
+            // Leaving room for zlib header
+            compressedLength = 2;
+            rawLength = 0;
+
+            if (startRow > 0)
+                readRow(startRow - 1, prevRow);
+            else
+                clear(prevRow, rowSize);
+
+            for (int row = startRow; row < endRow; row++) {
+                readRow(row, curRow);
+                byte[] best = filterRow();
+                adler.update(best, 0, rowSize);
+                rawLength += rowSize;
+                deflater.setInput(best, 0, rowSize);
+                while (!deflater.needsInput())
+                    deflate(Deflater.NO_FLUSH);
+
+                byte[] tmp = prevRow;
+                prevRow = curRow;
+                curRow = tmp;
+            }
+
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished())
+                    deflate(Deflater.NO_FLUSH);
+            } else {
+                while (deflate(Deflater.SYNC_FLUSH))
+                    ;
+            }
+            pic = null;
+        }
+
+        /**
+         * @return If the output buffer was filled completely, i.e. there may
+         *         be more output pending.
+         */
+        private boolean deflate(int flush) {
+            // Reserving space for the Adler-32 trailer
+            int space = compressed.length - compressedLength - 4;
+            if (space < 1024) {
+                byte[] tmp = new byte[compressed.length << 1];
+                System.arraycopy(compressed, 0, tmp, 0, compressedLength);
+                compressed = tmp;
+                space = compressed.length - compressedLength - 4;
+            }
+            int count = deflater.deflate(compressed, compressedLength, space, flush);
+            compressedLength += count;
+            return count == space;
+        }
+
+        private void readRow(int row, byte[] dst) {
+            int nComp = pic.getColor().nComp;
+            int stride = pic.getWidth() * nComp;
+            int off = (pic.getStartY() + row) * stride + pic.getStartX() * nComp;
+            int n = pic.getCroppedWidth() * nComp;
+            byte[] pix = pic.getPlaneData(0);
+            if (pic.isHiBD()) {
+                byte[] low = pic.getLowBits()[0];
+                int lowBitsNum = pic.getLowBitsNum();
+                int depth = 8 + lowBitsNum;
+                int max = (1 << depth) - 1;
+                for (int i = 0, j = 1; i < n; i++, j += 2) {
+                    int val = ((pix[off + i] + 128) << lowBitsNum) + low[off + i];
+                    val = val < 0 ? 0 : (val > max ? max : val);
+                    val = (val << (16 - depth)) | (val >> (2 * depth - 16));
+                    dst[j] = (byte) (val >> 8);
+                    dst[j + 1] = (byte) val;
+                }
+            } else {
+                for (int i = 0; i < n; i++) {
+                    dst[i + 1] = (byte) (pix[off + i] + 128);
+                }
+            }
+        }
+
+        /**
+         * Applies all of the PNG filters to the current row and picks the one
+         * that gives the minimum sum of absolute differences.
+         */
+        private byte[] filterRow() {
+            byte[] cur = curRow, prev = prevRow;
+            byte[] none = filtered[FILTER_VALUE_NONE], sub = filtered[FILTER_VALUE_SUB],
+                    up = filtered[FILTER_VALUE_UP], avg = filtered[FILTER_VALUE_AVG],
+                    paeth = filtered[FILTER_VALUE_PAETH];
+            int sadNone = 0, sadSub = 0, sadUp = 0, sadAvg = 0, sadPaeth = 0;
+
+            for (int i = 1; i < rowSize; i++) {
+                int x = cur[i] & 0xff;
+                int a = i > bpp ? cur[i - bpp] & 0xff : 0;
+                int b = prev[i] & 0xff;
+                int c = i > bpp ? prev[i - bpp] & 0xff : 0;
+
+                byte vNone = (byte) x;
+                byte vSub = (byte) (x - a);
+                byte vUp = (byte) (x - b);
+                byte vAvg = (byte) (x - ((a + b) >> 1));
+                byte vPaeth = (byte) (x - paethPredictor(a, b, c));
+
+                none[i] = vNone;
+                sub[i] = vSub;
+                up[i] = vUp;
+                avg[i] = vAvg;
+                paeth[i] = vPaeth;
+
+                sadNone += abs(vNone);
+                sadSub += abs(vSub);
+                sadUp += abs(vUp);
+                sadAvg += abs(vAvg);
+                sadPaeth += abs(vPaeth);
+            }
+
+            int best = FILTER_VALUE_NONE, min = sadNone;
+            if (sadSub < min) {
+                best = FILTER_VALUE_SUB;
+                min = sadSub;
+            }
+            if (sadUp < min) {
+                best = FILTER_VALUE_UP;
+                min = sadUp;
+            }
+            if (sadAvg < min) {
+                best = FILTER_VALUE_AVG;
+                min = sadAvg;
+            }
+            if (sadPaeth < min) {
+                best = FILTER_VALUE_PAETH;
+            }
+            filtered[best][0] = (byte) best;
+            return filtered[best];
+        }
+
+        private static int paethPredictor(int a, int b, int c) {
+            int p = b - c;
+            int pc = a - c;
+
+            int pa = abs(p);
+            int pb = abs(pc);
+            pc = abs(p + pc);
+
+            if (pa <= pb && pa <= pc)
+                return a;
+            else if (pb <= pc)
+                return b;
+            else
+                return c;
+        }
+
+        private static void clear(byte[] row, int len) {
+            for (int i = 0; i < len; i++)
+                row[i] = 0;
+        }
+    }
+
     @Override
     public ColorSpace[] getSupportedColorSpaces() {
-        return new ColorSpace[] { ColorSpace.RGB };
+        return new ColorSpace[] { ColorSpace.RGB, ColorSpace.RGBA };
     }
 
     @Override
     public int estimateBufferSize(Picture frame) {
-        return frame.getCroppedWidth() * frame.getCroppedHeight() * 4;
+        int nComp = frame.getColor() == ColorSpace.RGBA ? 4 : 3;
+        int bytesPerSample = frame.isHiBD() ? 2 : 1;
+        int raw = (frame.getCroppedWidth() * nComp * bytesPerSample + 1) * frame.getCroppedHeight();
+        // Deflate worst case expansion plus per band sync flush markers and
+        // chunk headers
+        return raw + (raw >> 8) + 64 * nThreads + 1024;
     }
 }
@@ -314,7 +314,7 @@ public class ProresEncoder extends VideoEncoder {
                     sliceMbCount >>= 1;
 
                 int sliceStart = out.position();
-                boolean unsafeBottom = (picture.getHeight() % 16) != 0 && mbY == mbHeight - 1;
+                boolean unsafeBottom = (picture.getHeight() % (16 << vStep)) != 0 && mbY == mbHeight - 1;
                 boolean unsafeRight = (picture.getWidth() % 16) != 0 && mbX + sliceMbCount == mbWidth;
                 qp = encodeSlice(out, scaledLuma, scaledChroma, scan, sliceMbCount, mbX, mbY, picture, qp, mbWidth,
                         mbHeight, unsafeBottom || unsafeRight, vStep, vOffset);
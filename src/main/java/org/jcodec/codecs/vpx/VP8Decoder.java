@@ -1,20 +1,23 @@
 package org.jcodec.codecs.vpx;
 import static org.jcodec.codecs.vpx.VP8Util.MAX_MODE_LF_DELTAS;
 import static org.jcodec.codecs.vpx.VP8Util.MAX_REF_LF_DELTAS;
-import static org.jcodec.codecs.vpx.VP8Util.getBitInBytes;
-import static org.jcodec.codecs.vpx.VP8Util.getBitsInBytes;
 import static org.jcodec.codecs.vpx.VP8Util.getDefaultCoefProbs;
 import static org.jcodec.codecs.vpx.VP8Util.getMacroblockCount;
 import static org.jcodec.codecs.vpx.VP8Util.keyFrameYModeProb;
 import static org.jcodec.codecs.vpx.VP8Util.keyFrameYModeTree;
 import static org.jcodec.codecs.vpx.VP8Util.vp8CoefUpdateProbs;
-import static org.jcodec.common.Preconditions.checkState;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
-import org.jcodec.codecs.vpx.VPXMacroblock.Subblock;
 import org.jcodec.codecs.vpx.VP8Util.QuantizationParams;
 import org.jcodec.codecs.vpx.VP8Util.SubblockConstants;
+import org.jcodec.common.SharedThreadPool;
 import org.jcodec.common.UsedViaReflection;
 import org.jcodec.common.VideoCodecMeta;
 import org.jcodec.common.VideoDecoder;
@@ -27,103 +30,132 @@ import org.jcodec.common.tools.MathUtil;
 /**
  * This class is part of JCodec ( www.jcodec.org ) This software is distributed
  * under FreeBSD License
- * 
+ *
+ * VP8 key frame decoder.
+ *
+ * All the macroblock state is kept in flat primitive arrays that are allocated
+ * once per frame size and reused. Macroblock rows are decoded as a wavefront:
+ * with N token partitions up to N rows are parsed and reconstructed in
+ * parallel, a row proceeds as soon as the row above is two macroblocks ahead.
+ * The loop filter then runs as a second wavefront over all the rows.
+ *
  * @author The JCodec project
- * 
+ *
  */
 public class VP8Decoder extends VideoDecoder {
-    private byte[][] segmentationMap;
     private int[] refLoopFilterDeltas;
     private int[] modeLoopFilterDeltas;
+    private int[] segmentQuant;
+    private int[] segmentFilterLevel;
+    private boolean segmentAbs;
+    private int[] segmentProbs;
+
+    private int nThreads;
+    private VP8RowDecoder[] rowDecoders;
+    private AtomicInteger nextRow;
+    private volatile boolean aborted;
+
+    private static final int FILTER_NORMAL = 1;
+    private static final int FILTER_SIMPLE = 2;
+    private int filterType;
+    private int sharpness;
+    private Picture output;
+
+    int mbCols;
+    int mbRows;
+    int strideY;
+    int strideC;
+    byte[] planeY;
+    byte[] planeU;
+    byte[] planeV;
+
+    byte[] segIds;
+    byte[] yModes;
+    byte[] uvModes;
+    byte[] subModes;
+    byte[] mbSkip;
+    byte[] mbInnerFilter;
+    byte[] mbFilterLevel;
+    int[] aboveNz;
+
+    boolean segmentationEnabled;
+    QuantizationParams[] quants;
+    int[][][][] coefProbs;
+    VPXBooleanDecoder[] partitions;
+    AtomicIntegerArray decoded;
+    AtomicIntegerArray filtered;
 
     public VP8Decoder() {
+        this.nThreads = Runtime.getRuntime().availableProcessors();
         refLoopFilterDeltas = new int[MAX_REF_LF_DELTAS];
         modeLoopFilterDeltas = new int[MAX_MODE_LF_DELTAS];
+        segmentQuant = new int[4];
+        segmentFilterLevel = new int[4];
+        segmentProbs = new int[3];
+        quants = new QuantizationParams[4];
+        coefProbs = getDefaultCoefProbs();
+        nextRow = new AtomicInteger();
+    }
+
+    /**
+     * Creates a decoder that uses up to 'nThreads' threads to decode the
+     * frames, 1 means decoding on the calling thread only.
+     */
+    public static VP8Decoder createVP8Decoder(int nThreads) {
+        VP8Decoder decoder = new VP8Decoder();
+        decoder.nThreads = Math.max(1, nThreads);
+        return decoder;
     }
 
     @Override
     public Picture decodeFrame(ByteBuffer frame, byte[][] buffer) {
-        byte[] firstThree = new byte[3];
-        frame.get(firstThree);
-
-        boolean keyFrame = getBitInBytes(firstThree, 0) == 0;
-        if(!keyFrame)
+        int tag = (frame.get() & 0xff) | ((frame.get() & 0xff) << 8) | ((frame.get() & 0xff) << 16);
+        boolean keyFrame = (tag & 1) == 0;
+        if (!keyFrame)
             return null;
-        int version = getBitsInBytes(firstThree, 1, 3);
-        boolean showFrame = getBitInBytes(firstThree, 4) > 0;
-        int partitionSize = getBitsInBytes(firstThree, 5, 19);
-        String threeByteToken = printHexByte(frame.get()) + " " + printHexByte(frame.get()) + " "
-                + printHexByte(frame.get());
+        int firstPartSize = (tag >> 5) & 0x7ffff;
+        NIOUtils.skip(frame, 3);
 
-        int twoBytesWidth = (frame.get() & 0xFF) | (frame.get() & 0xFF) << 8;
-        int twoBytesHeight = (frame.get() & 0xFF) | (frame.get() & 0xFF) << 8;
-        int width = (twoBytesWidth & 0x3fff);
-        int height = (twoBytesHeight & 0x3fff);
-        int numberOfMBRows = getMacroblockCount(height);
-        int numberOfMBCols = getMacroblockCount(width);
-
-        /** Init macroblocks and subblocks */
-        if(segmentationMap == null)
-            segmentationMap = new byte[numberOfMBRows][numberOfMBCols];
-        VPXMacroblock[][] mbs = new VPXMacroblock[numberOfMBRows + 2][numberOfMBCols + 2];
-        for (int row = 0; row < numberOfMBRows + 2; row++) {
-            for (int col = 0; col < numberOfMBCols + 2; col++) {
-                mbs[row][col] = new VPXMacroblock(row, col);
-            }
-        }
+        int width = ((frame.get() & 0xFF) | (frame.get() & 0xFF) << 8) & 0x3fff;
+        int height = ((frame.get() & 0xFF) | (frame.get() & 0xFF) << 8) & 0x3fff;
+        initFrameState(getMacroblockCount(width), getMacroblockCount(height));
 
         int headerOffset = frame.position();
-        VPXBooleanDecoder headerDecoder = new VPXBooleanDecoder(frame, 0);
-        boolean isYUVColorSpace = (headerDecoder.readBitEq() == 0);
-
-        boolean clampingRequired = headerDecoder.readBitEq() == 0;
-        int segmentation = headerDecoder.readBitEq();
-        SegmentBasedAdjustments segmentBased = null;
-        if(segmentation != 0) {
-            segmentBased = updateSegmentation(headerDecoder);
-            // Segmentation map persists between frames
-            for (int row = 0; row < numberOfMBRows; row++) {
-                for (int col = 0; col < numberOfMBCols; col++) {
-                    mbs[row + 1][col + 1].segment = segmentationMap[row][col];
-                }
-            }
-        }
-        int simpleFilter = headerDecoder.readBitEq();
+        ByteBuffer firstPart = frame.duplicate();
+        firstPart.limit(Math.min(frame.limit(), headerOffset + firstPartSize));
+        VPXBooleanDecoder headerDecoder = new VPXBooleanDecoder(firstPart, 0);
+        // Color space and clamping type, not used
+        headerDecoder.readBitEq();
+        headerDecoder.readBitEq();
+
+        // Key frames reset all the persistent adjustments to defaults
+        Arrays.fill(segmentQuant, 0);
+        Arrays.fill(segmentFilterLevel, 0);
+        Arrays.fill(refLoopFilterDeltas, 0);
+        Arrays.fill(modeLoopFilterDeltas, 0);
+        segmentAbs = false;
+
+        segmentationEnabled = headerDecoder.readBitEq() != 0;
+        boolean updateSegmentMap = false;
+        if (segmentationEnabled)
+            updateSegmentMap = updateSegmentation(headerDecoder);
+
+        boolean simpleFilter = headerDecoder.readBitEq() != 0;
         int filterLevel = headerDecoder.decodeInt(6);
-        int filterType = (filterLevel == 0) ? 0 : (simpleFilter > 0) ? 1 : 2;
         int sharpnessLevel = headerDecoder.decodeInt(3);
-        int loopFilterDeltaFlag = headerDecoder.readBitEq();
-        if(loopFilterDeltaFlag == 1) {
-            int loopFilterDeltaUpdate = headerDecoder.readBitEq();
-            if (loopFilterDeltaUpdate == 1) {
-                for (int i = 0; i < MAX_REF_LF_DELTAS; i++) {
-
-                    if (headerDecoder.readBitEq() > 0) {
-                        refLoopFilterDeltas[i] = headerDecoder.decodeInt(6);
-                        ;
-                        if (headerDecoder.readBitEq() > 0) // Apply sign
-                            refLoopFilterDeltas[i] = refLoopFilterDeltas[i] * -1;
-                    }
-                }
-                for (int i = 0; i < MAX_MODE_LF_DELTAS; i++) {
-
-                    if (headerDecoder.readBitEq() > 0) {
-                        modeLoopFilterDeltas[i] = headerDecoder.decodeInt(6);
-                        if (headerDecoder.readBitEq() > 0) // Apply sign
-                            modeLoopFilterDeltas[i] = modeLoopFilterDeltas[i] * -1;
-                    }
-                }
+        boolean loopFilterDeltas = headerDecoder.readBitEq() != 0;
+        if (loopFilterDeltas && headerDecoder.readBitEq() != 0) {
+            for (int i = 0; i < MAX_REF_LF_DELTAS; i++) {
+                if (headerDecoder.readBitEq() > 0)
+                    refLoopFilterDeltas[i] = signed(headerDecoder, 6);
+            }
+            for (int i = 0; i < MAX_MODE_LF_DELTAS; i++) {
+                if (headerDecoder.readBitEq() > 0)
+                    modeLoopFilterDeltas[i] = signed(headerDecoder, 6);
             }
         }
         int log2OfPartCnt = headerDecoder.decodeInt(2);
-
-        checkState(0 == log2OfPartCnt);
-        int partitionsCount = 1;
-        long runningSize = 0;
-        long zSize = frame.limit() - (partitionSize + headerOffset);
-        ByteBuffer tokenBuffer = frame.duplicate();
-        tokenBuffer.position(partitionSize + headerOffset);
-        VPXBooleanDecoder decoder = new VPXBooleanDecoder(tokenBuffer, 0);
+        initPartitions(frame, headerOffset + firstPartSize, 1 << log2OfPartCnt);
 
         int yacIndex = headerDecoder.decodeInt(7);
         int ydcDelta = ((headerDecoder.readBitEq() > 0) ? VP8Util.delta(headerDecoder) : 0);
@@ -131,216 +163,345 @@ public class VP8Decoder extends VideoDecoder {
         int y2acDelta = ((headerDecoder.readBitEq() > 0) ? VP8Util.delta(headerDecoder) : 0);
         int chromaDCDelta = ((headerDecoder.readBitEq() > 0) ? VP8Util.delta(headerDecoder) : 0);
         int chromaACDelta = ((headerDecoder.readBitEq() > 0) ? VP8Util.delta(headerDecoder) : 0);
-        boolean refreshProbs = headerDecoder.readBitEq() == 0;
-        QuantizationParams quants = new QuantizationParams(yacIndex, ydcDelta, y2dcDelta, y2acDelta, chromaDCDelta,
-                chromaACDelta);
+        // Only key frames are decoded and they always start with the default
+        // probabilities, so there's nothing to save for the next frame
+        headerDecoder.readBitEq();
+        for (int s = 0; s < 4; s++) {
+            int qIndex = yacIndex;
+            if (segmentationEnabled)
+                qIndex = segmentAbs ? segmentQuant[s] : qIndex + segmentQuant[s];
+            quants[s] = new QuantizationParams(MathUtil.clip(qIndex, 0, 127), ydcDelta, y2dcDelta, y2acDelta,
+                    chromaDCDelta, chromaACDelta);
+        }
 
-        int[][][][] coefProbs = getDefaultCoefProbs();
-        for (int i = 0; i < VP8Util.BLOCK_TYPES; i++)
-            for (int j = 0; j < VP8Util.COEF_BANDS; j++)
-                for (int k = 0; k < VP8Util.PREV_COEF_CONTEXTS; k++)
-                    for (int l = 0; l < VP8Util.MAX_ENTROPY_TOKENS - 1; l++) {
+        readCoefProbs(headerDecoder);
+
+        int macroBlockNoCoeffSkip = headerDecoder.readBitEq();
+        int probSkipFalse = macroBlockNoCoeffSkip != 0 ? headerDecoder.decodeInt(8) : 0;
+
+        int[] filterLevels = new int[8];
+        for (int s = 0; s < 4; s++) {
+            int level = filterLevel;
+            if (segmentationEnabled)
+                level = MathUtil.clip(segmentAbs ? segmentFilterLevel[s] : level + segmentFilterLevel[s], 0, 63);
+            if (loopFilterDeltas) {
+                level += refLoopFilterDeltas[0];
+                filterLevels[s * 2] = MathUtil.clip(level, 0, 63);
+                filterLevels[s * 2 + 1] = MathUtil.clip(level + modeLoopFilterDeltas[0], 0, 63);
+            } else {
+                filterLevels[s * 2] = filterLevels[s * 2 + 1] = level;
+            }
+        }
 
-                        if (headerDecoder.readBit(vp8CoefUpdateProbs[i][j][k][l]) > 0) {
-                            int newp = headerDecoder.decodeInt(8);
-                            coefProbs[i][j][k][l] = newp;
-                        }
-                    }
+        readModes(headerDecoder, updateSegmentMap, macroBlockNoCoeffSkip != 0, probSkipFalse, filterLevels);
+        // The first row has nothing coded above it, the contexts are left
+        // over from the last row of the previous frame
+        Arrays.fill(aboveNz, 0);
 
-        int macroBlockNoCoeffSkip = (int) headerDecoder.readBitEq();
-        checkState(1 == macroBlockNoCoeffSkip);
-        int probSkipFalse = headerDecoder.decodeInt(8);
-        for (int mbRow = 0; mbRow < numberOfMBRows; mbRow++) {
-            for (int mbCol = 0; mbCol < numberOfMBCols; mbCol++) {
-                VPXMacroblock mb = mbs[mbRow + 1][mbCol + 1];
-                if (segmentation != 0 && segmentBased != null && segmentBased.segmentProbs != null) {
-                    // if segmentation is on and if segment map is updated
-                    mb.segment = headerDecoder.readTree(VP8Util.segmentTree, segmentBased.segmentProbs);
-                    segmentationMap[mbRow][mbCol] = (byte) mb.segment;
-                }
-                if (segmentation != 0 && segmentBased != null && segmentBased.qp != null) {
-                    int qIndex = yacIndex;
-                    if (segmentBased.abs != 0)
-                        qIndex = segmentBased.qp[mb.segment];
-                    else
-                        qIndex += segmentBased.qp[mb.segment];
-                    quants = new QuantizationParams(qIndex, ydcDelta, y2dcDelta, y2acDelta, chromaDCDelta,
-                            chromaACDelta);
-                }
-                mb.quants = quants;
-
-                // Ref based filter level adjustment
-                if (loopFilterDeltaFlag != 0) {
-                    int level = filterLevel;
-                    level = level + refLoopFilterDeltas[0];
-                    level = MathUtil.clip(level,  0,  63);
-                    mb.filterLevel = level;
-                } else {
-                    mb.filterLevel = filterLevel;
-                }
-                
-                // Segment based filter level adjustment
-                if (segmentation != 0 && segmentBased != null && segmentBased.lf != null) {
-                    if (segmentBased.abs != 0) {
-                        mb.filterLevel = segmentBased.lf[mb.segment];
-                    } else {
-                        mb.filterLevel += segmentBased.lf[mb.segment];
-                        mb.filterLevel = MathUtil.clip(mb.filterLevel,  0,  63);
-                    }
-                }
+        Picture p = Picture.createPicture(width, height, buffer, ColorSpace.YUV420);
 
-                if (macroBlockNoCoeffSkip > 0)
-                    mb.skipCoeff = headerDecoder.readBit(probSkipFalse);
+        this.filterType = filterLevel == 0 ? 0 : (simpleFilter ? FILTER_SIMPLE : FILTER_NORMAL);
+        this.sharpness = sharpnessLevel;
+        this.output = p;
+        try {
+            runPass(false, Math.min(nThreads, partitions.length));
+            runPass(true, Math.min(nThreads, mbRows));
+        } finally {
+            this.output = null;
+        }
+        return p;
+    }
 
-                mb.lumaMode = headerDecoder.readTree(keyFrameYModeTree, keyFrameYModeProb);
-                // 1 is added to account for non-displayed framing macroblocks,
-                // which are used for prediction only.
-                if (mb.lumaMode == SubblockConstants.B_PRED) {
-                    for (int sbRow = 0; sbRow < 4; sbRow++) {
-                        for (int sbCol = 0; sbCol < 4; sbCol++) {
+    private static int signed(VPXBooleanDecoder bd, int bits) {
+        int v = bd.decodeInt(bits);
+        return bd.readBitEq() != 0 ? -v : v;
+    }
 
-                            Subblock sb = mb.ySubblocks[sbRow][sbCol];
-                            Subblock A = sb.getAbove(VP8Util.PLANE.Y1, mbs);
+    /**
+     * (Re)allocates the frame state, it's kept between the frames of the same
+     * size
+     */
+    private void initFrameState(int mbCols, int mbRows) {
+        if (planeY != null && this.mbCols == mbCols && this.mbRows == mbRows)
+            return;
+        this.mbCols = mbCols;
+        this.mbRows = mbRows;
+        int mbCount = mbCols * mbRows;
+
+        // One pixel border above and to the left, 4 extra pixels to the right
+        // for the above-right prediction of the last macroblock in a row
+        strideY = (mbCols << 4) + 5;
+        strideC = (mbCols << 3) + 1;
+        planeY = new byte[strideY * ((mbRows << 4) + 1)];
+        planeU = new byte[strideC * ((mbRows << 3) + 1)];
+        planeV = new byte[strideC * ((mbRows << 3) + 1)];
+        initBorder(planeY, strideY, mbRows << 4);
+        initBorder(planeU, strideC, mbRows << 3);
+        initBorder(planeV, strideC, mbRows << 3);
+
+        segIds = new byte[mbCount];
+        yModes = new byte[mbCount];
+        uvModes = new byte[mbCount];
+        subModes = new byte[mbCount << 4];
+        mbSkip = new byte[mbCount];
+        mbInnerFilter = new byte[mbCount];
+        mbFilterLevel = new byte[mbCount];
+        aboveNz = new int[mbCols * 9];
+        decoded = new AtomicIntegerArray(mbRows);
+        filtered = new AtomicIntegerArray(mbRows);
+    }
 
-                            Subblock L = sb.getLeft(VP8Util.PLANE.Y1, mbs);
+    /**
+     * Pixels above the frame are predicted as 127, the ones to the left as 129
+     */
+    private static void initBorder(byte[] plane, int stride, int height) {
+        Arrays.fill(plane, 0, stride, (byte) 127);
+        for (int i = 0, pos = stride; i < height; i++, pos += stride)
+            plane[pos] = (byte) 129;
+    }
 
-                            sb.mode = headerDecoder.readTree(SubblockConstants.subblockModeTree,
-                                    SubblockConstants.keyFrameSubblockModeProb[A.mode][L.mode]);
+    private void initPartitions(ByteBuffer frame, int offset, int count) {
+        if (partitions == null || partitions.length != count)
+            partitions = new VPXBooleanDecoder[count];
+        int dataOff = offset + 3 * (count - 1);
+        for (int i = 0; i < count; i++) {
+            int size;
+            if (i < count - 1) {
+                int pos = offset + 3 * i;
+                size = (frame.get(pos) & 0xff) | ((frame.get(pos + 1) & 0xff) << 8)
+                        | ((frame.get(pos + 2) & 0xff) << 16);
+            } else {
+                size = frame.limit() - dataOff;
+            }
+            ByteBuffer part = frame.duplicate();
+            part.position(Math.min(dataOff, frame.limit()));
+            part.limit(Math.min(dataOff + size, frame.limit()));
+            partitions[i] = new VPXBooleanDecoder(part, 0);
+            dataOff += size;
+        }
+    }
 
-                        }
+    private void readCoefProbs(VPXBooleanDecoder headerDecoder) {
+        int[][][][] defaults = getDefaultCoefProbs();
+        for (int i = 0; i < VP8Util.BLOCK_TYPES; i++)
+            for (int j = 0; j < VP8Util.COEF_BANDS; j++)
+                for (int k = 0; k < VP8Util.PREV_COEF_CONTEXTS; k++)
+                    for (int l = 0; l < VP8Util.MAX_ENTROPY_TOKENS - 1; l++) {
+                        if (headerDecoder.readBit(vp8CoefUpdateProbs[i][j][k][l]) > 0)
+                            coefProbs[i][j][k][l] = headerDecoder.decodeInt(8);
+                        else
+                            coefProbs[i][j][k][l] = defaults[i][j][k][l];
                     }
+    }
 
-                } else {
-                    int fixedMode;
-
-                    switch (mb.lumaMode) {
-                    case SubblockConstants.DC_PRED:
-                        fixedMode = SubblockConstants.B_DC_PRED;
-                        break;
-                    case SubblockConstants.V_PRED:
-                        fixedMode = SubblockConstants.B_VE_PRED;
-                        break;
-                    case SubblockConstants.H_PRED:
-                        fixedMode = SubblockConstants.B_HE_PRED;
-                        break;
-                    case SubblockConstants.TM_PRED:
-                        fixedMode = SubblockConstants.B_TM_PRED;
-                        break;
-                    default:
-                        fixedMode = SubblockConstants.B_DC_PRED;
-                        break;
+    /**
+     * Parses the per-macroblock headers of the first partition into the flat
+     * mode arrays
+     */
+    private void readModes(VPXBooleanDecoder headerDecoder, boolean updateSegmentMap, boolean noCoeffSkip,
+            int probSkipFalse, int[] filterLevels) {
+        for (int mbRow = 0, mbAddr = 0; mbRow < mbRows; mbRow++) {
+            for (int mbCol = 0; mbCol < mbCols; mbCol++, mbAddr++) {
+                if (updateSegmentMap)
+                    segIds[mbAddr] = (byte) headerDecoder.readTree(VP8Util.segmentTree, segmentProbs);
+                int segment = segmentationEnabled ? segIds[mbAddr] : 0;
+
+                mbSkip[mbAddr] = (byte) (noCoeffSkip ? headerDecoder.readBit(probSkipFalse) : 0);
+
+                int lumaMode = headerDecoder.readTree(keyFrameYModeTree, keyFrameYModeProb);
+                yModes[mbAddr] = (byte) lumaMode;
+                int sbAddr = mbAddr << 4;
+                if (lumaMode == SubblockConstants.B_PRED) {
+                    for (int i = 0; i < 16; i++) {
+                        int above, left;
+                        if (i >= 4)
+                            above = subModes[sbAddr + i - 4];
+                        else if (mbRow > 0)
+                            above = subModes[((mbAddr - mbCols) << 4) + 12 + i];
+                        else
+                            above = SubblockConstants.B_DC_PRED;
+                        if ((i & 3) != 0)
+                            left = subModes[sbAddr + i - 1];
+                        else if (mbCol > 0)
+                            left = subModes[((mbAddr - 1) << 4) + i + 3];
+                        else
+                            left = SubblockConstants.B_DC_PRED;
+
+                        subModes[sbAddr + i] = (byte) headerDecoder.readTree(SubblockConstants.subblockModeTree,
+                                SubblockConstants.keyFrameSubblockModeProb[above][left]);
                     }
-                    mb.lumaMode = edgeEmu(mb.lumaMode, mbCol, mbRow);
-                    for (int x = 0; x < 4; x++)
-                        for (int y = 0; y < 4; y++)
-                            mb.ySubblocks[y][x].mode = fixedMode;
+                } else {
+                    // Contexts for the neighboring B_PRED macroblocks
+                    Arrays.fill(subModes, sbAddr, sbAddr + 16, (byte) impliedSubblockMode(lumaMode));
                 }
-                mb.chromaMode = headerDecoder.readTree(VP8Util.vp8UVModeTree, VP8Util.vp8KeyFrameUVModeProb);
+                uvModes[mbAddr] = (byte) headerDecoder.readTree(VP8Util.vp8UVModeTree,
+                        VP8Util.vp8KeyFrameUVModeProb);
+                mbFilterLevel[mbAddr] = (byte) filterLevels[segment * 2
+                        + (lumaMode == SubblockConstants.B_PRED ? 1 : 0)];
             }
         }
+    }
 
-        for (int mbRow = 0; mbRow < numberOfMBRows; mbRow++) {
-            for (int mbCol = 0; mbCol < numberOfMBCols; mbCol++) {
-                VPXMacroblock mb = mbs[mbRow + 1][mbCol + 1];
-                mb.decodeMacroBlock(mbs, decoder, coefProbs);
-                mb.dequantMacroBlock(mbs);
-            }
+    static int impliedSubblockMode(int lumaMode) {
+        switch (lumaMode) {
+        case SubblockConstants.V_PRED:
+            return SubblockConstants.B_VE_PRED;
+        case SubblockConstants.H_PRED:
+            return SubblockConstants.B_HE_PRED;
+        case SubblockConstants.TM_PRED:
+            return SubblockConstants.B_TM_PRED;
+        default:
+            return SubblockConstants.B_DC_PRED;
         }
+    }
 
-        if (filterType > 0 && filterLevel != 0) {
-            if (filterType == 2) {
-                FilterUtil.loopFilterUV(mbs, sharpnessLevel, keyFrame);
-                FilterUtil.loopFilterY(mbs, sharpnessLevel, keyFrame);
-            } else if (filterType == 1) {
-                // loopFilterSimple(frame);
+    /**
+     * Runs one pass over all macroblock rows. Workers grab the rows in order
+     * and synchronize on the progress of the rows above, this is the same
+     * code for the single threaded case where the waits are always satisfied.
+     *
+     * @param filterPass
+     *            false for the residual/reconstruction pass, true for the loop
+     *            filter and output pass
+     */
+    private void runPass(final boolean filterPass, int nWorkers) {
+        AtomicIntegerArray progress = filterPass ? filtered : decoded;
+        for (int i = 0; i < mbRows; i++)
+            progress.set(i, 0);
+        nextRow.set(0);
+        aborted = false;
+
+        if (rowDecoders == null || rowDecoders.length < nWorkers) {
+            VP8RowDecoder[] tmp = new VP8RowDecoder[nWorkers];
+            for (int i = 0; i < nWorkers; i++)
+                tmp[i] = rowDecoders != null && i < rowDecoders.length ? rowDecoders[i] : new VP8RowDecoder(this);
+            rowDecoders = tmp;
+        }
+
+        if (nWorkers <= 1) {
+            new RowWorker(this, rowDecoders[0], filterPass).run();
+            return;
+        }
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < nWorkers; i++)
+            futures.add(SharedThreadPool.get().submit(new RowWorker(this, rowDecoders[i], filterPass)));
+        RuntimeException error = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (Exception e) {
+                if (error == null)
+                    error = new RuntimeException(e);
             }
         }
+        if (error != null)
+            throw error;
+    }
 
-        Picture p = Picture.createPicture(width, height, buffer, ColorSpace.YUV420);
+    private static final class RowWorker implements Runnable {
+        private VP8Decoder dec;
+        private VP8RowDecoder rowDecoder;
+        private boolean filterPass;
 
-        int mbWidth = getMacroblockCount(width);
-        int mbHeight = getMacroblockCount(height);
+        private RowWorker(VP8Decoder dec, VP8RowDecoder rowDecoder, boolean filterPass) {
+            this.dec = dec;
+            this.rowDecoder = rowDecoder;
+            this.filterPass = filterPass;
+        }
 
-        for (int mbRow = 0; mbRow < mbHeight; mbRow++) {
-            for (int mbCol = 0; mbCol < mbWidth; mbCol++) {
-                VPXMacroblock mb = mbs[mbRow + 1][mbCol + 1];
-                mb.put(mbRow, mbCol, p);
+        public void run() {
+            try {
+                int mbRow;
+                while ((mbRow = dec.nextRow.getAndIncrement()) < dec.mbRows) {
+                    if (filterPass)
+                        dec.filterRow(mbRow);
+                    else
+                        rowDecoder.decodeRow(mbRow);
+                }
+            } catch (RuntimeException e) {
+                dec.aborted = true;
+                throw e;
             }
         }
-        return p;
     }
-    
-    private int edgeEmu(int mode, int mbCol, int mbRow) {
-        switch (mode) {
-        case SubblockConstants.V_PRED:
-            return mbRow == 0 ? SubblockConstants.DC_PRED : mode;
-        case SubblockConstants.H_PRED:
-            return mbCol == 0 ? SubblockConstants.DC_PRED : mode;
-        case SubblockConstants.TM_PRED:
-            return edgeEmuTm(mode, mbCol, mbRow);
-            default:
-                return mode;
+
+    /**
+     * Blocks until the given row reaches the given progress, i.e. the number
+     * of macroblocks done
+     */
+    void waitFor(AtomicIntegerArray progress, int mbRow, int value) {
+        while (progress.get(mbRow) < value) {
+            if (aborted)
+                throw new IllegalStateException("Decoding aborted by another worker");
+            Thread.yield();
         }
     }
-    
-    private int edgeEmuTm(int mode, int mbCol, int mbRow) {
-        if (mbCol == 0)
-          return mbRow != 0 ? SubblockConstants.V_PRED : SubblockConstants.DC_PRED;
-      else
-          return mbRow != 0 ? mode : SubblockConstants.H_PRED;
+
+    /**
+     * Loop filters the macroblock row and copies the finished pixels to the
+     * output picture. A row is final once the row below it has been filtered.
+     */
+    private void filterRow(int mbRow) {
+        if (filterType == 0) {
+            copyRow(mbRow);
+            return;
+        }
+        for (int mbCol = 0, mbAddr = mbRow * mbCols; mbCol < mbCols; mbCol++, mbAddr++) {
+            if (mbRow > 0)
+                waitFor(filtered, mbRow - 1, Math.min(mbCol + 2, mbCols));
+            int posY = ((mbRow << 4) + 1) * strideY + (mbCol << 4) + 1;
+            int posC = ((mbRow << 3) + 1) * strideC + (mbCol << 3) + 1;
+            boolean inner = mbInnerFilter[mbAddr] != 0;
+            if (filterType == FILTER_NORMAL)
+                VP8LoopFilter.filterMBNormal(planeY, planeU, planeV, posY, strideY, posC, strideC,
+                        mbFilterLevel[mbAddr], sharpness, mbCol > 0, mbRow > 0, inner, true);
+            else
+                VP8LoopFilter.filterMBSimple(planeY, posY, strideY, mbFilterLevel[mbAddr], sharpness, mbCol > 0,
+                        mbRow > 0, inner);
+            filtered.set(mbRow, mbCol + 1);
+        }
+        if (mbRow > 0)
+            copyRow(mbRow - 1);
+        if (mbRow == mbRows - 1)
+            copyRow(mbRow);
+    }
+
+    private void copyRow(int mbRow) {
+        Picture p = output;
+        copyRow(planeY, strideY, p.getPlaneData(0), p.getPlaneWidth(0), p.getPlaneHeight(0), mbRow << 4, 16);
+        copyRow(planeU, strideC, p.getPlaneData(1), p.getPlaneWidth(1), p.getPlaneHeight(1), mbRow << 3, 8);
+        copyRow(planeV, strideC, p.getPlaneData(2), p.getPlaneWidth(2), p.getPlaneHeight(2), mbRow << 3, 8);
     }
 
-    private static class SegmentBasedAdjustments {
-        private int[] segmentProbs;
-        private int[] qp;
-        private int[] lf;
-        private int abs;
-
-        public SegmentBasedAdjustments(int[] segmentProbs, int[] qp, int[] lf, int abs) {
-            this.segmentProbs = segmentProbs;
-            this.qp = qp;
-            this.lf = lf;
-            this.abs = abs;
+    private static void copyRow(byte[] src, int srcStride, byte[] dst, int width, int height, int y, int rows) {
+        int end = Math.min(y + rows, height);
+        for (int srcOff = (y + 1) * srcStride + 1, dstOff = y * width; y < end; y++, srcOff += srcStride, dstOff += width) {
+            for (int x = 0; x < width; x++)
+                dst[dstOff + x] = (byte) ((src[srcOff + x] & 0xff) - 128);
         }
     }
 
-    private SegmentBasedAdjustments updateSegmentation(VPXBooleanDecoder headerDecoder) {
-        int updateMBSegmentationMap = headerDecoder.readBitEq();
-        int updateSegmentFeatureData = headerDecoder.readBitEq();
-
-        int[] qp = null;
-        int[] lf = null;
-        int abs = 0;
-        if (updateSegmentFeatureData != 0) {
-            qp = new int[4];
-            lf = new int[4];
-            abs = headerDecoder.readBitEq();
-            for (int i = 0; i < 4; i++) {
-                int quantizerUpdate = headerDecoder.readBitEq();
-                if (quantizerUpdate != 0) {
-                    qp[i] = headerDecoder.decodeInt(7);
-                    qp[i] = headerDecoder.readBitEq() != 0 ? -qp[i] : qp[i];
-                }
-            }
-            for (int i = 0; i < 4; i++) {
-                int loopFilterUpdate = headerDecoder.readBitEq();
-                if (loopFilterUpdate != 0) {
-                    lf[i] = headerDecoder.decodeInt(6);
-                    lf[i] = headerDecoder.readBitEq() != 0 ? -lf[i] : lf[i];
-                }
-            }
+    /**
+     * Reads segmentation header
+     *
+     * @return If the segment map is updated with this frame
+     */
+    private boolean updateSegmentation(VPXBooleanDecoder headerDecoder) {
+        boolean updateMBSegmentationMap = headerDecoder.readBitEq() != 0;
+        boolean updateSegmentFeatureData = headerDecoder.readBitEq() != 0;
+
+        if (updateSegmentFeatureData) {
+            segmentAbs = headerDecoder.readBitEq() != 0;
+            for (int i = 0; i < 4; i++)
+                segmentQuant[i] = headerDecoder.readBitEq() != 0 ? signed(headerDecoder, 7) : 0;
+            for (int i = 0; i < 4; i++)
+                segmentFilterLevel[i] = headerDecoder.readBitEq() != 0 ? signed(headerDecoder, 6) : 0;
         }
-        int[] segmentProbs = new int[3];
-        if (updateMBSegmentationMap != 0) {
-            for (int i = 0; i < 3; i++) {
-                int segmentProbUpdate = headerDecoder.readBitEq();
-                if (segmentProbUpdate != 0)
-                    segmentProbs[i] = headerDecoder.decodeInt(8);
-                else
-                    segmentProbs[i] = 255;
-            }
+        if (updateMBSegmentationMap) {
+            for (int i = 0; i < 3; i++)
+                segmentProbs[i] = headerDecoder.readBitEq() != 0 ? headerDecoder.decodeInt(8) : 255;
         }
-        return new SegmentBasedAdjustments(segmentProbs, qp, lf, abs);
+        return updateMBSegmentationMap;
     }
 
     @UsedViaReflection
@@ -1,12 +1,22 @@
 package org.jcodec.codecs.vpx;
-import static java.lang.System.arraycopy;
-import static org.jcodec.common.tools.MathUtil.clip;
+import static org.jcodec.codecs.vpx.VP8Util.keyFrameYModeProb;
+import static org.jcodec.codecs.vpx.VP8Util.keyFrameYModeTree;
+import static org.jcodec.codecs.vpx.VP8Util.vp8KeyFrameUVModeProb;
+import static org.jcodec.codecs.vpx.VP8Util.vp8UVModeTree;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.B_PRED;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.keyFrameSubblockModeProb;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.subblockModeTree;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
-import org.jcodec.common.ArrayUtil;
+import org.jcodec.common.SharedThreadPool;
 import org.jcodec.common.VideoEncoder;
 import org.jcodec.common.model.ColorSpace;
 import org.jcodec.common.model.Picture;
@@ -15,121 +25,356 @@ import org.jcodec.common.tools.MathUtil;
 /**
  * This class is part of JCodec ( www.jcodec.org ) This software is distributed
  * under FreeBSD License
- * 
+ *
+ * VP8 key frame encoder.
+ *
+ * For every macroblock the luma is coded with the cheapest of the 16x16 modes
+ * and B_PRED (10 subblock modes), the chroma with the cheapest of the 8x8
+ * modes, the cost being the SATD of the residual plus the bits of the mode
+ * weighted by the quantizer. The residual can be split into 1, 2, 4 or 8 token
+ * partitions, the macroblock rows of different partitions are encoded in
+ * parallel as a wavefront. All the frame state is allocated once per frame
+ * size and reused.
+ *
+ * Encoding on one thread the rate control is asked for the segment of every
+ * macroblock right before it's encoded and is told its size right after. When
+ * the rows are encoded in parallel the segments of all the macroblocks are
+ * asked before the frame and the sizes are reported after it, in raster order.
+ *
  * @author The JCodec project
- * 
+ *
  */
 public class VP8Encoder extends VideoEncoder {
 
-    private VPXBitstream bitstream;
-    private byte[][] leftRow;
-    private byte[][] topLine;
-    private VPXQuantizer quantizer;
-    private int[] tmp;
+    /**
+     * The costs of the modes in 1/16 of a bit
+     */
+    static final int[] yModeCost;
+    static final int[] uvModeCost;
+    static final int[][][] subblockModeCost;
+    static {
+        yModeCost = new int[5];
+        for (int i = 0; i < yModeCost.length; i++)
+            yModeCost[i] = treeCost(keyFrameYModeTree, keyFrameYModeProb, i);
+        uvModeCost = new int[4];
+        for (int i = 0; i < uvModeCost.length; i++)
+            uvModeCost[i] = treeCost(vp8UVModeTree, vp8KeyFrameUVModeProb, i);
+        subblockModeCost = new int[10][10][10];
+        for (int a = 0; a < 10; a++)
+            for (int l = 0; l < 10; l++)
+                for (int i = 0; i < 10; i++)
+                    subblockModeCost[a][l][i] = treeCost(subblockModeTree, keyFrameSubblockModeProb[a][l], i);
+    }
+
     private RateControl rc;
+    private int nThreads;
+    private VP8RowEncoder[] rowEncoders;
+    private AtomicInteger nextRow;
+    private volatile boolean aborted;
+    private boolean rcPerMb;
+
+    private VPXBooleanEncoder headerEncoder;
+
+    int mbCols;
+    int mbRows;
+    int strideY;
+    int strideC;
+    byte[] planeY;
+    byte[] planeU;
+    byte[] planeV;
+
+    byte[] segIds;
+    byte[] yModes;
+    byte[] uvModes;
+    byte[] subModes;
+    byte[] mbSkip;
+    int[] mbBits;
+    int[] aboveNz;
+
+    int[] segmentQps;
+    int[] lambdas;
+    Picture source;
+    VPXBitstream bitstream;
+    VPXBooleanEncoder[] partitions;
+    AtomicIntegerArray encoded;
 
-    private ByteBuffer headerBuffer;
-    private ByteBuffer dataBuffer;
-    
     public static VP8Encoder createVP8Encoder(int qp) {
         return new VP8Encoder(new NopRateControl(qp));
     }
-    
+
+    /**
+     * Creates an encoder splitting the residual into 'nPartitions' token
+     * partitions (1, 2, 4 or 8), the partitions are encoded in parallel by up
+     * to 'nThreads' threads.
+     */
+    public static VP8Encoder createVP8Encoder(RateControl rc, int nPartitions, int nThreads) {
+        if (nPartitions != 1 && nPartitions != 2 && nPartitions != 4 && nPartitions != 8)
+            throw new IllegalArgumentException("Unsupported number of token partitions: " + nPartitions);
+        VP8Encoder encoder = new VP8Encoder(rc);
+        encoder.partitions = new VPXBooleanEncoder[nPartitions];
+        encoder.nThreads = Math.max(1, nThreads);
+        return encoder;
+    }
+
     public VP8Encoder(RateControl rc) {
         this.rc = rc;
-        this.tmp = new int[16];
+        this.nThreads = 1;
+        this.partitions = new VPXBooleanEncoder[1];
+        this.nextRow = new AtomicInteger();
     }
 
     @Override
     public EncodedFrame encodeFrame(Picture pic, ByteBuffer _buf) {
         ByteBuffer out = _buf.duplicate();
-        int mbWidth = ((pic.getWidth() + 15) >> 4);
-        int mbHeight = ((pic.getHeight() + 15) >> 4);
-
-        prepareBuffers(mbWidth, mbHeight);
-
-        bitstream = new VPXBitstream(VPXConst.tokenDefaultBinProbs, mbWidth);
-        leftRow = new byte[][] { new byte[16], new byte[8], new byte[8] };
-        topLine = new byte[][] { new byte[mbWidth << 4], new byte[mbWidth << 3], new byte[mbWidth << 3] };
-        initValue(leftRow, (byte)1);
-        initValue(topLine, (byte)-1);
-
-        quantizer = new VPXQuantizer();
-
-        Picture outMB = Picture.create(16, 16, ColorSpace.YUV420);
-
-        int[] segmentQps = rc.getSegmentQps();
-
-        VPXBooleanEncoder boolEnc = new VPXBooleanEncoder(dataBuffer);
-
-        int[] segmentMap = new int[mbWidth * mbHeight];
-
-        // MB residuals
-        for (int mbY = 0, mbAddr = 0; mbY < mbHeight; mbY++) {
-            initValue(leftRow, (byte)1);
-
-            for (int mbX = 0; mbX < mbWidth; mbX++, mbAddr++) {
-
-                int before = boolEnc.position();
-                int segment = rc.getSegment();
-                segmentMap[mbAddr] = segment;
-
-                luma(pic, mbX, mbY, boolEnc, segmentQps[segment], outMB);
-                chroma(pic, mbX, mbY, boolEnc, segmentQps[segment], outMB);
-
-                rc.report(boolEnc.position() - before);
-
-                collectPredictors(outMB, mbX);
-            }
+        initFrameState((pic.getWidth() + 15) >> 4, (pic.getHeight() + 15) >> 4);
+
+        segmentQps = rc.getSegmentQps();
+        if (lambdas == null || lambdas.length < segmentQps.length)
+            lambdas = new int[segmentQps.length];
+        for (int i = 0; i < segmentQps.length; i++)
+            lambdas[i] = Math.max(1, VPXQuantizer.lumaACFactor(segmentQps[i]) * 16 / 6);
+        int nWorkers = Math.min(Math.min(nThreads, partitions.length), mbRows);
+        rcPerMb = nWorkers <= 1;
+        if (!rcPerMb) {
+            for (int i = 0; i < segIds.length; i++)
+                segIds[i] = (byte) rc.getSegment();
         }
-        boolEnc.stop();
-        dataBuffer.flip();
-
-        boolEnc = new VPXBooleanEncoder(headerBuffer);
-        int[] probs = calcSegmentProbs(segmentMap);
-
-        writeHeader2(boolEnc, segmentQps, probs);
-
-        // MB modes
-        for (int mbY = 0, mbAddr = 0; mbY < mbHeight; mbY++) {
-            for (int mbX = 0; mbX < mbWidth; mbX++, mbAddr++) {
-                writeSegmetId(boolEnc, segmentMap[mbAddr], probs);
 
-                // Luma mode DC
-                boolEnc.writeBit(145, 1);
-                boolEnc.writeBit(156, 0);
-                boolEnc.writeBit(163, 0);
+        Arrays.fill(aboveNz, 0);
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i].getBuffer().clear();
+            partitions[i].reset();
+        }
 
-                // Chroma mode DC
-                boolEnc.writeBit(142, 0);
-            }
+        this.source = pic;
+        try {
+            runRows(nWorkers);
+        } finally {
+            this.source = null;
+        }
+        ByteBuffer[] partitionBuffers = new ByteBuffer[partitions.length];
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i].stop();
+            partitionBuffers[i] = partitions[i].getBuffer().duplicate();
+            partitionBuffers[i].flip();
+        }
+        if (!rcPerMb) {
+            for (int i = 0; i < mbBits.length; i++)
+                rc.report(mbBits[i]);
         }
+
+        VPXBooleanEncoder boolEnc = headerEncoder;
+        boolEnc.getBuffer().clear();
+        boolEnc.reset();
+        boolean segmentation = segmentQps.length > 1;
+        int[] segmentProbs = segmentation ? calcSegmentProbs(segIds) : null;
+        int probSkipFalse = calcProbSkipFalse(mbSkip);
+        writeHeader2(boolEnc, segmentQps, segmentProbs, probSkipFalse);
+        writeModes(boolEnc, segmentProbs, probSkipFalse);
         boolEnc.stop();
+        ByteBuffer headerBuffer = boolEnc.getBuffer().duplicate();
         headerBuffer.flip();
 
+        int frameSize = 10 + headerBuffer.remaining() + 3 * (partitions.length - 1);
+        for (int i = 0; i < partitions.length; i++)
+            frameSize += partitionBuffers[i].remaining();
+        if (out.remaining() < frameSize)
+            out = ByteBuffer.allocate(frameSize);
         out.order(ByteOrder.LITTLE_ENDIAN);
         writeHeader(out, pic.getWidth(), pic.getHeight(), headerBuffer.remaining());
         out.put(headerBuffer);
-        out.put(dataBuffer);
+        for (int i = 0; i < partitions.length - 1; i++) {
+            int size = partitionBuffers[i].remaining();
+            out.put((byte) size);
+            out.put((byte) (size >> 8));
+            out.put((byte) (size >> 16));
+        }
+        for (int i = 0; i < partitions.length; i++)
+            out.put(partitionBuffers[i]);
 
         out.flip();
 
         return new EncodedFrame(out, true);
     }
 
-    private void prepareBuffers(int mbWidth, int mbHeight) {
-        int dataBufSize = (mbHeight * mbHeight) << 10;
-        int headerBufSize = 256 + mbWidth * mbHeight;
+    /**
+     * Called by the row encoder before macroblock 'mbAddr' is encoded
+     */
+    void startMB(int mbAddr) {
+        if (rcPerMb)
+            segIds[mbAddr] = (byte) rc.getSegment();
+    }
+
+    /**
+     * Called by the row encoder once the bits of macroblock 'mbAddr' are known
+     */
+    void finishMB(int mbAddr) {
+        if (rcPerMb)
+            rc.report(mbBits[mbAddr]);
+    }
+
+    /**
+     * (Re)allocates the frame state, it's kept between the frames of the same
+     * size
+     */
+    private void initFrameState(int mbCols, int mbRows) {
+        if (planeY != null && this.mbCols == mbCols && this.mbRows == mbRows)
+            return;
+        this.mbCols = mbCols;
+        this.mbRows = mbRows;
+        int mbCount = mbCols * mbRows;
+
+        // Same layout as in the decoder: one pixel border above and to the
+        // left, 4 extra pixels to the right for the above-right prediction
+        strideY = (mbCols << 4) + 5;
+        strideC = (mbCols << 3) + 1;
+        planeY = new byte[strideY * ((mbRows << 4) + 1)];
+        planeU = new byte[strideC * ((mbRows << 3) + 1)];
+        planeV = new byte[strideC * ((mbRows << 3) + 1)];
+        initBorder(planeY, strideY, mbRows << 4);
+        initBorder(planeU, strideC, mbRows << 3);
+        initBorder(planeV, strideC, mbRows << 3);
+
+        segIds = new byte[mbCount];
+        yModes = new byte[mbCount];
+        uvModes = new byte[mbCount];
+        subModes = new byte[mbCount << 4];
+        mbSkip = new byte[mbCount];
+        mbBits = new int[mbCount];
+        aboveNz = new int[mbCols * 9];
+        encoded = new AtomicIntegerArray(mbRows);
+        bitstream = new VPXBitstream(VPXConst.tokenDefaultBinProbs, mbCols);
+
+        int nParts = partitions.length;
+        for (int i = 0; i < nParts; i++) {
+            partitions[i] = VPXBooleanEncoder.createGrowable(partitionBufferSize(mbCols, mbRows, nParts));
+        }
+        headerEncoder = VPXBooleanEncoder.createGrowable(headerBufferSize(mbCount));
+    }
+
+    /**
+     * Initial room for the tokens of the macroblock rows of one partition, 1K
+     * per macroblock. This covers the frames seen in practice, a partition
+     * with more (large DCT_CAT6 tokens at a low qp can take up to 8K per
+     * macroblock) grows its buffer.
+     */
+    private static int partitionBufferSize(int mbCols, int mbRows, int nParts) {
+        int rowsPerPartition = (mbRows + nParts - 1) / nParts;
+        return ((rowsPerPartition * mbCols) << 10) + 64;
+    }
+
+    private static int headerBufferSize(int mbCount) {
+        return 1024 + mbCount * 24;
+    }
+
+    private static void initBorder(byte[] plane, int stride, int height) {
+        Arrays.fill(plane, 0, stride, (byte) 127);
+        for (int i = 0, pos = stride; i < height; i++, pos += stride)
+            plane[pos] = (byte) 129;
+    }
+
+    /**
+     * Encodes all the macroblock rows. Workers grab the rows in order and
+     * synchronize on the progress of the rows above, this is the same code for
+     * the single threaded case where the waits are always satisfied.
+     */
+    private void runRows(int nWorkers) {
+        for (int i = 0; i < mbRows; i++)
+            encoded.set(i, 0);
+        nextRow.set(0);
+        aborted = false;
+
+        if (rowEncoders == null || rowEncoders.length < nWorkers) {
+            VP8RowEncoder[] tmp = new VP8RowEncoder[nWorkers];
+            for (int i = 0; i < nWorkers; i++)
+                tmp[i] = rowEncoders != null && i < rowEncoders.length ? rowEncoders[i] : new VP8RowEncoder(this);
+            rowEncoders = tmp;
+        }
+
+        if (nWorkers <= 1) {
+            new RowWorker(this, rowEncoders[0]).run();
+            return;
+        }
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < nWorkers; i++)
+            futures.add(SharedThreadPool.get().submit(new RowWorker(this, rowEncoders[i])));
+        RuntimeException error = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (Exception e) {
+                if (error == null)
+                    error = new RuntimeException(e);
+            }
+        }
+        if (error != null)
+            throw error;
+    }
+
+    private static final class RowWorker implements Runnable {
+        private VP8Encoder enc;
+        private VP8RowEncoder rowEncoder;
 
-        if (headerBuffer == null || headerBuffer.capacity() < headerBufSize)
-            headerBuffer = ByteBuffer.allocate(headerBufSize);
-        else
-            headerBuffer.clear();
+        private RowWorker(VP8Encoder enc, VP8RowEncoder rowEncoder) {
+            this.enc = enc;
+            this.rowEncoder = rowEncoder;
+        }
+
+        public void run() {
+            try {
+                int mbRow;
+                while ((mbRow = enc.nextRow.getAndIncrement()) < enc.mbRows)
+                    rowEncoder.encodeRow(mbRow);
+            } catch (RuntimeException e) {
+                enc.aborted = true;
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Blocks until the given row has the given number of macroblocks encoded
+     */
+    void waitFor(int mbRow, int value) {
+        while (encoded.get(mbRow) < value) {
+            if (aborted)
+                throw new IllegalStateException("Encoding aborted by another worker");
+            Thread.yield();
+        }
+    }
 
-        if (dataBuffer == null || dataBuffer.capacity() < dataBufSize)
-            dataBuffer = ByteBuffer.allocate(dataBufSize);
-        else
-            dataBuffer.clear();
+    private void writeModes(VPXBooleanEncoder boolEnc, int[] segmentProbs, int probSkipFalse) {
+        for (int mbRow = 0, mbAddr = 0; mbRow < mbRows; mbRow++) {
+            for (int mbCol = 0; mbCol < mbCols; mbCol++, mbAddr++) {
+                if (segmentProbs != null)
+                    writeSegmetId(boolEnc, segIds[mbAddr], segmentProbs);
+                boolEnc.writeBit(probSkipFalse, mbSkip[mbAddr]);
+
+                int lumaMode = yModes[mbAddr];
+                boolEnc.writeTree(keyFrameYModeTree, keyFrameYModeProb, lumaMode);
+                if (lumaMode == B_PRED) {
+                    int sbAddr = mbAddr << 4;
+                    for (int i = 0; i < 16; i++) {
+                        int above, left;
+                        if (i >= 4)
+                            above = subModes[sbAddr + i - 4];
+                        else if (mbRow > 0)
+                            above = subModes[((mbAddr - mbCols) << 4) + 12 + i];
+                        else
+                            above = 0;
+                        if ((i & 3) != 0)
+                            left = subModes[sbAddr + i - 1];
+                        else if (mbCol > 0)
+                            left = subModes[((mbAddr - 1) << 4) + i + 3];
+                        else
+                            left = 0;
+                        boolEnc.writeTree(subblockModeTree, keyFrameSubblockModeProb[above][left],
+                                subModes[sbAddr + i]);
+                    }
+                }
+                boolEnc.writeTree(vp8UVModeTree, vp8KeyFrameUVModeProb, uvModes[mbAddr]);
+            }
+        }
     }
 
     private void writeSegmetId(VPXBooleanEncoder boolEnc, int id, int[] probs) {
@@ -138,7 +383,7 @@ public class VP8Encoder extends VideoEncoder {
         boolEnc.writeBit(probs[1 + bit1], id & 1);
     }
 
-    private int[] calcSegmentProbs(int[] segmentMap) {
+    private int[] calcSegmentProbs(byte[] segmentMap) {
         int[] result = new int[3];
         for (int i = 0; i < segmentMap.length; i++) {
             switch (segmentMap[i]) {
@@ -159,45 +404,48 @@ public class VP8Encoder extends VideoEncoder {
         return result;
     }
 
-    private void initValue(byte[][] leftRow2, byte val) {
-        Arrays.fill(leftRow2[0], val);
-        Arrays.fill(leftRow2[1], val);
-        Arrays.fill(leftRow2[2], val);
+    private static int calcProbSkipFalse(byte[] mbSkip) {
+        int coded = 0;
+        for (int i = 0; i < mbSkip.length; i++)
+            coded += mbSkip[i] ^ 1;
+        return MathUtil.clip((coded << 8) / mbSkip.length, 1, 255);
     }
 
-    private void writeHeader2(VPXBooleanEncoder boolEnc, int[] segmentQps, int[] probs) {
+    private void writeHeader2(VPXBooleanEncoder boolEnc, int[] segmentQps, int[] probs, int probSkipFalse) {
         boolEnc.writeBit(128, 0); // clr_type
         boolEnc.writeBit(128, 0); // clamp_type
-        boolEnc.writeBit(128, 1); // segmentation enabled
+        boolEnc.writeBit(128, probs != null ? 1 : 0); // segmentation enabled
 
-        boolEnc.writeBit(128, 1); // update_mb_segmentation_map
-        boolEnc.writeBit(128, 1); // update_segment_feature_data
+        if (probs != null) {
+            boolEnc.writeBit(128, 1); // update_mb_segmentation_map
+            boolEnc.writeBit(128, 1); // update_segment_feature_data
 
-        boolEnc.writeBit(128, 1); // segment_feature_mode - absolute
+            boolEnc.writeBit(128, 1); // segment_feature_mode - absolute
 
-        for (int i = 0; i < segmentQps.length; i++) {
-            boolEnc.writeBit(128, 1); // quantizer_update
-            writeInt(boolEnc, segmentQps[i], 7); // quantizer_update_value
-            boolEnc.writeBit(128, 0);
-        }
-        for (int i = segmentQps.length; i < 4; i++)
-            boolEnc.writeBit(128, 0); // quantizer_update
+            for (int i = 0; i < segmentQps.length; i++) {
+                boolEnc.writeBit(128, 1); // quantizer_update
+                writeInt(boolEnc, segmentQps[i], 7); // quantizer_update_value
+                boolEnc.writeBit(128, 0);
+            }
+            for (int i = segmentQps.length; i < 4; i++)
+                boolEnc.writeBit(128, 0); // quantizer_update
 
-        boolEnc.writeBit(128, 0); // loop_filter_update
-        boolEnc.writeBit(128, 0); // loop_filter_update
-        boolEnc.writeBit(128, 0); // loop_filter_update
-        boolEnc.writeBit(128, 0); // loop_filter_update
+            boolEnc.writeBit(128, 0); // loop_filter_update
+            boolEnc.writeBit(128, 0); // loop_filter_update
+            boolEnc.writeBit(128, 0); // loop_filter_update
+            boolEnc.writeBit(128, 0); // loop_filter_update
 
-        for (int i = 0; i < 3; i++) {
-            boolEnc.writeBit(128, 1); // segment_prob_update
-            writeInt(boolEnc, probs[i], 8);
+            for (int i = 0; i < 3; i++) {
+                boolEnc.writeBit(128, 1); // segment_prob_update
+                writeInt(boolEnc, probs[i], 8);
+            }
         }
 
         boolEnc.writeBit(128, 0); // filter type
         writeInt(boolEnc, 1, 6); // filter level
         writeInt(boolEnc, 0, 3); // sharpness level
         boolEnc.writeBit(128, 0); // deltas enabled
-        writeInt(boolEnc, 0, 2); // partition type
+        writeInt(boolEnc, Integer.numberOfTrailingZeros(partitions.length), 2); // partition type
         writeInt(boolEnc, segmentQps[0], 7);
         boolEnc.writeBit(128, 0); // y1dc_delta_q
         boolEnc.writeBit(128, 0); // y2dc_delta_q
@@ -216,7 +464,8 @@ public class VP8Encoder extends VideoEncoder {
             }
         }
 
-        boolEnc.writeBit(128, 0); // mb_no_coeff_skip
+        boolEnc.writeBit(128, 1); // mb_no_coeff_skip
+        writeInt(boolEnc, probSkipFalse, 8);
     }
 
     void writeInt(VPXBooleanEncoder boolEnc, int data, int bits) {
@@ -242,233 +491,19 @@ public class VP8Encoder extends VideoEncoder {
         out.putShort((short) height);
     }
 
-    private void collectPredictors(Picture outMB, int mbX) {
-        arraycopy(outMB.getPlaneData(0), 240, topLine[0], mbX << 4, 16);
-        arraycopy(outMB.getPlaneData(1), 56, topLine[1], mbX << 3, 8);
-        arraycopy(outMB.getPlaneData(2), 56, topLine[2], mbX << 3, 8);
-
-        copyCol(outMB.getPlaneData(0), 15, 16, leftRow[0]);
-        copyCol(outMB.getPlaneData(1), 7, 8, leftRow[1]);
-        copyCol(outMB.getPlaneData(2), 7, 8, leftRow[2]);
-    }
-
-    private void copyCol(byte[] planeData, int off, int stride, byte[] out) {
-        for (int i = 0; i < out.length; i++) {
-            out[i] = planeData[off];
-            off += stride;
-        }
-    }
-
-    private void luma(Picture pic, int mbX, int mbY, VPXBooleanEncoder out, int qp, Picture outMB) {
-        int x = mbX << 4;
-        int y = mbY << 4;
-        int[][] ac = transform(pic, 0, qp, x, y);
-        int[] dc = extractDC(ac);
-        writeLumaDC(mbX, mbY, out, qp, dc);
-        writeLumaAC(mbX, mbY, out, ac, qp);
-
-        restorePlaneLuma(dc, ac, qp);
-        putLuma(outMB.getPlaneData(0), lumaDCPred(x, y), ac, 4);
-    }
-
-    private void writeLumaAC(int mbX, int mbY, VPXBooleanEncoder out, int[][] ac, int qp) {
-        for (int i = 0; i < 16; i++) {
-            quantizer.quantizeY(ac[i], qp);
-            bitstream.encodeCoeffsDCT15(out, zigzag(ac[i], tmp), mbX, i & 3, i >> 2);
-        }
-    }
-
-    private void writeLumaDC(int mbX, int mbY, VPXBooleanEncoder out, int qp, int[] dc) {
-        VPXDCT.walsh4x4(dc);
-        quantizer.quantizeY2(dc, qp);
-        bitstream.encodeCoeffsWHT(out, zigzag(dc, tmp), mbX);
-    }
-
-    private void writeChroma(int comp, int mbX, int mbY, VPXBooleanEncoder boolEnc, int[][] ac, int qp) {
-        for (int i = 0; i < 4; i++) {
-            quantizer.quantizeUV(ac[i], qp);
-            bitstream.encodeCoeffsDCTUV(boolEnc, zigzag(ac[i], tmp), comp, mbX, i & 1, i >> 1);
-        }
-    }
-
-    private int[] zigzag(int[] zz, int[] tmp2) {
-        for (int i = 0; i < 16; i++)
-            tmp2[i] = zz[VPXConst.zigzag[i]];
-        return tmp2;
-    }
-
-    private void chroma(Picture pic, int mbX, int mbY, VPXBooleanEncoder boolEnc, int qp, Picture outMB) {
-        int x = mbX << 3;
-        int y = mbY << 3;
-        int chromaPred1 = chromaPredBlk(1, x, y);
-        int chromaPred2 = chromaPredBlk(2, x, y);
-
-        int[][] ac1 = transformChroma(pic, 1, qp, x, y, outMB, chromaPred1);
-        int[][] ac2 = transformChroma(pic, 2, qp, x, y, outMB, chromaPred2);
-
-        writeChroma(1, mbX, mbY, boolEnc, ac1, qp);
-        writeChroma(2, mbX, mbY, boolEnc, ac2, qp);
-
-        restorePlaneChroma(ac1, qp);
-        putChroma(outMB.getData()[1], 1, x, y, ac1, chromaPred1);
-        restorePlaneChroma(ac2, qp);
-        putChroma(outMB.getData()[2], 2, x, y, ac2, chromaPred2);
-    }
-
-    private int[][] transformChroma(Picture pic, int comp, int qp, int x, int y, Picture outMB, int chromaPred) {
-        int[][] ac = new int[4][16];
-
-        for (int blk = 0; blk < ac.length; blk++) {
-
-            int blkOffX = (blk & 1) << 2;
-            int blkOffY = (blk >> 1) << 2;
-            takeSubtract(pic.getPlaneData(comp), pic.getPlaneWidth(comp), pic.getPlaneHeight(comp), x + blkOffX, y
-                    + blkOffY, ac[blk], chromaPred);
-            VPXDCT.fdct4x4(ac[blk]);
-        }
-
-        return ac;
-    }
-
-    private void putChroma(byte[] mb, int comp, int x, int y, int[][] ac, int chromaPred) {
-        for (int blk = 0; blk < 4; blk++)
-            putBlk(mb, chromaPred, ac[blk], 3, (blk & 1) << 2, (blk >> 1) << 2);
-    }
-
-    private final byte chromaPredOne(byte[] pix, int x) {
-        return (byte)((pix[x] + pix[x + 1] + pix[x + 2] + pix[x + 3] + pix[x + 4] + pix[x + 5] + pix[x + 6] + pix[x + 7] + 4) >> 3);
-    }
-
-    private final byte chromaPredTwo(byte[] pix1, byte[] pix2, int x, int y) {
-        return (byte)((pix1[x] + pix1[x + 1] + pix1[x + 2] + pix1[x + 3] + pix1[x + 4] + pix1[x + 5] + pix1[x + 6]
-                + pix1[x + 7] + pix2[y] + pix2[y + 1] + pix2[y + 2] + pix2[y + 3] + pix2[y + 4] + pix2[y + 5]
-                + pix2[y + 6] + pix2[y + 7] + 8) >> 4);
-    }
-
-    private byte chromaPredBlk(int comp, int x, int y) {
-        int predY = y & 0x7;
-        if (x != 0 && y != 0)
-            return chromaPredTwo(leftRow[comp], topLine[comp], predY, x);
-        else if (x != 0)
-            return chromaPredOne(leftRow[comp], predY);
-        else if (y != 0)
-            return chromaPredOne(topLine[comp], x);
-        else
-            return 0;
-    }
-
-    private void putLuma(byte[] planeData, int pred, int[][] ac, int log2stride) {
-        for (int blk = 0; blk < ac.length; blk++) {
-            int blkOffX = (blk & 3) << 2;
-            int blkOffY = blk & ~3;
-            putBlk(planeData, pred, ac[blk], log2stride, blkOffX, blkOffY);
-        }
-    }
-
-    private void putBlk(byte[] planeData, int pred, int[] block, int log2stride, int blkX, int blkY) {
-        int stride = 1 << log2stride;
-        for (int line = 0, srcOff = 0, dstOff = (blkY << log2stride) + blkX; line < 4; line++) {
-            planeData[dstOff] = (byte)(clip(block[srcOff] + pred, -128, 127));
-            planeData[dstOff + 1] = (byte)(clip(block[srcOff + 1] + pred, -128, 127));
-            planeData[dstOff + 2] = (byte)(clip(block[srcOff + 2] + pred, -128, 127));
-            planeData[dstOff + 3] = (byte)(clip(block[srcOff + 3] + pred, -128, 127));
-            srcOff += 4;
-            dstOff += stride;
-        }
-    }
-
-    private void restorePlaneChroma(int[][] ac, int qp) {
-        for (int i = 0; i < 4; i++) {
-            quantizer.dequantizeUV(ac[i], qp);
-            VPXDCT.idct4x4(ac[i]);
-        }
-    }
-
-    private void restorePlaneLuma(int[] dc, int[][] ac, int qp) {
-        quantizer.dequantizeY2(dc, qp);
-        VPXDCT.iwalsh4x4(dc);
-        for (int i = 0; i < 16; i++) {
-            quantizer.dequantizeY(ac[i], qp);
-            ac[i][0] = dc[i];
-            VPXDCT.idct4x4(ac[i]);
-        }
-    }
-
-    private int[] extractDC(int[][] ac) {
-        int[] dc = new int[ac.length];
-        for (int i = 0; i < ac.length; i++) {
-            dc[i] = ac[i][0];
-        }
-        return dc;
-    }
-
-    private byte lumaDCPred(int x, int y) {
-        if (x == 0 && y == 0)
-            return 0;
-
-        if (y == 0)
-            return (byte)((ArrayUtil.sumByte(leftRow[0]) + 8) >> 4);
-        if (x == 0)
-            return (byte)((ArrayUtil.sumByte3(topLine[0], x, 16) + 8) >> 4);
-
-        return (byte)((ArrayUtil.sumByte(leftRow[0]) + ArrayUtil.sumByte3(topLine[0], x, 16) + 16) >> 5);
-    }
-
-    private int[][] transform(Picture pic, int comp, int qp, int x, int y) {
-        int dcc = lumaDCPred(x, y);
-
-        int[][] ac = new int[16][16];
-        for (int i = 0; i < ac.length; i++) {
-            int[] coeff = ac[i];
-            int blkOffX = (i & 3) << 2;
-            int blkOffY = i & ~3;
-            takeSubtract(pic.getPlaneData(comp), pic.getPlaneWidth(comp), pic.getPlaneHeight(comp), x + blkOffX, y
-                    + blkOffY, coeff, dcc);
-            VPXDCT.fdct4x4(coeff);
-        }
-        return ac;
-    }
-
-    private final void takeSubtract(byte[] planeData, int planeWidth, int planeHeight, int x, int y, int[] coeff, int dc) {
-        if (x + 4 < planeWidth && y + 4 < planeHeight)
-            takeSubtractSafe(planeData, planeWidth, planeHeight, x, y, coeff, dc);
-        else
-            takeSubtractUnsafe(planeData, planeWidth, planeHeight, x, y, coeff, dc);
-
-    }
-
-    private final void takeSubtractSafe(byte[] planeData, int planeWidth, int planeHeight, int x, int y, int[] coeff,
-            int dc) {
-        for (int i = 0, srcOff = y * planeWidth + x, dstOff = 0; i < 4; i++, srcOff += planeWidth, dstOff += 4) {
-            coeff[dstOff] = planeData[srcOff] - dc;
-            coeff[dstOff + 1] = planeData[srcOff + 1] - dc;
-            coeff[dstOff + 2] = planeData[srcOff + 2] - dc;
-            coeff[dstOff + 3] = planeData[srcOff + 3] - dc;
-        }
-    }
-
-    private final void takeSubtractUnsafe(byte[] planeData, int planeWidth, int planeHeight, int x, int y, int[] coeff,
-            int dc) {
-        int outOff = 0;
-
-        int i;
-        for (i = y; i < Math.min(y + 4, planeHeight); i++) {
-            int off = i * planeWidth + Math.min(x, planeWidth);
-            int j;
-            for (j = x; j < Math.min(x + 4, planeWidth); j++)
-                coeff[outOff++] = planeData[off++] - dc;
-            --off;
-            for (; j < x + 4; j++)
-                coeff[outOff++] = planeData[off] - dc;
-        }
-        for (; i < y + 4; i++) {
-            int off = planeHeight * planeWidth - planeWidth + Math.min(x, planeWidth);
-            int j;
-            for (j = x; j < Math.min(x + 4, planeWidth); j++)
-                coeff[outOff++] = planeData[off++] - dc;
-            --off;
-            for (; j < x + 4; j++)
-                coeff[outOff++] = planeData[off] - dc;
+    /**
+     * Cost of coding the leaf 'value' of the tree in 1/16 of a bit
+     */
+    static int treeCost(int[] tree, int[] probs, int value) {
+        int cost = 0;
+        int i = 0;
+        while (true) {
+            int bit = VPXBooleanEncoder.inSubtree(tree, tree[i], value) ? 0 : 1;
+            int prob = bit == 0 ? probs[i >> 1] : 256 - probs[i >> 1];
+            cost += (int) Math.round(-16 * Math.log(prob / 256.0) / Math.log(2));
+            i = tree[i + bit];
+            if (i <= 0)
+                return cost;
         }
     }
 
@@ -479,6 +514,12 @@ public class VP8Encoder extends VideoEncoder {
 
     @Override
     public int estimateBufferSize(Picture frame) {
-        return frame.getWidth() * frame.getHeight() / 2;
-    }
-}
\ No newline at end of file
+        // Enough for the frames seen in practice, a frame that doesn't fit
+        // into the buffer passed to encodeFrame is returned in a new one
+        int mbCols = (frame.getWidth() + 15) >> 4;
+        int mbRows = (frame.getHeight() + 15) >> 4;
+        int nParts = partitions.length;
+        return 10 + headerBufferSize(mbCols * mbRows) + 3 * (nParts - 1)
+                + nParts * partitionBufferSize(mbCols, mbRows, nParts);
+    }
+}
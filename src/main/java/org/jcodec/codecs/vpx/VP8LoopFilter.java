@@ -0,0 +1,213 @@
+package org.jcodec.codecs.vpx;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * VP8 loop filter operating in place on the unsigned reconstructed planes
+ *
+ * @see http://tools.ietf.org/html/rfc6386#section-15
+ *
+ * @author The JCodec project
+ *
+ */
+public class VP8LoopFilter {
+
+    /**
+     * Filters one macroblock with the normal loop filter. The edges are
+     * processed in the spec order: left macroblock edge, inner vertical
+     * edges, top macroblock edge, inner horizontal edges.
+     *
+     * @param level
+     *            Filter level of this macroblock, 0 means no filtering
+     * @param inner
+     *            If inner (subblock) edges should be filtered
+     */
+    public static void filterMBNormal(byte[] y, byte[] u, byte[] v, int posY, int strideY, int posC, int strideC,
+            int level, int sharpness, boolean left, boolean top, boolean inner, boolean keyFrame) {
+        if (level == 0)
+            return;
+        int interior = interiorLimit(level, sharpness);
+        int hevThresh = hevThreshold(level, keyFrame);
+        int mbEdge = ((level + 2) * 2) + interior;
+        int subEdge = (level * 2) + interior;
+
+        if (left) {
+            mbEdge(y, posY, 1, strideY, 16, mbEdge, interior, hevThresh);
+            mbEdge(u, posC, 1, strideC, 8, mbEdge, interior, hevThresh);
+            mbEdge(v, posC, 1, strideC, 8, mbEdge, interior, hevThresh);
+        }
+        if (inner) {
+            subEdge(y, posY + 4, 1, strideY, 16, subEdge, interior, hevThresh);
+            subEdge(y, posY + 8, 1, strideY, 16, subEdge, interior, hevThresh);
+            subEdge(y, posY + 12, 1, strideY, 16, subEdge, interior, hevThresh);
+            subEdge(u, posC + 4, 1, strideC, 8, subEdge, interior, hevThresh);
+            subEdge(v, posC + 4, 1, strideC, 8, subEdge, interior, hevThresh);
+        }
+        if (top) {
+            mbEdge(y, posY, strideY, 1, 16, mbEdge, interior, hevThresh);
+            mbEdge(u, posC, strideC, 1, 8, mbEdge, interior, hevThresh);
+            mbEdge(v, posC, strideC, 1, 8, mbEdge, interior, hevThresh);
+        }
+        if (inner) {
+            subEdge(y, posY + 4 * strideY, strideY, 1, 16, subEdge, interior, hevThresh);
+            subEdge(y, posY + 8 * strideY, strideY, 1, 16, subEdge, interior, hevThresh);
+            subEdge(y, posY + 12 * strideY, strideY, 1, 16, subEdge, interior, hevThresh);
+            subEdge(u, posC + 4 * strideC, strideC, 1, 8, subEdge, interior, hevThresh);
+            subEdge(v, posC + 4 * strideC, strideC, 1, 8, subEdge, interior, hevThresh);
+        }
+    }
+
+    /**
+     * Filters luma of one macroblock with the simple loop filter, chroma is
+     * left untouched by this filter type.
+     */
+    public static void filterMBSimple(byte[] y, int posY, int strideY, int level, int sharpness, boolean left,
+            boolean top, boolean inner) {
+        if (level == 0)
+            return;
+        int interior = interiorLimit(level, sharpness);
+        int mbEdge = ((level + 2) * 2) + interior;
+        int subEdge = (level * 2) + interior;
+
+        if (left)
+            simpleEdge(y, posY, 1, strideY, mbEdge);
+        if (inner) {
+            simpleEdge(y, posY + 4, 1, strideY, subEdge);
+            simpleEdge(y, posY + 8, 1, strideY, subEdge);
+            simpleEdge(y, posY + 12, 1, strideY, subEdge);
+        }
+        if (top)
+            simpleEdge(y, posY, strideY, 1, mbEdge);
+        if (inner) {
+            simpleEdge(y, posY + 4 * strideY, strideY, 1, subEdge);
+            simpleEdge(y, posY + 8 * strideY, strideY, 1, subEdge);
+            simpleEdge(y, posY + 12 * strideY, strideY, 1, subEdge);
+        }
+    }
+
+    static int interiorLimit(int level, int sharpness) {
+        int interior = level;
+        if (sharpness != 0) {
+            interior >>= sharpness > 4 ? 2 : 1;
+            if (interior > 9 - sharpness)
+                interior = 9 - sharpness;
+        }
+        return interior == 0 ? 1 : interior;
+    }
+
+    static int hevThreshold(int level, boolean keyFrame) {
+        if (keyFrame)
+            return level >= 40 ? 2 : (level >= 15 ? 1 : 0);
+        return level >= 40 ? 3 : (level >= 20 ? 2 : (level >= 15 ? 1 : 0));
+    }
+
+    /**
+     * Filters 'count' pixel segments crossing an edge.
+     *
+     * @param pos
+     *            Position of the first pixel after the edge (q0)
+     * @param step
+     *            Distance between two pixels of the segment, i.e. 1 for a
+     *            vertical edge and stride for a horizontal one
+     * @param next
+     *            Distance between two segments
+     */
+    private static void mbEdge(byte[] p, int pos, int step, int next, int count, int edge, int interior, int hevThresh) {
+        for (int i = 0; i < count; i++, pos += next) {
+            int p3 = p[pos - 4 * step] & 0xff, p2 = p[pos - 3 * step] & 0xff;
+            int p1 = p[pos - 2 * step] & 0xff, p0 = p[pos - step] & 0xff;
+            int q0 = p[pos] & 0xff, q1 = p[pos + step] & 0xff;
+            int q2 = p[pos + 2 * step] & 0xff, q3 = p[pos + 3 * step] & 0xff;
+            if (!filterYes(interior, edge, p3, p2, p1, p0, q0, q1, q2, q3))
+                continue;
+            if (hev(hevThresh, p1, p0, q0, q1)) {
+                commonAdjust(p, pos, step, true);
+            } else {
+                p2 -= 128;
+                p1 -= 128;
+                p0 -= 128;
+                q0 -= 128;
+                q1 -= 128;
+                q2 -= 128;
+                int w = clamp(clamp(p1 - q1) + 3 * (q0 - p0));
+
+                int a = clamp((27 * w + 63) >> 7);
+                p[pos] = s2u(q0 - a);
+                p[pos - step] = s2u(p0 + a);
+
+                a = clamp((18 * w + 63) >> 7);
+                p[pos + step] = s2u(q1 - a);
+                p[pos - 2 * step] = s2u(p1 + a);
+
+                a = clamp((9 * w + 63) >> 7);
+                p[pos + 2 * step] = s2u(q2 - a);
+                p[pos - 3 * step] = s2u(p2 + a);
+            }
+        }
+    }
+
+    private static void subEdge(byte[] p, int pos, int step, int next, int count, int edge, int interior,
+            int hevThresh) {
+        for (int i = 0; i < count; i++, pos += next) {
+            int p3 = p[pos - 4 * step] & 0xff, p2 = p[pos - 3 * step] & 0xff;
+            int p1 = p[pos - 2 * step] & 0xff, p0 = p[pos - step] & 0xff;
+            int q0 = p[pos] & 0xff, q1 = p[pos + step] & 0xff;
+            int q2 = p[pos + 2 * step] & 0xff, q3 = p[pos + 3 * step] & 0xff;
+            if (!filterYes(interior, edge, p3, p2, p1, p0, q0, q1, q2, q3))
+                continue;
+            boolean hev = hev(hevThresh, p1, p0, q0, q1);
+            int a = (commonAdjust(p, pos, step, hev) + 1) >> 1;
+            if (!hev) {
+                p[pos + step] = s2u(q1 - 128 - a);
+                p[pos - 2 * step] = s2u(p1 - 128 + a);
+            }
+        }
+    }
+
+    private static void simpleEdge(byte[] p, int pos, int step, int next, int edge) {
+        for (int i = 0; i < 16; i++, pos += next) {
+            int p1 = p[pos - 2 * step] & 0xff, p0 = p[pos - step] & 0xff;
+            int q0 = p[pos] & 0xff, q1 = p[pos + step] & 0xff;
+            if (Math.abs(p0 - q0) * 2 + (Math.abs(p1 - q1) >> 1) <= edge)
+                commonAdjust(p, pos, step, true);
+        }
+    }
+
+    private static int commonAdjust(byte[] p, int pos, int step, boolean useOuterTaps) {
+        int p1 = (p[pos - 2 * step] & 0xff) - 128;
+        int p0 = (p[pos - step] & 0xff) - 128;
+        int q0 = (p[pos] & 0xff) - 128;
+        int q1 = (p[pos + step] & 0xff) - 128;
+
+        int a = clamp((useOuterTaps ? clamp(p1 - q1) : 0) + 3 * (q0 - p0));
+        int b = clamp(a + 3) >> 3;
+        a = clamp(a + 4) >> 3;
+        p[pos] = s2u(q0 - a);
+        p[pos - step] = s2u(p0 + b);
+        return a;
+    }
+
+    private static boolean filterYes(int interior, int edge, int p3, int p2, int p1, int p0, int q0, int q1, int q2,
+            int q3) {
+        return Math.abs(p0 - q0) * 2 + (Math.abs(p1 - q1) >> 1) <= edge && Math.abs(p3 - p2) <= interior
+                && Math.abs(p2 - p1) <= interior && Math.abs(p1 - p0) <= interior
+                && Math.abs(q3 - q2) <= interior && Math.abs(q2 - q1) <= interior
+                && Math.abs(q1 - q0) <= interior;
+    }
+
+    private static boolean hev(int thresh, int p1, int p0, int q0, int q1) {
+        return Math.abs(p1 - p0) > thresh || Math.abs(q1 - q0) > thresh;
+    }
+
+    private static int clamp(int v) {
+        return v < -128 ? -128 : (v > 127 ? 127 : v);
+    }
+
+    /**
+     * Clamps the signed value and converts it back to pixel value
+     */
+    private static byte s2u(int v) {
+        return (byte) (clamp(v) + 128);
+    }
+}
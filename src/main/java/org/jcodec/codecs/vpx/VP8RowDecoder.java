@@ -0,0 +1,461 @@
+package org.jcodec.codecs.vpx;
+
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.B_DC_PRED;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.B_HD_PRED;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.B_HE_PRED;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.B_HU_PRED;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.B_LD_PRED;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.B_PRED;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.B_RD_PRED;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.B_TM_PRED;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.B_VE_PRED;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.B_VL_PRED;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.B_VR_PRED;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.DC_PRED;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.H_PRED;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.Pcat1;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.Pcat2;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.Pcat3;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.Pcat4;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.Pcat5;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.Pcat6;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.TM_PRED;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.V_PRED;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.vp8CoefBands;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.vp8defaultZigZag1d;
+
+import java.util.Arrays;
+
+import org.jcodec.codecs.vpx.VP8Util.QuantizationParams;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * Decodes residual tokens and reconstructs one macroblock row at a time
+ * straight into the frame planes of the VP8Decoder. Each worker thread owns
+ * one instance, all the per-macroblock scratch state lives in flat arrays
+ * that are reused from one macroblock (and one frame) to the next.
+ *
+ * @author The JCodec project
+ *
+ */
+class VP8RowDecoder {
+    private static final int Y2 = 24;
+
+    private VP8Decoder frame;
+
+    /**
+     * Dequantized coefficients: 16 Y blocks, 4 U, 4 V and Y2, each 16
+     * coefficients in raster order. Every block is zeroed right after it was
+     * added to the prediction.
+     */
+    private int[] coeffs;
+    private int[] eobs;
+    private int[] leftNz;
+
+    public VP8RowDecoder(VP8Decoder frame) {
+        this.frame = frame;
+        this.coeffs = new int[25 * 16];
+        this.eobs = new int[25];
+        this.leftNz = new int[9];
+    }
+
+    /**
+     * Decodes the residual and reconstructs the macroblock row. Row 'mbRow'
+     * is read from token partition 'mbRow % partitions' and may proceed at
+     * macroblock 'mbCol' as soon as the row above has reconstructed
+     * macroblock 'mbCol + 1'.
+     */
+    public void decodeRow(int mbRow) {
+        VP8Decoder f = frame;
+        int mbCols = f.mbCols;
+        int nParts = f.partitions.length;
+        if (mbRow >= nParts)
+            f.waitFor(f.decoded, mbRow - nParts, mbCols);
+        VPXBooleanDecoder bd = f.partitions[mbRow % nParts];
+
+        Arrays.fill(leftNz, 0);
+        for (int mbCol = 0, mbAddr = mbRow * mbCols; mbCol < mbCols; mbCol++, mbAddr++) {
+            if (mbRow > 0)
+                f.waitFor(f.decoded, mbRow - 1, Math.min(mbCol + 2, mbCols));
+
+            boolean coded = f.mbSkip[mbAddr] == 0 ? decodeTokens(bd, mbAddr, mbCol) : skipTokens(mbAddr, mbCol);
+            f.mbInnerFilter[mbAddr] = (byte) (coded || f.yModes[mbAddr] == B_PRED ? 1 : 0);
+
+            reconstruct(mbRow, mbCol, mbAddr);
+
+            if (mbCol == mbCols - 1)
+                extendAboveRight(mbRow);
+            f.decoded.set(mbRow, mbCol + 1);
+        }
+    }
+
+    /**
+     * The rightmost macroblock of the next row uses the last pixel of this row
+     * as its above-right predictor
+     */
+    private void extendAboveRight(int mbRow) {
+        VP8Decoder f = frame;
+        int pos = (mbRow * 16 + 16) * f.strideY + f.mbCols * 16 + 1;
+        byte last = f.planeY[pos - 1];
+        f.planeY[pos] = f.planeY[pos + 1] = f.planeY[pos + 2] = f.planeY[pos + 3] = last;
+    }
+
+    private boolean skipTokens(int mbAddr, int mbCol) {
+        int[] aboveNz = frame.aboveNz;
+        int above = mbCol * 9;
+        boolean hasY2 = frame.yModes[mbAddr] != B_PRED;
+        for (int i = 0; i < 8; i++) {
+            aboveNz[above + i] = 0;
+            leftNz[i] = 0;
+        }
+        if (hasY2) {
+            aboveNz[above + 8] = 0;
+            leftNz[8] = 0;
+        }
+        Arrays.fill(eobs, 0);
+        return false;
+    }
+
+    private boolean decodeTokens(VPXBooleanDecoder bd, int mbAddr, int mbCol) {
+        VP8Decoder f = frame;
+        int[] aboveNz = f.aboveNz;
+        int above = mbCol * 9;
+        QuantizationParams q = f.quants[f.segmentationEnabled ? f.segIds[mbAddr] : 0];
+        int[][][][] probs = f.coefProbs;
+        boolean nonzero = false;
+
+        int firstY = 0;
+        int[][][] yProbs = probs[3];
+        if (f.yModes[mbAddr] != B_PRED) {
+            int ctx = aboveNz[above + 8] + leftNz[8];
+            int eob = decodeBlock(bd, probs[1], ctx, 0, Y2 << 4, q.y2DC, q.y2AC);
+            eobs[Y2] = eob;
+            aboveNz[above + 8] = leftNz[8] = eob > 0 ? 1 : 0;
+            nonzero |= eob > 0;
+            firstY = 1;
+            yProbs = probs[0];
+        } else {
+            eobs[Y2] = 0;
+        }
+
+        for (int blk = 0; blk < 16; blk++) {
+            int bx = blk & 3, by = blk >> 2;
+            int ctx = aboveNz[above + bx] + leftNz[by];
+            int eob = decodeBlock(bd, yProbs, ctx, firstY, blk << 4, q.yDC, q.yAC);
+            eobs[blk] = eob;
+            aboveNz[above + bx] = leftNz[by] = eob > firstY ? 1 : 0;
+            nonzero |= eob > firstY;
+        }
+
+        for (int blk = 16; blk < 24; blk++) {
+            int plane = 4 + (((blk - 16) >> 2) << 1);
+            int bx = plane + (blk & 1), by = plane + ((blk >> 1) & 1);
+            int ctx = aboveNz[above + bx] + leftNz[by];
+            int eob = decodeBlock(bd, probs[2], ctx, 0, blk << 4, q.chromaDC, q.chromaAC);
+            eobs[blk] = eob;
+            aboveNz[above + bx] = leftNz[by] = eob > 0 ? 1 : 0;
+            nonzero |= eob > 0;
+        }
+        return nonzero;
+    }
+
+    /**
+     * Reads the tokens of one 4x4 block storing the dequantized coefficients
+     * in raster order
+     *
+     * @return Index of the position following the last decoded token
+     */
+    private int decodeBlock(VPXBooleanDecoder bd, int[][][] probs, int ctx, int i, int off, int dcq, int acq) {
+        int[] p = probs[vp8CoefBands[i]][ctx];
+        if (bd.readBit(p[0]) == 0)
+            return i;
+        while (true) {
+            if (bd.readBit(p[1]) == 0) {
+                // DCT_0, no EOB may follow
+                if (++i == 16)
+                    return 16;
+                p = probs[vp8CoefBands[i]][0];
+                continue;
+            }
+            int v;
+            int next;
+            if (bd.readBit(p[2]) == 0) {
+                v = 1;
+                next = 1;
+            } else {
+                if (bd.readBit(p[3]) == 0) {
+                    if (bd.readBit(p[4]) == 0)
+                        v = 2;
+                    else
+                        v = 3 + bd.readBit(p[5]);
+                } else if (bd.readBit(p[6]) == 0) {
+                    if (bd.readBit(p[7]) == 0)
+                        v = 5 + extraBits(bd, Pcat1);
+                    else
+                        v = 7 + extraBits(bd, Pcat2);
+                } else if (bd.readBit(p[8]) == 0) {
+                    if (bd.readBit(p[9]) == 0)
+                        v = 11 + extraBits(bd, Pcat3);
+                    else
+                        v = 19 + extraBits(bd, Pcat4);
+                } else {
+                    if (bd.readBit(p[10]) == 0)
+                        v = 35 + extraBits(bd, Pcat5);
+                    else
+                        v = 67 + extraBits(bd, Pcat6);
+                }
+                next = 2;
+            }
+            if (bd.readBitEq() != 0)
+                v = -v;
+            coeffs[off + vp8defaultZigZag1d[i]] = v * (i > 0 ? acq : dcq);
+
+            if (++i == 16)
+                return 16;
+            p = probs[vp8CoefBands[i]][next];
+            if (bd.readBit(p[0]) == 0)
+                return i;
+        }
+    }
+
+    private static int extraBits(VPXBooleanDecoder bd, int[] cat) {
+        int v = 0;
+        for (int i = 0; cat[i] > 0; i++)
+            v += v + bd.readBit(cat[i]);
+        return v;
+    }
+
+    private void reconstruct(int mbRow, int mbCol, int mbAddr) {
+        VP8Decoder f = frame;
+        byte[] y = f.planeY;
+        int sy = f.strideY;
+        int posY = (mbRow * 16 + 1) * sy + mbCol * 16 + 1;
+        int yMode = f.yModes[mbAddr];
+        if (yMode == B_PRED) {
+            int aboveRightMB = posY - sy + 16;
+            for (int blk = 0, sbAddr = mbAddr << 4; blk < 16; blk++, sbAddr++) {
+                int bx = blk & 3, by = blk >> 2;
+                int pos = posY + (by << 2) * sy + (bx << 2);
+                int aboveRight = bx == 3 && by > 0 ? aboveRightMB : pos - sy + 4;
+                predict4x4(f.subModes[sbAddr], y, pos, sy, aboveRight);
+                addBlock(blk, y, pos, sy);
+            }
+        } else {
+            predictBlock(yMode, y, posY, sy, 4, mbRow > 0, mbCol > 0);
+            if (eobs[Y2] > 0) {
+                int off = Y2 << 4;
+                VPXDCT.iwalsh4x4(coeffs, off);
+                for (int blk = 0; blk < 16; blk++) {
+                    coeffs[blk << 4] = coeffs[off + blk];
+                    coeffs[off + blk] = 0;
+                }
+            }
+            for (int blk = 0; blk < 16; blk++)
+                addBlock(blk, y, posY + ((blk >> 2) << 2) * sy + ((blk & 3) << 2), sy);
+        }
+
+        int sc = f.strideC;
+        int posC = (mbRow * 8 + 1) * sc + mbCol * 8 + 1;
+        int uvMode = f.uvModes[mbAddr];
+        predictBlock(uvMode, f.planeU, posC, sc, 3, mbRow > 0, mbCol > 0);
+        predictBlock(uvMode, f.planeV, posC, sc, 3, mbRow > 0, mbCol > 0);
+        for (int blk = 0; blk < 4; blk++) {
+            int pos = posC + ((blk >> 1) << 2) * sc + ((blk & 1) << 2);
+            addBlock(16 + blk, f.planeU, pos, sc);
+            addBlock(20 + blk, f.planeV, pos, sc);
+        }
+    }
+
+    /**
+     * Adds the residual of the block to the prediction, DC only blocks skip
+     * the transform
+     */
+    private void addBlock(int blk, byte[] p, int pos, int stride) {
+        int off = blk << 4;
+        if (eobs[blk] > 1) {
+            VPXDCT.idct4x4(coeffs, off);
+            for (int i = 0; i < 4; i++, pos += stride, off += 4) {
+                p[pos] = clip255((p[pos] & 0xff) + coeffs[off]);
+                p[pos + 1] = clip255((p[pos + 1] & 0xff) + coeffs[off + 1]);
+                p[pos + 2] = clip255((p[pos + 2] & 0xff) + coeffs[off + 2]);
+                p[pos + 3] = clip255((p[pos + 3] & 0xff) + coeffs[off + 3]);
+            }
+            Arrays.fill(coeffs, blk << 4, (blk << 4) + 16, 0);
+        } else if (coeffs[off] != 0) {
+            int dc = (coeffs[off] + 4) >> 3;
+            coeffs[off] = 0;
+            for (int i = 0; i < 4; i++, pos += stride) {
+                p[pos] = clip255((p[pos] & 0xff) + dc);
+                p[pos + 1] = clip255((p[pos + 1] & 0xff) + dc);
+                p[pos + 2] = clip255((p[pos + 2] & 0xff) + dc);
+                p[pos + 3] = clip255((p[pos + 3] & 0xff) + dc);
+            }
+        }
+    }
+
+    /**
+     * Whole block (16x16 luma or 8x8 chroma) intra prediction. Pixels outside
+     * of the frame come from the plane borders (127 above, 129 to the left),
+     * DC prediction uses only the available edges.
+     */
+    static void predictBlock(int mode, byte[] p, int pos, int stride, int log2Size, boolean haveAbove,
+            boolean haveLeft) {
+        int size = 1 << log2Size;
+        int above = pos - stride;
+        switch (mode) {
+        case DC_PRED: {
+            int dc = 128;
+            int sum = 0;
+            if (haveAbove)
+                for (int i = 0; i < size; i++)
+                    sum += p[above + i] & 0xff;
+            if (haveLeft)
+                for (int i = 0, l = pos - 1; i < size; i++, l += stride)
+                    sum += p[l] & 0xff;
+            if (haveAbove && haveLeft)
+                dc = (sum + size) >> (log2Size + 1);
+            else if (haveAbove || haveLeft)
+                dc = (sum + (size >> 1)) >> log2Size;
+            byte v = (byte) dc;
+            for (int j = 0; j < size; j++, pos += stride)
+                Arrays.fill(p, pos, pos + size, v);
+            break;
+        }
+        case V_PRED:
+            for (int j = 0; j < size; j++, pos += stride)
+                System.arraycopy(p, above, p, pos, size);
+            break;
+        case H_PRED:
+            for (int j = 0; j < size; j++, pos += stride)
+                Arrays.fill(p, pos, pos + size, p[pos - 1]);
+            break;
+        case TM_PRED: {
+            int aboveLeft = p[above - 1] & 0xff;
+            for (int j = 0; j < size; j++, pos += stride) {
+                int l = (p[pos - 1] & 0xff) - aboveLeft;
+                for (int i = 0; i < size; i++)
+                    p[pos + i] = clip255(l + (p[above + i] & 0xff));
+            }
+            break;
+        }
+        default:
+            throw new IllegalStateException("Unknown intra prediction mode: " + mode);
+        }
+    }
+
+    static void predict4x4(int mode, byte[] p, int pos, int stride, int aboveRight) {
+        int above = pos - stride;
+        int P = p[above - 1] & 0xff;
+        int a0 = p[above] & 0xff, a1 = p[above + 1] & 0xff, a2 = p[above + 2] & 0xff, a3 = p[above + 3] & 0xff;
+        int a4 = p[aboveRight] & 0xff, a5 = p[aboveRight + 1] & 0xff, a6 = p[aboveRight + 2] & 0xff;
+        int a7 = p[aboveRight + 3] & 0xff;
+        int l0 = p[pos - 1] & 0xff, l1 = p[pos + stride - 1] & 0xff, l2 = p[pos + 2 * stride - 1] & 0xff;
+        int l3 = p[pos + 3 * stride - 1] & 0xff;
+        int s2 = stride << 1, s3 = s2 + stride;
+
+        switch (mode) {
+        case B_DC_PRED: {
+            int v = (a0 + a1 + a2 + a3 + l0 + l1 + l2 + l3 + 4) >> 3;
+            put(p, pos, v, v, v, v);
+            put(p, pos + stride, v, v, v, v);
+            put(p, pos + s2, v, v, v, v);
+            put(p, pos + s3, v, v, v, v);
+            break;
+        }
+        case B_TM_PRED:
+            putTM(p, pos, l0 - P, a0, a1, a2, a3);
+            putTM(p, pos + stride, l1 - P, a0, a1, a2, a3);
+            putTM(p, pos + s2, l2 - P, a0, a1, a2, a3);
+            putTM(p, pos + s3, l3 - P, a0, a1, a2, a3);
+            break;
+        case B_VE_PRED: {
+            int c0 = avg3(P, a0, a1), c1 = avg3(a0, a1, a2), c2 = avg3(a1, a2, a3), c3 = avg3(a2, a3, a4);
+            put(p, pos, c0, c1, c2, c3);
+            put(p, pos + stride, c0, c1, c2, c3);
+            put(p, pos + s2, c0, c1, c2, c3);
+            put(p, pos + s3, c0, c1, c2, c3);
+            break;
+        }
+        case B_HE_PRED: {
+            int r0 = avg3(P, l0, l1), r1 = avg3(l0, l1, l2), r2 = avg3(l1, l2, l3), r3 = avg3(l2, l3, l3);
+            put(p, pos, r0, r0, r0, r0);
+            put(p, pos + stride, r1, r1, r1, r1);
+            put(p, pos + s2, r2, r2, r2, r2);
+            put(p, pos + s3, r3, r3, r3, r3);
+            break;
+        }
+        case B_LD_PRED: {
+            int d0 = avg3(a0, a1, a2), d1 = avg3(a1, a2, a3), d2 = avg3(a2, a3, a4), d3 = avg3(a3, a4, a5);
+            int d4 = avg3(a4, a5, a6), d5 = avg3(a5, a6, a7), d6 = avg3(a6, a7, a7);
+            put(p, pos, d0, d1, d2, d3);
+            put(p, pos + stride, d1, d2, d3, d4);
+            put(p, pos + s2, d2, d3, d4, d5);
+            put(p, pos + s3, d3, d4, d5, d6);
+            break;
+        }
+        case B_RD_PRED: {
+            int d0 = avg3(l3, l2, l1), d1 = avg3(l2, l1, l0), d2 = avg3(l1, l0, P), d3 = avg3(l0, P, a0);
+            int d4 = avg3(P, a0, a1), d5 = avg3(a0, a1, a2), d6 = avg3(a1, a2, a3);
+            put(p, pos, d3, d4, d5, d6);
+            put(p, pos + stride, d2, d3, d4, d5);
+            put(p, pos + s2, d1, d2, d3, d4);
+            put(p, pos + s3, d0, d1, d2, d3);
+            break;
+        }
+        case B_VR_PRED:
+            put(p, pos, avg2(P, a0), avg2(a0, a1), avg2(a1, a2), avg2(a2, a3));
+            put(p, pos + stride, avg3(l0, P, a0), avg3(P, a0, a1), avg3(a0, a1, a2), avg3(a1, a2, a3));
+            put(p, pos + s2, avg3(l1, l0, P), avg2(P, a0), avg2(a0, a1), avg2(a1, a2));
+            put(p, pos + s3, avg3(l2, l1, l0), avg3(l0, P, a0), avg3(P, a0, a1), avg3(a0, a1, a2));
+            break;
+        case B_VL_PRED:
+            put(p, pos, avg2(a0, a1), avg2(a1, a2), avg2(a2, a3), avg2(a3, a4));
+            put(p, pos + stride, avg3(a0, a1, a2), avg3(a1, a2, a3), avg3(a2, a3, a4), avg3(a3, a4, a5));
+            put(p, pos + s2, avg2(a1, a2), avg2(a2, a3), avg2(a3, a4), avg3(a4, a5, a6));
+            put(p, pos + s3, avg3(a1, a2, a3), avg3(a2, a3, a4), avg3(a3, a4, a5), avg3(a5, a6, a7));
+            break;
+        case B_HD_PRED:
+            put(p, pos, avg2(l0, P), avg3(l0, P, a0), avg3(P, a0, a1), avg3(a0, a1, a2));
+            put(p, pos + stride, avg2(l1, l0), avg3(l1, l0, P), avg2(l0, P), avg3(l0, P, a0));
+            put(p, pos + s2, avg2(l2, l1), avg3(l2, l1, l0), avg2(l1, l0), avg3(l1, l0, P));
+            put(p, pos + s3, avg2(l3, l2), avg3(l3, l2, l1), avg2(l2, l1), avg3(l2, l1, l0));
+            break;
+        case B_HU_PRED:
+            put(p, pos, avg2(l0, l1), avg3(l0, l1, l2), avg2(l1, l2), avg3(l1, l2, l3));
+            put(p, pos + stride, avg2(l1, l2), avg3(l1, l2, l3), avg2(l2, l3), avg3(l2, l3, l3));
+            put(p, pos + s2, avg2(l2, l3), avg3(l2, l3, l3), l3, l3);
+            put(p, pos + s3, l3, l3, l3, l3);
+            break;
+        default:
+            throw new IllegalStateException("Unknown subblock prediction mode: " + mode);
+        }
+    }
+
+    private static void put(byte[] p, int pos, int v0, int v1, int v2, int v3) {
+        p[pos] = (byte) v0;
+        p[pos + 1] = (byte) v1;
+        p[pos + 2] = (byte) v2;
+        p[pos + 3] = (byte) v3;
+    }
+
+    private static void putTM(byte[] p, int pos, int l, int a0, int a1, int a2, int a3) {
+        p[pos] = clip255(l + a0);
+        p[pos + 1] = clip255(l + a1);
+        p[pos + 2] = clip255(l + a2);
+        p[pos + 3] = clip255(l + a3);
+    }
+
+    private static int avg2(int x, int y) {
+        return (x + y + 1) >> 1;
+    }
+
+    private static int avg3(int x, int y, int z) {
+        return (x + y + y + z + 2) >> 2;
+    }
+
+    private static byte clip255(int v) {
+        return (byte) (v < 0 ? 0 : (v > 255 ? 255 : v));
+    }
+}
@@ -0,0 +1,450 @@
+package org.jcodec.codecs.vpx;
+
+import static org.jcodec.codecs.vpx.VP8RowDecoder.predict4x4;
+import static org.jcodec.codecs.vpx.VP8RowDecoder.predictBlock;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.B_DC_PRED;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.B_HU_PRED;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.B_PRED;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.DC_PRED;
+import static org.jcodec.codecs.vpx.VP8Util.SubblockConstants.TM_PRED;
+
+import java.util.Arrays;
+
+import org.jcodec.common.model.Picture;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * Encodes one macroblock row at a time: picks the intra modes, transforms and
+ * quantizes the residual, reconstructs the macroblock into the frame planes of
+ * the VP8Encoder and writes the tokens into the row's token partition. Each
+ * worker thread owns one instance with all the scratch state of a macroblock.
+ *
+ * @author The JCodec project
+ *
+ */
+class VP8RowEncoder {
+    private static final int Y2 = 24;
+
+    private VP8Encoder frame;
+    private VPXQuantizer quantizer;
+
+    private int[] srcY;
+    private int[] srcU;
+    private int[] srcV;
+
+    /**
+     * Quantized levels: 16 Y blocks, 4 U, 4 V and Y2, each 16 coefficients in
+     * raster order
+     */
+    private int[] levels;
+    private int[] work;
+    private int[] dc;
+    private int[] block;
+    private int[] zigzag;
+    private int[] leftNz;
+
+    public VP8RowEncoder(VP8Encoder frame) {
+        this.frame = frame;
+        this.quantizer = new VPXQuantizer();
+        this.srcY = new int[256];
+        this.srcU = new int[64];
+        this.srcV = new int[64];
+        this.levels = new int[25 * 16];
+        this.work = new int[256];
+        this.dc = new int[16];
+        this.block = new int[16];
+        this.zigzag = new int[16];
+        this.leftNz = new int[9];
+    }
+
+    /**
+     * Encodes the macroblock row into token partition 'mbRow % partitions'.
+     * The macroblock 'mbCol' is started as soon as the row above has
+     * reconstructed macroblock 'mbCol + 1'.
+     */
+    public void encodeRow(int mbRow) {
+        VP8Encoder f = frame;
+        int mbCols = f.mbCols;
+        int nParts = f.partitions.length;
+        if (mbRow >= nParts)
+            f.waitFor(mbRow - nParts, mbCols);
+        VPXBooleanEncoder bc = f.partitions[mbRow % nParts];
+
+        Arrays.fill(leftNz, 0);
+        for (int mbCol = 0, mbAddr = mbRow * mbCols; mbCol < mbCols; mbCol++, mbAddr++) {
+            if (mbRow > 0)
+                f.waitFor(mbRow - 1, Math.min(mbCol + 2, mbCols));
+
+            f.startMB(mbAddr);
+            int before = bc.position();
+            encodeMB(bc, mbRow, mbCol, mbAddr);
+            f.mbBits[mbAddr] = bc.position() - before;
+            f.finishMB(mbAddr);
+
+            if (mbCol == mbCols - 1)
+                extendAboveRight(mbRow);
+            f.encoded.set(mbRow, mbCol + 1);
+        }
+    }
+
+    private void extendAboveRight(int mbRow) {
+        VP8Encoder f = frame;
+        int pos = (mbRow * 16 + 16) * f.strideY + f.mbCols * 16 + 1;
+        byte last = f.planeY[pos - 1];
+        f.planeY[pos] = f.planeY[pos + 1] = f.planeY[pos + 2] = f.planeY[pos + 3] = last;
+    }
+
+    private void encodeMB(VPXBooleanEncoder bc, int mbRow, int mbCol, int mbAddr) {
+        VP8Encoder f = frame;
+        int qp = f.segmentQps[f.segIds[mbAddr]];
+        int lambda = f.lambdas[f.segIds[mbAddr]];
+        loadSource(f.source, mbRow, mbCol);
+
+        byte[] y = f.planeY;
+        int sy = f.strideY;
+        int posY = (mbRow * 16 + 1) * sy + mbCol * 16 + 1;
+        boolean haveAbove = mbRow > 0, haveLeft = mbCol > 0;
+
+        int best16 = DC_PRED;
+        int best16Cost = Integer.MAX_VALUE;
+        for (int mode = DC_PRED; mode <= TM_PRED; mode++) {
+            predictBlock(mode, y, posY, sy, 4, haveAbove, haveLeft);
+            int cost = satd(srcY, 16, y, posY, sy, 16) + rate(VP8Encoder.yModeCost[mode], lambda);
+            if (cost < best16Cost) {
+                best16Cost = cost;
+                best16 = mode;
+            }
+        }
+
+        int sbAddr = mbAddr << 4;
+        if (encodeBPred(mbRow, mbCol, mbAddr, posY, qp, lambda, best16Cost) < best16Cost) {
+            f.yModes[mbAddr] = B_PRED;
+        } else {
+            f.yModes[mbAddr] = (byte) best16;
+            Arrays.fill(f.subModes, sbAddr, sbAddr + 16, (byte) VP8Decoder.impliedSubblockMode(best16));
+            predictBlock(best16, y, posY, sy, 4, haveAbove, haveLeft);
+            encodeLuma16x16(y, posY, sy, qp);
+        }
+
+        int sc = f.strideC;
+        int posC = (mbRow * 8 + 1) * sc + mbCol * 8 + 1;
+        int bestUV = DC_PRED;
+        int bestUVCost = Integer.MAX_VALUE;
+        for (int mode = DC_PRED; mode <= TM_PRED; mode++) {
+            predictBlock(mode, f.planeU, posC, sc, 3, haveAbove, haveLeft);
+            predictBlock(mode, f.planeV, posC, sc, 3, haveAbove, haveLeft);
+            int cost = satd(srcU, 8, f.planeU, posC, sc, 8) + satd(srcV, 8, f.planeV, posC, sc, 8)
+                    + rate(VP8Encoder.uvModeCost[mode], lambda);
+            if (cost < bestUVCost) {
+                bestUVCost = cost;
+                bestUV = mode;
+            }
+        }
+        f.uvModes[mbAddr] = (byte) bestUV;
+        predictBlock(bestUV, f.planeU, posC, sc, 3, haveAbove, haveLeft);
+        predictBlock(bestUV, f.planeV, posC, sc, 3, haveAbove, haveLeft);
+        for (int blk = 0; blk < 4; blk++) {
+            int srcOff = ((blk >> 1) << 5) + ((blk & 1) << 2);
+            int pos = posC + ((blk >> 1) << 2) * sc + ((blk & 1) << 2);
+            encodeChromaBlock(srcU, srcOff, f.planeU, pos, sc, 16 + blk, qp);
+            encodeChromaBlock(srcV, srcOff, f.planeV, pos, sc, 20 + blk, qp);
+        }
+
+        boolean hasY2 = f.yModes[mbAddr] != B_PRED;
+        if (isEmpty(hasY2)) {
+            f.mbSkip[mbAddr] = 1;
+            skipTokens(mbCol, hasY2);
+        } else {
+            f.mbSkip[mbAddr] = 0;
+            writeTokens(bc, mbCol, hasY2);
+        }
+    }
+
+    /**
+     * Picks the subblock modes one by one, each subblock is reconstructed
+     * right away as it's the predictor of the following ones. Gives up as soon
+     * as the cost exceeds the one of the best 16x16 mode.
+     *
+     * @return The cost of coding the macroblock as B_PRED
+     */
+    private int encodeBPred(int mbRow, int mbCol, int mbAddr, int posY, int qp, int lambda, int limit) {
+        VP8Encoder f = frame;
+        byte[] y = f.planeY;
+        byte[] subModes = f.subModes;
+        int sy = f.strideY;
+        int sbAddr = mbAddr << 4;
+        int aboveRightMB = posY - sy + 16;
+        int cost = rate(VP8Encoder.yModeCost[B_PRED], lambda);
+        for (int blk = 0; blk < 16; blk++) {
+            int bx = blk & 3, by = blk >> 2;
+            int pos = posY + (by << 2) * sy + (bx << 2);
+            int aboveRight = bx == 3 && by > 0 ? aboveRightMB : pos - sy + 4;
+            int above, left;
+            if (by > 0)
+                above = subModes[sbAddr + blk - 4];
+            else if (mbRow > 0)
+                above = subModes[((mbAddr - f.mbCols) << 4) + 12 + bx];
+            else
+                above = B_DC_PRED;
+            if (bx > 0)
+                left = subModes[sbAddr + blk - 1];
+            else if (mbCol > 0)
+                left = subModes[((mbAddr - 1) << 4) + blk + 3];
+            else
+                left = B_DC_PRED;
+            int[] modeCost = VP8Encoder.subblockModeCost[above][left];
+
+            int srcOff = (by << 6) + (bx << 2);
+            int bestMode = B_DC_PRED;
+            int bestCost = Integer.MAX_VALUE;
+            for (int mode = B_DC_PRED; mode <= B_HU_PRED; mode++) {
+                predict4x4(mode, y, pos, sy, aboveRight);
+                int c = satd4x4(srcY, srcOff, 16, y, pos, sy) + rate(modeCost[mode], lambda);
+                if (c < bestCost) {
+                    bestCost = c;
+                    bestMode = mode;
+                }
+            }
+            cost += bestCost;
+            if (cost >= limit)
+                return cost;
+
+            subModes[sbAddr + blk] = (byte) bestMode;
+            predict4x4(bestMode, y, pos, sy, aboveRight);
+            residual(srcY, srcOff, 16, y, pos, sy, work, 0);
+            VPXDCT.fdct4x4(work, 0);
+            quantizer.quantizeY(work, qp);
+            System.arraycopy(work, 0, levels, blk << 4, 16);
+            quantizer.dequantizeY(work, qp);
+            reconstruct(work, 0, y, pos, sy);
+        }
+        return cost;
+    }
+
+    /**
+     * Transforms the residual of the 16x16 prediction found in the plane, the
+     * DC coefficients go through the second order transform
+     */
+    private void encodeLuma16x16(byte[] y, int posY, int sy, int qp) {
+        for (int blk = 0; blk < 16; blk++) {
+            int off = blk << 4;
+            residual(srcY, ((blk >> 2) << 6) + ((blk & 3) << 2), 16, y, posY + ((blk >> 2) << 2) * sy
+                    + ((blk & 3) << 2), sy, work, off);
+            VPXDCT.fdct4x4(work, off);
+            dc[blk] = work[off];
+        }
+        VPXDCT.walsh4x4(dc);
+        quantizer.quantizeY2(dc, qp);
+        System.arraycopy(dc, 0, levels, Y2 << 4, 16);
+        quantizer.dequantizeY2(dc, qp);
+        VPXDCT.iwalsh4x4(dc);
+
+        for (int blk = 0; blk < 16; blk++) {
+            int off = blk << 4;
+            System.arraycopy(work, off, block, 0, 16);
+            block[0] = 0;
+            quantizer.quantizeY(block, qp);
+            System.arraycopy(block, 0, levels, off, 16);
+            quantizer.dequantizeY(block, qp);
+            block[0] = dc[blk];
+            reconstruct(block, 0, y, posY + ((blk >> 2) << 2) * sy + ((blk & 3) << 2), sy);
+        }
+    }
+
+    private void encodeChromaBlock(int[] src, int srcOff, byte[] p, int pos, int stride, int blk, int qp) {
+        residual(src, srcOff, 8, p, pos, stride, work, 0);
+        VPXDCT.fdct4x4(work, 0);
+        quantizer.quantizeUV(work, qp);
+        System.arraycopy(work, 0, levels, blk << 4, 16);
+        quantizer.dequantizeUV(work, qp);
+        reconstruct(work, 0, p, pos, stride);
+    }
+
+    private boolean isEmpty(boolean hasY2) {
+        int first = hasY2 ? 1 : 0;
+        for (int blk = 0; blk < 25; blk++) {
+            if (blk == Y2 && !hasY2)
+                break;
+            int off = blk << 4;
+            for (int i = blk < 16 ? first : 0; i < 16; i++)
+                if (levels[off + i] != 0)
+                    return false;
+        }
+        return true;
+    }
+
+    private void skipTokens(int mbCol, boolean hasY2) {
+        int[] aboveNz = frame.aboveNz;
+        int above = mbCol * 9;
+        for (int i = 0; i < 8; i++) {
+            aboveNz[above + i] = 0;
+            leftNz[i] = 0;
+        }
+        if (hasY2) {
+            aboveNz[above + 8] = 0;
+            leftNz[8] = 0;
+        }
+    }
+
+    private void writeTokens(VPXBooleanEncoder bc, int mbCol, boolean hasY2) {
+        VP8Encoder f = frame;
+        VPXBitstream bs = f.bitstream;
+        int[] aboveNz = f.aboveNz;
+        int above = mbCol * 9;
+
+        int firstY = 0;
+        int yType = 3;
+        if (hasY2) {
+            int n = zigzag(Y2);
+            bs.encodeCoeffs(bc, zigzag, 0, n, 1, aboveNz[above + 8] + leftNz[8]);
+            aboveNz[above + 8] = leftNz[8] = n > 0 ? 1 : 0;
+            firstY = 1;
+            yType = 0;
+        }
+
+        for (int blk = 0; blk < 16; blk++) {
+            int bx = blk & 3, by = blk >> 2;
+            int n = zigzag(blk);
+            bs.encodeCoeffs(bc, zigzag, firstY, n, yType, aboveNz[above + bx] + leftNz[by]);
+            aboveNz[above + bx] = leftNz[by] = n > firstY ? 1 : 0;
+        }
+
+        for (int blk = 16; blk < 24; blk++) {
+            int plane = 4 + (((blk - 16) >> 2) << 1);
+            int bx = plane + (blk & 1), by = plane + ((blk >> 1) & 1);
+            int n = zigzag(blk);
+            bs.encodeCoeffs(bc, zigzag, 0, n, 2, aboveNz[above + bx] + leftNz[by]);
+            aboveNz[above + bx] = leftNz[by] = n > 0 ? 1 : 0;
+        }
+    }
+
+    /**
+     * Puts the levels of the block in the zigzag scan order
+     *
+     * @return The index following the last non-zero level
+     */
+    private int zigzag(int blk) {
+        int off = blk << 4;
+        int n = 0;
+        for (int i = 0; i < 16; i++) {
+            int v = levels[off + VPXConst.zigzag[i]];
+            zigzag[i] = v;
+            if (v != 0)
+                n = i + 1;
+        }
+        return n;
+    }
+
+    /**
+     * Reads the source pixels of the macroblock, the pixels outside of the
+     * picture replicate the last row/column
+     */
+    private void loadSource(Picture pic, int mbRow, int mbCol) {
+        loadBlock(pic.getPlaneData(0), pic.getPlaneWidth(0), pic.getPlaneHeight(0), mbCol << 4, mbRow << 4, 16, srcY);
+        loadBlock(pic.getPlaneData(1), pic.getPlaneWidth(1), pic.getPlaneHeight(1), mbCol << 3, mbRow << 3, 8, srcU);
+        loadBlock(pic.getPlaneData(2), pic.getPlaneWidth(2), pic.getPlaneHeight(2), mbCol << 3, mbRow << 3, 8, srcV);
+    }
+
+    private static void loadBlock(byte[] data, int width, int height, int x, int y, int size, int[] out) {
+        for (int j = 0, outOff = 0; j < size; j++) {
+            int off = Math.min(y + j, height - 1) * width;
+            for (int i = 0; i < size; i++, outOff++)
+                out[outOff] = data[off + Math.min(x + i, width - 1)] + 128;
+        }
+    }
+
+    private static void residual(int[] src, int srcOff, int srcStride, byte[] p, int pos, int stride, int[] out,
+            int off) {
+        for (int j = 0; j < 4; j++, srcOff += srcStride, pos += stride, off += 4) {
+            out[off] = src[srcOff] - (p[pos] & 0xff);
+            out[off + 1] = src[srcOff + 1] - (p[pos + 1] & 0xff);
+            out[off + 2] = src[srcOff + 2] - (p[pos + 2] & 0xff);
+            out[off + 3] = src[srcOff + 3] - (p[pos + 3] & 0xff);
+        }
+    }
+
+    /**
+     * Adds the dequantized coefficients to the prediction found in the plane
+     */
+    private static void reconstruct(int[] coeffs, int off, byte[] p, int pos, int stride) {
+        VPXDCT.idct4x4(coeffs, off);
+        for (int j = 0; j < 4; j++, pos += stride, off += 4) {
+            p[pos] = clip255((p[pos] & 0xff) + coeffs[off]);
+            p[pos + 1] = clip255((p[pos + 1] & 0xff) + coeffs[off + 1]);
+            p[pos + 2] = clip255((p[pos + 2] & 0xff) + coeffs[off + 2]);
+            p[pos + 3] = clip255((p[pos + 3] & 0xff) + coeffs[off + 3]);
+        }
+    }
+
+    /**
+     * Sum of the absolute transformed differences over a square block made of
+     * 4x4 blocks
+     */
+    private static int satd(int[] src, int srcStride, byte[] p, int pos, int stride, int size) {
+        int n = size >> 2;
+        int sum = 0;
+        for (int j = 0; j < n; j++)
+            for (int i = 0; i < n; i++)
+                sum += satd4x4(src, (j << 2) * srcStride + (i << 2), srcStride, p, pos + (j << 2) * stride
+                        + (i << 2), stride);
+        return sum;
+    }
+
+    private static int satd4x4(int[] src, int srcOff, int srcStride, byte[] p, int pos, int stride) {
+        int d00, d01, d02, d03, d10, d11, d12, d13, d20, d21, d22, d23, d30, d31, d32, d33;
+        d00 = src[srcOff] - (p[pos] & 0xff);
+        d01 = src[srcOff + 1] - (p[pos + 1] & 0xff);
+        d02 = src[srcOff + 2] - (p[pos + 2] & 0xff);
+        d03 = src[srcOff + 3] - (p[pos + 3] & 0xff);
+        srcOff += srcStride;
+        pos += stride;
+        d10 = src[srcOff] - (p[pos] & 0xff);
+        d11 = src[srcOff + 1] - (p[pos + 1] & 0xff);
+        d12 = src[srcOff + 2] - (p[pos + 2] & 0xff);
+        d13 = src[srcOff + 3] - (p[pos + 3] & 0xff);
+        srcOff += srcStride;
+        pos += stride;
+        d20 = src[srcOff] - (p[pos] & 0xff);
+        d21 = src[srcOff + 1] - (p[pos + 1] & 0xff);
+        d22 = src[srcOff + 2] - (p[pos + 2] & 0xff);
+        d23 = src[srcOff + 3] - (p[pos + 3] & 0xff);
+        srcOff += srcStride;
+        pos += stride;
+        d30 = src[srcOff] - (p[pos] & 0xff);
+        d31 = src[srcOff + 1] - (p[pos + 1] & 0xff);
+        d32 = src[srcOff + 2] - (p[pos + 2] & 0xff);
+        d33 = src[srcOff + 3] - (p[pos + 3] & 0xff);
+
+        // Horizontal Hadamard
+        int s0 = d00 + d01, s1 = d00 - d01, s2 = d02 + d03, s3 = d02 - d03;
+        d00 = s0 + s2; d01 = s1 + s3; d02 = s0 - s2; d03 = s1 - s3;
+        s0 = d10 + d11; s1 = d10 - d11; s2 = d12 + d13; s3 = d12 - d13;
+        d10 = s0 + s2; d11 = s1 + s3; d12 = s0 - s2; d13 = s1 - s3;
+        s0 = d20 + d21; s1 = d20 - d21; s2 = d22 + d23; s3 = d22 - d23;
+        d20 = s0 + s2; d21 = s1 + s3; d22 = s0 - s2; d23 = s1 - s3;
+        s0 = d30 + d31; s1 = d30 - d31; s2 = d32 + d33; s3 = d32 - d33;
+        d30 = s0 + s2; d31 = s1 + s3; d32 = s0 - s2; d33 = s1 - s3;
+
+        // Vertical Hadamard and the sum
+        return (vertical(d00, d10, d20, d30) + vertical(d01, d11, d21, d31) + vertical(d02, d12, d22, d32)
+                + vertical(d03, d13, d23, d33)) >> 1;
+    }
+
+    private static int vertical(int a, int b, int c, int d) {
+        int s0 = a + b, s1 = a - b, s2 = c + d, s3 = c - d;
+        return Math.abs(s0 + s2) + Math.abs(s1 + s3) + Math.abs(s0 - s2) + Math.abs(s1 - s3);
+    }
+
+    /**
+     * Converts the cost of a mode in 1/16 bits to the distortion units
+     */
+    private static int rate(int bits16, int lambda) {
+        return (bits16 * lambda) >> 8;
+    }
+
+    private static byte clip255(int v) {
+        return (byte) (v < 0 ? 0 : (v > 255 ? 255 : v));
+    }
+}
@@ -488,6 +488,8 @@ public class VP8Util {
             if (this.y2AC < 8)
                 this.y2AC = 8;
             this.chromaDC = dcQLookup[clip(baseIndex + chromaDCIndexDelta, 127)];
+            if (this.chromaDC > 132)
+                this.chromaDC = 132;
             this.chromaAC = acQLookup[clip(baseIndex + chromaACIndexDelta, 127)];
         }
 
@@ -34,7 +34,7 @@ public class VPXBooleanDecoder {
             value = 0; /* value = first 16 input bits */
 
             // data.position(offset);
-            value = (input.get() & 0xFF) << 8; // readUnsignedByte() << 8;
+            value = nextByte() << 8; // readUnsignedByte() << 8;
             // value = (data[offset]) << 8;
             offset++;
 
@@ -42,6 +42,15 @@ public class VPXBooleanDecoder {
             bit_count = 0; /* have not yet shifted out any bits */
         }
 
+        /**
+         * Past the end of the partition the decoder is fed with zeros, as
+         * required by the spec for the streams that are truncated by the
+         * encoder
+         */
+        private int nextByte() {
+            return input.hasRemaining() ? input.get() & 0xFF : 0;
+        }
+
         public int readBitEq()  {
             return readBit(128);
         }
@@ -74,7 +83,7 @@ public class VPXBooleanDecoder {
             count -= shift;
 
             if (count <= 0) {
-                value |= (input.get() & 0xFF) << (-count);
+                value |= nextByte() << (-count);
 //                System.out.println("read value: " + value + " binary: " + Integer.toBinaryString(value));
                 offset++;
                 count += 8;
@@ -17,9 +17,31 @@ public class VPXBooleanEncoder {
     private int lowvalue;
     private int range;
     private int count;
+    private boolean growable;
 
     public VPXBooleanEncoder(ByteBuffer out) {
         this.out = out;
+        reset();
+    }
+
+    /**
+     * Creates an encoder writing into a buffer of its own that is enlarged
+     * whenever it fills up, the data is then found in getBuffer()
+     */
+    public static VPXBooleanEncoder createGrowable(int initialSize) {
+        VPXBooleanEncoder encoder = new VPXBooleanEncoder(ByteBuffer.allocate(Math.max(16, initialSize)));
+        encoder.growable = true;
+        return encoder;
+    }
+
+    public ByteBuffer getBuffer() {
+        return out;
+    }
+
+    /**
+     * Starts a new stream at the current position of the output buffer
+     */
+    public void reset() {
         lowvalue = 0;
         range = 255;
         count = -24;
@@ -53,6 +75,8 @@ public class VPXBooleanEncoder {
                 out.put(x, (byte) ((out.get(x) & 0xff) + 1));
             }
 
+            if (growable && !out.hasRemaining())
+                grow();
             out.put((byte) (lowvalue >> (24 - offset)));
             lowvalue <<= offset;
             shift = count;
@@ -63,6 +87,34 @@ public class VPXBooleanEncoder {
         lowvalue <<= shift;
     }
 
+    private void grow() {
+        ByteBuffer old = out;
+        old.flip();
+        out = ByteBuffer.allocate(old.capacity() << 1);
+        out.put(old);
+    }
+
+    /**
+     * Writes the path to the leaf 'value' of the tree, the counterpart of
+     * VPXBooleanDecoder.readTree
+     */
+    public void writeTree(int[] tree, int[] probs, int value) {
+        int i = 0;
+        while (true) {
+            int bit = inSubtree(tree, tree[i], value) ? 0 : 1;
+            writeBit(probs[i >> 1], bit);
+            i = tree[i + bit];
+            if (i <= 0)
+                return;
+        }
+    }
+
+    static boolean inSubtree(int[] tree, int node, int value) {
+        if (node <= 0)
+            return -node == value;
+        return inSubtree(tree, tree[node], value) || inSubtree(tree, tree[node + 1], value);
+    }
+
     public void stop() {
         int i;
 
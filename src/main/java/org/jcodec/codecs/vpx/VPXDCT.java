@@ -10,7 +10,14 @@ package org.jcodec.codecs.vpx;
 public class VPXDCT {
 
     public static void fdct4x4(int[] coef) {
-        for (int i = 0; i < 16; i += 4) {
+        fdct4x4(coef, 0);
+    }
+
+    /**
+     * Forward transform of the 4x4 block stored at the given offset, in place
+     */
+    public static void fdct4x4(int[] coef, int off) {
+        for (int i = off; i < off + 16; i += 4) {
             int a1 = ((coef[i] + coef[i + 3]) << 3);
             int b1 = ((coef[i + 1] + coef[i + 2]) << 3);
             int c1 = ((coef[i + 1] - coef[i + 2]) << 3);
@@ -23,7 +30,7 @@ public class VPXDCT {
             coef[i + 3] = (d1 * 2217 - c1 * 5352 + 7500) >> 12;
         }
 
-        for (int i = 0; i < 4; i++) {
+        for (int i = off; i < off + 4; i++) {
             int a1 = coef[i] + coef[i + 12];
             int b1 = coef[i + 4] + coef[i + 8];
             int c1 = coef[i + 4] - coef[i + 8];
@@ -77,8 +84,15 @@ public class VPXDCT {
     public static int sinpi8sqrt2 = 35468;
 
     public static void idct4x4(int[] coef) {
+        idct4x4(coef, 0);
+    }
 
-        for (int i = 0; i < 4; i++) {
+    /**
+     * Inverse transform of the 4x4 block stored at the given offset, in place
+     */
+    public static void idct4x4(int[] coef, int off) {
+
+        for (int i = off; i < off + 4; i++) {
             int a1 = coef[i] + coef[i + 8];
             int b1 = coef[i] - coef[i + 8];
 
@@ -97,7 +111,7 @@ public class VPXDCT {
             coef[i + 8] = b1 - c1;
         }
 
-        for (int i = 0; i < 16; i += 4) {
+        for (int i = off; i < off + 16; i += 4) {
             int a1 = coef[i] + coef[i + 2];
             int b1 = coef[i] - coef[i + 2];
 
@@ -119,8 +133,15 @@ public class VPXDCT {
     }
 
     public static void iwalsh4x4(int[] coef) {
+        iwalsh4x4(coef, 0);
+    }
 
-        for (int i = 0; i < 4; i++) {
+    /**
+     * Inverse WHT of the 4x4 block stored at the given offset, in place
+     */
+    public static void iwalsh4x4(int[] coef, int off) {
+
+        for (int i = off; i < off + 4; i++) {
             int a1 = coef[i] + coef[i + 12];
             int b1 = coef[i + 4] + coef[i + 8];
             int c1 = coef[i + 4] - coef[i + 8];
@@ -132,7 +153,7 @@ public class VPXDCT {
             coef[i + 12] = d1 - c1;
         }
 
-        for (int i = 0; i < 16; i += 4) {
+        for (int i = off; i < off + 16; i += 4) {
             int a1 = coef[i] + coef[i + 3];
             int b1 = coef[i + 1] + coef[i + 2];
             int c1 = coef[i + 1] - coef[i + 2];
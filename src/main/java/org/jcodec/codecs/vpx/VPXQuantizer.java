@@ -1,61 +1,67 @@
 package org.jcodec.codecs.vpx;
-import org.jcodec.common.tools.MathUtil;
+import org.jcodec.codecs.vpx.VP8Util.QuantizationParams;
 
 /**
  * This class is part of JCodec ( www.jcodec.org ) This software is distributed
  * under FreeBSD License
- * 
+ *
+ * Quantizes the transform coefficients with exactly the factors the decoder
+ * dequantizes them with. The DC coefficient is rounded to the nearest level,
+ * the AC coefficients are rounded with a dead zone.
+ *
  * @author The JCodec project
- * 
+ *
  */
 public class VPXQuantizer {
-
-    private int y1_dc_delta_q;
-    private int uv_dc_delta_q;
-    private int uv_ac_delta_q;
-    private int y2_dc_delta_q;
-    private int y2_ac_delta_q;
+    private static final int MAX_LEVEL = 2048;
+    private static final QuantizationParams[] factors = new QuantizationParams[128];
+    static {
+        for (int i = 0; i < factors.length; i++)
+            factors[i] = new QuantizationParams(i, 0, 0, 0, 0, 0);
+    }
 
     public final void quantizeY(int[] coeffs, int qp) {
-        int factDC = MathUtil.clip(VPXConst.dc_qlookup[qp + y1_dc_delta_q], 8, 132);
-        int invFactAC = MathUtil.clip(VPXConst.ac_qlookup[qp], 8, 132);
-        quantize(coeffs, factDC, invFactAC);
+        QuantizationParams q = factors[qp];
+        quantize(coeffs, q.yDC, q.yAC);
     }
 
     public final void quantizeUV(int[] coeffs, int qp) {
-        int factDC = MathUtil.clip(VPXConst.dc_qlookup[qp + uv_dc_delta_q], 8, 132);
-        int invFactAC = MathUtil.clip(VPXConst.ac_qlookup[qp + uv_ac_delta_q], 8, 132);
-        quantize(coeffs, factDC, invFactAC);
+        QuantizationParams q = factors[qp];
+        quantize(coeffs, q.chromaDC, q.chromaAC);
     }
 
     public final void quantizeY2(int[] coeffs, int qp) {
-        int factDC = MathUtil.clip(VPXConst.dc_qlookup[qp + y2_dc_delta_q] * 2, 8, 132);
-        int invFactAC = MathUtil.clip(VPXConst.ac_qlookup[qp + y2_ac_delta_q] * 155 / 100, 8, 132);
-        quantize(coeffs, factDC, invFactAC);
+        QuantizationParams q = factors[qp];
+        quantize(coeffs, q.y2DC, q.y2AC);
     }
 
     private final void quantize(int[] coeffs, int factDC, int factAC) {
-        coeffs[0] /= factDC;
+        coeffs[0] = quantize(coeffs[0], factDC, factDC >> 1);
+        int round = factAC / 3;
         for (int i = 1; i < 16; i++)
-            coeffs[i] = coeffs[i] / factAC;
+            coeffs[i] = quantize(coeffs[i], factAC, round);
+    }
+
+    private static int quantize(int coeff, int fact, int round) {
+        int level = ((coeff < 0 ? -coeff : coeff) + round) / fact;
+        if (level > MAX_LEVEL)
+            level = MAX_LEVEL;
+        return coeff < 0 ? -level : level;
     }
 
     public final void dequantizeY(int[] coeffs, int qp) {
-        int factDC = MathUtil.clip(VPXConst.dc_qlookup[qp + y1_dc_delta_q], 8, 132);
-        int factAC = MathUtil.clip(VPXConst.ac_qlookup[qp], 8, 132);
-        dequantize(coeffs, factDC, factAC);
+        QuantizationParams q = factors[qp];
+        dequantize(coeffs, q.yDC, q.yAC);
     }
 
     public final void dequantizeUV(int[] coeffs, int qp) {
-        int factDC = MathUtil.clip(VPXConst.dc_qlookup[qp + uv_dc_delta_q], 8, 132);
-        int factAC = MathUtil.clip(VPXConst.ac_qlookup[qp + uv_ac_delta_q], 8, 132);
-        dequantize(coeffs, factDC, factAC);
+        QuantizationParams q = factors[qp];
+        dequantize(coeffs, q.chromaDC, q.chromaAC);
     }
 
     public final void dequantizeY2(int[] coeffs, int qp) {
-        int factDC = MathUtil.clip(VPXConst.dc_qlookup[qp + y2_dc_delta_q] * 2, 8, 132);
-        int factAC = MathUtil.clip(VPXConst.ac_qlookup[qp + y2_ac_delta_q] * 155 / 100, 8, 132);
-        dequantize(coeffs, factDC, factAC);
+        QuantizationParams q = factors[qp];
+        dequantize(coeffs, q.y2DC, q.y2AC);
     }
 
     private final void dequantize(int[] coeffs, int factDC, int factAC) {
@@ -63,4 +69,12 @@ public class VPXQuantizer {
         for (int i = 1; i < 16; i++)
             coeffs[i] *= factAC;
     }
-}
\ No newline at end of file
+
+    /**
+     * Luma AC quantization factor for the given quantizer index, the unit the
+     * encoder expresses its rate/distortion trade off in.
+     */
+    public static int lumaACFactor(int qp) {
+        return factors[qp].yAC;
+    }
+}
@@ -0,0 +1,49 @@
+package org.jcodec.common;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * The pool the codecs and filters split their work on. Created on the first
+ * use, the threads are daemons and die after a minute idle, so the encoders
+ * and decoders using it need no shutdown.
+ *
+ * The pool is not bounded, the callers bound their own parallelism with the
+ * number of the tasks they submit, a task waiting for the tasks it submitted
+ * can't starve the pool.
+ *
+ * @author The JCodec project
+ *
+ */
+public class SharedThreadPool {
+
+    private static ExecutorService pool;
+
+    public static synchronized ExecutorService get() {
+        if (pool == null) {
+            pool = Executors.newCachedThreadPool(new ThreadFactory() {
+                private AtomicInteger n = new AtomicInteger();
+
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r);
+                    t.setDaemon(true);
+                    t.setName("jcodec-shared-" + n.incrementAndGet());
+                    return t;
+                }
+            });
+        }
+        return pool;
+    }
+
+    /**
+     * @return Number of the tasks worth splitting a job into
+     */
+    public static int parallelism() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+}
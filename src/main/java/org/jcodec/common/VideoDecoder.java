@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 
 import org.jcodec.common.model.Picture;
+import org.jcodec.common.model.PlaneAllocator;
 
 /**
  * This class is part of JCodec ( www.jcodec.org ) This software is distributed
@@ -14,6 +15,7 @@ import org.jcodec.common.model.Picture;
  */
 abstract public class VideoDecoder {
     private byte[][] byteBuffer;
+    private PlaneAllocator planeAllocator;
     
     /**
      * Decodes a video frame to an uncompressed picture in codec native
@@ -33,6 +35,22 @@ abstract public class VideoDecoder {
         return byteBuffer;
     }
     
+    /**
+     * Sets the allocator for the pictures the decoder keeps for itself, the
+     * reference pictures. The output goes to the buffer given by the caller.
+     */
+    public void setPlaneAllocator(PlaneAllocator planeAllocator) {
+        this.planeAllocator = planeAllocator;
+    }
+
+    /**
+     * The allocator for the decoder's own pictures, null for plain heap
+     * allocation.
+     */
+    public PlaneAllocator getPlaneAllocator() {
+        return planeAllocator;
+    }
+
     /**
      * Returns a downscaled version of this decoder
      * @param ratio
@@ -1,78 +1,91 @@
 package org.jcodec.common.io;
 import java.lang.IllegalArgumentException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * This class is part of JCodec ( www.jcodec.org ) This software is distributed
  * under FreeBSD License
- * 
+ *
+ * Reads the bitstream through a 64 bit cache, the upcoming bits are kept left
+ * aligned in a long that is topped up with a single getLong while 8 or more
+ * bytes are left in the buffer. Past the end of the buffer the stream reads as
+ * zeros and the number of cached bits goes negative, so position and remaining
+ * keep counting the bits that were read.
+ *
  * @author The JCodec project
- * 
+ *
  */
 public class BitReader {
     public static BitReader createBitReader(ByteBuffer bb) {
         BitReader r = new BitReader(bb);
-        r.curInt = r.readInt();
-        r.deficit = 0;
+        r.refill();
         return r;
     }
 
-    private int deficit = -1;
-    private int curInt = -1;
+    private long cache;
+    private int bits;
     private ByteBuffer bb;
     private int initPos;
+    private boolean swap;
 
     private BitReader(ByteBuffer bb) {
         this.bb = bb;
         this.initPos = bb.position();
+        this.swap = bb.order() != ByteOrder.BIG_ENDIAN;
     }
 
     public BitReader fork() {
         BitReader fork = new BitReader(this.bb.duplicate());
         fork.initPos = 0;
-        fork.curInt = this.curInt;
-        fork.deficit = this.deficit;
+        fork.cache = this.cache;
+        fork.bits = this.bits;
         return fork;
     }
 
-    public final int readInt() {
-        if (bb.remaining() >= 4) {
-            deficit -= 32;
-            return ((bb.get() & 0xff) << 24) | ((bb.get() & 0xff) << 16) | ((bb.get() & 0xff) << 8) | (bb.get() & 0xff);
-        } else
-            return readIntSafe();
+    /**
+     * Tops up the cache to at least 57 bits, or to all of what is left in the
+     * buffer. The bytes of a getLong that don't fit stay in the buffer and are
+     * read again with the next refill, the bits they add below the cached ones
+     * are the same ones.
+     */
+    private void refill() {
+        int pos = bb.position();
+        if (bits >= 0 && bb.limit() - pos >= 8) {
+            long w = bb.getLong(pos);
+            if (swap)
+                w = Long.reverseBytes(w);
+            int bytes = (64 - bits) >> 3;
+            cache |= w >>> bits;
+            bits += bytes << 3;
+            bb.position(pos + bytes);
+        } else {
+            while (bits <= 56 && bb.hasRemaining()) {
+                cache |= (bb.get() & 0xffL) << (56 - bits);
+                bits += 8;
+            }
+        }
     }
 
-    private int readIntSafe() {
-        deficit -= (bb.remaining() << 3);
-        int res = 0;
-        if (bb.hasRemaining())
-            res |= bb.get() & 0xff;
-        res <<= 8;
-        if (bb.hasRemaining())
-            res |= bb.get() & 0xff;
-        res <<= 8;
-        if (bb.hasRemaining())
-            res |= bb.get() & 0xff;
-        res <<= 8;
-        if (bb.hasRemaining())
-            res |= bb.get() & 0xff;
-        return res;
+    private void consume(int n) {
+        cache = n < 64 ? cache << n : 0;
+        bits -= n;
     }
 
-    public int read1Bit() {
+    public final int readInt() {
+        return readNBit(32);
+    }
 
-        int ret = curInt >>> 31;
-        curInt <<= 1;
-        ++deficit;
-        if (deficit == 32) {
-            curInt = readInt();
-        }
-        // System.out.println(ret);
+    public int read1Bit() {
+        if (bits < 1)
+            refill();
+        int ret = (int) (cache >>> 63);
+        cache <<= 1;
+        --bits;
 
         return ret;
     }
-    
+
     public int readNBitSigned(int n) {
         int v = readNBit(n);
         return read1Bit() == 0 ? v : -v;
@@ -81,114 +94,113 @@ public class BitReader {
     public int readNBit(int n) {
         if (n > 32)
             throw new IllegalArgumentException("Can not read more then 32 bit");
+        if (n == 0)
+            return 0;
+        if (bits < n)
+            refill();
+
+        int ret = (int) (cache >>> (64 - n));
+        cache <<= n;
+        bits -= n;
 
-        int nn = n;
+        return ret;
+    }
 
-        int ret = 0;
-        if (n + deficit > 31) {
-            ret |= (curInt >>> deficit);
-            n -= 32 - deficit;
-            ret <<= n;
-            deficit = 32;
-            curInt = readInt();
+    /**
+     * Reads an unsigned Exp-Golomb code. Codes of up to 31 bits are taken with
+     * one peek, the longer ones are read bit by bit.
+     */
+    public int readUE() {
+        int next = peek(32);
+        int zeros = Integer.numberOfLeadingZeros(next);
+        if (zeros < 16) {
+            int len = (zeros << 1) + 1;
+            consume(len);
+            return (next >>> (32 - len)) - 1;
         }
 
-        if (n != 0) {
-            ret |= curInt >>> (32 - n);
-            curInt <<= n;
-            deficit += n;
+        int cnt = 0;
+        while (read1Bit() == 0 && cnt < 32)
+            cnt++;
+
+        int res = 0;
+        if (cnt > 0) {
+            long val = readNBit(cnt);
+
+            res = (int) ((1 << cnt) - 1 + val);
         }
 
-        // for(--nn; nn >=0; nn--)
-        // System.out.print((ret >> nn) & 1);
-        // System.out.println();
+        return res;
+    }
 
-        return ret;
+    /**
+     * Returns the next n bits, up to 32, without reading them
+     */
+    public int peek(int n) {
+        if (n == 0)
+            return 0;
+        if (bits < n)
+            refill();
+        return (int) (cache >>> (64 - n));
     }
 
     public boolean moreData() {
-        int remaining = bb.remaining() + 4 - ((deficit + 7) >> 3);
-        return remaining > 1 || (remaining == 1 && curInt != 0);
+        int remaining = bb.remaining() + (bits >> 3);
+        return remaining > 1 || (remaining == 1 && peek(16) != 0);
     }
 
     public int remaining() {
-        return (bb.remaining() << 3) + 32 - deficit;
+        return (bb.remaining() << 3) + bits;
     }
 
     public final boolean isByteAligned() {
-        return (deficit & 0x7) == 0;
+        return (bits & 0x7) == 0;
     }
 
     public int skip(int bits) {
         int left = bits;
 
-        if (left + deficit > 31) {
-            left -= 32 - deficit;
-            deficit = 32;
-            if (left > 31) {
-                int skip = Math.min(left >> 3, bb.remaining());
-                bb.position(bb.position() + skip);
-                left -= skip << 3;
-            }
-            curInt = readInt();
+        if (left > this.bits && this.bits >= 0) {
+            left -= this.bits;
+            cache = 0;
+            this.bits = 0;
+            int skip = Math.min(left >> 3, bb.remaining());
+            bb.position(bb.position() + skip);
+            left -= skip << 3;
+            refill();
         }
-
-        deficit += left;
-        curInt <<= left;
+        consume(left);
 
         return bits;
     }
 
     public int skipFast(int bits) {
-        deficit += bits;
-        curInt <<= bits;
+        this.bits -= bits;
+        cache <<= bits;
 
         return bits;
     }
 
     public int bitsToAlign() {
-        return (deficit & 0x7) > 0 ? 8 - (deficit & 0x7) : 0;
+        return bits & 0x7;
     }
-    
+
     public int align() {
-        return (deficit & 0x7) > 0 ? skip(8 - (deficit & 0x7)) : 0;
+        return (bits & 0x7) > 0 ? skip(bits & 0x7) : 0;
     }
 
     public int check24Bits() {
-        if (deficit > 16) {
-            deficit -= 16;
-            curInt |= nextIgnore16() << deficit;
-        }
-        
-        if (deficit > 8) {
-            deficit -= 8;
-            curInt |= nextIgnore() << deficit;
-        }
-        
-        return curInt >>> 8;
+        return peek(24);
     }
-    
+
     public int check16Bits() {
-        if (deficit > 16) {
-            deficit -= 16;
-            curInt |= nextIgnore16() << deficit;
-        }
-        return curInt >>> 16;
+        if (bits < 16)
+            refill();
+        return (int) (cache >>> 48);
     }
 
     public int readFast16(int n) {
-        if (n == 0)
-            return 0;
-        if (deficit > 16) {
-            deficit -= 16;
-            curInt |= nextIgnore16() << deficit;
-        }
-
-        int ret = curInt >>> (32 - n);
-        deficit += n;
-        curInt <<= n;
-
-        return ret;
+        return readNBit(n);
     }
 
     public int checkNBit(int n) {
@@ -196,41 +208,28 @@ public class BitReader {
             throw new IllegalArgumentException("Can not check more then 24 bit");
         }
 
-        return checkNBitDontCare(n);
+        return peek(n);
     }
 
     public int checkNBitDontCare(int n) {
-        while (deficit + n > 32) {
-            deficit -= 8;
-            curInt |= nextIgnore() << deficit;
-        }
-        int res = curInt >>> (32 - n);
-        return res;
-    }
-
-    private int nextIgnore16() {
-        return bb.remaining() > 1 ? bb.getShort() & 0xffff : (bb.hasRemaining() ? ((bb.get() & 0xff) << 8) : 0);
-    }
-
-    private int nextIgnore() {
-        return bb.hasRemaining() ? bb.get() & 0xff : 0;
+        return peek(n);
     }
 
     public int curBit() {
-        return deficit & 0x7;
+        return -bits & 0x7;
     }
 
     public boolean lastByte() {
-        return bb.remaining() + 4 - (deficit >> 3) <= 1;
+        return bb.remaining() + ((bits + 7) >> 3) <= 1;
     }
 
     public void terminate() {
-        int putBack = (32 - deficit) >> 3;
+        int putBack = Math.max(bits, 0) >> 3;
         bb.position(bb.position() - putBack);
     }
 
     public int position() {
-        return ((bb.position() - initPos - 4) << 3) + deficit;
+        return ((bb.position() - initPos) << 3) - bits;
     }
 
     /**
@@ -238,14 +237,14 @@ public class BitReader {
      * byte unread byte
      */
     public void stop() {
-        bb.position(bb.position() - ((32 - deficit) >> 3));
+        bb.position(bb.position() - (Math.max(bits, 0) >> 3));
     }
 
     public int checkAllBits() {
-        return curInt;
+        return peek(32);
     }
 
     public boolean readBool() {
         return read1Bit() == 1;
     }
-}
\ No newline at end of file
+}
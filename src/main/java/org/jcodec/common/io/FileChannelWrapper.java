@@ -20,6 +20,15 @@ public class FileChannelWrapper implements SeekableByteChannel {
         this.ch = ch;
     }
 
+    /**
+     * @return The underlying file channel, sharing the position with this
+     *         wrapper, except for ReadAheadChannel which keeps its own
+     *         position.
+     */
+    public FileChannel getFileChannel() {
+        return ch;
+    }
+
     @Override
     public int read(ByteBuffer arg0) throws IOException {
         return ch.read(arg0);
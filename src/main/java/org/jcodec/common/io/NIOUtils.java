@@ -33,6 +33,9 @@ import java.util.List;
  * 
  */
 public class NIOUtils {
+    private static final int TRANSFER_BUFFER_SIZE = 1 << 20;
+
+    private static final ThreadLocal<ByteBuffer> transferBuffer = new ThreadLocal<ByteBuffer>();
 
     public static ByteBuffer search(ByteBuffer buffer, int n, byte[] param) {
         ByteBuffer result = buffer.duplicate();
@@ -297,6 +300,58 @@ public class NIOUtils {
         } while (read != -1 && amount > 0);
     }
 
+    /**
+     * Copies size bytes starting at offset of the input into the output at
+     * its current position, the input is left positioned after the copied
+     * range. Stops early at the end of the input.
+     * 
+     * When both ends are files the bytes are moved by the OS (
+     * FileChannel.transferTo ) and never enter the Java heap, otherwise they
+     * go through a direct buffer that is reused by the thread.
+     * 
+     * @return The number of bytes copied
+     */
+    public static long copyRange(SeekableByteChannel _in, long offset, long size, WritableByteChannel out)
+            throws IOException {
+        FileChannel src = fileChannel(_in);
+        WritableByteChannel dst = out instanceof FileChannelWrapper ? ((FileChannelWrapper) out).getFileChannel()
+                : out;
+        long pos = offset, end = offset + size;
+        if (src != null && dst instanceof FileChannel) {
+            while (pos < end) {
+                long transferred = src.transferTo(pos, end - pos, dst);
+                if (transferred <= 0)
+                    break;
+                pos += transferred;
+            }
+        }
+        if (pos < end) {
+            ByteBuffer buf = transferBuffer.get();
+            if (buf == null) {
+                buf = ByteBuffer.allocateDirect(TRANSFER_BUFFER_SIZE);
+                transferBuffer.set(buf);
+            }
+            _in.setPosition(pos);
+            while (pos < end) {
+                buf.clear();
+                buf.limit((int) Math.min(end - pos, buf.capacity()));
+                int read = _in.read(buf);
+                if (read == -1)
+                    break;
+                buf.flip();
+                while (buf.hasRemaining())
+                    out.write(buf);
+                pos += read;
+            }
+        }
+        _in.setPosition(pos);
+        return pos - offset;
+    }
+
+    private static FileChannel fileChannel(SeekableByteChannel ch) {
+        return ch instanceof FileChannelWrapper ? ((FileChannelWrapper) ch).getFileChannel() : null;
+    }
+
     public static void closeQuietly(Closeable channel) {
         if (channel == null)
             return;
@@ -356,20 +411,32 @@ public class NIOUtils {
         channel.write((ByteBuffer) ByteBuffer.allocate(8).putLong(value).flip());
     }
 
+    /**
+     * The reads are served from the blocks cached and prefetched by
+     * ReadAheadChannel, use new FileChannelWrapper for the plain file channel.
+     */
     public static FileChannelWrapper readableChannel(File file) throws FileNotFoundException {
-        return new FileChannelWrapper(new FileInputStream(file).getChannel());
+        return new ReadAheadChannel(new FileInputStream(file).getChannel());
     }
 
     public static FileChannelWrapper writableChannel(File file) throws FileNotFoundException {
         return new FileChannelWrapper(new FileOutputStream(file).getChannel());
     }
 
+    /**
+     * Output for the muxers, the writes are collected into large buffers and
+     * written out by an I/O thread, see WriteBehindChannel.
+     */
+    public static WriteBehindChannel writeBehindChannel(File file) throws IOException {
+        return new WriteBehindChannel(writableChannel(file));
+    }
+
     public static FileChannelWrapper rwChannel(File file) throws FileNotFoundException {
         return new FileChannelWrapper(new RandomAccessFile(file, "rw").getChannel());
     }
 
     public static FileChannelWrapper readableFileChannel(String file) throws FileNotFoundException {
-        return new FileChannelWrapper(new FileInputStream(file).getChannel());
+        return new ReadAheadChannel(new FileInputStream(file).getChannel());
     }
 
     public static FileChannelWrapper writableFileChannel(String file) throws FileNotFoundException {
@@ -0,0 +1,323 @@
+package org.jcodec.common.io;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.jcodec.common.SharedThreadPool;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * File channel that serves the reads from large aligned blocks of the file
+ * kept in a small LRU cache, so the demuxers reading box headers, EBML ids or
+ * TS packets a few bytes at a time don't go to the file system on every read.
+ *
+ * When the reads move from one block to the next the channel starts fetching
+ * the following blocks on a shared background pool, so on a slow storage the
+ * next block is usually there by the time it's needed. Reads larger than a
+ * block go straight to the file.
+ *
+ * The blocks are read with the positional reads of the file channel, the
+ * position of the underlying channel is never used, the transfers done on
+ * getFileChannel with explicit positions are safe.
+ *
+ * @author The JCodec project
+ *
+ */
+public class ReadAheadChannel extends FileChannelWrapper {
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+    public static final int DEFAULT_CACHE_BLOCKS = 16;
+    public static final int DEFAULT_PREFETCH_BLOCKS = 2;
+
+    private static final int SEQUENTIAL_BLOCKS = 2;
+
+    private FileChannel ch;
+    private int blockSize;
+    private int cacheBlocks;
+    private int prefetchBlocks;
+    private LinkedHashMap<Long, Block> cache;
+    private long pos;
+    private long size;
+    private long lastBlock;
+    private int sequential;
+
+    private long hits;
+    private long misses;
+    private long prefetches;
+    private long prefetchHits;
+
+    private static class Block {
+        private Future<ByteBuffer> data;
+        private boolean prefetched;
+
+        public Block(Future<ByteBuffer> data, boolean prefetched) {
+            this.data = data;
+            this.prefetched = prefetched;
+        }
+    }
+
+    public ReadAheadChannel(FileChannel ch) throws FileNotFoundException {
+        this(ch, DEFAULT_BLOCK_SIZE, DEFAULT_CACHE_BLOCKS, DEFAULT_PREFETCH_BLOCKS);
+    }
+
+    /**
+     * @param blockSize
+     *            Size of the blocks the file is read in
+     * @param cacheBlocks
+     *            Number of the recently used blocks kept, including the ones
+     *            being prefetched
+     * @param prefetchBlocks
+     *            Number of the blocks fetched ahead of the sequential reads, 0
+     *            disables the prefetch
+     */
+    public ReadAheadChannel(FileChannel ch, int blockSize, int cacheBlocks, int prefetchBlocks)
+            throws FileNotFoundException {
+        super(ch);
+        if (blockSize <= 0 || cacheBlocks <= prefetchBlocks || prefetchBlocks < 0)
+            throw new IllegalArgumentException("Cache of " + cacheBlocks + " blocks can't hold " + prefetchBlocks
+                    + " prefetched blocks");
+        this.ch = ch;
+        this.blockSize = blockSize;
+        this.cacheBlocks = cacheBlocks;
+        this.prefetchBlocks = prefetchBlocks;
+        this.cache = new LinkedHashMap<Long, Block>(cacheBlocks * 2, 0.75f, true);
+        this.size = -1;
+        this.lastBlock = -1;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!dst.hasRemaining())
+            return 0;
+        // The size is only asked again when the reads reach the end, the file
+        // may be still growing
+        if (pos >= size)
+            size = ch.size();
+        int total = 0;
+        boolean reloaded = false;
+        while (dst.hasRemaining() && pos < size) {
+            long blockNo = pos / blockSize;
+            int blockOff = (int) (pos % blockSize);
+            Block block = cache.get(blockNo);
+            if (block == null && blockOff == 0 && dst.remaining() >= blockSize) {
+                int read = readDirect(dst, blockNo);
+                if (read <= 0)
+                    break;
+                total += read;
+                continue;
+            }
+            if (block == null) {
+                ++misses;
+                block = new Block(load(blockNo), false);
+                put(blockNo, block);
+            } else {
+                ++hits;
+                if (block.prefetched) {
+                    ++prefetchHits;
+                    block.prefetched = false;
+                }
+            }
+            ByteBuffer data = get(blockNo, block);
+            if (blockOff >= data.limit()) {
+                // The block was read when the file was shorter
+                cache.remove(blockNo);
+                if (reloaded)
+                    break;
+                reloaded = true;
+                continue;
+            }
+            data.position(blockOff);
+            int toRead = Math.min(dst.remaining(), data.remaining());
+            data.limit(blockOff + toRead);
+            dst.put(data);
+            pos += toRead;
+            total += toRead;
+            access(blockNo);
+        }
+        // Nothing read into a non-empty buffer only at the end of the file
+        return total == 0 ? -1 : total;
+    }
+
+    /**
+     * Large reads aren't worth copying through the cache, the whole blocks are
+     * read straight into the destination.
+     */
+    private int readDirect(ByteBuffer dst, long blockNo) throws IOException {
+        ++misses;
+        int limit = dst.limit();
+        dst.limit(dst.position() + (dst.remaining() / blockSize) * blockSize);
+        int read;
+        try {
+            read = ch.read(dst, pos);
+        } finally {
+            dst.limit(limit);
+        }
+        if (read > 0) {
+            pos += read;
+            access((pos - 1) / blockSize);
+        }
+        return read;
+    }
+
+    /**
+     * Tracks the blocks the reads are coming from, after a few consecutive
+     * blocks the blocks ahead are prefetched.
+     */
+    private void access(long blockNo) throws IOException {
+        if (blockNo == lastBlock)
+            return;
+        if (blockNo > lastBlock && blockNo <= lastBlock + prefetchBlocks + 1)
+            ++sequential;
+        else
+            sequential = 0;
+        lastBlock = blockNo;
+        if (sequential < SEQUENTIAL_BLOCKS || prefetchBlocks == 0)
+            return;
+
+        long nBlocks = (size + blockSize - 1) / blockSize;
+        for (long next = blockNo + 1; next <= blockNo + prefetchBlocks && next < nBlocks; next++) {
+            if (cache.containsKey(next))
+                continue;
+            ++prefetches;
+            put(next, new Block(SharedThreadPool.get().submit(loader(next)), true));
+        }
+    }
+
+    private Future<ByteBuffer> load(long blockNo) throws IOException {
+        FutureTask<ByteBuffer> task = new FutureTask<ByteBuffer>(loader(blockNo));
+        task.run();
+        return task;
+    }
+
+    private Callable<ByteBuffer> loader(final long blockNo) {
+        return new Callable<ByteBuffer>() {
+            public ByteBuffer call() throws IOException {
+                ByteBuffer buf = ByteBuffer.allocate(blockSize);
+                long off = blockNo * blockSize;
+                while (buf.hasRemaining()) {
+                    int read = ch.read(buf, off + buf.position());
+                    if (read == -1)
+                        break;
+                }
+                buf.flip();
+                return buf;
+            }
+        };
+    }
+
+    private ByteBuffer get(long blockNo, Block block) throws IOException {
+        try {
+            return block.data.get().duplicate();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            // Failed prefetch, dropped so that the next read retries it
+            cache.remove(blockNo);
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void put(long blockNo, Block block) {
+        cache.put(blockNo, block);
+        Iterator<Entry<Long, Block>> it = cache.entrySet().iterator();
+        while (cache.size() > cacheBlocks && it.hasNext()) {
+            Entry<Long, Block> eldest = it.next();
+            if (eldest.getKey() == blockNo)
+                continue;
+            eldest.getValue().data.cancel(false);
+            it.remove();
+        }
+    }
+
+    /**
+     * The pending loads are cancelled without the interrupt, interrupting a
+     * thread in a file channel read closes the channel.
+     */
+    private void invalidate() {
+        for (Block block : cache.values())
+            block.data.cancel(false);
+        cache.clear();
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        invalidate();
+        int written = ch.write(src, pos);
+        pos += written;
+        size = Math.max(size, pos);
+        return written;
+    }
+
+    @Override
+    public long position() throws IOException {
+        return pos;
+    }
+
+    @Override
+    public SeekableByteChannel setPosition(long newPosition) throws IOException {
+        pos = newPosition;
+        return this;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        invalidate();
+        ch.truncate(size);
+        this.size = ch.size();
+        pos = Math.min(pos, this.size);
+        return this;
+    }
+
+    @Override
+    public void close() throws IOException {
+        invalidate();
+        super.close();
+    }
+
+    /**
+     * @return Number of the blocks the reads found in the cache
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return Number of the blocks the reads had to fetch from the file
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return Number of the blocks fetched ahead
+     */
+    public long getPrefetches() {
+        return prefetches;
+    }
+
+    /**
+     * @return Number of the prefetched blocks that were then read
+     */
+    public long getPrefetchHits() {
+        return prefetchHits;
+    }
+
+    @Override
+    public String toString() {
+        return "hits: " + hits + ", misses: " + misses + ", prefetches: " + prefetches + ", prefetch hits: "
+                + prefetchHits;
+    }
+}
@@ -0,0 +1,129 @@
+package org.jcodec.common.io;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * Searches byte streams for the 00 00 xx patterns of the MPEG family, start
+ * codes (00 00 01) and H.264 emulation prevention (00 00 03).
+ *
+ * Array backed buffers are scanned 8 bytes at a time. The zero bytes of a word
+ * are found with a few arithmetic operations on the whole word, only the bytes
+ * that follow a zero are looked at individually.
+ *
+ * All the positions taken and returned are absolute positions in the buffer.
+ *
+ * @author The JCodec project
+ *
+ */
+public class StartCodeScanner {
+    private static final long LOWS = 0x7f7f7f7f7f7f7f7fL;
+
+    /**
+     * Finds the first 00 00 01 that begins at or after from.
+     *
+     * @return position of the first zero byte of the start code or -1
+     */
+    public static int findStartCode(ByteBuffer buf, int from) {
+        return find(buf, from, 1);
+    }
+
+    /**
+     * Finds the first 00 00 03 that begins at or after from.
+     *
+     * @return position of the first zero byte of the pattern or -1
+     */
+    public static int findEmulationPrevention(ByteBuffer buf, int from) {
+        return find(buf, from, 3);
+    }
+
+    public static int findStartCode(byte[] arr, int from, int to) {
+        return find(arr, from, to, (byte) 1);
+    }
+
+    public static int findEmulationPrevention(byte[] arr, int from, int to) {
+        return find(arr, from, to, (byte) 3);
+    }
+
+    private static int find(ByteBuffer buf, int from, int third) {
+        if (buf.hasArray()) {
+            int off = buf.arrayOffset();
+            int res = find(buf.array(), from + off, buf.limit() + off, (byte) third);
+            return res == -1 ? -1 : res - off;
+        }
+        for (int i = from, last = buf.limit() - 2; i < last; i++) {
+            if (buf.get(i) == 0 && buf.get(i + 1) == 0 && buf.get(i + 2) == third)
+                return i;
+        }
+        return -1;
+    }
+
+    private static int find(byte[] arr, int from, int to, byte third) {
+        // byte k of the array is byte k of the word
+        ByteBuffer words = ByteBuffer.wrap(arr).order(ByteOrder.LITTLE_ENDIAN);
+        int i = from;
+        for (int wordsEnd = to - 8; i <= wordsEnd; i += 8) {
+            long w = words.getLong(i);
+            // high bit set in every zero byte
+            long zeros = ~(((w & LOWS) + LOWS) | w | LOWS);
+            while (zeros != 0) {
+                int k = i + (Long.numberOfTrailingZeros(zeros) >> 3);
+                if (k + 2 < to && arr[k + 1] == 0 && arr[k + 2] == third)
+                    return k;
+                zeros &= zeros - 1;
+            }
+        }
+        for (int last = to - 2; i < last; i++) {
+            if (arr[i] == 0 && arr[i + 1] == 0 && arr[i + 2] == third)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the emulation prevention bytes from the buffer in place, the
+     * data between them is moved with bulk copies. The limit of the buffer is
+     * moved back by the number of bytes removed.
+     */
+    public static void unescape(ByteBuffer buf) {
+        int from = buf.position();
+        int limit = buf.limit();
+        int e = findEmulationPrevention(buf, from);
+        if (e == -1)
+            return;
+
+        if (buf.hasArray()) {
+            byte[] arr = buf.array();
+            int off = buf.arrayOffset();
+            int out = e + 2 + off;
+            int in = e + 3 + off;
+            int end = limit + off;
+            while (true) {
+                int next = find(arr, in, end, (byte) 3);
+                int runEnd = next == -1 ? end : next + 2;
+                System.arraycopy(arr, in, arr, out, runEnd - in);
+                out += runEnd - in;
+                if (next == -1)
+                    break;
+                in = next + 3;
+            }
+            buf.limit(out - off);
+        } else {
+            int out = e + 2;
+            int in = e + 3;
+            while (true) {
+                int next = find(buf, in, 3);
+                int runEnd = next == -1 ? limit : next + 2;
+                for (; in < runEnd; in++, out++)
+                    buf.put(out, buf.get(in));
+                if (next == -1)
+                    break;
+                in = next + 3;
+            }
+            buf.limit(out);
+        }
+    }
+}
@@ -33,17 +33,58 @@ public class VLC {
         return vlc;
     }
 
+    // longest prefix the single lookup table of readVLC covers
+    private static final int FAST_BITS = 12;
+
     private int[] codes;
     private int[] codeSizes;
+    private int[] symbols;
 
     private int[] values;
     private int[] valueSizes;
 
+    private int fastBits;
+    // (symbol << 5) | code length, 0 for the prefixes of longer codes
+    private volatile int[] fast;
+
     public VLC(int[] codes, int[] codeSizes) {
+        this(codes, codeSizes, null);
+    }
+
+    /**
+     * @param symbols
+     *            values the codes stand for, null to return the code index
+     */
+    public VLC(int[] codes, int[] codeSizes, int[] symbols) {
         this.codes = codes;
         this.codeSizes = codeSizes;
+        this.symbols = symbols;
 
         _invert();
+
+        int maxLen = 0;
+        for (int i = 0; i < codeSizes.length; i++)
+            maxLen = Math.max(maxLen, codeSizes[i]);
+        fastBits = Math.max(1, Math.min(FAST_BITS, maxLen));
+    }
+
+    private int[] buildFast() {
+        int[] table = new int[1 << fastBits];
+        for (int i = 0; i < codeSizes.length; i++) {
+            int len = codeSizes[i];
+            if (len > fastBits)
+                continue;
+            int first = codes[i] >>> (32 - fastBits);
+            int entry = (symbol(i) << 5) | len;
+            for (int k = 0; k < (1 << (fastBits - len)); k++)
+                table[first + k] = entry;
+        }
+        fast = table;
+        return table;
+    }
+
+    private int symbol(int index) {
+        return symbols == null || index < 0 ? index : symbols[index];
     }
 
     private void _invert() {
@@ -98,14 +139,31 @@ public class VLC {
         } else
             _in.skipFast(len);
 
-        return code;
+        return symbol(code);
     }
 
+    /**
+     * Reads a code with one table lookup when it's at most 12 bits long, longer
+     * codes are found walking the 8 bit tables. All the total_zeros and
+     * run_before codes of H.264 and all but the longest coeff_token codes take
+     * the fast path.
+     */
     public int readVLC(BitReader _in) {
+        int[] table = fast;
+        if (table == null)
+            table = buildFast();
+        int entry = table[_in.peek(fastBits)];
+        if (entry == 0)
+            return readVLCTree(_in);
+        _in.skipFast(entry & 0x1f);
+        return entry >> 5;
+    }
+
+    private int readVLCTree(BitReader _in) {
 
         int code = 0, len = 0, overall = 0, total = 0;
         for (int i = 0; len == 0; i++) {
-            int string = _in.checkNBit(8);
+            int string = _in.peek(8);
             int ind = string + code;
             code = values[ind];
             len = valueSizes[ind];
@@ -121,7 +179,7 @@ public class VLC {
 
         // System.out.println("VLC: " + binary(overall, total));
 
-        return code;
+        return symbol(code);
     }
 
     private static String binary(int string, int len) {
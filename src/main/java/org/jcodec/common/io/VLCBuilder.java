@@ -52,18 +52,13 @@ public class VLCBuilder {
 
     public VLC getVLC() {
         final VLCBuilder self = this;
-        return new VLC(codes.toArray(), codesSizes.toArray()) {
-            public int readVLC(BitReader _in) {
-                return self.inverse.get(super.readVLC(_in));
-            }
-            
-            public int readVLC16(BitReader _in) {
-                return self.inverse.get(super.readVLC16(_in));
-            }
-
+        int[] symbols = new int[codes.size()];
+        for (int i = 0; i < symbols.length; i++)
+            symbols[i] = inverse.get(i);
+        return new VLC(codes.toArray(), codesSizes.toArray(), symbols) {
             public void writeVLC(BitWriter out, int code) {
                 super.writeVLC(out, self.forward.get(code));
             }
         };
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,270 @@
+package org.jcodec.common.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * Output channel that collects the writes into large direct buffers and writes
+ * them out on its own I/O thread, so the muxer (and the encoder driving it)
+ * only waits for the disk when all the buffers are in flight.
+ *
+ * The buffers are written in the order they are filled, a setPosition to an
+ * earlier offset (the mdat size, the header of the web optimized movie) starts
+ * a new buffer that lands on top of the data written before it. The errors of
+ * the I/O thread are reported by the next write, flush or close.
+ *
+ * @author The JCodec project
+ *
+ */
+public class WriteBehindChannel implements SeekableByteChannel {
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+    public static final int DEFAULT_BUFFERS = 4;
+
+    public enum SyncPolicy {
+        /**
+         * The data is left to the OS
+         */
+        NEVER,
+        /**
+         * The file is synced on flush and close
+         */
+        ON_FLUSH,
+        /**
+         * The file is synced after every buffer written
+         */
+        EVERY_BUFFER
+    }
+
+    private SeekableByteChannel out;
+    private SyncPolicy syncPolicy;
+    private int bufferSize;
+    private int maxBuffers;
+    private int allocated;
+    private BlockingQueue<ByteBuffer> free;
+    private ExecutorService io;
+
+    private ByteBuffer cur;
+    private long curStart;
+    private long pos;
+    private long size;
+    private boolean open;
+    private volatile IOException error;
+
+    public WriteBehindChannel(SeekableByteChannel out) throws IOException {
+        this(out, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFERS, SyncPolicy.NEVER);
+    }
+
+    /**
+     * @param bufferSize
+     *            Size of the buffers the writes are collected into
+     * @param maxBuffers
+     *            Number of the buffers, this bounds the memory used and how
+     *            far the writes may get ahead of the disk
+     * @param syncPolicy
+     *            When the file is synced to the disk, only a FileChannelWrapper
+     *            output can be synced
+     */
+    public WriteBehindChannel(SeekableByteChannel out, int bufferSize, int maxBuffers, SyncPolicy syncPolicy)
+            throws IOException {
+        if (bufferSize <= 0 || maxBuffers < 2)
+            throw new IllegalArgumentException("At least 2 buffers are needed to write behind");
+        this.out = out;
+        this.bufferSize = bufferSize;
+        this.maxBuffers = maxBuffers;
+        this.syncPolicy = syncPolicy;
+        this.free = new ArrayBlockingQueue<ByteBuffer>(maxBuffers);
+        this.io = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r);
+                t.setDaemon(true);
+                t.setName(WriteBehindChannel.class.getName());
+                return t;
+            }
+        });
+        this.pos = out.position();
+        this.size = out.size();
+        this.open = true;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        checkOpen();
+        int written = src.remaining();
+        if (cur != null && cur.position() == 0)
+            curStart = pos;
+        else if (cur != null && pos != curStart + cur.position())
+            submit();
+        while (src.hasRemaining()) {
+            if (cur == null) {
+                cur = takeBuffer();
+                curStart = pos;
+            }
+            int n = Math.min(src.remaining(), cur.remaining());
+            ByteBuffer part = src.duplicate();
+            part.limit(part.position() + n);
+            cur.put(part);
+            src.position(src.position() + n);
+            pos += n;
+            if (!cur.hasRemaining())
+                submit();
+        }
+        size = Math.max(size, pos);
+        return written;
+    }
+
+    /**
+     * A free buffer, a new one while fewer than maxBuffers are allocated,
+     * otherwise waits for the I/O thread to return one.
+     */
+    private ByteBuffer takeBuffer() throws IOException {
+        ByteBuffer buf = free.poll();
+        if (buf == null && allocated < maxBuffers) {
+            ++allocated;
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        try {
+            if (buf == null)
+                buf = free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        checkError();
+        buf.clear();
+        return buf;
+    }
+
+    private void submit() {
+        final ByteBuffer buf = cur;
+        final long start = curStart;
+        cur = null;
+        buf.flip();
+        io.submit(new Runnable() {
+            public void run() {
+                try {
+                    if (error == null) {
+                        out.setPosition(start);
+                        while (buf.hasRemaining())
+                            out.write(buf);
+                        if (syncPolicy == SyncPolicy.EVERY_BUFFER)
+                            sync();
+                    }
+                } catch (IOException e) {
+                    error = e;
+                } catch (RuntimeException e) {
+                    error = new IOException(e);
+                } finally {
+                    free.add(buf);
+                }
+            }
+        });
+    }
+
+    private void sync() throws IOException {
+        if (out instanceof FileChannelWrapper)
+            ((FileChannelWrapper) out).getFileChannel().force(false);
+    }
+
+    /**
+     * Waits until everything written so far is on the output, syncing it with
+     * the ON_FLUSH policy.
+     */
+    public void flush() throws IOException {
+        checkOpen();
+        if (cur != null && cur.position() > 0)
+            submit();
+        try {
+            io.submit(new Callable<Void>() {
+                public Void call() throws IOException {
+                    if (error == null && syncPolicy != SyncPolicy.NEVER)
+                        sync();
+                    return null;
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            error = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+        checkError();
+    }
+
+    private void checkError() throws IOException {
+        if (error != null)
+            throw new IOException("Write behind failed", error);
+    }
+
+    private void checkOpen() throws IOException {
+        if (!open)
+            throw new ClosedChannelException();
+        checkError();
+    }
+
+    /**
+     * Reads what was written, the pending writes are flushed first.
+     */
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        flush();
+        out.setPosition(pos);
+        int read = out.read(dst);
+        if (read > 0)
+            pos += read;
+        return read;
+    }
+
+    @Override
+    public long position() throws IOException {
+        return pos;
+    }
+
+    @Override
+    public SeekableByteChannel setPosition(long newPosition) throws IOException {
+        pos = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long newSize) throws IOException {
+        flush();
+        out.truncate(newSize);
+        size = out.size();
+        pos = Math.min(pos, size);
+        return this;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!open)
+            return;
+        try {
+            flush();
+        } finally {
+            open = false;
+            io.shutdown();
+            out.close();
+        }
+    }
+}
@@ -89,8 +89,10 @@ public final class ColorSpace {
     private static final int[] _000 = new int[] { 0, 0, 0 };
     private static final int[] _011 = new int[] { 0, 1, 1 };
     private static final int[] _012 = new int[] { 0, 1, 2 };
+    private static final int[] _0000 = new int[] { 0, 0, 0, 0 };
     public final static ColorSpace BGR = new ColorSpace("BGR", 3, _000, _000, _000, false);
     public final static ColorSpace RGB = new ColorSpace("RGB", 3, _000, _000, _000, false);
+    public final static ColorSpace RGBA = new ColorSpace("RGBA", 4, _0000, _0000, _0000, false);
     public final static ColorSpace YUV420 = new ColorSpace("YUV420", 3, _012, _011, _011, true);
     public final static ColorSpace YUV420J = new ColorSpace("YUV420J", 3, _012, _011, _011, true);
     public final static ColorSpace YUV422 = new ColorSpace("YUV422", 3, _012, _011, _000, true);
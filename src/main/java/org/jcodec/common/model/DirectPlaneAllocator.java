@@ -0,0 +1,71 @@
+package org.jcodec.common.model;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ * 
+ * Allocates the off-heap planes of the OffHeapPicture. The native memory of a
+ * direct buffer only goes away when the garbage collector gets to the buffer
+ * object, so the released buffers are kept for reuse, up to maxRetained bytes,
+ * rather than dropped.
+ * 
+ * The allocator is thread safe.
+ * 
+ * @author The JCodec project
+ * 
+ */
+public class DirectPlaneAllocator {
+    private Map<Integer, List<ByteBuffer>> free;
+    private long maxRetained;
+    private long retained;
+
+    public static DirectPlaneAllocator createDirectPlaneAllocator(long maxRetained) {
+        return new DirectPlaneAllocator(maxRetained);
+    }
+
+    public DirectPlaneAllocator(long maxRetained) {
+        this.maxRetained = maxRetained;
+        this.free = new HashMap<Integer, List<ByteBuffer>>();
+    }
+
+    /**
+     * Returns a direct buffer with the capacity and the limit of size and
+     * position of 0.
+     */
+    public synchronized ByteBuffer allocate(int size) {
+        List<ByteBuffer> list = free.get(size);
+        if (list == null || list.isEmpty())
+            return ByteBuffer.allocateDirect(size);
+        retained -= size;
+        ByteBuffer buf = list.remove(list.size() - 1);
+        buf.clear();
+        return buf;
+    }
+
+    public synchronized void release(ByteBuffer buf) {
+        if (buf == null || retained + buf.capacity() > maxRetained)
+            return;
+        List<ByteBuffer> list = free.get(buf.capacity());
+        if (list == null) {
+            list = new ArrayList<ByteBuffer>();
+            free.put(buf.capacity(), list);
+        }
+        list.add(buf);
+        retained += buf.capacity();
+    }
+
+    public synchronized void clear() {
+        free.clear();
+        retained = 0;
+    }
+
+    public synchronized long getRetained() {
+        return retained;
+    }
+}
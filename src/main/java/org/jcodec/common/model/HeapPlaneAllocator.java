@@ -0,0 +1,24 @@
+package org.jcodec.common.model;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ * 
+ * Allocates a new zeroed plane every time and leaves released planes to the
+ * garbage collector. This is what the pictures use when no allocator is given.
+ * 
+ * @author The JCodec project
+ * 
+ */
+public class HeapPlaneAllocator implements PlaneAllocator {
+    public static final HeapPlaneAllocator INSTANCE = new HeapPlaneAllocator();
+
+    @Override
+    public byte[] allocate(int size) {
+        return new byte[size];
+    }
+
+    @Override
+    public void release(byte[] plane) {
+    }
+}
@@ -0,0 +1,157 @@
+package org.jcodec.common.model;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ * 
+ * A picture parked outside of the Java heap, the planes are kept in direct
+ * byte buffers.
+ * 
+ * The codecs and the transforms work on the heap planes of the Picture, a
+ * picture that waits in a queue doesn't need to. Storing the queued pictures
+ * off-heap keeps the heap down to the few pictures that are worked on, the
+ * copy in and out is a bulk memory copy per plane. Yuv420pToRgb reads the
+ * planes where they are, a parked picture can be shown without the copy.
+ * 
+ * @author The JCodec project
+ * 
+ */
+public class OffHeapPicture {
+    private int width;
+    private int height;
+    private ColorSpace color;
+    private Rect crop;
+    private int lowBitsNum;
+    private ByteBuffer[] data;
+    private ByteBuffer[] lowBits;
+    private DirectPlaneAllocator allocator;
+
+    private OffHeapPicture(Picture pic, DirectPlaneAllocator allocator) {
+        this.width = pic.getWidth();
+        this.height = pic.getHeight();
+        this.color = pic.getColor();
+        this.crop = pic.getCrop();
+        this.lowBitsNum = pic.getLowBitsNum();
+        this.allocator = allocator;
+        this.data = store(pic.getData());
+        if (pic.getLowBits() != null)
+            this.lowBits = store(pic.getLowBits());
+    }
+
+    /**
+     * Copies the picture to newly allocated direct buffers.
+     */
+    public static OffHeapPicture createOffHeapPicture(Picture pic) {
+        return new OffHeapPicture(pic, null);
+    }
+
+    /**
+     * Copies the picture to direct buffers taken from the allocator, they go
+     * back to the allocator on release.
+     */
+    public static OffHeapPicture createOffHeapPictureWithAllocator(Picture pic, DirectPlaneAllocator allocator) {
+        return new OffHeapPicture(pic, allocator);
+    }
+
+    private ByteBuffer[] store(byte[][] planes) {
+        ByteBuffer[] result = new ByteBuffer[planes.length];
+        for (int i = 0; i < planes.length; i++) {
+            if (planes[i] == null)
+                continue;
+            result[i] = allocator == null ? ByteBuffer.allocateDirect(planes[i].length) : allocator
+                    .allocate(planes[i].length);
+            result[i].put(planes[i]);
+            result[i].clear();
+        }
+        return result;
+    }
+
+    /**
+     * Brings the picture back to the heap, the planes come from the plane
+     * allocator.
+     */
+    public Picture toPicture(PlaneAllocator planeAllocator) {
+        Picture result = Picture.createCroppedHiBD(width, height, lowBitsNum, color, crop, planeAllocator);
+        copyTo(result);
+        return result;
+    }
+
+    /**
+     * Copies the pixels into a compatible heap picture, the picture gets the
+     * crop of this one.
+     */
+    public void copyTo(Picture dst) {
+        if (dst.getColor() != color || dst.getWidth() != width || dst.getHeight() != height)
+            throw new IllegalArgumentException("Can not copy to incompatible picture");
+        load(data, dst.getData());
+        if (lowBits != null && dst.getLowBits() != null)
+            load(lowBits, dst.getLowBits());
+        dst.setCrop(crop);
+    }
+
+    private static void load(ByteBuffer[] src, byte[][] dst) {
+        for (int i = 0; i < src.length; i++) {
+            if (src[i] == null || dst[i] == null)
+                continue;
+            ByteBuffer dup = src[i].duplicate();
+            dup.get(dst[i], 0, Math.min(dup.remaining(), dst[i].length));
+        }
+    }
+
+    /**
+     * Gives the direct buffers back to the allocator, or leaves them to the
+     * garbage collector if there's none. The picture can't be used after.
+     */
+    public void release() {
+        if (data == null)
+            return;
+        if (allocator != null) {
+            for (int i = 0; i < data.length; i++)
+                allocator.release(data[i]);
+            if (lowBits != null) {
+                for (int i = 0; i < lowBits.length; i++)
+                    allocator.release(lowBits[i]);
+            }
+        }
+        data = null;
+        lowBits = null;
+    }
+
+    public ByteBuffer getPlaneData(int plane) {
+        return data[plane].duplicate();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public ColorSpace getColor() {
+        return color;
+    }
+
+    public Rect getCrop() {
+        return crop;
+    }
+
+    public int getLowBitsNum() {
+        return lowBitsNum;
+    }
+
+    /**
+     * Off-heap bytes held by this picture.
+     */
+    public long getSize() {
+        long size = 0;
+        for (int i = 0; data != null && i < data.length; i++)
+            size += data[i] == null ? 0 : data[i].capacity();
+        for (int i = 0; lowBits != null && i < lowBits.length; i++)
+            size += lowBits[i] == null ? 0 : lowBits[i].capacity();
+        return size;
+    }
+}
@@ -28,6 +28,7 @@ public class Picture {
     private int lowBitsNum;
 
     private Rect crop;
+    private PlaneAllocator allocator;
 
     public static Picture createPicture(int width, int height, byte[][] data, ColorSpace color) {
         return new Picture(width, height, data, null, color, 0, new Rect(0, 0, width, height));
@@ -75,7 +76,20 @@ public class Picture {
         return createCropped(width, height, colorSpace, null);
     }
 
+    public static Picture createWithAllocator(int width, int height, ColorSpace colorSpace, PlaneAllocator allocator) {
+        return createCropped(width, height, colorSpace, null, allocator);
+    }
+
     public static Picture createCropped(int width, int height, ColorSpace colorSpace, Rect crop) {
+        return createCropped(width, height, colorSpace, crop, null);
+    }
+
+    /**
+     * Creates a picture with the planes taken from the allocator, the planes
+     * are given back to it on release.
+     */
+    public static Picture createCropped(int width, int height, ColorSpace colorSpace, Rect crop,
+            PlaneAllocator allocator) {
         int[] planeSizes = new int[MAX_PLANES];
         for (int i = 0; i < colorSpace.nComp; i++) {
             planeSizes[colorSpace.compPlane[i]] += (width >> colorSpace.compWidth[i])
@@ -88,14 +102,21 @@ public class Picture {
         byte[][] data = new byte[nPlanes][];
         for (int i = 0, plane = 0; i < MAX_PLANES; i++) {
             if (planeSizes[i] != 0) {
-                data[plane++] = new byte[planeSizes[i]];
+                data[plane++] = allocator == null ? new byte[planeSizes[i]] : allocator.allocate(planeSizes[i]);
             }
         }
-        return new Picture(width, height, data, null, colorSpace, 0, crop);
+        Picture result = new Picture(width, height, data, null, colorSpace, 0, crop);
+        result.allocator = allocator;
+        return result;
     }
     
     public static Picture createCroppedHiBD(int width, int height, int lowBitsNum, ColorSpace colorSpace, Rect crop) {
-        Picture result = createCropped(width, height, colorSpace, crop);
+        return createCroppedHiBD(width, height, lowBitsNum, colorSpace, crop, null);
+    }
+
+    public static Picture createCroppedHiBD(int width, int height, int lowBitsNum, ColorSpace colorSpace, Rect crop,
+            PlaneAllocator allocator) {
+        Picture result = createCropped(width, height, colorSpace, crop, allocator);
         if (lowBitsNum <= 0)
             return result;
         byte[][] data = result.getData();
@@ -103,7 +124,7 @@ public class Picture {
         
         byte[][] lowBits = new byte[nPlanes][];
         for (int i = 0, plane = 0; i < nPlanes; i++) {
-            lowBits[plane++] = new byte[data[i].length];
+            lowBits[plane++] = allocator == null ? new byte[data[i].length] : allocator.allocate(data[i].length);
         }
         result.setLowBits(lowBits);
         result.setLowBitsNum(lowBitsNum);
@@ -161,7 +182,36 @@ public class Picture {
     }
 
     public Picture createCompatible() {
-        return Picture.create(width, height, color);
+        return Picture.createCropped(width, height, color, null, allocator);
+    }
+
+    /**
+     * The allocator the planes of this picture came from, null if the planes
+     * were allocated on the heap or supplied by the caller.
+     */
+    public PlaneAllocator getAllocator() {
+        return allocator;
+    }
+
+    protected void setAllocator(PlaneAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    /**
+     * Gives the planes back to the allocator they came from. The picture can't
+     * be used after this call.
+     */
+    public void release() {
+        if (allocator != null && data != null) {
+            for (int i = 0; i < data.length; i++)
+                allocator.release(data[i]);
+            if (lowBits != null) {
+                for (int i = 0; i < lowBits.length; i++)
+                    allocator.release(lowBits[i]);
+            }
+        }
+        data = null;
+        lowBits = null;
     }
 
     public void copyFrom(Picture src) {
@@ -193,7 +243,7 @@ public class Picture {
     public Picture cropped() {
         if (!cropNeeded())
             return this;
-        Picture result = Picture.create(crop.getWidth(), crop.getHeight(), color);
+        Picture result = Picture.createCropped(crop.getWidth(), crop.getHeight(), color, null, allocator);
 
         if(color.planar) {
             for (int plane = 0; plane < data.length; plane++) {
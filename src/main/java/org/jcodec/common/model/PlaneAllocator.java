@@ -0,0 +1,26 @@
+package org.jcodec.common.model;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ * 
+ * Source of the memory for the picture planes. Pictures created with an
+ * allocator hand their planes back to it when released.
+ * 
+ * @author The JCodec project
+ * 
+ */
+public interface PlaneAllocator {
+
+    /**
+     * Returns a plane of exactly size bytes. Whether the plane is zeroed is up
+     * to the implementation.
+     */
+    byte[] allocate(int size);
+
+    /**
+     * Takes back a plane that was allocated with this allocator, the caller
+     * must not use the plane after this call.
+     */
+    void release(byte[] plane);
+}
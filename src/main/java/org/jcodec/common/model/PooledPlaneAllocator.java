@@ -0,0 +1,72 @@
+package org.jcodec.common.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ * 
+ * Keeps the released planes and hands them out again for the allocations of
+ * the same size, so a steady stream of pictures of one format stops producing
+ * garbage. At most maxRetained bytes are kept, the planes released beyond that
+ * are left to the garbage collector.
+ * 
+ * The recycled planes are not cleared, they hold whatever their previous
+ * owner left there.
+ * 
+ * The allocator is thread safe.
+ * 
+ * @author The JCodec project
+ * 
+ */
+public class PooledPlaneAllocator implements PlaneAllocator {
+    private Map<Integer, List<byte[]>> free;
+    private long maxRetained;
+    private long retained;
+
+    public static PooledPlaneAllocator createPooledPlaneAllocator(long maxRetained) {
+        return new PooledPlaneAllocator(maxRetained);
+    }
+
+    public PooledPlaneAllocator(long maxRetained) {
+        this.maxRetained = maxRetained;
+        this.free = new HashMap<Integer, List<byte[]>>();
+    }
+
+    @Override
+    public synchronized byte[] allocate(int size) {
+        List<byte[]> list = free.get(size);
+        if (list == null || list.isEmpty())
+            return new byte[size];
+        retained -= size;
+        return list.remove(list.size() - 1);
+    }
+
+    @Override
+    public synchronized void release(byte[] plane) {
+        if (plane == null || retained + plane.length > maxRetained)
+            return;
+        List<byte[]> list = free.get(plane.length);
+        if (list == null) {
+            list = new ArrayList<byte[]>();
+            free.put(plane.length, list);
+        }
+        list.add(plane);
+        retained += plane.length;
+    }
+
+    /**
+     * Drops all the retained planes.
+     */
+    public synchronized void clear() {
+        free.clear();
+        retained = 0;
+    }
+
+    public synchronized long getRetained() {
+        return retained;
+    }
+}
@@ -1,5 +1,10 @@
 package org.jcodec.containers.mkv.muxer;
 import static org.jcodec.containers.mkv.MKVType.CodecID;
+import static org.jcodec.containers.mkv.MKVType.CueClusterPosition;
+import static org.jcodec.containers.mkv.MKVType.CuePoint;
+import static org.jcodec.containers.mkv.MKVType.CueTime;
+import static org.jcodec.containers.mkv.MKVType.CueTrack;
+import static org.jcodec.containers.mkv.MKVType.CueTrackPositions;
 import static org.jcodec.containers.mkv.MKVType.Cues;
 import static org.jcodec.containers.mkv.MKVType.DateUTC;
 import static org.jcodec.containers.mkv.MKVType.DocType;
@@ -15,6 +20,10 @@ import static org.jcodec.containers.mkv.MKVType.MuxingApp;
 import static org.jcodec.containers.mkv.MKVType.Name;
 import static org.jcodec.containers.mkv.MKVType.PixelHeight;
 import static org.jcodec.containers.mkv.MKVType.PixelWidth;
+import static org.jcodec.containers.mkv.MKVType.Seek;
+import static org.jcodec.containers.mkv.MKVType.SeekHead;
+import static org.jcodec.containers.mkv.MKVType.SeekID;
+import static org.jcodec.containers.mkv.MKVType.SeekPosition;
 import static org.jcodec.containers.mkv.MKVType.Segment;
 import static org.jcodec.containers.mkv.MKVType.TimecodeScale;
 import static org.jcodec.containers.mkv.MKVType.TrackEntry;
@@ -31,20 +40,17 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
 import org.jcodec.common.AudioCodecMeta;
 import org.jcodec.common.Codec;
+import org.jcodec.common.LongArrayList;
 import org.jcodec.common.Muxer;
 import org.jcodec.common.MuxerTrack;
 import org.jcodec.common.VideoCodecMeta;
 import org.jcodec.common.io.SeekableByteChannel;
-import org.jcodec.containers.mkv.CuesFactory;
 import org.jcodec.containers.mkv.MKVType;
-import org.jcodec.containers.mkv.SeekHeadFactory;
-import org.jcodec.containers.mkv.boxes.EbmlBase;
 import org.jcodec.containers.mkv.boxes.EbmlBin;
 import org.jcodec.containers.mkv.boxes.EbmlDate;
 import org.jcodec.containers.mkv.boxes.EbmlFloat;
@@ -53,26 +59,48 @@ import org.jcodec.containers.mkv.boxes.EbmlString;
 import org.jcodec.containers.mkv.boxes.EbmlUint;
 import org.jcodec.containers.mkv.boxes.MkvBlock;
 import org.jcodec.containers.mkv.muxer.MKVMuxerTrack.MKVMuxerTrackType;
+import org.jcodec.containers.mkv.util.EbmlUtil;
 
 /**
  * This class is part of JCodec ( www.jcodec.org ) This software is distributed
  * under FreeBSD License
  * 
+ * Writes the file as it goes: the header is written with the first frame, each
+ * cluster as soon as it's closed. A cluster is closed by a video key frame or
+ * once it spans MAX_CLUSTER_DURATION. Only the cue points are kept in memory,
+ * the cues are written at the end of the segment and the seek head and the
+ * segment size are patched in at finish.
+ * 
+ * All the tracks must be added before the first frame.
+ * 
  * @author The JCodec project
  * 
  */
 public class MKVMuxer implements Muxer {
+    private static final int TIMECODE_SCALE = MKVMuxerTrack.NANOSECONDS_IN_A_MILISECOND * 40;
+    /**
+     * In units of TIMECODE_SCALE, 5 seconds.
+     */
+    public static final int MAX_CLUSTER_DURATION = 125;
+    private static final int SEEK_HEAD_RESERVE = 96;
+    private static final int SEGMENT_SIZE_LENGTH = 8;
 
     private List<MKVMuxerTrack> tracks;
     private MKVMuxerTrack audioTrack;
     private MKVMuxerTrack videoTrack;
-    private EbmlMaster mkvInfo;
-    private EbmlMaster mkvTracks;
-    private EbmlMaster mkvCues;
-    private EbmlMaster mkvSeekHead;
-    private List<EbmlMaster> clusterList;
     private SeekableByteChannel sink;
-    
+
+    private long segmentPos;
+    private long segmentDataPos;
+    private long infoPos;
+    private long tracksPos;
+    private EbmlMaster mkvInfo;
+    private List<MkvBlock> clusterBlocks;
+    private long clusterTimecode;
+    private long maxTimecode;
+    private LongArrayList cueTimes;
+    private LongArrayList cuePositions;
+
     private static Map<Codec, String> codec2mkv = new HashMap<Codec, String>();
     static {
         codec2mkv.put(Codec.H264, "V_MPEG4/ISO/AVC");
@@ -83,12 +111,16 @@ public class MKVMuxer implements Muxer {
     public MKVMuxer(SeekableByteChannel s) {
         this.sink = s;
         this.tracks = new ArrayList<MKVMuxerTrack>();
-        this.clusterList = new LinkedList<EbmlMaster>();
+        this.clusterBlocks = new ArrayList<MkvBlock>();
+        this.cueTimes = LongArrayList.createLongArrayList();
+        this.cuePositions = LongArrayList.createLongArrayList();
+        this.segmentPos = -1;
+        this.maxTimecode = Long.MIN_VALUE;
     }
 
     public MKVMuxerTrack createVideoTrack(VideoCodecMeta meta, String codecId) {
         if (videoTrack == null) {
-            videoTrack = new MKVMuxerTrack();
+            videoTrack = new MKVMuxerTrack(this);
             tracks.add(videoTrack);
             videoTrack.codecId = codecId;
             videoTrack.videoMeta = meta;
@@ -97,31 +129,102 @@ public class MKVMuxer implements Muxer {
         return videoTrack;
     }
 
+    void addBlock(MKVMuxerTrack track, MkvBlock block) throws IOException {
+        if (segmentPos == -1)
+            writeHeader();
+        if (!clusterBlocks.isEmpty()) {
+            long relative = block.absoluteTimecode - clusterTimecode;
+            if ((track == videoTrack && block._keyFrame) || relative > MAX_CLUSTER_DURATION
+                    || relative < Short.MIN_VALUE)
+                writeCluster();
+        }
+        if (clusterBlocks.isEmpty())
+            clusterTimecode = block.absoluteTimecode;
+        block.timecode = (int) (block.absoluteTimecode - clusterTimecode);
+        clusterBlocks.add(block);
+        if (block.absoluteTimecode > maxTimecode)
+            maxTimecode = block.absoluteTimecode;
+    }
+
+    private void writeHeader() throws IOException {
+        defaultEbmlHeader().mux(sink);
+
+        segmentPos = sink.position();
+        ByteBuffer segment = ByteBuffer.allocate(Segment.id.length + SEGMENT_SIZE_LENGTH);
+        segment.put(Segment.id);
+        // Unknown size until finish
+        segment.put(EbmlUtil.ebmlEncodeLen(0xffffffffffffffL, SEGMENT_SIZE_LENGTH));
+        segment.flip();
+        sink.write(segment);
+        segmentDataPos = sink.position();
+
+        sink.write(voidElement(SEEK_HEAD_RESERVE));
+        infoPos = sink.position();
+        mkvInfo = muxInfo(0);
+        mkvInfo.mux(sink);
+        tracksPos = sink.position();
+        muxTracks().mux(sink);
+    }
+
+    private void writeCluster() throws IOException {
+        long pos = sink.position();
+        MkvBlock first = clusterBlocks.get(0);
+        if (first._keyFrame && videoTrack != null && first.trackNumber == videoTrack.trackNo) {
+            cueTimes.add(clusterTimecode);
+            cuePositions.add(pos - segmentDataPos);
+        }
+        EbmlMaster mkvCluster = createByType(MKVType.Cluster);
+        createLong(mkvCluster, MKVType.Timecode, clusterTimecode);
+        for (MkvBlock block : clusterBlocks)
+            mkvCluster.add(block);
+        mkvCluster.mux(sink);
+        clusterBlocks.clear();
+    }
+
     public void finish() throws IOException {
-        List<EbmlMaster> mkvFile = new ArrayList<EbmlMaster>();
-        EbmlMaster ebmlHeader = defaultEbmlHeader();
-        mkvFile.add(ebmlHeader);
-
-        EbmlMaster segmentElem = (EbmlMaster) createByType(Segment);
-        mkvInfo = muxInfo();
-        mkvTracks = muxTracks();
-        mkvCues = (EbmlMaster) createByType(Cues);
-        mkvSeekHead = muxSeekHead();
-        muxCues();
-
-        segmentElem.add(mkvSeekHead);
-        segmentElem.add(mkvInfo);
-        segmentElem.add(mkvTracks);
-        segmentElem.add(mkvCues);
-        for (EbmlMaster aCluster : clusterList)
-            segmentElem.add(aCluster);
-        mkvFile.add(segmentElem);
-
-        for (EbmlMaster el : mkvFile)
-            el.mux(sink);
+        if (segmentPos == -1)
+            writeHeader();
+        if (!clusterBlocks.isEmpty())
+            writeCluster();
+
+        long cuesPos = sink.position();
+        muxCues().mux(sink);
+        long end = sink.position();
+
+        sink.setPosition(segmentPos + Segment.id.length);
+        sink.write(ByteBuffer.wrap(EbmlUtil.ebmlEncodeLen(end - segmentDataPos, SEGMENT_SIZE_LENGTH)));
+
+        EbmlMaster seekHead = muxSeekHead(infoPos - segmentDataPos, tracksPos - segmentDataPos, cuesPos
+                - segmentDataPos);
+        int left = SEEK_HEAD_RESERVE - (int) seekHead.size();
+        if (left != 0 && left < 2)
+            throw new IllegalStateException("Seek head doesn't fit the space reserved");
+        sink.setPosition(segmentDataPos);
+        seekHead.mux(sink);
+        if (left != 0)
+            sink.write(voidElement(left));
+
+        EbmlMaster info = muxInfo(maxTimecode == Long.MIN_VALUE ? 0 : maxTimecode + 1);
+        if (info.size() != mkvInfo.size())
+            throw new IllegalStateException("Segment info changed size");
+        sink.setPosition(infoPos);
+        info.mux(sink);
+
+        sink.setPosition(end);
+    }
+
+    /**
+     * Void element of exactly size bytes, at least 2 and at most 128.
+     */
+    private static ByteBuffer voidElement(int size) {
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.put(MKVType.Void.id);
+        buf.put(EbmlUtil.ebmlEncodeLen(size - MKVType.Void.id.length - 1, 1));
+        buf.clear();
+        return buf;
     }
 
-    private EbmlMaster defaultEbmlHeader() {
+    public static EbmlMaster defaultEbmlHeader() {
         EbmlMaster master = (EbmlMaster) createByType(EBML);
 
         createLong(master, EBMLVersion, 1);
@@ -136,21 +239,12 @@ public class MKVMuxer implements Muxer {
         return master;
     }
 
-    private EbmlMaster muxInfo() {
+    private EbmlMaster muxInfo(long duration) {
         EbmlMaster master = (EbmlMaster) createByType(Info);
-        int frameDurationInNanoseconds = MKVMuxerTrack.NANOSECONDS_IN_A_MILISECOND * 40;
-        createLong(master, TimecodeScale, frameDurationInNanoseconds);
+        createLong(master, TimecodeScale, TIMECODE_SCALE);
         createString(master, WritingApp, "JCodec");
         createString(master, MuxingApp, "JCodec");
-
-        List<MKVMuxerTrack> tracks2 = tracks;
-        long max = 0;
-        for (MKVMuxerTrack track : tracks2) {
-            MkvBlock lastBlock = track.trackBlocks.get(track.trackBlocks.size() - 1);
-            if (lastBlock.absoluteTimecode > max)
-                max = lastBlock.absoluteTimecode;
-        }
-        createDouble(master, MKVType.Duration, (max + 1) * frameDurationInNanoseconds * 1.0);
+        createDouble(master, MKVType.Duration, duration * TIMECODE_SCALE * 1.0);
         createDate(master, DateUTC, new Date());
         return master;
     }
@@ -189,34 +283,38 @@ public class MKVMuxer implements Muxer {
         return master;
     }
 
-    private void muxCues() {
-        CuesFactory cf = new CuesFactory(mkvSeekHead.size() + mkvInfo.size() + mkvTracks.size(),
-                videoTrack.trackNo);
-        for (MkvBlock aBlock : videoTrack.trackBlocks) {
-            EbmlMaster mkvCluster = singleBlockedCluster(aBlock);
-            clusterList.add(mkvCluster);
-            cf.add(CuesFactory.CuePointMock.make(mkvCluster));
-        }
+    private EbmlMaster muxCues() {
+        EbmlMaster cues = createByType(Cues);
+        for (int i = 0; i < cueTimes.size(); i++) {
+            EbmlMaster cuePoint = createByType(CuePoint);
+            createLong(cuePoint, CueTime, cueTimes.get(i));
 
-        EbmlMaster indexedCues = cf.createCues();
+            EbmlMaster cueTrackPositions = createByType(CueTrackPositions);
+            createLong(cueTrackPositions, CueTrack, videoTrack.trackNo);
+            createLong(cueTrackPositions, CueClusterPosition, cuePositions.get(i));
+            cuePoint.add(cueTrackPositions);
 
-        for (EbmlBase aCuePoint : indexedCues.children)
-            mkvCues.add(aCuePoint);
+            cues.add(cuePoint);
+        }
+        return cues;
     }
 
-    private EbmlMaster singleBlockedCluster(MkvBlock aBlock) {
-        EbmlMaster mkvCluster = createByType(MKVType.Cluster);
-        createLong(mkvCluster, MKVType.Timecode, aBlock.absoluteTimecode - aBlock.timecode);
-        mkvCluster.add(aBlock);
-        return mkvCluster;
+    /**
+     * The positions are relative to the segment data.
+     */
+    private static EbmlMaster muxSeekHead(long info, long tracks, long cues) {
+        EbmlMaster seekHead = createByType(SeekHead);
+        addSeek(seekHead, Info, info);
+        addSeek(seekHead, Tracks, tracks);
+        addSeek(seekHead, Cues, cues);
+        return seekHead;
     }
 
-    private EbmlMaster muxSeekHead() {
-        SeekHeadFactory shi = new SeekHeadFactory();
-        shi.add(mkvInfo);
-        shi.add(mkvTracks);
-        shi.add(mkvCues);
-        return shi.indexSeekHead();
+    private static void addSeek(EbmlMaster seekHead, MKVType type, long position) {
+        EbmlMaster seek = createByType(Seek);
+        createBuffer(seek, SeekID, ByteBuffer.wrap(type.id));
+        createLong(seek, SeekPosition, position);
+        seekHead.add(seek);
     }
 
     public static void createLong(EbmlMaster parent, MKVType type, long value) {
@@ -260,7 +358,7 @@ public class MKVMuxer implements Muxer {
 
     @Override
     public MuxerTrack addAudioTrack(Codec codec, AudioCodecMeta meta) {
-        audioTrack = new MKVMuxerTrack();
+        audioTrack = new MKVMuxerTrack(this);
         tracks.add(audioTrack);
         audioTrack.codecId = codec2mkv.get(codec);
         audioTrack.trackNo = tracks.size();
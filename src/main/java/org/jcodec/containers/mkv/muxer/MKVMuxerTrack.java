@@ -1,12 +1,12 @@
 package org.jcodec.containers.mkv.muxer;
 import static org.jcodec.containers.mkv.boxes.MkvBlock.keyFrame;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
 
 import org.jcodec.common.MuxerTrack;
 import org.jcodec.common.VideoCodecMeta;
 import org.jcodec.common.model.Packet;
+import org.jcodec.common.model.Packet.FrameType;
 import org.jcodec.containers.mkv.boxes.MkvBlock;
 
 /**
@@ -25,10 +25,13 @@ public class MKVMuxerTrack implements MuxerTrack {
     public String codecId;
     public int trackNo;
     private int frameDuration;
-    List<MkvBlock> trackBlocks;
+    private MKVMuxer muxer;
     
-    public MKVMuxerTrack() {
-        this.trackBlocks = new ArrayList<MkvBlock>();
+    /**
+     * Tracks are created by the muxer, the frames go straight to it.
+     */
+    MKVMuxerTrack(MKVMuxer muxer) {
+        this.muxer = muxer;
         this.type = MKVMuxerTrackType.VIDEO;
     }
     
@@ -42,10 +45,11 @@ public class MKVMuxerTrack implements MuxerTrack {
     }
 
     @Override
-    public void addFrame(Packet outPacket) {
+    public void addFrame(Packet outPacket) throws IOException {
         MkvBlock frame = keyFrame(trackNo, 0, outPacket.getData());
+        frame._keyFrame = outPacket.getFrameType() != FrameType.INTER;
         frame.absoluteTimecode = outPacket.getPts() - 1;
-        trackBlocks.add(frame);
+        muxer.addBlock(this, frame);
     }
 
     public long getTrackNo() {
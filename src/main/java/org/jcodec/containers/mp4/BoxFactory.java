@@ -30,36 +30,61 @@ public class BoxFactory implements IBoxFactory {
     private static IBoxFactory video = new BoxFactory(new VideoBoxes());
     private static IBoxFactory waveext = new BoxFactory(new WaveExtBoxes());
 
+    private static IBoxFactory lazyInstance = createLazy(new DefaultBoxes());
+    private static IBoxFactory lazyAudio = createLazy(new AudioBoxes());
+    private static IBoxFactory lazyData = createLazy(new DataBoxes());
+    private static IBoxFactory lazySample = createLazy(new SampleBoxes());
+    private static IBoxFactory lazyTimecode = createLazy(new TimecodeBoxes());
+    private static IBoxFactory lazyVideo = createLazy(new VideoBoxes());
+    private static IBoxFactory lazyWaveext = createLazy(new WaveExtBoxes());
+
     private Boxes boxes;
+    private boolean lazy;
 
     public static IBoxFactory getDefault() {
         return instance;
     }
 
+    /**
+     * Factory of the lazy boxes, the node boxes parse their children and the
+     * sample tables decode their entries only when they are accessed, see
+     * Box.setLazy.
+     */
+    public static IBoxFactory getLazy() {
+        return lazyInstance;
+    }
+
     public BoxFactory(Boxes boxes) {
         this.boxes = boxes;
     }
 
+    private static BoxFactory createLazy(Boxes boxes) {
+        BoxFactory factory = new BoxFactory(boxes);
+        factory.lazy = true;
+        return factory;
+    }
+
     @Override
     public Box newBox(Header header) {
         Class<? extends Box> claz = boxes.toClass(header.getFourcc());
         if (claz == null)
             return new Box.LeafBox(header);
         Box box = Platform.newInstance(claz, new Object[] { header });
+        box.setLazy(lazy);
         if (box instanceof NodeBox) {
             NodeBox nodebox = (NodeBox) box;
             if (nodebox instanceof SampleDescriptionBox) {
-                nodebox.setFactory(sample);
+                nodebox.setFactory(lazy ? lazySample : sample);
             } else if (nodebox instanceof VideoSampleEntry) {
-                nodebox.setFactory(video);
+                nodebox.setFactory(lazy ? lazyVideo : video);
             } else if (nodebox instanceof AudioSampleEntry) {
-                nodebox.setFactory(audio);
+                nodebox.setFactory(lazy ? lazyAudio : audio);
             } else if (nodebox instanceof TimecodeSampleEntry) {
-                nodebox.setFactory(timecode);
+                nodebox.setFactory(lazy ? lazyTimecode : timecode);
             } else if (nodebox instanceof DataRefBox) {
-                nodebox.setFactory(data);
+                nodebox.setFactory(lazy ? lazyData : data);
             } else if (nodebox instanceof WaveExtension) {
-                nodebox.setFactory(waveext);
+                nodebox.setFactory(lazy ? lazyWaveext : waveext);
             } else {
                 nodebox.setFactory(this);
             }
@@ -0,0 +1,56 @@
+package org.jcodec.containers.mp4;
+
+import java.io.IOException;
+
+import org.jcodec.common.io.NIOUtils;
+import org.jcodec.common.io.SeekableByteChannel;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ * 
+ * Copies the chunks of media data to the output one after another, the chunks
+ * that follow each other in the same input are merged and copied in one go.
+ * The media in the interleaved movies usually comes in the same order as it's
+ * being written, so most of the chunks end up in a few large transfers.
+ * 
+ * The output must not be written by anybody else until flush() is called.
+ * 
+ * @author The JCodec project
+ * 
+ */
+public class ChunkCopier {
+    private SeekableByteChannel out;
+    private SeekableByteChannel pendingInput;
+    private long pendingOffset;
+    private long pendingSize;
+    private long outPos;
+
+    public ChunkCopier(SeekableByteChannel out) {
+        this.out = out;
+    }
+
+    /**
+     * Schedules a copy of the chunk.
+     * 
+     * @return The offset in the output where the chunk will be
+     */
+    public long copy(SeekableByteChannel input, long offset, long size) throws IOException {
+        if (input != pendingInput || offset != pendingOffset + pendingSize) {
+            flush();
+            pendingInput = input;
+            pendingOffset = offset;
+            outPos = out.position();
+        }
+        long pos = outPos + pendingSize;
+        pendingSize += size;
+        return pos;
+    }
+
+    public void flush() throws IOException {
+        if (pendingSize > 0)
+            NIOUtils.copyRange(pendingInput, pendingOffset, pendingSize, out);
+        pendingInput = null;
+        pendingSize = 0;
+    }
+}
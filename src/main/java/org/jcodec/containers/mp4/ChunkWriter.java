@@ -1,5 +1,4 @@
 package org.jcodec.containers.mp4;
-import org.jcodec.common.io.NIOUtils;
 import org.jcodec.common.io.SeekableByteChannel;
 import org.jcodec.containers.mp4.boxes.AliasBox;
 import org.jcodec.containers.mp4.boxes.Box;
@@ -26,12 +25,19 @@ public class ChunkWriter {
     private SampleEntry[] entries;
     private SeekableByteChannel[] inputs;
     private int curChunk;
-    private SeekableByteChannel out;
-    byte[] buf;
+    private ChunkCopier copier;
     private TrakBox trak;
 
     public ChunkWriter(TrakBox trak, SeekableByteChannel[] inputs, SeekableByteChannel out) {
-        this.buf = new byte[8092];
+        this(trak, inputs, new ChunkCopier(out));
+    }
+
+    /**
+     * The writers of all the tracks of a movie can share one copier so that
+     * the chunks of different tracks that are next to each other in the input
+     * are copied together.
+     */
+    public ChunkWriter(TrakBox trak, SeekableByteChannel[] inputs, ChunkCopier copier) {
         entries = trak.getSampleEntries();
         ChunkOffsetsBox stco = trak.getStco();
         ChunkOffsets64Box co64 = trak.getCo64();
@@ -43,11 +49,12 @@ public class ChunkWriter {
         this.inputs = inputs;
 
         offsets = new long[size];
-        this.out = out;
+        this.copier = copier;
         this.trak = trak;
     }
 
-    public void apply() {
+    public void apply() throws IOException {
+        copier.flush();
         NodeBox stbl = NodeBox.findFirstPath(trak, NodeBox.class, Box.path("mdia.minf.stbl"));
         stbl.removeChildren(new String[]{"stco", "co64"});
 
@@ -85,11 +92,6 @@ public class ChunkWriter {
     }
 
     public void write(Chunk chunk) throws IOException {
-        SeekableByteChannel input = getInput(chunk);
-        input.setPosition(chunk.getOffset());
-        long pos = out.position();
-
-        out.write(NIOUtils.fetchFromChannel(input, (int) chunk.getSize()));
-        offsets[curChunk++] = pos;
+        offsets[curChunk++] = copier.copy(getInput(chunk), chunk.getOffset(), chunk.getSize());
     }
 }
\ No newline at end of file
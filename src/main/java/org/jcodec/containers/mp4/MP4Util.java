@@ -5,6 +5,8 @@ import static org.jcodec.common.io.NIOUtils.readableChannel;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -14,6 +16,7 @@ import java.util.Map;
 
 import org.jcodec.common.AutoFileChannelWrapper;
 import org.jcodec.common.Codec;
+import org.jcodec.common.io.FileChannelWrapper;
 import org.jcodec.common.io.IOUtils;
 import org.jcodec.common.io.NIOUtils;
 import org.jcodec.common.io.SeekableByteChannel;
@@ -103,6 +106,27 @@ public class MP4Util {
         return null;
     }
 
+    /**
+     * Parses the movie with the lazy boxes, see BoxFactory.getLazy. Only the
+     * offsets and sizes of the children of moov are read up front, the sample
+     * tables stay undecoded until they are accessed, so reading the metadata
+     * of a long movie doesn't cost the decoding of every table.
+     * 
+     * For a file the moov is memory mapped, the file must not be modified in
+     * place while the boxes are in use.
+     */
+    public static Movie parseFullMovieChannelLazy(SeekableByteChannel input) throws IOException {
+        FileTypeBox ftyp = null;
+        for (Atom atom : getRootAtoms(input)) {
+            if ("ftyp".equals(atom.getHeader().getFourcc())) {
+                ftyp = (FileTypeBox) atom.parseBox(input);
+            } else if ("moov".equals(atom.getHeader().getFourcc())) {
+                return new Movie(ftyp, (MovieBox) atom.parseBoxLazy(input));
+            }
+        }
+        return null;
+    }
+
     public static List<MovieFragmentBox> parseMovieFragments(SeekableByteChannel input) throws IOException {
         MovieBox moov = null;
         LinkedList<MovieFragmentBox> fragments = new LinkedList<MovieFragmentBox>();
@@ -183,9 +207,25 @@ public class MP4Util {
             return BoxUtil.parseBox(NIOUtils.fetchFromChannel(input, (int) header.getBodySize()), header, BoxFactory.getDefault());
         }
 
+        /**
+         * Parses the box with the lazy factory, the body is mapped rather than
+         * read when the input is a file.
+         */
+        public Box parseBoxLazy(SeekableByteChannel input) throws IOException {
+            FileChannel ch = input instanceof FileChannelWrapper ? ((FileChannelWrapper) input).getFileChannel()
+                    : null;
+            ByteBuffer body;
+            if (ch != null) {
+                body = ch.map(MapMode.READ_ONLY, offset + header.headerSize(), header.getBodySize());
+            } else {
+                input.setPosition(offset + header.headerSize());
+                body = NIOUtils.fetchFromChannel(input, (int) header.getBodySize());
+            }
+            return BoxUtil.parseBox(body, header, BoxFactory.getLazy());
+        }
+
         public void copy(SeekableByteChannel input, WritableByteChannel out) throws IOException {
-            input.setPosition(offset);
-            NIOUtils.copy(input, out, header.getSize());
+            NIOUtils.copyRange(input, offset, header.getSize(), out);
         }
     }
     
@@ -246,6 +286,22 @@ public class MP4Util {
         }
     }
 
+    public static Movie parseFullMovieLazy(File source) throws IOException {
+        SeekableByteChannel input = null;
+        try {
+            input = readableChannel(source);
+            return parseFullMovieChannelLazy(input);
+        } finally {
+            if (input != null)
+                input.close();
+        }
+    }
+
+    public static MovieBox parseMovieLazy(File source) throws IOException {
+        Movie movie = parseFullMovieLazy(source);
+        return movie == null ? null : movie.getMoov();
+    }
+
     public static Movie createRefFullMovieFromFile(File source) throws IOException {
         SeekableByteChannel input = null;
         try {
@@ -25,6 +25,7 @@ import static org.jcodec.common.Preconditions.checkState;
 public abstract class Box {
     public Header header;
     public static final int MAX_BOX_SIZE = 128 * 1024 * 1024;
+    protected boolean lazy;
     
     @UsedViaReflection
     public Box(Header header) {
@@ -35,6 +36,15 @@ public abstract class Box {
         return header;
     }
 
+    /**
+     * The boxes that support it keep a view of the buffer they are parsed
+     * from and decode their content when it's first accessed, the buffer must
+     * not be modified while the box is in use.
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
     public abstract void parse(ByteBuffer buf);
 
     public void write(ByteBuffer buf) {
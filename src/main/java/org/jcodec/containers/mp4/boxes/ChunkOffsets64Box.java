@@ -2,6 +2,8 @@ package org.jcodec.containers.mp4.boxes;
 
 import java.nio.ByteBuffer;
 
+import org.jcodec.common.io.NIOUtils;
+
 /**
  * This class is part of JCodec ( www.jcodec.org )
  * This software is distributed under FreeBSD License
@@ -13,6 +15,8 @@ import java.nio.ByteBuffer;
  */
 public class ChunkOffsets64Box extends FullBox {
     private long[] chunkOffsets;
+    // Undecoded offsets of a lazy box
+    private ByteBuffer unparsed;
     
     public static String fourcc() {
         return "co64";
@@ -31,14 +35,27 @@ public class ChunkOffsets64Box extends FullBox {
     public void parse(ByteBuffer input) {
         super.parse(input);
         int length = input.getInt();
-        chunkOffsets = new long[length];
+        if (lazy)
+            unparsed = NIOUtils.read(input, length * 8);
+        else
+            chunkOffsets = readOffsets(input, length);
+    }
+
+    private static long[] readOffsets(ByteBuffer input, int length) {
+        long[] chunkOffsets = new long[length];
         for (int i = 0; i < length; i++) {
             chunkOffsets[i] = input.getLong();
         }
+        return chunkOffsets;
     }
 
     protected void doWrite(ByteBuffer out) {
         super.doWrite(out);
+        if (unparsed != null) {
+            out.putInt(unparsed.remaining() / 8);
+            out.put(unparsed.duplicate());
+            return;
+        }
         out.putInt(chunkOffsets.length);
         for (int i = 0; i < chunkOffsets.length; i++) {
             long offset = chunkOffsets[i];
@@ -48,14 +65,19 @@ public class ChunkOffsets64Box extends FullBox {
     
     @Override
     public int estimateSize() {
-        return 12 + 4 + chunkOffsets.length * 8;
+        return 12 + 4 + (unparsed != null ? unparsed.remaining() : chunkOffsets.length * 8);
     }
     
     public long[] getChunkOffsets() {
+        if (unparsed != null) {
+            chunkOffsets = readOffsets(unparsed.duplicate(), unparsed.remaining() / 8);
+            unparsed = null;
+        }
         return chunkOffsets;
     }
 
     public void setChunkOffsets(long[] chunkOffsets) {
         this.chunkOffsets = chunkOffsets;
+        this.unparsed = null;
     }
 }
@@ -1,5 +1,6 @@
 package org.jcodec.containers.mp4.boxes;
 
+import org.jcodec.common.io.NIOUtils;
 import org.jcodec.platform.Platform;
 
 import java.nio.ByteBuffer;
@@ -21,6 +22,8 @@ public class ChunkOffsetsBox extends FullBox {
     }
 
     private long[] chunkOffsets;
+    // Undecoded offsets of a lazy box
+    private ByteBuffer unparsed;
     
     public static String fourcc() {
         return "stco";
@@ -35,15 +38,28 @@ public class ChunkOffsetsBox extends FullBox {
     public void parse(ByteBuffer input) {
         super.parse(input);
         int length = input.getInt();
-        chunkOffsets = new long[length];
+        if (lazy)
+            unparsed = NIOUtils.read(input, length * 4);
+        else
+            chunkOffsets = readOffsets(input, length);
+    }
+
+    private static long[] readOffsets(ByteBuffer input, int length) {
+        long[] chunkOffsets = new long[length];
         for (int i = 0; i < length; i++) {
             chunkOffsets[i] = Platform.unsignedInt(input.getInt());
         }
+        return chunkOffsets;
     }
 
     @Override
     public void doWrite(ByteBuffer out) {
         super.doWrite(out);
+        if (unparsed != null) {
+            out.putInt(unparsed.remaining() / 4);
+            out.put(unparsed.duplicate());
+            return;
+        }
         out.putInt(chunkOffsets.length);
         for (int i = 0; i < chunkOffsets.length; i++) {
             long offset = chunkOffsets[i];
@@ -53,14 +69,19 @@ public class ChunkOffsetsBox extends FullBox {
     
     @Override
     public int estimateSize() {
-        return 12 + 4 + chunkOffsets.length * 4;
+        return 12 + 4 + (unparsed != null ? unparsed.remaining() : chunkOffsets.length * 4);
     }
 
     public long[] getChunkOffsets() {
+        if (unparsed != null) {
+            chunkOffsets = readOffsets(unparsed.duplicate(), unparsed.remaining() / 4);
+            unparsed = null;
+        }
         return chunkOffsets;
     }
 
     public void setChunkOffsets(long[] chunkOffsets) {
         this.chunkOffsets = chunkOffsets;
+        this.unparsed = null;
     }
 }
@@ -2,6 +2,8 @@ package org.jcodec.containers.mp4.boxes;
 
 import java.nio.ByteBuffer;
 
+import org.jcodec.common.io.NIOUtils;
+
 /**
  * This class is part of JCodec ( www.jcodec.org ) This software is distributed
  * under FreeBSD License
@@ -14,6 +16,8 @@ import java.nio.ByteBuffer;
 public class CompositionOffsetsBox extends FullBox {
 
     private Entry[] entries;
+    // Undecoded entries of a lazy box
+    private ByteBuffer unparsed;
 
     public static class Entry {
         public int count;
@@ -69,16 +73,28 @@ public class CompositionOffsetsBox extends FullBox {
     public void parse(ByteBuffer input) {
         super.parse(input);
         int num = input.getInt();
+        if (lazy)
+            unparsed = NIOUtils.read(input, num * 8);
+        else
+            entries = readEntries(input, num);
+    }
 
-        entries = new Entry[num];
+    private static Entry[] readEntries(ByteBuffer input, int num) {
+        Entry[] entries = new Entry[num];
         for (int i = 0; i < num; i++) {
             entries[i] = new Entry(input.getInt(), input.getInt());
         }
+        return entries;
     }
 
     @Override
     protected void doWrite(ByteBuffer out) {
         super.doWrite(out);
+        if (unparsed != null) {
+            out.putInt(unparsed.remaining() / 8);
+            out.put(unparsed.duplicate());
+            return;
+        }
 
         out.putInt(entries.length);
         for (int i = 0; i < entries.length; i++) {
@@ -89,10 +105,14 @@ public class CompositionOffsetsBox extends FullBox {
     
     @Override
     public int estimateSize() {
-        return 12 + 4 + entries.length * 8;
+        return 12 + 4 + (unparsed != null ? unparsed.remaining() : entries.length * 8);
     }
 
     public Entry[] getEntries() {
+        if (unparsed != null) {
+            entries = readEntries(unparsed.duplicate(), unparsed.remaining() / 8);
+            unparsed = null;
+        }
         return entries;
     }
 }
\ No newline at end of file
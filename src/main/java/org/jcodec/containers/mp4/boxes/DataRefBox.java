@@ -33,7 +33,7 @@ public class DataRefBox extends NodeBox {
     @Override
     public void doWrite(ByteBuffer out) {
         out.putInt(0);
-        out.putInt(boxes.size());
+        out.putInt(getBoxes().size());
         super.doWrite(out);
     }
     
@@ -40,7 +40,7 @@ public class KeysBox extends NodeBox {
 
     protected void doWrite(ByteBuffer out) {
         out.putInt(0);
-        out.putInt(boxes.size());
+        out.putInt(getBoxes().size());
         super.doWrite(out);
     }
 
@@ -131,7 +131,7 @@ public class MovieBox extends NodeBox {
     public void appendTrack(TrakBox newTrack) {
         newTrack.getTrackHeader().setNo(getMovieHeader().getNextTrackId());
         getMovieHeader().setNextTrackId(getMovieHeader().getNextTrackId() + 1);
-        boxes.add(newTrack);
+        add(newTrack);
     }
 
     public boolean isPureRefMovie() {
@@ -26,12 +26,16 @@ import org.jcodec.platform.Platform;
  * 
  * A box containing children, no data
  * 
+ * A lazy node box keeps a view of its body and parses the children when they
+ * are first accessed, a node that was never accessed is written back as is.
+ * 
  * @author The JCodec project
  * 
  */
 public class NodeBox extends Box {
     protected List<Box> boxes;
     protected IBoxFactory factory;
+    private ByteBuffer unparsed;
 
     public NodeBox(Header atom) {
         super(atom);
@@ -43,7 +47,14 @@ public class NodeBox extends Box {
     }
     
     public void parse(ByteBuffer input) {
+        if (lazy) {
+            unparsed = NIOUtils.read(input, input.remaining());
+            return;
+        }
+        parseChildren(input);
+    }
 
+    private void parseChildren(ByteBuffer input) {
         while (input.remaining() >= 8) {
             Box child = parseChildBox(input, factory);
             if (child != null)
@@ -67,14 +78,23 @@ public class NodeBox extends Box {
     }
 
     public List<Box> getBoxes() {
+        if (unparsed != null) {
+            ByteBuffer input = unparsed;
+            unparsed = null;
+            parseChildren(input);
+        }
         return boxes;
     }
 
     public void add(Box box) {
-        boxes.add(box);
+        getBoxes().add(box);
     }
 
     protected void doWrite(ByteBuffer out) {
+        if (unparsed != null) {
+            out.put(unparsed.duplicate());
+            return;
+        }
         for (Box box : boxes) {
             box.write(out);
         }
@@ -82,6 +102,8 @@ public class NodeBox extends Box {
     
     @Override
     public int estimateSize() {
+        if (unparsed != null)
+            return unparsed.remaining() + Header.estimateHeaderSize(unparsed.remaining());
         int total = 0;
         for (Box box : boxes) {
             total += box.estimateSize();
@@ -90,7 +112,7 @@ public class NodeBox extends Box {
     }
 
     public void addFirst(MovieHeaderBox box) {
-        boxes.add(0, box);
+        getBoxes().add(0, box);
     }
 
     public void replace(String fourcc, Box box) {
@@ -112,6 +134,7 @@ public class NodeBox extends Box {
     }
 
     protected void dumpBoxes(StringBuilder sb) {
+        List<Box> boxes = getBoxes();
         for (int i = 0; i < boxes.size(); i++) {
             boxes.get(i).dump(sb);
             if (i < boxes.size() - 1)
@@ -120,7 +143,7 @@ public class NodeBox extends Box {
     }
 
     public void removeChildren(String[] fourcc) {
-        for (Iterator<Box> it = boxes.iterator(); it.hasNext();) {
+        for (Iterator<Box> it = getBoxes().iterator(); it.hasNext();) {
             Box box = it.next();
             String fcc = box.getFourcc();
             for (int i = 0; i < fourcc.length; i++) {
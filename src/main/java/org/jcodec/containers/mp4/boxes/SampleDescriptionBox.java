@@ -19,7 +19,7 @@ public class SampleDescriptionBox extends NodeBox {
         SampleDescriptionBox box = new SampleDescriptionBox(new Header(fourcc()));
         for (int i = 0; i < entries.length; i++) {
             SampleEntry e = entries[i];
-            box.boxes.add(e);
+            box.add(e);
         }
         return box;
     }
@@ -39,7 +39,7 @@ public class SampleDescriptionBox extends NodeBox {
     public void doWrite(ByteBuffer out) {
         out.putInt(0);
         //even if there is no sample descriptors entry count can not be less than 1
-        out.putInt(Math.max(1, boxes.size()));
+        out.putInt(Math.max(1, getBoxes().size()));
         super.doWrite(out);
     }
     
@@ -2,6 +2,8 @@ package org.jcodec.containers.mp4.boxes;
 
 import java.nio.ByteBuffer;
 
+import org.jcodec.common.io.NIOUtils;
+
 /**
  * This class is part of JCodec ( www.jcodec.org )
  * This software is distributed under FreeBSD License
@@ -17,6 +19,8 @@ public class SampleSizesBox extends FullBox {
     private int defaultSize;
     private int count;
     private int[] sizes;
+    // Undecoded sizes of a lazy box
+    private ByteBuffer unparsed;
     
     public static String fourcc() {
         return "stsz";
@@ -42,18 +46,30 @@ public class SampleSizesBox extends FullBox {
         count = input.getInt();
 
         if (defaultSize == 0) {
-            sizes = new int[count];
-            for (int i = 0; i < count; i++) {
-                sizes[i] = input.getInt();
-            }
+            if (lazy)
+                unparsed = NIOUtils.read(input, count * 4);
+            else
+                sizes = readSizes(input, count);
         }
     }
 
+    private static int[] readSizes(ByteBuffer input, int count) {
+        int[] sizes = new int[count];
+        for (int i = 0; i < count; i++) {
+            sizes[i] = input.getInt();
+        }
+        return sizes;
+    }
+
     public int getDefaultSize() {
         return defaultSize;
     }
 
     public int[] getSizes() {
+        if (unparsed != null) {
+            sizes = readSizes(unparsed.duplicate(), count);
+            unparsed = null;
+        }
         return sizes;
     }
     
@@ -70,7 +86,10 @@ public class SampleSizesBox extends FullBox {
         super.doWrite(out);
         out.putInt((int) defaultSize);
 
-        if (defaultSize == 0) {
+        if (defaultSize == 0 && unparsed != null) {
+            out.putInt(count);
+            out.put(unparsed.duplicate());
+        } else if (defaultSize == 0) {
             out.putInt(count);
             for (int i = 0; i < sizes.length; i++) {
                 long size = sizes[i];
@@ -83,11 +102,12 @@ public class SampleSizesBox extends FullBox {
     
     @Override
     public int estimateSize() {
-        return (defaultSize == 0 ? sizes.length * 4 : 0) + 20;
+        return (defaultSize == 0 ? (unparsed != null ? unparsed.remaining() : sizes.length * 4) : 0) + 20;
     }
 
     public void setSizes(int[] sizes) {
         this.sizes = sizes;
+        this.unparsed = null;
         this.count = sizes.length;
     }
 }
\ No newline at end of file
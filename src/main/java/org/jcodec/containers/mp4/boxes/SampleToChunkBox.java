@@ -2,6 +2,8 @@ package org.jcodec.containers.mp4.boxes;
 
 import java.nio.ByteBuffer;
 
+import org.jcodec.common.io.NIOUtils;
+
 /**
  * This class is part of JCodec ( www.jcodec.org ) This software is distributed
  * under FreeBSD License
@@ -63,25 +65,43 @@ public class SampleToChunkBox extends FullBox {
         return box;
     }
     private SampleToChunkEntry[] sampleToChunk;
+    // Undecoded entries of a lazy box
+    private ByteBuffer unparsed;
 
     public void parse(ByteBuffer input) {
         super.parse(input);
         int size = input.getInt();
+        if (lazy)
+            unparsed = NIOUtils.read(input, size * 12);
+        else
+            sampleToChunk = readEntries(input, size);
+    }
 
-        sampleToChunk = new SampleToChunkEntry[size];
+    private static SampleToChunkEntry[] readEntries(ByteBuffer input, int size) {
+        SampleToChunkEntry[] sampleToChunk = new SampleToChunkEntry[size];
         for (int i = 0; i < size; i++) {
             sampleToChunk[i] = new SampleToChunkEntry(input.getInt(), input.getInt(),
                     input.getInt());
         }
+        return sampleToChunk;
     }
 
     public SampleToChunkEntry[] getSampleToChunk() {
+        if (unparsed != null) {
+            sampleToChunk = readEntries(unparsed.duplicate(), unparsed.remaining() / 12);
+            unparsed = null;
+        }
         return sampleToChunk;
     }
 
     @Override
     public void doWrite(ByteBuffer out) {
         super.doWrite(out);
+        if (unparsed != null) {
+            out.putInt(unparsed.remaining() / 12);
+            out.put(unparsed.duplicate());
+            return;
+        }
         out.putInt(sampleToChunk.length);
 
         for (int i = 0; i < sampleToChunk.length; i++) {
@@ -94,10 +114,11 @@ public class SampleToChunkBox extends FullBox {
     
     @Override
     public int estimateSize() {
-        return 16 + sampleToChunk.length * 12;
+        return 16 + (unparsed != null ? unparsed.remaining() : sampleToChunk.length * 12);
     }
 
     public void setSampleToChunk(SampleToChunkEntry[] sampleToChunk) {
         this.sampleToChunk = sampleToChunk;
+        this.unparsed = null;
     }
 }
\ No newline at end of file
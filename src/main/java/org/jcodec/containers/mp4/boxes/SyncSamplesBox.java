@@ -2,6 +2,8 @@ package org.jcodec.containers.mp4.boxes;
 
 import java.nio.ByteBuffer;
 
+import org.jcodec.common.io.NIOUtils;
+
 /**
  * This class is part of JCodec ( www.jcodec.org ) This software is distributed
  * under FreeBSD License
@@ -14,6 +16,8 @@ import java.nio.ByteBuffer;
 public class SyncSamplesBox extends FullBox {
     public static final String STSS = "stss";
     protected int[] syncSamples;
+    // Undecoded samples of a lazy box
+    private ByteBuffer unparsed;
 
     public static SyncSamplesBox createSyncSamplesBox(int[] array) {
         SyncSamplesBox stss = new SyncSamplesBox(new Header(STSS));
@@ -28,14 +32,27 @@ public class SyncSamplesBox extends FullBox {
     public void parse(ByteBuffer input) {
         super.parse(input);
         int len = input.getInt();
-        syncSamples = new int[len];
+        if (lazy)
+            unparsed = NIOUtils.read(input, len * 4);
+        else
+            syncSamples = readSamples(input, len);
+    }
+
+    private static int[] readSamples(ByteBuffer input, int len) {
+        int[] syncSamples = new int[len];
         for (int i = 0; i < len; i++) {
             syncSamples[i] = input.getInt();
         }
+        return syncSamples;
     }
 
     protected void doWrite(ByteBuffer out) {
         super.doWrite(out);
+        if (unparsed != null) {
+            out.putInt(unparsed.remaining() / 4);
+            out.put(unparsed.duplicate());
+            return;
+        }
         out.putInt(syncSamples.length);
         for (int i = 0; i < syncSamples.length; i++)
             out.putInt((int) syncSamples[i]);
@@ -43,10 +60,14 @@ public class SyncSamplesBox extends FullBox {
 
     @Override
     public int estimateSize() {
-        return 16 + syncSamples.length * 4;
+        return 16 + (unparsed != null ? unparsed.remaining() : syncSamples.length * 4);
     }
     
     public int[] getSyncSamples() {
+        if (unparsed != null) {
+            syncSamples = readSamples(unparsed.duplicate(), unparsed.remaining() / 4);
+            unparsed = null;
+        }
         return syncSamples;
     }
 }
@@ -2,6 +2,8 @@ package org.jcodec.containers.mp4.boxes;
 
 import java.nio.ByteBuffer;
 
+import org.jcodec.common.io.NIOUtils;
+
 /**
  * This class is part of JCodec ( www.jcodec.org ) This software is distributed
  * under FreeBSD License
@@ -58,23 +60,42 @@ public class TimeToSampleBox extends FullBox {
     }
 
     private TimeToSampleEntry[] entries;
+    // Undecoded entries of a lazy box
+    private ByteBuffer unparsed;
 
     public void parse(ByteBuffer input) {
         super.parse(input);
         int foo = input.getInt();
-        entries = new TimeToSampleEntry[foo];
+        if (lazy)
+            unparsed = NIOUtils.read(input, foo * 8);
+        else
+            entries = readEntries(input, foo);
+    }
+
+    private static TimeToSampleEntry[] readEntries(ByteBuffer input, int foo) {
+        TimeToSampleEntry[] entries = new TimeToSampleEntry[foo];
         for (int i = 0; i < foo; i++) {
             entries[i] = new TimeToSampleEntry(input.getInt(), input.getInt());
         }
+        return entries;
     }
 
     public TimeToSampleEntry[] getEntries() {
+        if (unparsed != null) {
+            entries = readEntries(unparsed.duplicate(), unparsed.remaining() / 8);
+            unparsed = null;
+        }
         return entries;
     }
 
     @Override
     public void doWrite(ByteBuffer out) {
         super.doWrite(out);
+        if (unparsed != null) {
+            out.putInt(unparsed.remaining() / 8);
+            out.put(unparsed.duplicate());
+            return;
+        }
         out.putInt(entries.length);
         for (int i = 0; i < entries.length; i++) {
             TimeToSampleEntry timeToSampleEntry = entries[i];
@@ -85,10 +106,11 @@ public class TimeToSampleBox extends FullBox {
     
     @Override
     public int estimateSize() {
-        return 16 + entries.length * 8;
+        return 16 + (unparsed != null ? unparsed.remaining() : entries.length * 8);
     }
 
     public void setEntries(TimeToSampleEntry[] entries) {
         this.entries = entries;
+        this.unparsed = null;
     }
 }
\ No newline at end of file
@@ -45,7 +45,7 @@ public class TrakBox extends NodeBox {
             dinf.add(dref);
             dref.add(urlBox);
         } else {
-            ListIterator<Box> lit = dref.boxes.listIterator();
+            ListIterator<Box> lit = dref.getBoxes().listIterator();
             while (lit.hasNext()) {
                 FullBox box = (FullBox) lit.next();
                 if ((box.getFlags() & 0x1) != 0)
@@ -148,7 +148,7 @@ public class TrakBox extends NodeBox {
         if (dref == null)
             return false;
 
-        for (Box box : dref.boxes) {
+        for (Box box : dref.getBoxes()) {
             if ((((FullBox) box).getFlags() & 0x1) != 0)
                 return false;
         }
@@ -165,7 +165,7 @@ public class TrakBox extends NodeBox {
             return false;
 
         boolean result = false;
-        for (Box box : dref.boxes) {
+        for (Box box : dref.getBoxes()) {
             result |= (((FullBox) box).getFlags() & 0x1) != 0x1;
         }
         return result;
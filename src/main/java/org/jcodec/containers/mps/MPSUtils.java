@@ -1,6 +1,7 @@
 package org.jcodec.containers.mps;
 import org.jcodec.common.IntArrayList;
 import org.jcodec.common.io.NIOUtils;
+import org.jcodec.common.io.StartCodeScanner;
 import org.jcodec.common.model.Rational;
 
 import java.nio.ByteBuffer;
@@ -95,6 +96,21 @@ public class MPSUtils {
                     }
                     continue;
                 }
+                if (_pes && lenFieldLeft == 0 && (marker & 0xff) != 0 && (marker & 0xffffff) != 1) {
+                    // Payload of unknown length, everything up to the next
+                    // pack or PES start code goes to the PES buffer
+                    int from = buf.position();
+                    int end = payloadEnd(buf);
+                    if (end - from >= 4) {
+                        flushMarker();
+                        ByteBuffer run = buf.duplicate();
+                        run.limit(end - 4);
+                        pesBuffer.put(run);
+                        marker = buf.getInt(end - 4);
+                        buf.position(end);
+                        continue;
+                    }
+                }
                 int bt = buf.get() & 0xff;
                 if (_pes)
                     pesBuffer.put((byte) (marker >>> 24));
@@ -131,6 +147,18 @@ public class MPSUtils {
             }
         }
 
+        /**
+         * Position of the last byte of the next start code of 0x1b9 and above,
+         * the byte that completes it in the marker, or the limit of the buffer.
+         */
+        private static int payloadEnd(ByteBuffer buf) {
+            int limit = buf.limit();
+            int sc = StartCodeScanner.findStartCode(buf, buf.position());
+            while (sc != -1 && sc + 3 < limit && (buf.get(sc + 3) & 0xff) < 0xb9)
+                sc = StartCodeScanner.findStartCode(buf, sc + 1);
+            return sc == -1 || sc + 3 >= limit ? limit : sc + 3;
+        }
+
         private void flushMarker() {
             pesBuffer.put((byte) (marker >>> 24));
             pesBuffer.put((byte) ((marker >>> 16) & 0xff));
@@ -0,0 +1,331 @@
+package org.jcodec.containers.mps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jcodec.common.AudioCodecMeta;
+import org.jcodec.common.Codec;
+import org.jcodec.common.IntIntMap;
+import org.jcodec.common.Muxer;
+import org.jcodec.common.MuxerTrack;
+import org.jcodec.common.VideoCodecMeta;
+import org.jcodec.common.model.Packet;
+import org.jcodec.containers.mps.psi.PATSection;
+import org.jcodec.containers.mps.psi.PMTSection;
+import org.jcodec.containers.mps.psi.PMTSection.PMTStream;
+import org.jcodec.containers.mps.psi.PSISection;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * MPEG transport stream muxer, a single program.
+ *
+ * The packets are stored as they are: H.264 in Annex B with SPS/PPS on the key
+ * frames, MPEG-2 elementary stream, AAC with ADTS headers, MPEG audio frames.
+ * This is what the MP4 demuxer outputs, so MP4 can be remuxed into TS without
+ * touching the codec data.
+ *
+ * Every frame becomes a PES packet with a PTS, the PCR goes with each frame of
+ * the first video track (or the first track when there's no video). PAT and
+ * PMT are repeated before every video key frame and at least every
+ * PSI_INTERVAL. The TS packets are built in place in a batch buffer that is
+ * written out when full.
+ *
+ * @author The JCodec project
+ *
+ */
+public class MTSMuxer implements Muxer {
+    public static final int PMT_PID = 0x1000;
+    public static final int FIRST_ES_PID = 0x100;
+    public static final int PROGRAM_NUMBER = 1;
+
+    private static final int TS_PKT_SIZE = 188;
+    private static final int TS_PAYLOAD_SIZE = 184;
+    private static final int TS_SYNC_MARKER = 0x47;
+    private static final int BATCH_SIZE = TS_PKT_SIZE << 10;
+    private static final int PES_HEADER_SIZE = 14;
+    private static final int PES_HEADER_SIZE_DTS = 19;
+    // Frames the decode time of the video runs ahead of the presentation, room
+    // for the B-frames reordered by up to two frames
+    private static final int REORDER_FRAMES = 2;
+
+    // All in 90kHz
+    private static final long PTS_OFFSET = 126000;
+    private static final long PCR_DELAY = 63000;
+    private static final long PSI_INTERVAL = 9000;
+
+    private WritableByteChannel out;
+    private ByteBuffer batch;
+    private List<MTSMuxerTrack> tracks;
+    private MTSMuxerTrack pcrTrack;
+    private int nVideo;
+    private int nAudio;
+
+    private ByteBuffer pat;
+    private ByteBuffer pmt;
+    private int psiVersion;
+    private boolean psiChanged;
+    private boolean psiDue;
+    private int patCC;
+    private int pmtCC;
+    private long lastPsi;
+    private long lastPcr;
+
+    public MTSMuxer(WritableByteChannel out) {
+        this.out = out;
+        this.batch = ByteBuffer.allocate(BATCH_SIZE);
+        this.tracks = new ArrayList<MTSMuxerTrack>();
+        this.pat = ByteBuffer.allocate(TS_PAYLOAD_SIZE - 1);
+        this.pmt = ByteBuffer.allocate(TS_PAYLOAD_SIZE - 1);
+        this.psiVersion = -1;
+        this.lastPcr = Long.MIN_VALUE;
+    }
+
+    public static class MTSMuxerTrack implements MuxerTrack {
+        private MTSMuxer muxer;
+        private int pid;
+        private int streamId;
+        private MTSStreamType streamType;
+        private int cc;
+        // decode time of the next frame, in 90kHz
+        private long dts;
+        private boolean dtsStarted;
+
+        public MTSMuxerTrack(MTSMuxer muxer, int pid, int streamId, MTSStreamType streamType) {
+            this.muxer = muxer;
+            this.pid = pid;
+            this.streamId = streamId;
+            this.streamType = streamType;
+        }
+
+        @Override
+        public void addFrame(Packet outPacket) throws IOException {
+            muxer.writeFrame(this, outPacket);
+        }
+
+        public int getPid() {
+            return pid;
+        }
+
+        public MTSStreamType getStreamType() {
+            return streamType;
+        }
+    }
+
+    @Override
+    public MuxerTrack addVideoTrack(Codec codec, VideoCodecMeta meta) {
+        MTSStreamType streamType;
+        if (codec == Codec.H264)
+            streamType = MTSStreamType.VIDEO_H264;
+        else if (codec == Codec.MPEG2)
+            streamType = MTSStreamType.VIDEO_MPEG2;
+        else
+            throw new RuntimeException("Codec " + codec + " is not supported in MPEG TS.");
+        MTSMuxerTrack track = addTrack(0xe0 + nVideo++, streamType);
+        if (pcrTrack == null || !pcrTrack.streamType.isVideo())
+            pcrTrack = track;
+        return track;
+    }
+
+    @Override
+    public MuxerTrack addAudioTrack(Codec codec, AudioCodecMeta meta) {
+        MTSStreamType streamType;
+        if (codec == Codec.AAC)
+            streamType = MTSStreamType.AUDIO_AAC_ADTS;
+        else if (codec == Codec.MP3 || codec == Codec.MP2 || codec == Codec.MP1)
+            streamType = MTSStreamType.AUDIO_MPEG1;
+        else
+            throw new RuntimeException("Codec " + codec + " is not supported in MPEG TS.");
+        MTSMuxerTrack track = addTrack(0xc0 + nAudio++, streamType);
+        if (pcrTrack == null)
+            pcrTrack = track;
+        return track;
+    }
+
+    private MTSMuxerTrack addTrack(int streamId, MTSStreamType streamType) {
+        MTSMuxerTrack track = new MTSMuxerTrack(this, FIRST_ES_PID + tracks.size(), streamId, streamType);
+        tracks.add(track);
+        psiChanged = true;
+        return track;
+    }
+
+    private void writeFrame(MTSMuxerTrack track, Packet packet) throws IOException {
+        ByteBuffer data = packet.getData().duplicate();
+        long pts = packet.getPts() * 90000 / packet.getTimescale() + PTS_OFFSET;
+        boolean video = track.streamType.isVideo();
+        boolean randomAccess = video && packet.isKeyFrame();
+
+        // The video frames come in the decode order, the decode time is the
+        // sum of the durations of the frames before, like the one of MP4. The
+        // audio is decoded at its presentation time.
+        long dts = pts;
+        if (video) {
+            long duration = packet.getDuration() * 90000 / packet.getTimescale();
+            if (!track.dtsStarted) {
+                track.dts = pts - REORDER_FRAMES * duration;
+                track.dtsStarted = true;
+            }
+            dts = track.dts;
+            track.dts += duration;
+        }
+        int headerSize = video ? PES_HEADER_SIZE_DTS : PES_HEADER_SIZE;
+
+        if (psiChanged || psiDue || randomAccess || pts - lastPsi >= PSI_INTERVAL) {
+            writePSI();
+            lastPsi = pts;
+        }
+
+        boolean withPcr = track == pcrTrack;
+        if (withPcr)
+            lastPcr = Math.max(lastPcr, dts - PCR_DELAY);
+
+        int pesLength = data.remaining() + headerSize - 6;
+        boolean first = true;
+        while (first || data.hasRemaining()) {
+            if (batch.remaining() < TS_PKT_SIZE)
+                flush();
+            int payload = (first ? headerSize : 0) + data.remaining();
+            int afSize = first && (withPcr || randomAccess) ? (withPcr ? 8 : 2) : 0;
+            if (payload < TS_PAYLOAD_SIZE - afSize)
+                afSize = TS_PAYLOAD_SIZE - payload;
+
+            batch.put((byte) TS_SYNC_MARKER);
+            batch.put((byte) ((first ? 0x40 : 0) | (track.pid >> 8)));
+            batch.put((byte) track.pid);
+            batch.put((byte) ((afSize > 0 ? 0x30 : 0x10) | track.cc));
+            track.cc = (track.cc + 1) & 0xf;
+
+            if (afSize > 0)
+                writeAdaptationField(afSize, first && randomAccess, first && withPcr);
+            if (first)
+                writePESHeader(track.streamId, video || pesLength > 0xffff ? 0 : pesLength, pts, video ? dts : -1);
+
+            int n = TS_PAYLOAD_SIZE - afSize - (first ? headerSize : 0);
+            int limit = data.limit();
+            data.limit(data.position() + n);
+            batch.put(data);
+            data.limit(limit);
+            first = false;
+        }
+    }
+
+    private void writeAdaptationField(int afSize, boolean randomAccess, boolean withPcr) {
+        batch.put((byte) (afSize - 1));
+        if (afSize == 1)
+            return;
+        batch.put((byte) ((randomAccess ? 0x40 : 0) | (withPcr ? 0x10 : 0)));
+        int stuffing = afSize - 2;
+        if (withPcr) {
+            long pcr = lastPcr;
+            batch.put((byte) (pcr >> 25));
+            batch.put((byte) (pcr >> 17));
+            batch.put((byte) (pcr >> 9));
+            batch.put((byte) (pcr >> 1));
+            batch.put((byte) (((pcr & 1) << 7) | 0x7e));
+            batch.put((byte) 0);
+            stuffing -= 6;
+        }
+        for (int i = 0; i < stuffing; i++)
+            batch.put((byte) 0xff);
+    }
+
+    /**
+     * @param dts
+     *            decode time stamp, -1 to write the presentation time stamp
+     *            only
+     */
+    private void writePESHeader(int streamId, int pesLength, long pts, long dts) {
+        batch.putInt(0x100 | streamId);
+        batch.putShort((short) pesLength);
+        batch.put((byte) 0x80);
+        if (dts == -1) {
+            // PTS only
+            batch.put((byte) 0x80);
+            batch.put((byte) 5);
+            writeTs(0x20, pts);
+        } else {
+            // PTS and DTS
+            batch.put((byte) 0xc0);
+            batch.put((byte) 10);
+            writeTs(0x30, pts);
+            writeTs(0x10, dts);
+        }
+    }
+
+    private void writeTs(int prefix, long ts) {
+        batch.put((byte) (prefix | ((ts >> 29) & 0xe) | 1));
+        batch.put((byte) (ts >> 22));
+        batch.put((byte) ((ts >> 14) | 1));
+        batch.put((byte) (ts >> 7));
+        batch.put((byte) ((ts << 1) | 1));
+    }
+
+    private void writePSI() throws IOException {
+        if (psiChanged) {
+            psiVersion = (psiVersion + 1) & 0x1f;
+            IntIntMap programs = new IntIntMap();
+            programs.put(PROGRAM_NUMBER, PMT_PID);
+            pat.clear();
+            new PATSection(new PSISection(0, 1, psiVersion, 1, 0, 0), new int[0], programs).write(pat);
+            pat.flip();
+
+            PMTStream[] streams = new PMTStream[tracks.size()];
+            for (int i = 0; i < streams.length; i++) {
+                MTSMuxerTrack track = tracks.get(i);
+                streams[i] = new PMTStream(track.streamType.getTag(), track.pid, null);
+            }
+            pmt.clear();
+            new PMTSection(new PSISection(2, PROGRAM_NUMBER, psiVersion, 1, 0, 0), pcrTrack.pid,
+                    new PMTSection.Tag[0], streams).write(pmt);
+            pmt.flip();
+            psiChanged = false;
+        }
+        psiDue = false;
+        writeSection(0, patCC, pat);
+        patCC = (patCC + 1) & 0xf;
+        writeSection(PMT_PID, pmtCC, pmt);
+        pmtCC = (pmtCC + 1) & 0xf;
+    }
+
+    private void writeSection(int pid, int cc, ByteBuffer section) throws IOException {
+        if (batch.remaining() < TS_PKT_SIZE)
+            flush();
+        batch.put((byte) TS_SYNC_MARKER);
+        batch.put((byte) (0x40 | (pid >> 8)));
+        batch.put((byte) pid);
+        batch.put((byte) (0x10 | cc));
+        // Pointer field
+        batch.put((byte) 0);
+        batch.put(section.duplicate());
+        for (int i = section.remaining() + 1; i < TS_PAYLOAD_SIZE; i++)
+            batch.put((byte) 0xff);
+    }
+
+    private void flush() throws IOException {
+        batch.flip();
+        while (batch.hasRemaining())
+            out.write(batch);
+        batch.clear();
+    }
+
+    /**
+     * Continues the stream in another channel, what was written so far goes
+     * to the old one. The continuity counters and the time stamps carry on so
+     * the pieces play back as one stream, PAT and PMT are repeated at the
+     * start of the new channel.
+     */
+    public void setOutput(WritableByteChannel out) throws IOException {
+        flush();
+        this.out = out;
+        this.psiDue = true;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        flush();
+    }
+}
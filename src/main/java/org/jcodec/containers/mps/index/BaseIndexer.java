@@ -82,15 +82,19 @@ public abstract class BaseIndexer extends MPSUtils.PESReader {
         }
 
         public void pkt(ByteBuffer pkt, PESPacket pesHeader) {
-            sizes.add(pkt.remaining());
+            frame(pkt.remaining(), pesHeader.pts);
+        }
+
+        public void frame(int size, long framePts) {
+            sizes.add(size);
 
-            if (pesHeader.pts == -1) {
-                pesHeader.pts = lastPts + knownDuration;
+            if (framePts == -1) {
+                framePts = lastPts + knownDuration;
             } else {
-                knownDuration = (int) (pesHeader.pts - lastPts);
-                lastPts = pesHeader.pts;
+                knownDuration = (int) (framePts - lastPts);
+                lastPts = framePts;
             }
-            pts.add((int) pesHeader.pts);
+            pts.add((int) framePts);
             dur.add(knownDuration);
         }
 
@@ -108,9 +112,129 @@ public abstract class BaseIndexer extends MPSUtils.PESReader {
         }
     }
 
+    /**
+     * Finds the start codes in MPEG video elementary stream, reports every start
+     * code and the 2 bytes that follow the picture start code (temporal
+     * reference and picture coding type).
+     */
+    static abstract class MPEGVideoScanner {
+        protected int marker = -1;
+        protected long position;
+        protected long phPos = -1;
+
+        public void scan(ByteBuffer pkt, long pts) {
+            while (pkt.hasRemaining()) {
+                int b = pkt.get() & 0xff;
+                ++position;
+                marker = (marker << 8) | b;
+
+                if (phPos != -1) {
+                    long phOffset = position - phPos;
+                    if (phOffset == 5 || phOffset == 6)
+                        pictureByte(b, (int) phOffset);
+                }
+
+                if ((marker & 0xffffff00) != 0x100)
+                    continue;
+
+                startCode(marker, pts);
+
+                phPos = marker == 0x100 ? position - 4 : -1;
+            }
+        }
+
+        /**
+         * Scans the first bytes of a part of the stream that was scanned on
+         * its own starting from a clean state. Only reports what the scan of
+         * the part missed: the start codes that begin before the part and the
+         * picture header bytes of the picture start codes that begin before
+         * the part.
+         * 
+         * @param all
+         *            Report everything, the part is too short to have been
+         *            scanned on its own
+         */
+        void junction(byte[] head, long[] headPts, int len, boolean all) {
+            long base = position;
+            for (int i = 0; i < len; i++) {
+                int b = head[i] & 0xff;
+                ++position;
+                marker = (marker << 8) | b;
+
+                if (phPos != -1 && (all || phPos < base)) {
+                    long phOffset = position - phPos;
+                    if (phOffset == 5 || phOffset == 6)
+                        pictureByte(b, (int) phOffset);
+                }
+
+                if ((marker & 0xffffff00) != 0x100)
+                    continue;
+
+                if (all || i < 3)
+                    startCode(marker, headPts[i]);
+
+                phPos = marker == 0x100 ? position - 4 : -1;
+            }
+        }
+
+        protected abstract void startCode(int marker, long pts);
+
+        protected abstract void pictureByte(int b, int phOffset);
+    }
+
+    /**
+     * Records the start codes of a part of MPEG video elementary stream so
+     * that they can be replayed into MPEGVideoAnalyser later. Consecutive
+     * slice start codes are not recorded since only the first one changes the
+     * state of the analyser.
+     */
+    static class MPEGVideoRecorder extends MPEGVideoScanner {
+        static final int HEAD_SIZE = 5;
+
+        private IntArrayList codes;
+        private LongArrayList codePositions;
+        private LongArrayList codePts;
+        private byte[] head;
+        private long[] headPts;
+        private int headLen;
+        private boolean lastSlice;
+
+        public MPEGVideoRecorder() {
+            this.codes = IntArrayList.createIntArrayList();
+            this.codePositions = LongArrayList.createLongArrayList();
+            this.codePts = LongArrayList.createLongArrayList();
+            this.head = new byte[HEAD_SIZE];
+            this.headPts = new long[HEAD_SIZE];
+        }
+
+        @Override
+        public void scan(ByteBuffer pkt, long pts) {
+            for (int i = pkt.position(); headLen < HEAD_SIZE && i < pkt.limit(); i++, headLen++) {
+                head[headLen] = pkt.get(i);
+                headPts[headLen] = pts;
+            }
+            super.scan(pkt, pts);
+        }
+
+        @Override
+        protected void startCode(int marker, long pts) {
+            boolean slice = marker > 0x100 && marker <= 0x1af;
+            if (!slice || !lastSlice) {
+                codes.add(marker);
+                codePositions.add(position);
+                codePts.add(pts);
+            }
+            lastSlice = slice;
+        }
+
+        @Override
+        protected void pictureByte(int b, int phOffset) {
+            // Negative codes hold the picture header bytes
+            codes.add(-((phOffset << 8) | b) - 1);
+        }
+    }
+
     private static class MPEGVideoAnalyser extends BaseAnalyser {
-        private int marker = -1;
-        private long position;
         private IntArrayList sizes;
         private IntArrayList keyFrames;
         private int frameNo;
@@ -118,14 +242,25 @@ public abstract class BaseIndexer extends MPSUtils.PESReader {
 
         private Frame lastFrame;
         private List<Frame> curGop;
-        private long phPos = -1;
         private Frame lastFrameOfLastGop;
+        private MPEGVideoScanner scanner;
 
         public MPEGVideoAnalyser() {
             super();
             this.sizes = new IntArrayList(250000);
             this.keyFrames = new IntArrayList(20000);
             this.curGop = new ArrayList<Frame>();
+            this.scanner = new MPEGVideoScanner() {
+                @Override
+                protected void startCode(int marker, long pts) {
+                    MPEGVideoAnalyser.this.startCode(marker, pts, position);
+                }
+
+                @Override
+                protected void pictureByte(int b, int phOffset) {
+                    MPEGVideoAnalyser.this.pictureByte(b, phOffset);
+                }
+            };
         }
 
         private static class Frame {
@@ -136,54 +271,69 @@ public abstract class BaseIndexer extends MPSUtils.PESReader {
         }
 
         public void pkt(ByteBuffer pkt, PESPacket pesHeader) {
+            scanner.scan(pkt, pesHeader.pts);
+        }
 
-            while (pkt.hasRemaining()) {
-                int b = pkt.get() & 0xff;
-                ++position;
-                marker = (marker << 8) | b;
+        /**
+         * Replays the start codes recorded for the next part of the stream.
+         */
+        public void merge(MPEGVideoRecorder part) {
+            boolean shortPart = part.position < MPEGVideoRecorder.HEAD_SIZE;
+            long base = scanner.position;
+            scanner.junction(part.head, part.headPts, part.headLen, shortPart);
+            if (shortPart)
+                return;
 
-                if (phPos != -1) {
-                    long phOffset = position - phPos;
-                    if (phOffset == 5)
-                        lastFrame.tempRef = b << 2;
-                    else if (phOffset == 6) {
-                        int picCodingType = (b >> 3) & 0x7;
-                        lastFrame.tempRef |= b >> 6;
-                        if (picCodingType == MPEGConst.IntraCoded) {
-                            keyFrames.add(frameNo - 1);
-                            if (curGop.size() > 0)
-                                outGop();
-                        }
-                    }
+            for (int i = 0, c = 0; i < part.codes.size(); i++) {
+                int code = part.codes.get(i);
+                if (code < 0) {
+                    code = -code - 1;
+                    pictureByte(code & 0xff, code >> 8);
+                } else {
+                    startCode(code, part.codePts.get(c), base + part.codePositions.get(c));
+                    c++;
                 }
+            }
+            scanner.position = base + part.position;
+            scanner.marker = part.marker;
+            scanner.phPos = part.phPos == -1 ? -1 : base + part.phPos;
+        }
 
-                if ((marker & 0xffffff00) != 0x100)
-                    continue;
-
-                if (inFrameData && (marker == 0x100 || marker > 0x1af)) {
-                    // End of frame
-                    lastFrame.size = (int) (position - 4 - lastFrame.offset);
-                    curGop.add(lastFrame);
-                    lastFrame = null;
-                    inFrameData = false;
-                } else if (!inFrameData && (marker > 0x100 && marker <= 0x1af)) {
-                    inFrameData = true;
+        private void pictureByte(int b, int phOffset) {
+            if (phOffset == 5)
+                lastFrame.tempRef = b << 2;
+            else if (phOffset == 6) {
+                int picCodingType = (b >> 3) & 0x7;
+                lastFrame.tempRef |= b >> 6;
+                if (picCodingType == MPEGConst.IntraCoded) {
+                    keyFrames.add(frameNo - 1);
+                    if (curGop.size() > 0)
+                        outGop();
                 }
+            }
+        }
 
-                if (lastFrame == null && (marker == 0x1b3 || marker == 0x1b8 || marker == 0x100)) {
-                    Frame frame = new Frame();
-                    frame.pts = (int) pesHeader.pts;
-                    frame.offset = position - 4;
-                    Logger.info(String.format("FRAME[%d]: %012x, %d", frameNo, (pesHeader.pos + pkt.position()
-                            - 4), pesHeader.pts));
-                    frameNo++;
-                    lastFrame = frame;
-                }
-                if (lastFrame != null && lastFrame.pts == -1 && marker == 0x100) {
-                    lastFrame.pts = (int) pesHeader.pts;
-                }
+        private void startCode(int marker, long pts, long position) {
+            if (inFrameData && (marker == 0x100 || marker > 0x1af)) {
+                // End of frame
+                lastFrame.size = (int) (position - 4 - lastFrame.offset);
+                curGop.add(lastFrame);
+                lastFrame = null;
+                inFrameData = false;
+            } else if (!inFrameData && (marker > 0x100 && marker <= 0x1af)) {
+                inFrameData = true;
+            }
 
-                phPos = marker == 0x100 ? position - 4 : -1;
+            if (lastFrame == null && (marker == 0x1b3 || marker == 0x1b8 || marker == 0x100)) {
+                Frame frame = new Frame();
+                frame.pts = (int) pts;
+                frame.offset = position - 4;
+                Logger.debug(String.format("FRAME[%d]: %012x, %d", frameNo, frame.offset, pts));
+                frameNo++;
+                lastFrame = frame;
+            }
+            if (lastFrame != null && lastFrame.pts == -1 && marker == 0x100) {
+                lastFrame.pts = (int) pts;
             }
         }
 
@@ -229,7 +379,7 @@ public abstract class BaseIndexer extends MPSUtils.PESReader {
         public void finishAnalyse() {
             if (lastFrame == null)
                 return;
-            lastFrame.size = (int) (position - lastFrame.offset);
+            lastFrame.size = (int) (scanner.position - lastFrame.offset);
             curGop.add(lastFrame);
             outGop();
         }
@@ -242,12 +392,95 @@ public abstract class BaseIndexer extends MPSUtils.PESReader {
     protected BaseAnalyser getAnalyser(int stream) {
         BaseAnalyser analizer = analyzers.get(stream);
         if (analizer == null) {
-            analizer = stream >= 0xe0 && stream <= 0xef ? new MPEGVideoAnalyser() : new GenericAnalyser();
+            analizer = mpegVideo(stream) ? new MPEGVideoAnalyser() : new GenericAnalyser();
             analyzers.put(stream, analizer);
         }
         return analyzers.get(stream);
     }
 
+    private static boolean mpegVideo(int stream) {
+        return stream >= 0xe0 && stream <= 0xef;
+    }
+
+    /**
+     * The PES packets and the video start codes found in a part of the stream
+     * that was read on its own, the part is then merged into the indexer that
+     * has all the previous parts so the index comes out the same as if the
+     * stream was read in one go.
+     */
+    static class PartialIndex {
+        private LongArrayList pesStart;
+        private IntArrayList pesLen;
+        private IntArrayList pesStream;
+        private IntArrayList pesPayload;
+        private LongArrayList pesPts;
+        private Map<Integer, MPEGVideoRecorder> video;
+
+        public PartialIndex() {
+            this.pesStart = LongArrayList.createLongArrayList();
+            this.pesLen = IntArrayList.createIntArrayList();
+            this.pesStream = IntArrayList.createIntArrayList();
+            this.pesPayload = IntArrayList.createIntArrayList();
+            this.pesPts = LongArrayList.createLongArrayList();
+            this.video = new HashMap<Integer, MPEGVideoRecorder>();
+        }
+
+        /**
+         * @param payload
+         *            The payload of the PES packet, i.e. positioned after the
+         *            header
+         */
+        public void pes(long start, int len, int stream, ByteBuffer payload, long pts) {
+            pesStart.add(start);
+            pesLen.add(len);
+            pesStream.add(stream);
+            pesPayload.add(payload.remaining());
+            pesPts.add(pts);
+            if (mpegVideo(stream)) {
+                MPEGVideoRecorder recorder = video.get(stream);
+                if (recorder == null) {
+                    recorder = new MPEGVideoRecorder();
+                    video.put(stream, recorder);
+                }
+                recorder.scan(payload, pts);
+            }
+        }
+
+        public int size() {
+            return pesStart.size();
+        }
+
+        public long getPesStart(int i) {
+            return pesStart.get(i);
+        }
+
+        public int getPesLen(int i) {
+            return pesLen.get(i);
+        }
+
+        public int getPesStream(int i) {
+            return pesStream.get(i);
+        }
+
+        public int getPesPayload(int i) {
+            return pesPayload.get(i);
+        }
+    }
+
+    /**
+     * Merges the frames of the part, the PES tokens are saved by the subclass
+     * since they depend on the container.
+     */
+    protected void mergeFrames(PartialIndex part) {
+        for (int i = 0; i < part.size(); i++) {
+            BaseAnalyser analyser = getAnalyser(part.pesStream.get(i));
+            if (analyser instanceof GenericAnalyser)
+                ((GenericAnalyser) analyser).frame(part.pesPayload.get(i), part.pesPts.get(i));
+        }
+        for (Entry<Integer, MPEGVideoRecorder> entry : part.video.entrySet())
+            ((MPEGVideoAnalyser) getAnalyser(entry.getKey())).merge(entry.getValue());
+    }
+
     public MPSIndex serialize() {
         List<MPSStreamIndex> streamsIndices = new ArrayList<MPSStreamIndex>();
         Set<Entry<Integer, BaseAnalyser>> entrySet = analyzers.entrySet();
@@ -264,6 +497,10 @@ public abstract class BaseIndexer extends MPSUtils.PESReader {
 
     void finishAnalyse() {
         super.finishRead();
+        finishAnalysers();
+    }
+
+    void finishAnalysers() {
         for (BaseAnalyser baseAnalyser : analyzers.values()) {
             baseAnalyser.finishAnalyse();
         }
@@ -8,14 +8,22 @@ import org.jcodec.common.io.NIOUtils;
 import org.jcodec.common.io.NIOUtils.FileReader;
 import org.jcodec.common.io.SeekableByteChannel;
 import org.jcodec.common.logging.Logger;
+import org.jcodec.containers.mps.MPSUtils;
 import org.jcodec.containers.mps.MTSUtils;
 import org.jcodec.containers.mps.PESPacket;
+import org.jcodec.containers.mps.index.BaseIndexer.PartialIndex;
 import org.jcodec.containers.mps.index.MTSIndex.MTSProgram;
 
 import java.io.File;
 import java.io.IOException;
 import java.lang.System;
 import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * This class is part of JCodec ( www.jcodec.org ) This software is distributed
@@ -35,7 +43,195 @@ public class MTSIndexer {
     }
 
     public void indexChannel(SeekableByteChannel source, NIOUtils.FileReaderListener listener) throws IOException {
-        indexReader(listener, MTSUtils.getMediaPidsFromChannel(source)).readChannel(source, BUFFER_SIZE, listener);
+        long start = source.position();
+        int[] targetGuids = MTSUtils.getMediaPidsFromChannel(source);
+        source.setPosition(start);
+        indexReader(listener, targetGuids).readChannel(source, BUFFER_SIZE, listener);
+    }
+
+    /**
+     * Indexes the file on several threads, the file is split into ranges of
+     * whole TS packets that are read and analysed concurrently. The PES packets
+     * that cross the border of a range are read by the range where they start,
+     * the partial results are then merged in order, the index is the same as
+     * the one built by index.
+     */
+    public void indexParallel(File source, int nThreads, NIOUtils.FileReaderListener listener) throws IOException {
+        long rangeSize = Math.max(BUFFER_SIZE, source.length() / (4 * nThreads));
+        indexParallel(source, nThreads, rangeSize - rangeSize % 188, listener);
+    }
+
+    void indexParallel(File source, int nThreads, long rangeSize, NIOUtils.FileReaderListener listener)
+            throws IOException {
+        int[] targetGuids = MTSUtils.getMediaPids(source);
+        indexReader(listener, targetGuids);
+        long size = source.length();
+        int nRanges = (int) ((size + rangeSize - 1) / rangeSize);
+
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        try {
+            // At most two ranges per thread are kept in memory
+            LinkedList<Future<PartialIndex[]>> pending = new LinkedList<Future<PartialIndex[]>>();
+            int nextRange = 0;
+            for (; nextRange < nRanges && pending.size() < 2 * nThreads; nextRange++)
+                pending.add(executor.submit(new RangeIndexer(source, targetGuids, nextRange * rangeSize, Math.min(
+                        size, (nextRange + 1) * rangeSize))));
+
+            for (int range = 0; !pending.isEmpty(); range++) {
+                PartialIndex[] parts = get(pending.removeFirst());
+                if (nextRange < nRanges) {
+                    pending.add(executor.submit(new RangeIndexer(source, targetGuids, nextRange * rangeSize, Math
+                            .min(size, (nextRange + 1) * rangeSize))));
+                    nextRange++;
+                }
+                for (int i = 0; i < indexers.length; i++)
+                    indexers[i].merge(parts[i]);
+                if (listener != null)
+                    listener.progress((int) (100L * (range + 1) / nRanges));
+            }
+            for (MTSAnalyser mtsAnalyser : indexers)
+                mtsAnalyser.finishAnalysers();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Reads the PES packets of every PID that start in the range. A PID is
+     * picked up at the first TS packet with the payload start flag and is
+     * read past the end of the range until the next one, the first bytes of
+     * the latter close the last PES packet the same way they do when the file
+     * is read sequentially. A PID that has not started by the end of the range
+     * is done at its first packet past the end.
+     * 
+     * A PID that stops in the middle of the file has no next payload start,
+     * the reading past the end stops MAX_PES_SPAN bytes after it and the last
+     * PES packet is closed as if the file ended there. A PES packet going on
+     * for more than that past the end of its range is cut short, unlike when
+     * the file is read sequentially.
+     */
+    private static class RangeIndexer implements Callable<PartialIndex[]> {
+        private static final long MAX_PES_SPAN = 16 << 20;
+
+        private File source;
+        private int[] targetGuids;
+        private long start;
+        private long end;
+
+        public RangeIndexer(File source, int[] targetGuids, long start, long end) {
+            this.source = source;
+            this.targetGuids = targetGuids;
+            this.start = start;
+            this.end = end;
+        }
+
+        public PartialIndex[] call() throws IOException {
+            RangeReader[] readers = new RangeReader[targetGuids.length];
+            PartialIndex[] result = new PartialIndex[targetGuids.length];
+            for (int i = 0; i < targetGuids.length; i++) {
+                result[i] = new PartialIndex();
+                readers[i] = new RangeReader(result[i]);
+                // The first range starts with the file, just like sequential
+                // read
+                readers[i].started = start == 0;
+            }
+
+            SeekableByteChannel ch = null;
+            try {
+                ch = NIOUtils.readableChannel(source);
+                ch.setPosition(start);
+                long pos = start;
+                int nDone = 0;
+                while (nDone < readers.length && pos - end < MAX_PES_SPAN) {
+                    ByteBuffer buf = NIOUtils.fetchFromChannel(ch, BUFFER_SIZE);
+                    if (buf.remaining() < 188)
+                        break;
+                    while (buf.remaining() >= 188) {
+                        ByteBuffer tsBuf = NIOUtils.read(buf, 188);
+                        long pktPos = pos;
+                        pos += 188;
+                        checkState(0x47 == (tsBuf.get() & 0xff));
+                        int guidFlags = ((tsBuf.get() & 0xff) << 8) | (tsBuf.get() & 0xff);
+                        int guid = (int) guidFlags & 0x1fff;
+                        int idx = indexOf(targetGuids, guid);
+                        if (idx == -1 || readers[idx].done)
+                            continue;
+                        RangeReader reader = readers[idx];
+                        boolean payloadStart = ((guidFlags >> 14) & 0x1) == 1;
+                        int b0 = tsBuf.get() & 0xff;
+                        if ((b0 & 0x20) != 0) {
+                            NIOUtils.skip(tsBuf, tsBuf.get() & 0xff);
+                        }
+                        long payloadPos = pos - tsBuf.remaining();
+
+                        if (pktPos >= end && (payloadStart || !reader.started)) {
+                            if (payloadStart && reader.started) {
+                                ByteBuffer startCode = tsBuf.duplicate();
+                                startCode.limit(startCode.position() + Math.min(4, startCode.remaining()));
+                                reader.analyseBuffer(startCode, payloadPos);
+                            }
+                            reader.done = true;
+                            nDone++;
+                            continue;
+                        }
+                        if (!reader.started) {
+                            if (!payloadStart)
+                                continue;
+                            reader.started = true;
+                        }
+                        reader.analyseBuffer(tsBuf, payloadPos);
+                    }
+                }
+                for (RangeReader reader : readers) {
+                    if (reader.started && !reader.done)
+                        reader.finishRead();
+                }
+            } finally {
+                NIOUtils.closeQuietly(ch);
+            }
+            return result;
+        }
+
+        private static int indexOf(int[] guids, int guid) {
+            for (int i = 0; i < guids.length; i++) {
+                if (guids[i] == guid)
+                    return i;
+            }
+            return -1;
+        }
+    }
+
+    private static class RangeReader extends MPSUtils.PESReader {
+        private PartialIndex part;
+        private boolean started;
+        private boolean done;
+
+        public RangeReader(PartialIndex part) {
+            this.part = part;
+        }
+
+        @Override
+        protected void pes(ByteBuffer pesBuffer, long start, int pesLen, int stream) {
+            if (!mediaStream(stream))
+                return;
+            PESPacket pesHeader = readPESHeader(pesBuffer, start);
+            part.pes(start, pesLen, stream, pesBuffer, pesHeader.pts);
+        }
     }
 
     public FileReader indexReader(NIOUtils.FileReaderListener listener, int[] targetGuids) throws IOException {
@@ -113,14 +309,24 @@ public class MTSIndexer {
                 return;
             Logger.debug(String.format("PES: %08x, %d", start, pesLen));
             PESPacket pesHeader = readPESHeader(pesBuffer, start);
+            savePES(start, pesLen, stream, pesBuffer.remaining());
+            getAnalyser(stream).pkt(pesBuffer, pesHeader);
+        }
+
+        private void savePES(long start, int pesLen, int stream, int payloadSize) {
             int leadingTsPkt = 0;// pesBuffer.position();
             if (predFileStartInTsPkt != start) {
                 leadingTsPkt = (int) (start / 188 - predFileStartInTsPkt);
             }
             predFileStartInTsPkt = (start + pesLen) / 188;
             int tsPktInPes = (int) (predFileStartInTsPkt - start / 188);
-            savePESMeta(stream, MPSIndex.makePESToken(leadingTsPkt, tsPktInPes, pesBuffer.remaining()));
-            getAnalyser(stream).pkt(pesBuffer, pesHeader);
+            savePESMeta(stream, MPSIndex.makePESToken(leadingTsPkt, tsPktInPes, payloadSize));
+        }
+
+        public void merge(PartialIndex part) {
+            for (int i = 0; i < part.size(); i++)
+                savePES(part.getPesStart(i), part.getPesLen(i), part.getPesStream(i), part.getPesPayload(i));
+            mergeFrames(part);
         }
     }
 
@@ -3,9 +3,12 @@ import org.jcodec.common.io.NIOUtils;
 import org.jcodec.common.io.SeekableByteChannel;
 import org.jcodec.containers.mps.index.MPSIndex.MPSStreamIndex;
 import org.jcodec.containers.mps.index.MTSIndex.MTSProgram;
+import org.jcodec.containers.mps.index.MappedIndex.Track;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.jcodec.common.Preconditions.checkState;
 
@@ -19,6 +22,7 @@ import static org.jcodec.common.Preconditions.checkState;
 public class MTSRandomAccessDemuxer {
 
     private MTSProgram[] programs;
+    private MappedIndex mappedIndex;
     private SeekableByteChannel ch;
 
     public MTSRandomAccessDemuxer(SeekableByteChannel ch, MTSIndex index) {
@@ -26,14 +30,42 @@ public class MTSRandomAccessDemuxer {
         this.ch = ch;
     }
 
+    /**
+     * Uses the memory mapped index, nothing is read from the index until the
+     * tracks are accessed.
+     * 
+     * @see MappedIndexWriter
+     */
+    public MTSRandomAccessDemuxer(SeekableByteChannel ch, MappedIndex index) {
+        mappedIndex = index;
+        this.ch = ch;
+    }
+
     public int[] getGuids() {
+        if (mappedIndex != null)
+            return mappedIndex.getGuids();
         int[] guids = new int[programs.length];
         for (int i = 0; i < programs.length; i++)
             guids[i] = programs[i].getTargetGuid();
         return guids;
     }
 
+    /**
+     * Returns the tracks of the program when the demuxer uses the mapped
+     * index.
+     */
+    public MappedIndexTrack[] getMappedTracks(int guid) {
+        checkState(mappedIndex != null, "Not using the mapped index");
+        List<MappedIndexTrack> result = new ArrayList<MappedIndexTrack>();
+        for (Track track : mappedIndex.getTracks()) {
+            if (track.getGuid() == guid)
+                result.add(new MappedIndexTrack(ch, mappedIndex, track));
+        }
+        return result.toArray(new MappedIndexTrack[0]);
+    }
+
     public MPSRandomAccessDemuxer getProgramDemuxer(final int tgtGuid) throws IOException {
+        checkState(programs != null, "Using the mapped index, see getMappedTracks");
         MPSIndex index = getProgram(tgtGuid);
         return new MPSRandomAccessDemuxer(ch, index) {
             @Override
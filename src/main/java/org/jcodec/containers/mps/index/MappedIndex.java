@@ -0,0 +1,261 @@
+package org.jcodec.containers.mps.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.jcodec.common.io.NIOUtils;
+import org.jcodec.platform.Platform;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * Index for MPEG TS/PS stream stored in a fixed width, page aligned layout that
+ * is used directly from a memory mapped file, nothing is parsed or copied on
+ * open.
+ *
+ * The file starts with a header page: the magic, the version, the packet size
+ * (188 for TS, 0 for PS) and the number of tracks followed by a table of 64
+ * byte track entries. Every track has 3 page aligned arrays of fixed size
+ * records:
+ *
+ * <pre>
+ * PES   (16 bytes): long position, int length (in TS packets for TS, bytes for PS), int payload size
+ * frame (32 bytes): int PES index, int payload offset, int size, int duration, long pts, int flags, int reserved
+ * key   (4 bytes) : int frame number
+ * </pre>
+ *
+ * The arrays are allocated to a fixed capacity when the track is created, the
+ * counts in the track entries are updated as the records are appended, hence
+ * the index may be read while it's still being written.
+ *
+ * @see MappedIndexWriter
+ * @author The JCodec project
+ *
+ */
+public class MappedIndex {
+    public static final int MAGIC = 0x4a434d49;
+    public static final int VERSION = 1;
+    public static final int PAGE_SIZE = 4096;
+    public static final int TRACK_ENTRY_SIZE = 64;
+    public static final int TRACK_TABLE_OFFSET = 64;
+    public static final int MAX_TRACKS = (PAGE_SIZE - TRACK_TABLE_OFFSET) / TRACK_ENTRY_SIZE;
+
+    public static final int PES_RECORD_SIZE = 16;
+    public static final int FRAME_RECORD_SIZE = 32;
+    public static final int KEY_RECORD_SIZE = 4;
+
+    public static final int FLAG_KEY = 1;
+
+    static final int GUID = 0;
+    static final int STREAM_ID = 4;
+    static final int PES_CAPACITY = 8;
+    static final int FRAME_CAPACITY = 12;
+    static final int KEY_CAPACITY = 16;
+    static final int PES_COUNT = 20;
+    static final int FRAME_COUNT = 24;
+    static final int KEY_COUNT = 28;
+    static final int PES_OFFSET = 32;
+    static final int FRAME_OFFSET = 40;
+    static final int KEY_OFFSET = 48;
+
+    private ByteBuffer buf;
+    private int packetSize;
+    private Track[] tracks;
+
+    public MappedIndex(ByteBuffer buf) {
+        this.buf = buf;
+        if (buf.getInt(0) != MAGIC)
+            throw new IllegalArgumentException("Not a mapped MPEG index");
+        if (buf.getInt(4) != VERSION)
+            throw new IllegalArgumentException("Unsupported mapped MPEG index version: " + buf.getInt(4));
+        this.packetSize = buf.getInt(8);
+
+        int nTracks = buf.getInt(12);
+        this.tracks = new Track[nTracks];
+        for (int i = 0; i < nTracks; i++) {
+            int entry = TRACK_TABLE_OFFSET + i * TRACK_ENTRY_SIZE;
+            if (buf.getLong(entry + KEY_OFFSET) + (long) buf.getInt(entry + KEY_CAPACITY) * KEY_RECORD_SIZE > buf
+                    .capacity()) {
+                // The track was added after the file was mapped
+                tracks = Platform.copyOfObj(tracks, i);
+                break;
+            }
+            tracks[i] = new Track(this, entry);
+        }
+    }
+
+    /**
+     * Maps the index file, this is constant time regardless of the size of
+     * the index.
+     */
+    public static MappedIndex open(File file) throws IOException {
+        return new MappedIndex(NIOUtils.mapFile(file));
+    }
+
+    /**
+     * @return 188 for MPEG TS, 0 for MPEG PS
+     */
+    public int getPacketSize() {
+        return packetSize;
+    }
+
+    public Track[] getTracks() {
+        return tracks;
+    }
+
+    public int[] getGuids() {
+        int[] guids = new int[tracks.length];
+        int n = 0;
+        outer: for (Track track : tracks) {
+            for (int i = 0; i < n; i++) {
+                if (guids[i] == track.getGuid())
+                    continue outer;
+            }
+            guids[n++] = track.getGuid();
+        }
+        return Platform.copyOfInt(guids, n);
+    }
+
+    public static class Track {
+        private ByteBuffer buf;
+        private int entry;
+        private int guid;
+        private int streamId;
+        private int pesOffset;
+        private int frameOffset;
+        private int keyOffset;
+
+        private Track(MappedIndex index, int entry) {
+            this.buf = index.buf;
+            this.entry = entry;
+            this.guid = buf.getInt(entry + GUID);
+            this.streamId = buf.getInt(entry + STREAM_ID);
+            this.pesOffset = (int) buf.getLong(entry + PES_OFFSET);
+            this.frameOffset = (int) buf.getLong(entry + FRAME_OFFSET);
+            this.keyOffset = (int) buf.getLong(entry + KEY_OFFSET);
+        }
+
+        /**
+         * @return TS PID of the program this track belongs to, 0 for PS
+         */
+        public int getGuid() {
+            return guid;
+        }
+
+        public int getStreamId() {
+            return streamId;
+        }
+
+        /**
+         * The counts are read from the map every time so the records appended
+         * to an index that is being written become visible.
+         */
+        public int getPesCount() {
+            return buf.getInt(entry + PES_COUNT);
+        }
+
+        public int getFrameCount() {
+            return buf.getInt(entry + FRAME_COUNT);
+        }
+
+        public int getKeyFrameCount() {
+            return buf.getInt(entry + KEY_COUNT);
+        }
+
+        public long getPesPosition(int pes) {
+            return buf.getLong(pesOffset + pes * PES_RECORD_SIZE);
+        }
+
+        public int getPesLength(int pes) {
+            return buf.getInt(pesOffset + pes * PES_RECORD_SIZE + 8);
+        }
+
+        public int getPesPayloadSize(int pes) {
+            return buf.getInt(pesOffset + pes * PES_RECORD_SIZE + 12);
+        }
+
+        public int getFramePes(int frame) {
+            return buf.getInt(frameOffset + frame * FRAME_RECORD_SIZE);
+        }
+
+        public int getFramePayloadOffset(int frame) {
+            return buf.getInt(frameOffset + frame * FRAME_RECORD_SIZE + 4);
+        }
+
+        public int getFrameSize(int frame) {
+            return buf.getInt(frameOffset + frame * FRAME_RECORD_SIZE + 8);
+        }
+
+        public int getFrameDuration(int frame) {
+            return buf.getInt(frameOffset + frame * FRAME_RECORD_SIZE + 12);
+        }
+
+        public long getFramePts(int frame) {
+            return buf.getLong(frameOffset + frame * FRAME_RECORD_SIZE + 16);
+        }
+
+        public boolean isKeyFrame(int frame) {
+            return (buf.getInt(frameOffset + frame * FRAME_RECORD_SIZE + 24) & FLAG_KEY) != 0;
+        }
+
+        public int getKeyFrame(int key) {
+            return buf.getInt(keyOffset + key * KEY_RECORD_SIZE);
+        }
+
+        /**
+         * Binary searches the key frame table.
+         *
+         * @return The last key frame at or before the frame, or the frame
+         *         itself if the track has no key frame table (every frame is
+         *         a key frame)
+         */
+        public int findKeyFrame(int frame) {
+            int nKeys = getKeyFrameCount();
+            if (nKeys == 0)
+                return frame;
+            int lo = 0, hi = nKeys - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (getKeyFrame(mid) <= frame)
+                    lo = mid;
+                else
+                    hi = mid - 1;
+            }
+            return getKeyFrame(lo);
+        }
+
+        /**
+         * Binary searches the key frame table by the presentation time.
+         *
+         * @return The last key frame with pts at or before the given one
+         */
+        public int findKeyFrameByPts(long pts) {
+            int nKeys = getKeyFrameCount();
+            if (nKeys == 0)
+                return findFrameByPts(pts);
+            int lo = 0, hi = nKeys - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (getFramePts(getKeyFrame(mid)) <= pts)
+                    lo = mid;
+                else
+                    hi = mid - 1;
+            }
+            return getKeyFrame(lo);
+        }
+
+        private int findFrameByPts(long pts) {
+            int lo = 0, hi = Math.max(0, getFrameCount() - 1);
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (getFramePts(mid) <= pts)
+                    lo = mid;
+                else
+                    hi = mid - 1;
+            }
+            return lo;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package org.jcodec.containers.mps.index;
+
+import static org.jcodec.common.Preconditions.checkState;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.jcodec.common.DemuxerTrackMeta;
+import org.jcodec.common.SeekableDemuxerTrack;
+import org.jcodec.common.io.NIOUtils;
+import org.jcodec.common.io.SeekableByteChannel;
+import org.jcodec.common.model.Packet;
+import org.jcodec.common.model.Packet.FrameType;
+import org.jcodec.containers.mps.MPSUtils;
+import org.jcodec.containers.mps.index.MappedIndex.Track;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * Random access demuxer track of MPEG TS/PS that reads the frames using the
+ * memory mapped index. Every frame knows the PES packet it starts in and every
+ * PES packet knows its position in the file so the seeks don't need to scan the
+ * index.
+ *
+ * @author The JCodec project
+ *
+ */
+public class MappedIndexTrack implements SeekableDemuxerTrack {
+    private static final int MPEG_TIMESCALE = 90000;
+    private static final int TS_PACKET_SIZE = 188;
+
+    private SeekableByteChannel source;
+    private Track track;
+    private boolean ts;
+    private int curFrame;
+    private int curPes;
+    private ByteBuffer pesBuf;
+    private int payloadStart;
+
+    public MappedIndexTrack(SeekableByteChannel source, MappedIndex index, Track track) {
+        this.source = source;
+        this.track = track;
+        this.ts = index.getPacketSize() == TS_PACKET_SIZE;
+        this.curPes = -1;
+    }
+
+    public int getStreamId() {
+        return track.getStreamId();
+    }
+
+    public Track getTrack() {
+        return track;
+    }
+
+    @Override
+    public Packet nextFrame() throws IOException {
+        if (curFrame >= track.getFrameCount())
+            return null;
+
+        int pesIdx = track.getFramePes(curFrame);
+        if (pesIdx != curPes)
+            readPES(pesIdx);
+        pesBuf.position(payloadStart + track.getFramePayloadOffset(curFrame));
+
+        ByteBuffer result = ByteBuffer.allocate(track.getFrameSize(curFrame));
+        while (result.hasRemaining()) {
+            if (pesBuf.hasRemaining()) {
+                result.put(NIOUtils.read(pesBuf, Math.min(pesBuf.remaining(), result.remaining())));
+            } else {
+                if (curPes + 1 >= track.getPesCount())
+                    break;
+                readPES(curPes + 1);
+            }
+        }
+        result.flip();
+
+        Packet pkt = Packet.createPacket(result, track.getFramePts(curFrame), MPEG_TIMESCALE,
+                track.getFrameDuration(curFrame), curFrame, track.isKeyFrame(curFrame) ? FrameType.KEY
+                        : FrameType.INTER, null);
+        curFrame++;
+        return pkt;
+    }
+
+    private void readPES(int pesIdx) throws IOException {
+        source.setPosition(track.getPesPosition(pesIdx));
+        pesBuf = ts ? fetchTS(track.getPesLength(pesIdx)) : NIOUtils.fetchFromChannel(source,
+                track.getPesLength(pesIdx));
+        MPSUtils.readPESHeader(pesBuf, 0);
+        payloadStart = pesBuf.position();
+        pesBuf.limit(Math.min(pesBuf.limit(), payloadStart + track.getPesPayloadSize(pesIdx)));
+        curPes = pesIdx;
+    }
+
+    private ByteBuffer fetchTS(int nPackets) throws IOException {
+        ByteBuffer all = NIOUtils.fetchFromChannel(source, nPackets * TS_PACKET_SIZE);
+        ByteBuffer bb = ByteBuffer.allocate(all.remaining());
+        while (all.remaining() >= TS_PACKET_SIZE) {
+            ByteBuffer tsBuf = NIOUtils.read(all, TS_PACKET_SIZE);
+            checkState(0x47 == (tsBuf.get() & 0xff));
+            int guidFlags = ((tsBuf.get() & 0xff) << 8) | (tsBuf.get() & 0xff);
+            if ((guidFlags & 0x1fff) != track.getGuid())
+                continue;
+            int b0 = tsBuf.get() & 0xff;
+            if ((b0 & 0x20) != 0)
+                NIOUtils.skip(tsBuf, tsBuf.get() & 0xff);
+            if ((b0 & 0x10) != 0)
+                bb.put(tsBuf);
+        }
+        bb.flip();
+        return bb;
+    }
+
+    @Override
+    public DemuxerTrackMeta getMeta() {
+        return null;
+    }
+
+    @Override
+    public boolean gotoFrame(long frameNo) {
+        if (frameNo < 0 || frameNo >= track.getFrameCount())
+            return false;
+        curFrame = (int) frameNo;
+        return true;
+    }
+
+    @Override
+    public boolean gotoSyncFrame(long frameNo) {
+        if (frameNo < 0 || frameNo >= track.getFrameCount())
+            return false;
+        curFrame = track.findKeyFrame((int) frameNo);
+        return true;
+    }
+
+    @Override
+    public long getCurFrame() {
+        return curFrame;
+    }
+
+    /**
+     * Goes to the key frame at or before the time, the time is counted from
+     * the first frame of the track.
+     */
+    @Override
+    public void seek(double second) {
+        if (track.getFrameCount() == 0)
+            return;
+        curFrame = track.findKeyFrameByPts(track.getFramePts(0) + (long) (second * MPEG_TIMESCALE));
+    }
+}
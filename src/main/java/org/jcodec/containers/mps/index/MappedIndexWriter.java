@@ -0,0 +1,277 @@
+package org.jcodec.containers.mps.index;
+
+import static org.jcodec.common.Preconditions.checkState;
+import static org.jcodec.containers.mps.index.MappedIndex.FLAG_KEY;
+import static org.jcodec.containers.mps.index.MappedIndex.FRAME_CAPACITY;
+import static org.jcodec.containers.mps.index.MappedIndex.FRAME_COUNT;
+import static org.jcodec.containers.mps.index.MappedIndex.FRAME_OFFSET;
+import static org.jcodec.containers.mps.index.MappedIndex.FRAME_RECORD_SIZE;
+import static org.jcodec.containers.mps.index.MappedIndex.GUID;
+import static org.jcodec.containers.mps.index.MappedIndex.KEY_CAPACITY;
+import static org.jcodec.containers.mps.index.MappedIndex.KEY_COUNT;
+import static org.jcodec.containers.mps.index.MappedIndex.KEY_OFFSET;
+import static org.jcodec.containers.mps.index.MappedIndex.KEY_RECORD_SIZE;
+import static org.jcodec.containers.mps.index.MappedIndex.PAGE_SIZE;
+import static org.jcodec.containers.mps.index.MappedIndex.PES_CAPACITY;
+import static org.jcodec.containers.mps.index.MappedIndex.PES_COUNT;
+import static org.jcodec.containers.mps.index.MappedIndex.PES_OFFSET;
+import static org.jcodec.containers.mps.index.MappedIndex.PES_RECORD_SIZE;
+import static org.jcodec.containers.mps.index.MappedIndex.STREAM_ID;
+import static org.jcodec.containers.mps.index.MappedIndex.TRACK_ENTRY_SIZE;
+import static org.jcodec.containers.mps.index.MappedIndex.TRACK_TABLE_OFFSET;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jcodec.containers.mps.index.MPSIndex.MPSStreamIndex;
+import org.jcodec.containers.mps.index.MTSIndex.MTSProgram;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * Writes the memory mappable index, see MappedIndex for the layout.
+ *
+ * The records are appended to the tracks as the stream is indexed and are
+ * published to the readers with commit, so a file that is still being
+ * recorded can be played back up to the last committed frame. The record
+ * arrays of a track are allocated to a fixed capacity when the track is added,
+ * the file is sparse so the unused capacity takes no space on most file
+ * systems.
+ *
+ * @author The JCodec project
+ *
+ */
+public class MappedIndexWriter {
+    /**
+     * Enough for about 10 hours of 60 fps video.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 21;
+
+    private RandomAccessFile file;
+    private FileChannel ch;
+    private MappedByteBuffer header;
+    private List<TrackWriter> tracks;
+    private long fileEnd;
+
+    public MappedIndexWriter(File file, int packetSize) throws IOException {
+        this.file = new RandomAccessFile(file, "rw");
+        this.file.setLength(0);
+        this.ch = this.file.getChannel();
+        this.tracks = new ArrayList<TrackWriter>();
+        this.header = ch.map(MapMode.READ_WRITE, 0, PAGE_SIZE);
+        header.putInt(0, MappedIndex.MAGIC);
+        header.putInt(4, MappedIndex.VERSION);
+        header.putInt(8, packetSize);
+        header.putInt(12, 0);
+        fileEnd = PAGE_SIZE;
+    }
+
+    public static class TrackWriter {
+        private MappedIndexWriter writer;
+        private int entry;
+        private MappedByteBuffer pes;
+        private MappedByteBuffer frames;
+        private MappedByteBuffer keys;
+        private int pesCapacity;
+        private int frameCapacity;
+        private int pesCount;
+        private int frameCount;
+        private int keyCount;
+
+        private TrackWriter(MappedIndexWriter writer, int entry, MappedByteBuffer pes, MappedByteBuffer frames,
+                MappedByteBuffer keys, int pesCapacity, int frameCapacity) {
+            this.writer = writer;
+            this.entry = entry;
+            this.pes = pes;
+            this.frames = frames;
+            this.keys = keys;
+            this.pesCapacity = pesCapacity;
+            this.frameCapacity = frameCapacity;
+        }
+
+        /**
+         * @param position
+         *            Position of the PES packet in the file, for TS the
+         *            position of the TS packet where it starts
+         * @param length
+         *            Length of the PES packet, for TS in TS packets including
+         *            the ones of the other PIDs in between
+         * @return The index of the PES packet
+         */
+        public int addPES(long position, int length, int payloadSize) {
+            checkState(pesCount < pesCapacity, "PES capacity of the track exceeded");
+            int off = pesCount * PES_RECORD_SIZE;
+            pes.putLong(off, position);
+            pes.putInt(off + 8, length);
+            pes.putInt(off + 12, payloadSize);
+            return pesCount++;
+        }
+
+        /**
+         * @param pesIdx
+         *            The PES packet where the frame starts
+         * @param payloadOffset
+         *            Offset of the frame in the payload of this PES packet
+         */
+        public int addFrame(int pesIdx, int payloadOffset, int size, long pts, int duration, boolean key) {
+            checkState(frameCount < frameCapacity, "Frame capacity of the track exceeded");
+            int off = frameCount * FRAME_RECORD_SIZE;
+            frames.putInt(off, pesIdx);
+            frames.putInt(off + 4, payloadOffset);
+            frames.putInt(off + 8, size);
+            frames.putInt(off + 12, duration);
+            frames.putLong(off + 16, pts);
+            frames.putInt(off + 24, key ? FLAG_KEY : 0);
+            if (key)
+                keys.putInt(keyCount++ * KEY_RECORD_SIZE, frameCount);
+            return frameCount++;
+        }
+
+        private void commit() {
+            // The counts are written after the records they cover
+            MappedByteBuffer header = writer.header;
+            header.putInt(entry + PES_COUNT, pesCount);
+            header.putInt(entry + FRAME_COUNT, frameCount);
+            header.putInt(entry + KEY_COUNT, keyCount);
+        }
+    }
+
+    public TrackWriter addTrack(int guid, int streamId) throws IOException {
+        return addTrack(guid, streamId, DEFAULT_CAPACITY, DEFAULT_CAPACITY);
+    }
+
+    public TrackWriter addTrack(int guid, int streamId, int pesCapacity, int frameCapacity) throws IOException {
+        checkState(tracks.size() < MappedIndex.MAX_TRACKS, "Too many tracks");
+        int entry = TRACK_TABLE_OFFSET + tracks.size() * TRACK_ENTRY_SIZE;
+
+        long pesOffset = fileEnd;
+        long frameOffset = pesOffset + pageAlign((long) pesCapacity * PES_RECORD_SIZE);
+        long keyOffset = frameOffset + pageAlign((long) frameCapacity * FRAME_RECORD_SIZE);
+        fileEnd = keyOffset + pageAlign((long) frameCapacity * KEY_RECORD_SIZE);
+        checkState(fileEnd <= Integer.MAX_VALUE, "Mapped index can't be larger than 2G");
+        file.setLength(fileEnd);
+
+        TrackWriter track = new TrackWriter(this, entry,
+                ch.map(MapMode.READ_WRITE, pesOffset, (long) pesCapacity * PES_RECORD_SIZE),
+                ch.map(MapMode.READ_WRITE, frameOffset, (long) frameCapacity * FRAME_RECORD_SIZE),
+                ch.map(MapMode.READ_WRITE, keyOffset, (long) frameCapacity * KEY_RECORD_SIZE), pesCapacity,
+                frameCapacity);
+
+        header.putInt(entry + GUID, guid);
+        header.putInt(entry + STREAM_ID, streamId);
+        header.putInt(entry + PES_CAPACITY, pesCapacity);
+        header.putInt(entry + FRAME_CAPACITY, frameCapacity);
+        header.putInt(entry + KEY_CAPACITY, frameCapacity);
+        header.putLong(entry + PES_OFFSET, pesOffset);
+        header.putLong(entry + FRAME_OFFSET, frameOffset);
+        header.putLong(entry + KEY_OFFSET, keyOffset);
+        tracks.add(track);
+        header.putInt(12, tracks.size());
+        return track;
+    }
+
+    private static long pageAlign(long size) {
+        return (size + PAGE_SIZE - 1) & ~(long) (PAGE_SIZE - 1);
+    }
+
+    /**
+     * Makes the records appended so far visible to the readers.
+     */
+    public void commit() {
+        for (TrackWriter track : tracks)
+            track.commit();
+    }
+
+    public void close() throws IOException {
+        commit();
+        for (TrackWriter track : tracks) {
+            track.pes.force();
+            track.frames.force();
+            track.keys.force();
+        }
+        header.force();
+        ch.close();
+        file.close();
+    }
+
+    /**
+     * Converts the index of MPEG TS built by MTSIndexer.
+     */
+    public static void writeMTS(MTSIndex index, File file) throws IOException {
+        MappedIndexWriter writer = new MappedIndexWriter(file, 188);
+        try {
+            for (MTSProgram program : index.getPrograms())
+                writer.addProgram(program, program.getTargetGuid(), 188);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Converts the index of MPEG PS built by MPSIndexer.
+     */
+    public static void writeMPS(MPSIndex index, File file) throws IOException {
+        MappedIndexWriter writer = new MappedIndexWriter(file, 0);
+        try {
+            writer.addProgram(index, 0, 1);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Resolves the PES tokens of the index into absolute positions and the
+     * frames into the PES packets they start in.
+     *
+     * @param unit
+     *            Size of the units of the PES tokens, 188 for TS, 1 for PS
+     */
+    private void addProgram(MPSIndex index, int guid, int unit) throws IOException {
+        long[] tokens = index.getPesTokens();
+        int[] pesStreamIds = index.getPesStreamIds().flattern();
+        for (MPSStreamIndex stream : index.getStreams()) {
+            int nPes = 0;
+            for (int i = 0; i < tokens.length; i++) {
+                if (pesStreamIds[i] == stream.getStreamId())
+                    nPes++;
+            }
+            int[] fsizes = stream.getFsizes();
+            TrackWriter track = addTrack(guid, stream.getStreamId(), Math.max(1, nPes), Math.max(1, fsizes.length));
+
+            long pos = 0;
+            for (int i = 0; i < tokens.length; i++) {
+                pos += MPSIndex.leadingSize(tokens[i]);
+                if (pesStreamIds[i] == stream.getStreamId())
+                    track.addPES(pos * unit, MPSIndex.pesLen(tokens[i]), MPSIndex.payLoadSize(tokens[i]));
+                pos += MPSIndex.pesLen(tokens[i]);
+            }
+
+            int[] fpts = stream.getFpts();
+            int[] fdur = stream.getFdur();
+            int[] sync = stream.getSync();
+            int pesIdx = 0;
+            long pesStart = 0;
+            long frameStart = 0;
+            for (int i = 0, syncIdx = 0; i < fsizes.length; i++) {
+                while (pesIdx < nPes - 1 && frameStart >= pesStart + track.pes.getInt(pesIdx * PES_RECORD_SIZE + 12)) {
+                    pesStart += track.pes.getInt(pesIdx * PES_RECORD_SIZE + 12);
+                    pesIdx++;
+                }
+                boolean key = sync.length == 0;
+                for (; syncIdx < sync.length && sync[syncIdx] <= i; syncIdx++)
+                    key |= sync[syncIdx] == i;
+                track.addFrame(pesIdx, (int) (frameStart - pesStart), fsizes[i], fpts[i], i < fdur.length ? fdur[i]
+                        : 0, key);
+                frameStart += fsizes[i];
+            }
+        }
+        commit();
+    }
+}
@@ -51,4 +51,18 @@ public class PATSection extends PSISection {
 
         return new PATSection(psi, networkPids.toArray(), programs);
     }
-}
\ No newline at end of file
+
+    public void write(ByteBuffer buf) {
+        int start = writeHeader(buf);
+        for (int i = 0; i < networkPids.length; i++) {
+            buf.putShort((short) 0);
+            buf.putShort((short) (0xE000 | networkPids[i]));
+        }
+        int[] keys = programs.keys();
+        for (int i = 0; i < keys.length; i++) {
+            buf.putShort((short) keys[i]);
+            buf.putShort((short) (0xE000 | programs.get(keys[i])));
+        }
+        finishSection(buf, start);
+    }
+}
@@ -74,6 +74,29 @@ public class PMTSection extends PSISection {
         return new PMTSection(psi, pcrPid, tags.toArray(new Tag[0]), streams.toArray(new PMTStream[0]));
     }
 
+    /**
+     * Writes the section, the elementary stream descriptors are not written.
+     */
+    public void write(ByteBuffer buf) {
+        int start = writeHeader(buf);
+        buf.putShort((short) (0xE000 | pcrPid));
+        int programInfoLength = 0;
+        for (int i = 0; i < tags.length; i++)
+            programInfoLength += 2 + tags[i].content.remaining();
+        buf.putShort((short) (0xF000 | programInfoLength));
+        for (int i = 0; i < tags.length; i++) {
+            buf.put((byte) tags[i].tag);
+            buf.put((byte) tags[i].content.remaining());
+            buf.put(tags[i].content.duplicate());
+        }
+        for (int i = 0; i < streams.length; i++) {
+            buf.put((byte) streams[i].streamTypeTag);
+            buf.putShort((short) (0xE000 | streams[i].pid));
+            buf.putShort((short) 0xF000);
+        }
+        finishSection(buf, start);
+    }
+
     static List<Tag> parseTags(ByteBuffer bb) {
         List<Tag> tags = new ArrayList<Tag>();
         while (bb.hasRemaining()) {
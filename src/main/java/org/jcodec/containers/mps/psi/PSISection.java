@@ -12,6 +12,16 @@ import java.nio.ByteBuffer;
  * 
  */
 public class PSISection {
+    private static final int[] CRC_TABLE = new int[256];
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 24;
+            for (int j = 0; j < 8; j++)
+                crc = (crc << 1) ^ (crc < 0 ? 0x04C11DB7 : 0);
+            CRC_TABLE[i] = crc;
+        }
+    }
+
     protected int tableId;
     protected int specificId;
     protected int versionNumber;
@@ -74,4 +84,40 @@ public class PSISection {
     public int getLastSectionNumber() {
         return lastSectionNumber;
     }
-}
\ No newline at end of file
+
+    /**
+     * Writes the common header of a long section, the section length is
+     * filled in by finishSection.
+     * 
+     * @return position of the section start
+     */
+    protected int writeHeader(ByteBuffer buf) {
+        int start = buf.position();
+        buf.put((byte) tableId);
+        buf.putShort((short) 0xB000);
+        buf.putShort((short) specificId);
+        buf.put((byte) (0xC0 | ((versionNumber & 0x1f) << 1) | (currentNextIndicator & 1)));
+        buf.put((byte) sectionNumber);
+        buf.put((byte) lastSectionNumber);
+        return start;
+    }
+
+    /**
+     * Fills in the section length and appends the CRC.
+     */
+    protected static void finishSection(ByteBuffer buf, int start) {
+        int sectionLength = buf.position() + 4 - (start + 3);
+        buf.putShort(start + 1, (short) (0xB000 | sectionLength));
+        buf.putInt(crc32(buf, start, buf.position()));
+    }
+
+    /**
+     * CRC-32 as used by MPEG-2 sections, not the one from java.util.zip.
+     */
+    public static int crc32(ByteBuffer buf, int from, int to) {
+        int crc = 0xffffffff;
+        for (int i = from; i < to; i++)
+            crc = (crc << 8) ^ CRC_TABLE[((crc >>> 24) ^ buf.get(i)) & 0xff];
+        return crc;
+    }
+}
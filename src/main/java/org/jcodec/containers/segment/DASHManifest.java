@@ -0,0 +1,78 @@
+package org.jcodec.containers.segment;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ * 
+ * MPEG-DASH manifest for the MPEG-2 TS simple profile, a single representation
+ * with all the tracks multiplexed. The segments are listed with a timeline in
+ * milliseconds.
+ * 
+ * While the segments are being added the presentation is dynamic, its
+ * availability starts when the manifest is created.
+ * 
+ * @author The JCodec project
+ * 
+ */
+public class DASHManifest implements SegmentPlaylist {
+    private static final String PROFILE = "urn:mpeg:dash:profile:mp2t-simple:2011";
+
+    private String availabilityStartTime;
+
+    public DASHManifest() {
+        SimpleDateFormat iso = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        iso.setTimeZone(TimeZone.getTimeZone("UTC"));
+        this.availabilityStartTime = iso.format(new Date());
+    }
+
+    @Override
+    public String format(List<Segment> segments, int targetDuration, boolean live, boolean finished) {
+        double total = 0;
+        long size = 0;
+        for (Segment segment : segments) {
+            total += segment.getDuration();
+            size += segment.getSize();
+        }
+        long bandwidth = total > 0 ? (long) (size * 8 / total) : 0;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<MPD xmlns=\"urn:mpeg:dash:schema:mpd:2011\" profiles=\"").append(PROFILE).append("\"");
+        if (finished) {
+            sb.append(" type=\"static\"");
+            sb.append(String.format(Locale.US, " mediaPresentationDuration=\"PT%.3fS\"", total));
+        } else {
+            sb.append(" type=\"dynamic\"");
+            sb.append(" availabilityStartTime=\"").append(availabilityStartTime).append("\"");
+            sb.append(" minimumUpdatePeriod=\"PT").append(targetDuration).append("S\"");
+            if (live)
+                sb.append(String.format(Locale.US, " timeShiftBufferDepth=\"PT%.3fS\"", total));
+        }
+        sb.append(" minBufferTime=\"PT").append(targetDuration).append("S\">\n");
+        sb.append("  <Period id=\"0\" start=\"PT0S\">\n");
+        sb.append("    <AdaptationSet mimeType=\"video/mp2t\" segmentAlignment=\"true\">\n");
+        sb.append("      <Representation id=\"0\" bandwidth=\"").append(bandwidth).append("\">\n");
+        sb.append("        <SegmentList timescale=\"1000\" startNumber=\"")
+                .append(segments.isEmpty() ? 0 : segments.get(0).getNumber()).append("\">\n");
+        sb.append("          <SegmentTimeline>\n");
+        for (Segment segment : segments) {
+            sb.append("            <S t=\"").append(Math.round(segment.getStart() * 1000)).append("\" d=\"")
+                    .append(Math.round(segment.getDuration() * 1000)).append("\"/>\n");
+        }
+        sb.append("          </SegmentTimeline>\n");
+        for (Segment segment : segments)
+            sb.append("          <SegmentURL media=\"").append(segment.getFileName()).append("\"/>\n");
+        sb.append("        </SegmentList>\n");
+        sb.append("      </Representation>\n");
+        sb.append("    </AdaptationSet>\n");
+        sb.append("  </Period>\n");
+        sb.append("</MPD>\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,35 @@
+package org.jcodec.containers.segment;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ * 
+ * HLS media playlist ( RFC 8216 ).
+ * 
+ * @author The JCodec project
+ * 
+ */
+public class HLSPlaylist implements SegmentPlaylist {
+
+    @Override
+    public String format(List<Segment> segments, int targetDuration, boolean live, boolean finished) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("#EXTM3U\n");
+        sb.append("#EXT-X-VERSION:3\n");
+        sb.append("#EXT-X-TARGETDURATION:").append(targetDuration).append("\n");
+        sb.append("#EXT-X-MEDIA-SEQUENCE:").append(segments.isEmpty() ? 0 : segments.get(0).getNumber())
+                .append("\n");
+        if (!live)
+            sb.append("#EXT-X-PLAYLIST-TYPE:").append(finished ? "VOD" : "EVENT").append("\n");
+        for (Segment segment : segments) {
+            sb.append(String.format(Locale.US, "#EXTINF:%.3f,\n", segment.getDuration()));
+            sb.append(segment.getFileName()).append("\n");
+        }
+        if (finished)
+            sb.append("#EXT-X-ENDLIST\n");
+        return sb.toString();
+    }
+}
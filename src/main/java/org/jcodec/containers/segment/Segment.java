@@ -0,0 +1,55 @@
+package org.jcodec.containers.segment;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ * 
+ * A finished media segment as it's listed in the playlist.
+ * 
+ * @author The JCodec project
+ * 
+ */
+public class Segment {
+    private int number;
+    private String fileName;
+    private double start;
+    private double duration;
+    private long size;
+
+    public Segment(int number, String fileName, double start, double duration, long size) {
+        this.number = number;
+        this.fileName = fileName;
+        this.start = start;
+        this.duration = duration;
+        this.size = size;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return Presentation time of the first frame in seconds
+     */
+    public double getStart() {
+        return start;
+    }
+
+    /**
+     * @return Duration in seconds
+     */
+    public double getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return Size of the segment file in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+}
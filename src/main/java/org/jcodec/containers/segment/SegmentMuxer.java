@@ -0,0 +1,213 @@
+package org.jcodec.containers.segment;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.jcodec.common.AudioCodecMeta;
+import org.jcodec.common.Codec;
+import org.jcodec.common.Muxer;
+import org.jcodec.common.MuxerTrack;
+import org.jcodec.common.VideoCodecMeta;
+import org.jcodec.common.io.NIOUtils;
+import org.jcodec.common.io.SeekableByteChannel;
+import org.jcodec.common.logging.Logger;
+import org.jcodec.common.model.Packet;
+import org.jcodec.containers.mps.MTSMuxer;
+import org.jcodec.platform.Platform;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ * 
+ * Writes the stream as a sequence of MPEG TS segments next to a playlist (HLS)
+ * or a manifest (DASH) that lists them.
+ * 
+ * A new segment is started on the first key frame of the first video track
+ * (or the first track when there's no video) that comes at least
+ * targetDuration seconds after the start of the current one, so every segment
+ * starts with a key frame and can be decoded on its own. Only the current
+ * segment file is open, the playlist is rewritten every time a segment is
+ * finished. The segments are pieces of one transport stream, the continuity
+ * counters and the time stamps go on from one segment to the next.
+ * 
+ * A GOP longer than targetDuration makes longer segments, the target duration
+ * written to the playlist is then raised to the longest segment rounded, as
+ * HLS requires, and a warning is logged. Use a GOP that divides
+ * targetDuration to keep the segments at the target.
+ * 
+ * With a non-zero window only the last 'window' segments are kept in the
+ * playlist, the segments that fall out of it are deleted once they are
+ * another 'window' segments old, so that the clients that have just fetched
+ * the older playlist can still get them.
+ * 
+ * @author The JCodec project
+ * 
+ */
+public class SegmentMuxer implements Muxer {
+    private File playlistFile;
+    private SegmentPlaylist playlist;
+    private String baseName;
+    private int targetDuration;
+    private int maxDuration;
+    private int window;
+
+    private List<SegmentMuxerTrack> tracks;
+    private SegmentMuxerTrack cutTrack;
+    private LinkedList<Segment> segments;
+    private LinkedList<Segment> expired;
+    private int segmentNo;
+
+    private SeekableByteChannel out;
+    private MTSMuxer mtsMuxer;
+    private String segmentName;
+    private double segmentStart;
+    private double end;
+
+    public SegmentMuxer(File playlistFile, SegmentPlaylist playlist, int targetDuration, int window) {
+        this.playlistFile = playlistFile;
+        this.playlist = playlist;
+        this.targetDuration = targetDuration;
+        this.maxDuration = targetDuration;
+        this.window = window;
+        this.baseName = playlistFile.getName().replaceFirst("\\.[^\\.]*$", "");
+        this.tracks = new ArrayList<SegmentMuxerTrack>();
+        this.segments = new LinkedList<Segment>();
+        this.expired = new LinkedList<Segment>();
+    }
+
+    public static SegmentMuxer createHLSMuxer(File playlistFile, int targetDuration, int window) {
+        return new SegmentMuxer(playlistFile, new HLSPlaylist(), targetDuration, window);
+    }
+
+    public static SegmentMuxer createDASHMuxer(File manifestFile, int targetDuration, int window) {
+        return new SegmentMuxer(manifestFile, new DASHManifest(), targetDuration, window);
+    }
+
+    public static class SegmentMuxerTrack implements MuxerTrack {
+        private SegmentMuxer muxer;
+        private Codec codec;
+        private VideoCodecMeta videoMeta;
+        private AudioCodecMeta audioMeta;
+        private MuxerTrack current;
+
+        public SegmentMuxerTrack(SegmentMuxer muxer, Codec codec, VideoCodecMeta videoMeta, AudioCodecMeta audioMeta) {
+            this.muxer = muxer;
+            this.codec = codec;
+            this.videoMeta = videoMeta;
+            this.audioMeta = audioMeta;
+        }
+
+        @Override
+        public void addFrame(Packet outPacket) throws IOException {
+            muxer.addFrame(this, outPacket);
+        }
+
+        public boolean isVideo() {
+            return audioMeta == null;
+        }
+
+        private void open(MTSMuxer segment) {
+            current = isVideo() ? segment.addVideoTrack(codec, videoMeta) : segment.addAudioTrack(codec, audioMeta);
+        }
+    }
+
+    @Override
+    public MuxerTrack addVideoTrack(Codec codec, VideoCodecMeta meta) {
+        SegmentMuxerTrack track = addTrack(new SegmentMuxerTrack(this, codec, meta, null));
+        if (cutTrack == null || !cutTrack.isVideo())
+            cutTrack = track;
+        return track;
+    }
+
+    @Override
+    public MuxerTrack addAudioTrack(Codec codec, AudioCodecMeta meta) {
+        SegmentMuxerTrack track = addTrack(new SegmentMuxerTrack(this, codec, null, meta));
+        if (cutTrack == null)
+            cutTrack = track;
+        return track;
+    }
+
+    private SegmentMuxerTrack addTrack(SegmentMuxerTrack track) {
+        tracks.add(track);
+        if (mtsMuxer != null)
+            track.open(mtsMuxer);
+        return track;
+    }
+
+    private void addFrame(SegmentMuxerTrack track, Packet packet) throws IOException {
+        double pts = packet.getPtsD();
+        if (track == cutTrack && out != null && mustCut(packet))
+            finishSegment(pts);
+        if (out == null)
+            startSegment(pts);
+        track.current.addFrame(packet);
+        end = Math.max(end, pts + packet.getDurationD());
+    }
+
+    private boolean mustCut(Packet packet) {
+        return packet.isKeyFrame() && packet.getPtsD() - segmentStart >= targetDuration;
+    }
+
+    private void startSegment(double start) throws IOException {
+        segmentName = baseName + segmentNo + ".ts";
+        out = NIOUtils.writableChannel(new File(playlistFile.getParentFile(), segmentName));
+        if (mtsMuxer == null) {
+            mtsMuxer = new MTSMuxer(out);
+            for (SegmentMuxerTrack track : tracks)
+                track.open(mtsMuxer);
+        } else {
+            mtsMuxer.setOutput(out);
+        }
+        segmentStart = start;
+    }
+
+    private void finishSegment(double segmentEnd) throws IOException {
+        mtsMuxer.finish();
+        long size = out.size();
+        out.close();
+        out = null;
+
+        double duration = segmentEnd - segmentStart;
+        // EXTINF rounded must not be over the target duration
+        int rounded = (int) Math.round(duration);
+        if (rounded > maxDuration) {
+            Logger.warn("Segment " + segmentNo + " is " + duration + "s long, over the target duration of "
+                    + targetDuration + "s, the GOP is too long");
+            maxDuration = rounded;
+        }
+        segments.add(new Segment(segmentNo++, segmentName, segmentStart, duration, size));
+        if (window > 0) {
+            while (segments.size() > window)
+                expired.add(segments.removeFirst());
+            while (expired.size() > window)
+                Platform.deleteFile(new File(playlistFile.getParentFile(), expired.removeFirst().getFileName()));
+        }
+        writePlaylist(false);
+    }
+
+    /**
+     * The playlist is written next to the old one and then renamed so that
+     * the clients never read it half written.
+     */
+    private void writePlaylist(boolean finished) throws IOException {
+        String text = playlist.format(segments, maxDuration, window > 0, finished);
+        File tmp = new File(playlistFile.getPath() + ".tmp");
+        NIOUtils.writeTo(ByteBuffer.wrap(Platform.getBytesForCharset(text, "UTF-8")), tmp);
+        if (!tmp.renameTo(playlistFile)) {
+            Platform.deleteFile(playlistFile);
+            if (!tmp.renameTo(playlistFile))
+                throw new IOException("Could not write " + playlistFile);
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (out != null)
+            finishSegment(end);
+        writePlaylist(true);
+    }
+}
@@ -0,0 +1,29 @@
+package org.jcodec.containers.segment;
+
+import java.util.List;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ * 
+ * Formats the list of segments into a playlist or a manifest.
+ * 
+ * @author The JCodec project
+ * 
+ */
+public interface SegmentPlaylist {
+
+    /**
+     * @param segments
+     *            The segments currently in the playlist, oldest first
+     * @param targetDuration
+     *            The upper bound of a segment duration rounded to seconds
+     * @param live
+     *            The older segments are removed from the playlist as the new
+     *            ones come
+     * @param finished
+     *            No more segments will be added
+     * @return The text of the playlist
+     */
+    String format(List<Segment> segments, int targetDuration, boolean live, boolean finished);
+}
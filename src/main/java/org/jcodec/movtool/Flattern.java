@@ -6,10 +6,13 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.jcodec.common.io.SeekableByteChannel;
 import org.jcodec.containers.mp4.Chunk;
+import org.jcodec.containers.mp4.ChunkCopier;
 import org.jcodec.containers.mp4.ChunkReader;
 import org.jcodec.containers.mp4.ChunkWriter;
 import org.jcodec.containers.mp4.MP4Util;
@@ -90,6 +93,7 @@ public class Flattern {
         TrakBox[] tracks = moov.getTracks();
         ChunkReader[] readers = new ChunkReader[tracks.length];
         ChunkWriter[] writers = new ChunkWriter[tracks.length];
+        ChunkCopier copier = new ChunkCopier(out);
         Chunk[] head = new Chunk[tracks.length];
         int totalChunks = 0, writtenChunks = 0, lastProgress = 0;
         long[] off = new long[tracks.length];
@@ -97,7 +101,7 @@ public class Flattern {
             readers[i] = new ChunkReader(tracks[i]);
             totalChunks += readers[i].size();
 
-            writers[i] = new ChunkWriter(tracks[i], inputs[i], out);
+            writers[i] = new ChunkWriter(tracks[i], inputs[i], copier);
             head[i] = readers[i].next();
             if (tracks[i].isVideo())
                 off[i] = 2 * moov.getTimescale();
@@ -127,6 +131,7 @@ public class Flattern {
             lastProgress = calcProgress(totalChunks, writtenChunks, lastProgress);
         }
 
+        copier.flush();
         for (int i = 0; i < tracks.length; i++) {
             writers[i].apply();
         }
@@ -161,25 +166,43 @@ public class Flattern {
         return lastProgress;
     }
 
+    /**
+     * The tracks that reference the same file share the channel, this lets
+     * the chunks of different tracks be copied together.
+     */
     protected SeekableByteChannel[][] getInputs(MovieBox movie) throws IOException {
         TrakBox[] tracks = movie.getTracks();
         SeekableByteChannel[][] result = new SeekableByteChannel[tracks.length][];
+        Map<String, SeekableByteChannel> opened = new HashMap<String, SeekableByteChannel>();
         for (int i = 0; i < tracks.length; i++) {
             DataRefBox drefs = NodeBox.findFirstPath(tracks[i], DataRefBox.class, Box.path("mdia.minf.dinf.dref"));
             if (drefs == null) {
                 throw new RuntimeException("No data references");
             }
             List<Box> entries = drefs.getBoxes();
-            SeekableByteChannel[] e = new SeekableByteChannel[entries.size()];
             SeekableByteChannel[] inputs = new SeekableByteChannel[entries.size()];
-            for (int j = 0; j < e.length; j++) {
-                inputs[j] = resolveDataRef(entries.get(j));
+            for (int j = 0; j < inputs.length; j++) {
+                String path = dataRefPath(entries.get(j));
+                inputs[j] = path == null ? null : opened.get(path);
+                if (inputs[j] == null) {
+                    inputs[j] = resolveDataRef(entries.get(j));
+                    if (path != null)
+                        opened.put(path, inputs[j]);
+                }
             }
             result[i] = inputs;
         }
         return result;
     }
 
+    private static String dataRefPath(Box box) {
+        if (box instanceof UrlBox)
+            return ((UrlBox) box).getUrl();
+        else if (box instanceof AliasBox && ((AliasBox) box).getUnixPath() != null)
+            return "file://" + ((AliasBox) box).getUnixPath();
+        return null;
+    }
+
     private int calcSpaceReq(MovieBox movie) {
         int sum = 0;
         TrakBox[] tracks = movie.getTracks();
@@ -41,7 +41,7 @@ public class MetadataEditor {
             throw new IllegalArgumentException("Unsupported format: " + format);
         }
 
-        Movie movie = MP4Util.parseFullMovie(f);
+        Movie movie = MP4Util.parseFullMovieLazy(f);
         MetaBox keyedMeta = NodeBox.findFirst(movie.getMoov(), MetaBox.class, MetaBox.fourcc());
         MetaBox itunesMeta = NodeBox.findFirstPath(movie.getMoov(), MetaBox.class,
                 new String[] { "udta", MetaBox.fourcc() });
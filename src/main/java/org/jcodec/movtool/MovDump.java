@@ -81,7 +81,7 @@ public class MovDump {
     }
 
     public static String print(File file) throws IOException {
-        return MP4Util.parseMovie(file).toString();
+        return MP4Util.parseMovieLazy(file).toString();
     }
 
     private static Box findDeep(NodeBox root, String atom) {
@@ -98,7 +98,7 @@ public class MovDump {
     }
 
     public static String printAtom(File file, String atom) throws IOException {
-        MovieBox mov = MP4Util.parseMovie(file);
+        MovieBox mov = MP4Util.parseMovieLazy(file);
 
         Box found = findDeep(mov, atom);
         if (found == null) {
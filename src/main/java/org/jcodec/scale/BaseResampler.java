@@ -1,44 +1,49 @@
 package org.jcodec.scale;
 
-import org.jcodec.common.Ints;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.jcodec.common.SharedThreadPool;
 import org.jcodec.common.model.Picture;
 import org.jcodec.common.model.Size;
-import org.jcodec.common.tools.MathUtil;
 
 /**
  * Resamples image interpolating points using Lanczos sinc over sine windowed
  * filter.
- * 
+ *
+ * The filter is separable, the taps and source offsets of every destination
+ * column and row are looked up once per plane geometry. The horizontal pass
+ * only runs for the source rows the vertical pass actually uses and only the
+ * columns near the picture edges go through the clamping path. The output is
+ * split into bands of rows that are resampled concurrently.
+ *
  * @author Stanislav Vitvitskiy
  */
 public abstract class BaseResampler {
-    private final ThreadLocal<int[]> tempBuffers;
-    private Size toSize;
-    private Size fromSize;
+    private static final int MIN_BAND_ROWS = 32;
+    private static final int MAX_PLANES = 4;
+
+    private final ThreadLocal<Band[]> bandBuffers;
     private final double scaleFactorX;
     private final double scaleFactorY;
+    private final PlaneTables[] tables;
+    private int nThreads;
 
     public BaseResampler(Size from, Size to) {
-        this.toSize = to;
-        this.fromSize = from;
         scaleFactorX = (double) from.getWidth() / to.getWidth();
         scaleFactorY = (double) from.getHeight() / to.getHeight();
-        tempBuffers = new ThreadLocal<int[]>();
+        bandBuffers = new ThreadLocal<Band[]>();
+        tables = new PlaneTables[MAX_PLANES];
+        nThreads = Runtime.getRuntime().availableProcessors();
     }
 
-    private static byte getPel(Picture pic, int plane, int x, int y) {
-        if (x < 0)
-            x = 0;
-        if (y < 0)
-            y = 0;
-        int w = pic.getPlaneWidth(plane);
-        if (x > w - 1)
-            x = w - 1;
-        int h = pic.getPlaneHeight(plane);
-        if (y > h - 1)
-            y = h - 1;
-
-        return pic.getData()[plane][x + y * w];
+    /**
+     * Sets the maximum number of bands of the output picture that are resampled
+     * concurrently, 1 disables threading.
+     */
+    public void setThreads(int nThreads) {
+        this.nThreads = Math.max(1, nThreads);
     }
 
     protected abstract short[] getTapsX(int dstX);
@@ -49,7 +54,7 @@ public abstract class BaseResampler {
 
     /**
      * Converts floating point taps to fixed precision taps.
-     * 
+     *
      * @param taps
      *            The 64 bit double representation
      * @param precBits
@@ -93,43 +98,253 @@ public abstract class BaseResampler {
     /**
      * Interpolates points using a 2d convolution
      */
-    //Wrong usage of Javascript keyword:in
     public void resample(Picture src, Picture dst) {
-        int[] temp = tempBuffers.get();
-        int taps = nTaps();
-        if (temp == null) {
-            temp = new int[toSize.getWidth() * (fromSize.getHeight() + taps)];
-            tempBuffers.set(temp);
+        int nComp = src.getColor().nComp;
+        PlaneTables[] planes = new PlaneTables[nComp];
+        for (int p = 0; p < nComp; p++)
+            planes[p] = getTables(p, src.getPlaneWidth(p), src.getPlaneHeight(p), dst.getPlaneWidth(p),
+                    dst.getPlaneHeight(p));
+
+        int nBands = Math.max(1, Math.min(nThreads, dst.getPlaneHeight(0) / MIN_BAND_ROWS));
+        Band[] bands = bandBuffers.get();
+        if (bands == null || bands.length < nBands) {
+            Band[] tmp = new Band[nBands];
+            for (int i = 0; i < nBands; i++)
+                tmp[i] = bands != null && i < bands.length ? bands[i] : new Band();
+            bands = tmp;
+            bandBuffers.set(bands);
         }
-        for (int p = 0; p < src.getColor().nComp; p++) {
-            // Horizontal pass
-            for (int y = 0; y < src.getPlaneHeight(p) + taps; y++) {
-                for (int x = 0; x < dst.getPlaneWidth(p); x++) {
-                    short[] tapsXs = getTapsX(x);
-                    int srcX = (int) (scaleFactorX * x) - taps / 2 + 1;
+        for (int i = 0; i < nBands; i++)
+            bands[i].init(src, dst, planes, i, nBands);
 
-                    int sum = 0;
-                    for (int i = 0; i < taps; i++) {
-                        sum += (getPel(src, p, srcX + i, y - taps / 2 + 1) + 128) * tapsXs[i];
-                    }
-                    temp[y * toSize.getWidth() + x] = sum;
+        if (nBands == 1) {
+            bands[0].run();
+            return;
+        }
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < nBands; i++)
+            futures.add(SharedThreadPool.get().submit(bands[i]));
+        RuntimeException error = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (Exception e) {
+                if (error == null)
+                    error = new RuntimeException(e);
+            }
+        }
+        if (error != null)
+            throw error;
+    }
+
+    /**
+     * The source rows [result[0], result[1]) of a plane that the destination
+     * rows [dstFrom, dstTo) are interpolated from.
+     */
+    void sourceRows(int plane, int srcW, int srcH, int dstW, int dstH, int dstFrom, int dstTo, int[] result) {
+        PlaneTables t = getTables(plane, srcW, srcH, dstW, dstH);
+        int first = t.srcY[dstFrom] - t.taps / 2 + 1;
+        int last = t.srcY[dstTo - 1] + t.taps - t.taps / 2;
+        result[0] = Math.max(0, first);
+        result[1] = Math.min(srcH, last + 1);
+    }
+
+    /**
+     * Resamples the destination rows [dstFrom, dstTo) of one plane on the
+     * calling thread. Source row 'sy' is read from 'in' at 'inOff + sy *
+     * inStride' and destination row 'y' is written to 'out' at 'outOff + y *
+     * outStride', so both sides may be windows into larger buffers.
+     */
+    void resamplePlane(int plane, int srcW, int srcH, byte[] in, int inOff, int inStride, int dstW, int dstH,
+            byte[] out, int outOff, int outStride, int dstFrom, int dstTo) {
+        PlaneTables t = getTables(plane, srcW, srcH, dstW, dstH);
+        Band[] bands = bandBuffers.get();
+        if (bands == null) {
+            bands = new Band[] { new Band() };
+            bandBuffers.set(bands);
+        }
+        bands[0].resample(t, in, inOff, inStride, out, outOff, outStride, dstFrom, dstTo);
+    }
+
+    /**
+     * The resampler may be shared by the threads resampling the bands of a
+     * picture (FusedTransform), the tables are built and swapped under the
+     * lock.
+     */
+    private synchronized PlaneTables getTables(int plane, int srcW, int srcH, int dstW, int dstH) {
+        PlaneTables t = tables[plane];
+        if (t == null || !t.fits(srcW, srcH, dstW, dstH)) {
+            t = new PlaneTables(this, srcW, srcH, dstW, dstH);
+            tables[plane] = t;
+        }
+        return t;
+    }
+
+    /**
+     * Source offsets and taps of every destination column and row of a plane.
+     */
+    private static final class PlaneTables {
+        private final int taps;
+        private final int srcW;
+        private final int srcH;
+        private final int dstW;
+        private final int dstH;
+        // leftmost source column of the taps of each destination column
+        private final int[] srcX;
+        private final int[] tapsX;
+        // destination columns in [interiorFrom, interiorTo) don't need
+        // clamping
+        private final int interiorFrom;
+        private final int interiorTo;
+        // first row of the taps of each destination row, the rows are counted
+        // from 'taps / 2 - 1' rows above the picture
+        private final int[] srcY;
+        private final int[] tapsY;
+
+        private PlaneTables(BaseResampler resampler, int srcW, int srcH, int dstW, int dstH) {
+            this.taps = resampler.nTaps();
+            this.srcW = srcW;
+            this.srcH = srcH;
+            this.dstW = dstW;
+            this.dstH = dstH;
+
+            srcX = new int[dstW];
+            tapsX = new int[dstW * taps];
+            int from = dstW, to = 0;
+            for (int x = 0; x < dstW; x++) {
+                srcX[x] = (int) (resampler.scaleFactorX * x) - taps / 2 + 1;
+                copyTaps(resampler.getTapsX(x), tapsX, x * taps);
+                if (srcX[x] >= 0 && srcX[x] + taps <= srcW) {
+                    from = Math.min(from, x);
+                    to = x + 1;
                 }
             }
+            interiorFrom = from < to ? from : 0;
+            interiorTo = from < to ? to : 0;
 
-            // Vertical pass
-            for (int y = 0; y < dst.getPlaneHeight(p); y++) {
-                for (int x = 0; x < dst.getPlaneWidth(p); x++) {
-                    short[] tapsYs = getTapsY(y);
-                    int srcY = (int) (scaleFactorY * y);
+            srcY = new int[dstH];
+            tapsY = new int[dstH * taps];
+            for (int y = 0; y < dstH; y++) {
+                srcY[y] = (int) (resampler.scaleFactorY * y);
+                copyTaps(resampler.getTapsY(y), tapsY, y * taps);
+            }
+        }
+
+        private static void copyTaps(short[] from, int[] to, int off) {
+            for (int i = 0; i < from.length; i++)
+                to[off + i] = from[i];
+        }
+
+        private boolean fits(int srcW, int srcH, int dstW, int dstH) {
+            return this.srcW == srcW && this.srcH == srcH && this.dstW == dstW && this.dstH == dstH;
+        }
+    }
+
+    /**
+     * Resamples a band of destination rows of every plane, runs the
+     * horizontal pass for the source rows this band needs into its own
+     * buffer.
+     */
+    private static final class Band implements Runnable {
+        private Picture src;
+        private Picture dst;
+        private PlaneTables[] planes;
+        private int band;
+        private int nBands;
+        private int[] temp;
+        private boolean[] needed;
+
+        private void init(Picture src, Picture dst, PlaneTables[] planes, int band, int nBands) {
+            this.src = src;
+            this.dst = dst;
+            this.planes = planes;
+            this.band = band;
+            this.nBands = nBands;
+        }
+
+        public void run() {
+            try {
+                for (int p = 0; p < planes.length; p++) {
+                    PlaneTables t = planes[p];
+                    int dstFrom = (int) ((long) t.dstH * band / nBands);
+                    int dstTo = (int) ((long) t.dstH * (band + 1) / nBands);
+                    if (dstFrom < dstTo)
+                        resample(t, src.getPlaneData(p), 0, t.srcW, dst.getPlaneData(p), 0, t.dstW, dstFrom, dstTo);
+                }
+            } finally {
+                src = null;
+                dst = null;
+                planes = null;
+            }
+        }
+
+        private void resample(PlaneTables t, byte[] in, int inOff, int inStride, byte[] out, int outOff,
+                int outStride, int dstFrom, int dstTo) {
+            int taps = t.taps;
+            int dstW = t.dstW;
+            int firstRow = t.srcY[dstFrom];
+            int nRows = t.srcY[dstTo - 1] + taps - firstRow;
+
+            if (temp == null || temp.length < nRows * dstW)
+                temp = new int[nRows * dstW];
+            if (needed == null || needed.length < nRows)
+                needed = new boolean[nRows];
+            for (int r = 0; r < nRows; r++)
+                needed[r] = false;
+            for (int y = dstFrom; y < dstTo; y++) {
+                for (int i = 0; i < taps; i++)
+                    needed[t.srcY[y] + i - firstRow] = true;
+            }
+
+            // Horizontal pass
+            for (int r = 0; r < nRows; r++) {
+                if (!needed[r])
+                    continue;
+                int sy = firstRow + r - taps / 2 + 1;
+                sy = sy < 0 ? 0 : (sy >= t.srcH ? t.srcH - 1 : sy);
+                filterRow(t, in, inOff + sy * inStride, temp, r * dstW);
+            }
 
+            // Vertical pass
+            for (int y = dstFrom; y < dstTo; y++) {
+                int rowOff = (t.srcY[y] - firstRow) * dstW;
+                int tapOff = y * taps;
+                int o = outOff + y * outStride;
+                for (int x = 0; x < dstW; x++) {
                     int sum = 0;
-                    for (int i = 0; i < taps; i++) {
-                        sum += temp[x + (srcY + i) * toSize.getWidth()] * tapsYs[i];
-                    }
-                    dst.getPlaneData(p)[y * dst.getPlaneWidth(p) + x] = (byte) (MathUtil.clip((sum + 8192) >> 14, 0,
-                            255) - 128);
+                    for (int i = 0, off = rowOff + x; i < taps; i++, off += dstW)
+                        sum += temp[off] * t.tapsY[tapOff + i];
+                    int v = (sum + 8192) >> 14;
+                    out[o + x] = (byte) ((v < 0 ? 0 : (v > 255 ? 255 : v)) - 128);
                 }
             }
         }
+
+        private static void filterRow(PlaneTables t, byte[] in, int inOff, int[] out, int outOff) {
+            int taps = t.taps;
+            for (int x = 0; x < t.interiorFrom; x++)
+                out[outOff + x] = filterEdge(t, in, inOff, x);
+            for (int x = t.interiorFrom; x < t.interiorTo; x++) {
+                int off = inOff + t.srcX[x];
+                int tapOff = x * taps;
+                int sum = 0;
+                for (int i = 0; i < taps; i++)
+                    sum += (in[off + i] + 128) * t.tapsX[tapOff + i];
+                out[outOff + x] = sum;
+            }
+            for (int x = t.interiorTo; x < t.dstW; x++)
+                out[outOff + x] = filterEdge(t, in, inOff, x);
+        }
+
+        private static int filterEdge(PlaneTables t, byte[] in, int inOff, int x) {
+            int taps = t.taps;
+            int sum = 0;
+            for (int i = 0; i < taps; i++) {
+                int sx = t.srcX[x] + i;
+                sx = sx < 0 ? 0 : (sx >= t.srcW ? t.srcW - 1 : sx);
+                sum += (in[inOff + sx] + 128) * t.tapsX[x * taps + i];
+            }
+            return sum;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,53 @@
+package org.jcodec.scale;
+
+import org.jcodec.common.model.Size;
+
+/**
+ * Resamples image interpolating points linearly between the two nearest
+ * source pixels in each direction.
+ * 
+ * The cheapest of the resamplers, meant for upscaling and small downscaling
+ * ratios, stronger downscaling aliases.
+ * 
+ * @author The JCodec project
+ */
+public class BilinearResampler extends BaseResampler {
+    private short[][] horizontalTaps;
+    private short[][] verticalTaps;
+
+    public BilinearResampler(Size from, Size to) {
+        super(from, to);
+        horizontalTaps = buildFilterTaps(to.getWidth(), from.getWidth());
+        verticalTaps = buildFilterTaps(to.getHeight(), from.getHeight());
+    }
+
+    private static short[][] buildFilterTaps(int to, int from) {
+        double[] taps = new double[2];
+        short[][] tapsOut = new short[to][2];
+        double ratio = (double) from / to;
+        double srcPos = 0;
+        for (int i = 0; i < to; i++) {
+            double fraction = srcPos - (int) srcPos;
+            taps[0] = 1 - fraction;
+            taps[1] = fraction;
+            normalizeAndGenerateFixedPrecision(taps, 7, tapsOut[i]);
+            srcPos += ratio;
+        }
+        return tapsOut;
+    }
+
+    @Override
+    protected short[] getTapsX(int dstX) {
+        return horizontalTaps[dstX];
+    }
+
+    @Override
+    protected short[] getTapsY(int dstY) {
+        return verticalTaps[dstY];
+    }
+
+    @Override
+    protected int nTaps() {
+        return 2;
+    }
+}
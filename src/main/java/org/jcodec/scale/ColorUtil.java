@@ -6,6 +6,8 @@ import java.util.Map;
 
 import org.jcodec.common.model.ColorSpace;
 import org.jcodec.common.model.Picture;
+import org.jcodec.common.model.Rect;
+import org.jcodec.common.model.Size;
 
 /**
  * This class is part of JCodec ( www.jcodec.org ) This software is distributed
@@ -24,8 +26,14 @@ public class ColorUtil {
         rgb.put(ColorSpace.YUV420J, new RgbToYuv420j());
         rgb.put(ColorSpace.YUV420, new RgbToYuv420p());
         rgb.put(ColorSpace.YUV422, new RgbToYuv422p());
+        rgb.put(ColorSpace.BGR, new RgbToBgr());
         map.put(ColorSpace.RGB, rgb);
 
+        Map<ColorSpace, Transform> bgr = new HashMap<ColorSpace, Transform>();
+        bgr.put(ColorSpace.BGR, new Idential());
+        bgr.put(ColorSpace.RGB, new RgbToBgr());
+        map.put(ColorSpace.BGR, bgr);
+
         Map<ColorSpace, Transform> yuv420 = new HashMap<ColorSpace, Transform>();
         yuv420.put(ColorSpace.YUV420, new Idential());
         yuv420.put(ColorSpace.YUV422, new Yuv420pToYuv422p());
@@ -63,6 +71,22 @@ public class ColorUtil {
         return map2 == null ? null : map2.get(to);
     }
 
+    /**
+     * A color transform combined with a crop and a resize that runs in
+     * parallel bands of rows, see FusedTransform.
+     * 
+     * @param crop
+     *            area of the source picture, null for the whole picture
+     * @param size
+     *            size of the output, null to keep the size of the area
+     * @return the transform or null if there's no transform between the color
+     *         spaces
+     */
+    public static FusedTransform getTransform(ColorSpace from, ColorSpace to, Rect crop, Size size) {
+        Transform color = getTransform(from, to);
+        return color == null ? null : new FusedTransform(from, to, color, crop, size);
+    }
+
     public static class Idential implements Transform {
         @Override
         public void transform(Picture src, Picture dst) {
@@ -0,0 +1,315 @@
+package org.jcodec.scale;
+
+import static java.lang.System.arraycopy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.jcodec.common.SharedThreadPool;
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Picture;
+import org.jcodec.common.model.Rect;
+import org.jcodec.common.model.Size;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * Color transform fused with an optional crop and resize.
+ *
+ * The output is produced in bands of rows that are processed concurrently. A
+ * band converts and resamples only the rows it needs through buffers of its own
+ * size, so the full size intermediate picture of running the steps one after
+ * another is never created. The resize is done in the source color space when
+ * it's planar, like a ScaleFilter followed by a ColorTransformFilter, otherwise
+ * in the target one. Either way the output is bit exact with the separate
+ * steps. With nothing to crop or resize the color transform runs directly on
+ * the pictures.
+ *
+ * @author The JCodec project
+ *
+ */
+public class FusedTransform implements Transform {
+    private static final int MIN_BAND_ROWS = 32;
+
+    private final ColorSpace from;
+    private final ColorSpace to;
+    private final Transform color;
+    private final Rect crop;
+    private final Size size;
+    private final ThreadLocal<Band[]> bandBuffers;
+    private BaseResampler resampler;
+    private Size resamplerSize;
+    private int nThreads;
+
+    /**
+     * @param color
+     *            transform between the two color spaces, must work on any
+     *            band of rows aligned to the chroma subsampling
+     * @param crop
+     *            area of the source picture to transform, null for the whole
+     *            picture
+     * @param size
+     *            size of the output, null to keep the size of the area
+     */
+    FusedTransform(ColorSpace from, ColorSpace to, Transform color, Rect crop, Size size) {
+        this.from = from;
+        this.to = to;
+        this.color = color;
+        this.crop = crop;
+        this.size = size;
+        this.bandBuffers = new ThreadLocal<Band[]>();
+        this.nThreads = SharedThreadPool.parallelism();
+    }
+
+    /**
+     * Sets the maximum number of bands of the output picture that are
+     * processed concurrently, 1 disables threading.
+     */
+    public void setThreads(int nThreads) {
+        this.nThreads = Math.max(1, nThreads);
+    }
+
+    @Override
+    public void transform(Picture src, Picture dst) {
+        if (src.getColor() != from || dst.getColor() != to)
+            throw new IllegalArgumentException("Expected " + from + " -> " + to + ", got " + src.getColor()
+                    + " -> " + dst.getColor());
+        Rect region = crop != null ? crop : new Rect(0, 0, src.getWidth(), src.getHeight());
+        int outW = size != null ? size.getWidth() : region.getWidth();
+        int outH = size != null ? size.getHeight() : region.getHeight();
+        if (dst.getWidth() != outW || dst.getHeight() != outH)
+            throw new IllegalArgumentException("Output picture is " + dst.getWidth() + "x" + dst.getHeight()
+                    + ", expected " + outW + "x" + outH);
+        if (region.getX() + region.getWidth() > src.getWidth() || region.getY() + region.getHeight() > src.getHeight()
+                || (region.getX() & ((1 << maxShift(from.compWidth, from)) - 1)) != 0
+                || (region.getY() & ((1 << maxShift(from.compHeight, from)) - 1)) != 0)
+            throw new IllegalArgumentException("Crop " + region + " doesn't fit " + src.getWidth() + "x"
+                    + src.getHeight() + " " + from);
+
+        BaseResampler resampler = getResampler(region, outW, outH);
+        if (resampler == null && region.getX() == 0 && region.getY() == 0 && outW == src.getWidth()
+                && outH == src.getHeight()) {
+            color.transform(src, dst);
+            return;
+        }
+        boolean scaleFirst = from.planar;
+        if (resampler != null && !(scaleFirst ? from : to).planar)
+            throw new IllegalArgumentException("Can't resize " + from + " -> " + to);
+        if (resampler != null)
+            prepareTables(resampler, scaleFirst ? from : to, region, outW, outH);
+
+        int align = Math.max(1 << maxShift(from.compHeight, from), 1 << maxShift(to.compHeight, to));
+        int nBands = Math.max(1, Math.min(nThreads, outH / MIN_BAND_ROWS));
+        Band[] bands = bandBuffers.get();
+        if (bands == null || bands.length < nBands) {
+            Band[] tmp = new Band[nBands];
+            for (int i = 0; i < nBands; i++)
+                tmp[i] = bands != null && i < bands.length ? bands[i] : new Band();
+            bands = tmp;
+            bandBuffers.set(bands);
+        }
+        int units = outH / align;
+        for (int i = 0; i < nBands; i++) {
+            int y0 = align * (units * i / nBands);
+            int y1 = i == nBands - 1 ? outH : align * (units * (i + 1) / nBands);
+            bands[i].init(this, src, dst, region, resampler, scaleFirst, align, y0, y1);
+        }
+
+        if (nBands == 1) {
+            bands[0].run();
+            return;
+        }
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < nBands; i++)
+            futures.add(SharedThreadPool.get().submit(bands[i]));
+        RuntimeException error = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (Exception e) {
+                if (error == null)
+                    error = new RuntimeException(e);
+            }
+        }
+        if (error != null)
+            throw error;
+    }
+
+    private BaseResampler getResampler(Rect region, int outW, int outH) {
+        if (outW == region.getWidth() && outH == region.getHeight())
+            return null;
+        Size regionSize = new Size(region.getWidth(), region.getHeight());
+        if (resampler == null || !regionSize.equals(resamplerSize)) {
+            resampler = new LanczosResampler(regionSize, new Size(outW, outH));
+            resampler.setThreads(1);
+            resamplerSize = regionSize;
+        }
+        return resampler;
+    }
+
+    /**
+     * Builds the resampler tables on this thread rather than racing in the
+     * bands.
+     */
+    private static void prepareTables(BaseResampler resampler, ColorSpace color, Rect region, int outW, int outH) {
+        int[] rows = new int[2];
+        for (int p = 0; p < color.nComp; p++)
+            resampler.sourceRows(p, region.getWidth() >> color.compWidth[p], region.getHeight() >> color.compHeight[p],
+                    outW >> color.compWidth[p], outH >> color.compHeight[p], 0, 1, rows);
+    }
+
+    private static int maxShift(int[] shifts, ColorSpace color) {
+        int max = 0;
+        for (int i = 0; color.planar && i < color.nComp; i++)
+            max = Math.max(max, shifts[i]);
+        return max;
+    }
+
+    /**
+     * Copies 'rows' rows of the 'width' wide area at ('x', 'y') of one picture
+     * into another at row 'dstY', low bits included when both have them.
+     */
+    private static void copyRows(Picture src, int x, int y, Picture dst, int dstY, int width, int rows) {
+        ColorSpace color = src.getColor();
+        byte[][] srcLow = src.getLowBits();
+        byte[][] dstLow = dst.getLowBits();
+        for (int p = 0; p < src.getData().length; p++) {
+            int shiftX = color.planar ? color.compWidth[p] : 0;
+            int shiftY = color.planar ? color.compHeight[p] : 0;
+            int pixelSize = color.planar ? 1 : color.nComp;
+            int srcStride = (src.getWidth() >> shiftX) * pixelSize;
+            int dstStride = (dst.getWidth() >> shiftX) * pixelSize;
+            int rowSize = (width >> shiftX) * pixelSize;
+            int srcOff = (y >> shiftY) * srcStride + (x >> shiftX) * pixelSize;
+            int dstOff = (dstY >> shiftY) * dstStride;
+            for (int r = 0; r < rows >> shiftY; r++, srcOff += srcStride, dstOff += dstStride) {
+                arraycopy(src.getPlaneData(p), srcOff, dst.getPlaneData(p), dstOff, rowSize);
+                if (srcLow != null && dstLow != null)
+                    arraycopy(srcLow[p], srcOff, dstLow[p], dstOff, rowSize);
+            }
+        }
+    }
+
+    private static Picture reuse(Picture pic, int width, int height, ColorSpace color, int lowBitsNum) {
+        if (pic != null && pic.getWidth() == width && pic.getHeight() == height && pic.getColor() == color
+                && pic.getLowBitsNum() == lowBitsNum)
+            return pic;
+        return Picture.createCroppedHiBD(width, height, lowBitsNum, color, null);
+    }
+
+    /**
+     * Produces a band of rows of the output picture.
+     */
+    private static final class Band implements Runnable {
+        private FusedTransform fused;
+        private Picture src;
+        private Picture dst;
+        private Rect region;
+        private BaseResampler resampler;
+        private boolean scaleFirst;
+        private int align;
+        private int y0;
+        private int y1;
+        // the band in the source and in the target color space
+        private Picture in;
+        private Picture out;
+        private int[] rows;
+
+        private void init(FusedTransform fused, Picture src, Picture dst, Rect region, BaseResampler resampler,
+                boolean scaleFirst, int align, int y0, int y1) {
+            this.fused = fused;
+            this.src = src;
+            this.dst = dst;
+            this.region = region;
+            this.resampler = resampler;
+            this.scaleFirst = scaleFirst;
+            this.align = align;
+            this.y0 = y0;
+            this.y1 = y1;
+        }
+
+        public void run() {
+            try {
+                if (y0 >= y1)
+                    return;
+                if (resampler == null)
+                    convert();
+                else if (scaleFirst)
+                    scaleAndConvert();
+                else
+                    convertAndScale();
+            } finally {
+                fused = null;
+                src = null;
+                dst = null;
+                resampler = null;
+            }
+        }
+
+        private void convert() {
+            int width = region.getWidth();
+            int n = y1 - y0;
+            boolean hbd = src.isHiBD() && dst.isHiBD();
+            in = reuse(in, width, n, fused.from, hbd ? src.getLowBitsNum() : 0);
+            out = reuse(out, width, n, fused.to, hbd ? dst.getLowBitsNum() : 0);
+            copyRows(src, region.getX(), region.getY() + y0, in, 0, width, n);
+            fused.color.transform(in, out);
+            copyRows(out, 0, 0, dst, y0, width, n);
+        }
+
+        private void scaleAndConvert() {
+            ColorSpace color = fused.from;
+            int n = y1 - y0;
+            in = reuse(in, dst.getWidth(), n, color, 0);
+            out = reuse(out, dst.getWidth(), n, fused.to, 0);
+            for (int p = 0; p < color.nComp; p++) {
+                int shiftX = color.compWidth[p];
+                int shiftY = color.compHeight[p];
+                int srcStride = src.getPlaneWidth(p);
+                int bandStride = in.getPlaneWidth(p);
+                resampler.resamplePlane(p, region.getWidth() >> shiftX, region.getHeight() >> shiftY,
+                        src.getPlaneData(p), (region.getY() >> shiftY) * srcStride + (region.getX() >> shiftX),
+                        srcStride, bandStride, dst.getHeight() >> shiftY, in.getPlaneData(p),
+                        -(y0 >> shiftY) * bandStride, bandStride, y0 >> shiftY, y1 >> shiftY);
+            }
+            fused.color.transform(in, out);
+            copyRows(out, 0, 0, dst, y0, dst.getWidth(), n);
+        }
+
+        private void convertAndScale() {
+            ColorSpace color = fused.to;
+            int width = region.getWidth();
+            int height = region.getHeight();
+            if (rows == null)
+                rows = new int[2];
+            int first = height;
+            int last = 0;
+            for (int p = 0; p < color.nComp; p++) {
+                int shiftX = color.compWidth[p];
+                int shiftY = color.compHeight[p];
+                resampler.sourceRows(p, width >> shiftX, height >> shiftY, dst.getPlaneWidth(p),
+                        dst.getPlaneHeight(p), y0 >> shiftY, y1 >> shiftY, rows);
+                first = Math.min(first, rows[0] << shiftY);
+                last = Math.max(last, rows[1] << shiftY);
+            }
+            first &= ~(align - 1);
+            last = Math.min(height, (last + align - 1) & ~(align - 1));
+            int n = last - first;
+
+            in = reuse(in, width, n, fused.from, 0);
+            out = reuse(out, width, n, color, 0);
+            copyRows(src, region.getX(), region.getY() + first, in, 0, width, n);
+            fused.color.transform(in, out);
+            for (int p = 0; p < color.nComp; p++) {
+                int shiftX = color.compWidth[p];
+                int shiftY = color.compHeight[p];
+                int bandStride = out.getPlaneWidth(p);
+                resampler.resamplePlane(p, width >> shiftX, height >> shiftY, out.getPlaneData(p),
+                        -(first >> shiftY) * bandStride, bandStride, dst.getPlaneWidth(p), dst.getPlaneHeight(p),
+                        dst.getPlaneData(p), 0, dst.getPlaneWidth(p), y0 >> shiftY, y1 >> shiftY);
+            }
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package org.jcodec.scale;
 
+import java.nio.ByteBuffer;
+
+import org.jcodec.common.model.OffHeapPicture;
 import org.jcodec.common.model.Picture;
 import org.jcodec.common.tools.MathUtil;
 
@@ -94,6 +97,28 @@ public class Yuv420pToRgb implements Transform {
         }
     }
 
+    /**
+     * Converts the 8 bit planes of a picture parked off-heap, they are read
+     * from the direct buffers in place.
+     */
+    public final void transform(OffHeapPicture src, Picture dst) {
+        ByteBuffer y = src.getPlaneData(0);
+        ByteBuffer u = src.getPlaneData(1);
+        ByteBuffer v = src.getPlaneData(2);
+        byte[] data = dst.getPlaneData(0);
+
+        int width = dst.getWidth();
+        int stride = src.getWidth();
+        int chromaStride = stride >> 1;
+        for (int i = 0, offLuma = 0; i < dst.getHeight(); i++, offLuma += stride) {
+            int offChroma = (i >> 1) * chromaStride;
+            for (int j = 0; j < width; j++) {
+                YUV420pToRGBN2N(y.get(offLuma + j), u.get(offChroma + (j >> 1)), v.get(offChroma + (j >> 1)), data,
+                        (i * width + j) * 3);
+            }
+        }
+    }
+
     public static void YUV420pToRGBN2N(byte y, byte u, byte v, byte[] data, int off) {
         int c = y + 112;
         int r = (298 * c + 409 * v + 128) >> 8;
@@ -18,6 +18,9 @@ public class ColorUtilHiBD {
 
     private static Map<ColorSpace, Map<ColorSpace, TransformHiBD>> map = new HashMap<ColorSpace, Map<ColorSpace, TransformHiBD>>();
 
+    @SuppressWarnings("deprecation")
+    private static final TransformHiBD RGB_TO_BGR = new RgbToBgrHiBD();
+
     static {
         Map<ColorSpace, TransformHiBD> rgb = new HashMap<ColorSpace, TransformHiBD>();
         rgb.put(ColorSpace.RGB, new Idential());
@@ -25,8 +28,14 @@ public class ColorUtilHiBD {
         rgb.put(ColorSpace.YUV420J, new RgbToYuv420jHiBD());
         rgb.put(ColorSpace.YUV422, new RgbToYuv422pHiBD(0, 0));
         rgb.put(ColorSpace.YUV422_10, new RgbToYuv422pHiBD(2, 0));
+        rgb.put(ColorSpace.BGR, RGB_TO_BGR);
         map.put(ColorSpace.RGB, rgb);
 
+        Map<ColorSpace, TransformHiBD> bgr = new HashMap<ColorSpace, TransformHiBD>();
+        bgr.put(ColorSpace.BGR, new Idential());
+        bgr.put(ColorSpace.RGB, RGB_TO_BGR);
+        map.put(ColorSpace.BGR, bgr);
+
         Map<ColorSpace, TransformHiBD> yuv420 = new HashMap<ColorSpace, TransformHiBD>();
         yuv420.put(ColorSpace.YUV420, new Idential());
         yuv420.put(ColorSpace.RGB, new Yuv420pToRgbHiBD(0, 0));
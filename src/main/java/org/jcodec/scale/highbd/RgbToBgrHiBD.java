@@ -32,6 +32,7 @@ public class RgbToBgrHiBD implements TransformHiBD {
             int tmp = dataSrc[i + 2];
             dataDst[i + 2] = dataSrc[i];
             dataDst[i] = tmp;
+            dataDst[i + 1] = dataSrc[i + 1];
         }
     }
 
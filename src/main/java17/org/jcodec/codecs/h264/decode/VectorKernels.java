@@ -0,0 +1,218 @@
+package org.jcodec.codecs.h264.decode;
+
+import static jdk.incubator.vector.VectorOperators.ASHR;
+import static jdk.incubator.vector.VectorOperators.B2I;
+import static jdk.incubator.vector.VectorOperators.I2B;
+import static jdk.incubator.vector.VectorOperators.LSHL;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * Decoder kernels on top of jdk.incubator.vector, only compiled into the Java
+ * 17 layer of the multi-release jar.
+ *
+ * Pixels are widened to 8 int lanes, so the block routines work on 8 pixel wide
+ * chunks and leave narrower blocks to the scalar code. The 8x8 transform shares
+ * the scalar row pass and runs the column pass over the rows as vectors, the
+ * 4x4 one is too small to gain anything. The order of operations is that of
+ * the scalar code so the output is bit exact.
+ *
+ * @author The JCodec project
+ *
+ */
+final class VectorKernels extends H264Kernels {
+    private static final VectorSpecies<Integer> I8 = IntVector.SPECIES_256;
+    private static final VectorSpecies<Byte> B8 = ByteVector.SPECIES_64;
+
+    // the loads and stores are spelled out in every loop, a vector passed to
+    // or returned from a call the JIT did not inline is boxed, and a helper
+    // already compiled on its own is not inlined into its callers anymore
+
+    VectorKernels() {
+    }
+
+    @Override
+    protected boolean isSupported() {
+        return IntVector.SPECIES_PREFERRED.vectorBitSize() >= 256;
+    }
+
+    @Override
+    public void lumaHalfH(byte[] pic, int picW, byte[] blk, int blkOff, int blkStride, int x, int y, int blkW,
+            int blkH) {
+        int vecW = blkW & ~7;
+        if (vecW == 0) {
+            super.lumaHalfH(pic, picW, blk, blkOff, blkStride, x, y, blkW, blkH);
+            return;
+        }
+        int off = y * picW + x - 2;
+        for (int j = 0; j < blkH; j++) {
+            for (int i = 0; i < vecW; i += 8) {
+                int p = off + i;
+                IntVector p0 = (IntVector) ByteVector.fromArray(B8, pic, p).convertShape(B2I, I8, 0);
+                IntVector p1 = (IntVector) ByteVector.fromArray(B8, pic, p + 1).convertShape(B2I, I8, 0);
+                IntVector p2 = (IntVector) ByteVector.fromArray(B8, pic, p + 2).convertShape(B2I, I8, 0);
+                IntVector p3 = (IntVector) ByteVector.fromArray(B8, pic, p + 3).convertShape(B2I, I8, 0);
+                IntVector p4 = (IntVector) ByteVector.fromArray(B8, pic, p + 4).convertShape(B2I, I8, 0);
+                IntVector p5 = (IntVector) ByteVector.fromArray(B8, pic, p + 5).convertShape(B2I, I8, 0);
+                IntVector a = p0.add(p5);
+                IntVector b = p1.add(p4);
+                IntVector c = p2.add(p3);
+                IntVector v = a.add(c.lanewise(LSHL, 2).sub(b).mul(5));
+                IntVector pel = v.add(16).lanewise(ASHR, 5).max(-128).min(127);
+                ((ByteVector) pel.convertShape(I2B, B8, 0)).intoArray(blk, blkOff + i);
+            }
+            off += picW;
+            blkOff += blkStride;
+        }
+        if (vecW < blkW)
+            super.lumaHalfH(pic, picW, blk, blkOff - blkH * blkStride + vecW, blkStride, x + vecW, y, blkW - vecW,
+                    blkH);
+    }
+
+    @Override
+    public void lumaHalfV(byte[] pic, int picW, byte[] blk, int blkOff, int blkStride, int x, int y, int blkW,
+            int blkH) {
+        int vecW = blkW & ~7;
+        if (vecW == 0) {
+            super.lumaHalfV(pic, picW, blk, blkOff, blkStride, x, y, blkW, blkH);
+            return;
+        }
+        int off = (y - 2) * picW + x;
+        for (int j = 0; j < blkH; j++) {
+            for (int i = 0; i < vecW; i += 8) {
+                int p = off + i;
+                IntVector p0 = (IntVector) ByteVector.fromArray(B8, pic, p).convertShape(B2I, I8, 0);
+                IntVector p1 = (IntVector) ByteVector.fromArray(B8, pic, p + picW).convertShape(B2I, I8, 0);
+                IntVector p2 = (IntVector) ByteVector.fromArray(B8, pic, p + 2 * picW).convertShape(B2I, I8, 0);
+                IntVector p3 = (IntVector) ByteVector.fromArray(B8, pic, p + 3 * picW).convertShape(B2I, I8, 0);
+                IntVector p4 = (IntVector) ByteVector.fromArray(B8, pic, p + 4 * picW).convertShape(B2I, I8, 0);
+                IntVector p5 = (IntVector) ByteVector.fromArray(B8, pic, p + 5 * picW).convertShape(B2I, I8, 0);
+                IntVector a = p0.add(p5);
+                IntVector b = p1.add(p4);
+                IntVector c = p2.add(p3);
+                IntVector v = a.add(c.lanewise(LSHL, 2).sub(b).mul(5));
+                IntVector pel = v.add(16).lanewise(ASHR, 5).max(-128).min(127);
+                ((ByteVector) pel.convertShape(I2B, B8, 0)).intoArray(blk, blkOff + i);
+            }
+            off += picW;
+            blkOff += blkStride;
+        }
+        if (vecW < blkW)
+            super.lumaHalfV(pic, picW, blk, blkOff - blkH * blkStride + vecW, blkStride, x + vecW, y, blkW - vecW,
+                    blkH);
+    }
+
+    @Override
+    public void chromaXX(byte[] pels, int picW, int picH, byte[] blk, int blkOff, int blkStride, int fullX,
+            int fullY, int fracX, int fracY, int blkW, int blkH) {
+        if (blkW != 8) {
+            super.chromaXX(pels, picW, picH, blk, blkOff, blkStride, fullX, fullY, fracX, fracY, blkW, blkH);
+            return;
+        }
+        int w00 = fullY * picW + fullX;
+        int w01 = w00 + (fullY < picH - 1 ? picW : 0);
+        int w10 = w00 + (fullX < picW - 1 ? 1 : 0);
+        int w11 = w10 + w01 - w00;
+        int eMx = 8 - fracX;
+        int eMy = 8 - fracY;
+        int c00 = eMx * eMy, c10 = fracX * eMy, c01 = eMx * fracY, c11 = fracX * fracY;
+
+        for (int j = 0; j < blkH; j++) {
+            IntVector p00 = (IntVector) ByteVector.fromArray(B8, pels, w00).convertShape(B2I, I8, 0);
+            IntVector p10 = (IntVector) ByteVector.fromArray(B8, pels, w10).convertShape(B2I, I8, 0);
+            IntVector p01 = (IntVector) ByteVector.fromArray(B8, pels, w01).convertShape(B2I, I8, 0);
+            IntVector p11 = (IntVector) ByteVector.fromArray(B8, pels, w11).convertShape(B2I, I8, 0);
+            IntVector v = p00.mul(c00).add(p10.mul(c10)).add(p01.mul(c01)).add(p11.mul(c11));
+            ((ByteVector) v.add(32).lanewise(ASHR, 6).convertShape(I2B, B8, 0)).intoArray(blk, blkOff);
+            blkOff += blkStride;
+            w00 += picW;
+            w01 += picW;
+            w10 += picW;
+            w11 += picW;
+        }
+    }
+
+    @Override
+    public void idct8x8(int[] ac) {
+        CoeffTransformer.idct8x8Rows(ac);
+
+        // Vertical, lane i of row vector r is column i
+        IntVector r0 = IntVector.fromArray(I8, ac, 0);
+        IntVector r1 = IntVector.fromArray(I8, ac, 8);
+        IntVector r2 = IntVector.fromArray(I8, ac, 16);
+        IntVector r3 = IntVector.fromArray(I8, ac, 24);
+        IntVector r4 = IntVector.fromArray(I8, ac, 32);
+        IntVector r5 = IntVector.fromArray(I8, ac, 40);
+        IntVector r6 = IntVector.fromArray(I8, ac, 48);
+        IntVector r7 = IntVector.fromArray(I8, ac, 56);
+
+        IntVector e0 = r0.add(r4);
+        IntVector e1 = r5.sub(r3).sub(r7).sub(r7.lanewise(ASHR, 1));
+        IntVector e2 = r0.sub(r4);
+        IntVector e3 = r1.add(r7).sub(r3).sub(r3.lanewise(ASHR, 1));
+        IntVector e4 = r2.lanewise(ASHR, 1).sub(r6);
+        IntVector e5 = r7.sub(r1).add(r5).add(r5.lanewise(ASHR, 1));
+        IntVector e6 = r2.add(r6.lanewise(ASHR, 1));
+        IntVector e7 = r3.add(r5).add(r1).add(r1.lanewise(ASHR, 1));
+
+        IntVector f0 = e0.add(e6);
+        IntVector f1 = e1.add(e7.lanewise(ASHR, 2));
+        IntVector f2 = e2.add(e4);
+        IntVector f3 = e3.add(e5.lanewise(ASHR, 2));
+        IntVector f4 = e2.sub(e4);
+        IntVector f5 = e3.lanewise(ASHR, 2).sub(e5);
+        IntVector f6 = e0.sub(e6);
+        IntVector f7 = e7.sub(e1.lanewise(ASHR, 2));
+
+        f0.add(f7).add(32).lanewise(ASHR, 6).intoArray(ac, 0);
+        f2.add(f5).add(32).lanewise(ASHR, 6).intoArray(ac, 8);
+        f4.add(f3).add(32).lanewise(ASHR, 6).intoArray(ac, 16);
+        f6.add(f1).add(32).lanewise(ASHR, 6).intoArray(ac, 24);
+        f6.sub(f1).add(32).lanewise(ASHR, 6).intoArray(ac, 32);
+        f4.sub(f3).add(32).lanewise(ASHR, 6).intoArray(ac, 40);
+        f2.sub(f5).add(32).lanewise(ASHR, 6).intoArray(ac, 48);
+        f0.sub(f7).add(32).lanewise(ASHR, 6).intoArray(ac, 56);
+    }
+
+    @Override
+    public void average(byte[] blk0, byte[] blk1, int stride, int off, int blkW, int blkH, byte[] out) {
+        if ((blkW & 7) != 0) {
+            super.average(blk0, blk1, stride, off, blkW, blkH, out);
+            return;
+        }
+        for (int j = 0; j < blkH; j++, off += stride) {
+            for (int i = 0; i < blkW; i += 8) {
+                IntVector a = (IntVector) ByteVector.fromArray(B8, blk0, off + i).convertShape(B2I, I8, 0);
+                IntVector b = (IntVector) ByteVector.fromArray(B8, blk1, off + i).convertShape(B2I, I8, 0);
+                IntVector v = a.add(b).add(1).lanewise(ASHR, 1);
+                ((ByteVector) v.convertShape(I2B, B8, 0)).intoArray(out, off + i);
+            }
+        }
+    }
+
+    @Override
+    public void weightBi(byte[] blk0, byte[] blk1, int stride, int off, int blkW, int blkH, int logWD, int w0,
+            int w1, int o0, int o1, byte[] out) {
+        if ((blkW & 7) != 0) {
+            super.weightBi(blk0, blk1, stride, off, blkW, blkH, logWD, w0, w1, o0, o1, out);
+            return;
+        }
+        int round = (1 << logWD) + ((w0 + w1) << 7);
+        int sum = ((o0 + o1 + 1) >> 1) - 128;
+        // shift by a vector, a variable scalar count is not intrinsified
+        IntVector logWDCP1 = IntVector.broadcast(I8, logWD + 1);
+        for (int j = 0; j < blkH; j++, off += stride) {
+            for (int i = 0; i < blkW; i += 8) {
+                IntVector a = (IntVector) ByteVector.fromArray(B8, blk0, off + i).convertShape(B2I, I8, 0);
+                IntVector b = (IntVector) ByteVector.fromArray(B8, blk1, off + i).convertShape(B2I, I8, 0);
+                IntVector v = a.mul(w0).add(b.mul(w1)).add(round).lanewise(ASHR, logWDCP1).add(sum);
+                ((ByteVector) v.max(-128).min(127).convertShape(I2B, B8, 0)).intoArray(out, off + i);
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.jcodec;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.junit.Assume;
+
+/**
+ * This class is part of JCodec ( www.jcodec.org ) This software is distributed
+ * under FreeBSD License
+ *
+ * Checks the steady state heap allocation of a decoding loop, the test is
+ * skipped on JVMs that don't count the bytes allocated by a thread
+ *
+ * @author The JCodec project
+ *
+ */
+public class AllocationAssert {
+
+    public interface Pass {
+        /**
+         * Decodes all the frames once, 'pass' is 0 for the warm up pass
+         */
+        void run(int pass) throws IOException;
+    }
+
+    /**
+     * Runs a warm up pass that lets the codec size its state, then 'passes'
+     * more and asserts that less than 'limit' bytes per frame were allocated
+     * by the current thread
+     */
+    public static void assertPerFrameBelow(long limit, int passes, int framesPerPass, Pass pass)
+            throws IOException {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(mx.isThreadAllocatedMemorySupported() && mx.isThreadAllocatedMemoryEnabled());
+
+        pass.run(0);
+
+        long tid = Thread.currentThread().getId();
+        long before = mx.getThreadAllocatedBytes(tid);
+        for (int i = 1; i <= passes; i++)
+            pass.run(i);
+        long perFrame = (mx.getThreadAllocatedBytes(tid) - before) / (passes * framesPerPass);
+
+        assertTrue("allocated " + perFrame + " bytes per frame", perFrame < limit);
+    }
+}
@@ -0,0 +1,219 @@
+package org.jcodec.api;
+
+import static org.jcodec.common.Format.MOV;
+import static org.jcodec.common.Tuple.triple;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jcodec.api.transcode.Filter;
+import org.jcodec.api.transcode.Options;
+import org.jcodec.api.transcode.ParallelTranscoder;
+import org.jcodec.api.transcode.SinkImpl;
+import org.jcodec.api.transcode.SourceImpl;
+import org.jcodec.api.transcode.filters.ScaleFilter;
+import org.jcodec.codecs.prores.ProresConsts;
+import org.jcodec.codecs.prores.ProresConsts.FrameHeader;
+import org.jcodec.codecs.prores.ProresDecoder;
+import org.jcodec.common.Codec;
+import org.jcodec.common.DemuxerTrack;
+import org.jcodec.common.io.FileChannelWrapper;
+import org.jcodec.common.io.NIOUtils;
+import org.jcodec.common.model.Packet;
+import org.jcodec.common.model.Size;
+import org.jcodec.containers.mp4.demuxer.MP4Demuxer;
+import org.junit.Test;
+
+public class ParallelTranscoderTest {
+
+    @Test
+    public void testTranscodesInSegments() throws Exception {
+        new File("tmp").mkdirs();
+
+        File input = new File("src/test/resources/video/seq_h264_4_audio.mp4");
+        File output = new File("tmp/parallelTranscoder.mp4");
+
+        SourceImpl source = new SourceImpl(input.getAbsolutePath(), MOV, triple(0, 0, Codec.H264),
+                triple(0, 0, Codec.AAC));
+        SinkImpl sink = new SinkImpl(output.getAbsolutePath(), MOV, Codec.H264, Codec.AAC);
+
+        ParallelTranscoder.newParallelTranscoder(source, sink).setThreads(2).setSegmentFrames(1).setAudioCopy(true)
+                .create().transcode();
+
+        int inputFrames = countFrames(input, false);
+        assertTrue(inputFrames > 0);
+        assertEquals(inputFrames, countFrames(output, false));
+        assertEquals(countFrames(input, true), countFrames(output, true));
+    }
+
+    @Test
+    public void testFilters() throws Exception {
+        new File("tmp").mkdirs();
+
+        File input = new File("src/test/resources/video/seq_h264_4_audio.mp4");
+        File output = new File("tmp/parallelTranscoderScaled.mp4");
+
+        SourceImpl source = new SourceImpl(input.getAbsolutePath(), MOV, triple(0, 0, Codec.H264),
+                triple(0, 0, Codec.AAC));
+        SinkImpl sink = new SinkImpl(output.getAbsolutePath(), MOV, Codec.H264, Codec.AAC);
+        final AtomicInteger created = new AtomicInteger();
+        ParallelTranscoder.newParallelTranscoder(source, sink).setThreads(2).setSegmentFrames(1).setAudioCopy(true)
+                .addFilter(new ParallelTranscoder.FilterFactory() {
+                    public Filter newFilter() {
+                        created.incrementAndGet();
+                        return new ScaleFilter(160, 96);
+                    }
+                }).create().transcode();
+
+        // A filter for every segment
+        assertTrue(created.get() > 1);
+        assertEquals(new Size(160, 96), videoSize(output));
+        // The segments are joined back to back starting at 0
+        List<Packet> frames = frames(output, false);
+        assertEquals(countFrames(input, false), frames.size());
+        long pts = 0;
+        for (Packet frame : frames) {
+            assertEquals(pts, frame.getPts());
+            pts += frame.getDuration();
+        }
+    }
+
+    @Test
+    public void testParameterSetsDiffer() throws Exception {
+        new File("tmp").mkdirs();
+
+        File input = new File("src/test/resources/video/seq_h264_4_audio.mp4");
+        File output = new File("tmp/parallelTranscoderMismatch.mp4");
+
+        SourceImpl source = new SourceImpl(input.getAbsolutePath(), MOV, triple(0, 0, Codec.H264), null);
+        SinkImpl sink = new SinkImpl(output.getAbsolutePath(), MOV, Codec.H264, null);
+        // One of the segments is encoded at a different size
+        final AtomicInteger created = new AtomicInteger();
+        ParallelTranscoder transcoder = ParallelTranscoder.newParallelTranscoder(source, sink).setThreads(2)
+                .setSegmentFrames(1).addFilter(new ParallelTranscoder.FilterFactory() {
+                    public Filter newFilter() {
+                        return created.getAndIncrement() == 0 ? new ScaleFilter(160, 96) : new ScaleFilter(128, 96);
+                    }
+                }).create();
+        try {
+            transcoder.transcode();
+            fail("The segments with different parameter sets were joined");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("parameter sets"));
+        }
+    }
+
+    @Test
+    public void testSinkOptions() throws Exception {
+        new File("tmp").mkdirs();
+
+        File input = new File("src/test/resources/video/seq_h264_4_audio.mp4");
+        File proxy = new File("tmp/parallelTranscoderProxy.mov");
+        File hq = new File("tmp/parallelTranscoderHQ.mov");
+
+        transcodeProres(input, proxy, "PROXY", true, 8000);
+        transcodeProres(input, hq, null, false, null);
+
+        // Every segment is encoded with the options of the sink
+        for (Packet frame : frames(proxy, false)) {
+            FrameHeader fh = ProresDecoder.readFrameHeader(frame.getData());
+            assertEquals(1, fh.frameType);
+            assertArrayEquals(scanned(ProresConsts.QMAT_LUMA_APCO, fh.scan), fh.qMatLuma);
+        }
+        for (Packet frame : frames(hq, false)) {
+            FrameHeader fh = ProresDecoder.readFrameHeader(frame.getData());
+            assertEquals(0, fh.frameType);
+            assertArrayEquals(scanned(ProresConsts.QMAT_LUMA_APCH, fh.scan), fh.qMatLuma);
+        }
+        // 8000 bits a second against the default 64000 of the mono track
+        assertTrue(size(frames(proxy, true)) * 2 < size(frames(hq, true)));
+    }
+
+    private static void transcodeProres(File input, File output, String profile, boolean interlaced,
+            Integer audioBitrate) throws Exception {
+        SourceImpl source = new SourceImpl(input.getAbsolutePath(), MOV, triple(0, 0, Codec.H264),
+                triple(0, 0, Codec.AAC));
+        SinkImpl sink = new SinkImpl(output.getAbsolutePath(), MOV, Codec.PRORES, Codec.AAC);
+        sink.setOption(Options.PROFILE, profile);
+        sink.setOption(Options.INTERLACED, interlaced);
+        if (audioBitrate != null)
+            sink.setOption(Options.AUDIO_BITRATE, audioBitrate);
+        ParallelTranscoder.newParallelTranscoder(source, sink).setThreads(2).setSegmentFrames(1).create()
+                .transcode();
+    }
+
+    private static Size videoSize(File file) throws Exception {
+        FileChannelWrapper ch = null;
+        try {
+            ch = NIOUtils.readableChannel(file);
+            return MP4Demuxer.createMP4Demuxer(ch).getVideoTrack().getMeta().getVideoCodecMeta().getSize();
+        } finally {
+            NIOUtils.closeQuietly(ch);
+        }
+    }
+
+    private static List<Packet> frames(File file, boolean audio) throws Exception {
+        FileChannelWrapper ch = null;
+        try {
+            ch = NIOUtils.readableChannel(file);
+            MP4Demuxer demuxer = MP4Demuxer.createMP4Demuxer(ch);
+            DemuxerTrack track = audio ? demuxer.getAudioTracks().get(0) : demuxer.getVideoTrack();
+            List<Packet> frames = new ArrayList<Packet>();
+            Packet packet;
+            while ((packet = track.nextFrame()) != null)
+                frames.add(packet);
+            assertTrue(frames.size() > 0);
+            return frames;
+        } finally {
+            NIOUtils.closeQuietly(ch);
+        }
+    }
+
+    /**
+     * The quantization matrix as the frame header reader returns it.
+     */
+    private static int[] scanned(int[] qmat, int[] scan) {
+        int[] result = new int[64];
+        for (int i = 0; i < 64; i++)
+            result[i] = qmat[scan[i]];
+        return result;
+    }
+
+    private static long size(List<Packet> frames) {
+        long size = 0;
+        for (Packet frame : frames)
+            size += frame.getData().remaining();
+        return size;
+    }
+
+    private static int countFrames(File file, boolean audio) throws Exception {
+        FileChannelWrapper ch = null;
+        try {
+            ch = NIOUtils.readableChannel(file);
+            MP4Demuxer demuxer = MP4Demuxer.createMP4Demuxer(ch);
+            DemuxerTrack track = audio ? demuxer.getAudioTracks().get(0) : demuxer.getVideoTrack();
+            assertNotNull(track);
+            int frames = 0;
+            double lastPts = -1;
+            Packet packet;
+            while ((packet = track.nextFrame()) != null) {
+                if (!audio && frames == 0)
+                    assertTrue(packet.isKeyFrame());
+                if (audio)
+                    assertTrue(packet.getPtsD() >= lastPts);
+                lastPts = packet.getPtsD();
+                frames++;
+            }
+            return frames;
+        } finally {
+            NIOUtils.closeQuietly(ch);
+        }
+    }
+}
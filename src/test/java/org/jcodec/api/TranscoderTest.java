@@ -3,11 +3,18 @@ package org.jcodec.api;
 import static org.jcodec.common.Format.MOV;
 import static org.jcodec.common.Tuple.triple;
 import static org.jcodec.common.model.ColorSpace.RGB;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 
+import org.jcodec.api.transcode.AudioFrameWithPacket;
 import org.jcodec.api.transcode.Filter;
 import org.jcodec.api.transcode.PixelStore;
 import org.jcodec.api.transcode.PixelStore.LoanerPicture;
@@ -17,9 +24,19 @@ import org.jcodec.api.transcode.Source;
 import org.jcodec.api.transcode.SourceImpl;
 import org.jcodec.api.transcode.Transcoder;
 import org.jcodec.api.transcode.Transcoder.TranscoderBuilder;
+import org.jcodec.api.transcode.filters.ScaleFilter;
+import org.jcodec.common.AudioFormat;
 import org.jcodec.common.Codec;
+import org.jcodec.common.io.ByteBufferSeekableByteChannel;
+import org.jcodec.common.io.SeekableByteChannel;
+import org.jcodec.common.io.WriteBehindChannel;
+import org.jcodec.common.io.WriteBehindChannel.SyncPolicy;
+import org.jcodec.common.model.AudioBuffer;
 import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Packet;
+import org.jcodec.common.model.Packet.FrameType;
 import org.jcodec.common.model.Picture;
+import org.jcodec.common.model.PooledPlaneAllocator;
 import org.jcodec.scale.AWTUtil;
 import org.junit.Test;
 
@@ -68,4 +85,76 @@ public class TranscoderTest {
         Transcoder transcoder = builder.create();
         transcoder.transcode();
     }
+
+    @Test
+    public void testScaleFilterNotChanged() throws Exception {
+        new File("tmp").mkdirs();
+
+        File input = new File("src/test/resources/video/seq_h264_4_audio.mp4");
+        File output = new File("tmp/scaleFilterNotChanged.mp4");
+
+        Source source = new SourceImpl(input.getAbsolutePath(), MOV, triple(0, 0, Codec.H264), null);
+        Sink sink = new SinkImpl(output.getAbsolutePath(), MOV, Codec.H264, null);
+
+        // The color transform to the encoder's input is fused into a scale
+        // filter of the transcoder's own
+        ScaleFilter scale = new ScaleFilter(64, 48);
+        TranscoderBuilder builder = Transcoder.newTranscoder();
+        builder.addSource(source);
+        builder.addSink(sink);
+        builder.addFilter(0, scale);
+        builder.setVideoMapping(0, 0, false);
+
+        builder.create().transcode();
+        assertEquals(ColorSpace.SAME, scale.getOutputColor());
+    }
+
+    @Test
+    public void testPlaneAllocator() throws Exception {
+        new File("tmp").mkdirs();
+
+        File input = new File("src/test/resources/video/seq_h264_4_audio.mp4");
+        File output = new File("tmp/planeAllocator.mp4");
+
+        Source source = new SourceImpl(input.getAbsolutePath(), MOV, triple(0, 0, Codec.H264), null);
+        Sink sink = new SinkImpl(output.getAbsolutePath(), MOV, Codec.H264, null);
+
+        PooledPlaneAllocator allocator = PooledPlaneAllocator.createPooledPlaneAllocator(1 << 24);
+        TranscoderBuilder builder = Transcoder.newTranscoder();
+        builder.addSource(source);
+        builder.addSink(sink);
+        builder.addFilter(0, new CustomFilter());
+        builder.setVideoMapping(0, 0, false);
+        builder.setPlaneAllocator(allocator);
+
+        builder.create().transcode();
+        // the pictures of the transcoder went back to the allocator
+        assertTrue(allocator.getRetained() > 0);
+    }
+
+    @Test
+    public void testSinkClosedOnWriteError() throws Exception {
+        SeekableByteChannel failing = new ByteBufferSeekableByteChannel(ByteBuffer.allocate(0), 0) {
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                throw new IOException("Disk full");
+            }
+        };
+        WriteBehindChannel out = new WriteBehindChannel(failing, 1024, 2, SyncPolicy.NEVER);
+        SinkImpl sink = SinkImpl.createWithStream(out, MOV, null, Codec.AAC);
+        sink.init();
+        AudioFormat format = AudioFormat.STEREO_48K_S16_LE;
+        for (int i = 0; i < 10; i++) {
+            ByteBuffer pcm = ByteBuffer.allocate(4800 * format.getFrameSize());
+            Packet pkt = Packet.createPacket(null, i * 4800, format.getSampleRate(), 4800, i, FrameType.KEY, null);
+            sink.outputAudioFrame(new AudioFrameWithPacket(new AudioBuffer(pcm, format, 4800), pkt));
+        }
+        try {
+            sink.finish();
+            fail("The write error is lost");
+        } catch (IOException e) {
+            // the output is closed all the same
+            assertFalse(out.isOpen());
+        }
+    }
 }
@@ -0,0 +1,92 @@
+package org.jcodec.codecs.aac;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jcodec.AllocationAssert;
+import org.jcodec.common.DemuxerTrack;
+import org.jcodec.common.io.NIOUtils;
+import org.jcodec.common.model.AudioBuffer;
+import org.jcodec.common.model.Packet;
+import org.jcodec.containers.mp4.demuxer.MP4Demuxer;
+import org.junit.Test;
+
+import net.sourceforge.jaad.aac.Decoder;
+import net.sourceforge.jaad.aac.SampleBuffer;
+
+public class AACDecoderTest {
+
+    private static final String SOURCE = "src/test/java/org/jcodec/containers/mp4/demuxer/37.mp4";
+    // the file claims 171 samples, the last 3 are not really there
+    private static final int FRAMES = 168;
+
+    @Test
+    public void testMatchesSampleBufferPath() throws IOException {
+        List<ByteBuffer> frames = new ArrayList<ByteBuffer>();
+        ByteBuffer codecPrivate = readFrames(frames);
+
+        Decoder reference = new Decoder(NIOUtils.toArray(codecPrivate));
+        AACDecoder decoder = new AACDecoder(codecPrivate);
+        ByteBuffer dst = ByteBuffer.allocate(1 << 16);
+        for (ByteBuffer frame : frames) {
+            SampleBuffer sampleBuffer = decodeSampleBuffer(reference, frame);
+
+            dst.clear();
+            AudioBuffer audio = decoder.decodeFrame(frame, dst);
+            assertTrue(audio.getData() == dst);
+            assertArrayEquals(sampleBuffer.getData(), NIOUtils.toArray(audio.getData()));
+            assertEquals(sampleBuffer.getSampleRate(), audio.getFormat().getSampleRate());
+            assertEquals(sampleBuffer.getChannels(), audio.getFormat().getChannels());
+            assertEquals(sampleBuffer.getData().length / (2 * sampleBuffer.getChannels()), audio.getNFrames());
+        }
+    }
+
+    @Test
+    public void testNoPerFrameAllocation() throws IOException {
+        final List<ByteBuffer> frames = new ArrayList<ByteBuffer>();
+        final AACDecoder decoder = new AACDecoder(readFrames(frames));
+        final ByteBuffer dst = ByteBuffer.allocate(1 << 16);
+
+        // only the returned AudioBuffer wrapper is expected to be allocated
+        AllocationAssert.assertPerFrameBelow(64, 10, frames.size(), new AllocationAssert.Pass() {
+            public void run(int pass) throws IOException {
+                decodeAll(decoder, frames, dst);
+            }
+        });
+    }
+
+    private static void decodeAll(AACDecoder decoder, List<ByteBuffer> frames, ByteBuffer dst) throws IOException {
+        for (int i = 0; i < frames.size(); i++) {
+            ByteBuffer frame = frames.get(i);
+            int pos = frame.position();
+            dst.clear();
+            decoder.decodeFrame(frame, dst);
+            frame.position(pos);
+        }
+    }
+
+    private static SampleBuffer decodeSampleBuffer(Decoder decoder, ByteBuffer frame) throws IOException {
+        ByteBuffer dup = frame.duplicate();
+        ADTSParser.read(dup);
+        SampleBuffer sampleBuffer = new SampleBuffer();
+        decoder.decodeFrame(NIOUtils.toArray(dup), sampleBuffer);
+        sampleBuffer.setBigEndian(false);
+        return sampleBuffer;
+    }
+
+    private static ByteBuffer readFrames(List<ByteBuffer> frames) throws IOException {
+        MP4Demuxer demuxer = MP4Demuxer.createMP4Demuxer(NIOUtils.readableChannel(new File(SOURCE)));
+        DemuxerTrack track = demuxer.getAudioTracks().get(0);
+        Packet packet;
+        while (frames.size() < FRAMES && null != (packet = track.nextFrame()))
+            frames.add(NIOUtils.clone(packet.getData()));
+        return track.getMeta().getCodecPrivate();
+    }
+}
@@ -0,0 +1,216 @@
+package org.jcodec.codecs.aac;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.jcodec.api.transcode.AudioFrameWithPacket;
+import org.jcodec.api.transcode.Options;
+import org.jcodec.api.transcode.SinkImpl;
+import org.jcodec.codecs.aac.AACEncoder.RateControl;
+import org.jcodec.common.AudioFormat;
+import org.jcodec.common.Codec;
+import org.jcodec.common.DemuxerTrack;
+import org.jcodec.common.Format;
+import org.jcodec.common.io.ByteBufferSeekableByteChannel;
+import org.jcodec.common.model.AudioBuffer;
+import org.jcodec.common.model.Packet;
+import org.jcodec.common.model.Packet.FrameType;
+import org.jcodec.containers.mp4.demuxer.MP4Demuxer;
+import org.junit.Test;
+
+public class AACEncoderTest {
+
+    private static final int DELAY = 1024;
+
+    @Test
+    public void testStereoRoundTrip() throws IOException {
+        AudioFormat format = AudioFormat.STEREO_44K_S16_LE;
+        short[] pcm = signal(format, 44100 * 2, 0);
+        // same bitrate per channel and the same bound as the mono case
+        short[] decoded = roundTrip(AACEncoder.createAACEncoder(format, 384000), format, pcm, null);
+        for (int c = 0; c < 2; c++) {
+            double snr = snr(pcm, decoded, c, 2);
+            assertTrue("channel " + c + " snr " + snr, snr > 30);
+        }
+    }
+
+    @Test
+    public void testMonoRoundTrip() throws IOException {
+        AudioFormat format = AudioFormat.MONO_48K_S16_LE;
+        short[] pcm = signal(format, 48000, 0);
+        short[] decoded = roundTrip(AACEncoder.createAACEncoder(format, 192000), format, pcm, null);
+        double snr = snr(pcm, decoded, 0, 1);
+        assertTrue("snr " + snr, snr > 30);
+    }
+
+    @Test
+    public void testAverageBitrate() throws IOException {
+        AudioFormat format = AudioFormat.STEREO_44K_S16_LE;
+        short[] pcm = signal(format, 44100 * 3, 500);
+        List<Integer> sizes = new ArrayList<Integer>();
+        int bitRate = 96000;
+        roundTrip(AACEncoder.createAACEncoder(format, bitRate), format, pcm, sizes);
+        long bits = 0;
+        for (int size : sizes)
+            bits += 8 * size;
+        double actual = (double) bits * format.getSampleRate() / (sizes.size() * 1024);
+        assertEquals(bitRate, actual, bitRate * 0.1);
+    }
+
+    @Test
+    public void testConstantFrameSize() throws IOException {
+        AudioFormat format = AudioFormat.STEREO_48K_S16_LE;
+        short[] pcm = signal(format, 48000 * 2, 500);
+        List<Integer> sizes = new ArrayList<Integer>();
+        int bitRate = 128000;
+        roundTrip(AACEncoder.createAACEncoderWithRateControl(format, bitRate, RateControl.CBR), format, pcm, sizes);
+        // the ADTS header is a part of the frame's budget
+        double frameBytes = bitRate * 1024. / format.getSampleRate() / 8;
+        for (int size : sizes) {
+            assertTrue("frame of " + size + " bytes",
+                    size == (int) Math.floor(frameBytes) || size == (int) Math.ceil(frameBytes));
+        }
+    }
+
+    @Test
+    public void testMP4Sink() throws IOException {
+        AudioFormat format = AudioFormat.STEREO_48K_S16_LE;
+        int samples = 48000;
+        short[] pcm = signal(format, samples, 500);
+        DemuxerTrack track = encodeWithSink(format, pcm, null);
+        AACDecoder decoder = new AACDecoder(track.getMeta().getCodecPrivate());
+        ByteBuffer dst = ByteBuffer.allocate(1 << 16);
+        int frames = 0, decoded = 0;
+        Packet frame;
+        while ((frame = track.nextFrame()) != null) {
+            assertEquals(frames * 1024, frame.getPts());
+            dst.clear();
+            decoded += decoder.decodeFrame(frame.getData(), dst).getNFrames();
+            frames++;
+        }
+        // the padded last frame plus one more for the encoder delay
+        assertEquals(samples / 1024 + 2, frames);
+        assertEquals(frames * 1024, decoded);
+    }
+
+    @Test
+    public void testSinkBitrateOption() throws IOException {
+        AudioFormat format = AudioFormat.STEREO_48K_S16_LE;
+        short[] pcm = signal(format, 48000 * 2, 500);
+        long defaultSize = 0, size = 0;
+        Packet frame;
+        DemuxerTrack track = encodeWithSink(format, pcm, null);
+        while ((frame = track.nextFrame()) != null)
+            defaultSize += frame.getData().remaining();
+        track = encodeWithSink(format, pcm, 64000);
+        while ((frame = track.nextFrame()) != null)
+            size += frame.getData().remaining();
+        // 64000 per channel by default
+        assertEquals(0.5, (double) size / defaultSize, 0.05);
+    }
+
+    private static DemuxerTrack encodeWithSink(AudioFormat format, short[] pcm, Integer bitRate) throws IOException {
+        ByteBuffer in = ByteBuffer.allocate(pcm.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        in.asShortBuffer().put(pcm);
+        int samples = pcm.length / format.getChannels();
+
+        ByteBufferSeekableByteChannel ch = ByteBufferSeekableByteChannel.writeToByteBuffer(ByteBuffer.allocate(1 << 20));
+        SinkImpl sink = SinkImpl.createWithStream(ch, Format.MOV, null, Codec.AAC);
+        if (bitRate != null)
+            sink.setOption(Options.AUDIO_BITRATE, bitRate);
+        sink.init();
+        int packet = 4800;
+        for (int i = 0; i < samples; i += packet) {
+            ByteBuffer chunk = in.duplicate();
+            chunk.position(i * format.getFrameSize());
+            chunk.limit((i + packet) * format.getFrameSize());
+            Packet pkt = Packet.createPacket(null, i, format.getSampleRate(), packet, i / packet, FrameType.KEY, null);
+            sink.outputAudioFrame(new AudioFrameWithPacket(new AudioBuffer(chunk, format, packet), pkt));
+        }
+        sink.finish();
+
+        MP4Demuxer demuxer = MP4Demuxer.createMP4Demuxer(ByteBufferSeekableByteChannel.readFromByteBuffer(ch
+                .getContents()));
+        return demuxer.getAudioTracks().get(0);
+    }
+
+    /**
+     * A couple of tones on top of some noise, each channel with its own mix.
+     */
+    private static short[] signal(AudioFormat format, int samples, int noise) {
+        int channels = format.getChannels();
+        short[] pcm = new short[samples * channels];
+        Random rnd = new Random(42);
+        for (int i = 0; i < samples; i++) {
+            double t = (double) i / format.getSampleRate();
+            for (int c = 0; c < channels; c++) {
+                double v = 6000 * Math.sin(2 * Math.PI * (440 + 110 * c) * t) + 3000 * Math.sin(2 * Math.PI * 2500 * t)
+                        + noise * rnd.nextGaussian();
+                pcm[i * channels + c] = (short) v;
+            }
+        }
+        return pcm;
+    }
+
+    private static short[] roundTrip(AACEncoder encoder, AudioFormat format, short[] pcm, List<Integer> sizes)
+            throws IOException {
+        ByteBuffer in = ByteBuffer.allocate(pcm.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        in.asShortBuffer().put(pcm);
+
+        // feed in packets not aligned to the frame length
+        List<ByteBuffer> frames = new ArrayList<ByteBuffer>();
+        int packet = 1000 * format.getFrameSize();
+        while (in.hasRemaining()) {
+            ByteBuffer chunk = in.duplicate();
+            chunk.limit(Math.min(in.limit(), in.position() + packet));
+            in.position(chunk.limit());
+            split(encoder.encode(chunk, null), frames);
+        }
+        split(encoder.flush(null), frames);
+
+        AACDecoder decoder = new AACDecoder(encoder.getDecoderSpecificInfo());
+        ByteBuffer out = ByteBuffer.allocate((frames.size() * 1024 + 1024) * format.getFrameSize());
+        ByteBuffer dst = ByteBuffer.allocate(1 << 16);
+        for (ByteBuffer frame : frames) {
+            if (sizes != null)
+                sizes.add(frame.remaining());
+            dst.clear();
+            AudioBuffer audio = decoder.decodeFrame(frame, dst);
+            out.put(audio.getData());
+        }
+        out.flip();
+        short[] decoded = new short[out.remaining() / 2];
+        out.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(decoded);
+        assertTrue(decoded.length >= pcm.length + DELAY * format.getChannels());
+        return decoded;
+    }
+
+    private static void split(ByteBuffer data, List<ByteBuffer> frames) {
+        while (data.hasRemaining()) {
+            ByteBuffer dup = data.duplicate();
+            ADTSParser.Header header = ADTSParser.read(dup);
+            assertTrue(header != null);
+            ByteBuffer frame = data.duplicate();
+            frame.limit(frame.position() + header.getSize());
+            frames.add(frame);
+            data.position(frame.limit());
+        }
+    }
+
+    private static double snr(short[] pcm, short[] decoded, int c, int channels) {
+        double signal = 0, noise = 0;
+        for (int i = c; i < pcm.length; i += channels) {
+            double d = pcm[i] - decoded[i + DELAY * channels];
+            signal += (double) pcm[i] * pcm[i];
+            noise += d * d;
+        }
+        return 10 * Math.log10(signal / noise);
+    }
+}
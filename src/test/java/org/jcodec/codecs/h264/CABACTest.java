@@ -1,12 +1,17 @@
 package org.jcodec.codecs.h264;
 import static org.jcodec.codecs.h264.H264Const.PartPred.L0;
 
+import org.jcodec.codecs.common.biari.MDecoder;
+import org.jcodec.codecs.common.biari.MEncoder;
 import org.jcodec.codecs.h264.io.CABAC;
+import org.jcodec.codecs.h264.io.CABAC.BlockType;
 import org.jcodec.codecs.h264.io.model.MBType;
 import org.jcodec.codecs.h264.io.model.SliceType;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+
 public class CABACTest {
 
     @Test
@@ -173,4 +178,41 @@ public class CABACTest {
         m = new MockMDecoder(new int[] { 1 }, new int[] { 21 });
         Assert.assertEquals(0, new CABAC(1).readSubMbTypeP(m));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCoeffLevelEscapes() {
+        // Levels around every UEG0 suffix length, 15 is the first escaped
+        // level
+        int[][] blocks = new int[18][16];
+        for (int k = 0; k < blocks.length; k++) {
+            int first = 15 + (1 << k) - 1;
+            int last = first + (1 << k) - 1;
+            blocks[k][0] = first;
+            blocks[k][1] = -last;
+            blocks[k][3] = last + 1;
+            blocks[k][7] = -(k + 1);
+        }
+        int[][] cm = new int[2][1024];
+        new CABAC(1).initModels(cm, SliceType.I, 0, 26);
+        ByteBuffer buf = ByteBuffer.allocate(1 << 12);
+        MEncoder encoder = new MEncoder(buf, cm);
+        CABAC cabac = new CABAC(1);
+        for (int[] block : blocks)
+            cabac.writeCoeffs(encoder, BlockType.LUMA_16, block, 0, 16, H264Const.identityMapping16);
+        encoder.encodeBinFinal(1);
+        encoder.finishEncoding();
+        buf.flip();
+
+        cm = new int[2][1024];
+        new CABAC(1).initModels(cm, SliceType.I, 0, 26);
+        MDecoder decoder = new MDecoder(buf, cm);
+        cabac = new CABAC(1);
+        for (int[] block : blocks) {
+            int[] actual = new int[16];
+            cabac.readCoeffs(decoder, BlockType.LUMA_16, actual, 0, 16, H264Const.identityMapping16,
+                    H264Const.identityMapping16, H264Const.identityMapping16);
+            Assert.assertArrayEquals(block, actual);
+        }
+        Assert.assertEquals(1, decoder.decodeFinalBin());
+    }
+}
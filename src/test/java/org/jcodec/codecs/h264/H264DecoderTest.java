@@ -0,0 +1,115 @@
+package org.jcodec.codecs.h264;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jcodec.AllocationAssert;
+import org.jcodec.codecs.h264.decode.DeblockerInput;
+import org.jcodec.codecs.h264.io.model.Frame;
+import org.jcodec.codecs.h264.io.model.SeqParameterSet;
+import org.jcodec.common.io.NIOUtils;
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Packet;
+import org.jcodec.common.model.Picture;
+import org.junit.Test;
+
+public class H264DecoderTest {
+
+    private static final String CAT1 = "src/test/resources/h264/test_cat1.h264";
+    private static final String WIPE = "src/test/resources/h264/seq_wipe/test.264";
+
+    @Test
+    public void testSteadyStateAllocation() throws IOException {
+        List<ByteBuffer> frames = readFrames(CAT1);
+        int passes = 3;
+        // the decoder unescapes the NAL units in place, so every pass gets its
+        // own copy of the stream
+        final List<List<ByteBuffer>> copies = new ArrayList<List<ByteBuffer>>();
+        for (int i = 0; i <= passes; i++)
+            copies.add(copy(frames));
+
+        final H264Decoder decoder = new H264Decoder();
+        final byte[][] buffer = Picture.create(640, 352, ColorSpace.YUV420).getData();
+        // the deblocker input alone for a 640x352 picture takes over 200k, what
+        // is left are slice headers and reference lists
+        AllocationAssert.assertPerFrameBelow(64 * 1024, passes, frames.size(), new AllocationAssert.Pass() {
+            public void run(int pass) throws IOException {
+                for (ByteBuffer frame : copies.get(pass))
+                    decoder.decodeFrame(frame, buffer);
+            }
+        });
+    }
+
+    @Test
+    public void testReusedDecoderMatchesFresh() throws IOException {
+        H264Decoder reused = new H264Decoder();
+        byte[][] reusedBuffer = Picture.create(640, 368, ColorSpace.YUV420).getData();
+        // the second stream has a different picture size, the pooled state has
+        // to be reallocated
+        for (String stream : new String[] { WIPE, CAT1, CAT1 }) {
+            H264Decoder fresh = new H264Decoder();
+            byte[][] freshBuffer = Picture.create(640, 368, ColorSpace.YUV420).getData();
+            List<ByteBuffer> frames = readFrames(stream);
+            List<ByteBuffer> copies = copy(frames);
+            for (int i = 0; i < frames.size(); i++) {
+                Frame expected = fresh.decodeFrame(frames.get(i), freshBuffer);
+                Frame actual = reused.decodeFrame(copies.get(i), reusedBuffer);
+                assertEquals(expected.getWidth(), actual.getWidth());
+                assertEquals(expected.getHeight(), actual.getHeight());
+                assertEquals(expected.getPOC(), actual.getPOC());
+                assertEquals(expected.getFrameType(), actual.getFrameType());
+                for (int p = 0; p < 3; p++) {
+                    int size = expected.getPlaneWidth(p) * expected.getPlaneHeight(p);
+                    assertArrayEquals(Arrays.copyOf(expected.getPlaneData(p), size),
+                            Arrays.copyOf(actual.getPlaneData(p), size));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDeblockerInputFits() {
+        SeqParameterSet sps = new SeqParameterSet();
+        sps.picWidthInMbsMinus1 = 10;
+        sps.picHeightInMapUnitsMinus1 = 8;
+        sps.frameMbsOnlyFlag = true;
+        DeblockerInput di = new DeblockerInput(sps);
+        assertTrue(di.fits(sps));
+
+        // Same dimensions, the filter for 8 bit can't be reused for 10 bit
+        SeqParameterSet hiBD = new SeqParameterSet();
+        hiBD.picWidthInMbsMinus1 = 10;
+        hiBD.picHeightInMapUnitsMinus1 = 8;
+        hiBD.frameMbsOnlyFlag = true;
+        hiBD.bitDepthChromaMinus8 = 2;
+        assertFalse(di.fits(hiBD));
+        hiBD.bitDepthChromaMinus8 = 0;
+        hiBD.bitDepthLumaMinus8 = 2;
+        assertFalse(di.fits(hiBD));
+    }
+
+    private static List<ByteBuffer> readFrames(String path) throws IOException {
+        BufferH264ES es = new BufferH264ES(NIOUtils.fetchFromFile(new File(path)));
+        List<ByteBuffer> frames = new ArrayList<ByteBuffer>();
+        Packet packet;
+        while ((packet = es.nextFrame()) != null)
+            frames.add(NIOUtils.clone(packet.getData()));
+        return frames;
+    }
+
+    private static List<ByteBuffer> copy(List<ByteBuffer> frames) {
+        List<ByteBuffer> result = new ArrayList<ByteBuffer>();
+        for (ByteBuffer frame : frames)
+            result.add(NIOUtils.clone(frame));
+        return result;
+    }
+}
@@ -0,0 +1,135 @@
+package org.jcodec.codecs.h264;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.jcodec.codecs.h264.decode.H264Kernels;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The vectorized kernels must produce exactly what the scalar ones do. Runs
+ * only on a JVM started with '--add-modules jdk.incubator.vector'.
+ */
+public class H264KernelsTest {
+
+    private static final int PIC_W = 64;
+    private static final int PIC_H = 48;
+    private static final int[] SIZES = { 2, 4, 8, 16 };
+
+    private H264Kernels scalar;
+    private H264Kernels vector;
+    private Random rnd;
+
+    @Before
+    public void setUp() {
+        vector = H264Kernels.vector();
+        Assume.assumeTrue(vector != null);
+        scalar = H264Kernels.scalar();
+        rnd = new Random(17);
+    }
+
+    @Test
+    public void testLumaHalfPel() {
+        for (int i = 0; i < 200; i++) {
+            byte[] pic = randomPels(PIC_W * PIC_H);
+            for (int blkW : SIZES) {
+                if (blkW < 4)
+                    continue;
+                int blkH = SIZES[1 + rnd.nextInt(3)];
+                int x = 2 + rnd.nextInt(PIC_W - blkW - 5);
+                int y = 2 + rnd.nextInt(PIC_H - blkH - 5);
+                int off = rnd.nextInt(4);
+                byte[] expected = new byte[off + 16 * 16];
+                byte[] actual = new byte[off + 16 * 16];
+
+                scalar.lumaHalfH(pic, PIC_W, expected, off, 16, x, y, blkW, blkH);
+                vector.lumaHalfH(pic, PIC_W, actual, off, 16, x, y, blkW, blkH);
+                assertArrayEquals(expected, actual);
+
+                scalar.lumaHalfV(pic, PIC_W, expected, off, 16, x, y, blkW, blkH);
+                vector.lumaHalfV(pic, PIC_W, actual, off, 16, x, y, blkW, blkH);
+                assertArrayEquals(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testChroma() {
+        for (int i = 0; i < 200; i++) {
+            byte[] pic = randomPels(PIC_W * PIC_H);
+            for (int blkW : SIZES) {
+                if (blkW > 8)
+                    continue;
+                int blkH = SIZES[rnd.nextInt(3)];
+                int x = rnd.nextInt(PIC_W - blkW);
+                int y = rnd.nextInt(PIC_H - blkH);
+                int fracX = rnd.nextInt(8), fracY = rnd.nextInt(8);
+                byte[] expected = new byte[8 * 8];
+                byte[] actual = new byte[8 * 8];
+
+                scalar.chromaXX(pic, PIC_W, PIC_H, expected, 0, 8, x, y, fracX, fracY, blkW, blkH);
+                vector.chromaXX(pic, PIC_W, PIC_H, actual, 0, 8, x, y, fracX, fracY, blkW, blkH);
+                assertArrayEquals(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testIdct() {
+        for (int i = 0; i < 1000; i++) {
+            int[] expected = randomCoeffs(16, 1 << (6 + rnd.nextInt(8)));
+            int[] actual = Arrays.copyOf(expected, 16);
+            scalar.idct4x4(expected);
+            vector.idct4x4(actual);
+            assertArrayEquals(expected, actual);
+
+            expected = randomCoeffs(64, 1 << (6 + rnd.nextInt(8)));
+            actual = Arrays.copyOf(expected, 64);
+            scalar.idct8x8(expected);
+            vector.idct8x8(actual);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testMerge() {
+        for (int i = 0; i < 200; i++) {
+            byte[] blk0 = randomPels(256);
+            byte[] blk1 = randomPels(256);
+            for (int blkW : SIZES) {
+                int blkH = SIZES[rnd.nextInt(4)];
+                int off = rnd.nextInt(16 - blkW + 1) + 16 * rnd.nextInt(16 - blkH + 1);
+                byte[] expected = new byte[256];
+                byte[] actual = new byte[256];
+
+                scalar.average(blk0, blk1, 16, off, blkW, blkH, expected);
+                vector.average(blk0, blk1, 16, off, blkW, blkH, actual);
+                assertArrayEquals(expected, actual);
+
+                int logWD = rnd.nextInt(8);
+                int w0 = rnd.nextInt(256) - 128, w1 = rnd.nextInt(256) - 128;
+                int o0 = rnd.nextInt(256) - 128, o1 = rnd.nextInt(256) - 128;
+                scalar.weightBi(blk0, blk1, 16, off, blkW, blkH, logWD, w0, w1, o0, o1, expected);
+                vector.weightBi(blk0, blk1, 16, off, blkW, blkH, logWD, w0, w1, o0, o1, actual);
+                assertArrayEquals(expected, actual);
+            }
+        }
+    }
+
+    private byte[] randomPels(int size) {
+        byte[] result = new byte[size];
+        rnd.nextBytes(result);
+        return result;
+    }
+
+    private int[] randomCoeffs(int size, int range) {
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++)
+            result[i] = rnd.nextInt(2 * range) - range;
+        return result;
+    }
+}
@@ -1,11 +1,13 @@
 package org.jcodec.codecs.h264;
 import org.jcodec.codecs.common.biari.MDecoder;
+import org.jcodec.codecs.common.biari.MEncoder;
 import org.jcodec.codecs.h264.io.CABAC;
 import org.jcodec.codecs.h264.io.model.SliceType;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.nio.ByteBuffer;
+import java.util.Random;
 
 public class MDecoderTest {
 
@@ -93,6 +95,134 @@ public class MDecoderTest {
         }
     }
 
+    @Test
+    public void testBypassRuns() {
+        Random rnd = new Random(42);
+        int n = 3000;
+        int[] kind = new int[n], ctx = new int[n], bin = new int[n], k = new int[n], value = new int[n];
+        ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+        MEncoder encoder = new MEncoder(buf, models());
+        for (int i = 0; i < n; i++) {
+            // A context coded bin moves the range around, then a UEG0 suffix,
+            // a UEG3 suffix or a plain run of bypass bins
+            ctx[i] = 60 + rnd.nextInt(400);
+            bin[i] = rnd.nextInt(4) == 0 ? 1 : 0;
+            encoder.encodeBin(ctx[i], bin[i]);
+            kind[i] = rnd.nextInt(3);
+            k[i] = rnd.nextInt(i < 100 ? 22 : 8);
+            int valueBits = kind[i] == 0 ? k[i] : kind[i] == 1 ? k[i] + 3 : k[i] + 1;
+            value[i] = rnd.nextInt(1 << valueBits);
+            if (kind[i] != 2) {
+                for (int j = 0; j < k[i]; j++)
+                    encoder.encodeBinBypass(1);
+                encoder.encodeBinBypass(0);
+            }
+            for (int j = valueBits - 1; j >= 0; j--)
+                encoder.encodeBinBypass((value[i] >> j) & 1);
+        }
+        encoder.encodeBinFinal(1);
+        encoder.finishEncoding();
+        buf.flip();
+
+        MDecoder perBin = new MDecoder(buf.duplicate(), models());
+        MDecoder runs = new MDecoder(buf.duplicate(), models());
+        for (int i = 0; i < n; i++) {
+            Assert.assertEquals(bin[i], perBin.decodeBin(ctx[i]));
+            Assert.assertEquals(bin[i], runs.decodeBin(ctx[i]));
+            if (kind[i] == 0) {
+                int expected = value[i] + (1 << k[i]) - 1;
+                Assert.assertEquals("UEG0 " + i, expected, ueg0PerBin(perBin));
+                Assert.assertEquals("UEG0 " + i, expected, ueg0Runs(runs));
+            } else if (kind[i] == 1) {
+                int expected = value[i] + (1 << (k[i] + 3)) - 8;
+                Assert.assertEquals("UEG3 " + i, expected, ueg3PerBin(perBin));
+                Assert.assertEquals("UEG3 " + i, expected, ueg3Runs(runs));
+            } else {
+                int expected = 0;
+                for (int j = 0; j < k[i] + 1; j++)
+                    expected = (expected << 1) | perBin.decodeBinBypass();
+                Assert.assertEquals(value[i], expected);
+                Assert.assertEquals(value[i], runs.decodeBinsBypass(k[i] + 1));
+            }
+        }
+        Assert.assertEquals(1, perBin.decodeFinalBin());
+        Assert.assertEquals(1, runs.decodeFinalBin());
+    }
+
+    @Test
+    public void testUnaryBypassMax() {
+        ByteBuffer buf = ByteBuffer.allocate(64);
+        MEncoder encoder = new MEncoder(buf, models());
+        int[] bins = { 1, 1, 1, 1, 1, 0, 1, 1, 0, 0 };
+        for (int b : bins)
+            encoder.encodeBinBypass(b);
+        encoder.encodeBinFinal(1);
+        encoder.finishEncoding();
+        buf.flip();
+
+        MDecoder decoder = new MDecoder(buf, models());
+        // stops at 'max' ones without reading the zero
+        Assert.assertEquals(3, decoder.decodeUnaryBypass(3));
+        Assert.assertEquals(2, decoder.decodeUnaryBypass(10));
+        Assert.assertEquals(2, decoder.decodeUnaryBypass(10));
+        Assert.assertEquals(0, decoder.decodeUnaryBypass(10));
+        Assert.assertEquals(1, decoder.decodeFinalBin());
+    }
+
+    private static int[][] models() {
+        int[][] cm = new int[2][1024];
+        new CABAC(1).initModels(cm, SliceType.P, 1, 30);
+        return cm;
+    }
+
+    /**
+     * Coefficient level suffix the way it was read before decodeUnaryBypass,
+     * bin by bin.
+     */
+    private static int ueg0PerBin(MDecoder decoder) {
+        int log = -2, add = 0, sum = 0, b;
+        do {
+            log++;
+            b = decoder.decodeBinBypass();
+        } while (b != 0);
+
+        for (; log >= 0; log--) {
+            add |= decoder.decodeBinBypass() << log;
+            sum += 1 << log;
+        }
+        return add + sum;
+    }
+
+    /**
+     * Mvd suffix the way it was read before decodeUnaryBypass, bin by bin.
+     */
+    private static int ueg3PerBin(MDecoder decoder) {
+        int log = 2, add = 0, sum = 0, leftover = 0, b;
+        do {
+            sum += leftover;
+            log++;
+            b = decoder.decodeBinBypass();
+            leftover = 1 << log;
+        } while (b != 0);
+
+        --log;
+
+        for (; log >= 0; log--) {
+            add |= decoder.decodeBinBypass() << log;
+        }
+        return add + sum;
+    }
+
+    private static int ueg0Runs(MDecoder decoder) {
+        int k = decoder.decodeUnaryBypass(24);
+        return decoder.decodeBinsBypass(k) + (1 << k) - 1;
+    }
+
+    private static int ueg3Runs(MDecoder decoder) {
+        int k = decoder.decodeUnaryBypass(24);
+        return decoder.decodeBinsBypass(k + 3) + (1 << (k + 3)) - 8;
+    }
+
     byte[] shortArray2ByteArray(short[] src) {
         byte[] result = new byte[src.length];
         for (int i = 0; i < src.length; i++) {
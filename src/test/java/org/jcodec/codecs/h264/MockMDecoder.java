@@ -38,4 +38,20 @@ public class MockMDecoder extends MDecoder {
         Assert.assertEquals(m[pos], -1);
         return out[pos++];
     }
-}
\ No newline at end of file
+
+    @Override
+    public int decodeBinsBypass(int n) {
+        int val = 0;
+        for (int i = 0; i < n; i++)
+            val = (val << 1) | decodeBinBypass();
+        return val;
+    }
+
+    @Override
+    public int decodeUnaryBypass(int max) {
+        int n = 0;
+        while (n < max && decodeBinBypass() == 1)
+            n++;
+        return n;
+    }
+}
@@ -1,5 +1,8 @@
 package org.jcodec.codecs.png;
 
+import static org.jcodec.codecs.png.PNGConsts.TAG_IDAT;
+import static org.jcodec.codecs.png.PNGConsts.TAG_IHDR;
+
 import org.jcodec.common.VideoCodecMeta;
 import org.jcodec.common.model.ColorSpace;
 import org.jcodec.common.model.Picture;
@@ -7,9 +10,15 @@ import org.jcodec.scale.AWTUtil;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 public class PNGEncoderTest {
     @Test
@@ -23,6 +32,159 @@ public class PNGEncoderTest {
         Assert.assertArrayEquals(original.getPlaneData(0), decoded.getPlaneData(0));
     }
 
+    @Test
+    public void testParallelBands() {
+        Picture original = gradient(640, 480, ColorSpace.RGB);
+        for (int level = 0; level <= 9; level += 3) {
+            PNGEncoder encoder = PNGEncoder.createPNGEncoder(level, 4);
+            ByteBuffer encoded = encoder.encodeFrame(original,
+                    ByteBuffer.allocate(encoder.estimateBufferSize(original))).getData();
+
+            Picture decoded = decode(encoded);
+            Assert.assertArrayEquals(original.getPlaneData(0), decoded.getPlaneData(0));
+        }
+    }
+
+    @Test
+    public void testWideFewRows() {
+        // More bands worth of data than rows
+        for (int height = 1; height <= 5; height++) {
+            Picture original = gradient(100000, height, ColorSpace.RGB);
+            PNGEncoder encoder = PNGEncoder.createPNGEncoder(6, 4);
+            ByteBuffer encoded = encoder.encodeFrame(original,
+                    ByteBuffer.allocate(encoder.estimateBufferSize(original))).getData();
+
+            Picture decoded = decode(encoded);
+            Assert.assertArrayEquals(original.getPlaneData(0), decoded.getPlaneData(0));
+        }
+    }
+
+    @Test
+    public void testRGBA() throws DataFormatException {
+        int width = 320, height = 400;
+        Picture original = gradient(width, height, ColorSpace.RGBA);
+        PNGEncoder encoder = PNGEncoder.createPNGEncoder(Deflater.DEFAULT_COMPRESSION, 3);
+        ByteBuffer encoded = encoder.encodeFrame(original,
+                ByteBuffer.allocate(encoder.estimateBufferSize(original))).getData();
+
+        byte[] raw = inflateIDAT(encoded);
+        byte[] unfiltered = unfilter(raw, width * 4, 4, height);
+        byte[] pix = original.getPlaneData(0);
+        for (int i = 0; i < pix.length; i++)
+            Assert.assertEquals(pix[i] + 128, unfiltered[i] & 0xff);
+    }
+
+    @Test
+    public void testHiBD() throws DataFormatException {
+        int width = 256, height = 300;
+        Picture original = Picture.createCroppedHiBD(width, height, 2, ColorSpace.RGB, null);
+        byte[] pix = original.getPlaneData(0);
+        byte[] low = original.getLowBits()[0];
+        Random rnd = new Random(42);
+        for (int i = 0; i < pix.length; i++) {
+            pix[i] = (byte) (rnd.nextInt(256) - 128);
+            low[i] = (byte) rnd.nextInt(4);
+        }
+        PNGEncoder encoder = PNGEncoder.createPNGEncoder(6, 2);
+        ByteBuffer encoded = encoder.encodeFrame(original,
+                ByteBuffer.allocate(encoder.estimateBufferSize(original))).getData();
+
+        byte[] unfiltered = unfilter(inflateIDAT(encoded), width * 6, 6, height);
+        for (int i = 0; i < pix.length; i++) {
+            int val = ((unfiltered[2 * i] & 0xff) << 8) | (unfiltered[2 * i + 1] & 0xff);
+            Assert.assertEquals(((pix[i] + 128) << 2) + low[i], val >> 6);
+        }
+    }
+
+    @Test
+    public void testAdler32Combine() {
+        byte[] data = new byte[10000];
+        new Random(1).nextBytes(data);
+        Adler32 all = new Adler32();
+        all.update(data);
+        Adler32 a = new Adler32();
+        a.update(data, 0, 3777);
+        Adler32 b = new Adler32();
+        b.update(data, 3777, data.length - 3777);
+        Assert.assertEquals(all.getValue(), PNGEncoder.adler32Combine(a.getValue(), b.getValue(), data.length - 3777));
+    }
+
+    private static Picture gradient(int width, int height, ColorSpace color) {
+        Picture pic = Picture.create(width, height, color);
+        byte[] pix = pic.getPlaneData(0);
+        Random rnd = new Random(7);
+        for (int y = 0, off = 0; y < height; y++) {
+            for (int x = 0; x < width * color.nComp; x++, off++) {
+                pix[off] = (byte) (((x + y) & 0xff) - 128 + rnd.nextInt(3));
+            }
+        }
+        return pic;
+    }
+
+    private static byte[] inflateIDAT(ByteBuffer encoded) throws DataFormatException {
+        ByteBuffer data = encoded.duplicate();
+        data.position(8);
+        ByteArrayOutputStream idat = new ByteArrayOutputStream();
+        while (data.remaining() >= 8) {
+            int length = data.getInt();
+            int tag = data.getInt();
+            if (tag == TAG_IDAT) {
+                byte[] chunk = new byte[length];
+                data.get(chunk);
+                idat.write(chunk, 0, length);
+            } else {
+                Assert.assertTrue(tag != TAG_IHDR || length == 13);
+                data.position(data.position() + length);
+            }
+            data.getInt();
+        }
+        // Zlib wrapper makes the inflater verify the combined Adler-32
+        Inflater inflater = new Inflater();
+        inflater.setInput(idat.toByteArray());
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] buf = new byte[1 << 16];
+        while (!inflater.finished()) {
+            int count = inflater.inflate(buf);
+            Assert.assertFalse(count == 0 && inflater.needsInput());
+            result.write(buf, 0, count);
+        }
+        return result.toByteArray();
+    }
+
+    private static byte[] unfilter(byte[] raw, int stride, int bpp, int height) {
+        Assert.assertEquals((stride + 1) * height, raw.length);
+        byte[] result = new byte[stride * height];
+        for (int y = 0; y < height; y++) {
+            int filter = raw[y * (stride + 1)];
+            for (int x = 0; x < stride; x++) {
+                int v = raw[y * (stride + 1) + 1 + x] & 0xff;
+                int a = x >= bpp ? result[y * stride + x - bpp] & 0xff : 0;
+                int b = y > 0 ? result[(y - 1) * stride + x] & 0xff : 0;
+                int c = x >= bpp && y > 0 ? result[(y - 1) * stride + x - bpp] & 0xff : 0;
+                int pred;
+                switch (filter) {
+                case 0:
+                    pred = 0;
+                    break;
+                case 1:
+                    pred = a;
+                    break;
+                case 2:
+                    pred = b;
+                    break;
+                case 3:
+                    pred = (a + b) >> 1;
+                    break;
+                default:
+                    int p = a + b - c, pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+                    pred = pa <= pb && pa <= pc ? a : (pb <= pc ? b : c);
+                }
+                result[y * stride + x] = (byte) (v + pred);
+            }
+        }
+        return result;
+    }
+
     private static Picture decode(ByteBuffer encoded) {
         PNGDecoder pngDec = new PNGDecoder();
         VideoCodecMeta codecMeta = pngDec.getCodecMeta(encoded);
@@ -30,4 +192,4 @@ public class PNGEncoderTest {
                 ColorSpace.RGB);
         return pngDec.decodeFrame(encoded, pic.getData());
     }
-}
\ No newline at end of file
+}
@@ -2,9 +2,11 @@ package org.jcodec.codecs.vp8;
 
 import org.jcodec.Utils;
 import org.jcodec.codecs.vpx.VP8Decoder;
+import org.jcodec.codecs.vpx.VP8Encoder;
 import org.jcodec.common.io.NIOUtils;
 import org.jcodec.common.model.ColorSpace;
 import org.jcodec.common.model.Picture;
+import org.jcodec.common.tools.MD5;
 import org.jcodec.scale.AWTUtil;
 import org.junit.Assert;
 import org.junit.Before;
@@ -39,6 +41,88 @@ public class VP8DecoderTest {
 		AWTUtil.writePNG(decoded, Utils.tildeExpand("~/decoded.pic.png"));
 	}
 
+	@Test
+	public void testThreadedMatchesSingleThreaded() throws Exception {
+		Picture single = VP8Decoder.createVP8Decoder(1).decodeFrame(bb.duplicate(),
+				Picture.create(1920, 1088, ColorSpace.YUV420).getData());
+		VP8Decoder threaded = VP8Decoder.createVP8Decoder(4);
+		for (int i = 0; i < 2; i++) {
+			Picture decoded = threaded.decodeFrame(bb.duplicate(),
+					Picture.create(1920, 1088, ColorSpace.YUV420).getData());
+			Assert.assertEquals(1920, decoded.getWidth());
+			Assert.assertEquals(1080, decoded.getHeight());
+			for (int p = 0; p < 3; p++)
+				Assert.assertArrayEquals(single.getPlaneData(p), decoded.getPlaneData(p));
+		}
+	}
+
+	/**
+	 * The planes of the frame as decoded by libvpx.
+	 */
+	@Test
+	public void testMatchesReference() throws Exception {
+		Picture decoded = VP8Decoder.createVP8Decoder(1).decodeFrame(bb.duplicate(),
+				Picture.create(1920, 1088, ColorSpace.YUV420).getData());
+		assertPlanesMd5(decoded, "7f48a445534c994b2fe6a6ccd642539d", "4173e8894ffa803fa46c2b410e51d604",
+				"24983d3ce069a089f8ec387367a1af6f");
+	}
+
+	/**
+	 * A frame of 4 token partitions from VP8Encoder, checked against libvpx
+	 * single threaded and with the partitions decoded in parallel.
+	 */
+	@Test
+	public void testPartitionsMatchReference() throws Exception {
+		ByteBuffer frame = NIOUtils.fetchFromFile(new File("src/test/resources/fr4parts.vp8"));
+		for (int nThreads : new int[] { 1, 2, 4 }) {
+			VP8Decoder decoder = VP8Decoder.createVP8Decoder(nThreads);
+			for (int i = 0; i < 2; i++) {
+				Picture decoded = decoder.decodeFrame(frame.duplicate(),
+						Picture.create(320, 240, ColorSpace.YUV420).getData());
+				assertPlanesMd5(decoded, "966d56e67cbad478cbc4de7c1154319b", "1182b2d33166246b76d8be4a1d180d9b",
+						"1764fddf9c7710d15bbed9e765a3da0c");
+			}
+		}
+	}
+
+	private static void assertPlanesMd5(Picture pic, String... expected) {
+		for (int p = 0; p < 3; p++) {
+			int width = p == 0 ? pic.getWidth() : (pic.getWidth() + 1) >> 1;
+			int height = p == 0 ? pic.getHeight() : (pic.getHeight() + 1) >> 1;
+			byte[] data = pic.getPlaneData(p);
+			byte[] plane = new byte[width * height];
+			for (int y = 0; y < height; y++)
+				for (int x = 0; x < width; x++)
+					plane[y * width + x] = (byte) (data[y * pic.getPlaneWidth(p) + x] + 128);
+			Assert.assertEquals("plane " + p, expected[p], MD5.md5sumBytes(plane));
+		}
+	}
+
+	@Test
+	public void testEncodeDecode() throws Exception {
+		Picture pic = Picture.create(176, 144, ColorSpace.YUV420);
+		for (int p = 0; p < 3; p++) {
+			byte[] data = pic.getPlaneData(p);
+			int width = pic.getPlaneWidth(p);
+			for (int i = 0; i < data.length; i++)
+				data[i] = (byte) ((((i % width) * 3 + (i / width) * 2 + p * 40) & 0xff) - 128);
+		}
+		ByteBuffer frame = VP8Encoder.createVP8Encoder(10).encodeFrame(pic, ByteBuffer.allocate(176 * 144 * 4))
+				.getData();
+
+		Picture decoded = dec.decodeFrame(frame, Picture.create(176, 144, ColorSpace.YUV420).getData());
+		for (int p = 0; p < 3; p++) {
+			byte[] orig = pic.getPlaneData(p);
+			byte[] dest = decoded.getPlaneData(p);
+			int n = pic.getPlaneWidth(p) * pic.getPlaneHeight(p);
+			long se = 0;
+			for (int i = 0; i < n; i++)
+				se += (orig[i] - dest[i]) * (orig[i] - dest[i]);
+			double psnr = 10 * Math.log10(255.0 * 255.0 * n / Math.max(se, 1));
+			Assert.assertTrue("PSNR " + psnr, psnr > 35);
+		}
+	}
+
 	public void pysch() throws Exception {
 		int mbWidth = 4;
 		int mbHeight = 2;
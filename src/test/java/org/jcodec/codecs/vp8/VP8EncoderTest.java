@@ -1,11 +1,19 @@
 package org.jcodec.codecs.vp8;
 import static org.jcodec.codecs.vp8.VP8EncoderTest.LinearAlgebraUtil.substractScalar;
 
+import org.jcodec.codecs.vpx.NopRateControl;
+import org.jcodec.codecs.vpx.RateControl;
 import org.jcodec.codecs.vpx.VP8DCT;
+import org.jcodec.codecs.vpx.VP8Decoder;
+import org.jcodec.codecs.vpx.VP8Encoder;
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Picture;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.lang.System;
+import java.nio.ByteBuffer;
+import java.util.Random;
 
 /**
  * @see http://multimedia.cx/eggs/category/vp8/
@@ -216,6 +224,170 @@ public class VP8EncoderTest {
                    1,   0,  -2,   1}, transformed);
     }
     
+    @Test
+    public void testTokenPartitions() {
+        Picture pic = createPicture(200, 120);
+        Picture reference = null;
+        for (int nPartitions = 1; nPartitions <= 8; nPartitions <<= 1) {
+            VP8Encoder encoder = VP8Encoder.createVP8Encoder(new NopRateControl(30), nPartitions, 4);
+            ByteBuffer buf = ByteBuffer.allocate(200 * 120 * 3);
+            byte[] first = toArray(encoder.encodeFrame(pic, buf).getData());
+            // The state reused from the previous frame must not leak into the next one
+            byte[] second = toArray(encoder.encodeFrame(pic, buf).getData());
+            Assert.assertArrayEquals(first, second);
+
+            Picture decoded = VP8Decoder.createVP8Decoder(4).decodeFrame(ByteBuffer.wrap(first),
+                    Picture.create(208, 128, ColorSpace.YUV420).getData());
+            for (int p = 0; p < 3; p++)
+                Assert.assertTrue("PSNR plane " + p, psnr(pic, decoded, p) > 35);
+            if (reference == null)
+                reference = decoded;
+            for (int p = 0; p < 3; p++)
+                Assert.assertArrayEquals(reference.getPlaneData(p), decoded.getPlaneData(p));
+        }
+    }
+
+    @Test
+    public void testQualityFollowsQp() {
+        Picture pic = createPicture(176, 144);
+        int prevSize = Integer.MAX_VALUE;
+        double prevPsnr = Double.MAX_VALUE;
+        for (int qp = 0; qp < 128; qp += 42) {
+            ByteBuffer frame = VP8Encoder.createVP8Encoder(qp).encodeFrame(pic, ByteBuffer.allocate(176 * 144 * 3))
+                    .getData();
+            Picture decoded = VP8Decoder.createVP8Decoder(1).decodeFrame(frame.duplicate(),
+                    Picture.create(176, 144, ColorSpace.YUV420).getData());
+            double psnr = psnr(pic, decoded, 0);
+            Assert.assertTrue(frame.remaining() < prevSize);
+            Assert.assertTrue(psnr < prevPsnr);
+            prevSize = frame.remaining();
+            prevPsnr = psnr;
+        }
+    }
+
+    @Test
+    public void testRateControlPerMacroblock() {
+        Picture pic = createPicture(64, 48);
+        RecordingRateControl rc = new RecordingRateControl();
+        VP8Encoder encoder = VP8Encoder.createVP8Encoder(rc, 1, 1);
+        encoder.encodeFrame(pic, ByteBuffer.allocate(encoder.estimateBufferSize(pic)));
+        // One thread: the size of every macroblock is known before the
+        // segment of the next one is chosen
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 12; i++)
+            expected.append("sr");
+        Assert.assertEquals(expected.toString(), rc.calls.toString());
+
+        rc.calls.setLength(0);
+        encoder = VP8Encoder.createVP8Encoder(rc, 4, 4);
+        encoder.encodeFrame(pic, ByteBuffer.allocate(encoder.estimateBufferSize(pic)));
+        // Parallel rows: all the segments first, then all the sizes
+        expected.setLength(0);
+        for (int i = 0; i < 12; i++)
+            expected.append('s');
+        for (int i = 0; i < 12; i++)
+            expected.append('r');
+        Assert.assertEquals(expected.toString(), rc.calls.toString());
+    }
+
+    @Test
+    public void testEstimateBufferSize() {
+        // Noise at the finest quantizer, the worst case for the frame size
+        Picture pic = Picture.create(96, 64, ColorSpace.YUV420J);
+        Random random = new Random(42);
+        for (int p = 0; p < 3; p++) {
+            byte[] data = pic.getPlaneData(p);
+            for (int i = 0; i < data.length; i++)
+                data[i] = (byte) (random.nextInt(256) - 128);
+        }
+        for (int nPartitions = 1; nPartitions <= 8; nPartitions <<= 1) {
+            VP8Encoder encoder = VP8Encoder.createVP8Encoder(new NopRateControl(0), nPartitions, 2);
+            int estimate = encoder.estimateBufferSize(pic);
+            ByteBuffer frame = encoder.encodeFrame(pic, ByteBuffer.allocate(estimate)).getData();
+            Assert.assertTrue(frame.remaining() <= estimate);
+        }
+    }
+
+    @Test
+    public void testLargeTokens() {
+        // Full swing texture at the finest quantizer, more than 1K of
+        // DCT_CAT6 tokens per macroblock
+        Picture pic = Picture.create(96, 64, ColorSpace.YUV420J);
+        for (int p = 0; p < 3; p++) {
+            byte[] data = pic.getPlaneData(p);
+            int w = pic.getPlaneWidth(p);
+            for (int i = 0; i < data.length; i++) {
+                int x = i % w, y = i / w;
+                data[i] = (byte) (((x * 7 + y * 13 + x * y) & 3) < 2 ? 127 : -128);
+            }
+        }
+        for (int nPartitions = 1; nPartitions <= 4; nPartitions <<= 1) {
+            VP8Encoder encoder = VP8Encoder.createVP8Encoder(new NopRateControl(0), nPartitions, 2);
+            ByteBuffer frame = encoder.encodeFrame(pic, ByteBuffer.allocate(encoder.estimateBufferSize(pic)))
+                    .getData();
+            Assert.assertTrue(frame.remaining() > 24 << 10);
+            // The frame doesn't fit, it's returned in a buffer of its own
+            ByteBuffer small = encoder.encodeFrame(pic, ByteBuffer.allocate(1024)).getData();
+            Assert.assertArrayEquals(toArray(frame), toArray(small));
+
+            Picture decoded = VP8Decoder.createVP8Decoder(1).decodeFrame(frame,
+                    Picture.create(96, 64, ColorSpace.YUV420).getData());
+            for (int p = 0; p < 3; p++)
+                Assert.assertTrue("PSNR plane " + p, psnr(pic, decoded, p) > 40);
+        }
+    }
+
+    private static class RecordingRateControl implements RateControl {
+        private StringBuilder calls = new StringBuilder();
+
+        public int[] getSegmentQps() {
+            return new int[] { 30 };
+        }
+
+        public int getSegment() {
+            calls.append('s');
+            return 0;
+        }
+
+        public void report(int bits) {
+            calls.append('r');
+        }
+
+        public void reset() {
+        }
+    }
+
+    private static Picture createPicture(int width, int height) {
+        Picture pic = Picture.create(width, height, ColorSpace.YUV420J);
+        Random random = new Random(42);
+        for (int p = 0; p < 3; p++) {
+            byte[] data = pic.getPlaneData(p);
+            int w = pic.getPlaneWidth(p);
+            for (int i = 0; i < data.length; i++) {
+                int x = i % w, y = i / w;
+                int v = ((x / 7) & 1) == 0 ? x * 2 + y : 200 - y + (x * y >> 5);
+                data[i] = (byte) (Math.max(0, Math.min(255, v + random.nextInt(9) + p * 20)) - 128);
+            }
+        }
+        return pic;
+    }
+
+    private static double psnr(Picture orig, Picture decoded, int plane) {
+        byte[] a = orig.getPlaneData(plane);
+        byte[] b = decoded.getPlaneData(plane);
+        int n = orig.getPlaneWidth(plane) * orig.getPlaneHeight(plane);
+        long se = 0;
+        for (int i = 0; i < n; i++)
+            se += (a[i] - b[i]) * (a[i] - b[i]);
+        return 10 * Math.log10(255.0 * 255.0 * n / Math.max(se, 1));
+    }
+
+    private static byte[] toArray(ByteBuffer buf) {
+        byte[] result = new byte[buf.remaining()];
+        buf.duplicate().get(result);
+        return result;
+    }
+
     public static class LinearAlgebraUtil {
         
         public static int[] multiplyByScalar(int[] vector, int scalar){
@@ -4,6 +4,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.nio.ByteBuffer;
+import java.util.Random;
 
 public class BooleanEncoderTest {
 
@@ -42,6 +43,32 @@ public class BooleanEncoderTest {
         Assert.assertArrayEquals(asByteArray(expected), NIOUtils.toArray(out));
     }
     
+    @Test
+    public void testGrowable() {
+        Random random = new Random(42);
+        int[] probs = new int[10000];
+        int[] bits = new int[probs.length];
+        ByteBuffer out = ByteBuffer.allocate(probs.length);
+        VPXBooleanEncoder fixed = new VPXBooleanEncoder(out);
+        VPXBooleanEncoder growable = VPXBooleanEncoder.createGrowable(16);
+        for (int i = 0; i < probs.length; i++) {
+            probs[i] = 1 + random.nextInt(255);
+            bits[i] = random.nextInt(2);
+            fixed.writeBit(probs[i], bits[i]);
+            growable.writeBit(probs[i], bits[i]);
+        }
+        fixed.stop();
+        growable.stop();
+        out.flip();
+        ByteBuffer grown = growable.getBuffer();
+        grown.flip();
+        Assert.assertArrayEquals(NIOUtils.toArray(out), NIOUtils.toArray(grown.duplicate()));
+
+        VPXBooleanDecoder decoder = new VPXBooleanDecoder(grown, 0);
+        for (int i = 0; i < probs.length; i++)
+            Assert.assertEquals(bits[i], decoder.readBit(probs[i]));
+    }
+
     byte[] asByteArray(short[] src) {
         byte[] result = new byte[src.length];
         for (int i = 0; i < src.length; i++) {
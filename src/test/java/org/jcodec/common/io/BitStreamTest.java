@@ -15,6 +15,8 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.lang.System;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
 import net.sourceforge.jaad.aac.AACException;
 import net.sourceforge.jaad.aac.syntax.BitStream;
 import net.sourceforge.jaad.aac.syntax.IBitStream;
@@ -374,6 +376,58 @@ public class BitStreamTest {
         }
     }
 
+    @Test
+    public void testPeekSkip() throws IOException {
+        byte[] data = randomData(80000);
+
+        BitReader in1 = reader(data);
+        DummyBitstreamReader in2 = new DummyBitstreamReader(new ByteArrayInputStream(data));
+
+        Random rnd = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            int bits = 1 + rnd.nextInt(32);
+            int exp = in2.readNBit(bits);
+            assertEquals(exp, in1.peek(bits));
+            in1.skip(bits);
+            int skip = rnd.nextInt(12);
+            in2.skip(skip);
+            in1.skip(skip);
+        }
+    }
+
+    @Test
+    public void testReadUE() throws IOException {
+        Random rnd = new Random(42);
+        int[] values = new int[10000];
+        ByteBuffer buf = ByteBuffer.allocate(values.length * 8);
+        BitWriter out = new BitWriter(buf);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = rnd.nextInt(1 << rnd.nextInt(24));
+            int len = 32 - Integer.numberOfLeadingZeros(values[i] + 1);
+            out.writeNBit(0, len - 1);
+            out.writeNBit(values[i] + 1, len);
+            out.write1Bit(i & 1);
+        }
+        out.flush();
+        buf.flip();
+
+        BitReader _in = BitReader.createBitReader(buf);
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], _in.readUE());
+            assertEquals(i & 1, _in.read1Bit());
+        }
+    }
+
+    @Test
+    public void testByteOrder() throws IOException {
+        byte[] data = randomData(1000);
+        BitReader in1 = reader(data);
+        BitReader in2 = BitReader.createBitReader(ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN));
+        for (int i = 0; i < 700; i++) {
+            assertEquals(in1.readNBit(11), in2.readNBit(11));
+        }
+    }
+
     @Test
     public void testCheckSkip() throws IOException {
         byte[] data = randomData(2048);
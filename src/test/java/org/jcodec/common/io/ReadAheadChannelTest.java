@@ -0,0 +1,126 @@
+package org.jcodec.common.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ReadAheadChannelTest {
+
+    @Test
+    public void testSequentialPrefetch() throws IOException {
+        byte[] data = randomData(new Random(42), 100000);
+        File file = tempFile(data);
+        ReadAheadChannel ch = new ReadAheadChannel(new FileInputStream(file).getChannel(), 1024, 8, 2);
+        try {
+            ByteBuffer out = ByteBuffer.allocate(data.length);
+            ByteBuffer buf = ByteBuffer.allocate(7);
+            while (ch.read(buf) != -1) {
+                buf.flip();
+                out.put(buf);
+                buf.clear();
+            }
+            assertEquals(-1, ch.read(buf));
+            assertEquals(data.length, ch.position());
+            assertArrayEquals(data, out.array());
+
+            assertEquals(96, ch.getPrefetches());
+            assertEquals(96, ch.getPrefetchHits());
+            assertEquals(2, ch.getMisses());
+        } finally {
+            ch.close();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testRandomAccess() throws IOException {
+        Random rnd = new Random(42);
+        byte[] data = randomData(rnd, 50000);
+        File file = tempFile(data);
+        ReadAheadChannel ch = new ReadAheadChannel(new FileInputStream(file).getChannel(), 1000, 4, 2);
+        try {
+            for (int i = 0; i < 2000; i++) {
+                int pos = rnd.nextInt(data.length + 100);
+                // Small reads mostly, sometimes reads spanning a few blocks
+                ByteBuffer buf = ByteBuffer.allocate(1 + rnd.nextInt(i % 10 == 0 ? 5000 : 50));
+                ch.setPosition(pos);
+                int read = ch.read(buf);
+                if (pos >= data.length) {
+                    assertEquals(-1, read);
+                    continue;
+                }
+                assertEquals(Math.min(buf.capacity(), data.length - pos), read);
+                assertEquals(pos + read, ch.position());
+                for (int j = 0; j < read; j++)
+                    assertEquals(data[pos + j], buf.get(j));
+            }
+            assertTrue(ch.getHits() > 0);
+        } finally {
+            ch.close();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testGrowingFile() throws IOException {
+        byte[] data = randomData(new Random(42), 3000);
+        File file = tempFile(data);
+        ReadAheadChannel ch = new ReadAheadChannel(new FileInputStream(file).getChannel(), 1024, 8, 2);
+        try {
+            ch.setPosition(2990);
+            assertEquals(10, ch.read(ByteBuffer.allocate(100)));
+
+            FileChannelWrapper out = NIOUtils.rwChannel(file);
+            out.setPosition(3000);
+            out.write(ByteBuffer.wrap(data));
+            out.close();
+
+            ByteBuffer buf = ByteBuffer.allocate(100);
+            assertEquals(100, ch.read(buf));
+            for (int i = 0; i < 100; i++)
+                assertEquals(data[i], buf.get(i));
+        } finally {
+            ch.close();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testEmptyBuffer() throws IOException {
+        byte[] data = randomData(new Random(42), 3000);
+        File file = tempFile(data);
+        ReadAheadChannel ch = new ReadAheadChannel(new FileInputStream(file).getChannel(), 1024, 8, 2);
+        try {
+            assertEquals(0, ch.read(ByteBuffer.allocate(0)));
+            ch.setPosition(1000);
+            assertEquals(0, ch.read(ByteBuffer.allocate(0)));
+            assertEquals(1000, ch.position());
+            ch.setPosition(3000);
+            assertEquals(0, ch.read(ByteBuffer.allocate(0)));
+            assertEquals(-1, ch.read(ByteBuffer.allocate(1)));
+        } finally {
+            ch.close();
+            file.delete();
+        }
+    }
+
+    private static byte[] randomData(Random rnd, int size) {
+        byte[] data = new byte[size];
+        rnd.nextBytes(data);
+        return data;
+    }
+
+    private static File tempFile(byte[] data) throws IOException {
+        File file = File.createTempFile("readahead", ".bin");
+        NIOUtils.writeTo(ByteBuffer.wrap(data), file);
+        return file;
+    }
+}
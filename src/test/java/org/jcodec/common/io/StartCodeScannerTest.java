@@ -0,0 +1,101 @@
+package org.jcodec.common.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.jcodec.codecs.h264.H264Utils;
+import org.jcodec.common.IntArrayList;
+import org.junit.Test;
+
+public class StartCodeScannerTest {
+
+    @Test
+    public void testFindStartCode() {
+        Random rnd = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            byte[] data = randomData(rnd, rnd.nextInt(100));
+            int from = rnd.nextInt(data.length + 1);
+            int expected = naiveFind(data, from, 1);
+            assertEquals(expected, StartCodeScanner.findStartCode(ByteBuffer.wrap(data), from));
+            assertEquals(expected, StartCodeScanner.findStartCode(direct(data), from));
+            assertEquals(naiveFind(data, from, 3), StartCodeScanner.findEmulationPrevention(ByteBuffer.wrap(data), from));
+        }
+    }
+
+    @Test
+    public void testFindInSlice() {
+        byte[] data = { 0, 0, 1, 5, 5, 5, 5, 5, 5, 5, 5, 5, 0, 0, 1, 7 };
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        buf.position(3);
+        ByteBuffer slice = buf.slice();
+        assertEquals(9, StartCodeScanner.findStartCode(slice, 0));
+        slice.limit(11);
+        assertEquals(-1, StartCodeScanner.findStartCode(slice, 0));
+    }
+
+    @Test
+    public void testUnescape() {
+        Random rnd = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            byte[] data = randomData(rnd, rnd.nextInt(100));
+            byte[] expected = naiveUnescape(data);
+
+            ByteBuffer heap = ByteBuffer.wrap(data.clone());
+            StartCodeScanner.unescape(heap);
+            assertArrayEquals(expected, NIOUtils.toArray(heap));
+
+            ByteBuffer direct = direct(data);
+            StartCodeScanner.unescape(direct);
+            assertArrayEquals(expected, NIOUtils.toArray(direct));
+        }
+    }
+
+    @Test
+    public void testIndexNALUnits() {
+        byte[] data = { 0, 0, 0, 1, 0x67, 1, 2, 0, 0, 1, 0x68, 3, 0, 0, 0, 0, 1, 0x65, 4, 5, 0, 0, 1 };
+        IntArrayList index = IntArrayList.createIntArrayList();
+        assertEquals(3, H264Utils.indexNALUnits(ByteBuffer.wrap(data), index));
+        assertArrayEquals(new int[] { 4, 3, 10, 3, 17, 3 }, index.toArray());
+    }
+
+    private static int naiveFind(byte[] data, int from, int third) {
+        for (int i = from; i < data.length - 2; i++)
+            if (data[i] == 0 && data[i + 1] == 0 && data[i + 2] == third)
+                return i;
+        return -1;
+    }
+
+    private static byte[] naiveUnescape(byte[] data) {
+        ByteBuffer out = ByteBuffer.allocate(data.length);
+        int zeros = 0;
+        for (int i = 0; i < data.length; i++) {
+            if (zeros >= 2 && data[i] == 3) {
+                zeros = 0;
+                continue;
+            }
+            zeros = data[i] == 0 ? zeros + 1 : 0;
+            out.put(data[i]);
+        }
+        out.flip();
+        return NIOUtils.toArray(out);
+    }
+
+    private static byte[] randomData(Random rnd, int len) {
+        byte[] data = new byte[len];
+        for (int i = 0; i < len; i++) {
+            int k = rnd.nextInt(10);
+            data[i] = (byte) (k < 5 ? 0 : k < 7 ? 1 : k < 8 ? 3 : rnd.nextInt(256));
+        }
+        return data;
+    }
+
+    private static ByteBuffer direct(byte[] data) {
+        ByteBuffer buf = ByteBuffer.allocateDirect(data.length);
+        buf.put(data);
+        buf.flip();
+        return buf;
+    }
+}
@@ -1,9 +1,14 @@
 package org.jcodec.common.io;
+import org.jcodec.codecs.h264.H264Const;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 
 public class VLCTest {
     private final static String[] codes = { "101111110001", "1000000", "101111100101", "1000001", "101111110100",
@@ -81,4 +86,61 @@ public class VLCTest {
 
         Assert.assertArrayEquals(decoded, actual);
     }
+
+    @Test
+    public void testReadVLCMatchesTreeAndBits() {
+        List<VLC> vlcs = new ArrayList<VLC>();
+        vlcs.add(VLC.createVLC(codes));
+        vlcs.addAll(Arrays.asList(H264Const.CoeffToken).subList(0, 9));
+        vlcs.add(H264Const.coeffTokenChromaDCY420);
+        vlcs.add(H264Const.coeffTokenChromaDCY422);
+        vlcs.addAll(Arrays.asList(H264Const.run));
+        vlcs.addAll(Arrays.asList(H264Const.totalZeros16));
+        vlcs.addAll(Arrays.asList(H264Const.totalZeros4));
+        vlcs.addAll(Arrays.asList(H264Const.totalZeros8));
+
+        Random rnd = new Random(42);
+        for (VLC vlc : vlcs) {
+            int[] codes = vlc.getCodes();
+            int[] codeSizes = vlc.getCodeSizes();
+            int[] written = new int[2000];
+            ByteBuffer buf = ByteBuffer.allocate(8192);
+            BitWriter out = new BitWriter(buf);
+            for (int i = 0; i < written.length; i++) {
+                // every code at least once, the rest random
+                written[i] = i < codes.length ? i : rnd.nextInt(codes.length);
+                out.writeNBit(codes[written[i]] >>> (32 - codeSizes[written[i]]), codeSizes[written[i]]);
+            }
+            out.flush();
+            buf.flip();
+
+            BitReader fast = BitReader.createBitReader(buf.duplicate());
+            BitReader tree = BitReader.createBitReader(buf.duplicate());
+            BitReader bits = BitReader.createBitReader(buf.duplicate());
+            for (int i = 0; i < written.length; i++) {
+                Assert.assertEquals(written[i], readBitByBit(vlc, bits));
+                Assert.assertEquals(vlc.readVLC16(tree), vlc.readVLC(fast));
+                Assert.assertEquals(bits.position(), fast.position());
+                Assert.assertEquals(bits.position(), tree.position());
+            }
+        }
+    }
+
+    /**
+     * Index of the code found comparing the prefix read so far with all the
+     * codes after every bit.
+     */
+    private static int readBitByBit(VLC vlc, BitReader _in) {
+        int[] codes = vlc.getCodes();
+        int[] codeSizes = vlc.getCodeSizes();
+        int prefix = 0;
+        for (int len = 1; len <= 32; len++) {
+            prefix = (prefix << 1) | _in.read1Bit();
+            for (int i = 0; i < codes.length; i++) {
+                if (codeSizes[i] == len && (codes[i] >>> (32 - len)) == prefix)
+                    return i;
+            }
+        }
+        throw new RuntimeException("Invalid code");
+    }
 }
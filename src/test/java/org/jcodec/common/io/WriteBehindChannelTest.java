@@ -0,0 +1,91 @@
+package org.jcodec.common.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.jcodec.common.io.WriteBehindChannel.SyncPolicy;
+import org.junit.Test;
+
+public class WriteBehindChannelTest {
+
+    @Test
+    public void testSameAsDirectWrites() throws IOException {
+        Random rnd = new Random(42);
+        File file = File.createTempFile("writebehind", ".bin");
+        try {
+            ByteBuffer expected = ByteBuffer.allocate(1 << 16);
+            SeekableByteChannel direct = ByteBufferSeekableByteChannel.writeToByteBuffer(expected);
+            WriteBehindChannel ch = new WriteBehindChannel(NIOUtils.writableChannel(file), 100, 2,
+                    SyncPolicy.EVERY_BUFFER);
+            for (int i = 0; i < 1000; i++) {
+                if (i % 50 == 49) {
+                    // Back-patching of something written before, like the
+                    // mdat size
+                    long pos = rnd.nextInt((int) direct.size());
+                    direct.setPosition(pos);
+                    ch.setPosition(pos);
+                } else if (i % 50 == 0) {
+                    direct.setPosition(direct.size());
+                    ch.setPosition(ch.size());
+                }
+                byte[] data = new byte[rnd.nextInt(i % 10 == 0 ? 500 : 20)];
+                rnd.nextBytes(data);
+                assertEquals(data.length, ch.write(ByteBuffer.wrap(data)));
+                direct.write(ByteBuffer.wrap(data));
+                assertEquals(direct.position(), ch.position());
+                assertEquals(direct.size(), ch.size());
+            }
+            ch.close();
+
+            expected.position(0);
+            expected.limit((int) direct.size());
+            assertArrayEquals(NIOUtils.toArray(expected), NIOUtils.toArray(NIOUtils.fetchFromFile(file)));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testReadBack() throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(1024);
+        WriteBehindChannel ch = new WriteBehindChannel(ByteBufferSeekableByteChannel.writeToByteBuffer(buf), 16, 2,
+                SyncPolicy.NEVER);
+        ch.write(ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 }));
+        ch.setPosition(2);
+        ch.write(ByteBuffer.wrap(new byte[] { 42 }));
+        ByteBuffer read = ByteBuffer.allocate(3);
+        assertEquals(3, ch.read(read));
+        assertArrayEquals(new byte[] { 4, 5, 6 }, read.array());
+        assertEquals(6, ch.position());
+        ch.setPosition(0);
+        read.clear();
+        ch.read(read);
+        assertArrayEquals(new byte[] { 1, 2, 42 }, read.array());
+        ch.close();
+    }
+
+    @Test
+    public void testErrorReported() throws IOException {
+        SeekableByteChannel failing = new ByteBufferSeekableByteChannel(ByteBuffer.allocate(0), 0) {
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                throw new IOException("Disk full");
+            }
+        };
+        WriteBehindChannel ch = new WriteBehindChannel(failing, 16, 2, SyncPolicy.NEVER);
+        try {
+            // Reported by a later write or by the close at the latest
+            ch.write(ByteBuffer.allocate(100));
+            ch.close();
+            fail("The error of the I/O thread is lost");
+        } catch (IOException e) {
+            assertEquals("Disk full", e.getCause().getMessage());
+        }
+    }
+}
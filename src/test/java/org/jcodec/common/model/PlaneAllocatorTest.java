@@ -0,0 +1,78 @@
+package org.jcodec.common.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PlaneAllocatorTest {
+
+    @Test
+    public void testPooledReuse() {
+        PooledPlaneAllocator allocator = PooledPlaneAllocator.createPooledPlaneAllocator(1 << 20);
+        Picture pic = Picture.createWithAllocator(64, 32, ColorSpace.YUV420, allocator);
+        byte[] y = pic.getPlaneData(0);
+        byte[] u = pic.getPlaneData(1);
+        assertSame(allocator, pic.getAllocator());
+
+        pic.release();
+        assertNull(pic.getData());
+        assertEquals(64 * 32 * 3 / 2, allocator.getRetained());
+
+        Picture next = Picture.createWithAllocator(64, 32, ColorSpace.YUV420, allocator);
+        assertSame(y, next.getPlaneData(0));
+        // U and V are of the same size, either one will do
+        assertEquals(u.length, next.getPlaneData(1).length);
+        assertEquals(0, allocator.getRetained());
+
+        Picture compatible = next.createCompatible();
+        assertSame(allocator, compatible.getAllocator());
+        assertNotSame(y, compatible.getPlaneData(0));
+    }
+
+    @Test
+    public void testPooledLimit() {
+        PooledPlaneAllocator allocator = PooledPlaneAllocator.createPooledPlaneAllocator(1000);
+        allocator.release(new byte[600]);
+        allocator.release(new byte[600]);
+        assertEquals(600, allocator.getRetained());
+        allocator.allocate(600);
+        assertEquals(0, allocator.getRetained());
+    }
+
+    @Test
+    public void testOffHeapRoundTrip() {
+        Random rnd = new Random(42);
+        Picture pic = Picture.createCroppedHiBD(64, 32, 2, ColorSpace.YUV420, new Rect(0, 0, 60, 30));
+        for (byte[] plane : pic.getData())
+            rnd.nextBytes(plane);
+        for (byte[] plane : pic.getLowBits())
+            rnd.nextBytes(plane);
+
+        DirectPlaneAllocator direct = DirectPlaneAllocator.createDirectPlaneAllocator(1 << 20);
+        OffHeapPicture parked = OffHeapPicture.createOffHeapPictureWithAllocator(pic, direct);
+        assertEquals(64 * 32 * 3, parked.getSize());
+
+        Picture back = parked.toPicture(null);
+        assertEquals(pic, back);
+        assertEquals(60, back.getCroppedWidth());
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(pic.getPlaneData(i), back.getPlaneData(i));
+            assertArrayEquals(pic.getLowBits()[i], back.getLowBits()[i]);
+        }
+
+        parked.release();
+        assertEquals(0, parked.getSize());
+        assertEquals(64 * 32 * 3, direct.getRetained());
+        OffHeapPicture again = OffHeapPicture.createOffHeapPictureWithAllocator(back, direct);
+        assertEquals(0, direct.getRetained());
+        Picture copy = Picture.createWithAllocator(64, 32, ColorSpace.YUV420, null);
+        again.copyTo(copy);
+        assertArrayEquals(pic.getPlaneData(2), copy.getPlaneData(2));
+    }
+}
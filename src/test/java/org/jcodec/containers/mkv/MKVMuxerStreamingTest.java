@@ -0,0 +1,87 @@
+package org.jcodec.containers.mkv;
+
+import static org.jcodec.containers.mkv.MKVType.Cluster;
+import static org.jcodec.containers.mkv.MKVType.CueClusterPosition;
+import static org.jcodec.containers.mkv.MKVType.CuePoint;
+import static org.jcodec.containers.mkv.MKVType.Cues;
+import static org.jcodec.containers.mkv.MKVType.Seek;
+import static org.jcodec.containers.mkv.MKVType.SeekHead;
+import static org.jcodec.containers.mkv.MKVType.SeekPosition;
+import static org.jcodec.containers.mkv.MKVType.Segment;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+import org.jcodec.common.Codec;
+import org.jcodec.common.DemuxerTrack;
+import org.jcodec.common.VideoCodecMeta;
+import org.jcodec.common.io.ByteBufferSeekableByteChannel;
+import org.jcodec.common.io.NIOUtils;
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Packet;
+import org.jcodec.common.model.Packet.FrameType;
+import org.jcodec.common.model.Size;
+import org.jcodec.common.MuxerTrack;
+import org.jcodec.containers.mkv.boxes.EbmlMaster;
+import org.jcodec.containers.mkv.boxes.EbmlUint;
+import org.jcodec.containers.mkv.demuxer.MKVDemuxer;
+import org.jcodec.containers.mkv.muxer.MKVMuxer;
+import org.junit.Test;
+
+public class MKVMuxerStreamingTest {
+    private static final int FRAMES = 60;
+    private static final int GOP = 25;
+
+    @Test
+    public void testClustersAndCues() throws IOException {
+        byte[][] frames = new byte[FRAMES][];
+        Random rnd = new Random(42);
+        for (int i = 0; i < FRAMES; i++) {
+            frames[i] = new byte[100 + rnd.nextInt(1000)];
+            rnd.nextBytes(frames[i]);
+        }
+        ByteBuffer out = ByteBuffer.allocate(1 << 20);
+        ByteBufferSeekableByteChannel ch = ByteBufferSeekableByteChannel.writeToByteBuffer(out);
+        MKVMuxer muxer = new MKVMuxer(ch);
+        MuxerTrack track = muxer.addVideoTrack(Codec.VP8,
+                VideoCodecMeta.createSimpleVideoCodecMeta(new Size(320, 240), ColorSpace.YUV420));
+        for (int i = 0; i < FRAMES; i++) {
+            FrameType type = i % GOP == 0 ? FrameType.KEY : FrameType.INTER;
+            track.addFrame(Packet.createPacket(ByteBuffer.wrap(frames[i]), i + 1, 25, 1, i, type, null));
+        }
+        muxer.finish();
+        assertEquals(ch.size(), ch.position());
+
+        out.limit((int) ch.size());
+        out.position(0);
+        List<EbmlMaster> tree = new MKVParser(ByteBufferSeekableByteChannel.readFromByteBuffer(out.duplicate()))
+                .parse();
+        EbmlMaster segment = MKVType.findFirstTree(tree, new MKVType[] { Segment });
+        EbmlMaster[] clusters = MKVType.findAllTree(tree, EbmlMaster.class, new MKVType[] { Segment, Cluster });
+        EbmlMaster[] cuePoints = MKVType.findAllTree(tree, EbmlMaster.class,
+                new MKVType[] { Segment, Cues, CuePoint });
+        assertEquals(3, clusters.length);
+        assertEquals(3, cuePoints.length);
+        for (int i = 0; i < clusters.length; i++) {
+            EbmlUint pos = (EbmlUint) MKVType.findFirst(cuePoints[i], new MKVType[] { CuePoint,
+                    MKVType.CueTrackPositions, CueClusterPosition });
+            assertEquals(clusters[i].offset - segment.dataOffset, pos.getUint());
+        }
+        EbmlMaster[] seeks = MKVType.findAllTree(tree, EbmlMaster.class, new MKVType[] { Segment, SeekHead, Seek });
+        assertEquals(3, seeks.length);
+        EbmlUint cuesPos = (EbmlUint) MKVType.findFirst(seeks[2], new MKVType[] { Seek, SeekPosition });
+        EbmlMaster cues = MKVType.findFirstTree(tree, new MKVType[] { Segment, Cues });
+        assertEquals(cues.offset - segment.dataOffset, cuesPos.getUint());
+
+        MKVDemuxer demuxer = new MKVDemuxer(ByteBufferSeekableByteChannel.readFromByteBuffer(out.duplicate()));
+        DemuxerTrack video = demuxer.getVideoTracks().get(0);
+        for (int i = 0; i < FRAMES; i++)
+            assertArrayEquals(frames[i], NIOUtils.toArray(video.nextFrame().getData()));
+        assertNull(video.nextFrame());
+    }
+}
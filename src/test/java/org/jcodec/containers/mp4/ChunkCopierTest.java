@@ -0,0 +1,91 @@
+package org.jcodec.containers.mp4;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.jcodec.common.io.ByteBufferSeekableByteChannel;
+import org.jcodec.common.io.NIOUtils;
+import org.jcodec.common.io.SeekableByteChannel;
+import org.junit.Test;
+
+public class ChunkCopierTest {
+    // offset, size
+    private static final int[][] CHUNKS = { { 100, 1000 }, { 1100, 500 }, { 1600, 3000 }, { 10, 90 },
+            { 5000, 2000000 }, { 4600, 400 } };
+
+    @Test
+    public void testFiles() throws IOException {
+        byte[] data = createData();
+        File src = File.createTempFile("chunks", ".in");
+        File dst = File.createTempFile("chunks", ".out");
+        try {
+            NIOUtils.writeTo(ByteBuffer.wrap(data), src);
+            SeekableByteChannel in = NIOUtils.readableChannel(src);
+            SeekableByteChannel out = NIOUtils.writableChannel(dst);
+            try {
+                out.write(ByteBuffer.allocate(16));
+                long[] offsets = copyChunks(in, out);
+                assertEquals(16, offsets[0]);
+                assertEquals(expectedSize() + 16, out.position());
+                out.close();
+                check(data, NIOUtils.fetchFromFile(dst), offsets);
+            } finally {
+                in.close();
+                out.close();
+            }
+        } finally {
+            src.delete();
+            dst.delete();
+        }
+    }
+
+    @Test
+    public void testBuffers() throws IOException {
+        byte[] data = createData();
+        SeekableByteChannel in = ByteBufferSeekableByteChannel.readFromByteBuffer(ByteBuffer.wrap(data));
+        ByteBuffer outBuf = ByteBuffer.allocate(data.length);
+        ByteBufferSeekableByteChannel out = ByteBufferSeekableByteChannel.writeToByteBuffer(outBuf);
+        long[] offsets = copyChunks(in, out);
+        assertEquals(expectedSize(), out.position());
+        outBuf.flip();
+        check(data, outBuf, offsets);
+    }
+
+    private static long[] copyChunks(SeekableByteChannel in, SeekableByteChannel out) throws IOException {
+        ChunkCopier copier = new ChunkCopier(out);
+        long[] offsets = new long[CHUNKS.length];
+        for (int i = 0; i < CHUNKS.length; i++)
+            offsets[i] = copier.copy(in, CHUNKS[i][0], CHUNKS[i][1]);
+        copier.flush();
+        return offsets;
+    }
+
+    private static void check(byte[] data, ByteBuffer out, long[] offsets) {
+        for (int i = 0; i < CHUNKS.length; i++) {
+            byte[] expected = new byte[CHUNKS[i][1]];
+            System.arraycopy(data, CHUNKS[i][0], expected, 0, expected.length);
+            ByteBuffer actual = out.duplicate();
+            actual.position((int) offsets[i]);
+            actual.limit(actual.position() + expected.length);
+            assertArrayEquals(expected, NIOUtils.toArray(actual));
+        }
+    }
+
+    private static int expectedSize() {
+        int size = 0;
+        for (int[] chunk : CHUNKS)
+            size += chunk[1];
+        return size;
+    }
+
+    private static byte[] createData() {
+        byte[] data = new byte[2100000];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) (i * 31 + (i >> 8));
+        return data;
+    }
+}
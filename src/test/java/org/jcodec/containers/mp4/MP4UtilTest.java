@@ -1,5 +1,6 @@
 package org.jcodec.containers.mp4;
 import static org.jcodec.HexDump.hexdump0;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
@@ -10,10 +11,16 @@ import org.jcodec.common.io.NIOUtils;
 import org.jcodec.containers.mp4.MP4Util.Atom;
 import org.jcodec.containers.mp4.MP4Util.Movie;
 import org.jcodec.containers.mp4.boxes.Box;
+import org.jcodec.containers.mp4.boxes.ChunkOffsetsBox;
 import org.jcodec.containers.mp4.boxes.MediaInfoBox;
 import org.jcodec.containers.mp4.boxes.MovieBox;
 import org.jcodec.containers.mp4.boxes.NodeBox;
 import org.jcodec.containers.mp4.boxes.SampleEntry;
+import org.jcodec.containers.mp4.boxes.SampleSizesBox;
+import org.jcodec.containers.mp4.boxes.SyncSamplesBox;
+import org.jcodec.containers.mp4.boxes.TimeToSampleBox;
+import org.jcodec.containers.mp4.boxes.TimeToSampleBox.TimeToSampleEntry;
+import org.jcodec.containers.mp4.boxes.TrakBox;
 import org.jcodec.containers.mp4.boxes.VideoSampleEntry;
 import org.junit.Assert;
 import org.junit.Ignore;
@@ -43,6 +50,56 @@ public class MP4UtilTest {
         assertEquals("esds", box.getFourcc());
         System.out.println(box);
     }
+    @Test
+    public void testLazy() throws Exception {
+        File f = new File("./src/test/resources/video/seq_h264_4_audio.mp4");
+        Movie movie = MP4Util.parseFullMovieLazy(f);
+        assertNotNull(movie.getFtyp());
+
+        // Nothing was accessed, the box is written back as it was in the file
+        ByteBuffer lazy = ByteBuffer.allocate(1 << 20);
+        movie.getMoov().write(lazy);
+        lazy.flip();
+        Atom atom = MP4Util.findFirstAtom("moov", new AutoFileChannelWrapper(f));
+        MappedByteBuffer orig = NIOUtils.mapFile(f);
+        orig.position((int) atom.getOffset());
+        orig.limit((int) (orig.position() + atom.getHeader().getSize()));
+        assertEquals(orig, lazy);
+
+        MovieBox eager = MP4Util.parseMovie(f);
+        TrakBox[] eagerTracks = eager.getTracks();
+        TrakBox[] lazyTracks = movie.getMoov().getTracks();
+        assertEquals(eagerTracks.length, lazyTracks.length);
+        for (int i = 0; i < eagerTracks.length; i++) {
+            assertArrayEquals(table(eagerTracks[i], SampleSizesBox.class, "stsz").getSizes(),
+                    table(lazyTracks[i], SampleSizesBox.class, "stsz").getSizes());
+            assertArrayEquals(table(eagerTracks[i], ChunkOffsetsBox.class, "stco").getChunkOffsets(),
+                    table(lazyTracks[i], ChunkOffsetsBox.class, "stco").getChunkOffsets());
+            TimeToSampleEntry[] stts = table(eagerTracks[i], TimeToSampleBox.class, "stts").getEntries();
+            TimeToSampleEntry[] lazyStts = table(lazyTracks[i], TimeToSampleBox.class, "stts").getEntries();
+            assertEquals(stts.length, lazyStts.length);
+            for (int j = 0; j < stts.length; j++)
+                assertEquals(stts[j].getSegmentDuration(), lazyStts[j].getSegmentDuration());
+            SyncSamplesBox stss = table(eagerTracks[i], SyncSamplesBox.class, "stss");
+            if (stss != null)
+                assertArrayEquals(stss.getSyncSamples(), table(lazyTracks[i], SyncSamplesBox.class, "stss")
+                        .getSyncSamples());
+        }
+
+        // Decoded lazy boxes are written the same as the ones parsed up front
+        ByteBuffer expected = ByteBuffer.allocate(1 << 20);
+        eager.write(expected);
+        expected.flip();
+        ByteBuffer actual = ByteBuffer.allocate(1 << 20);
+        movie.getMoov().write(actual);
+        actual.flip();
+        assertEquals(expected, actual);
+    }
+
+    private static <T extends Box> T table(TrakBox trak, Class<T> clazz, String fourcc) {
+        return NodeBox.findFirstPath(trak, clazz, Box.path("mdia.minf.stbl." + fourcc));
+    }
+
     @Test
     @Ignore
     public void _testName() throws Exception {
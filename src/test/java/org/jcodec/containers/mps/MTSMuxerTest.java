@@ -0,0 +1,179 @@
+package org.jcodec.containers.mps;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.jcodec.codecs.aac.ADTSParser;
+import org.jcodec.common.Codec;
+import org.jcodec.common.DemuxerTrack;
+import org.jcodec.common.MuxerTrack;
+import org.jcodec.common.io.ByteBufferSeekableByteChannel;
+import org.jcodec.common.io.NIOUtils;
+import org.jcodec.common.model.Packet;
+import org.jcodec.common.model.Packet.FrameType;
+import org.jcodec.containers.mps.psi.PMTSection;
+import org.jcodec.containers.mps.psi.PSISection;
+import org.junit.Test;
+
+public class MTSMuxerTest {
+    private static final int FRAMES = 50;
+
+    @Test
+    public void testRemux() throws IOException {
+        Random rnd = new Random(42);
+        byte[][] video = new byte[FRAMES][];
+        byte[][] audio = new byte[FRAMES * 2][];
+        for (int i = 0; i < FRAMES; i++)
+            video[i] = annexB(rnd, 10 + rnd.nextInt(i % 25 == 0 ? 20000 : 3000));
+        for (int i = 0; i < audio.length; i++)
+            audio[i] = adts(rnd, 7 + rnd.nextInt(400));
+
+        ByteBuffer out = ByteBuffer.allocate(1 << 21);
+        ByteBufferSeekableByteChannel ch = ByteBufferSeekableByteChannel.writeToByteBuffer(out);
+        MTSMuxer muxer = new MTSMuxer(ch);
+        MuxerTrack videoTrack = muxer.addVideoTrack(Codec.H264, null);
+        MuxerTrack audioTrack = muxer.addAudioTrack(Codec.AAC, null);
+        for (int i = 0; i < FRAMES; i++) {
+            FrameType type = i % 25 == 0 ? FrameType.KEY : FrameType.INTER;
+            videoTrack.addFrame(Packet.createPacket(ByteBuffer.wrap(video[i]), i, 25, 1, i, type, null));
+            for (int j = 2 * i; j < 2 * i + 2; j++)
+                audioTrack.addFrame(Packet.createPacket(ByteBuffer.wrap(audio[j]), j * 1024, 48000, 1024, j,
+                        FrameType.KEY, null));
+        }
+        muxer.finish();
+        out.flip();
+
+        checkPackets(out.duplicate());
+
+        MTSDemuxer demuxer = new MTSDemuxer(ByteBufferSeekableByteChannel.readFromByteBuffer(out.duplicate()));
+        MPSDemuxer videoDemuxer = new MPSDemuxer(demuxer.getProgram(MTSMuxer.FIRST_ES_PID));
+        DemuxerTrack vt = videoDemuxer.getVideoTracks().get(0);
+        for (int i = 0; i < FRAMES; i++) {
+            Packet pkt = vt.nextFrame();
+            assertArrayEquals(video[i], NIOUtils.toArray(pkt.getData()));
+            assertEquals(i * 3600, pkt.getPts() - pts(0));
+        }
+        assertNull(vt.nextFrame());
+
+        demuxer = new MTSDemuxer(ByteBufferSeekableByteChannel.readFromByteBuffer(out.duplicate()));
+        MPSDemuxer audioDemuxer = new MPSDemuxer(demuxer.getProgram(MTSMuxer.FIRST_ES_PID + 1));
+        DemuxerTrack at = audioDemuxer.getAudioTracks().get(0);
+        for (int i = 0; i < audio.length; i++)
+            assertArrayEquals(audio[i], NIOUtils.toArray(at.nextFrame().getData()));
+        assertNull(at.nextFrame());
+    }
+
+    @Test
+    public void testDecodeTimeStamps() throws IOException {
+        Random rnd = new Random(42);
+        // I P B B P B B ..., the presentation order is I B B P B B P
+        int[] order = { 0, 3, 1, 2, 6, 4, 5, 9, 7, 8 };
+        ByteBuffer out = ByteBuffer.allocate(1 << 20);
+        MTSMuxer muxer = new MTSMuxer(ByteBufferSeekableByteChannel.writeToByteBuffer(out));
+        MuxerTrack videoTrack = muxer.addVideoTrack(Codec.H264, null);
+        MuxerTrack audioTrack = muxer.addAudioTrack(Codec.AAC, null);
+        for (int i = 0; i < order.length; i++) {
+            FrameType type = i == 0 ? FrameType.KEY : FrameType.INTER;
+            videoTrack.addFrame(Packet.createPacket(ByteBuffer.wrap(annexB(rnd, 500)), order[i], 25, 1, i, type,
+                    null));
+            audioTrack.addFrame(Packet.createPacket(ByteBuffer.wrap(adts(rnd, 100)), i * 1024, 48000, 1024, i,
+                    FrameType.KEY, null));
+        }
+        muxer.finish();
+        out.flip();
+
+        List<PESPacket> video = pesHeaders(out.duplicate(), MTSMuxer.FIRST_ES_PID);
+        assertEquals(order.length, video.size());
+        for (int i = 0; i < order.length; i++) {
+            PESPacket pes = video.get(i);
+            assertEquals(pts(order[i] * 3600), pes.pts);
+            // in the decode order, ahead of the presentation
+            assertEquals(pts((i - 2) * 3600), pes.dts);
+            assertTrue(pes.dts <= pes.pts);
+        }
+        for (PESPacket pes : pesHeaders(out.duplicate(), MTSMuxer.FIRST_ES_PID + 1))
+            assertEquals(-1, pes.dts);
+    }
+
+    private static List<PESPacket> pesHeaders(ByteBuffer ts, int pid) {
+        List<PESPacket> result = new ArrayList<PESPacket>();
+        while (ts.hasRemaining()) {
+            ByteBuffer pkt = NIOUtils.read(ts, 188);
+            pkt.get();
+            int b = pkt.getShort() & 0xffff;
+            int flags = pkt.get() & 0xff;
+            if ((b & 0x1fff) != pid || (b & 0x4000) == 0)
+                continue;
+            if ((flags & 0x20) != 0)
+                NIOUtils.skip(pkt, pkt.get() & 0xff);
+            result.add(MPSUtils.readPESHeader(pkt, 0));
+        }
+        return result;
+    }
+
+    private static long pts(long pts) {
+        return pts + 126000;
+    }
+
+    /**
+     * Every packet is 188 bytes with a sync byte, the continuity counters go
+     * up by one on every pid, the sections have valid CRCs.
+     */
+    private static void checkPackets(ByteBuffer ts) {
+        assertEquals(0, ts.remaining() % 188);
+        int[] cc = new int[0x2000];
+        Arrays.fill(cc, -1);
+        int nPMT = 0;
+        while (ts.hasRemaining()) {
+            ByteBuffer pkt = NIOUtils.read(ts, 188);
+            assertEquals(0x47, pkt.get() & 0xff);
+            int pid = pkt.getShort() & 0x1fff;
+            int b = pkt.get() & 0xff;
+            if (cc[pid] != -1)
+                assertEquals((cc[pid] + 1) & 0xf, b & 0xf);
+            cc[pid] = b & 0xf;
+            if ((b & 0x20) != 0)
+                NIOUtils.skip(pkt, pkt.get() & 0xff);
+            if (pid == 0 || pid == MTSMuxer.PMT_PID) {
+                NIOUtils.skip(pkt, pkt.get() & 0xff);
+                int sectionLength = pkt.getShort(pkt.position() + 1) & 0xfff;
+                assertEquals(0, PSISection.crc32(pkt, pkt.position(), pkt.position() + 3 + sectionLength));
+            }
+            if (pid == MTSMuxer.PMT_PID) {
+                PMTSection pmt = PMTSection.parsePMT(pkt);
+                assertEquals(MTSMuxer.FIRST_ES_PID, pmt.getPcrPid());
+                assertEquals(MTSStreamType.VIDEO_H264, pmt.getStreams()[0].getStreamType());
+                assertEquals(MTSStreamType.AUDIO_AAC_ADTS, pmt.getStreams()[1].getStreamType());
+                nPMT++;
+            }
+        }
+        // 2 seconds, at least every 100ms and before the key frame
+        assertEquals(21, nPMT);
+    }
+
+    private static byte[] annexB(Random rnd, int len) {
+        byte[] data = new byte[len];
+        data[3] = 1;
+        data[4] = 9;
+        for (int i = 5; i < len; i++)
+            data[i] = (byte) (1 + rnd.nextInt(255));
+        return data;
+    }
+
+    private static byte[] adts(Random rnd, int len) {
+        byte[] data = new byte[len];
+        ADTSParser.write(new ADTSParser.Header(2, 2, 1, 1, 3, len), ByteBuffer.wrap(data));
+        for (int i = 7; i < len; i++)
+            data[i] = (byte) rnd.nextInt(256);
+        return data;
+    }
+}
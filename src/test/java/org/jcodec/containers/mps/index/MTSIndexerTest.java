@@ -0,0 +1,111 @@
+package org.jcodec.containers.mps.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.jcodec.common.Codec;
+import org.jcodec.common.MuxerTrack;
+import org.jcodec.common.io.ByteBufferSeekableByteChannel;
+import org.jcodec.common.io.NIOUtils;
+import org.jcodec.common.model.Packet;
+import org.jcodec.common.model.Packet.FrameType;
+import org.jcodec.containers.mps.MTSMuxer;
+import org.jcodec.containers.mps.index.MTSIndex.MTSProgram;
+import org.junit.Test;
+
+public class MTSIndexerTest {
+
+    @Test
+    public void testParallelSameAsSequential() throws IOException {
+        File ts = File.createTempFile("indexer", ".ts");
+        try {
+            NIOUtils.writeTo(muxTS(new Random(42), Integer.MAX_VALUE), ts);
+
+            MTSIndexer sequential = new MTSIndexer();
+            sequential.index(ts, null);
+            MTSIndex expected = sequential.serialize();
+            MTSProgram video = expected.getPrograms()[0];
+            assertEquals(1, video.getStreams().length);
+            assertEquals(100, video.getStreams()[0].getFsizes().length);
+            assertEquals(4, video.getStreams()[0].getSync().length);
+
+            // Ranges down to a single TS packet, so that the PES packets and
+            // the start codes are split on every possible border
+            for (int packets : new int[] { 1, 3, 17, 100, 5000 }) {
+                MTSIndexer parallel = new MTSIndexer();
+                parallel.indexParallel(ts, 3, 188 * packets, null);
+                assertArrayEquals("Range of " + packets + " packets", NIOUtils.toArray(expected.serialize()),
+                        NIOUtils.toArray(parallel.serialize().serialize()));
+            }
+        } finally {
+            ts.delete();
+        }
+    }
+
+    @Test
+    public void testPidStopsHalfway() throws IOException {
+        File ts = File.createTempFile("indexer", ".ts");
+        try {
+            // The audio ends in the middle of the video
+            NIOUtils.writeTo(muxTS(new Random(42), 70), ts);
+
+            MTSIndexer sequential = new MTSIndexer();
+            sequential.index(ts, null);
+            MTSIndex expected = sequential.serialize();
+            assertEquals(70, expected.getPrograms()[1].getStreams()[0].getFsizes().length);
+
+            for (int packets : new int[] { 1, 3, 17, 100, 5000 }) {
+                MTSIndexer parallel = new MTSIndexer();
+                parallel.indexParallel(ts, 3, 188 * packets, null);
+                assertArrayEquals("Range of " + packets + " packets", NIOUtils.toArray(expected.serialize()),
+                        NIOUtils.toArray(parallel.serialize().serialize()));
+            }
+        } finally {
+            ts.delete();
+        }
+    }
+
+    /**
+     * MPEG video elementary stream cut into PES packets at random places,
+     * unrelated to the frames or the start codes.
+     */
+    private static ByteBuffer muxTS(Random rnd, int audioFrames) throws IOException {
+        ByteArrayOutputStream es = new ByteArrayOutputStream();
+        for (int i = 0; i < 100; i++) {
+            es.write(i % 25 == 0 ? MPSIndexerTest.iFrame : MPSIndexerTest.mpegFrame(i % 25, 2));
+            byte[] data = new byte[rnd.nextInt(300)];
+            for (int j = 0; j < data.length; j++)
+                data[j] = (byte) (1 + rnd.nextInt(255));
+            es.write(data);
+        }
+        byte[] video = es.toByteArray();
+
+        ByteBuffer out = ByteBuffer.allocate(1 << 21);
+        MTSMuxer muxer = new MTSMuxer(ByteBufferSeekableByteChannel.writeToByteBuffer(out));
+        MuxerTrack videoTrack = muxer.addVideoTrack(Codec.MPEG2, null);
+        MuxerTrack audioTrack = muxer.addAudioTrack(Codec.AAC, null);
+        for (int off = 0, i = 0; off < video.length; i++) {
+            int len = Math.min(video.length - off, 1 + rnd.nextInt(i % 3 == 0 ? 10 : 400));
+            videoTrack.addFrame(Packet.createPacket(ByteBuffer.wrap(video, off, len), i, 90, 1, i,
+                    i == 0 ? FrameType.KEY : FrameType.INTER, null));
+            off += len;
+            if (i >= audioFrames)
+                continue;
+
+            byte[] audio = new byte[7 + rnd.nextInt(400)];
+            audio[0] = (byte) 0xff;
+            audio[1] = (byte) 0xf1;
+            audioTrack.addFrame(Packet.createPacket(ByteBuffer.wrap(audio), i * 1920, 48000, 1920, i,
+                    FrameType.KEY, null));
+        }
+        muxer.finish();
+        out.flip();
+        return out;
+    }
+}
@@ -0,0 +1,143 @@
+package org.jcodec.containers.mps.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.jcodec.common.Codec;
+import org.jcodec.common.MuxerTrack;
+import org.jcodec.common.io.ByteBufferSeekableByteChannel;
+import org.jcodec.common.io.NIOUtils;
+import org.jcodec.common.model.Packet;
+import org.jcodec.common.model.Packet.FrameType;
+import org.jcodec.containers.mps.MTSMuxer;
+import org.jcodec.containers.mps.index.MPSRandomAccessDemuxer.Stream;
+import org.jcodec.containers.mps.index.MappedIndex.Track;
+import org.jcodec.containers.mps.index.MappedIndexWriter.TrackWriter;
+import org.junit.Test;
+
+public class MappedIndexTest {
+    private static final int FRAMES = 60;
+
+    @Test
+    public void testSameFramesAsMTSIndex() throws IOException {
+        ByteBuffer ts = muxTS(new Random(42));
+
+        MTSIndexer indexer = new MTSIndexer();
+        indexer.indexChannel(ByteBufferSeekableByteChannel.readFromByteBuffer(ts.duplicate()), null);
+        MTSIndex index = indexer.serialize();
+
+        File indexFile = File.createTempFile("mapped", ".idx");
+        try {
+            MappedIndexWriter.writeMTS(index, indexFile);
+
+            MTSRandomAccessDemuxer legacy = new MTSRandomAccessDemuxer(
+                    ByteBufferSeekableByteChannel.readFromByteBuffer(ts.duplicate()), index);
+            MTSRandomAccessDemuxer mapped = new MTSRandomAccessDemuxer(
+                    ByteBufferSeekableByteChannel.readFromByteBuffer(ts.duplicate()), MappedIndex.open(indexFile));
+            assertArrayEquals(legacy.getGuids(), mapped.getGuids());
+
+            for (int guid : mapped.getGuids()) {
+                Stream[] streams = legacy.getProgramDemuxer(guid).getStreams();
+                MappedIndexTrack[] tracks = mapped.getMappedTracks(guid);
+                assertEquals(streams.length, tracks.length);
+                for (int s = 0; s < tracks.length; s++) {
+                    assertEquals(streams[s].getStreamId(), tracks[s].getStreamId());
+                    assertEquals(FRAMES, tracks[s].getTrack().getFrameCount());
+
+                    // The legacy stream has no duration for the last frame of
+                    // MPEG video
+                    int nFrames = Math.min(streams[s].getFsizes().length, streams[s].getFdur().length);
+                    List<Packet> expected = new ArrayList<Packet>();
+                    for (int i = 0; i < nFrames; i++)
+                        expected.add(streams[s].nextFrame());
+
+                    for (Packet pkt : expected)
+                        assertPacket(pkt, tracks[s].nextFrame());
+                    assertTrue(tracks[s].gotoFrame(FRAMES - 1));
+                    assertNotNull(tracks[s].nextFrame());
+                    assertNull(tracks[s].nextFrame());
+
+                    // Random access, backwards
+                    for (int i = expected.size() - 1; i >= 0; i -= 7) {
+                        assertTrue(tracks[s].gotoFrame(i));
+                        assertPacket(expected.get(i), tracks[s].nextFrame());
+                    }
+                }
+            }
+        } finally {
+            indexFile.delete();
+        }
+    }
+
+    @Test
+    public void testIncrementalAppend() throws IOException {
+        File indexFile = File.createTempFile("mapped", ".idx");
+        try {
+            MappedIndexWriter writer = new MappedIndexWriter(indexFile, 188);
+            TrackWriter tw = writer.addTrack(0x100, 0xe0, 1024, 1024);
+            writer.commit();
+
+            Track track = MappedIndex.open(indexFile).getTracks()[0];
+            assertEquals(0xe0, track.getStreamId());
+            assertEquals(0, track.getFrameCount());
+
+            for (int i = 0; i < 100; i++) {
+                tw.addPES(i * 188 * 10, 10, 1000);
+                tw.addFrame(i, 0, 1000, i * 3600, 3600, i % 25 == 0);
+            }
+            assertEquals(0, track.getFrameCount());
+            writer.commit();
+            assertEquals(100, track.getFrameCount());
+            assertEquals(4, track.getKeyFrameCount());
+
+            assertEquals(50, track.findKeyFrame(74));
+            assertEquals(75, track.findKeyFrame(75));
+            assertEquals(75, track.findKeyFrame(99));
+            assertEquals(25, track.findKeyFrameByPts(49 * 3600));
+            assertEquals(0, track.findKeyFrameByPts(0));
+            assertEquals(188 * 10 * 42, track.getPesPosition(track.getFramePes(42)));
+            writer.close();
+        } finally {
+            indexFile.delete();
+        }
+    }
+
+    private static void assertPacket(Packet expected, Packet actual) {
+        assertEquals(expected.getPts(), actual.getPts());
+        assertEquals(expected.getDuration(), actual.getDuration());
+        assertEquals(expected.getFrameNo(), actual.getFrameNo());
+        assertEquals(expected.isKeyFrame(), actual.isKeyFrame());
+        assertArrayEquals(NIOUtils.toArray(expected.getData()), NIOUtils.toArray(actual.getData()));
+    }
+
+    private static ByteBuffer muxTS(Random rnd) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(1 << 21);
+        MTSMuxer muxer = new MTSMuxer(ByteBufferSeekableByteChannel.writeToByteBuffer(out));
+        MuxerTrack videoTrack = muxer.addVideoTrack(Codec.MPEG2, null);
+        MuxerTrack audioTrack = muxer.addAudioTrack(Codec.AAC, null);
+        for (int i = 0; i < FRAMES; i++) {
+            byte[] video = i % 25 == 0 ? MPSIndexerTest.iFrame : MPSIndexerTest.mpegFrame(i % 25, 2);
+            videoTrack.addFrame(Packet.createPacket(ByteBuffer.wrap(video), i, 25, 1, i,
+                    i % 25 == 0 ? FrameType.KEY : FrameType.INTER, null));
+
+            byte[] audio = new byte[7 + rnd.nextInt(400)];
+            audio[0] = (byte) 0xff;
+            audio[1] = (byte) 0xf1;
+            audioTrack.addFrame(Packet.createPacket(ByteBuffer.wrap(audio), i * 1920, 48000, 1920, i,
+                    FrameType.KEY, null));
+        }
+        muxer.finish();
+        out.flip();
+        return out;
+    }
+}
@@ -0,0 +1,169 @@
+package org.jcodec.containers.segment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.jcodec.common.Codec;
+import org.jcodec.common.MuxerTrack;
+import org.jcodec.common.io.NIOUtils;
+import org.jcodec.common.model.Packet;
+import org.jcodec.common.model.Packet.FrameType;
+import org.jcodec.containers.mps.MTSMuxer;
+import org.jcodec.platform.Platform;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SegmentMuxerTest {
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("segments", "");
+        dir.delete();
+        dir.mkdir();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : dir.listFiles())
+            file.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void testHLS() throws IOException {
+        File playlist = new File(dir, "out.m3u8");
+        SegmentMuxer muxer = SegmentMuxer.createHLSMuxer(playlist, 2, 0);
+        // 1 key frame a second, 5 seconds
+        writeFrames(muxer, 125, 25);
+
+        String expected = "#EXTM3U\n" //
+                + "#EXT-X-VERSION:3\n" //
+                + "#EXT-X-TARGETDURATION:2\n" //
+                + "#EXT-X-MEDIA-SEQUENCE:0\n" //
+                + "#EXT-X-PLAYLIST-TYPE:VOD\n" //
+                + "#EXTINF:2.000,\nout0.ts\n" //
+                + "#EXTINF:2.000,\nout1.ts\n" //
+                + "#EXTINF:1.000,\nout2.ts\n" //
+                + "#EXT-X-ENDLIST\n";
+        assertEquals(expected, read(playlist));
+        for (int i = 0; i < 3; i++) {
+            ByteBuffer ts = NIOUtils.fetchFromFile(new File(dir, "out" + i + ".ts"));
+            assertEquals(0, ts.remaining() % 188);
+            // Every segment starts with PAT and PMT
+            assertEquals(0, ts.getShort(1) & 0x1fff);
+            assertEquals(MTSMuxer.PMT_PID, ts.getShort(189) & 0x1fff);
+        }
+    }
+
+    @Test
+    public void testGOPLongerThanTarget() throws IOException {
+        File playlist = new File(dir, "out.m3u8");
+        SegmentMuxer muxer = SegmentMuxer.createHLSMuxer(playlist, 1, 0);
+        // 1 key frame in 2 seconds, 4 seconds
+        writeFrames(muxer, 100, 50);
+
+        // Cut on the key frames only, the target duration follows the
+        // longest segment
+        String expected = "#EXTM3U\n" //
+                + "#EXT-X-VERSION:3\n" //
+                + "#EXT-X-TARGETDURATION:2\n" //
+                + "#EXT-X-MEDIA-SEQUENCE:0\n" //
+                + "#EXT-X-PLAYLIST-TYPE:VOD\n" //
+                + "#EXTINF:2.000,\nout0.ts\n" //
+                + "#EXTINF:2.000,\nout1.ts\n" //
+                + "#EXT-X-ENDLIST\n";
+        assertEquals(expected, read(playlist));
+        for (int i = 0; i < 2; i++) {
+            ByteBuffer ts = NIOUtils.fetchFromFile(new File(dir, "out" + i + ".ts"));
+            // The first frame of the segment is a random access point
+            int pkt = findPid(ts, MTSMuxer.FIRST_ES_PID);
+            assertTrue((ts.get(pkt + 5) & 0x40) != 0);
+        }
+    }
+
+    @Test
+    public void testContinuityAcrossSegments() throws IOException {
+        File playlist = new File(dir, "out.m3u8");
+        SegmentMuxer muxer = SegmentMuxer.createHLSMuxer(playlist, 1, 0);
+        writeFrames(muxer, 100, 25);
+
+        // The continuity counters of every PID go on from one segment into
+        // the next one
+        int[] cc = new int[0x2000];
+        Arrays.fill(cc, -1);
+        for (int i = 0; i < 4; i++) {
+            ByteBuffer ts = NIOUtils.fetchFromFile(new File(dir, "out" + i + ".ts"));
+            for (int pos = 0; pos < ts.limit(); pos += 188) {
+                assertEquals(0x47, ts.get(pos));
+                int pid = ts.getShort(pos + 1) & 0x1fff;
+                int counter = ts.get(pos + 3) & 0xf;
+                if (cc[pid] != -1)
+                    assertEquals("PID " + pid + " segment " + i, (cc[pid] + 1) & 0xf, counter);
+                cc[pid] = counter;
+            }
+        }
+        assertTrue(cc[MTSMuxer.FIRST_ES_PID] != -1);
+    }
+
+    @Test
+    public void testWindow() throws IOException {
+        File playlist = new File(dir, "live.m3u8");
+        SegmentMuxer muxer = SegmentMuxer.createHLSMuxer(playlist, 1, 2);
+        writeFrames(muxer, 250, 25);
+
+        String text = read(playlist);
+        assertTrue(text.contains("#EXT-X-MEDIA-SEQUENCE:8\n"));
+        assertTrue(text.contains("live8.ts\n"));
+        assertTrue(text.contains("live9.ts\n"));
+        assertFalse(text.contains("live7.ts"));
+        assertFalse(text.contains("PLAYLIST-TYPE"));
+        // The two segments that have just left the playlist are still there
+        for (int i = 0; i < 10; i++)
+            assertEquals(i >= 6, new File(dir, "live" + i + ".ts").exists());
+    }
+
+    @Test
+    public void testDASH() throws IOException {
+        File manifest = new File(dir, "out.mpd");
+        SegmentMuxer muxer = SegmentMuxer.createDASHMuxer(manifest, 2, 0);
+        writeFrames(muxer, 100, 50);
+
+        String text = read(manifest);
+        assertTrue(text.contains("type=\"static\""));
+        assertTrue(text.contains("mediaPresentationDuration=\"PT4.000S\""));
+        assertTrue(text.contains("<S t=\"0\" d=\"2000\"/>"));
+        assertTrue(text.contains("<S t=\"2000\" d=\"2000\"/>"));
+        assertTrue(text.contains("<SegmentURL media=\"out1.ts\"/>"));
+        assertFalse(new File(dir, "out2.ts").exists());
+    }
+
+    private static void writeFrames(SegmentMuxer muxer, int nFrames, int gop) throws IOException {
+        MuxerTrack video = muxer.addVideoTrack(Codec.H264, null);
+        for (int i = 0; i < nFrames; i++) {
+            ByteBuffer frame = ByteBuffer.wrap(new byte[] { 0, 0, 0, 1, 9, (byte) 0xf0, 0, 0, 0, 1, 0x65, 0 });
+            video.addFrame(Packet.createPacket(frame, i, 25, 1, i, i % gop == 0 ? FrameType.KEY : FrameType.INTER,
+                    null));
+        }
+        muxer.finish();
+    }
+
+    private static int findPid(ByteBuffer ts, int pid) {
+        for (int pos = 0; pos < ts.limit(); pos += 188) {
+            if ((ts.getShort(pos + 1) & 0x1fff) == pid)
+                return pos;
+        }
+        return -1;
+    }
+
+    private static String read(File file) throws IOException {
+        return Platform.stringFromCharset(NIOUtils.toArray(NIOUtils.fetchFromFile(file)), "UTF-8");
+    }
+}
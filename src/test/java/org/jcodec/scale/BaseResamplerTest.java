@@ -1,5 +1,11 @@
 package org.jcodec.scale;
 
+import java.util.Random;
+
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Picture;
+import org.jcodec.common.model.Size;
+import org.jcodec.common.tools.MathUtil;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -22,4 +28,66 @@ public class BaseResamplerTest {
         }
     }
 
+    @Test
+    public void testMatchesDirectConvolution() {
+        int[][] sizes = { { 334, 242, 120, 68 }, { 120, 68, 334, 242 }, { 640, 480, 636, 482 }, { 98, 356, 352, 34 } };
+        Random rnd = new Random(7);
+        for (int[] s : sizes) {
+            Size from = new Size(s[0], s[1]);
+            Size to = new Size(s[2], s[3]);
+            Picture src = Picture.create(s[0], s[1], ColorSpace.YUV420J);
+            for (byte[] plane : src.getData())
+                rnd.nextBytes(plane);
+            for (BaseResampler resampler : new BaseResampler[] { new LanczosResampler(from, to),
+                    new BicubicResampler(from, to), new BilinearResampler(from, to) }) {
+                Picture expected = Picture.create(s[2], s[3], ColorSpace.YUV420J);
+                directConvolution(resampler, src, expected);
+                for (int threads : new int[] { 1, 3, 8 }) {
+                    resampler.setThreads(threads);
+                    Picture actual = Picture.create(s[2], s[3], ColorSpace.YUV420J);
+                    resampler.resample(src, actual);
+                    for (int p = 0; p < 3; p++)
+                        Assert.assertArrayEquals(resampler.getClass().getSimpleName() + " " + threads + " threads",
+                                expected.getPlaneData(p), actual.getPlaneData(p));
+                }
+            }
+        }
+    }
+
+    /**
+     * Straightforward two pass convolution with clamping on every tap.
+     */
+    private static void directConvolution(BaseResampler resampler, Picture src, Picture dst) {
+        int taps = resampler.nTaps();
+        double scaleX = (double) src.getWidth() / dst.getWidth();
+        double scaleY = (double) src.getHeight() / dst.getHeight();
+        for (int p = 0; p < src.getColor().nComp; p++) {
+            int srcW = src.getPlaneWidth(p), srcH = src.getPlaneHeight(p);
+            int dstW = dst.getPlaneWidth(p);
+            int[] temp = new int[dstW * (srcH + taps)];
+            for (int y = 0; y < srcH + taps; y++) {
+                for (int x = 0; x < dstW; x++) {
+                    short[] tapsX = resampler.getTapsX(x);
+                    int srcX = (int) (scaleX * x) - taps / 2 + 1;
+                    int sum = 0;
+                    for (int i = 0; i < taps; i++) {
+                        int sx = MathUtil.clip(srcX + i, 0, srcW - 1);
+                        int sy = MathUtil.clip(y - taps / 2 + 1, 0, srcH - 1);
+                        sum += (src.getPlaneData(p)[sy * srcW + sx] + 128) * tapsX[i];
+                    }
+                    temp[y * dstW + x] = sum;
+                }
+            }
+            for (int y = 0; y < dst.getPlaneHeight(p); y++) {
+                short[] tapsY = resampler.getTapsY(y);
+                int srcY = (int) (scaleY * y);
+                for (int x = 0; x < dstW; x++) {
+                    int sum = 0;
+                    for (int i = 0; i < taps; i++)
+                        sum += temp[x + (srcY + i) * dstW] * tapsY[i];
+                    dst.getPlaneData(p)[y * dstW + x] = (byte) (MathUtil.clip((sum + 8192) >> 14, 0, 255) - 128);
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,166 @@
+package org.jcodec.scale;
+
+import static org.jcodec.common.model.ColorSpace.BGR;
+import static org.jcodec.common.model.ColorSpace.RGB;
+import static org.jcodec.common.model.ColorSpace.YUV420;
+import static org.jcodec.common.model.ColorSpace.YUV420J;
+import static org.jcodec.common.model.ColorSpace.YUV422;
+import static org.jcodec.common.model.ColorSpace.YUV444J;
+
+import java.util.Random;
+
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Picture;
+import org.jcodec.common.model.Rect;
+import org.jcodec.common.model.Size;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FusedTransformTest {
+    private static final ColorSpace[][] PAIRS = { { RGB, YUV420 }, { RGB, YUV420J }, { RGB, YUV422 },
+            { YUV420, RGB }, { YUV420J, RGB }, { YUV422, RGB }, { YUV420, YUV422 }, { YUV422, YUV420 },
+            { YUV444J, YUV420J }, { YUV420, YUV420J }, { RGB, BGR }, { BGR, RGB } };
+    private static final int[] THREADS = { 1, 3, 8 };
+
+    @Test
+    public void testMatchesTransform() {
+        Random rnd = new Random(11);
+        for (ColorSpace[] pair : PAIRS) {
+            Picture src = randomPicture(rnd, 96, 212, pair[0], 0);
+            Picture expected = Picture.create(96, 212, pair[1]);
+            ColorUtil.getTransform(pair[0], pair[1]).transform(src, expected);
+
+            for (int threads : THREADS) {
+                FusedTransform fused = ColorUtil.getTransform(pair[0], pair[1], null, null);
+                fused.setThreads(threads);
+                Picture actual = Picture.create(96, 212, pair[1]);
+                fused.transform(src, actual);
+                assertPictureEquals(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testHiBD() {
+        Random rnd = new Random(11);
+        Picture src = randomPicture(rnd, 64, 160, YUV420, 2);
+        Picture expected = Picture.createCroppedHiBD(64, 160, 2, RGB, null);
+        new Yuv420pToRgb().transform(src, expected);
+
+        FusedTransform fused = ColorUtil.getTransform(YUV420, RGB, null, null);
+        fused.setThreads(4);
+        Picture actual = Picture.createCroppedHiBD(64, 160, 2, RGB, null);
+        fused.transform(src, actual);
+        assertPictureEquals(expected, actual);
+        Assert.assertArrayEquals(expected.getLowBits()[0], actual.getLowBits()[0]);
+    }
+
+    @Test
+    public void testCrop() {
+        Random rnd = new Random(11);
+        Rect crop = new Rect(14, 22, 60, 110);
+        for (ColorSpace[] pair : PAIRS) {
+            Picture src = randomPicture(rnd, 96, 212, pair[0], 0);
+            Picture cropped = Picture.create(60, 110, pair[0]);
+            copyArea(src, crop, cropped);
+            Picture expected = Picture.create(60, 110, pair[1]);
+            ColorUtil.getTransform(pair[0], pair[1]).transform(cropped, expected);
+
+            FusedTransform fused = ColorUtil.getTransform(pair[0], pair[1], crop, null);
+            fused.setThreads(3);
+            Picture actual = Picture.create(60, 110, pair[1]);
+            fused.transform(src, actual);
+            assertPictureEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testScaleThenConvert() {
+        Random rnd = new Random(11);
+        int[][] sizes = { { 200, 150, 96, 64 }, { 96, 64, 200, 150 } };
+        for (int[] s : sizes) {
+            Picture src = randomPicture(rnd, s[0], s[1], YUV420, 0);
+            Picture scaled = Picture.create(s[2], s[3], YUV420);
+            new LanczosResampler(new Size(s[0], s[1]), new Size(s[2], s[3])).resample(src, scaled);
+            Picture expected = Picture.create(s[2], s[3], RGB);
+            new Yuv420pToRgb().transform(scaled, expected);
+
+            for (int threads : THREADS) {
+                FusedTransform fused = ColorUtil.getTransform(YUV420, RGB, null, new Size(s[2], s[3]));
+                fused.setThreads(threads);
+                Picture actual = Picture.create(s[2], s[3], RGB);
+                fused.transform(src, actual);
+                assertPictureEquals(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testConvertThenScale() {
+        Random rnd = new Random(11);
+        int[][] sizes = { { 200, 150, 96, 64 }, { 96, 64, 200, 150 } };
+        Rect crop = new Rect(10, 6, 80, 50);
+        for (int[] s : sizes) {
+            Picture src = randomPicture(rnd, s[0], s[1], RGB, 0);
+            Picture converted = Picture.create(s[0], s[1], YUV420);
+            new RgbToYuv420p().transform(src, converted);
+            Picture expected = Picture.create(s[2], s[3], YUV420);
+            new LanczosResampler(new Size(s[0], s[1]), new Size(s[2], s[3])).resample(converted, expected);
+
+            Picture cropped = Picture.create(crop.getWidth(), crop.getHeight(), RGB);
+            copyArea(src, crop, cropped);
+            Picture croppedConverted = Picture.create(crop.getWidth(), crop.getHeight(), YUV420);
+            new RgbToYuv420p().transform(cropped, croppedConverted);
+            Picture croppedExpected = Picture.create(s[2], s[3], YUV420);
+            new LanczosResampler(new Size(crop.getWidth(), crop.getHeight()), new Size(s[2], s[3]))
+                    .resample(croppedConverted, croppedExpected);
+
+            for (int threads : THREADS) {
+                FusedTransform fused = ColorUtil.getTransform(RGB, YUV420, null, new Size(s[2], s[3]));
+                fused.setThreads(threads);
+                Picture actual = Picture.create(s[2], s[3], YUV420);
+                fused.transform(src, actual);
+                assertPictureEquals(expected, actual);
+
+                fused = ColorUtil.getTransform(RGB, YUV420, crop, new Size(s[2], s[3]));
+                fused.setThreads(threads);
+                fused.transform(src, actual);
+                assertPictureEquals(croppedExpected, actual);
+            }
+        }
+    }
+
+    private static Picture randomPicture(Random rnd, int width, int height, ColorSpace color, int lowBitsNum) {
+        Picture pic = Picture.createCroppedHiBD(width, height, lowBitsNum, color, null);
+        for (int p = 0; p < pic.getData().length; p++) {
+            rnd.nextBytes(pic.getPlaneData(p));
+            if (lowBitsNum > 0) {
+                byte[] low = pic.getLowBits()[p];
+                for (int i = 0; i < low.length; i++)
+                    low[i] = (byte) rnd.nextInt(1 << lowBitsNum);
+            }
+        }
+        return pic;
+    }
+
+    private static void copyArea(Picture src, Rect crop, Picture dst) {
+        ColorSpace color = src.getColor();
+        for (int p = 0; p < src.getData().length; p++) {
+            int shiftX = color.planar ? color.compWidth[p] : 0;
+            int shiftY = color.planar ? color.compHeight[p] : 0;
+            int pixelSize = color.planar ? 1 : 3;
+            for (int y = 0; y < dst.getHeight() >> shiftY; y++) {
+                System.arraycopy(src.getPlaneData(p),
+                        ((y + (crop.getY() >> shiftY)) * (src.getWidth() >> shiftX) + (crop.getX() >> shiftX))
+                                * pixelSize,
+                        dst.getPlaneData(p), y * (dst.getWidth() >> shiftX) * pixelSize,
+                        (dst.getWidth() >> shiftX) * pixelSize);
+            }
+        }
+    }
+
+    private static void assertPictureEquals(Picture expected, Picture actual) {
+        for (int p = 0; p < expected.getData().length; p++)
+            Assert.assertArrayEquals("plane " + p, expected.getPlaneData(p), actual.getPlaneData(p));
+    }
+}
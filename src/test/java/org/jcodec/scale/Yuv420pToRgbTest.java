@@ -1,6 +1,10 @@
 package org.jcodec.scale;
 
+import java.util.Random;
+
 import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.DirectPlaneAllocator;
+import org.jcodec.common.model.OffHeapPicture;
 import org.jcodec.common.model.Picture;
 import org.junit.Assert;
 import org.junit.Test;
@@ -36,6 +40,28 @@ public class Yuv420pToRgbTest {
         Assert.assertArrayEquals(rgb, out.getPlaneData(0));
     }
     
+    @Test
+    public void testOffHeapMatchesHeap() {
+        Random rnd = new Random(42);
+        Yuv420pToRgb transform = new Yuv420pToRgb();
+        DirectPlaneAllocator allocator = DirectPlaneAllocator.createDirectPlaneAllocator(1 << 20);
+        int[][] sizes = { { 4, 4 }, { 64, 32 }, { 36, 18 } };
+        for (int[] size : sizes) {
+            Picture _in = Picture.create(size[0], size[1], ColorSpace.YUV420);
+            for (byte[] plane : _in.getData())
+                rnd.nextBytes(plane);
+            Picture expected = Picture.create(size[0], size[1], ColorSpace.RGB);
+            transform.transform(_in, expected);
+
+            OffHeapPicture parked = OffHeapPicture.createOffHeapPictureWithAllocator(_in, allocator);
+            Picture out = Picture.create(size[0], size[1], ColorSpace.RGB);
+            transform.transform(parked, out);
+            parked.release();
+
+            Assert.assertArrayEquals(expected.getPlaneData(0), out.getPlaneData(0));
+        }
+    }
+
     @Test
     public void testYuv420pToRgbH2N() {
         Yuv420pToRgb transform = new Yuv420pToRgb();
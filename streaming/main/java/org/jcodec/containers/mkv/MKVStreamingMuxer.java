@@ -11,14 +11,6 @@ import static org.jcodec.containers.mkv.MKVType.CodecID;
 import static org.jcodec.containers.mkv.MKVType.CodecPrivate;
 import static org.jcodec.containers.mkv.MKVType.Cues;
 import static org.jcodec.containers.mkv.MKVType.DateUTC;
-import static org.jcodec.containers.mkv.MKVType.DocType;
-import static org.jcodec.containers.mkv.MKVType.DocTypeReadVersion;
-import static org.jcodec.containers.mkv.MKVType.DocTypeVersion;
-import static org.jcodec.containers.mkv.MKVType.EBML;
-import static org.jcodec.containers.mkv.MKVType.EBMLMaxIDLength;
-import static org.jcodec.containers.mkv.MKVType.EBMLMaxSizeLength;
-import static org.jcodec.containers.mkv.MKVType.EBMLReadVersion;
-import static org.jcodec.containers.mkv.MKVType.EBMLVersion;
 import static org.jcodec.containers.mkv.MKVType.Info;
 import static org.jcodec.containers.mkv.MKVType.MuxingApp;
 import static org.jcodec.containers.mkv.MKVType.Name;
@@ -52,6 +44,7 @@ import org.jcodec.containers.mkv.boxes.EbmlBase;
 import org.jcodec.containers.mkv.boxes.EbmlMaster;
 import org.jcodec.containers.mkv.boxes.MkvBlock;
 import org.jcodec.containers.mkv.boxes.MkvSegment;
+import org.jcodec.containers.mkv.muxer.MKVMuxer;
 import org.jcodec.movtool.streaming.MovieSegment;
 import org.jcodec.movtool.streaming.VirtualPacket;
 import org.jcodec.movtool.streaming.VirtualTrack;
@@ -96,7 +89,7 @@ public class MKVStreamingMuxer {
     }
 
     public MovieSegment prepareHeader(List<MovieSegment> chunks, VirtualTrack[] tracks) throws IOException {
-        EbmlMaster ebmlHeader = muxEbmlHeader();
+        EbmlMaster ebmlHeader = MKVMuxer.defaultEbmlHeader();
         segmentElem = (EbmlMaster) createByType(Segment);
         mkvInfo = muxInfo(tracks);
         mkvTracks = muxTracks(tracks);
@@ -121,21 +114,6 @@ public class MKVStreamingMuxer {
         return headerChunk;
     }
     
-    private EbmlMaster muxEbmlHeader(){
-        EbmlMaster master = (EbmlMaster) createByType(EBML);
-
-        createLong(master, EBMLVersion, 1);
-        createLong(master, EBMLReadVersion, 1);
-        createLong(master, EBMLMaxIDLength, 4);
-        createLong(master, EBMLMaxSizeLength, 8);
-        
-        createString(master, DocType, "webm");
-        createLong(master, DocTypeVersion, 2);
-        createLong(master, DocTypeReadVersion, 2);
-
-        return master;
-    }
-    
     private EbmlMaster muxInfo(VirtualTrack[] tracks) {
         EbmlMaster master = (EbmlMaster) createByType(Info);
         createLong(master, TimecodeScale, TIMESCALE);